@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.wrapper.Wrapper;
+import com.helger.phase4.attachment.IAS4IncomingAttachmentFactory;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.crypto.AS4SigningParams;
+import com.helger.phase4.crypto.IAS4CryptoFactory;
+import com.helger.phase4.ebms3header.Ebms3Error;
+import com.helger.phase4.messaging.crypto.AS4Signer;
+import com.helger.phase4.messaging.domain.AS4UserMessage;
+import com.helger.phase4.messaging.domain.MessageHelperMethods;
+import com.helger.phase4.messaging.mime.AS4MimeMessage;
+import com.helger.phase4.messaging.mime.MimeMessageCreator;
+import com.helger.phase4.model.pmode.resolve.DefaultPModeResolver;
+import com.helger.phase4.servlet.AS4IncomingHandler;
+import com.helger.phase4.servlet.AS4IncomingMessageMetadata;
+import com.helger.phase4.servlet.AS4IncomingProfileSelectorFromGlobal;
+import com.helger.phase4.servlet.IAS4MessageState;
+import com.helger.phase4.servlet.soap.SOAPHeaderElementProcessorRegistry;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.phase4.util.AS4XMLHelper;
+
+/**
+ * Benchmark for the receiving side: {@link AS4IncomingHandler#parseAS4Message}
+ * followed by {@link AS4IncomingHandler#processEbmsMessage} for a signed user
+ * message, including signature verification.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 5)
+@Measurement (iterations = 5, time = 5)
+@Fork (value = 1, jvmArgsAppend = "-Xmx8g")
+public class AS4IncomingHandlerBenchmark
+{
+  private static final ESoapVersion SOAP_VERSION = ESoapVersion.SOAP_12;
+
+  /** Payload size in bytes: 1 KB, 1 MB and 10 MB */
+  @Param ({ "1024", "1048576", "10485760" })
+  public int payloadSize;
+
+  /** Where the payload is located */
+  @Param ({ "SOAP", "MIME" })
+  public String payloadMode;
+
+  /**
+   * <code>true</code> to use the shared registry as done by the
+   * AS4RequestHandler, <code>false</code> to create a new registry per
+   * message. Compare <code>gc.alloc.rate.norm</code> of both variants with the
+   * GC profiler.
+   */
+  @Param ({ "false", "true" })
+  public boolean reuseRegistry;
+
+  private IAS4CryptoFactory m_aCryptoFactory;
+  private byte [] m_aMessageBytes;
+  private HttpHeaderMap m_aHttpHeaders;
+
+  @Setup (Level.Trial)
+  public void setup () throws Exception
+  {
+    BenchmarkHelper.beginGlobalScope ();
+    m_aCryptoFactory = BenchmarkHelper.createCryptoFactory ();
+
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final boolean bSoap = "SOAP".equals (payloadMode);
+      final Document aBodyPayload = bSoap ? BenchmarkHelper.createXMLPayload (payloadSize) : null;
+      final ICommonsList <WSS4JAttachment> aAttachments = bSoap ? null
+                                                                : BenchmarkHelper.createAttachments (payloadSize,
+                                                                                                     aResHelper);
+      final AS4UserMessage aUserMsg = BenchmarkHelper.createUserMessage (SOAP_VERSION, bSoap, aAttachments);
+      final Document aSignedDoc = AS4Signer.createSignedMessage (m_aCryptoFactory,
+                                                                 aUserMsg.getAsSoapDocument (aBodyPayload),
+                                                                 SOAP_VERSION,
+                                                                 aUserMsg.getMessagingID (),
+                                                                 aAttachments,
+                                                                 aResHelper,
+                                                                 false,
+                                                                 AS4SigningParams.createDefault ());
+      if (bSoap)
+      {
+        m_aMessageBytes = AS4XMLHelper.serializeXML (aSignedDoc).getBytes (StandardCharsets.UTF_8);
+        m_aHttpHeaders = new HttpHeaderMap ();
+        m_aHttpHeaders.addHeader (CHttpHeader.CONTENT_TYPE, SOAP_VERSION.getMimeType (StandardCharsets.UTF_8).getAsString ());
+      }
+      else
+      {
+        final AS4MimeMessage aMimeMsg = MimeMessageCreator.generateMimeMessage (SOAP_VERSION, aSignedDoc, aAttachments);
+        m_aHttpHeaders = MessageHelperMethods.getAndRemoveAllHeaders (aMimeMsg);
+        try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+        {
+          aMimeMsg.writeTo (aBAOS);
+          m_aMessageBytes = aBAOS.toByteArray ();
+        }
+      }
+    }
+  }
+
+  @TearDown (Level.Trial)
+  public void tearDown ()
+  {
+    BenchmarkHelper.endGlobalScope ();
+  }
+
+  @Benchmark
+  public IAS4MessageState parseAndProcess () throws Exception
+  {
+    final Wrapper <IAS4MessageState> aResult = new Wrapper <> ();
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final AS4IncomingHandler.IAS4ParsedMessageCallback aCallback = (aHttpHeaders,
+                                                                       aSoapDocument,
+                                                                       eSoapVersion,
+                                                                       aIncomingAttachments) -> {
+        final ICommonsList <Ebms3Error> aErrorMessages = new CommonsArrayList <> ();
+        final SOAPHeaderElementProcessorRegistry aRegistry;
+        if (reuseRegistry)
+          aRegistry = SOAPHeaderElementProcessorRegistry.getOrCreateDefault (DefaultPModeResolver.DEFAULT_PMODE_RESOLVER,
+                                                                             m_aCryptoFactory,
+                                                                             null);
+        else
+          aRegistry = SOAPHeaderElementProcessorRegistry.createDefault (DefaultPModeResolver.DEFAULT_PMODE_RESOLVER,
+                                                                        m_aCryptoFactory,
+                                                                        null);
+        aResult.set (AS4IncomingHandler.processEbmsMessage (aResHelper,
+                                                            Locale.US,
+                                                            aRegistry,
+                                                            aHttpHeaders,
+                                                            aSoapDocument,
+                                                            eSoapVersion,
+                                                            aIncomingAttachments,
+                                                            AS4IncomingProfileSelectorFromGlobal.INSTANCE,
+                                                            aErrorMessages));
+      };
+      AS4IncomingHandler.parseAS4Message (IAS4IncomingAttachmentFactory.DEFAULT_INSTANCE,
+                                          aResHelper,
+                                          AS4IncomingMessageMetadata.createForRequest (),
+                                          new NonBlockingByteArrayInputStream (m_aMessageBytes),
+                                          m_aHttpHeaders,
+                                          aCallback,
+                                          null);
+    }
+    return aResult.get ();
+  }
+}
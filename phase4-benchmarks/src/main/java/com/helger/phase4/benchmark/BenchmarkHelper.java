@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.Immutable;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.CAS4;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.crypto.AS4CryptoFactoryProperties;
+import com.helger.phase4.crypto.AS4CryptoProperties;
+import com.helger.phase4.crypto.IAS4CryptoFactory;
+import com.helger.phase4.ebms3header.Ebms3CollaborationInfo;
+import com.helger.phase4.ebms3header.Ebms3MessageInfo;
+import com.helger.phase4.ebms3header.Ebms3MessageProperties;
+import com.helger.phase4.ebms3header.Ebms3PartyInfo;
+import com.helger.phase4.ebms3header.Ebms3PayloadInfo;
+import com.helger.phase4.ebms3header.Ebms3Property;
+import com.helger.phase4.messaging.domain.AS4UserMessage;
+import com.helger.phase4.messaging.domain.MessageHelperMethods;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.scope.mgr.ScopeManager;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.servlet.mock.MockServletContext;
+import com.helger.web.scope.mgr.WebScopeManager;
+import com.helger.xml.XMLFactory;
+
+/**
+ * Shared helper methods for all benchmarks.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+final class BenchmarkHelper
+{
+  /** Namespace URI of the created SOAP body payloads */
+  static final String PAYLOAD_NS = "urn:phase4:benchmark";
+
+  private static final byte [] LINE = "<Line><ID>4711</ID><Note>phase4 benchmark payload line</Note><Amount>123.45</Amount></Line>\n".getBytes (StandardCharsets.UTF_8);
+
+  private BenchmarkHelper ()
+  {}
+
+  /**
+   * Start the global scope, if none is present. The AS4 managers are global
+   * singletons.
+   */
+  static void beginGlobalScope ()
+  {
+    if (!ScopeManager.isGlobalScopePresent ())
+      WebScopeManager.onGlobalBegin (MockServletContext.create ());
+  }
+
+  static void endGlobalScope ()
+  {
+    if (ScopeManager.isGlobalScopePresent ())
+      WebScopeManager.onGlobalEnd ();
+  }
+
+  /**
+   * @return A new crypto factory using the dummy key store contained in this
+   *         module.
+   */
+  @Nonnull
+  static IAS4CryptoFactory createCryptoFactory ()
+  {
+    final AS4CryptoProperties aCryptoProps = new AS4CryptoProperties ().setKeyStoreType (EKeyStoreType.JKS)
+                                                                       .setKeyStorePath ("keys/dummy-pw-test.jks")
+                                                                       .setKeyStorePassword ("test")
+                                                                       .setKeyAlias ("ph-as4")
+                                                                       .setKeyPassword ("test");
+    return new AS4CryptoFactoryProperties (aCryptoProps);
+  }
+
+  /**
+   * @return The key alias of the dummy key store, used as the encryption
+   *         recipient.
+   */
+  @Nonnull
+  static String getKeyAlias ()
+  {
+    return "ph-as4";
+  }
+
+  /**
+   * Create compressible, XML like binary content.
+   *
+   * @param nBytes
+   *        The number of bytes to create.
+   * @return A new byte array with exactly the provided length.
+   */
+  @Nonnull
+  static byte [] createBinaryPayload (@Nonnegative final int nBytes)
+  {
+    final byte [] ret = new byte [nBytes];
+    for (int i = 0; i < nBytes; i += LINE.length)
+      System.arraycopy (LINE, 0, ret, i, Math.min (LINE.length, nBytes - i));
+    return ret;
+  }
+
+  /**
+   * Create an XML payload to be put in the SOAP body.
+   *
+   * @param nBytes
+   *        The approximate serialized size in bytes.
+   * @return A new document with a single root element.
+   */
+  @Nonnull
+  static Document createXMLPayload (@Nonnegative final int nBytes)
+  {
+    final Document aDoc = XMLFactory.newDocument ();
+    final Element eRoot = (Element) aDoc.appendChild (aDoc.createElementNS (PAYLOAD_NS, "Payload"));
+    final int nLines = Math.max (1, nBytes / LINE.length);
+    for (int i = 0; i < nLines; ++i)
+    {
+      final Element eLine = (Element) eRoot.appendChild (aDoc.createElementNS (PAYLOAD_NS, "Line"));
+      eLine.appendChild (aDoc.createElementNS (PAYLOAD_NS, "ID")).appendChild (aDoc.createTextNode (Integer.toString (i)));
+      eLine.appendChild (aDoc.createElementNS (PAYLOAD_NS, "Note"))
+           .appendChild (aDoc.createTextNode ("phase4 benchmark payload line"));
+      eLine.appendChild (aDoc.createElementNS (PAYLOAD_NS, "Amount")).appendChild (aDoc.createTextNode ("123.45"));
+    }
+    return aDoc;
+  }
+
+  /**
+   * Create a single outgoing attachment.
+   *
+   * @param nBytes
+   *        Attachment size in bytes.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @return A list with a single attachment.
+   * @throws IOException
+   *         on error
+   */
+  @Nonnull
+  static ICommonsList <WSS4JAttachment> createAttachments (@Nonnegative final int nBytes,
+                                                           @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
+  {
+    return new CommonsArrayList <> (WSS4JAttachment.createOutgoingFileAttachment (createBinaryPayload (nBytes),
+                                                                                  null,
+                                                                                  "payload.xml",
+                                                                                  CMimeType.APPLICATION_XML,
+                                                                                  null,
+                                                                                  null,
+                                                                                  aResHelper));
+  }
+
+  /**
+   * Create an unsigned user message
+   *
+   * @param eSoapVersion
+   *        SOAP version to use. May not be <code>null</code>.
+   * @param bHasBodyPayload
+   *        <code>true</code> if the SOAP body contains a payload
+   * @param aAttachments
+   *        Attachments to reference. May be <code>null</code>.
+   * @return The new user message
+   */
+  @Nonnull
+  static AS4UserMessage createUserMessage (@Nonnull final ESoapVersion eSoapVersion,
+                                           final boolean bHasBodyPayload,
+                                           @Nullable final ICommonsList <WSS4JAttachment> aAttachments)
+  {
+    final ICommonsList <Ebms3Property> aEbms3Properties = new CommonsArrayList <> ();
+    aEbms3Properties.add (MessageHelperMethods.createEbms3Property (CAS4.ORIGINAL_SENDER, "C1 OS"));
+    aEbms3Properties.add (MessageHelperMethods.createEbms3Property (CAS4.FINAL_RECIPIENT, "C4 FR"));
+
+    final Ebms3MessageInfo aEbms3MessageInfo = MessageHelperMethods.createEbms3MessageInfo ();
+    final Ebms3PayloadInfo aEbms3PayloadInfo = MessageHelperMethods.createEbms3PayloadInfo (bHasBodyPayload, aAttachments);
+    final Ebms3CollaborationInfo aEbms3CollaborationInfo = MessageHelperMethods.createEbms3CollaborationInfo (null,
+                                                                                                              "urn:phase4:benchmark:agreement",
+                                                                                                              null,
+                                                                                                              "BenchmarkService",
+                                                                                                              "BenchmarkAction",
+                                                                                                              "4321");
+    final Ebms3PartyInfo aEbms3PartyInfo = MessageHelperMethods.createEbms3PartyInfo (CAS4.DEFAULT_INITIATOR_URL,
+                                                                                      "sender",
+                                                                                      CAS4.DEFAULT_RESPONDER_URL,
+                                                                                      "receiver");
+    final Ebms3MessageProperties aEbms3MessageProperties = MessageHelperMethods.createEbms3MessageProperties (aEbms3Properties);
+
+    return AS4UserMessage.create (aEbms3MessageInfo,
+                                  aEbms3PayloadInfo,
+                                  aEbms3CollaborationInfo,
+                                  aEbms3PartyInfo,
+                                  aEbms3MessageProperties,
+                                  eSoapVersion)
+                         .setMustUnderstand (true);
+  }
+}
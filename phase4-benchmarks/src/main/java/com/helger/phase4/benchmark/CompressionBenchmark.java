@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.phase4.attachment.EAS4CompressionMode;
+
+/**
+ * Benchmark for {@link EAS4CompressionMode#GZIP} compression and
+ * decompression.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 5)
+@Measurement (iterations = 5, time = 5)
+@Fork (value = 1, jvmArgsAppend = "-Xmx4g")
+public class CompressionBenchmark
+{
+  /** Payload size in bytes: 1 KB, 1 MB, 10 MB and 100 MB */
+  @Param ({ "1024", "1048576", "10485760", "104857600" })
+  public int payloadSize;
+
+  private byte [] m_aUncompressed;
+  private byte [] m_aCompressed;
+
+  @Setup (Level.Trial)
+  public void setup () throws IOException
+  {
+    m_aUncompressed = BenchmarkHelper.createBinaryPayload (payloadSize);
+    m_aCompressed = compress ();
+  }
+
+  @Benchmark
+  public byte [] compress () throws IOException
+  {
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    try (final OutputStream aOS = EAS4CompressionMode.GZIP.getCompressStream (aBAOS))
+    {
+      aOS.write (m_aUncompressed);
+    }
+    return aBAOS.getBufferOrCopy ();
+  }
+
+  @Benchmark
+  public long decompress () throws IOException
+  {
+    try (final InputStream aIS = EAS4CompressionMode.GZIP.getDecompressStream (new NonBlockingByteArrayInputStream (m_aCompressed)))
+    {
+      final byte [] aBuffer = new byte [16 * 1024];
+      long nTotal = 0;
+      int nRead;
+      while ((nRead = aIS.read (aBuffer)) >= 0)
+        nTotal += nRead;
+      return nTotal;
+    }
+  }
+}
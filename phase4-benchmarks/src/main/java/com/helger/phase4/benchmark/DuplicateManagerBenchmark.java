@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.state.EContinue;
+import com.helger.phase4.duplicate.AS4DuplicateManagerAppendOnly;
+import com.helger.phase4.duplicate.AS4DuplicateManagerInMemory;
+import com.helger.phase4.duplicate.AS4DuplicateManagerInMemoryConcurrent;
+import com.helger.phase4.duplicate.IAS4DuplicateItem;
+import com.helger.phase4.duplicate.IAS4DuplicateManager;
+
+/**
+ * Benchmark for the different {@link IAS4DuplicateManager} implementations
+ * with concurrent access.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+@Warmup (iterations = 3, time = 5)
+@Measurement (iterations = 5, time = 5)
+@Fork (value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads (8)
+public class DuplicateManagerBenchmark
+{
+  /** The number of message IDs that are present at the start of an iteration */
+  @Param ({ "100000" })
+  public int existingItems;
+
+  /** The implementation to use */
+  @Param ({ "InMemory", "InMemoryConcurrent", "AppendOnly" })
+  public String implementation;
+
+  private final AtomicLong m_aCounter = new AtomicLong ();
+  private File m_aTempDir;
+  private IAS4DuplicateManager m_aMgr;
+
+  @Setup (Level.Trial)
+  public void setupTrial ()
+  {
+    BenchmarkHelper.beginGlobalScope ();
+  }
+
+  @Setup (Level.Iteration)
+  public void setupIteration () throws IOException
+  {
+    // Start every iteration with the same amount of data
+    switch (implementation)
+    {
+      case "InMemory":
+        m_aMgr = new AS4DuplicateManagerInMemory ();
+        break;
+      case "InMemoryConcurrent":
+        m_aMgr = new AS4DuplicateManagerInMemoryConcurrent ();
+        break;
+      case "AppendOnly":
+        m_aTempDir = new File ("target/benchmark-duplicates-" + System.nanoTime ());
+        m_aMgr = new AS4DuplicateManagerAppendOnly (m_aTempDir);
+        break;
+      default:
+        throw new IllegalStateException ("Unsupported implementation '" + implementation + "'");
+    }
+    for (int i = 0; i < existingItems; ++i)
+      m_aMgr.registerAndCheck ("existing-" + i, null, null);
+  }
+
+  @TearDown (Level.Iteration)
+  public void tearDownIteration ()
+  {
+    if (m_aMgr instanceof AS4DuplicateManagerAppendOnly)
+      ((AS4DuplicateManagerAppendOnly) m_aMgr).close ();
+    if (m_aTempDir != null)
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (m_aTempDir);
+      m_aTempDir = null;
+    }
+  }
+
+  @TearDown (Level.Trial)
+  public void tearDownTrial ()
+  {
+    BenchmarkHelper.endGlobalScope ();
+  }
+
+  @Benchmark
+  public EContinue registerNew ()
+  {
+    return m_aMgr.registerAndCheck ("new-" + m_aCounter.incrementAndGet (), "profile", "pmode");
+  }
+
+  @Benchmark
+  public EContinue registerDuplicate ()
+  {
+    return m_aMgr.registerAndCheck ("existing-" + ThreadLocalRandom.current ().nextInt (existingItems), "profile", "pmode");
+  }
+
+  @Benchmark
+  public IAS4DuplicateItem lookup ()
+  {
+    return m_aMgr.getItemOfMessageID ("existing-" + ThreadLocalRandom.current ().nextInt (existingItems));
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.phase4.ebms3header.Ebms3Messaging;
+import com.helger.phase4.marshaller.Ebms3MessagingFastBinder;
+import com.helger.phase4.marshaller.Ebms3MessagingMarshaller;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.xml.XMLHelper;
+
+/**
+ * Benchmark for unmarshalling and marshalling the ebMS3 Messaging header with
+ * {@link Ebms3MessagingMarshaller}, as done for every incoming and outgoing
+ * message, compared to {@link Ebms3MessagingFastBinder}. The deprecated
+ * <code>Ebms3ReaderBuilder</code> is not used anymore in the processing and
+ * therefore not part of the benchmark.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 3, time = 5)
+@Measurement (iterations = 5, time = 5)
+@Fork (1)
+public class Ebms3MessagingMarshallerBenchmark
+{
+  private static final ESoapVersion SOAP_VERSION = ESoapVersion.SOAP_12;
+
+  private Element m_aMessagingElement;
+  private byte [] m_aMessagingBytes;
+  private Ebms3Messaging m_aMessaging;
+
+  @Setup (Level.Trial)
+  public void setup ()
+  {
+    BenchmarkHelper.beginGlobalScope ();
+    final Document aSoapDoc = BenchmarkHelper.createUserMessage (SOAP_VERSION, true, null).getAsSoapDocument ();
+    final Element aHeader = XMLHelper.getFirstChildElementOfName (aSoapDoc.getDocumentElement (),
+                                                                  SOAP_VERSION.getNamespaceURI (),
+                                                                  SOAP_VERSION.getHeaderElementName ());
+    m_aMessagingElement = XMLHelper.getFirstChildElement (aHeader);
+    m_aMessaging = new Ebms3MessagingMarshaller ().read (m_aMessagingElement);
+    m_aMessagingBytes = new Ebms3MessagingMarshaller ().getAsBytes (m_aMessaging);
+  }
+
+  @TearDown (Level.Trial)
+  public void tearDown ()
+  {
+    BenchmarkHelper.endGlobalScope ();
+  }
+
+  @Benchmark
+  public Ebms3Messaging readFromNode ()
+  {
+    return new Ebms3MessagingMarshaller ().read (m_aMessagingElement);
+  }
+
+  @Benchmark
+  public Ebms3Messaging readFromBytes ()
+  {
+    return new Ebms3MessagingMarshaller ().read (m_aMessagingBytes);
+  }
+
+  @Benchmark
+  public Document write ()
+  {
+    return new Ebms3MessagingMarshaller ().getAsDocument (m_aMessaging);
+  }
+
+  @Benchmark
+  public Ebms3Messaging readFromNodeFast ()
+  {
+    return Ebms3MessagingFastBinder.read (m_aMessagingElement);
+  }
+
+  @Benchmark
+  public Ebms3Messaging readFromNodeFastValidated ()
+  {
+    // Same as the JAXB reading, including XML Schema validation
+    if (Ebms3MessagingFastBinder.validate (m_aMessagingElement).containsAtLeastOneError ())
+      throw new IllegalStateException ("Invalid Messaging header");
+    return Ebms3MessagingFastBinder.read (m_aMessagingElement);
+  }
+
+  @Benchmark
+  public Document writeFast ()
+  {
+    return Ebms3MessagingFastBinder.getAsDocument (m_aMessaging);
+  }
+}
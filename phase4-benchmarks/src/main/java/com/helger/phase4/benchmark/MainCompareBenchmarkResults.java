@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.StringParser;
+
+/**
+ * Compare two JMH CSV result files as created by {@link MainPhase4Benchmarks}
+ * and log all benchmarks (including the GC profiler results) that are worse
+ * by more than the provided threshold.<br>
+ * Usage:
+ * <code>MainCompareBenchmarkResults baseline.csv current.csv [threshold-percent]</code>
+ *
+ * @author Philip Helger
+ */
+public final class MainCompareBenchmarkResults
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainCompareBenchmarkResults.class);
+  private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+  private static final class Result
+  {
+    private final double m_dScore;
+    private final String m_sUnit;
+
+    Result (final double dScore, @Nonnull final String sUnit)
+    {
+      m_dScore = dScore;
+      m_sUnit = sUnit;
+    }
+
+    boolean isHigherBetter ()
+    {
+      // Only throughput ("ops/s") is better when higher - for average times
+      // and all GC profiler values lower is better
+      return m_sUnit.startsWith ("ops/");
+    }
+  }
+
+  private MainCompareBenchmarkResults ()
+  {}
+
+  @Nonnull
+  private static ICommonsList <String> splitCSVLine (@Nonnull final String sLine)
+  {
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    final StringBuilder aSB = new StringBuilder ();
+    boolean bInQuotes = false;
+    for (final char c : sLine.toCharArray ())
+    {
+      if (c == '"')
+        bInQuotes = !bInQuotes;
+      else
+        if (c == ',' && !bInQuotes)
+        {
+          ret.add (aSB.toString ());
+          aSB.setLength (0);
+        }
+        else
+          aSB.append (c);
+    }
+    ret.add (aSB.toString ());
+    return ret;
+  }
+
+  @Nonnull
+  private static ICommonsOrderedMap <String, Result> readResults (@Nonnull final File aFile) throws IOException
+  {
+    final ICommonsOrderedMap <String, Result> ret = new CommonsLinkedHashMap <> ();
+    final List <String> aLines = Files.readAllLines (aFile.toPath (), StandardCharsets.UTF_8);
+    if (aLines.isEmpty ())
+      return ret;
+
+    final ICommonsList <String> aHeader = splitCSVLine (aLines.get (0));
+    final int nBenchmark = aHeader.indexOf ("Benchmark");
+    final int nScore = aHeader.indexOf ("Score");
+    final int nUnit = aHeader.indexOf ("Unit");
+    for (final String sLine : aLines.subList (1, aLines.size ()))
+    {
+      if (StringHelper.hasNoText (sLine))
+        continue;
+      final ICommonsList <String> aCells = splitCSVLine (sLine);
+      // Key is the benchmark name plus all parameters
+      final StringBuilder aKey = new StringBuilder (aCells.get (nBenchmark));
+      for (int i = 0; i < aHeader.size (); ++i)
+        if (aHeader.get (i).startsWith ("Param: ") && i < aCells.size () && StringHelper.hasText (aCells.get (i)))
+          aKey.append (' ').append (aHeader.get (i).substring (7)).append ('=').append (aCells.get (i));
+      final double dScore = StringParser.parseDouble (aCells.get (nScore).replace (',', '.'), Double.NaN);
+      ret.put (aKey.toString (), new Result (dScore, aCells.get (nUnit)));
+    }
+    return ret;
+  }
+
+  public static void main (final String [] args) throws IOException
+  {
+    if (args.length < 2)
+    {
+      LOGGER.error ("Usage: MainCompareBenchmarkResults baseline.csv current.csv [threshold-percent]");
+      return;
+    }
+    final double dThreshold = args.length > 2 ? StringParser.parseDouble (args[2], DEFAULT_THRESHOLD_PERCENT)
+                                              : DEFAULT_THRESHOLD_PERCENT;
+    final ICommonsOrderedMap <String, Result> aBaseline = readResults (new File (args[0]));
+    final ICommonsOrderedMap <String, Result> aCurrent = readResults (new File (args[1]));
+
+    int nRegressions = 0;
+    for (final Map.Entry <String, Result> aEntry : aCurrent.entrySet ())
+    {
+      final Result aOld = aBaseline.get (aEntry.getKey ());
+      final Result aNew = aEntry.getValue ();
+      if (aOld == null || aOld.m_dScore == 0 || Double.isNaN (aOld.m_dScore) || Double.isNaN (aNew.m_dScore))
+      {
+        LOGGER.info ("[new] " + aEntry.getKey () + ": " + aNew.m_dScore + " " + aNew.m_sUnit);
+        continue;
+      }
+
+      final double dChangePercent = (aNew.m_dScore - aOld.m_dScore) * 100 / aOld.m_dScore;
+      final boolean bWorse = aNew.isHigherBetter () ? dChangePercent < -dThreshold : dChangePercent > dThreshold;
+      final String sMsg = String.format (Locale.US,
+                                         "%s: %.3f -> %.3f %s (%+.1f%%)",
+                                         aEntry.getKey (),
+                                         Double.valueOf (aOld.m_dScore),
+                                         Double.valueOf (aNew.m_dScore),
+                                         aNew.m_sUnit,
+                                         Double.valueOf (dChangePercent));
+      if (bWorse)
+      {
+        nRegressions++;
+        LOGGER.warn ("[regression] " + sMsg);
+      }
+      else
+        LOGGER.info (sMsg);
+    }
+    LOGGER.info (nRegressions + " regression(s) with a threshold of " + dThreshold + "%");
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run all (or the selected) phase4 benchmarks with the GC profiler, so that
+ * allocation rates are reported, and write the results as CSV. The result file
+ * can be compared to a stored baseline with
+ * {@link MainCompareBenchmarkResults}.<br>
+ * Usage: <code>MainPhase4Benchmarks [result-file [include-regex...]]</code>
+ *
+ * @author Philip Helger
+ */
+public final class MainPhase4Benchmarks
+{
+  /** The default result file */
+  public static final String DEFAULT_RESULT_FILE = "target/jmh-result.csv";
+
+  private MainPhase4Benchmarks ()
+  {}
+
+  public static void main (final String [] args) throws Exception
+  {
+    final String sResultFile = args.length > 0 ? args[0] : DEFAULT_RESULT_FILE;
+    new File (sResultFile).getAbsoluteFile ().getParentFile ().mkdirs ();
+
+    final ChainedOptionsBuilder aOptions = new OptionsBuilder ().addProfiler (GCProfiler.class)
+                                                                .resultFormat (ResultFormatType.CSV)
+                                                                .result (sResultFile);
+    if (args.length > 1)
+    {
+      for (int i = 1; i < args.length; ++i)
+        aOptions.include (args[i]);
+    }
+    else
+      aOptions.include (MainPhase4Benchmarks.class.getPackage ().getName () + ".*Benchmark");
+    new Runner (aOptions.build ()).run ();
+  }
+}
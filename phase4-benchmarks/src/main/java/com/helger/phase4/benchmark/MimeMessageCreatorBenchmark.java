@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.messaging.mime.AS4MimeMessage;
+import com.helger.phase4.messaging.mime.MimeMessageCreator;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+import jakarta.mail.MessagingException;
+
+/**
+ * Benchmark for {@link MimeMessageCreator} including writing the created MIME
+ * message.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 5)
+@Measurement (iterations = 5, time = 5)
+@Fork (value = 1, jvmArgsAppend = "-Xmx8g")
+public class MimeMessageCreatorBenchmark
+{
+  private static final ESoapVersion SOAP_VERSION = ESoapVersion.SOAP_12;
+
+  /** Attachment size in bytes: 1 KB, 1 MB, 10 MB and 100 MB */
+  @Param ({ "1024", "1048576", "10485760", "104857600" })
+  public int payloadSize;
+
+  private AS4ResourceHelper m_aResHelper;
+  private ICommonsList <WSS4JAttachment> m_aAttachments;
+  private Document m_aSoapDoc;
+
+  @Setup (Level.Trial)
+  public void setup () throws IOException
+  {
+    BenchmarkHelper.beginGlobalScope ();
+    m_aResHelper = new AS4ResourceHelper ();
+    m_aAttachments = BenchmarkHelper.createAttachments (payloadSize, m_aResHelper);
+    m_aSoapDoc = BenchmarkHelper.createUserMessage (SOAP_VERSION, false, m_aAttachments).getAsSoapDocument ();
+  }
+
+  @TearDown (Level.Trial)
+  public void tearDown ()
+  {
+    m_aResHelper.close ();
+    BenchmarkHelper.endGlobalScope ();
+  }
+
+  @Benchmark
+  public AS4MimeMessage createAndWrite () throws MessagingException, IOException
+  {
+    final AS4MimeMessage aMimeMsg = MimeMessageCreator.generateMimeMessage (SOAP_VERSION, m_aSoapDoc, m_aAttachments);
+    aMimeMsg.writeTo (OutputStream.nullOutputStream ());
+    return aMimeMsg;
+  }
+}
@@ -54,6 +54,7 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
 
   private final ISMPServiceMetadataProvider m_aSMPClient;
   private ISMPTransportProfile m_aTP = DEFAULT_TRANSPORT_PROFILE;
+  private AS4SMPEndpointCache m_aEndpointCache;
   private EndpointType m_aEndpoint;
 
   public AS4EndpointDetailProviderPeppol (@Nonnull final ISMPServiceMetadataProvider aSMPClient)
@@ -99,6 +100,36 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
     return this;
   }
 
+  /**
+   * @return The shared endpoint cache to be used. May be <code>null</code>.
+   * @since 2.1.3
+   */
+  @Nullable
+  public final AS4SMPEndpointCache getEndpointCache ()
+  {
+    return m_aEndpointCache;
+  }
+
+  /**
+   * Set the shared endpoint cache to be used. If a cache is set, the SMP
+   * lookup results are shared across all provider instances using the same
+   * cache. This only has an effect if it is called prior to
+   * {@link #init(IDocumentTypeIdentifier, IProcessIdentifier, IParticipantIdentifier)}.
+   *
+   * @param aEndpointCache
+   *        The endpoint cache to be used. May be <code>null</code> to perform
+   *        an SMP lookup for every provider instance.
+   * @return this for chaining.
+   * @see AS4SMPEndpointCache#getDefaultInstance()
+   * @since 2.1.3
+   */
+  @Nonnull
+  public final AS4EndpointDetailProviderPeppol setEndpointCache (@Nullable final AS4SMPEndpointCache aEndpointCache)
+  {
+    m_aEndpointCache = aEndpointCache;
+    return this;
+  }
+
   /**
    * @return The endpoint resolved. May only be non-<code>null</code> if
    *         {@link #init(IDocumentTypeIdentifier, IProcessIdentifier, IParticipantIdentifier)}
@@ -134,7 +165,10 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
       // Perform SMP lookup
       try
       {
-        m_aEndpoint = m_aSMPClient.getEndpoint (aReceiverID, aDocTypeID, aProcID, m_aTP);
+        if (m_aEndpointCache != null)
+          m_aEndpoint = m_aEndpointCache.getEndpoint (m_aSMPClient, aReceiverID, aDocTypeID, aProcID, m_aTP);
+        else
+          m_aEndpoint = m_aSMPClient.getEndpoint (aReceiverID, aDocTypeID, aProcID, m_aTP);
         if (m_aEndpoint == null)
           throw new Phase4SMPException ("Failed to resolve SMP endpoint (" +
                                         aReceiverID.getURIEncoded () +
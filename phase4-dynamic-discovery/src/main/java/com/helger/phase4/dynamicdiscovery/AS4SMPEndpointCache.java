@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2020-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dynamicdiscovery;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.smpclient.exception.SMPClientException;
+import com.helger.smpclient.peppol.ISMPServiceMetadataProvider;
+import com.helger.xsds.peppol.smp1.EndpointType;
+
+/**
+ * A shared, thread-safe cache for Peppol SMP endpoint lookups. The cache key
+ * consists of the participant ID, the document type ID, the process ID and the
+ * transport profile. Features:
+ * <ul>
+ * <li>Positive results are cached for the configured TTL.</li>
+ * <li>Negative results (no endpoint found or failed lookup) are cached for the
+ * negative TTL, so that unreachable receivers don't cause a DNS and SMP round
+ * trip for every message.</li>
+ * <li>The number of entries is bounded - the least recently used entry is
+ * evicted first.</li>
+ * <li>Refresh-ahead: if a positive entry is accessed after the configured
+ * fraction of its TTL has passed, it is reloaded in the background while the
+ * old value is still returned.</li>
+ * <li>Concurrent lookups for the same key only cause a single SMP query.</li>
+ * </ul>
+ * Note: the cache key does not contain the SMP client, so one cache instance
+ * should only be used with SMP clients that resolve the same network (e.g.
+ * Peppol production).
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4SMPEndpointCache
+{
+  /**
+   * The callback that performs the real lookup on a cache miss.
+   *
+   * @author Philip Helger
+   */
+  @FunctionalInterface
+  public interface IEndpointLoader
+  {
+    /**
+     * @return The resolved endpoint or <code>null</code> if no such endpoint
+     *         exists.
+     * @throws SMPClientException
+     *         In case the lookup failed
+     */
+    @Nullable
+    EndpointType load () throws SMPClientException;
+  }
+
+  public static final Duration DEFAULT_TTL = Duration.ofHours (1);
+  public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofMinutes (5);
+  public static final int DEFAULT_MAX_SIZE = 10_000;
+  public static final double DEFAULT_REFRESH_AHEAD_FACTOR = 0.8;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4SMPEndpointCache.class);
+  private static final AtomicInteger REFRESH_THREAD_COUNTER = new AtomicInteger (0);
+  private static final ExecutorService DEFAULT_REFRESH_EXECUTOR = Executors.newCachedThreadPool (r -> {
+    final Thread ret = new Thread (r, "phase4-smp-endpoint-cache-refresh-" + REFRESH_THREAD_COUNTER.incrementAndGet ());
+    ret.setDaemon (true);
+    return ret;
+  });
+  private static final AS4SMPEndpointCache DEFAULT_INSTANCE = new AS4SMPEndpointCache ();
+
+  @Immutable
+  private static final class CacheKey
+  {
+    private final String m_sParticipantID;
+    private final String m_sDocTypeID;
+    private final String m_sProcessID;
+    private final String m_sTransportProfileID;
+    private final int m_nHashCode;
+
+    CacheKey (@Nonnull final IParticipantIdentifier aReceiverID,
+              @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+              @Nonnull final IProcessIdentifier aProcessID,
+              @Nonnull final ISMPTransportProfile aTP)
+    {
+      m_sParticipantID = aReceiverID.getURIEncoded ();
+      m_sDocTypeID = aDocTypeID.getURIEncoded ();
+      m_sProcessID = aProcessID.getURIEncoded ();
+      m_sTransportProfileID = aTP.getID ();
+      m_nHashCode = new HashCodeGenerator (this).append (m_sParticipantID)
+                                                .append (m_sDocTypeID)
+                                                .append (m_sProcessID)
+                                                .append (m_sTransportProfileID)
+                                                .getHashCode ();
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final CacheKey rhs = (CacheKey) o;
+      return EqualsHelper.equals (m_sParticipantID, rhs.m_sParticipantID) &&
+             EqualsHelper.equals (m_sDocTypeID, rhs.m_sDocTypeID) &&
+             EqualsHelper.equals (m_sProcessID, rhs.m_sProcessID) &&
+             EqualsHelper.equals (m_sTransportProfileID, rhs.m_sTransportProfileID);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_nHashCode;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return "(" + m_sParticipantID + ", " + m_sDocTypeID + ", " + m_sProcessID + ", " + m_sTransportProfileID + ")";
+    }
+  }
+
+  private static final class CacheEntry
+  {
+    private final EndpointType m_aEndpoint;
+    private final SMPClientException m_aError;
+    private final long m_nRefreshMillis;
+    private final long m_nExpirationMillis;
+    private final AtomicBoolean m_aRefreshing = new AtomicBoolean (false);
+
+    CacheEntry (@Nullable final EndpointType aEndpoint,
+                @Nullable final SMPClientException aError,
+                final long nRefreshMillis,
+                final long nExpirationMillis)
+    {
+      m_aEndpoint = aEndpoint;
+      m_aError = aError;
+      m_nRefreshMillis = nRefreshMillis;
+      m_nExpirationMillis = nExpirationMillis;
+    }
+
+    boolean isNegative ()
+    {
+      return m_aEndpoint == null;
+    }
+  }
+
+  private final long m_nTTLMillis;
+  private final long m_nNegativeTTLMillis;
+  private final int m_nMaxSize;
+  private final double m_dRefreshAheadFactor;
+  private final Executor m_aRefreshExecutor;
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  @GuardedBy ("m_aRWLock")
+  private final Map <CacheKey, CacheEntry> m_aMap;
+  private final ConcurrentHashMap <CacheKey, CompletableFuture <CacheEntry>> m_aInFlight = new ConcurrentHashMap <> ();
+
+  private final AtomicLong m_aHits = new AtomicLong ();
+  private final AtomicLong m_aNegativeHits = new AtomicLong ();
+  private final AtomicLong m_aMisses = new AtomicLong ();
+  private final AtomicLong m_aRefreshes = new AtomicLong ();
+  private final AtomicLong m_aEvictions = new AtomicLong ();
+
+  /**
+   * Constructor using all the defaults.
+   */
+  public AS4SMPEndpointCache ()
+  {
+    this (DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_SIZE, DEFAULT_REFRESH_AHEAD_FACTOR, DEFAULT_REFRESH_EXECUTOR);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aTTL
+   *        The time to live of positive lookup results. May not be
+   *        <code>null</code> and must be positive.
+   * @param aNegativeTTL
+   *        The time to live of negative lookup results. May not be
+   *        <code>null</code>. Use {@link Duration#ZERO} to disable negative
+   *        caching.
+   * @param nMaxSize
+   *        The maximum number of cache entries. Must be &gt; 0.
+   * @param dRefreshAheadFactor
+   *        The fraction of the TTL after which a positive entry is refreshed in
+   *        the background upon access. Must be &gt; 0. Values &ge; 1 disable
+   *        refresh-ahead.
+   * @param aRefreshExecutor
+   *        The executor to perform background refreshes. May not be
+   *        <code>null</code>.
+   */
+  public AS4SMPEndpointCache (@Nonnull final Duration aTTL,
+                              @Nonnull final Duration aNegativeTTL,
+                              @Nonnegative final int nMaxSize,
+                              final double dRefreshAheadFactor,
+                              @Nonnull final Executor aRefreshExecutor)
+  {
+    ValueEnforcer.notNull (aTTL, "TTL");
+    ValueEnforcer.isTrue ( () -> !aTTL.isNegative () && !aTTL.isZero (), "TTL must be positive");
+    ValueEnforcer.notNull (aNegativeTTL, "NegativeTTL");
+    ValueEnforcer.isFalse (aNegativeTTL::isNegative, "NegativeTTL may not be negative");
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    ValueEnforcer.isGT0 (dRefreshAheadFactor, "RefreshAheadFactor");
+    ValueEnforcer.notNull (aRefreshExecutor, "RefreshExecutor");
+    m_nTTLMillis = aTTL.toMillis ();
+    m_nNegativeTTLMillis = aNegativeTTL.toMillis ();
+    m_nMaxSize = nMaxSize;
+    m_dRefreshAheadFactor = dRefreshAheadFactor;
+    m_aRefreshExecutor = aRefreshExecutor;
+    // Access order for LRU eviction
+    m_aMap = new LinkedHashMap <CacheKey, CacheEntry> (16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry (final Map.Entry <CacheKey, CacheEntry> aEldest)
+      {
+        if (size () <= m_nMaxSize)
+          return false;
+        m_aEvictions.incrementAndGet ();
+        return true;
+      }
+    };
+  }
+
+  /**
+   * @return The global default cache instance, using the default settings.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4SMPEndpointCache getDefaultInstance ()
+  {
+    return DEFAULT_INSTANCE;
+  }
+
+  /**
+   * @return The current time in milliseconds. Overridable for testing.
+   */
+  protected long getCurrentTimeMillis ()
+  {
+    return System.currentTimeMillis ();
+  }
+
+  @Nonnull
+  private CacheEntry _createEntry (@Nullable final EndpointType aEndpoint, @Nullable final SMPClientException aError)
+  {
+    final long nNow = getCurrentTimeMillis ();
+    if (aEndpoint == null)
+      return new CacheEntry (null, aError, Long.MAX_VALUE, nNow + m_nNegativeTTLMillis);
+    final long nRefresh = m_dRefreshAheadFactor >= 1 ? Long.MAX_VALUE
+                                                     : nNow + (long) (m_nTTLMillis * m_dRefreshAheadFactor);
+    return new CacheEntry (aEndpoint, null, nRefresh, nNow + m_nTTLMillis);
+  }
+
+  @Nonnull
+  private CacheEntry _load (@Nonnull final IEndpointLoader aLoader)
+  {
+    try
+    {
+      return _createEntry (aLoader.load (), null);
+    }
+    catch (final SMPClientException ex)
+    {
+      return _createEntry (null, ex);
+    }
+  }
+
+  private void _put (@Nonnull final CacheKey aKey, @Nonnull final CacheEntry aEntry)
+  {
+    if (aEntry.isNegative () && m_nNegativeTTLMillis == 0)
+    {
+      // Negative caching is disabled
+      m_aRWLock.writeLocked ( () -> m_aMap.remove (aKey));
+    }
+    else
+      m_aRWLock.writeLocked ( () -> m_aMap.put (aKey, aEntry));
+  }
+
+  private void _refreshAsync (@Nonnull final CacheKey aKey,
+                              @Nonnull final CacheEntry aEntry,
+                              @Nonnull final IEndpointLoader aLoader)
+  {
+    // Only one refresh per entry
+    if (!aEntry.m_aRefreshing.compareAndSet (false, true))
+      return;
+
+    m_aRefreshes.incrementAndGet ();
+    try
+    {
+      m_aRefreshExecutor.execute ( () -> {
+        final CacheEntry aNewEntry = _load (aLoader);
+        if (aNewEntry.isNegative ())
+        {
+          // Keep the old value until it expires
+          LOGGER.warn ("Failed to refresh SMP endpoint " +
+                       aKey +
+                       " - keeping the cached value" +
+                       (aNewEntry.m_aError == null ? "" : ": " + aNewEntry.m_aError.getMessage ()));
+        }
+        else
+          _put (aKey, aNewEntry);
+      });
+    }
+    catch (final RuntimeException ex)
+    {
+      // E.g. RejectedExecutionException
+      LOGGER.warn ("Failed to schedule refresh of SMP endpoint " + aKey, ex);
+    }
+  }
+
+  @Nullable
+  private static EndpointType _unwrap (@Nonnull final CacheKey aKey, @Nonnull final CacheEntry aEntry) throws SMPClientException
+  {
+    if (aEntry.m_aError != null)
+      throw new SMPClientException ("Cached failure looking up SMP endpoint " +
+                                    aKey +
+                                    ": " +
+                                    aEntry.m_aError.getMessage (),
+                                    aEntry.m_aError);
+    return aEntry.m_aEndpoint;
+  }
+
+  /**
+   * Get the endpoint for the provided key, either from the cache or by invoking
+   * the provided loader.
+   *
+   * @param aReceiverID
+   *        Participant ID of the receiver. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        document type ID. May not be <code>null</code>.
+   * @param aProcessID
+   *        Process ID. May not be <code>null</code>.
+   * @param aTP
+   *        The transport profile. May not be <code>null</code>.
+   * @param aLoader
+   *        The loader to be invoked on a cache miss. May not be
+   *        <code>null</code>.
+   * @return <code>null</code> if no such endpoint exists (potentially cached).
+   * @throws SMPClientException
+   *         If the lookup failed (potentially cached).
+   */
+  @Nullable
+  public EndpointType getEndpoint (@Nonnull final IParticipantIdentifier aReceiverID,
+                                   @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                   @Nonnull final IProcessIdentifier aProcessID,
+                                   @Nonnull final ISMPTransportProfile aTP,
+                                   @Nonnull final IEndpointLoader aLoader) throws SMPClientException
+  {
+    ValueEnforcer.notNull (aReceiverID, "ReceiverID");
+    ValueEnforcer.notNull (aDocTypeID, "DocTypeID");
+    ValueEnforcer.notNull (aProcessID, "ProcessID");
+    ValueEnforcer.notNull (aTP, "TransportProfile");
+    ValueEnforcer.notNull (aLoader, "Loader");
+
+    final CacheKey aKey = new CacheKey (aReceiverID, aDocTypeID, aProcessID, aTP);
+
+    // Write lock, because "get" modifies the access order
+    final CacheEntry aCached = m_aRWLock.writeLockedGet ( () -> m_aMap.get (aKey));
+    if (aCached != null)
+    {
+      final long nNow = getCurrentTimeMillis ();
+      if (nNow < aCached.m_nExpirationMillis)
+      {
+        if (aCached.isNegative ())
+          m_aNegativeHits.incrementAndGet ();
+        else
+        {
+          m_aHits.incrementAndGet ();
+          if (nNow >= aCached.m_nRefreshMillis)
+            _refreshAsync (aKey, aCached, aLoader);
+        }
+        return _unwrap (aKey, aCached);
+      }
+    }
+
+    m_aMisses.incrementAndGet ();
+
+    // Ensure only one lookup per key is running at a time
+    final CompletableFuture <CacheEntry> aNewFuture = new CompletableFuture <> ();
+    final CompletableFuture <CacheEntry> aExistingFuture = m_aInFlight.putIfAbsent (aKey, aNewFuture);
+    if (aExistingFuture != null)
+    {
+      try
+      {
+        return _unwrap (aKey, aExistingFuture.get ());
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        throw new SMPClientException ("Interrupted while waiting for SMP endpoint lookup of " + aKey, ex);
+      }
+      catch (final ExecutionException ex)
+      {
+        throw new SMPClientException ("Failed waiting for SMP endpoint lookup of " + aKey, ex.getCause ());
+      }
+    }
+
+    try
+    {
+      final CacheEntry aEntry = _load (aLoader);
+      _put (aKey, aEntry);
+      aNewFuture.complete (aEntry);
+      return _unwrap (aKey, aEntry);
+    }
+    catch (final RuntimeException | Error ex)
+    {
+      aNewFuture.completeExceptionally (ex);
+      throw ex;
+    }
+    finally
+    {
+      m_aInFlight.remove (aKey, aNewFuture);
+    }
+  }
+
+  /**
+   * Get the endpoint for the provided key, either from the cache or by querying
+   * the provided SMP client.
+   *
+   * @param aSMPClient
+   *        The SMP client to use on a cache miss. May not be <code>null</code>.
+   * @param aReceiverID
+   *        Participant ID of the receiver. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        document type ID. May not be <code>null</code>.
+   * @param aProcessID
+   *        Process ID. May not be <code>null</code>.
+   * @param aTP
+   *        The transport profile. May not be <code>null</code>.
+   * @return <code>null</code> if no such endpoint exists (potentially cached).
+   * @throws SMPClientException
+   *         If the lookup failed (potentially cached).
+   */
+  @Nullable
+  public EndpointType getEndpoint (@Nonnull final ISMPServiceMetadataProvider aSMPClient,
+                                   @Nonnull final IParticipantIdentifier aReceiverID,
+                                   @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                   @Nonnull final IProcessIdentifier aProcessID,
+                                   @Nonnull final ISMPTransportProfile aTP) throws SMPClientException
+  {
+    ValueEnforcer.notNull (aSMPClient, "SMPClient");
+    return getEndpoint (aReceiverID,
+                        aDocTypeID,
+                        aProcessID,
+                        aTP,
+                        () -> aSMPClient.getEndpoint (aReceiverID, aDocTypeID, aProcessID, aTP));
+  }
+
+  /**
+   * Remove all cached entries. The statistics are not reset.
+   */
+  public void clearCache ()
+  {
+    m_aRWLock.writeLocked (m_aMap::clear);
+  }
+
+  /**
+   * @return The number of cached entries, including expired ones that were not
+   *         yet accessed again.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aRWLock.readLockedInt (m_aMap::size);
+  }
+
+  /**
+   * @return The number of lookups answered from a positive cache entry.
+   */
+  @Nonnegative
+  public long getHitCount ()
+  {
+    return m_aHits.get ();
+  }
+
+  /**
+   * @return The number of lookups answered from a negative cache entry.
+   */
+  @Nonnegative
+  public long getNegativeHitCount ()
+  {
+    return m_aNegativeHits.get ();
+  }
+
+  /**
+   * @return The number of lookups that were not answered from the cache.
+   */
+  @Nonnegative
+  public long getMissCount ()
+  {
+    return m_aMisses.get ();
+  }
+
+  /**
+   * @return The number of background refreshes triggered.
+   */
+  @Nonnegative
+  public long getRefreshCount ()
+  {
+    return m_aRefreshes.get ();
+  }
+
+  /**
+   * @return The number of entries evicted because the maximum size was
+   *         reached.
+   */
+  @Nonnegative
+  public long getEvictionCount ()
+  {
+    return m_aEvictions.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("TTLMillis", m_nTTLMillis)
+                                       .append ("NegativeTTLMillis", m_nNegativeTTLMillis)
+                                       .append ("MaxSize", m_nMaxSize)
+                                       .append ("RefreshAheadFactor", m_dRefreshAheadFactor)
+                                       .append ("Hits", m_aHits.get ())
+                                       .append ("NegativeHits", m_aNegativeHits.get ())
+                                       .append ("Misses", m_aMisses.get ())
+                                       .append ("Refreshes", m_aRefreshes.get ())
+                                       .append ("Evictions", m_aEvictions.get ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2020-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dynamicdiscovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.smpclient.exception.SMPClientException;
+import com.helger.xsds.peppol.smp1.EndpointType;
+
+/**
+ * Test class for class {@link AS4SMPEndpointCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4SMPEndpointCacheTest
+{
+  private static final IParticipantIdentifier PI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:test");
+  private static final IDocumentTypeIdentifier DT = PeppolIdentifierFactory.INSTANCE.createDocumentTypeIdentifierWithDefaultScheme ("urn:doctype");
+  private static final IProcessIdentifier PR = PeppolIdentifierFactory.INSTANCE.createProcessIdentifierWithDefaultScheme ("urn:process");
+  private static final ESMPTransportProfile TP = ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2;
+
+  private static final class TestCache extends AS4SMPEndpointCache
+  {
+    private final AtomicLong m_aNow = new AtomicLong (1_000_000);
+
+    TestCache (final int nMaxSize)
+    {
+      // Run refreshes synchronously
+      super (Duration.ofSeconds (100), Duration.ofSeconds (10), nMaxSize, 0.5, Runnable::run);
+    }
+
+    @Override
+    protected long getCurrentTimeMillis ()
+    {
+      return m_aNow.get ();
+    }
+
+    void advance (final long nMillis)
+    {
+      m_aNow.addAndGet (nMillis);
+    }
+  }
+
+  @Test
+  public void testPositiveCaching () throws Exception
+  {
+    final TestCache aCache = new TestCache (100);
+    final AtomicInteger aLoads = new AtomicInteger (0);
+    final EndpointType aEP = new EndpointType ();
+
+    for (int i = 0; i < 5; ++i)
+      assertSame (aEP, aCache.getEndpoint (PI, DT, PR, TP, () -> {
+        aLoads.incrementAndGet ();
+        return aEP;
+      }));
+    assertEquals (1, aLoads.get ());
+    assertEquals (1, aCache.getMissCount ());
+    assertEquals (4, aCache.getHitCount ());
+
+    // Other transport profile is a different key
+    aCache.getEndpoint (PI, DT, PR, ESMPTransportProfile.TRANSPORT_PROFILE_BDXR_AS4, () -> {
+      aLoads.incrementAndGet ();
+      return aEP;
+    });
+    assertEquals (2, aLoads.get ());
+
+    // Expired
+    aCache.advance (100_000);
+    aCache.getEndpoint (PI, DT, PR, TP, () -> {
+      aLoads.incrementAndGet ();
+      return aEP;
+    });
+    assertEquals (3, aLoads.get ());
+    assertEquals (3, aCache.getMissCount ());
+  }
+
+  @Test
+  public void testRefreshAhead () throws Exception
+  {
+    final TestCache aCache = new TestCache (100);
+    final EndpointType aEP1 = new EndpointType ();
+    final EndpointType aEP2 = new EndpointType ();
+
+    assertSame (aEP1, aCache.getEndpoint (PI, DT, PR, TP, () -> aEP1));
+
+    // After half of the TTL, the old value is returned and a refresh is
+    // triggered
+    aCache.advance (60_000);
+    assertSame (aEP1, aCache.getEndpoint (PI, DT, PR, TP, () -> aEP2));
+    assertEquals (1, aCache.getRefreshCount ());
+
+    // The refreshed value is used
+    assertSame (aEP2, aCache.getEndpoint (PI, DT, PR, TP, () -> {
+      fail ();
+      return null;
+    }));
+    assertEquals (1, aCache.getMissCount ());
+  }
+
+  @Test
+  public void testNegativeCaching () throws Exception
+  {
+    final TestCache aCache = new TestCache (100);
+    final AtomicInteger aLoads = new AtomicInteger (0);
+
+    // Failing lookup
+    for (int i = 0; i < 3; ++i)
+      try
+      {
+        aCache.getEndpoint (PI, DT, PR, TP, () -> {
+          aLoads.incrementAndGet ();
+          throw new SMPClientException ("Simulated error");
+        });
+        fail ();
+      }
+      catch (final SMPClientException ex)
+      {
+        // expected
+      }
+    assertEquals (1, aLoads.get ());
+    assertEquals (2, aCache.getNegativeHitCount ());
+
+    // Negative TTL expired
+    aCache.advance (10_000);
+    assertNull (aCache.getEndpoint (PI, DT, PR, TP, () -> {
+      aLoads.incrementAndGet ();
+      return null;
+    }));
+    assertNull (aCache.getEndpoint (PI, DT, PR, TP, () -> {
+      fail ();
+      return null;
+    }));
+    assertEquals (2, aLoads.get ());
+  }
+
+  @Test
+  public void testEviction () throws Exception
+  {
+    final TestCache aCache = new TestCache (2);
+    final EndpointType aEP = new EndpointType ();
+    for (int i = 0; i < 5; ++i)
+      aCache.getEndpoint (PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:test" + i),
+                          DT,
+                          PR,
+                          TP,
+                          () -> aEP);
+    assertEquals (2, aCache.size ());
+    assertEquals (3, aCache.getEvictionCount ());
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+
+/**
+ * An {@link InputStream} that delivers the compressed content of a source
+ * {@link InputStream}. This allows to chain the compression with other stream
+ * stages (like digesting or spooling), without the need to write the
+ * compressed content to a separate file first.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@NotThreadSafe
+public class AS4CompressingInputStream extends InputStream
+{
+  private final InputStream m_aSrcIS;
+  private final NonBlockingByteArrayOutputStream m_aCompressedBuffer = new NonBlockingByteArrayOutputStream ();
+  private final OutputStream m_aCompressOS;
+  private final byte [] m_aReadBuffer = new byte [16 * CGlobal.BYTES_PER_KILOBYTE];
+  private byte [] m_aPending = new byte [0];
+  private int m_nPendingPos = 0;
+  private boolean m_bFinished = false;
+
+  /**
+   * Constructor
+   *
+   * @param aSrcIS
+   *        The uncompressed source stream. May not be <code>null</code>. Is
+   *        closed when this stream is closed.
+   * @param eCompressionMode
+   *        The compression mode to use. May not be <code>null</code>.
+   * @throws IOException
+   *         If the compression stream cannot be created
+   */
+  public AS4CompressingInputStream (@Nonnull @WillCloseWhenClosed final InputStream aSrcIS,
+                                    @Nonnull final EAS4CompressionMode eCompressionMode) throws IOException
+  {
+    ValueEnforcer.notNull (aSrcIS, "SrcIS");
+    ValueEnforcer.notNull (eCompressionMode, "CompressionMode");
+    m_aSrcIS = aSrcIS;
+    m_aCompressOS = eCompressionMode.getCompressStream (m_aCompressedBuffer);
+  }
+
+  /**
+   * Ensure there are pending compressed bytes available.
+   *
+   * @return <code>true</code> if bytes are available, <code>false</code> on
+   *         EOF.
+   */
+  private boolean _ensurePending () throws IOException
+  {
+    while (m_nPendingPos >= m_aPending.length)
+    {
+      if (m_bFinished)
+        return false;
+
+      m_aCompressedBuffer.reset ();
+      final int nRead = m_aSrcIS.read (m_aReadBuffer);
+      if (nRead < 0)
+      {
+        // Writes the compression trailer
+        m_aCompressOS.close ();
+        m_bFinished = true;
+      }
+      else
+        m_aCompressOS.write (m_aReadBuffer, 0, nRead);
+
+      // May be empty if the compressor buffers internally
+      m_aPending = m_aCompressedBuffer.toByteArray ();
+      m_nPendingPos = 0;
+    }
+    return true;
+  }
+
+  @Override
+  public int read () throws IOException
+  {
+    if (!_ensurePending ())
+      return -1;
+    return m_aPending[m_nPendingPos++] & 0xff;
+  }
+
+  @Override
+  public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+  {
+    ValueEnforcer.isArrayOfsLen (aBuf, nOfs, nLen);
+    if (nLen == 0)
+      return 0;
+    if (!_ensurePending ())
+      return -1;
+
+    final int nCount = Math.min (nLen, m_aPending.length - m_nPendingPos);
+    System.arraycopy (m_aPending, m_nPendingPos, aBuf, nOfs, nCount);
+    m_nPendingPos += nCount;
+    return nCount;
+  }
+
+  @Override
+  public int available () throws IOException
+  {
+    return m_aPending.length - m_nPendingPos;
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    if (!m_bFinished)
+    {
+      m_bFinished = true;
+      StreamHelper.close (m_aCompressOS);
+    }
+    StreamHelper.close (m_aSrcIS);
+  }
+}
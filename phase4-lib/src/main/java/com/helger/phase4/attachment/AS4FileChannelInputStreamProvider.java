@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.ByteBufferInputStream;
+import com.helger.commons.io.stream.NonBlockingBufferedInputStream;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * An {@link IHasInputStream} for file based attachment content that uses NIO
+ * {@link FileChannel}s instead of {@link java.io.FileInputStream}s. If memory
+ * mapping is enabled, the file is mapped into memory on first access and all
+ * streams share the same mapping. That avoids the copying between kernel and
+ * user space when the same content is read multiple times (e.g. for the
+ * signature digest, for encryption and for sending).<br>
+ * Note: memory mapped files cannot be unmapped explicitly - the mapping is
+ * released when the buffer is garbage collected. On Windows a mapped file
+ * cannot be deleted before that.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4FileChannelInputStreamProvider implements IHasInputStream
+{
+  /** The maximum file size that can be memory mapped */
+  public static final long MAX_MAPPED_FILE_SIZE = Integer.MAX_VALUE;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4FileChannelInputStreamProvider.class);
+
+  private final File m_aFile;
+  private final boolean m_bMemoryMapped;
+  @GuardedBy ("this")
+  private MappedByteBuffer m_aMappedBuffer;
+  @GuardedBy ("this")
+  private boolean m_bMappingFailed = false;
+
+  /**
+   * Constructor
+   *
+   * @param aFile
+   *        The file to read from. May not be <code>null</code>. The file must
+   *        not be modified after the first stream was opened.
+   * @param bMemoryMapped
+   *        <code>true</code> to memory map files up to
+   *        {@link #MAX_MAPPED_FILE_SIZE} bytes, <code>false</code> to read via
+   *        a {@link FileChannel}.
+   */
+  public AS4FileChannelInputStreamProvider (@Nonnull final File aFile, final boolean bMemoryMapped)
+  {
+    ValueEnforcer.notNull (aFile, "File");
+    m_aFile = aFile;
+    m_bMemoryMapped = bMemoryMapped;
+  }
+
+  /**
+   * @return The file as provided in the constructor. Never <code>null</code>.
+   */
+  @Nonnull
+  public final File getFile ()
+  {
+    return m_aFile;
+  }
+
+  /**
+   * @return <code>true</code> if memory mapping is enabled.
+   */
+  public final boolean isMemoryMapped ()
+  {
+    return m_bMemoryMapped;
+  }
+
+  @Nullable
+  private synchronized ByteBuffer _getMappedBuffer () throws IOException
+  {
+    if (m_aMappedBuffer == null && !m_bMappingFailed)
+    {
+      try (final FileChannel aFC = FileChannel.open (m_aFile.toPath (), StandardOpenOption.READ))
+      {
+        final long nSize = aFC.size ();
+        if (nSize > MAX_MAPPED_FILE_SIZE)
+        {
+          LOGGER.info ("File '" +
+                       m_aFile.getAbsolutePath () +
+                       "' is too large (" +
+                       nSize +
+                       " bytes) to be memory mapped - reading it via a FileChannel");
+          m_bMappingFailed = true;
+        }
+        else
+        {
+          // The mapping stays valid after the channel is closed
+          m_aMappedBuffer = aFC.map (FileChannel.MapMode.READ_ONLY, 0, nSize);
+        }
+      }
+    }
+    return m_aMappedBuffer;
+  }
+
+  @Nonnull
+  public InputStream getInputStream ()
+  {
+    try
+    {
+      if (m_bMemoryMapped)
+      {
+        final ByteBuffer aMappedBuffer = _getMappedBuffer ();
+        if (aMappedBuffer != null)
+        {
+          // Each stream has its own position
+          return new ByteBufferInputStream (aMappedBuffer.duplicate ());
+        }
+      }
+
+      return new NonBlockingBufferedInputStream (Channels.newInputStream (FileChannel.open (m_aFile.toPath (),
+                                                                                             StandardOpenOption.READ)),
+                                                 64 * CGlobal.BYTES_PER_KILOBYTE);
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException ("Failed to open file '" + m_aFile.getAbsolutePath () + "'", ex);
+    }
+  }
+
+  public final boolean isReadMultiple ()
+  {
+    return true;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("File", m_aFile)
+                                       .append ("MemoryMapped", m_bMemoryMapped)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.WillNotClose;
+
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.MimeBodyPart;
+
+/**
+ * An {@link IAS4IncomingAttachmentFactory} that spools large incoming
+ * attachments to temporary files via NIO file channels using pre-allocated
+ * direct buffers, and reads them via {@link AS4FileChannelInputStreamProvider}
+ * - optionally memory mapped. This reduces heap churn and copying for very
+ * large payloads.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public class AS4IncomingAttachmentFactoryFileChannel implements IAS4IncomingAttachmentFactory
+{
+  private final boolean m_bMemoryMapped;
+
+  /**
+   * Constructor
+   *
+   * @param bMemoryMapped
+   *        <code>true</code> to memory map the temporary files for reading,
+   *        <code>false</code> to read them via a file channel.
+   */
+  public AS4IncomingAttachmentFactoryFileChannel (final boolean bMemoryMapped)
+  {
+    m_bMemoryMapped = bMemoryMapped;
+  }
+
+  /**
+   * @return <code>true</code> if memory mapping is enabled.
+   */
+  public final boolean isMemoryMapped ()
+  {
+    return m_bMemoryMapped;
+  }
+
+  @Nonnull
+  public WSS4JAttachment createAttachment (@Nonnull final MimeBodyPart aBodyPart,
+                                           @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                        MessagingException
+  {
+    // The body part is already in memory
+    return WSS4JAttachment.createIncomingFileAttachment (aBodyPart, aResHelper);
+  }
+
+  @Nonnull
+  @Override
+  public WSS4JAttachment createAttachment (@Nonnull final InternetHeaders aPartHeaders,
+                                           @Nonnull @WillNotClose final InputStream aRawContentIS,
+                                           @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                        MessagingException
+  {
+    return WSS4JAttachment.createIncomingFileAttachment (aPartHeaders, aRawContentIS, aResHelper, true, m_bMemoryMapped);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MemoryMapped", m_bMemoryMapped).getToString ();
+  }
+}
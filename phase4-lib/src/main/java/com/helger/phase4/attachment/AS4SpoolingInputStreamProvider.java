@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.functional.IThrowingSupplier;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * An {@link IHasInputStream} that reads a source stream only once and writes
+ * the read content to a spool file at the same time. The first call to
+ * {@link #getInputStream()} returns a stream that reads from the source and
+ * spools on the fly. All later calls read from the spool file. If the first
+ * stream was not read until the end, the remaining source content is spooled
+ * before the spool file is returned. That makes a "read once" source (like an
+ * encrypting stream) repeatable, without an additional pass over the data.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4SpoolingInputStreamProvider implements IHasInputStream, Closeable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4SpoolingInputStreamProvider.class);
+
+  private final IThrowingSupplier <? extends InputStream, IOException> m_aSrcISSupplier;
+  private final File m_aSpoolFile;
+  @GuardedBy ("this")
+  private InputStream m_aSrcIS;
+  @GuardedBy ("this")
+  private OutputStream m_aSpoolOS;
+  @GuardedBy ("this")
+  private boolean m_bComplete = false;
+  @GuardedBy ("this")
+  private boolean m_bClosed = false;
+
+  private final class SpoolingInputStream extends InputStream
+  {
+    @Override
+    public int read () throws IOException
+    {
+      final byte [] aBuf = new byte [1];
+      final int nRead = read (aBuf, 0, 1);
+      return nRead < 0 ? -1 : aBuf[0] & 0xff;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      return _readAndSpool (aBuf, nOfs, nLen);
+    }
+
+    @Override
+    public void close ()
+    {
+      // Don't close the source - the rest may be spooled later on
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aSrcISSupplier
+   *        The supplier for the source stream. It is invoked at most once. May
+   *        not be <code>null</code>.
+   * @param aSpoolFile
+   *        The spool file to write to. The file is not deleted by this class.
+   *        May not be <code>null</code>.
+   */
+  public AS4SpoolingInputStreamProvider (@Nonnull final IThrowingSupplier <? extends InputStream, IOException> aSrcISSupplier,
+                                         @Nonnull final File aSpoolFile)
+  {
+    ValueEnforcer.notNull (aSrcISSupplier, "SrcISSupplier");
+    ValueEnforcer.notNull (aSpoolFile, "SpoolFile");
+    m_aSrcISSupplier = aSrcISSupplier;
+    m_aSpoolFile = aSpoolFile;
+  }
+
+  /**
+   * @return The spool file as provided in the constructor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final File getSpoolFile ()
+  {
+    return m_aSpoolFile;
+  }
+
+  /**
+   * @return <code>true</code> if the source was completely read and the spool
+   *         file is complete.
+   */
+  public final synchronized boolean isSpoolComplete ()
+  {
+    return m_bComplete;
+  }
+
+  @GuardedBy ("this")
+  private void _finishSpool () throws IOException
+  {
+    StreamHelper.close (m_aSrcIS);
+    m_aSrcIS = null;
+    m_aSpoolOS.close ();
+    m_aSpoolOS = null;
+    m_bComplete = true;
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Finished spooling to '" + m_aSpoolFile.getAbsolutePath () + "'");
+  }
+
+  private synchronized int _readAndSpool (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+  {
+    if (m_bClosed)
+      throw new IOException ("The spooling stream provider is already closed");
+    if (m_bComplete)
+    {
+      // Someone else requested the spool file in the meantime
+      return -1;
+    }
+
+    final int nRead = m_aSrcIS.read (aBuf, nOfs, nLen);
+    if (nRead < 0)
+      _finishSpool ();
+    else
+      if (nRead > 0)
+        m_aSpoolOS.write (aBuf, nOfs, nRead);
+    return nRead;
+  }
+
+  @GuardedBy ("this")
+  private void _spoolRemaining () throws IOException
+  {
+    LOGGER.info ("Spooling the remaining content to '" + m_aSpoolFile.getAbsolutePath () + "'");
+
+    final byte [] aBuffer = new byte [16 * CGlobal.BYTES_PER_KILOBYTE];
+    int nRead;
+    while ((nRead = m_aSrcIS.read (aBuffer)) >= 0)
+      m_aSpoolOS.write (aBuffer, 0, nRead);
+    _finishSpool ();
+  }
+
+  @Nonnull
+  public synchronized InputStream getInputStream ()
+  {
+    if (m_bClosed)
+      throw new IllegalStateException ("The spooling stream provider is already closed");
+
+    try
+    {
+      if (!m_bComplete)
+      {
+        if (m_aSrcIS == null)
+        {
+          // First access - read and spool at the same time
+          m_aSrcIS = m_aSrcISSupplier.get ();
+          if (m_aSrcIS == null)
+            throw new IllegalStateException ("Got no source InputStream");
+          m_aSpoolOS = FileHelper.getBufferedOutputStream (m_aSpoolFile);
+          if (m_aSpoolOS == null)
+            throw new IOException ("Failed to open spool file '" + m_aSpoolFile.getAbsolutePath () + "' for writing");
+          return new SpoolingInputStream ();
+        }
+
+        // The first stream was not read completely
+        _spoolRemaining ();
+      }
+      return FileHelper.getBufferedInputStream (m_aSpoolFile);
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException ("Failed to spool to '" + m_aSpoolFile.getAbsolutePath () + "'", ex);
+    }
+  }
+
+  public final boolean isReadMultiple ()
+  {
+    return true;
+  }
+
+  public synchronized void close ()
+  {
+    if (!m_bClosed)
+    {
+      m_bClosed = true;
+      StreamHelper.close (m_aSrcIS);
+      StreamHelper.close (m_aSpoolOS);
+      m_aSrcIS = null;
+      m_aSpoolOS = null;
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("SpoolFile", m_aSpoolFile).getToString ();
+  }
+}
@@ -17,12 +17,16 @@
 package com.helger.phase4.attachment;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.annotation.Nonnull;
+import javax.annotation.WillNotClose;
 
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.phase4.util.AS4ResourceHelper;
 
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
 import jakarta.mail.internet.MimeBodyPart;
 
 /**
@@ -51,10 +55,65 @@ public interface IAS4IncomingAttachmentFactory
   WSS4JAttachment createAttachment (@Nonnull MimeBodyPart aBodyPart, @Nonnull AS4ResourceHelper aResHelper) throws IOException,
                                                                                                             MessagingException;
 
+  /**
+   * Create an attachment if the source message is a MIME message, based on the
+   * already parsed MIME part headers and the unread MIME part content. This is
+   * the method invoked by the incoming message parser, so that implementations
+   * have the chance to not buffer the whole part in memory. The default
+   * implementation is backwards compatible and reads the whole part into a
+   * {@link MimeBodyPart} before calling
+   * {@link #createAttachment(MimeBodyPart, AS4ResourceHelper)}.
+   *
+   * @param aPartHeaders
+   *        The MIME part headers. May not be <code>null</code>.
+   * @param aRawContentIS
+   *        The raw (still transfer encoded) MIME part content. May not be
+   *        <code>null</code>.
+   * @param aResHelper
+   *        The resource manager to use. May not be <code>null</code>.
+   * @return The internal attachment representation. Never <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   * @throws MessagingException
+   *         In case MIME part reading fails.
+   * @since 2.1.3
+   */
+  @Nonnull
+  default WSS4JAttachment createAttachment (@Nonnull final InternetHeaders aPartHeaders,
+                                            @Nonnull @WillNotClose final InputStream aRawContentIS,
+                                            @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                         MessagingException
+  {
+    return createAttachment (new MimeBodyPart (aPartHeaders, StreamHelper.getAllBytes (aRawContentIS)), aResHelper);
+  }
+
   /**
    * The default instance of {@link IAS4IncomingAttachmentFactory} that uses
    * {@link WSS4JAttachment#createIncomingFileAttachment(MimeBodyPart, AS4ResourceHelper)}
+   * and
+   * {@link WSS4JAttachment#createIncomingFileAttachment(InternetHeaders, InputStream, AS4ResourceHelper)}
+   * to never keep more than the in-memory threshold of a part in memory.
    */
   @Nonnull
-  IAS4IncomingAttachmentFactory DEFAULT_INSTANCE = WSS4JAttachment::createIncomingFileAttachment;
+  IAS4IncomingAttachmentFactory DEFAULT_INSTANCE = new IAS4IncomingAttachmentFactory ()
+  {
+    @Nonnull
+    @Override
+    public WSS4JAttachment createAttachment (@Nonnull final MimeBodyPart aBodyPart,
+                                             @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                          MessagingException
+    {
+      return WSS4JAttachment.createIncomingFileAttachment (aBodyPart, aResHelper);
+    }
+
+    @Nonnull
+    @Override
+    public WSS4JAttachment createAttachment (@Nonnull final InternetHeaders aPartHeaders,
+                                             @Nonnull @WillNotClose final InputStream aRawContentIS,
+                                             @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                          MessagingException
+    {
+      return WSS4JAttachment.createIncomingFileAttachment (aPartHeaders, aRawContentIS, aResHelper);
+    }
+  };
 }
@@ -21,7 +21,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.Enumeration;
 import java.util.Map;
 
@@ -40,17 +45,20 @@ import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.annotation.UnsupportedOperation;
 import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.functional.IThrowingSupplier;
 import com.helger.commons.http.CHttpHeader;
 import com.helger.commons.io.IHasInputStream;
 import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.stream.HasInputStream;
 import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.mime.IMimeType;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.mail.cte.EContentTransferEncoding;
 import com.helger.mail.datasource.InputStreamProviderDataSource;
+import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.util.AS4ResourceHelper;
 
@@ -58,8 +66,10 @@ import jakarta.activation.DataHandler;
 import jakarta.activation.DataSource;
 import jakarta.mail.Header;
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
 import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.MimeUtility;
 
 /**
  * Special WSS4J attachment with an InputStream provider instead of a fixed
@@ -78,6 +88,8 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
   public static final String CONTENT_ID_SUFFIX = ">";
 
   private static final Logger LOGGER = LoggerFactory.getLogger (WSS4JAttachment.class);
+  private static final int SPOOL_BUFFER_SIZE = 64 * CGlobal.BYTES_PER_KILOBYTE;
+  private static final ThreadLocal <ByteBuffer> SPOOL_BUFFER = ThreadLocal.withInitial ( () -> ByteBuffer.allocateDirect (SPOOL_BUFFER_SIZE));
 
   private final AS4ResourceHelper m_aResHelper;
   private IHasInputStream m_aISP;
@@ -340,6 +352,43 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
     aAttachment.addHeader (CHttpHeader.CONTENT_TYPE, aAttachment.getMimeType ());
   }
 
+  @Nonnull
+  private static IHasInputStream _createOutgoingFileStreamProvider (@Nonnull final File aFile)
+  {
+    if (AS4Configuration.isOutgoingAttachmentMemoryMapped ())
+      return new AS4FileChannelInputStreamProvider (aFile, true);
+    return HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aFile));
+  }
+
+  /**
+   * Create a stream provider that compresses the source content while it is
+   * read for the first time and spools the compressed content to a temporary
+   * file, that is used for all subsequent reads. So compression and e.g. the
+   * signature digest happen in one pass.
+   *
+   * @param aSrcISSupplier
+   *        The supplier of the uncompressed source stream. May not be
+   *        <code>null</code>.
+   * @param eCompressionMode
+   *        The compression mode to use. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @return The stream provider. Never <code>null</code>.
+   * @throws IOException
+   *         If the temporary file could not be created
+   */
+  @Nonnull
+  private static IHasInputStream _createPipelinedCompressionProvider (@Nonnull final IThrowingSupplier <? extends InputStream, IOException> aSrcISSupplier,
+                                                                      @Nonnull final EAS4CompressionMode eCompressionMode,
+                                                                      @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
+  {
+    final AS4SpoolingInputStreamProvider ret = new AS4SpoolingInputStreamProvider ( () -> new AS4CompressingInputStream (aSrcISSupplier.get (),
+                                                                                                                          eCompressionMode),
+                                                                                    aResHelper.createTempFile ());
+    aResHelper.addCloseable (ret);
+    return ret;
+  }
+
   @Nonnull
   public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final AS4OutgoingAttachment aAttachment,
                                                               @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
@@ -419,6 +468,15 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
     {
       ret.setCompressionMode (eCompressionMode);
 
+      if (AS4Configuration.isOutgoingAttachmentPipelined ())
+      {
+        // Compress while the content is read for the first time
+        ret.setSourceStreamProvider (_createPipelinedCompressionProvider ( () -> FileHelper.getBufferedInputStream (aSrcFile),
+                                                                          eCompressionMode,
+                                                                          aResHelper));
+        return ret;
+      }
+
       // Create temporary file with compressed content to avoid that the
       // original is compressed more than once
       aRealFile = aResHelper.createTempFile ();
@@ -435,7 +493,7 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
 
     // Set a stream provider that can be read multiple times (opens a new
     // FileInputStream internally)
-    ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aRealFile)));
+    ret.setSourceStreamProvider (_createOutgoingFileStreamProvider (aRealFile));
     return ret;
   }
 
@@ -487,13 +545,22 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
     {
       ret.setCompressionMode (eCompressionMode);
 
+      if (AS4Configuration.isOutgoingAttachmentPipelined ())
+      {
+        // Compress while the content is read for the first time
+        ret.setSourceStreamProvider (_createPipelinedCompressionProvider ( () -> new NonBlockingByteArrayInputStream (aSrcData),
+                                                                          eCompressionMode,
+                                                                          aResHelper));
+        return ret;
+      }
+
       // Create temporary file with compressed content
       final File aRealFile = aResHelper.createTempFile ();
       try (final OutputStream aOS = eCompressionMode.getCompressStream (FileHelper.getBufferedOutputStream (aRealFile)))
       {
         aOS.write (aSrcData);
       }
-      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aRealFile)));
+      ret.setSourceStreamProvider (_createOutgoingFileStreamProvider (aRealFile));
     }
     else
     {
@@ -593,20 +660,201 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
     }
 
     // Read all MIME part headers
-    final Enumeration <Header> aEnum = aBodyPart.getAllHeaders ();
+    _addIncomingHeaders (ret, aBodyPart.getAllHeaders ());
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Finished handling of incoming WSS4J attachment");
+
+    return ret;
+  }
+
+  private static void _addIncomingHeaders (@Nonnull final WSS4JAttachment aAttachment,
+                                           @Nonnull final Enumeration <Header> aEnum)
+  {
     while (aEnum.hasMoreElements ())
     {
       final Header aHeader = aEnum.nextElement ();
-      ret.addHeader (aHeader.getName (), aHeader.getValue ());
+      aAttachment.addHeader (aHeader.getName (), aHeader.getValue ());
     }
 
     // These headers are mandatory and overwrite headers from the MIME body part
-    ret.addHeader (CHttpHeader.CONTENT_DESCRIPTION, CONTENT_DESCRIPTION_ATTACHMENT);
-    ret.addHeader (CHttpHeader.CONTENT_ID, CONTENT_ID_PREFIX + ret.getId () + CONTENT_ID_SUFFIX);
-    ret.addHeader (CHttpHeader.CONTENT_TYPE, ret.getMimeType ());
+    aAttachment.addHeader (CHttpHeader.CONTENT_DESCRIPTION, CONTENT_DESCRIPTION_ATTACHMENT);
+    aAttachment.addHeader (CHttpHeader.CONTENT_ID, CONTENT_ID_PREFIX + aAttachment.getId () + CONTENT_ID_SUFFIX);
+    aAttachment.addHeader (CHttpHeader.CONTENT_TYPE, aAttachment.getMimeType ());
+  }
+
+  /**
+   * Create an incoming attachment from the already parsed MIME part headers
+   * and the still unread MIME part content. In contrast to
+   * {@link #createIncomingFileAttachment(MimeBodyPart, AS4ResourceHelper)} the
+   * content is never read into memory completely: only up to the limit of
+   * {@link #canBeKeptInMemory(long)} is buffered, everything else is streamed
+   * to a temporary file.
+   *
+   * @param aPartHeaders
+   *        The headers of the MIME part. May not be <code>null</code>.
+   * @param aRawContentIS
+   *        The raw (still transfer encoded) content of the MIME part. May not
+   *        be <code>null</code>. This stream is fully consumed but not closed.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @return The created attachment. Never <code>null</code>.
+   * @throws MessagingException
+   *         In case the Content-Transfer-Encoding is not supported
+   * @throws IOException
+   *         In case reading or writing fails
+   * @since 2.1.3
+   */
+  @Nonnull
+  public static WSS4JAttachment createIncomingFileAttachment (@Nonnull final InternetHeaders aPartHeaders,
+                                                              @Nonnull @WillNotClose final InputStream aRawContentIS,
+                                                              @Nonnull final AS4ResourceHelper aResHelper) throws MessagingException,
+                                                                                                           IOException
+  {
+    return createIncomingFileAttachment (aPartHeaders, aRawContentIS, aResHelper, false, false);
+  }
+
+  private static void _spoolViaFileChannel (@Nonnull final NonBlockingByteArrayOutputStream aBufferOS,
+                                            @Nonnull @WillNotClose final InputStream aContentIS,
+                                            @Nonnull final File aFile) throws IOException
+  {
+    final ByteBuffer aDirectBuffer = SPOOL_BUFFER.get ();
+    aDirectBuffer.clear ();
+
+    // Don't close this channel, as it would close the source stream
+    final ReadableByteChannel aSrcChannel = Channels.newChannel (aContentIS);
+    try (final FileChannel aFC = FileChannel.open (aFile.toPath (),
+                                                   StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      // Already buffered part
+      final ByteBuffer aPrefix = ByteBuffer.wrap (aBufferOS.toByteArray ());
+      while (aPrefix.hasRemaining ())
+        aFC.write (aPrefix);
+
+      // Remaining part
+      while (aSrcChannel.read (aDirectBuffer) >= 0 || aDirectBuffer.position () > 0)
+      {
+        aDirectBuffer.flip ();
+        aFC.write (aDirectBuffer);
+        aDirectBuffer.compact ();
+      }
+    }
+  }
+
+  /**
+   * Create an incoming attachment from the already parsed MIME part headers
+   * and the still unread MIME part content, optionally using NIO file channels
+   * for the temporary file. Everything else is identical to
+   * {@link #createIncomingFileAttachment(InternetHeaders, InputStream, AS4ResourceHelper)}.
+   *
+   * @param aPartHeaders
+   *        The headers of the MIME part. May not be <code>null</code>.
+   * @param aRawContentIS
+   *        The raw (still transfer encoded) content of the MIME part. May not
+   *        be <code>null</code>. This stream is fully consumed but not closed.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @param bUseFileChannel
+   *        <code>true</code> to write and read the temporary file via a
+   *        {@link FileChannel} using a pre-allocated per-thread direct buffer.
+   * @param bMemoryMapped
+   *        <code>true</code> to memory map the temporary file for reading. Only
+   *        used if <code>bUseFileChannel</code> is <code>true</code>.
+   * @return The created attachment. Never <code>null</code>.
+   * @throws MessagingException
+   *         In case the Content-Transfer-Encoding is not supported
+   * @throws IOException
+   *         In case reading or writing fails
+   * @since 2.1.3
+   */
+  @Nonnull
+  public static WSS4JAttachment createIncomingFileAttachment (@Nonnull final InternetHeaders aPartHeaders,
+                                                              @Nonnull @WillNotClose final InputStream aRawContentIS,
+                                                              @Nonnull final AS4ResourceHelper aResHelper,
+                                                              final boolean bUseFileChannel,
+                                                              final boolean bMemoryMapped) throws MessagingException,
+                                                                                           IOException
+  {
+    ValueEnforcer.notNull (aPartHeaders, "PartHeaders");
+    ValueEnforcer.notNull (aRawContentIS, "RawContentIS");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    // Same default as in MimeBodyPart.getContentType ()
+    final String sContentType = aPartHeaders.getHeader (CHttpHeader.CONTENT_TYPE, null);
+    final WSS4JAttachment ret = new WSS4JAttachment (aResHelper, sContentType != null ? sContentType : "text/plain");
+
+    {
+      // Reference in Content-ID header is: "<ID>"
+      // See
+      // http://docs.oasis-open.org/wss-m/wss/v1.1.1/os/wss-SwAProfile-v1.1.1-os.html
+      // chapter 5.2
+      final String sRealContentID = StringHelper.trimStartAndEnd (aPartHeaders.getHeader (CHttpHeader.CONTENT_ID, null),
+                                                                  '<',
+                                                                  '>');
+      ret.setId (sRealContentID);
+    }
+
+    // Decode the Content-Transfer-Encoding as done by MimeBodyPart
+    final String sCTE = aPartHeaders.getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, null);
+    final InputStream aContentIS = StringHelper.hasText (sCTE) ? MimeUtility.decode (aRawContentIS, sCTE.trim ())
+                                                              : aRawContentIS;
+
+    // Buffer only up to the in-memory limit
+    final NonBlockingByteArrayOutputStream aBufferOS = new NonBlockingByteArrayOutputStream ();
+    final byte [] aBuffer = new byte [16 * CGlobal.BYTES_PER_KILOBYTE];
+    boolean bEOF = false;
+    while (canBeKeptInMemory (aBufferOS.size ()))
+    {
+      final int nRead = aContentIS.read (aBuffer);
+      if (nRead < 0)
+      {
+        bEOF = true;
+        break;
+      }
+      aBufferOS.write (aBuffer, 0, nRead);
+    }
+
+    if (bEOF)
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Keeping WSS4J attachment with " + aBufferOS.size () + " bytes in-memory");
+
+      // keep some small parts in memory
+      final byte [] aData = aBufferOS.toByteArray ();
+      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (aData)));
+    }
+    else
+    {
+      // Write buffered and remaining content to temp file
+      final File aTempFile = aResHelper.createTempFile ();
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Streaming WSS4J attachment to temporary file '" + aTempFile.getAbsolutePath () + "'");
+
+      if (bUseFileChannel)
+      {
+        _spoolViaFileChannel (aBufferOS, aContentIS, aTempFile);
+        ret.setSourceStreamProvider (new AS4FileChannelInputStreamProvider (aTempFile, bMemoryMapped));
+      }
+      else
+      {
+        try (final OutputStream aOS = FileHelper.getBufferedOutputStream (aTempFile))
+        {
+          aBufferOS.writeTo (aOS);
+          StreamHelper.copyInputStreamToOutputStream (aContentIS, aOS);
+        }
+        ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aTempFile)));
+      }
+    }
+    aBufferOS.close ();
+
+    // Read all MIME part headers
+    _addIncomingHeaders (ret, aPartHeaders.getAllHeaders ());
 
     if (LOGGER.isDebugEnabled ())
-      LOGGER.debug ("Finished handling of incoming WSS4J attachment");
+      LOGGER.debug ("Finished handling of incoming streamed WSS4J attachment");
 
     return ret;
   }
@@ -60,6 +60,8 @@ import com.helger.phase4.messaging.domain.EAS4MessageType;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.messaging.mime.AS4MimeMessage;
 import com.helger.phase4.messaging.mime.MimeMessageCreator;
+import com.helger.phase4.metrics.AS4MetricsManager;
+import com.helger.phase4.metrics.EAS4MetricsStage;
 import com.helger.phase4.model.pmode.IPMode;
 import com.helger.phase4.model.pmode.leg.PModeLeg;
 import com.helger.phase4.util.AS4ResourceHelper;
@@ -664,6 +666,7 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
       if (bSign)
       {
         final boolean bMustUnderstand = true;
+        final long nSignStart = AS4MetricsManager.getStartTime ();
         final Document aSignedDoc = AS4Signer.createSignedMessage (aCryptoFactory,
                                                                    aDoc,
                                                                    getSoapVersion (),
@@ -672,6 +675,7 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
                                                                    getAS4ResourceHelper (),
                                                                    bMustUnderstand,
                                                                    signingParams ().getClone ());
+        AS4MetricsManager.onStageFinished (EAS4MetricsStage.OUTGOING_SIGN, nSignStart);
         aDoc = aSignedDoc;
 
         if (aCallback != null)
@@ -686,6 +690,7 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
       {
         // MustUnderstand always set to true
         final boolean bMustUnderstand = true;
+        final long nEncryptStart = AS4MetricsManager.getStartTime ();
         if (bAttachmentsPresent)
         {
           aMimeMsg = AS4Encryptor.encryptMimeMessage (getSoapVersion (),
@@ -695,6 +700,7 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
                                                       bMustUnderstand,
                                                       getAS4ResourceHelper (),
                                                       cryptParams ().getClone ());
+          AS4MetricsManager.onStageFinished (EAS4MetricsStage.OUTGOING_ENCRYPT, nEncryptStart);
 
           if (aCallback != null)
             aCallback.onEncryptedMimeMessage (aMimeMsg);
@@ -706,6 +712,7 @@ public class AS4ClientUserMessage extends AbstractAS4Client <AS4ClientUserMessag
                                                                               aDoc,
                                                                               bMustUnderstand,
                                                                               cryptParams ().getClone ());
+          AS4MetricsManager.onStageFinished (EAS4MetricsStage.OUTGOING_ENCRYPT, nEncryptStart);
 
           if (aCallback != null)
             aCallback.onEncryptedSoapDocument (aDoc);
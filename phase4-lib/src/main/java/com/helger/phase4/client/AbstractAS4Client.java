@@ -19,6 +19,9 @@ package com.helger.phase4.client;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
@@ -411,6 +414,38 @@ public abstract class AbstractAS4Client <IMPLTYPE extends AbstractAS4Client <IMP
                                                                                                           WSSecurityException,
                                                                                                           MessagingException;
 
+  @Nonnull
+  private HttpEntity _getSendableEntity (@Nonnull final AS4ClientBuiltMessage aBuiltMsg,
+                                         @Nullable final IAS4OutgoingDumper aOutgoingDumper) throws IOException
+  {
+    final HttpEntity aBuiltEntity = aBuiltMsg.getHttpEntity ();
+    if (m_aHttpRetrySettings.isRetryEnabled () ||
+        aOutgoingDumper != null ||
+        AS4DumpManager.getOutgoingDumper () != null)
+    {
+      // Ensure a repeatable entity is provided
+      return m_aResHelper.createRepeatableHttpEntity (aBuiltEntity);
+    }
+    return aBuiltEntity;
+  }
+
+  @Nonnull
+  private static <T> HttpClientResponseHandler <T> _createRememberingResponseHandler (@Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                                      @Nonnull final Wrapper <StatusLine> aStatusLineKeeper,
+                                                                                      @Nonnull final HttpHeaderMap aResponseHeaders)
+  {
+    return x -> {
+      // Remember the HTTP response data
+      aStatusLineKeeper.set (new StatusLine (x));
+      final Header [] aHeaders = x.getHeaders ();
+      if (aHeaders != null)
+        for (final Header aHeader : aHeaders)
+          aResponseHeaders.addHeader (aHeader.getName (), aHeader.getValue ());
+      // Call the original handler
+      return aResponseHandler.handleResponse (x);
+    };
+  }
+
   /**
    * Send the AS4 client message created by
    * {@link #buildMessage(String, IAS4ClientBuildMessageCallback)} to the
@@ -455,32 +490,17 @@ public abstract class AbstractAS4Client <IMPLTYPE extends AbstractAS4Client <IMP
     // Create a new message ID for each build!
     final String sMessageID = createMessageID ();
     final AS4ClientBuiltMessage aBuiltMsg = buildMessage (sMessageID, aCallback);
-    HttpEntity aBuiltEntity = aBuiltMsg.getHttpEntity ();
+    final HttpEntity aBuiltEntity = _getSendableEntity (aBuiltMsg, aOutgoingDumper);
     final HttpHeaderMap aBuiltHttpHeaders = aBuiltMsg.getCustomHeaders ();
 
-    if (m_aHttpRetrySettings.isRetryEnabled () ||
-        aOutgoingDumper != null ||
-        AS4DumpManager.getOutgoingDumper () != null)
-    {
-      // Ensure a repeatable entity is provided
-      aBuiltEntity = m_aResHelper.createRepeatableHttpEntity (aBuiltEntity);
-    }
-
     // Keep the HTTP response status line for external evaluation
     final Wrapper <StatusLine> aStatusLineKeeper = new Wrapper <> ();
     // Keep the HTTP response headers for external evaluation
     final HttpHeaderMap aResponseHeaders = new HttpHeaderMap ();
 
-    final HttpClientResponseHandler <T> aRealResponseHandler = x -> {
-      // Remember the HTTP response data
-      aStatusLineKeeper.set (new StatusLine (x));
-      final Header [] aHeaders = x.getHeaders ();
-      if (aHeaders != null)
-        for (final Header aHeader : aHeaders)
-          aResponseHeaders.addHeader (aHeader.getName (), aHeader.getValue ());
-      // Call the original handler
-      return aResponseHandler.handleResponse (x);
-    };
+    final HttpClientResponseHandler <T> aRealResponseHandler = _createRememberingResponseHandler (aResponseHandler,
+                                                                                                 aStatusLineKeeper,
+                                                                                                 aResponseHeaders);
     final T aResponseContent = m_aHttpPoster.sendGenericMessageWithRetries (sURL,
                                                                             aBuiltHttpHeaders,
                                                                             aBuiltEntity,
@@ -491,4 +511,94 @@ public abstract class AbstractAS4Client <IMPLTYPE extends AbstractAS4Client <IMP
                                                                             aRetryCallback);
     return new AS4ClientSentMessage <> (aBuiltMsg, aStatusLineKeeper.get (), aResponseHeaders, aResponseContent);
   }
+
+  /**
+   * Asynchronously send the AS4 client message created by
+   * {@link #buildMessage(String, IAS4ClientBuildMessageCallback)} to the
+   * provided URL. This methods does take retries into account. Building the
+   * message and sending it happens on the provided executor. Depending on the
+   * {@link IHttpPoster} implementation, no thread is blocked while waiting
+   * between two retries.<br>
+   * Note: the resource helper of this client may only be closed after the
+   * returned future completed.
+   *
+   * @param <T>
+   *        The response data type
+   * @param sURL
+   *        The URL to send the HTTP POST to
+   * @param aResponseHandler
+   *        The response handler that converts the HTTP response to a domain
+   *        object. May not be <code>null</code>.
+   * @param aCallback
+   *        An optional callback for the different stages of building the
+   *        document. May be <code>null</code>.
+   * @param aOutgoingDumper
+   *        An outgoing dumper to be used. Maybe <code>null</code>. If
+   *        <code>null</code> the global outgoing dumper from
+   *        {@link AS4DumpManager} is used.
+   * @param aRetryCallback
+   *        An optional callback to be invoked if a retry happens on HTTP level.
+   *        May be <code>null</code>.
+   * @param aExecutor
+   *        The executor to build and send the message on. May not be
+   *        <code>null</code>.
+   * @return The future with the sent message. Never <code>null</code>. It
+   *         completes exceptionally with the same exceptions as
+   *         {@link #sendMessageWithRetries(String, HttpClientResponseHandler, IAS4ClientBuildMessageCallback, IAS4OutgoingDumper, IAS4RetryCallback)}.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public final <T> CompletableFuture <AS4ClientSentMessage <T>> sendMessageWithRetriesAsync (@Nonnull final String sURL,
+                                                                                             @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                                             @Nullable final IAS4ClientBuildMessageCallback aCallback,
+                                                                                             @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                                             @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                                             @Nonnull final Executor aExecutor)
+  {
+    ValueEnforcer.notNull (aExecutor, "Executor");
+
+    final CompletableFuture <AS4ClientSentMessage <T>> ret = new CompletableFuture <> ();
+    aExecutor.execute ( () -> {
+      try
+      {
+        // Create a new message ID for each build!
+        final String sMessageID = createMessageID ();
+        final AS4ClientBuiltMessage aBuiltMsg = buildMessage (sMessageID, aCallback);
+        final HttpEntity aBuiltEntity = _getSendableEntity (aBuiltMsg, aOutgoingDumper);
+
+        // Keep the HTTP response status line for external evaluation
+        final Wrapper <StatusLine> aStatusLineKeeper = new Wrapper <> ();
+        // Keep the HTTP response headers for external evaluation
+        final HttpHeaderMap aResponseHeaders = new HttpHeaderMap ();
+
+        final HttpClientResponseHandler <T> aRealResponseHandler = _createRememberingResponseHandler (aResponseHandler,
+                                                                                                     aStatusLineKeeper,
+                                                                                                     aResponseHeaders);
+        m_aHttpPoster.<T> sendGenericMessageWithRetriesAsync (sURL,
+                                                              aBuiltMsg.getCustomHeaders (),
+                                                              aBuiltEntity,
+                                                              sMessageID,
+                                                              m_aHttpRetrySettings,
+                                                              aRealResponseHandler,
+                                                              aOutgoingDumper,
+                                                              aRetryCallback,
+                                                              aExecutor)
+                     .whenComplete ( (aResponseContent, ex) -> {
+                       if (ex != null)
+                         ret.completeExceptionally (ex instanceof CompletionException && ex.getCause () != null ? ex.getCause ()
+                                                                                                                 : ex);
+                       else
+                         ret.complete (new AS4ClientSentMessage <> (aBuiltMsg,
+                                                                    aStatusLineKeeper.get (),
+                                                                    aResponseHeaders,
+                                                                    aResponseContent));
+                     });
+      }
+      catch (final Exception ex)
+      {
+        ret.completeExceptionally (ex);
+      }
+    });
+    return ret;
+  }
 }
@@ -37,6 +37,7 @@ import com.helger.config.IConfig;
 import com.helger.config.source.EConfigSourceType;
 import com.helger.config.source.MultiConfigurationValueProvider;
 import com.helger.config.source.res.ConfigurationSourceProperties;
+import com.helger.phase4.marshaller.Ebms3MessagingFastBinder;
 
 /**
  * This class contains the central phase4 configuration. <br>
@@ -61,8 +62,92 @@ public final class AS4Configuration
   public static final String PROPERTY_PHASE4_WSS4J_SYNCSECURITY = "phase4.wss4j.syncsecurity";
   public static final boolean DEFAULT_PHASE4_WSS4J_SYNCSECURITY = false;
 
+  /**
+   * The boolean property to initialize WSS4J only once and run sign/verify and
+   * encrypt/decrypt concurrently. Takes precedence over
+   * {@link #PROPERTY_PHASE4_WSS4J_SYNCSECURITY}.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_WSS4J_CONCURRENTSECURITY = "phase4.wss4j.concurrentsecurity";
+  public static final boolean DEFAULT_PHASE4_WSS4J_CONCURRENTSECURITY = false;
+
+  /**
+   * The int property to limit the number of WSS4J actions running in parallel
+   * if {@link #PROPERTY_PHASE4_WSS4J_CONCURRENTSECURITY} is enabled. Values
+   * &le; 0 mean unlimited.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_WSS4J_CONCURRENTSECURITY_MAXPARALLEL = "phase4.wss4j.concurrentsecurity.maxparallel";
+  public static final int DEFAULT_PHASE4_WSS4J_CONCURRENTSECURITY_MAXPARALLEL = 0;
+
   public static final long DEFAULT_PHASE4_INCOMING_DUPLICATEDISPOSAL_MINUTES = 10;
 
+  /**
+   * The boolean property to enable the streaming reading of the SOAP Body of
+   * incoming non-MIME messages.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_INCOMING_SOAPBODY_STREAMING = "phase4.incoming.soapbody.streaming";
+  public static final boolean DEFAULT_PHASE4_INCOMING_SOAPBODY_STREAMING = false;
+
+  /**
+   * The boolean property to store the message IDs of incoming messages in an
+   * append-only log instead of an XML file.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_INCOMING_DUPLICATE_APPENDONLY = "phase4.incoming.duplicate.appendonly";
+  public static final boolean DEFAULT_PHASE4_INCOMING_DUPLICATE_APPENDONLY = false;
+
+  /**
+   * The boolean property to enable the sharing of pooled HTTP clients for
+   * outgoing messages.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_HTTP_CLIENT_POOLED = "phase4.http.client.pooled";
+  public static final boolean DEFAULT_PHASE4_HTTP_CLIENT_POOLED = false;
+
+  /**
+   * The boolean property to enable the pipelined handling of outgoing
+   * attachments.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_OUTGOING_ATTACHMENT_PIPELINED = "phase4.outgoing.attachment.pipelined";
+  public static final boolean DEFAULT_PHASE4_OUTGOING_ATTACHMENT_PIPELINED = false;
+
+  /**
+   * The boolean property to read file based outgoing attachments via memory
+   * mapped NIO file channels.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_OUTGOING_ATTACHMENT_MEMORYMAPPED = "phase4.outgoing.attachment.memorymapped";
+  public static final boolean DEFAULT_PHASE4_OUTGOING_ATTACHMENT_MEMORYMAPPED = false;
+
+  /**
+   * The boolean property to register the built-in JMX metrics in the platform
+   * MBean server.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_METRICS_JMX_ENABLED = "phase4.metrics.jmx.enabled";
+  public static final boolean DEFAULT_PHASE4_METRICS_JMX_ENABLED = false;
+
+  /**
+   * The boolean property to read and write the ebMS3 Messaging header with
+   * {@link Ebms3MessagingFastBinder} instead of JAXB. Headers not supported by
+   * the fast binder are still handled by JAXB.
+   *
+   * @since 2.1.3
+   */
+  public static final String PROPERTY_PHASE4_EBMS3_FASTBINDER_ENABLED = "phase4.ebms3.fastbinder.enabled";
+  public static final boolean DEFAULT_PHASE4_EBMS3_FASTBINDER_ENABLED = false;
+
   private static final Logger LOGGER = LoggerFactory.getLogger (AS4Configuration.class);
 
   /**
@@ -229,6 +314,37 @@ public final class AS4Configuration
     return StringParser.parseBool (sValue, DEFAULT_PHASE4_WSS4J_SYNCSECURITY);
   }
 
+  /**
+   * @return <code>true</code> if WSS4J should be initialized only once and all
+   *         WSS4J actions should run in parallel without a global lock. This
+   *         does not require a global scope. If enabled, this setting takes
+   *         precedence over {@link #isWSS4JSynchronizedSecurity()}. The
+   *         configuration item is <code>phase4.wss4j.concurrentsecurity</code>.
+   * @since 2.1.3
+   */
+  public static boolean isWSS4JConcurrentSecurity ()
+  {
+    // Parse manually
+    final String sValue = getConfig ().getAsString (PROPERTY_PHASE4_WSS4J_CONCURRENTSECURITY);
+    return StringParser.parseBool (sValue, DEFAULT_PHASE4_WSS4J_CONCURRENTSECURITY);
+  }
+
+  /**
+   * @return The maximum number of WSS4J actions (sign/verify and
+   *         encrypt/decrypt) that may run in parallel if
+   *         {@link #isWSS4JConcurrentSecurity()} is enabled. Values &le; 0 mean
+   *         unlimited. This keeps the CPU-heavy crypto operations bounded,
+   *         independent of the number of threads processing requests. The
+   *         configuration item is
+   *         <code>phase4.wss4j.concurrentsecurity.maxparallel</code>.
+   * @since 2.1.3
+   */
+  public static int getWSS4JConcurrentSecurityMaxParallel ()
+  {
+    return getConfig ().getAsInt (PROPERTY_PHASE4_WSS4J_CONCURRENTSECURITY_MAXPARALLEL,
+                                  DEFAULT_PHASE4_WSS4J_CONCURRENTSECURITY_MAXPARALLEL);
+  }
+
   /**
    * @return The AS4 profile to use, taken from the configuration item
    *         <code>phase4.profile</code>. May be <code>null</code>.
@@ -252,6 +368,103 @@ public final class AS4Configuration
                                    DEFAULT_PHASE4_INCOMING_DUPLICATEDISPOSAL_MINUTES);
   }
 
+  /**
+   * @return <code>true</code> if the message IDs of incoming messages should be
+   *         stored in an append-only log by the persisting manager factory,
+   *         <code>false</code> if the XML file based duplicate manager should
+   *         be used. Existing XML data is not migrated, when this is switched
+   *         on. Taken from the configuration item
+   *         <code>phase4.incoming.duplicate.appendonly</code>.
+   * @since 2.1.3
+   */
+  public static boolean isIncomingDuplicateAppendOnly ()
+  {
+    return getConfig ().getAsBoolean (PROPERTY_PHASE4_INCOMING_DUPLICATE_APPENDONLY,
+                                      DEFAULT_PHASE4_INCOMING_DUPLICATE_APPENDONLY);
+  }
+
+  /**
+   * @return <code>true</code> if the SOAP Body payload of incoming non-MIME
+   *         messages should be streamed into a temporary file and only be
+   *         parsed into a DOM node, when it is needed. This only applies to
+   *         messages without a WS-Security header, because signature
+   *         verification and decryption require the full DOM. Taken from the
+   *         configuration item <code>phase4.incoming.soapbody.streaming</code>.
+   * @since 2.1.3
+   */
+  public static boolean isIncomingSoapBodyStreaming ()
+  {
+    return getConfig ().getAsBoolean (PROPERTY_PHASE4_INCOMING_SOAPBODY_STREAMING,
+                                      DEFAULT_PHASE4_INCOMING_SOAPBODY_STREAMING);
+  }
+
+  /**
+   * @return <code>true</code> if outgoing HTTP messages should be sent via a
+   *         long-lived HTTP client that is shared by all senders using the same
+   *         HTTP client factory, <code>false</code> if a new HTTP client should
+   *         be created for every message. Taken from the configuration item
+   *         <code>phase4.http.client.pooled</code>.
+   * @since 2.1.3
+   */
+  public static boolean isHttpClientPooled ()
+  {
+    return getConfig ().getAsBoolean (PROPERTY_PHASE4_HTTP_CLIENT_POOLED, DEFAULT_PHASE4_HTTP_CLIENT_POOLED);
+  }
+
+  /**
+   * @return <code>true</code> if outgoing attachments should be handled in a
+   *         pipelined way: compression happens while the content is read for
+   *         the first time (e.g. for the signature digest) and the encrypted
+   *         content is written to a spool file while it is sent for the first
+   *         time, so that no additional passes over the data are needed for
+   *         retries. Taken from the configuration item
+   *         <code>phase4.outgoing.attachment.pipelined</code>.
+   * @since 2.1.3
+   */
+  public static boolean isOutgoingAttachmentPipelined ()
+  {
+    return getConfig ().getAsBoolean (PROPERTY_PHASE4_OUTGOING_ATTACHMENT_PIPELINED,
+                                      DEFAULT_PHASE4_OUTGOING_ATTACHMENT_PIPELINED);
+  }
+
+  /**
+   * @return <code>true</code> if file based outgoing attachments should be
+   *         read via memory mapped NIO file channels, so that repeated reads
+   *         (for digesting, encryption and sending) don't copy the content from
+   *         kernel to user space every time. Taken from the configuration item
+   *         <code>phase4.outgoing.attachment.memorymapped</code>.
+   * @since 2.1.3
+   */
+  public static boolean isOutgoingAttachmentMemoryMapped ()
+  {
+    return getConfig ().getAsBoolean (PROPERTY_PHASE4_OUTGOING_ATTACHMENT_MEMORYMAPPED,
+                                      DEFAULT_PHASE4_OUTGOING_ATTACHMENT_MEMORYMAPPED);
+  }
+
+  /**
+   * @return <code>true</code> if the built-in JMX metrics should be registered
+   *         in the platform MBean server. Taken from the configuration item
+   *         <code>phase4.metrics.jmx.enabled</code>.
+   * @since 2.1.3
+   */
+  public static boolean isMetricsJMXEnabled ()
+  {
+    return getConfig ().getAsBoolean (PROPERTY_PHASE4_METRICS_JMX_ENABLED, DEFAULT_PHASE4_METRICS_JMX_ENABLED);
+  }
+
+  /**
+   * @return <code>true</code> if the ebMS3 Messaging header should be read and
+   *         written with {@link Ebms3MessagingFastBinder} instead of JAXB.
+   *         Taken from the configuration item
+   *         <code>phase4.ebms3.fastbinder.enabled</code>.
+   * @since 2.1.3
+   */
+  public static boolean isEbms3FastBinderEnabled ()
+  {
+    return getConfig ().getAsBoolean (PROPERTY_PHASE4_EBMS3_FASTBINDER_ENABLED,
+                                      DEFAULT_PHASE4_EBMS3_FASTBINDER_ENABLED);
+  }
+
   /**
    * @return The dumping base path. Taken from the configuration item
    *         <code>phase4.dump.path</code>.
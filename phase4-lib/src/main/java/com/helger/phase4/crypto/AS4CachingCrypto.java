@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+import com.helger.commons.annotation.Nonnegative;
+
+/**
+ * A {@link Merlin} extension that remembers the results of certificate and
+ * private key lookups. The default implementation walks all aliases of the key
+ * store and the trust store for every lookup (e.g. by issuer and serial
+ * number), which is done for every signed or encrypted message.<br>
+ * Only successful lookups are cached. The key store and trust store must not
+ * be modified after they were passed to this class - create a new instance
+ * instead (see {@link AS4KeyMaterialCache}).
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4CachingCrypto extends Merlin
+{
+  /** The maximum number of entries per cache */
+  public static final int MAX_CACHE_ENTRIES = 1000;
+
+  private final Map <String, X509Certificate []> m_aCertCache = new ConcurrentHashMap <> ();
+  private final Map <String, PrivateKey> m_aPKCache = new ConcurrentHashMap <> ();
+
+  /**
+   * Constructor
+   *
+   * @param aKeyStore
+   *        The key store to use. May be <code>null</code>.
+   * @param aTrustStore
+   *        The trust store to use. May be <code>null</code>.
+   * @param bLoadCACerts
+   *        <code>true</code> to load the Java runtime cacerts as well.
+   * @param sKeyAlias
+   *        The default key alias to use. May be <code>null</code>.
+   */
+  public AS4CachingCrypto (@Nullable final KeyStore aKeyStore,
+                           @Nullable final KeyStore aTrustStore,
+                           final boolean bLoadCACerts,
+                           @Nullable final String sKeyAlias)
+  {
+    // This constructor does not load anything from a file
+    super (bLoadCACerts, "changeit");
+    setKeyStore (aKeyStore);
+    setTrustStore (aTrustStore);
+    setDefaultX509Identifier (sKeyAlias);
+  }
+
+  private static <T> void _put (@Nonnull final Map <String, T> aMap, @Nonnull final String sKey, @Nonnull final T aValue)
+  {
+    // Avoid unbounded growth - the number of distinct lookups is usually small
+    if (aMap.size () >= MAX_CACHE_ENTRIES)
+      aMap.clear ();
+    aMap.put (sKey, aValue);
+  }
+
+  @Nullable
+  private static String _getCacheKey (@Nullable final CryptoType aCryptoType)
+  {
+    if (aCryptoType == null || aCryptoType.getType () == null)
+      return null;
+
+    final StringBuilder aSB = new StringBuilder ();
+    aSB.append (aCryptoType.getType ().name ()).append ('\u0000');
+    switch (aCryptoType.getType ())
+    {
+      case ISSUER_SERIAL:
+        aSB.append (aCryptoType.getIssuer ()).append ('\u0000').append (aCryptoType.getSerial ());
+        break;
+      case THUMBPRINT_SHA1:
+      case SKI_BYTES:
+        if (aCryptoType.getBytes () == null)
+          return null;
+        aSB.append (Base64.getEncoder ().encodeToString (aCryptoType.getBytes ()));
+        break;
+      case SUBJECT_DN:
+        aSB.append (aCryptoType.getSubjectDN ());
+        break;
+      case ALIAS:
+        aSB.append (aCryptoType.getAlias ());
+        break;
+      default:
+        // E.g. endpoint - not cached
+        return null;
+    }
+    return aSB.toString ();
+  }
+
+  @Override
+  public X509Certificate [] getX509Certificates (final CryptoType aCryptoType) throws WSSecurityException
+  {
+    final String sKey = _getCacheKey (aCryptoType);
+    if (sKey == null)
+      return super.getX509Certificates (aCryptoType);
+
+    X509Certificate [] ret = m_aCertCache.get (sKey);
+    if (ret == null)
+    {
+      ret = super.getX509Certificates (aCryptoType);
+      if (ret == null || ret.length == 0)
+        return ret;
+      _put (m_aCertCache, sKey, ret);
+    }
+    // Arrays are mutable
+    return ret.clone ();
+  }
+
+  @Override
+  public PrivateKey getPrivateKey (final String sIdentifier, final String sPassword) throws WSSecurityException
+  {
+    if (sIdentifier == null)
+      return super.getPrivateKey (sIdentifier, sPassword);
+
+    // The password is part of the key, so that a wrong password never
+    // returns a cached key
+    final String sKey = sIdentifier + '\u0000' + (sPassword == null ? "" : "P" + sPassword);
+    PrivateKey ret = m_aPKCache.get (sKey);
+    if (ret == null)
+    {
+      ret = super.getPrivateKey (sIdentifier, sPassword);
+      if (ret != null)
+        _put (m_aPKCache, sKey, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * @return The number of cached certificate lookups. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getCachedCertificateCount ()
+  {
+    return m_aCertCache.size ();
+  }
+
+  /**
+   * @return The number of cached private keys. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getCachedPrivateKeyCount ()
+  {
+    return m_aPKCache.size ();
+  }
+
+  /**
+   * Remove all cached lookups.
+   */
+  public void clearCache ()
+  {
+    m_aCertCache.clear ();
+    m_aPKCache.clear ();
+  }
+}
@@ -29,10 +29,8 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableObject;
-import com.helger.commons.collection.ArrayHelper;
 import com.helger.commons.io.resource.ClassPathResource;
 import com.helger.commons.string.StringHelper;
-import com.helger.security.keystore.KeyStoreHelper;
 
 /**
  * phase4 crypto factory settings based on {@link AS4CryptoProperties}
@@ -57,11 +55,6 @@ public class AS4CryptoFactoryProperties implements IAS4CryptoFactory
   }
 
   private final AS4CryptoProperties m_aCryptoProps;
-  // Lazy initialized
-  private Crypto m_aCrypto;
-  private KeyStore m_aKeyStore;
-  private KeyStore.PrivateKeyEntry m_aPK;
-  private KeyStore m_aTrustStore;
 
   /**
    * This constructor takes the crypto properties directly. See the
@@ -113,53 +106,34 @@ public class AS4CryptoFactoryProperties implements IAS4CryptoFactory
   }
 
   /**
-   * Lazily create a {@link Crypto} instance using the properties from
-   * {@link #cryptoProperties()}.
+   * Get the {@link Crypto} instance using the properties from
+   * {@link #cryptoProperties()}. The instance is shared with all other
+   * factories using the same properties via {@link AS4KeyMaterialCache}.
    *
    * @return A {@link Crypto} instance and never <code>null</code>.
    */
   @Nonnull
   public final Crypto getCrypto ()
   {
-    Crypto ret = m_aCrypto;
-    if (ret == null)
-      ret = m_aCrypto = createCrypto (m_aCryptoProps);
-    return ret;
+    return AS4KeyMaterialCache.getCrypto (m_aCryptoProps);
   }
 
   @Nullable
   public final KeyStore getKeyStore ()
   {
-    KeyStore ret = m_aKeyStore;
-    if (ret == null)
-    {
-      ret = m_aKeyStore = KeyStoreHelper.loadKeyStore (m_aCryptoProps.getKeyStoreType (),
-                                                       m_aCryptoProps.getKeyStorePath (),
-                                                       m_aCryptoProps.getKeyStorePassword ())
-                                        .getKeyStore ();
-    }
-    return ret;
+    return AS4KeyMaterialCache.getKeyStore (m_aCryptoProps.getKeyStoreType (),
+                                            m_aCryptoProps.getKeyStorePath (),
+                                            m_aCryptoProps.getKeyStorePassword ());
   }
 
   @Nullable
   public final KeyStore.PrivateKeyEntry getPrivateKeyEntry ()
   {
-    KeyStore.PrivateKeyEntry ret = m_aPK;
-    if (ret == null)
-    {
-      final KeyStore aKeyStore = getKeyStore ();
-      if (aKeyStore != null)
-      {
-        final String sKeyPassword = m_aCryptoProps.getKeyPassword ();
-        ret = m_aPK = KeyStoreHelper.loadPrivateKey (aKeyStore,
-                                                     m_aCryptoProps.getKeyStorePath (),
-                                                     m_aCryptoProps.getKeyAlias (),
-                                                     sKeyPassword == null ? ArrayHelper.EMPTY_CHAR_ARRAY
-                                                                          : sKeyPassword.toCharArray ())
-                                    .getKeyEntry ();
-      }
-    }
-    return ret;
+    return AS4KeyMaterialCache.getPrivateKeyEntry (m_aCryptoProps.getKeyStoreType (),
+                                                   m_aCryptoProps.getKeyStorePath (),
+                                                   m_aCryptoProps.getKeyStorePassword (),
+                                                   m_aCryptoProps.getKeyAlias (),
+                                                   m_aCryptoProps.getKeyPassword ());
   }
 
   @Nullable
@@ -189,15 +163,9 @@ public class AS4CryptoFactoryProperties implements IAS4CryptoFactory
   @Nullable
   public final KeyStore getTrustStore ()
   {
-    KeyStore ret = m_aTrustStore;
-    if (ret == null)
-    {
-      ret = m_aTrustStore = KeyStoreHelper.loadKeyStore (m_aCryptoProps.getTrustStoreType (),
-                                                         m_aCryptoProps.getTrustStorePath (),
-                                                         m_aCryptoProps.getTrustStorePassword ())
-                                          .getKeyStore ();
-    }
-    return ret;
+    return AS4KeyMaterialCache.getKeyStore (m_aCryptoProps.getTrustStoreType (),
+                                            m_aCryptoProps.getTrustStorePath (),
+                                            m_aCryptoProps.getTrustStorePassword ());
   }
 
   public boolean isAllowRSA15KeyTransportAlgorithm ()
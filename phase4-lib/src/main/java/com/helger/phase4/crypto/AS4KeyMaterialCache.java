@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import java.io.File;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.ArrayHelper;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.StringHelper;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+
+/**
+ * Process-wide cache for key material. Key stores, private keys and
+ * {@link Crypto} instances are loaded only once per distinct configuration, so
+ * that multiple crypto factories (e.g. one per tenant or PMode) share the
+ * parsed objects. Key stores that are located in the file system are checked
+ * for modifications at most every {@link #getFileCheckIntervalMillis()}
+ * milliseconds and are reloaded if they changed. All objects depending on a
+ * reloaded key store are recreated as well.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public final class AS4KeyMaterialCache
+{
+  /** The default interval in which file modifications are checked. */
+  public static final long DEFAULT_FILE_CHECK_INTERVAL_MILLIS = 5_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4KeyMaterialCache.class);
+
+  private static final class KeyStoreEntry
+  {
+    private final KeyStore m_aKeyStore;
+    private final long m_nLastModified;
+    private volatile long m_nNextCheck;
+
+    KeyStoreEntry (@Nonnull final KeyStore aKeyStore, final long nLastModified)
+    {
+      m_aKeyStore = aKeyStore;
+      m_nLastModified = nLastModified;
+      m_nNextCheck = System.currentTimeMillis () + s_nFileCheckIntervalMillis;
+    }
+  }
+
+  private static final class PrivateKeyEntry
+  {
+    private final KeyStore m_aSourceKeyStore;
+    private final KeyStore.PrivateKeyEntry m_aPK;
+
+    PrivateKeyEntry (@Nonnull final KeyStore aSourceKeyStore, @Nonnull final KeyStore.PrivateKeyEntry aPK)
+    {
+      m_aSourceKeyStore = aSourceKeyStore;
+      m_aPK = aPK;
+    }
+  }
+
+  private static final class CryptoEntry
+  {
+    private final KeyStore m_aKeyStore;
+    private final KeyStore m_aTrustStore;
+    private final Crypto m_aCrypto;
+
+    CryptoEntry (@Nullable final KeyStore aKeyStore, @Nullable final KeyStore aTrustStore, @Nonnull final Crypto aCrypto)
+    {
+      m_aKeyStore = aKeyStore;
+      m_aTrustStore = aTrustStore;
+      m_aCrypto = aCrypto;
+    }
+  }
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static final ICommonsMap <String, KeyStoreEntry> s_aKeyStores = new CommonsHashMap <> ();
+  @GuardedBy ("RW_LOCK")
+  private static final ICommonsMap <String, PrivateKeyEntry> s_aPrivateKeys = new CommonsHashMap <> ();
+  @GuardedBy ("RW_LOCK")
+  private static final ICommonsMap <String, CryptoEntry> s_aCryptos = new CommonsHashMap <> ();
+  private static volatile long s_nFileCheckIntervalMillis = DEFAULT_FILE_CHECK_INTERVAL_MILLIS;
+
+  private AS4KeyMaterialCache ()
+  {}
+
+  /**
+   * @return The interval in milliseconds in which key store files are checked
+   *         for modifications. Always &ge; 0.
+   */
+  @Nonnegative
+  public static long getFileCheckIntervalMillis ()
+  {
+    return s_nFileCheckIntervalMillis;
+  }
+
+  /**
+   * @param nFileCheckIntervalMillis
+   *        The interval in milliseconds in which key store files are checked
+   *        for modifications. Use 0 to check on every access. Must be &ge; 0.
+   */
+  public static void setFileCheckIntervalMillis (@Nonnegative final long nFileCheckIntervalMillis)
+  {
+    ValueEnforcer.isGE0 (nFileCheckIntervalMillis, "FileCheckIntervalMillis");
+    s_nFileCheckIntervalMillis = nFileCheckIntervalMillis;
+  }
+
+  @Nonnull
+  private static String _getKey (@Nonnull final Object... aParts)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (final Object aPart : aParts)
+      aSB.append (aPart).append ('\u0000');
+    return aSB.toString ();
+  }
+
+  private static long _getLastModified (@Nonnull final String sPath)
+  {
+    // Class path resources cannot change
+    final File aFile = new File (sPath);
+    return aFile.isFile () ? aFile.lastModified () : 0L;
+  }
+
+  private static boolean _isOutdated (@Nonnull final KeyStoreEntry aEntry, @Nonnull final String sPath)
+  {
+    final long nNow = System.currentTimeMillis ();
+    if (nNow < aEntry.m_nNextCheck)
+      return false;
+    aEntry.m_nNextCheck = nNow + s_nFileCheckIntervalMillis;
+    return _getLastModified (sPath) != aEntry.m_nLastModified;
+  }
+
+  /**
+   * Get the key store with the provided parameters, loading it if necessary.
+   *
+   * @param eType
+   *        The key store type. May not be <code>null</code>.
+   * @param sPath
+   *        The path to the key store. May be <code>null</code>.
+   * @param sPassword
+   *        The key store password. May be <code>null</code>.
+   * @return <code>null</code> if no path is provided or if the key store
+   *         failed to load.
+   */
+  @Nullable
+  public static KeyStore getKeyStore (@Nonnull final EKeyStoreType eType,
+                                      @Nullable final String sPath,
+                                      @Nullable final String sPassword)
+  {
+    ValueEnforcer.notNull (eType, "Type");
+    if (StringHelper.hasNoText (sPath))
+      return null;
+
+    final String sKey = _getKey (eType.getID (), sPath, sPassword);
+    final KeyStoreEntry aEntry = RW_LOCK.readLockedGet ( () -> s_aKeyStores.get (sKey));
+    if (aEntry != null && !_isOutdated (aEntry, sPath))
+      return aEntry.m_aKeyStore;
+
+    return RW_LOCK.writeLockedGet ( () -> {
+      final KeyStoreEntry aCurEntry = s_aKeyStores.get (sKey);
+      if (aCurEntry != null && aCurEntry != aEntry)
+      {
+        // Another thread was faster
+        return aCurEntry.m_aKeyStore;
+      }
+
+      final long nLastModified = _getLastModified (sPath);
+      final KeyStore aKeyStore = KeyStoreHelper.loadKeyStore (eType, sPath, sPassword).getKeyStore ();
+      if (aKeyStore == null)
+      {
+        if (aCurEntry != null)
+        {
+          // E.g. the file is currently being written - retry later
+          LOGGER.warn ("Failed to reload the modified key store '" + sPath + "' - continuing to use the previous version");
+          return aCurEntry.m_aKeyStore;
+        }
+        return null;
+      }
+
+      if (aCurEntry != null)
+        LOGGER.info ("Reloaded the modified key store '" + sPath + "'");
+      else
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Loaded key store '" + sPath + "'");
+      s_aKeyStores.put (sKey, new KeyStoreEntry (aKeyStore, nLastModified));
+      return aKeyStore;
+    });
+  }
+
+  /**
+   * Get the private key entry with the provided parameters, loading it if
+   * necessary.
+   *
+   * @param eType
+   *        The key store type. May not be <code>null</code>.
+   * @param sPath
+   *        The path to the key store. May be <code>null</code>.
+   * @param sPassword
+   *        The key store password. May be <code>null</code>.
+   * @param sKeyAlias
+   *        The alias of the key. May be <code>null</code>.
+   * @param sKeyPassword
+   *        The password of the key. May be <code>null</code>.
+   * @return <code>null</code> if the key store or the private key failed to
+   *         load.
+   */
+  @Nullable
+  public static KeyStore.PrivateKeyEntry getPrivateKeyEntry (@Nonnull final EKeyStoreType eType,
+                                                             @Nullable final String sPath,
+                                                             @Nullable final String sPassword,
+                                                             @Nullable final String sKeyAlias,
+                                                             @Nullable final String sKeyPassword)
+  {
+    final KeyStore aKeyStore = getKeyStore (eType, sPath, sPassword);
+    if (aKeyStore == null)
+      return null;
+
+    final String sKey = _getKey (eType.getID (), sPath, sPassword, sKeyAlias, sKeyPassword);
+    final PrivateKeyEntry aEntry = RW_LOCK.readLockedGet ( () -> s_aPrivateKeys.get (sKey));
+    if (aEntry != null && aEntry.m_aSourceKeyStore == aKeyStore)
+      return aEntry.m_aPK;
+
+    final KeyStore.PrivateKeyEntry aPK = KeyStoreHelper.loadPrivateKey (aKeyStore,
+                                                                        sPath,
+                                                                        sKeyAlias,
+                                                                        sKeyPassword == null ? ArrayHelper.EMPTY_CHAR_ARRAY
+                                                                                             : sKeyPassword.toCharArray ())
+                                                       .getKeyEntry ();
+    if (aPK != null)
+      RW_LOCK.writeLocked ( () -> s_aPrivateKeys.put (sKey, new PrivateKeyEntry (aKeyStore, aPK)));
+    return aPK;
+  }
+
+  private static boolean _isMerlinCompatible (@Nonnull final AS4CryptoProperties aCryptoProps)
+  {
+    final String sProvider = aCryptoProps.getCryptoProvider ();
+    return (sProvider == null || sProvider.equals (Merlin.class.getName ())) &&
+           StringHelper.hasNoText (aCryptoProps.getTrustStoreProvider ());
+  }
+
+  @Nonnull
+  private static String _getPropertiesKey (@Nonnull final Properties aProps)
+  {
+    // Sorted for a stable key
+    final Map <String, String> aSorted = new TreeMap <> ();
+    for (final String sName : aProps.stringPropertyNames ())
+      aSorted.put (sName, aProps.getProperty (sName));
+    return aSorted.toString ();
+  }
+
+  /**
+   * Get the {@link Crypto} instance for the provided crypto properties. For
+   * the default Merlin crypto provider an {@link AS4CachingCrypto} based on
+   * the cached key store and trust store is returned. For all other providers
+   * the instance created by
+   * {@link AS4CryptoFactoryProperties#createCrypto(AS4CryptoProperties)} is
+   * cached.
+   *
+   * @param aCryptoProps
+   *        The crypto properties to use. May not be <code>null</code>.
+   * @return The {@link Crypto} instance and never <code>null</code>.
+   * @throws IllegalStateException
+   *         if creation failed
+   */
+  @Nonnull
+  public static Crypto getCrypto (@Nonnull final AS4CryptoProperties aCryptoProps)
+  {
+    ValueEnforcer.notNull (aCryptoProps, "CryptoProps");
+
+    final Properties aProps = aCryptoProps.getAsProperties ();
+    if (aProps == null)
+    {
+      // Let WSS4J report the error
+      return AS4CryptoFactoryProperties.createCrypto (aCryptoProps);
+    }
+
+    final String sKey = _getPropertiesKey (aProps);
+    final CryptoEntry aEntry = RW_LOCK.readLockedGet ( () -> s_aCryptos.get (sKey));
+
+    if (!_isMerlinCompatible (aCryptoProps))
+    {
+      // Not file based - no reload check
+      if (aEntry != null)
+        return aEntry.m_aCrypto;
+      final Crypto aCrypto = AS4CryptoFactoryProperties.createCrypto (aCryptoProps);
+      RW_LOCK.writeLocked ( () -> s_aCryptos.put (sKey, new CryptoEntry (null, null, aCrypto)));
+      return aCrypto;
+    }
+
+    final String sKeyStorePath = aCryptoProps.getKeyStorePath ();
+    final KeyStore aKeyStore = getKeyStore (aCryptoProps.getKeyStoreType (),
+                                            sKeyStorePath,
+                                            aCryptoProps.getKeyStorePassword ());
+    if (aKeyStore == null && StringHelper.hasText (sKeyStorePath))
+      throw new IllegalStateException ("Failed to create Crypto instance - failed to load key store '" +
+                                       sKeyStorePath +
+                                       "'");
+
+    final String sTrustStorePath = aCryptoProps.getTrustStorePath ();
+    final KeyStore aTrustStore = getKeyStore (aCryptoProps.getTrustStoreType (),
+                                              sTrustStorePath,
+                                              aCryptoProps.getTrustStorePassword ());
+    if (aTrustStore == null && StringHelper.hasText (sTrustStorePath))
+      throw new IllegalStateException ("Failed to create Crypto instance - failed to load trust store '" +
+                                       sTrustStorePath +
+                                       "'");
+
+    if (aEntry != null && aEntry.m_aKeyStore == aKeyStore && aEntry.m_aTrustStore == aTrustStore)
+      return aEntry.m_aCrypto;
+
+    // Same defaults as Merlin when initialized from properties
+    final Crypto aCrypto = new AS4CachingCrypto (aKeyStore,
+                                                 aTrustStore,
+                                                 aCryptoProps.getLoadCACerts ().getAsBooleanValue (false),
+                                                 aCryptoProps.getKeyAlias ());
+    RW_LOCK.writeLocked ( () -> s_aCryptos.put (sKey, new CryptoEntry (aKeyStore, aTrustStore, aCrypto)));
+    return aCrypto;
+  }
+
+  /**
+   * Remove all cached objects. The next access reloads everything.
+   */
+  public static void clearCache ()
+  {
+    RW_LOCK.writeLocked ( () -> {
+      s_aKeyStores.clear ();
+      s_aPrivateKeys.clear ();
+      s_aCryptos.clear ();
+    });
+  }
+}
@@ -16,11 +16,18 @@
  */
 package com.helger.phase4.dump;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
+import java.util.zip.GZIPInputStream;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -32,11 +39,18 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.commons.http.HttpHeaderMap;
 import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingBufferedReader;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.mime.IMimeType;
 import com.helger.commons.mutable.MutableInt;
@@ -88,6 +102,20 @@ public final class AS4DumpReader
     void accept (@Nonnegative int nAttachmentIndex, @Nonnull byte [] aPayload);
   }
 
+  /**
+   * An entry of a segment file that was started but not yet ended.
+   */
+  private static final class OpenSegmentEntry
+  {
+    private final String m_sHeader;
+    private final NonBlockingByteArrayOutputStream m_aData = new NonBlockingByteArrayOutputStream ();
+
+    OpenSegmentEntry (@Nonnull final String sHeader)
+    {
+      m_sHeader = sHeader;
+    }
+  }
+
   private AS4DumpReader ()
   {}
 
@@ -278,4 +306,203 @@ public final class AS4DumpReader
       WebScopeManager.onGlobalEnd ();
     }
   }
+
+  private static boolean _isSegmentFilename (@Nonnull final String sName)
+  {
+    return sName.startsWith (AS4DumpSegmentWriter.FILE_PREFIX) &&
+           (sName.endsWith (AS4DumpSegmentWriter.SEGMENT_FILE_EXTENSION) ||
+            sName.endsWith (AS4DumpSegmentWriter.COMPRESSED_SEGMENT_FILE_EXTENSION));
+  }
+
+  @Nonnull
+  private static AS4DumpSegmentEntry _parseSegmentHeader (@Nonnull final String sHeader,
+                                                          @Nullable final byte [] aData,
+                                                          final boolean bComplete) throws IOException
+  {
+    final String [] aParts = StringHelper.getExplodedArray (AS4DumpSegmentWriter.INDEX_SEPARATOR, sHeader, 5);
+    if (aParts.length != 5)
+      throw new IOException ("Invalid AS4 dump segment header '" + sHeader + "'");
+    try
+    {
+      return new AS4DumpSegmentEntry (Long.parseLong (aParts[0]),
+                                      AS4DumpSegmentWriter.DIRECTION_INCOMING.equals (aParts[1]),
+                                      aParts[4],
+                                      Integer.parseInt (aParts[2]),
+                                      OffsetDateTime.parse (aParts[3]),
+                                      aData,
+                                      bComplete);
+    }
+    catch (final RuntimeException ex)
+    {
+      throw new IOException ("Invalid AS4 dump segment header '" + sHeader + "'", ex);
+    }
+  }
+
+  private static void _readSegmentFile (@Nonnull final File aFile,
+                                        @Nonnull final ICommonsMap <String, OpenSegmentEntry> aOpenEntries,
+                                        @Nonnull final Consumer <? super AS4DumpSegmentEntry> aEntryConsumer) throws IOException
+  {
+    // Entry IDs are only unique per writer
+    final String sName = aFile.getName ();
+    final String sWriterKey = sName.substring (0, sName.lastIndexOf ('-') + 1);
+
+    InputStream aIS = FileHelper.getBufferedInputStream (aFile);
+    if (aIS == null)
+      throw new IOException ("Failed to open '" + aFile.getAbsolutePath () + "' for reading");
+
+    try
+    {
+      if (sName.endsWith (AS4DumpSegmentWriter.COMPRESSED_SEGMENT_FILE_EXTENSION))
+        aIS = new GZIPInputStream (aIS);
+
+      try (final DataInputStream aDIS = new DataInputStream (aIS))
+      {
+        if (aDIS.readInt () != AS4DumpSegmentWriter.MAGIC)
+          throw new IOException ("'" + aFile.getAbsolutePath () + "' is not an AS4 dump segment file");
+        final int nVersion = aDIS.readInt ();
+        if (nVersion != AS4DumpSegmentWriter.VERSION)
+          throw new IOException ("'" + aFile.getAbsolutePath () + "' has the unsupported version " + nVersion);
+
+        int nType;
+        while ((nType = aDIS.read ()) >= 0)
+        {
+          final String sKey = sWriterKey + aDIS.readLong ();
+          switch (nType)
+          {
+            case AS4DumpSegmentWriter.RECORD_BEGIN:
+            {
+              final byte [] aHeader = new byte [aDIS.readInt ()];
+              aDIS.readFully (aHeader);
+              aOpenEntries.put (sKey, new OpenSegmentEntry (new String (aHeader, StandardCharsets.UTF_8)));
+              break;
+            }
+            case AS4DumpSegmentWriter.RECORD_DATA:
+            {
+              final byte [] aData = new byte [aDIS.readInt ()];
+              aDIS.readFully (aData);
+              final OpenSegmentEntry aEntry = aOpenEntries.get (sKey);
+              // The start of the entry may be in a segment that was not read
+              if (aEntry != null)
+                aEntry.m_aData.write (aData);
+              break;
+            }
+            case AS4DumpSegmentWriter.RECORD_END:
+            {
+              final boolean bTruncated = aDIS.readBoolean ();
+              final OpenSegmentEntry aEntry = aOpenEntries.remove (sKey);
+              if (aEntry != null)
+                aEntryConsumer.accept (_parseSegmentHeader (aEntry.m_sHeader,
+                                                            aEntry.m_aData.toByteArray (),
+                                                            !bTruncated));
+              break;
+            }
+            default:
+              throw new IOException ("'" + aFile.getAbsolutePath () + "' contains the unsupported record type " + nType);
+          }
+        }
+      }
+    }
+    catch (final EOFException ex)
+    {
+      // The segment is currently written or was not closed properly
+      LOGGER.warn ("Unexpected end of AS4 dump segment '" + aFile.getAbsolutePath () + "'");
+    }
+    finally
+    {
+      StreamHelper.close (aIS);
+    }
+  }
+
+  /**
+   * Read all entries from the provided segment files written by
+   * {@link AS4DumpSegmentWriter}. The files must be provided in the order they
+   * were written, because an entry may span multiple segments. Entries whose
+   * end was not found are passed to the consumer as incomplete after all
+   * files were read.
+   *
+   * @param aSegmentFiles
+   *        The segment files to read. May not be <code>null</code>.
+   * @param aEntryConsumer
+   *        The consumer for each read entry. May not be <code>null</code>.
+   * @throws IOException
+   *         In case a file could not be read or has an invalid format
+   * @since 2.1.3
+   */
+  public static void readSegmentFiles (@Nonnull final Iterable <? extends File> aSegmentFiles,
+                                       @Nonnull final Consumer <? super AS4DumpSegmentEntry> aEntryConsumer) throws IOException
+  {
+    ValueEnforcer.notNull (aSegmentFiles, "SegmentFiles");
+    ValueEnforcer.notNull (aEntryConsumer, "EntryConsumer");
+
+    final ICommonsOrderedMap <String, OpenSegmentEntry> aOpenEntries = new CommonsLinkedHashMap <> ();
+    for (final File aFile : aSegmentFiles)
+      _readSegmentFile (aFile, aOpenEntries, aEntryConsumer);
+
+    for (final OpenSegmentEntry aEntry : aOpenEntries.values ())
+      aEntryConsumer.accept (_parseSegmentHeader (aEntry.m_sHeader, aEntry.m_aData.toByteArray (), false));
+  }
+
+  /**
+   * Read all entries from all segment files written by
+   * {@link AS4DumpSegmentWriter} in the provided directory.
+   *
+   * @param aDirectory
+   *        The directory to read from. May not be <code>null</code>.
+   * @param aEntryConsumer
+   *        The consumer for each read entry. May not be <code>null</code>.
+   * @throws IOException
+   *         In case a file could not be read or has an invalid format
+   * @see #readSegmentFiles(Iterable, Consumer)
+   * @since 2.1.3
+   */
+  public static void readSegmentDirectory (@Nonnull final File aDirectory,
+                                           @Nonnull final Consumer <? super AS4DumpSegmentEntry> aEntryConsumer) throws IOException
+  {
+    ValueEnforcer.notNull (aDirectory, "Directory");
+
+    final File [] aFiles = aDirectory.listFiles ( (d, sName) -> _isSegmentFilename (sName));
+    if (aFiles == null)
+      throw new IOException ("Failed to list '" + aDirectory.getAbsolutePath () + "'");
+
+    // The names contain the creation time and the segment index
+    final ICommonsList <File> aSortedFiles = new CommonsArrayList <> (aFiles).getSortedInline (Comparator.comparing (File::getName));
+    readSegmentFiles (aSortedFiles, aEntryConsumer);
+  }
+
+  /**
+   * Read an index file written by {@link AS4DumpSegmentWriter}. This is much
+   * faster than reading the segment files and is e.g. helpful to find the
+   * segment that contains a specific message.
+   *
+   * @param aIndexFile
+   *        The index file to read. May not be <code>null</code>.
+   * @return All entries starting in the respective segment, without data. Never
+   *         <code>null</code>.
+   * @throws IOException
+   *         In case the file could not be read or has an invalid format
+   * @since 2.1.3
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <AS4DumpSegmentEntry> readSegmentIndex (@Nonnull final File aIndexFile) throws IOException
+  {
+    ValueEnforcer.notNull (aIndexFile, "IndexFile");
+
+    final ICommonsList <AS4DumpSegmentEntry> ret = new CommonsArrayList <> ();
+    final NonBlockingBufferedReader aReader = FileHelper.getBufferedReader (aIndexFile, StandardCharsets.UTF_8);
+    if (aReader == null)
+      throw new IOException ("Failed to open '" + aIndexFile.getAbsolutePath () + "' for reading");
+    try
+    {
+      String sLine;
+      while ((sLine = aReader.readLine ()) != null)
+        if (StringHelper.hasText (sLine))
+          ret.add (_parseSegmentHeader (sLine, null, false));
+    }
+    finally
+    {
+      StreamHelper.close (aReader);
+    }
+    return ret;
+  }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import java.time.OffsetDateTime;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A single dumped message as read from the files written by
+ * {@link AS4DumpSegmentWriter}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ * @see AS4DumpReader#readSegmentDirectory(java.io.File, java.util.function.Consumer)
+ * @see AS4DumpReader#readSegmentIndex(java.io.File)
+ */
+@Immutable
+public final class AS4DumpSegmentEntry
+{
+  private final long m_nEntryID;
+  private final boolean m_bIncoming;
+  private final String m_sID;
+  private final int m_nTry;
+  private final OffsetDateTime m_aDateTime;
+  private final byte [] m_aData;
+  private final boolean m_bComplete;
+
+  public AS4DumpSegmentEntry (final long nEntryID,
+                              final boolean bIncoming,
+                              @Nonnull @Nonempty final String sID,
+                              @Nonnegative final int nTry,
+                              @Nonnull final OffsetDateTime aDateTime,
+                              @Nullable final byte [] aData,
+                              final boolean bComplete)
+  {
+    ValueEnforcer.notEmpty (sID, "ID");
+    ValueEnforcer.isGE0 (nTry, "Try");
+    ValueEnforcer.notNull (aDateTime, "DateTime");
+    m_nEntryID = nEntryID;
+    m_bIncoming = bIncoming;
+    m_sID = sID;
+    m_nTry = nTry;
+    m_aDateTime = aDateTime;
+    m_aData = aData;
+    m_bComplete = bComplete;
+  }
+
+  /**
+   * @return The ID of the entry, that is unique within the files of a single
+   *         writer.
+   */
+  public long getEntryID ()
+  {
+    return m_nEntryID;
+  }
+
+  /**
+   * @return <code>true</code> for an incoming message, <code>false</code> for
+   *         an outgoing message.
+   */
+  public boolean isIncoming ()
+  {
+    return m_bIncoming;
+  }
+
+  /**
+   * @return The incoming unique ID for incoming messages or the AS4 message ID
+   *         for outgoing messages. Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return The index of the try for outgoing messages. Always 0 for incoming
+   *         messages.
+   */
+  @Nonnegative
+  public int getTry ()
+  {
+    return m_nTry;
+  }
+
+  /**
+   * @return The date and time when dumping started. Never <code>null</code>.
+   */
+  @Nonnull
+  public OffsetDateTime getDateTime ()
+  {
+    return m_aDateTime;
+  }
+
+  /**
+   * @return The dumped bytes including the leading HTTP headers. May be
+   *         <code>null</code> if the entry was read from an index file.
+   */
+  @Nullable
+  @ReturnsMutableObject
+  public byte [] directGetData ()
+  {
+    return m_aData;
+  }
+
+  /**
+   * @return <code>true</code> if all bytes of the message were dumped,
+   *         <code>false</code> if the entry was truncated because of an
+   *         overload, if the end of the entry was not yet written or if the
+   *         entry was read from an index file.
+   */
+  public boolean isComplete ()
+  {
+    return m_bComplete;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("EntryID", m_nEntryID)
+                                       .append ("Incoming", m_bIncoming)
+                                       .append ("ID", m_sID)
+                                       .append ("Try", m_nTry)
+                                       .append ("DateTime", m_aDateTime)
+                                       .append ("DataLength", m_aData == null ? -1 : m_aData.length)
+                                       .append ("Complete", m_bComplete)
+                                       .getToString ();
+  }
+}
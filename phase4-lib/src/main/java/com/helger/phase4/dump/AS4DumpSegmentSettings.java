@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The settings of an {@link AS4DumpSegmentWriter}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@NotThreadSafe
+public class AS4DumpSegmentSettings
+{
+  public static final int DEFAULT_BUFFER_SIZE = 16 * CGlobal.BYTES_PER_KILOBYTE;
+  public static final int DEFAULT_BUFFER_COUNT = 1_024;
+  public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * CGlobal.BYTES_PER_MEGABYTE;
+  public static final boolean DEFAULT_COMPRESS = false;
+  public static final EAS4DumpOverflowMode DEFAULT_OVERFLOW_MODE = EAS4DumpOverflowMode.BLOCK;
+
+  private int m_nBufferSize = DEFAULT_BUFFER_SIZE;
+  private int m_nBufferCount = DEFAULT_BUFFER_COUNT;
+  private long m_nMaxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+  private boolean m_bCompress = DEFAULT_COMPRESS;
+  private EAS4DumpOverflowMode m_eOverflowMode = DEFAULT_OVERFLOW_MODE;
+
+  public AS4DumpSegmentSettings ()
+  {}
+
+  /**
+   * @return The size of a single buffer in bytes. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getBufferSize ()
+  {
+    return m_nBufferSize;
+  }
+
+  @Nonnull
+  public final AS4DumpSegmentSettings setBufferSize (@Nonnegative final int nBufferSize)
+  {
+    ValueEnforcer.isGT0 (nBufferSize, "BufferSize");
+    m_nBufferSize = nBufferSize;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of buffers that may be filled but not yet
+   *         written. Together with the buffer size this is the upper limit of
+   *         the memory used. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getBufferCount ()
+  {
+    return m_nBufferCount;
+  }
+
+  @Nonnull
+  public final AS4DumpSegmentSettings setBufferCount (@Nonnegative final int nBufferCount)
+  {
+    ValueEnforcer.isGT0 (nBufferCount, "BufferCount");
+    m_nBufferCount = nBufferCount;
+    return this;
+  }
+
+  /**
+   * @return The number of uncompressed bytes after which a new segment file is
+   *         started. Always &gt; 0.
+   */
+  @Nonnegative
+  public final long getMaxSegmentSize ()
+  {
+    return m_nMaxSegmentSize;
+  }
+
+  @Nonnull
+  public final AS4DumpSegmentSettings setMaxSegmentSize (@Nonnegative final long nMaxSegmentSize)
+  {
+    ValueEnforcer.isGT0 (nMaxSegmentSize, "MaxSegmentSize");
+    m_nMaxSegmentSize = nMaxSegmentSize;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if the segment files are GZip compressed.
+   */
+  public final boolean isCompress ()
+  {
+    return m_bCompress;
+  }
+
+  @Nonnull
+  public final AS4DumpSegmentSettings setCompress (final boolean bCompress)
+  {
+    m_bCompress = bCompress;
+    return this;
+  }
+
+  /**
+   * @return The behaviour if all buffers are in use. Never <code>null</code>.
+   */
+  @Nonnull
+  public final EAS4DumpOverflowMode getOverflowMode ()
+  {
+    return m_eOverflowMode;
+  }
+
+  @Nonnull
+  public final AS4DumpSegmentSettings setOverflowMode (@Nonnull final EAS4DumpOverflowMode eOverflowMode)
+  {
+    ValueEnforcer.notNull (eOverflowMode, "OverflowMode");
+    m_eOverflowMode = eOverflowMode;
+    return this;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("BufferSize", m_nBufferSize)
+                                       .append ("BufferCount", m_nBufferCount)
+                                       .append ("MaxSegmentSize", m_nMaxSegmentSize)
+                                       .append ("Compress", m_bCompress)
+                                       .append ("OverflowMode", m_eOverflowMode)
+                                       .getToString ();
+  }
+}
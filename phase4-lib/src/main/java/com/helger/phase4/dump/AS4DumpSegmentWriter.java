@@ -0,0 +1,616 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.mgr.MetaAS4Manager;
+
+/**
+ * Asynchronous dump writer that decouples the message processing from the
+ * disk. Dumped bytes are copied into a bounded ring of buffers and a single
+ * background thread appends them to rolling segment files, so that many
+ * messages share a single file. If all buffers are in use, the configured
+ * {@link EAS4DumpOverflowMode} applies.<br>
+ * Each segment file has an accompanying text index file with one line per
+ * entry that starts in the segment. The segment files can be read with
+ * {@link AS4DumpReader#readSegmentDirectory(File, java.util.function.Consumer)}.
+ * Use {@link AS4IncomingDumperSegmented} and {@link AS4OutgoingDumperSegmented}
+ * to dump the AS4 traffic with an instance of this class.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4DumpSegmentWriter implements AutoCloseable
+{
+  /** The file name prefix of all segment and index files */
+  public static final String FILE_PREFIX = "as4dump-";
+  /** The file extension of uncompressed segment files */
+  public static final String SEGMENT_FILE_EXTENSION = ".as4seg";
+  /** The file extension of compressed segment files */
+  public static final String COMPRESSED_SEGMENT_FILE_EXTENSION = ".as4seg.gz";
+  /** The file extension of index files */
+  public static final String INDEX_FILE_EXTENSION = ".as4idx";
+  /** The separator of the fields in the index files */
+  public static final char INDEX_SEPARATOR = '\t';
+
+  static final int MAGIC = 0x50344453;
+  static final int VERSION = 1;
+  static final byte RECORD_BEGIN = 1;
+  static final byte RECORD_DATA = 2;
+  static final byte RECORD_END = 3;
+  static final String DIRECTION_INCOMING = "in";
+  static final String DIRECTION_OUTGOING = "out";
+  // Internal only - never written
+  private static final byte RECORD_FLUSH = 10;
+  private static final byte RECORD_STOP = 11;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4DumpSegmentWriter.class);
+  private static final AtomicInteger WRITER_COUNTER = new AtomicInteger (0);
+
+  private static final class Record
+  {
+    private final byte m_nType;
+    private final long m_nEntryID;
+    private final byte [] m_aBuffer;
+    private final int m_nLength;
+    private final String m_sHeader;
+    private final boolean m_bFlag;
+    private final CountDownLatch m_aLatch;
+
+    Record (final byte nType,
+            final long nEntryID,
+            @Nullable final byte [] aBuffer,
+            final int nLength,
+            @Nullable final String sHeader,
+            final boolean bFlag,
+            @Nullable final CountDownLatch aLatch)
+    {
+      m_nType = nType;
+      m_nEntryID = nEntryID;
+      m_aBuffer = aBuffer;
+      m_nLength = nLength;
+      m_sHeader = sHeader;
+      m_bFlag = bFlag;
+      m_aLatch = aLatch;
+    }
+  }
+
+  /**
+   * The output stream of a single entry. Full buffers are handed over to the
+   * writer thread.
+   */
+  private final class EntryOutputStream extends OutputStream
+  {
+    private final long m_nEntryID;
+    private byte [] m_aBuffer;
+    private int m_nPos;
+    private boolean m_bDropped;
+    private boolean m_bClosed;
+
+    EntryOutputStream (final long nEntryID)
+    {
+      m_nEntryID = nEntryID;
+    }
+
+    private boolean _ensureBuffer ()
+    {
+      if (m_bDropped)
+        return false;
+      if (m_aBuffer == null)
+      {
+        m_aBuffer = _acquireBuffer ();
+        m_nPos = 0;
+        if (m_aBuffer == null)
+        {
+          m_bDropped = true;
+          m_aDroppedEntryCount.increment ();
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void _handOver ()
+    {
+      if (m_aBuffer != null)
+      {
+        if (m_nPos > 0)
+          _enqueue (new Record (RECORD_DATA, m_nEntryID, m_aBuffer, m_nPos, null, false, null));
+        else
+          m_aFreeBuffers.offer (m_aBuffer);
+        m_aBuffer = null;
+      }
+    }
+
+    @Override
+    public void write (final int b)
+    {
+      if (m_bClosed || !_ensureBuffer ())
+      {
+        m_aDroppedByteCount.increment ();
+        return;
+      }
+      m_aBuffer[m_nPos++] = (byte) b;
+      if (m_nPos == m_aBuffer.length)
+        _handOver ();
+    }
+
+    @Override
+    public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+    {
+      int nCurOfs = nOfs;
+      int nRemaining = nLen;
+      while (nRemaining > 0)
+      {
+        if (m_bClosed || !_ensureBuffer ())
+        {
+          m_aDroppedByteCount.add (nRemaining);
+          return;
+        }
+        final int nCount = Math.min (nRemaining, m_aBuffer.length - m_nPos);
+        System.arraycopy (aBuf, nCurOfs, m_aBuffer, m_nPos, nCount);
+        m_nPos += nCount;
+        nCurOfs += nCount;
+        nRemaining -= nCount;
+        if (m_nPos == m_aBuffer.length)
+          _handOver ();
+      }
+    }
+
+    @Override
+    public void close ()
+    {
+      if (!m_bClosed)
+      {
+        m_bClosed = true;
+        _handOver ();
+        // The end record does not need a buffer and is therefore never dropped
+        _enqueue (new Record (RECORD_END, m_nEntryID, null, 0, null, m_bDropped, null));
+      }
+    }
+  }
+
+  private final File m_aDirectory;
+  private final AS4DumpSegmentSettings m_aSettings;
+  private final String m_sFilePrefix;
+  private final ArrayBlockingQueue <byte []> m_aFreeBuffers;
+  private final AtomicInteger m_aAllocatedBufferCount = new AtomicInteger (0);
+  private final LinkedBlockingQueue <Record> m_aQueue = new LinkedBlockingQueue <> ();
+  private final AtomicLong m_aEntryIDCounter = new AtomicLong (0);
+  private final Thread m_aWriterThread;
+  private volatile boolean m_bClosed = false;
+
+  private final LongAdder m_aEntryCount = new LongAdder ();
+  private final LongAdder m_aDroppedEntryCount = new LongAdder ();
+  private final LongAdder m_aDroppedByteCount = new LongAdder ();
+  private final LongAdder m_aBlockedCount = new LongAdder ();
+  private final LongAdder m_aWriteErrorCount = new LongAdder ();
+
+  // Only accessed by the writer thread
+  private int m_nSegmentIndex = 0;
+  private DataOutputStream m_aSegmentDOS;
+  private Writer m_aIndexWriter;
+  private long m_nSegmentSize;
+
+  /**
+   * Constructor. Starts the background writer thread.
+   *
+   * @param aDirectory
+   *        The directory to write the segment files to. Is created if it does
+   *        not exist. May not be <code>null</code>.
+   * @param aSettings
+   *        The settings to use. May not be <code>null</code>. The settings are
+   *        not copied, so they may not be modified afterwards.
+   */
+  public AS4DumpSegmentWriter (@Nonnull final File aDirectory, @Nonnull final AS4DumpSegmentSettings aSettings)
+  {
+    ValueEnforcer.notNull (aDirectory, "Directory");
+    ValueEnforcer.notNull (aSettings, "Settings");
+    FileOperationManager.INSTANCE.createDirRecursiveIfNotExisting (aDirectory);
+    m_aDirectory = aDirectory;
+    m_aSettings = aSettings;
+    // Use a unique prefix per writer, so that multiple writers can share a
+    // directory and the file names are ordered by time
+    m_sFilePrefix = FILE_PREFIX + System.currentTimeMillis () + "-";
+    m_aFreeBuffers = new ArrayBlockingQueue <> (aSettings.getBufferCount ());
+    m_aWriterThread = new Thread (this::_run, "phase4-dump-writer-" + WRITER_COUNTER.incrementAndGet ());
+    m_aWriterThread.setDaemon (true);
+    m_aWriterThread.start ();
+  }
+
+  /**
+   * @return The directory the segment files are written to. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final File getDirectory ()
+  {
+    return m_aDirectory;
+  }
+
+  /**
+   * @return The settings of this writer. Never <code>null</code>.
+   */
+  @Nonnull
+  public final AS4DumpSegmentSettings getSettings ()
+  {
+    return m_aSettings;
+  }
+
+  @Nullable
+  private byte [] _acquireBuffer ()
+  {
+    byte [] ret = m_aFreeBuffers.poll ();
+    if (ret != null)
+      return ret;
+
+    // Lazily allocate up to the maximum number of buffers
+    if (m_aAllocatedBufferCount.incrementAndGet () <= m_aSettings.getBufferCount ())
+      return new byte [m_aSettings.getBufferSize ()];
+    m_aAllocatedBufferCount.decrementAndGet ();
+
+    if (m_aSettings.getOverflowMode () == EAS4DumpOverflowMode.DROP)
+      return null;
+
+    m_aBlockedCount.increment ();
+    try
+    {
+      while ((ret = m_aFreeBuffers.poll (100, TimeUnit.MILLISECONDS)) == null)
+        if (m_bClosed)
+          return null;
+      return ret;
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      return null;
+    }
+  }
+
+  private void _enqueue (@Nonnull final Record aRecord)
+  {
+    if (m_bClosed)
+    {
+      // The writer thread may already be gone
+      if (aRecord.m_aBuffer != null)
+        m_aFreeBuffers.offer (aRecord.m_aBuffer);
+      return;
+    }
+    m_aQueue.add (aRecord);
+  }
+
+  @Nonnull
+  private static String _getIndexValue (@Nonnull final String s)
+  {
+    // Avoid breaking the line based format
+    return s.replace (INDEX_SEPARATOR, ' ').replace ('\r', ' ').replace ('\n', ' ');
+  }
+
+  /**
+   * Start a new dump entry. The returned stream must be closed after the last
+   * byte was written. Writing to the stream never throws an exception.
+   *
+   * @param bIncoming
+   *        <code>true</code> for incoming messages, <code>false</code> for
+   *        outgoing messages.
+   * @param sID
+   *        The incoming unique ID or the AS4 message ID. Neither
+   *        <code>null</code> nor empty.
+   * @param nTry
+   *        The index of the sending try. Always 0 for incoming messages.
+   * @return <code>null</code> if this writer is already closed.
+   */
+  @Nullable
+  public OutputStream openEntry (final boolean bIncoming,
+                                 @Nonnull @Nonempty final String sID,
+                                 @Nonnegative final int nTry)
+  {
+    ValueEnforcer.notEmpty (sID, "ID");
+    ValueEnforcer.isGE0 (nTry, "Try");
+    if (m_bClosed)
+      return null;
+
+    final long nEntryID = m_aEntryIDCounter.incrementAndGet ();
+    // Same format as in the index file
+    final String sHeader = nEntryID +
+                           Character.toString (INDEX_SEPARATOR) +
+                           (bIncoming ? DIRECTION_INCOMING : DIRECTION_OUTGOING) +
+                           INDEX_SEPARATOR +
+                           nTry +
+                           INDEX_SEPARATOR +
+                           MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ().toString () +
+                           INDEX_SEPARATOR +
+                           _getIndexValue (sID);
+    m_aEntryCount.increment ();
+    _enqueue (new Record (RECORD_BEGIN, nEntryID, null, 0, sHeader, false, null));
+    return new EntryOutputStream (nEntryID);
+  }
+
+  private void _closeSegment ()
+  {
+    StreamHelper.close (m_aSegmentDOS);
+    m_aSegmentDOS = null;
+    StreamHelper.close (m_aIndexWriter);
+    m_aIndexWriter = null;
+  }
+
+  private void _ensureSegment () throws IOException
+  {
+    if (m_aSegmentDOS != null && m_nSegmentSize < m_aSettings.getMaxSegmentSize ())
+      return;
+
+    // Roll over
+    _closeSegment ();
+    m_nSegmentIndex++;
+    final String sBaseName = m_sFilePrefix + StringHelper.getLeadingZero (m_nSegmentIndex, 6);
+    final boolean bCompress = m_aSettings.isCompress ();
+    final File aSegmentFile = new File (m_aDirectory,
+                                        sBaseName + (bCompress ? COMPRESSED_SEGMENT_FILE_EXTENSION
+                                                               : SEGMENT_FILE_EXTENSION));
+    final File aIndexFile = new File (m_aDirectory, sBaseName + INDEX_FILE_EXTENSION);
+    final OutputStream aOS = FileHelper.getBufferedOutputStream (aSegmentFile);
+    if (aOS == null)
+      throw new IOException ("Failed to open '" + aSegmentFile.getAbsolutePath () + "' for writing");
+    m_aSegmentDOS = new DataOutputStream (bCompress ? new GZIPOutputStream (aOS, true) : aOS);
+    m_aIndexWriter = FileHelper.getBufferedWriter (aIndexFile, StandardCharsets.UTF_8);
+    if (m_aIndexWriter == null)
+      throw new IOException ("Failed to open '" + aIndexFile.getAbsolutePath () + "' for writing");
+
+    m_aSegmentDOS.writeInt (MAGIC);
+    m_aSegmentDOS.writeInt (VERSION);
+    m_nSegmentSize = 8;
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Started AS4 dump segment '" + aSegmentFile.getAbsolutePath () + "'");
+  }
+
+  private void _write (@Nonnull final Record aRecord) throws IOException
+  {
+    _ensureSegment ();
+    final DataOutputStream aDOS = m_aSegmentDOS;
+    aDOS.writeByte (aRecord.m_nType);
+    aDOS.writeLong (aRecord.m_nEntryID);
+    switch (aRecord.m_nType)
+    {
+      case RECORD_BEGIN:
+      {
+        final byte [] aHeader = aRecord.m_sHeader.getBytes (StandardCharsets.UTF_8);
+        aDOS.writeInt (aHeader.length);
+        aDOS.write (aHeader);
+        m_nSegmentSize += 13 + aHeader.length;
+        m_aIndexWriter.write (aRecord.m_sHeader);
+        m_aIndexWriter.write ('\n');
+        break;
+      }
+      case RECORD_DATA:
+        aDOS.writeInt (aRecord.m_nLength);
+        aDOS.write (aRecord.m_aBuffer, 0, aRecord.m_nLength);
+        m_nSegmentSize += 13 + aRecord.m_nLength;
+        break;
+      case RECORD_END:
+        aDOS.writeBoolean (aRecord.m_bFlag);
+        m_nSegmentSize += 10;
+        break;
+      default:
+        throw new IllegalStateException ("Unsupported record type " + aRecord.m_nType);
+    }
+  }
+
+  private void _flush ()
+  {
+    try
+    {
+      if (m_aSegmentDOS != null)
+        m_aSegmentDOS.flush ();
+      if (m_aIndexWriter != null)
+        m_aIndexWriter.flush ();
+    }
+    catch (final IOException ex)
+    {
+      m_aWriteErrorCount.increment ();
+      LOGGER.error ("Failed to flush AS4 dump segment", ex);
+    }
+  }
+
+  private void _run ()
+  {
+    while (true)
+    {
+      final Record aRecord;
+      try
+      {
+        // Flush if nothing happens for some time, so that readers see the data
+        aRecord = m_aQueue.poll (1, TimeUnit.SECONDS);
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        break;
+      }
+
+      if (aRecord == null)
+        _flush ();
+      else
+        if (aRecord.m_nType == RECORD_STOP)
+          break;
+        else
+          if (aRecord.m_nType == RECORD_FLUSH)
+          {
+            _flush ();
+            aRecord.m_aLatch.countDown ();
+          }
+          else
+          {
+            try
+            {
+              _write (aRecord);
+            }
+            catch (final IOException ex)
+            {
+              m_aWriteErrorCount.increment ();
+              LOGGER.error ("Failed to write AS4 dump segment - starting a new segment", ex);
+              _closeSegment ();
+            }
+            finally
+            {
+              // Return buffer to the ring
+              if (aRecord.m_aBuffer != null)
+                m_aFreeBuffers.offer (aRecord.m_aBuffer);
+            }
+          }
+    }
+    _closeSegment ();
+  }
+
+  /**
+   * Wait until all data that was handed over to this writer before the call
+   * is written and flushed to disk. This does not include the data that is
+   * still in the buffer of an open entry.
+   *
+   * @param nTimeoutMillis
+   *        The maximum number of milliseconds to wait.
+   * @return <code>true</code> if everything was flushed, <code>false</code> if
+   *         the timeout elapsed or the writer is closed.
+   * @throws InterruptedException
+   *         If interrupted while waiting
+   */
+  public boolean flush (@Nonnegative final long nTimeoutMillis) throws InterruptedException
+  {
+    if (m_bClosed)
+      return false;
+    final CountDownLatch aLatch = new CountDownLatch (1);
+    m_aQueue.add (new Record (RECORD_FLUSH, 0, null, 0, null, false, aLatch));
+    return aLatch.await (nTimeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return The number of records waiting to be written.
+   */
+  @Nonnegative
+  public int getQueueSize ()
+  {
+    return m_aQueue.size ();
+  }
+
+  /**
+   * @return The number of entries that were started.
+   */
+  @Nonnegative
+  public long getEntryCount ()
+  {
+    return m_aEntryCount.sum ();
+  }
+
+  /**
+   * @return The number of entries that were truncated, because no buffer was
+   *         available.
+   */
+  @Nonnegative
+  public long getDroppedEntryCount ()
+  {
+    return m_aDroppedEntryCount.sum ();
+  }
+
+  /**
+   * @return The number of bytes that were not dumped, because no buffer was
+   *         available.
+   */
+  @Nonnegative
+  public long getDroppedByteCount ()
+  {
+    return m_aDroppedByteCount.sum ();
+  }
+
+  /**
+   * @return The number of times a thread had to wait for a buffer.
+   */
+  @Nonnegative
+  public long getBlockedCount ()
+  {
+    return m_aBlockedCount.sum ();
+  }
+
+  /**
+   * @return The number of errors writing to the segment files.
+   */
+  @Nonnegative
+  public long getWriteErrorCount ()
+  {
+    return m_aWriteErrorCount.sum ();
+  }
+
+  /**
+   * Stop accepting new data, write all pending data and close the current
+   * segment. Entries that are still open are truncated.
+   */
+  public void close ()
+  {
+    if (m_bClosed)
+      return;
+    // Everything enqueued before is written
+    m_aQueue.add (new Record (RECORD_STOP, 0, null, 0, null, false, null));
+    m_bClosed = true;
+    try
+    {
+      m_aWriterThread.join (TimeUnit.MINUTES.toMillis (1));
+      if (m_aWriterThread.isAlive ())
+        LOGGER.warn ("AS4 dump writer did not terminate in time");
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Directory", m_aDirectory)
+                                       .append ("Settings", m_aSettings)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import java.io.OutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.phase4.messaging.EAS4MessageMode;
+import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
+import com.helger.phase4.servlet.IAS4MessageState;
+
+/**
+ * Asynchronous version of {@link IAS4OutgoingDumper} that writes to the
+ * segment files of an {@link AS4DumpSegmentWriter}. Contrary to
+ * {@link AS4OutgoingDumperFileBased} the sending thread never waits for the
+ * disk, unless {@link EAS4DumpOverflowMode#BLOCK} is configured and all
+ * buffers are in use.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public class AS4OutgoingDumperSegmented extends AbstractAS4OutgoingDumperWithHeaders
+{
+  private final AS4DumpSegmentWriter m_aWriter;
+
+  /**
+   * Constructor
+   *
+   * @param aWriter
+   *        The writer to use. May not be <code>null</code>. The writer is not
+   *        closed by this class and may be shared with an
+   *        {@link AS4IncomingDumperSegmented}.
+   */
+  public AS4OutgoingDumperSegmented (@Nonnull final AS4DumpSegmentWriter aWriter)
+  {
+    ValueEnforcer.notNull (aWriter, "Writer");
+    m_aWriter = aWriter;
+  }
+
+  /**
+   * @return The writer used. Never <code>null</code>.
+   */
+  @Nonnull
+  public final AS4DumpSegmentWriter getWriter ()
+  {
+    return m_aWriter;
+  }
+
+  @Override
+  @Nullable
+  protected OutputStream openOutputStream (@Nonnull final EAS4MessageMode eMsgMode,
+                                           @Nullable final IAS4IncomingMessageMetadata aMessageMetadata,
+                                           @Nullable final IAS4MessageState aState,
+                                           @Nonnull @Nonempty final String sMessageID,
+                                           @Nullable final HttpHeaderMap aCustomHeaders,
+                                           @Nonnegative final int nTry)
+  {
+    return m_aWriter.openEntry (false, sMessageID, nTry);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * Defines how the {@link AS4DumpSegmentWriter} behaves if all of its buffers
+ * are in use, because the writing to disk cannot keep up.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public enum EAS4DumpOverflowMode implements IHasID <String>
+{
+  /**
+   * The thread that dumps waits until a buffer becomes available. No data is
+   * lost, but the message processing is slowed down.
+   */
+  BLOCK ("block"),
+  /**
+   * The rest of the affected dump entry is dropped and the entry is marked as
+   * truncated. The message processing is never slowed down.
+   */
+  DROP ("drop");
+
+  private final String m_sID;
+
+  EAS4DumpOverflowMode (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static EAS4DumpOverflowMode getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EAS4DumpOverflowMode.class, sID);
+  }
+}
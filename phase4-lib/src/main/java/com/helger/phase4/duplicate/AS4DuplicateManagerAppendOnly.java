@@ -0,0 +1,680 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.duplicate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.CountingInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.state.EChange;
+import com.helger.commons.state.EContinue;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.StringParser;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.commons.timing.StopWatch;
+import com.helger.phase4.util.AS4IOHelper;
+
+/**
+ * A persistent duplicate checker that is backed by an append-only log. Each
+ * registered message ID is appended as a small binary record to the current
+ * log segment. Segments are rolled over after a configurable duration or
+ * size. Lookups use an in-memory hash index. Upon eviction, all segments that
+ * only contain expired items are deleted as a whole, and an eviction marker is
+ * appended for the remaining ones. On startup all segments are read
+ * sequentially, which is a lot faster than parsing a large XML file.<br>
+ * Every record is forced to disk before the registration returns. Concurrent
+ * registrations are grouped, so that a single disk sync outside of the global
+ * lock covers all records appended in the meantime. An incomplete or corrupt
+ * record at the end of a segment (e.g. after a crash) is cut off on startup.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4DuplicateManagerAppendOnly implements IAS4DuplicateManager
+{
+  /** The default maximum duration of a single segment */
+  public static final Duration DEFAULT_SEGMENT_DURATION = Duration.ofHours (1);
+  /** The default maximum size of a single segment in bytes */
+  public static final long DEFAULT_SEGMENT_MAX_BYTES = 64L * 1024 * 1024;
+  /** The file name prefix of segment files */
+  public static final String SEGMENT_FILE_PREFIX = "segment-";
+  /** The file name extension of segment files */
+  public static final String SEGMENT_FILE_EXTENSION = ".log";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4DuplicateManagerAppendOnly.class);
+
+  private static final byte RECORD_ITEM = 1;
+  private static final byte RECORD_EVICT = 2;
+
+  /**
+   * A single log segment
+   */
+  private static final class Segment
+  {
+    private final File m_aFile;
+    private final long m_nStartMillis;
+    private final Set <String> m_aIDs = ConcurrentHashMap.newKeySet ();
+    private volatile long m_nMaxMillis = Long.MIN_VALUE;
+
+    Segment (@Nonnull final File aFile, final long nStartMillis)
+    {
+      m_aFile = aFile;
+      m_nStartMillis = nStartMillis;
+    }
+
+    void add (@Nonnull final AS4DuplicateItem aItem)
+    {
+      m_aIDs.add (aItem.getID ());
+      m_nMaxMillis = Math.max (m_nMaxMillis, aItem.getDateTime ().toInstant ().toEpochMilli ());
+    }
+  }
+
+  private final File m_aDirectory;
+  private final long m_nSegmentMillis;
+  private final long m_nSegmentMaxBytes;
+
+  // The hash index from message ID to item
+  private final ConcurrentHashMap <String, AS4DuplicateItem> m_aMap = new ConcurrentHashMap <> ();
+
+  private final ReentrantLock m_aLock = new ReentrantLock ();
+  // Start millis to segment, the last one is the current one
+  @GuardedBy ("m_aLock")
+  private final TreeMap <Long, Segment> m_aSegments = new TreeMap <> ();
+  @GuardedBy ("m_aLock")
+  private Segment m_aCurrentSegment;
+  @GuardedBy ("m_aLock")
+  private FileOutputStream m_aCurrentFOS;
+  @GuardedBy ("m_aLock")
+  private DataOutputStream m_aCurrentDOS;
+  @GuardedBy ("m_aLock")
+  private long m_nCurrentBytes;
+  // The sequence number of the last appended record
+  @GuardedBy ("m_aLock")
+  private long m_nAppendedSeq = 0;
+
+  // Only one thread forces the current segment at a time
+  private final ReentrantLock m_aSyncLock = new ReentrantLock ();
+  // The sequence number of the last record known to be on disk
+  private volatile long m_nSyncedSeq = 0;
+
+  /**
+   * Constructor using the default segment settings.
+   *
+   * @param aDirectory
+   *        The directory to store the segments in. May not be
+   *        <code>null</code>.
+   * @throws IOException
+   *         In case the existing segments cannot be read
+   */
+  public AS4DuplicateManagerAppendOnly (@Nonnull final File aDirectory) throws IOException
+  {
+    this (aDirectory, DEFAULT_SEGMENT_DURATION, DEFAULT_SEGMENT_MAX_BYTES);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aDirectory
+   *        The directory to store the segments in. May not be
+   *        <code>null</code>.
+   * @param aSegmentDuration
+   *        The maximum duration after which a new segment is started. May not
+   *        be <code>null</code>.
+   * @param nSegmentMaxBytes
+   *        The maximum size of a segment in bytes after which a new segment is
+   *        started. Must be &gt; 0.
+   * @throws IOException
+   *         In case the existing segments cannot be read
+   */
+  public AS4DuplicateManagerAppendOnly (@Nonnull final File aDirectory,
+                                        @Nonnull final Duration aSegmentDuration,
+                                        @Nonnegative final long nSegmentMaxBytes) throws IOException
+  {
+    ValueEnforcer.notNull (aDirectory, "Directory");
+    ValueEnforcer.notNull (aSegmentDuration, "SegmentDuration");
+    ValueEnforcer.isGT0 (aSegmentDuration.toMillis (), "SegmentDuration.Millis");
+    ValueEnforcer.isGT0 (nSegmentMaxBytes, "SegmentMaxBytes");
+    m_aDirectory = aDirectory.getAbsoluteFile ();
+    m_nSegmentMillis = aSegmentDuration.toMillis ();
+    m_nSegmentMaxBytes = nSegmentMaxBytes;
+
+    if (FileOperationManager.INSTANCE.createDirRecursiveIfNotExisting (m_aDirectory).isFailure ())
+      throw new IOException ("Failed to create duplicate log directory " + m_aDirectory);
+    _readAllSegments ();
+  }
+
+  @Nonnull
+  public final File getDirectory ()
+  {
+    return m_aDirectory;
+  }
+
+  private static void _writeString (@Nonnull final DataOutputStream aDOS, @Nullable final String s) throws IOException
+  {
+    if (s == null)
+      aDOS.writeInt (-1);
+    else
+    {
+      final byte [] aBytes = s.getBytes (StandardCharsets.UTF_8);
+      aDOS.writeInt (aBytes.length);
+      aDOS.write (aBytes);
+    }
+  }
+
+  @Nullable
+  private static String _readString (@Nonnull final DataInputStream aDIS,
+                                     @Nonnull final CountingInputStream aCIS,
+                                     final long nFileLength) throws IOException
+  {
+    final int nLen = aDIS.readInt ();
+    if (nLen == -1)
+      return null;
+    // Don't trust the length field of a partially written record
+    if (nLen < 0 || nLen > nFileLength - aCIS.getBytesRead ())
+      throw new EOFException ("Invalid string length " + nLen);
+    final byte [] aBytes = new byte [nLen];
+    aDIS.readFully (aBytes);
+    return new String (aBytes, StandardCharsets.UTF_8);
+  }
+
+  private static long _getMillis (@Nonnull final OffsetDateTime aDT)
+  {
+    return aDT.toInstant ().toEpochMilli ();
+  }
+
+  private static long _parseSegmentStart (@Nonnull final String sFilename)
+  {
+    if (!sFilename.startsWith (SEGMENT_FILE_PREFIX) || !sFilename.endsWith (SEGMENT_FILE_EXTENSION))
+      return -1;
+    return StringParser.parseLong (sFilename.substring (SEGMENT_FILE_PREFIX.length (),
+                                                        sFilename.length () - SEGMENT_FILE_EXTENSION.length ()),
+                                   -1);
+  }
+
+  private void _readAllSegments () throws IOException
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final File [] aFiles = m_aDirectory.listFiles ( (d, sName) -> _parseSegmentStart (sName) >= 0);
+    if (aFiles != null)
+      for (final File aFile : aFiles)
+      {
+        final long nStart = _parseSegmentStart (aFile.getName ());
+        m_aSegments.put (Long.valueOf (nStart), new Segment (aFile, nStart));
+      }
+
+    long nMaxEvictMillis = Long.MIN_VALUE;
+    int nRecords = 0;
+    for (final Segment aSegment : m_aSegments.values ())
+    {
+      final long nFileLength = aSegment.m_aFile.length ();
+      // The end of the last completely read record
+      long nValidLength = 0;
+      boolean bInvalidTail = false;
+      final CountingInputStream aCIS = new CountingInputStream (new BufferedInputStream (new FileInputStream (aSegment.m_aFile)));
+      try (final DataInputStream aDIS = new DataInputStream (aCIS))
+      {
+        while (true)
+        {
+          try
+          {
+            final int nType = aDIS.read ();
+            if (nType < 0)
+              break;
+            if (nType == RECORD_ITEM)
+            {
+              final long nMillis = aDIS.readLong ();
+              final int nOffsetSeconds = aDIS.readInt ();
+              final String sMessageID = _readString (aDIS, aCIS, nFileLength);
+              final String sProfileID = _readString (aDIS, aCIS, nFileLength);
+              final String sPModeID = _readString (aDIS, aCIS, nFileLength);
+              if (sMessageID == null)
+                throw new EOFException ("Missing message ID");
+              final OffsetDateTime aDT = OffsetDateTime.ofInstant (Instant.ofEpochMilli (nMillis),
+                                                                   ZoneOffset.ofTotalSeconds (nOffsetSeconds));
+              final AS4DuplicateItem aItem = new AS4DuplicateItem (aDT, sMessageID, sProfileID, sPModeID);
+              // Later records win
+              m_aMap.put (sMessageID, aItem);
+              aSegment.add (aItem);
+            }
+            else
+              if (nType == RECORD_EVICT)
+                nMaxEvictMillis = Math.max (nMaxEvictMillis, aDIS.readLong ());
+              else
+              {
+                LOGGER.warn ("Duplicate log segment " + aSegment.m_aFile + " contains an unsupported record type " + nType);
+                bInvalidTail = true;
+                break;
+              }
+            nRecords++;
+            nValidLength = aCIS.getBytesRead ();
+          }
+          catch (final EOFException | DateTimeException ex)
+          {
+            // Incomplete or corrupt last record, e.g. after a crash
+            LOGGER.warn ("Duplicate log segment " + aSegment.m_aFile + " ends with an invalid record: " + ex.getMessage ());
+            bInvalidTail = true;
+            break;
+          }
+        }
+      }
+
+      if (bInvalidTail && nValidLength < nFileLength)
+      {
+        // Cut off everything after the last valid record
+        LOGGER.warn ("Truncating duplicate log segment " +
+                     aSegment.m_aFile +
+                     " from " +
+                     nFileLength +
+                     " to " +
+                     nValidLength +
+                     " bytes");
+        try (final FileChannel aChannel = FileChannel.open (aSegment.m_aFile.toPath (), StandardOpenOption.WRITE))
+        {
+          aChannel.truncate (nValidLength);
+          aChannel.force (true);
+        }
+      }
+    }
+
+    // Apply the latest eviction
+    if (nMaxEvictMillis != Long.MIN_VALUE)
+      _evictLocked (OffsetDateTime.ofInstant (Instant.ofEpochMilli (nMaxEvictMillis), ZoneOffset.UTC), null);
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Read " +
+                   nRecords +
+                   " duplicate records from " +
+                   m_aSegments.size () +
+                   " segment(s) in " +
+                   m_aDirectory +
+                   " in " +
+                   aSW.stopAndGetMillis () +
+                   " ms; " +
+                   m_aMap.size () +
+                   " item(s) are active");
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _closeCurrentSegmentLocked ()
+  {
+    if (m_aCurrentDOS != null)
+    {
+      // Pending group syncs rely on records of closed segments being on disk
+      try
+      {
+        _syncLocked ();
+      }
+      catch (final IOException ex)
+      {
+        LOGGER.error ("Failed to sync duplicate log segment " + m_aCurrentSegment.m_aFile, ex);
+      }
+      StreamHelper.close (m_aCurrentDOS);
+      m_aCurrentDOS = null;
+      m_aCurrentFOS = null;
+      m_aCurrentSegment = null;
+    }
+  }
+
+  @GuardedBy ("m_aLock")
+  @Nonnull
+  private DataOutputStream _getCurrentDOSLocked (final long nNowMillis) throws IOException
+  {
+    if (m_aCurrentDOS != null &&
+        (nNowMillis - m_aCurrentSegment.m_nStartMillis >= m_nSegmentMillis || m_nCurrentBytes >= m_nSegmentMaxBytes))
+    {
+      // Roll over
+      _closeCurrentSegmentLocked ();
+    }
+
+    if (m_aCurrentDOS == null)
+    {
+      // Always start a new segment, so that existing ones are never modified
+      long nStart = nNowMillis;
+      final Map.Entry <Long, Segment> aLast = m_aSegments.lastEntry ();
+      if (aLast != null && aLast.getKey ().longValue () >= nStart)
+        nStart = aLast.getKey ().longValue () + 1;
+      final File aFile = new File (m_aDirectory, SEGMENT_FILE_PREFIX + nStart + SEGMENT_FILE_EXTENSION);
+      final Segment aSegment = new Segment (aFile, nStart);
+      m_aCurrentFOS = new FileOutputStream (aFile, true);
+      m_aCurrentDOS = new DataOutputStream (new BufferedOutputStream (m_aCurrentFOS));
+      m_aCurrentSegment = aSegment;
+      m_aSegments.put (Long.valueOf (nStart), aSegment);
+      m_nCurrentBytes = 0;
+      // Make sure the new segment file itself survives a crash
+      AS4IOHelper.forceDirectory (m_aDirectory);
+    }
+    return m_aCurrentDOS;
+  }
+
+  /**
+   * Flush the current segment and force it to disk, so that an appended record
+   * is durable when the method returns.
+   */
+  @GuardedBy ("m_aLock")
+  private void _syncLocked () throws IOException
+  {
+    m_aCurrentDOS.flush ();
+    m_aCurrentFOS.getChannel ().force (false);
+  }
+
+  /**
+   * Append a record and write it to the file without forcing it to disk.
+   *
+   * @return The sequence number of the appended record to be passed to
+   *         {@link #_syncUpTo(long)}.
+   */
+  @GuardedBy ("m_aLock")
+  private long _appendLocked (@Nonnull final AS4DuplicateItem aItem) throws IOException
+  {
+    final OffsetDateTime aDT = aItem.getDateTime ();
+    final DataOutputStream aDOS = _getCurrentDOSLocked (System.currentTimeMillis ());
+    final int nBefore = aDOS.size ();
+    aDOS.writeByte (RECORD_ITEM);
+    aDOS.writeLong (_getMillis (aDT));
+    aDOS.writeInt (aDT.getOffset ().getTotalSeconds ());
+    _writeString (aDOS, aItem.getMessageID ());
+    _writeString (aDOS, aItem.getProfileID ());
+    _writeString (aDOS, aItem.getPModeID ());
+    aDOS.flush ();
+    m_nCurrentBytes += aDOS.size () - nBefore;
+    m_aCurrentSegment.add (aItem);
+    return ++m_nAppendedSeq;
+  }
+
+  /**
+   * Force all records up to the provided sequence number to disk. This is
+   * called without holding the global lock. If another thread already forced
+   * the segment in the meantime, nothing happens. Otherwise a single force
+   * covers all records that were appended so far (group commit).
+   */
+  private void _syncUpTo (final long nSeq) throws IOException
+  {
+    if (m_nSyncedSeq >= nSeq)
+      return;
+
+    m_aSyncLock.lock ();
+    try
+    {
+      // Check again - another writer may have forced it while waiting
+      if (m_nSyncedSeq >= nSeq)
+        return;
+
+      final long nTargetSeq;
+      final FileChannel aChannel;
+      m_aLock.lock ();
+      try
+      {
+        nTargetSeq = m_nAppendedSeq;
+        aChannel = m_aCurrentFOS == null ? null : m_aCurrentFOS.getChannel ();
+      }
+      finally
+      {
+        m_aLock.unlock ();
+      }
+
+      if (aChannel != null)
+      {
+        try
+        {
+          aChannel.force (false);
+        }
+        catch (final ClosedChannelException ex)
+        {
+          // Rolled over in the meantime - closing forced the segment
+        }
+      }
+      // Else the segment was closed and therefore forced
+      m_nSyncedSeq = nTargetSeq;
+    }
+    finally
+    {
+      m_aSyncLock.unlock ();
+    }
+  }
+
+  @Nonnull
+  public EContinue registerAndCheck (@Nullable final String sMessageID,
+                                     @Nullable final String sProfileID,
+                                     @Nullable final String sPModeID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+    {
+      // No message ID present - don't check for duplication
+      return EContinue.CONTINUE;
+    }
+
+    final AS4DuplicateItem aItem = new AS4DuplicateItem (sMessageID, sProfileID, sPModeID);
+    if (m_aMap.putIfAbsent (aItem.getID (), aItem) != null)
+    {
+      // ID already in use
+      return EContinue.BREAK;
+    }
+
+    try
+    {
+      final long nSeq;
+      m_aLock.lock ();
+      try
+      {
+        nSeq = _appendLocked (aItem);
+      }
+      finally
+      {
+        m_aLock.unlock ();
+      }
+      _syncUpTo (nSeq);
+    }
+    catch (final IOException ex)
+    {
+      // Keep it in memory at least
+      LOGGER.error ("Failed to append message ID '" + sMessageID + "' to the duplicate log", ex);
+    }
+    return EContinue.CONTINUE;
+  }
+
+  @Nonnull
+  public EChange clearCache ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      if (m_aMap.isEmpty () && m_aSegments.isEmpty ())
+        return EChange.UNCHANGED;
+      _closeCurrentSegmentLocked ();
+      for (final Segment aSegment : m_aSegments.values ())
+        FileOperationManager.INSTANCE.deleteFileIfExisting (aSegment.m_aFile);
+      m_aSegments.clear ();
+      m_aMap.clear ();
+      return EChange.CHANGED;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _evictLocked (@Nonnull final OffsetDateTime aRefDT, @Nullable final ICommonsList <String> aEvicted)
+  {
+    final long nRefMillis = _getMillis (aRefDT);
+    final Iterator <Segment> it = m_aSegments.values ().iterator ();
+    while (it.hasNext ())
+    {
+      final Segment aSegment = it.next ();
+      final boolean bFullyExpired = aSegment != m_aCurrentSegment && aSegment.m_nMaxMillis < nRefMillis;
+      for (final String sID : aSegment.m_aIDs)
+      {
+        final AS4DuplicateItem aItem = m_aMap.get (sID);
+        if (aItem != null && aItem.getDateTime ().isBefore (aRefDT) && m_aMap.remove (sID, aItem))
+        {
+          if (!bFullyExpired)
+            aSegment.m_aIDs.remove (sID);
+          if (aEvicted != null)
+            aEvicted.add (sID);
+        }
+      }
+      if (bFullyExpired)
+      {
+        // Drop the whole segment
+        FileOperationManager.INSTANCE.deleteFileIfExisting (aSegment.m_aFile);
+        it.remove ();
+      }
+    }
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <String> evictAllItemsBefore (@Nonnull final OffsetDateTime aRefDT)
+  {
+    ValueEnforcer.notNull (aRefDT, "RefDT");
+
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    m_aLock.lock ();
+    try
+    {
+      _evictLocked (aRefDT, ret);
+      if (!m_aSegments.isEmpty ())
+      {
+        // Remember the eviction for the remaining segments
+        final DataOutputStream aDOS = _getCurrentDOSLocked (System.currentTimeMillis ());
+        final int nBefore = aDOS.size ();
+        aDOS.writeByte (RECORD_EVICT);
+        aDOS.writeLong (_getMillis (aRefDT));
+        _syncLocked ();
+        m_nCurrentBytes += aDOS.size () - nBefore;
+      }
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException ("Failed to append eviction to the duplicate log", ex);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+    return ret;
+  }
+
+  public boolean isEmpty ()
+  {
+    return m_aMap.isEmpty ();
+  }
+
+  @Nonnegative
+  public int size ()
+  {
+    return m_aMap.size ();
+  }
+
+  @Nullable
+  public IAS4DuplicateItem getItemOfMessageID (@Nullable final String sMessageID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+      return null;
+
+    return m_aMap.get (sMessageID);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IAS4DuplicateItem> getAll ()
+  {
+    return new CommonsArrayList <> (m_aMap.values ());
+  }
+
+  /**
+   * @return The number of log segments currently present. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getSegmentCount ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_aSegments.size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Close the currently open segment. It is safe to continue using this
+   * manager afterwards, as a new segment is opened on demand.
+   */
+  public void close ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      _closeCurrentSegmentLocked ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Directory", m_aDirectory)
+                                       .append ("SegmentMillis", m_nSegmentMillis)
+                                       .append ("SegmentMaxBytes", m_nSegmentMaxBytes)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.duplicate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.EChange;
+import com.helger.commons.state.EContinue;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A concurrent in-memory duplicate checker for avoiding duplicate messages.
+ * Compared to {@link AS4DuplicateManagerInMemory} no global lock is used:
+ * {@link #registerAndCheck(String, String, String)} is a single atomic
+ * <code>putIfAbsent</code> on a {@link ConcurrentHashMap}. Additionally all
+ * items are grouped into time buckets of a fixed duration, so that
+ * {@link #evictAllItemsBefore(OffsetDateTime)} can drop all buckets that are
+ * completely expired without scanning all contained items. Only the bucket
+ * containing the reference date time is checked item by item.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4DuplicateManagerInMemoryConcurrent implements IAS4DuplicateManager
+{
+  /** The default duration of a single time bucket */
+  public static final Duration DEFAULT_BUCKET_DURATION = Duration.ofMinutes (1);
+
+  private final long m_nBucketMillis;
+  // Message ID to item
+  private final ConcurrentHashMap <String, AS4DuplicateItem> m_aMap = new ConcurrentHashMap <> ();
+  // Bucket index to the message IDs of the bucket
+  private final ConcurrentHashMap <Long, Set <String>> m_aBuckets = new ConcurrentHashMap <> ();
+
+  public AS4DuplicateManagerInMemoryConcurrent ()
+  {
+    this (DEFAULT_BUCKET_DURATION);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aBucketDuration
+   *        The duration of a single time bucket. Must be at least 1
+   *        millisecond. Smaller buckets make eviction more precise, larger
+   *        buckets reduce the number of buckets.
+   */
+  public AS4DuplicateManagerInMemoryConcurrent (@Nonnull final Duration aBucketDuration)
+  {
+    ValueEnforcer.notNull (aBucketDuration, "BucketDuration");
+    ValueEnforcer.isGT0 (aBucketDuration.toMillis (), "BucketDuration.Millis");
+    m_nBucketMillis = aBucketDuration.toMillis ();
+  }
+
+  /**
+   * @return The duration of a single time bucket in milliseconds. Always &gt;
+   *         0.
+   */
+  @Nonnegative
+  public final long getBucketMillis ()
+  {
+    return m_nBucketMillis;
+  }
+
+  private long _getBucketIndex (@Nonnull final OffsetDateTime aDT)
+  {
+    return Math.floorDiv (aDT.toInstant ().toEpochMilli (), m_nBucketMillis);
+  }
+
+  @Nonnull
+  public EContinue registerAndCheck (@Nullable final String sMessageID,
+                                     @Nullable final String sProfileID,
+                                     @Nullable final String sPModeID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+    {
+      // No message ID present - don't check for duplication
+      return EContinue.CONTINUE;
+    }
+
+    final AS4DuplicateItem aItem = new AS4DuplicateItem (sMessageID, sProfileID, sPModeID);
+    final String sID = aItem.getID ();
+    if (m_aMap.putIfAbsent (sID, aItem) != null)
+    {
+      // ID already in use
+      return EContinue.BREAK;
+    }
+
+    // compute is atomic per key, so that a bucket that was removed in
+    // eviction is never modified afterwards
+    m_aBuckets.compute (Long.valueOf (_getBucketIndex (aItem.getDateTime ())), (k, v) -> {
+      final Set <String> ret = v != null ? v : ConcurrentHashMap.newKeySet ();
+      ret.add (sID);
+      return ret;
+    });
+    return EContinue.CONTINUE;
+  }
+
+  @Nonnull
+  public EChange clearCache ()
+  {
+    if (m_aMap.isEmpty ())
+      return EChange.UNCHANGED;
+    m_aMap.clear ();
+    m_aBuckets.clear ();
+    return EChange.CHANGED;
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <String> evictAllItemsBefore (@Nonnull final OffsetDateTime aRefDT)
+  {
+    ValueEnforcer.notNull (aRefDT, "RefDT");
+
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    final long nRefBucket = _getBucketIndex (aRefDT);
+    for (final Map.Entry <Long, Set <String>> aEntry : m_aBuckets.entrySet ())
+    {
+      final long nBucket = aEntry.getKey ().longValue ();
+      if (nBucket < nRefBucket)
+      {
+        // The whole bucket is expired - drop it at once
+        final Set <String> aIDs = m_aBuckets.remove (aEntry.getKey ());
+        if (aIDs != null)
+          for (final String sID : aIDs)
+          {
+            final AS4DuplicateItem aItem = m_aMap.get (sID);
+            if (aItem != null && aItem.getDateTime ().isBefore (aRefDT) && m_aMap.remove (sID, aItem))
+              ret.add (sID);
+          }
+      }
+      else
+        if (nBucket == nRefBucket)
+        {
+          // Partially expired bucket - check each item
+          final Set <String> aIDs = aEntry.getValue ();
+          for (final String sID : aIDs)
+          {
+            final AS4DuplicateItem aItem = m_aMap.get (sID);
+            if (aItem != null && aItem.getDateTime ().isBefore (aRefDT) && m_aMap.remove (sID, aItem))
+            {
+              aIDs.remove (sID);
+              ret.add (sID);
+            }
+          }
+        }
+    }
+    return ret;
+  }
+
+  public boolean isEmpty ()
+  {
+    return m_aMap.isEmpty ();
+  }
+
+  @Nonnegative
+  public int size ()
+  {
+    return m_aMap.size ();
+  }
+
+  @Nullable
+  public IAS4DuplicateItem getItemOfMessageID (@Nullable final String sMessageID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+      return null;
+
+    return m_aMap.get (sMessageID);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IAS4DuplicateItem> getAll ()
+  {
+    return new CommonsArrayList <> (m_aMap.values ());
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("BucketMillis", m_nBucketMillis)
+                                       .append ("Size", m_aMap.size ())
+                                       .append ("BucketCount", m_aBuckets.size ())
+                                       .getToString ();
+  }
+}
@@ -16,9 +16,14 @@
  */
 package com.helger.phase4.http;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
@@ -26,20 +31,38 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.WillNotClose;
 
+import org.apache.hc.client5.http.ClientProtocolException;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Message;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityProducer;
+import org.apache.hc.core5.http.nio.entity.FileEntityProducer;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http.nio.support.BasicResponseConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.CGlobal;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.concurrent.ThreadHelper;
 import com.helger.commons.http.CHttp;
 import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.stream.CountingOutputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.lang.StackTraceHelper;
 import com.helger.commons.string.ToStringGenerator;
@@ -49,9 +72,16 @@ import com.helger.httpclient.HttpClientFactory;
 import com.helger.httpclient.HttpClientManager;
 import com.helger.httpclient.IHttpClientProvider;
 import com.helger.phase4.client.IAS4RetryCallback;
+import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.dump.AS4DumpManager;
 import com.helger.phase4.dump.IAS4OutgoingDumper;
 import com.helger.phase4.messaging.EAS4MessageMode;
+import com.helger.phase4.metrics.AS4MetricsManager;
+import com.helger.phase4.metrics.EAS4MetricsStage;
+import com.helger.phase4.tracing.AS4SpanContext;
+import com.helger.phase4.tracing.AS4TracingManager;
+import com.helger.phase4.tracing.IAS4Span;
+import com.helger.phase4.util.AS4ResourceHelper;
 import com.helger.phase4.util.MultiOutputStream;
 
 /**
@@ -74,13 +104,52 @@ public class BasicHttpPoster implements IHttpPoster
     return new HttpClientFactory ();
   }
 
+  private static final HttpClientFactory SHARED_DEFAULT_HTTP_CLIENT_FACTORY = createDefaultHttpClientFactory ();
+
+  /**
+   * @return The default {@link HttpClientFactory} that is shared by all
+   *         posters and message builders that don't have a specific one, if
+   *         {@link AS4Configuration#isHttpClientPooled()} is enabled. Using the
+   *         same instance is required to reuse the connections of the
+   *         {@link HttpClientPool}. Never <code>null</code>. Must not be
+   *         modified.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public static HttpClientFactory getSharedDefaultHttpClientFactory ()
+  {
+    return SHARED_DEFAULT_HTTP_CLIENT_FACTORY;
+  }
+
+  /**
+   * @return The {@link HttpClientFactory} to be used if none is set
+   *         explicitly. If {@link AS4Configuration#isHttpClientPooled()} is
+   *         enabled, this is {@link #getSharedDefaultHttpClientFactory()},
+   *         otherwise a new instance created by
+   *         {@link #createDefaultHttpClientFactory()} that may be modified.
+   *         Never <code>null</code>.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public static HttpClientFactory getDefaultHttpClientFactory ()
+  {
+    return AS4Configuration.isHttpClientPooled () ? SHARED_DEFAULT_HTTP_CLIENT_FACTORY
+                                                  : createDefaultHttpClientFactory ();
+  }
+
   public static final boolean DEFAULT_QUOTE_HTTP_HEADERS = false;
+  /**
+   * The maximum size of an outgoing entity that is kept in memory for
+   * asynchronous sending. Larger entities are spooled to a temporary file.
+   */
+  private static final int ASYNC_MAX_IN_MEMORY_BYTES = CGlobal.BYTES_PER_MEGABYTE;
   private static final Logger LOGGER = LoggerFactory.getLogger (BasicHttpPoster.class);
 
   // By default no special SSL context present
-  private HttpClientFactory m_aHttpClientFactory = createDefaultHttpClientFactory ();
+  private HttpClientFactory m_aHttpClientFactory = getDefaultHttpClientFactory ();
   private Consumer <? super HttpPost> m_aHttpCustomizer;
   private boolean m_bQuoteHttpHeaders = DEFAULT_QUOTE_HTTP_HEADERS;
+  private boolean m_bUsePooledHttpClient = AS4Configuration.isHttpClientPooled ();
 
   public BasicHttpPoster ()
   {}
@@ -124,6 +193,100 @@ public class BasicHttpPoster implements IHttpPoster
     return this;
   }
 
+  /**
+   * @return <code>true</code> if the shared HTTP client of the
+   *         {@link HttpClientPool} is used for sending, <code>false</code> if a
+   *         new HTTP client is created for every message. The default is taken
+   *         from {@link AS4Configuration#isHttpClientPooled()}.
+   * @since 2.1.3
+   */
+  public final boolean isUsePooledHttpClient ()
+  {
+    return m_bUsePooledHttpClient;
+  }
+
+  /**
+   * Enable or disable the usage of a long-lived pooled HTTP client. If enabled,
+   * all messages sent with the same {@link HttpClientFactory} share the
+   * connection pool, so that TCP connections and TLS sessions are reused.
+   *
+   * @param bUsePooledHttpClient
+   *        <code>true</code> to use the pooled HTTP client, <code>false</code>
+   *        to create a new HTTP client for every message.
+   * @return this for chaining
+   * @since 2.1.3
+   */
+  @Nonnull
+  public final BasicHttpPoster setUsePooledHttpClient (final boolean bUsePooledHttpClient)
+  {
+    m_bUsePooledHttpClient = bUsePooledHttpClient;
+    return this;
+  }
+
+  @Nonnull
+  private HttpPost _createHttpPost (@Nonnull @Nonempty final String sURL,
+                                    @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                    @Nonnull final HttpEntity aHttpEntity,
+                                    @Nullable final AS4SpanContext aSpanCtx)
+  {
+    final HttpPost aPost = new HttpPost (sURL);
+
+    // Propagate the trace to the receiver
+    if (aSpanCtx != null)
+      aPost.setHeader (AS4SpanContext.HTTP_HEADER_TRACEPARENT, aSpanCtx.getAsTraceParent ());
+
+    if (aCustomHttpHeaders != null)
+    {
+      // Always unify line endings
+      // By default quoting is disabled
+      aCustomHttpHeaders.forEachSingleHeader (aPost::addHeader, true, m_bQuoteHttpHeaders);
+    }
+
+    if (AS4MetricsManager.isEnabled ())
+    {
+      // Count the bytes actually written, also for streamed entities
+      aPost.setEntity (new HttpEntityWrapper (aHttpEntity)
+      {
+        @Override
+        public void writeTo (@Nonnull final OutputStream aOS) throws IOException
+        {
+          final CountingOutputStream aCountingOS = new CountingOutputStream (aOS);
+          super.writeTo (aCountingOS);
+          AS4MetricsManager.onBytesOut (aCountingOS.getBytesWritten ());
+        }
+      });
+    }
+    else
+      aPost.setEntity (aHttpEntity);
+
+    // Invoke optional customizer
+    if (m_aHttpCustomizer != null)
+      m_aHttpCustomizer.accept (aPost);
+
+    // Debug sending
+    AS4HttpDebug.debug ( () -> {
+      final StringBuilder ret = new StringBuilder ("SEND-START to ").append (sURL).append ("\n");
+      try
+      {
+        for (final Header aHeader : aPost.getHeaders ())
+          ret.append (aHeader.getName ()).append (": ").append (aHeader.getValue ()).append (CHttp.EOL);
+        ret.append (CHttp.EOL);
+        if (aHttpEntity.isRepeatable ())
+          ret.append (EntityUtils.toString (aHttpEntity));
+        else
+          ret.append ("## The payload is marked as 'not repeatable' and is the therefore not printed in debugging");
+      }
+      catch (final Exception ex)
+      {
+        ret.append ("## Exception listing payload: " + ex.getClass ().getName () + " -- " + ex.getMessage ())
+           .append (CHttp.EOL);
+        ret.append ("## ").append (StackTraceHelper.getStackAsString (ex));
+      }
+      return ret.toString ();
+    });
+    return aPost;
+  }
+
   /**
    * Send an arbitrary HTTP POST message to the provided URL, using the
    * contained HttpClientFactory as well as the customizer. Additionally the AS4
@@ -156,58 +319,37 @@ public class BasicHttpPoster implements IHttpPoster
     ValueEnforcer.notNull (aHttpEntity, "HttpEntity");
 
     final StopWatch aSW = StopWatch.createdStarted ();
+    final long nStart = AS4MetricsManager.getStartTime ();
     LOGGER.info ("Starting to transmit AS4 Message to '" + sURL + "'");
 
+    final IAS4Span aSpan = AS4TracingManager.startSpan ("phase4.http.send").setAttribute (AS4TracingManager.ATTR_URL, sURL);
     IOException aCaughtException = null;
-    try (final HttpClientManager aClientMgr = new HttpClientManager (m_aHttpClientFactory))
+    try
     {
-      final HttpPost aPost = new HttpPost (sURL);
+      final HttpPost aPost = _createHttpPost (sURL, aCustomHttpHeaders, aHttpEntity, aSpan.getSpanContext ());
 
-      if (aCustomHttpHeaders != null)
+      if (m_bUsePooledHttpClient)
       {
-        // Always unify line endings
-        // By default quoting is disabled
-        aCustomHttpHeaders.forEachSingleHeader (aPost::addHeader, true, m_bQuoteHttpHeaders);
+        // Reuse the existing connections
+        return HttpClientPool.execute (m_aHttpClientFactory, aPost, aResponseHandler);
       }
 
-      aPost.setEntity (aHttpEntity);
-
-      // Invoke optional customizer
-      if (m_aHttpCustomizer != null)
-        m_aHttpCustomizer.accept (aPost);
-
-      // Debug sending
-      AS4HttpDebug.debug ( () -> {
-        final StringBuilder ret = new StringBuilder ("SEND-START to ").append (sURL).append ("\n");
-        try
-        {
-          for (final Header aHeader : aPost.getHeaders ())
-            ret.append (aHeader.getName ()).append (": ").append (aHeader.getValue ()).append (CHttp.EOL);
-          ret.append (CHttp.EOL);
-          if (aHttpEntity.isRepeatable ())
-            ret.append (EntityUtils.toString (aHttpEntity));
-          else
-            ret.append ("## The payload is marked as 'not repeatable' and is the therefore not printed in debugging");
-        }
-        catch (final Exception ex)
-        {
-          ret.append ("## Exception listing payload: " + ex.getClass ().getName () + " -- " + ex.getMessage ())
-             .append (CHttp.EOL);
-          ret.append ("## ").append (StackTraceHelper.getStackAsString (ex));
-        }
-        return ret.toString ();
-      });
-
-      return aClientMgr.execute (aPost, aResponseHandler);
+      try (final HttpClientManager aClientMgr = new HttpClientManager (m_aHttpClientFactory))
+      {
+        return aClientMgr.execute (aPost, aResponseHandler);
+      }
     }
     catch (final IOException ex)
     {
       aCaughtException = ex;
+      aSpan.setError (ex);
       throw ex;
     }
     finally
     {
       aSW.stop ();
+      aSpan.end ();
+      AS4MetricsManager.onStageFinished (EAS4MetricsStage.OUTGOING_HTTP, nStart);
       LOGGER.info ((aCaughtException != null ? "Failed" : "Finished") +
                    " transmitting AS4 Message to '" +
                    sURL +
@@ -217,6 +359,216 @@ public class BasicHttpPoster implements IHttpPoster
     }
   }
 
+  /**
+   * An output stream that keeps the content in memory up to
+   * {@link BasicHttpPoster#ASYNC_MAX_IN_MEMORY_BYTES} bytes and spools it into
+   * a temporary file afterwards.
+   *
+   * @author Philip Helger
+   */
+  private static final class SpoolingOutputStream extends OutputStream
+  {
+    private final AS4ResourceHelper m_aResHelper;
+    private NonBlockingByteArrayOutputStream m_aBufferOS = new NonBlockingByteArrayOutputStream ();
+    private long m_nSize = 0;
+    private File m_aSpoolFile;
+    private OutputStream m_aSpoolOS;
+
+    SpoolingOutputStream (@Nonnull final AS4ResourceHelper aResHelper)
+    {
+      m_aResHelper = aResHelper;
+    }
+
+    @Nonnull
+    private OutputStream _getOS (final int nLen) throws IOException
+    {
+      m_nSize += nLen;
+      if (m_aBufferOS != null && m_nSize > ASYNC_MAX_IN_MEMORY_BYTES)
+      {
+        // Too large - switch to a temporary file
+        m_aSpoolFile = m_aResHelper.createTempFile ();
+        m_aSpoolOS = FileHelper.getBufferedOutputStream (m_aSpoolFile);
+        if (m_aSpoolOS == null)
+          throw new IOException ("Failed to open spool file '" + m_aSpoolFile.getAbsolutePath () + "' for writing");
+        m_aBufferOS.writeTo (m_aSpoolOS);
+        m_aBufferOS = null;
+      }
+      return m_aBufferOS != null ? m_aBufferOS : m_aSpoolOS;
+    }
+
+    @Override
+    public void write (final int b) throws IOException
+    {
+      _getOS (1).write (b);
+    }
+
+    @Override
+    public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      _getOS (nLen).write (aBuf, nOfs, nLen);
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+      if (m_aSpoolOS != null)
+        m_aSpoolOS.close ();
+    }
+
+    @Nonnull
+    AsyncEntityProducer createEntityProducer (@Nullable final ContentType aContentType)
+    {
+      if (m_aBufferOS != null)
+        return new BasicAsyncEntityProducer (m_aBufferOS.toByteArray (), aContentType);
+      return new FileEntityProducer (m_aSpoolFile, aContentType);
+    }
+  }
+
+  @Nonnull
+  private static AsyncEntityProducer _createAsyncEntityProducer (@Nonnull final HttpPost aPost,
+                                                                 @Nonnull final AS4ResourceHelper aResHelper) throws IOException
+  {
+    final HttpEntity aEntity = aPost.getEntity ();
+
+    // Content encoding is not part of the producers
+    if (aEntity.getContentEncoding () != null && !aPost.containsHeader (HttpHeaders.CONTENT_ENCODING))
+      aPost.addHeader (HttpHeaders.CONTENT_ENCODING, aEntity.getContentEncoding ());
+
+    // Serialize the entity once, so that the I/O reactor does not block
+    final SpoolingOutputStream aSpoolOS = new SpoolingOutputStream (aResHelper);
+    try
+    {
+      aEntity.writeTo (aSpoolOS);
+    }
+    finally
+    {
+      aSpoolOS.close ();
+    }
+    return aSpoolOS.createEntityProducer (aEntity.getContentType () == null ? null
+                                                                           : ContentType.parse (aEntity.getContentType ()));
+  }
+
+  @Nullable
+  private static <T> T _handleAsyncResponse (@Nonnull final Message <HttpResponse, byte []> aResponse,
+                                             @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler) throws IOException
+  {
+    // Convert to a classic response, so that the same handler can be used
+    final HttpResponse aHead = aResponse.getHead ();
+    final BasicClassicHttpResponse aClassicResponse = new BasicClassicHttpResponse (aHead.getCode (),
+                                                                                    aHead.getReasonPhrase ());
+    aClassicResponse.setVersion (aHead.getVersion ());
+    aClassicResponse.setHeaders (aHead.getHeaders ());
+    final byte [] aBody = aResponse.getBody ();
+    if (aBody != null)
+    {
+      final Header aContentType = aHead.getFirstHeader (HttpHeaders.CONTENT_TYPE);
+      aClassicResponse.setEntity (new ByteArrayEntity (aBody,
+                                                       aContentType == null ? null
+                                                                            : ContentType.parse (aContentType.getValue ())));
+    }
+
+    try
+    {
+      return aResponseHandler.handleResponse (aClassicResponse);
+    }
+    catch (final HttpException ex)
+    {
+      throw new ClientProtocolException (ex.getMessage (), ex);
+    }
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link #sendGenericMessage(String, HttpHeaderMap, HttpEntity, HttpClientResponseHandler)}
+   * based on the non-blocking HTTP client of the {@link HttpClientPool}. The
+   * entity is serialized on the calling thread (in memory or into a temporary
+   * file, depending on the size), afterwards no thread is blocked until the
+   * response is received. The response handler is invoked on the provided
+   * executor.<br>
+   * Note: the pooled client is always used, independent of
+   * {@link #isUsePooledHttpClient()}.<br>
+   * This method does NOT retry
+   *
+   * @param <T>
+   *        Response data type
+   * @param sURL
+   *        The URL to send to. May neither be <code>null</code> nor empty.
+   * @param aCustomHttpHeaders
+   *        An optional http header map that should be applied. May be
+   *        <code>null</code>.
+   * @param aHttpEntity
+   *        The HTTP entity to be send. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The Http response handler that should be used to convert the HTTP
+   *        response to a domain object.
+   * @param aExecutor
+   *        The executor to run the response handler on. May not be
+   *        <code>null</code>.
+   * @return The future with the HTTP response. Never <code>null</code>. It
+   *         completes exceptionally with an {@link IOException} in case of IO
+   *         error.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public <T> CompletableFuture <T> sendGenericMessageAsync (@Nonnull @Nonempty final String sURL,
+                                                            @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                                            @Nonnull final HttpEntity aHttpEntity,
+                                                            @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                            @Nonnull final Executor aExecutor)
+  {
+    ValueEnforcer.notEmpty (sURL, "URL");
+    ValueEnforcer.notNull (aHttpEntity, "HttpEntity");
+    ValueEnforcer.notNull (aExecutor, "Executor");
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final long nStart = AS4MetricsManager.getStartTime ();
+    LOGGER.info ("Starting to asynchronously transmit AS4 Message to '" + sURL + "'");
+
+    // Ended on a different thread, so it must not become the current span
+    final IAS4Span aSpan = AS4TracingManager.startDetachedSpan ("phase4.http.send")
+                                            .setAttribute (AS4TracingManager.ATTR_URL, sURL);
+    // For the temporary spool file
+    final AS4ResourceHelper aResHelper = new AS4ResourceHelper ();
+    CompletableFuture <T> ret;
+    try
+    {
+      final HttpPost aPost = _createHttpPost (sURL, aCustomHttpHeaders, aHttpEntity, aSpan.getSpanContext ());
+      final AsyncEntityProducer aEntityProducer = _createAsyncEntityProducer (aPost, aResHelper);
+      ret = HttpClientPool.executeAsync (m_aHttpClientFactory,
+                                         new BasicRequestProducer (aPost, aEntityProducer),
+                                         new BasicResponseConsumer <> (new BasicAsyncEntityConsumer ()))
+                          .thenApplyAsync (aResponse -> {
+                            try
+                            {
+                              return _handleAsyncResponse (aResponse, aResponseHandler);
+                            }
+                            catch (final IOException ex)
+                            {
+                              throw new CompletionException (ex);
+                            }
+                          }, aExecutor);
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      ret = CompletableFuture.failedFuture (ex);
+    }
+
+    return ret.whenComplete ( (x, ex) -> {
+      aResHelper.close ();
+      aSW.stop ();
+      if (ex != null)
+        aSpan.setError (ex instanceof CompletionException && ex.getCause () != null ? ex.getCause () : ex);
+      aSpan.end ();
+      AS4MetricsManager.onStageFinished (EAS4MetricsStage.OUTGOING_HTTP, nStart);
+      LOGGER.info ((ex != null ? "Failed" : "Finished") +
+                   " transmitting AS4 Message to '" +
+                   sURL +
+                   "' after " +
+                   aSW.getMillis () +
+                   " ms");
+    });
+  }
+
   @Nonnull
   protected static HttpEntity createDumpingHttpEntity (@Nullable final IAS4OutgoingDumper aOutgoingDumper,
                                                        @Nonnull final HttpEntity aSrcEntity,
@@ -393,20 +745,264 @@ public class BasicHttpPoster implements IHttpPoster
     finally
     {
       // Add the possibility to close open resources
-      if (aRealOutgoingDumper != null && aDumpOSHolder.isSet ())
-        try
-        {
-          aRealOutgoingDumper.onEndRequest (EAS4MessageMode.REQUEST, null, null, sMessageID);
-        }
-        catch (final Exception ex)
+      if (aDumpOSHolder.isSet ())
+        _onEndRequest (aRealOutgoingDumper, sMessageID);
+    }
+  }
+
+  private static void _onEndRequest (@Nullable final IAS4OutgoingDumper aRealOutgoingDumper,
+                                     @Nonnull final String sMessageID)
+  {
+    if (aRealOutgoingDumper != null)
+      try
+      {
+        aRealOutgoingDumper.onEndRequest (EAS4MessageMode.REQUEST, null, null, sMessageID);
+      }
+      catch (final Exception ex)
+      {
+        LOGGER.error ("OutgoingDumper.onEndRequest failed. Dumper=" +
+                      aRealOutgoingDumper +
+                      "; MessageID=" +
+                      sMessageID,
+                      ex);
+      }
+  }
+
+  /**
+   * Perform a single asynchronous try and schedule the next try on failure.
+   */
+  private <T> void _sendAsyncTry (@Nonnull final String sURL,
+                                  @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                  @Nonnull final HttpEntity aHttpEntity,
+                                  @Nonnull final String sMessageID,
+                                  @Nonnull final HttpRetrySettings aRetrySettings,
+                                  @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                  @Nullable final IAS4OutgoingDumper aRealOutgoingDumper,
+                                  @Nullable final IAS4RetryCallback aRetryCallback,
+                                  @Nonnull final Executor aExecutor,
+                                  @Nonnegative final int nTry,
+                                  @Nonnull final Duration aDurationBeforeRetry,
+                                  @Nonnull final Wrapper <OutputStream> aDumpOSHolder,
+                                  @Nonnull final CompletableFuture <T> aResult)
+  {
+    final int nMaxRetries = aRetrySettings.isRetryEnabled () ? aRetrySettings.getMaxRetries () : 0;
+
+    if (nTry > 0)
+      LOGGER.info ("Retry #" + nTry + "/" + nMaxRetries + " for sending message with ID '" + sMessageID + "'");
+
+    final HttpEntity aDumpingEntity;
+    try
+    {
+      // Create a new one every time (for new filename, new timestamp, etc.)
+      aDumpingEntity = createDumpingHttpEntity (aRealOutgoingDumper,
+                                                aHttpEntity,
+                                                sMessageID,
+                                                aCustomHttpHeaders,
+                                                nTry,
+                                                aDumpOSHolder);
+    }
+    catch (final IOException ex)
+    {
+      _onAsyncTryFailed (sURL,
+                         aCustomHttpHeaders,
+                         aHttpEntity,
+                         sMessageID,
+                         aRetrySettings,
+                         aResponseHandler,
+                         aRealOutgoingDumper,
+                         aRetryCallback,
+                         aExecutor,
+                         nTry,
+                         aDurationBeforeRetry,
+                         aDumpOSHolder,
+                         aResult,
+                         ex);
+      return;
+    }
+    catch (final RuntimeException ex)
+    {
+      aResult.completeExceptionally (ex);
+      return;
+    }
+
+    // The entity is written to the dump while it is serialized for sending
+    sendGenericMessageAsync (sURL,
+                             aCustomHttpHeaders,
+                             aDumpingEntity,
+                             aResponseHandler,
+                             aExecutor).whenComplete ( (aResponse, ex) -> {
+                               // Flush and close the dump output stream (if any)
+                               StreamHelper.close (aDumpOSHolder.get ());
+
+                               if (ex == null)
+                                 aResult.complete (aResponse);
+                               else
+                               {
+                                 final Throwable aCause = ex instanceof CompletionException &&
+                                                          ex.getCause () != null ? ex.getCause () : ex;
+                                 if (aCause instanceof IOException)
+                                   _onAsyncTryFailed (sURL,
+                                                      aCustomHttpHeaders,
+                                                      aHttpEntity,
+                                                      sMessageID,
+                                                      aRetrySettings,
+                                                      aResponseHandler,
+                                                      aRealOutgoingDumper,
+                                                      aRetryCallback,
+                                                      aExecutor,
+                                                      nTry,
+                                                      aDurationBeforeRetry,
+                                                      aDumpOSHolder,
+                                                      aResult,
+                                                      (IOException) aCause);
+                                 else
+                                   aResult.completeExceptionally (aCause);
+                               }
+                             });
+  }
+
+  /**
+   * Handle a failed asynchronous try and schedule the next try if possible.
+   */
+  private <T> void _onAsyncTryFailed (@Nonnull final String sURL,
+                                      @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                      @Nonnull final HttpEntity aHttpEntity,
+                                      @Nonnull final String sMessageID,
+                                      @Nonnull final HttpRetrySettings aRetrySettings,
+                                      @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                      @Nullable final IAS4OutgoingDumper aRealOutgoingDumper,
+                                      @Nullable final IAS4RetryCallback aRetryCallback,
+                                      @Nonnull final Executor aExecutor,
+                                      @Nonnegative final int nTry,
+                                      @Nonnull final Duration aDurationBeforeRetry,
+                                      @Nonnull final Wrapper <OutputStream> aDumpOSHolder,
+                                      @Nonnull final CompletableFuture <T> aResult,
+                                      @Nonnull final IOException ex)
+  {
+    final int nMaxRetries = aRetrySettings.isRetryEnabled () ? aRetrySettings.getMaxRetries () : 0;
+    final int nMaxTries = 1 + nMaxRetries;
+
+    // Last try? -> propagate exception
+    if (nTry == nMaxTries - 1)
+    {
+      aResult.completeExceptionally (ex);
+      return;
+    }
+
+    // After the first retry, increase the waiting time
+    final Duration aNextDurationBeforeRetry = nTry > 1 ? HttpRetrySettings.getIncreased (aDurationBeforeRetry,
+                                                                                          aRetrySettings.getRetryIncreaseFactor ())
+                                                       : aDurationBeforeRetry;
+
+    if (aRetryCallback != null)
+      try
+      {
+        if (aRetryCallback.onBeforeRetry (sMessageID, sURL, nTry, nMaxTries, aNextDurationBeforeRetry.toMillis (), ex)
+                          .isBreak ())
         {
-          LOGGER.error ("OutgoingDumper.onEndRequest failed. Dumper=" +
-                        aRealOutgoingDumper +
-                        "; MessageID=" +
-                        sMessageID,
-                        ex);
+          // Explicitly interrupt retry
+          LOGGER.warn ("Error sending message '" +
+                       sMessageID +
+                       "' to '" +
+                       sURL +
+                       ": " +
+                       ex.getClass ().getSimpleName () +
+                       " - " +
+                       ex.getMessage () +
+                       " - retrying was explicitly stopped by the RetryCallback");
+
+          // Propagate Exception as if it would be the last retry
+          aResult.completeExceptionally (ex);
+          return;
         }
-    }
+      }
+      catch (final RuntimeException ex2)
+      {
+        aResult.completeExceptionally (ex2);
+        return;
+      }
+
+    LOGGER.warn ("Error sending message '" +
+                 sMessageID +
+                 "' to '" +
+                 sURL +
+                 "': " +
+                 ex.getClass ().getSimpleName () +
+                 " - " +
+                 ex.getMessage () +
+                 " - scheduling retry in " +
+                 aNextDurationBeforeRetry.toMillis () +
+                 " ms");
+
+    // Don't block the current thread - schedule the next try instead
+    final Executor aDelayedExecutor = CompletableFuture.delayedExecutor (aNextDurationBeforeRetry.toMillis (),
+                                                                         TimeUnit.MILLISECONDS,
+                                                                         aExecutor);
+    aDelayedExecutor.execute ( () -> _sendAsyncTry (sURL,
+                                                    aCustomHttpHeaders,
+                                                    aHttpEntity,
+                                                    sMessageID,
+                                                    aRetrySettings,
+                                                    aResponseHandler,
+                                                    aRealOutgoingDumper,
+                                                    aRetryCallback,
+                                                    aExecutor,
+                                                    nTry + 1,
+                                                    aNextDurationBeforeRetry,
+                                                    aDumpOSHolder,
+                                                    aResult));
+  }
+
+  /**
+   * {@inheritDoc}<br>
+   * This implementation does not block a thread while waiting between two
+   * tries. Instead the next try is scheduled on the provided executor, after
+   * the retry duration elapsed. Each try is performed with
+   * {@link #sendGenericMessageAsync(String, HttpHeaderMap, HttpEntity, HttpClientResponseHandler, Executor)},
+   * so no thread is blocked while waiting for the response either.
+   */
+  @Override
+  @Nonnull
+  public <T> CompletableFuture <T> sendGenericMessageWithRetriesAsync (@Nonnull final String sURL,
+                                                                       @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                                                       @Nonnull final HttpEntity aHttpEntity,
+                                                                       @Nonnull final String sMessageID,
+                                                                       @Nonnull final HttpRetrySettings aRetrySettings,
+                                                                       @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                       @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                       @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                       @Nonnull final Executor aExecutor)
+  {
+    ValueEnforcer.notNull (aExecutor, "Executor");
+
+    if (aRetrySettings.isRetryEnabled () && !aHttpEntity.isRepeatable ())
+      return CompletableFuture.failedFuture (new IllegalStateException ("If retry is enabled, a repeatable entity must be provided"));
+
+    // Parameter or global one - may still be null
+    final IAS4OutgoingDumper aRealOutgoingDumper = aOutgoingDumper != null ? aOutgoingDumper
+                                                                           : AS4DumpManager.getOutgoingDumper ();
+
+    // This class holds the effective OutputStream to which the dump is written
+    final Wrapper <OutputStream> aDumpOSHolder = new Wrapper <> ();
+    final CompletableFuture <T> ret = new CompletableFuture <> ();
+    aExecutor.execute ( () -> _sendAsyncTry (sURL,
+                                             aCustomHttpHeaders,
+                                             aHttpEntity,
+                                             sMessageID,
+                                             aRetrySettings,
+                                             aResponseHandler,
+                                             aRealOutgoingDumper,
+                                             aRetryCallback,
+                                             aExecutor,
+                                             0,
+                                             aRetrySettings.getDurationBeforeRetry (),
+                                             aDumpOSHolder,
+                                             ret));
+    return ret.whenComplete ( (x, ex) -> {
+      // Add the possibility to close open resources
+      if (aDumpOSHolder.isSet ())
+        _onEndRequest (aRealOutgoingDumper, sMessageID);
+    });
   }
 
   @Override
@@ -415,6 +1011,7 @@ public class BasicHttpPoster implements IHttpPoster
     return new ToStringGenerator (this).append ("HttpClientFactory", m_aHttpClientFactory)
                                        .append ("HttpCustomizer", m_aHttpCustomizer)
                                        .append ("QuoteHttpHeaders", m_bQuoteHttpHeaders)
+                                       .append ("UsePooledHttpClient", m_bUsePooledHttpClient)
                                        .getToString ();
   }
 }
@@ -0,0 +1,591 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.client5.http.ClientProtocolException;
+import org.apache.hc.client5.http.HttpRequestRetryStrategy;
+import org.apache.hc.client5.http.auth.CredentialsProvider;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequest;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.routing.HttpRoutePlanner;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.statistics.IMutableStatisticsHandlerCounter;
+import com.helger.commons.statistics.IMutableStatisticsHandlerTimer;
+import com.helger.commons.statistics.StatisticsManager;
+import com.helger.commons.timing.StopWatch;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.HttpClientManager;
+import com.helger.httpclient.HttpClientSettings;
+import com.helger.phase4.config.AS4Configuration;
+
+/**
+ * A registry of long-lived, pooled HTTP clients - one per
+ * {@link HttpClientFactory} instance. The underlying Apache HTTP client keeps
+ * a connection pool per route (with the limits defined by the factory), so
+ * consecutive messages to the same endpoint reuse the existing TCP connection
+ * and TLS session via HTTP keep-alive. Idle connections are evicted after
+ * {@link #DEFAULT_IDLE_EVICTION}. For asynchronous sending an additional
+ * non-blocking client with the same settings is created on first use. Its
+ * connection limits are defined via
+ * {@link #setMaxAsyncConnections(int, int)}.<br>
+ * To benefit from the pooling, the same {@link HttpClientFactory} instance
+ * must be used for all messages - e.g.
+ * {@link BasicHttpPoster#getSharedDefaultHttpClientFactory()}. The factory
+ * settings must not be changed after the first message was sent with it.<br>
+ * At most {@link #getMaxPooledClientCount()} clients are kept. If more
+ * factories are used, the least recently used client is closed, as soon as no
+ * request is executed with it any more.<br>
+ * Note: this class is only used if
+ * {@link AS4Configuration#isHttpClientPooled()} returns <code>true</code> or
+ * if {@link BasicHttpPoster#setUsePooledHttpClient(boolean)} was enabled.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public final class HttpClientPool
+{
+  /** The duration after which idle connections are closed */
+  public static final Duration DEFAULT_IDLE_EVICTION = Duration.ofSeconds (30);
+  /** The default maximum number of pooled clients */
+  public static final int DEFAULT_MAX_POOLED_CLIENTS = 16;
+  /** The default maximum number of connections per route of an async client */
+  public static final int DEFAULT_MAX_ASYNC_CONNECTIONS_PER_ROUTE = 500;
+  /** The default maximum number of connections of an async client */
+  public static final int DEFAULT_MAX_ASYNC_CONNECTIONS_TOTAL = 2_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (HttpClientPool.class);
+  private static final IMutableStatisticsHandlerCounter STATS_CLIENTS_CREATED = StatisticsManager.getCounterHandler (HttpClientPool.class.getName () +
+                                                                                                                     "$clients.created");
+  private static final IMutableStatisticsHandlerCounter STATS_CLIENTS_EVICTED = StatisticsManager.getCounterHandler (HttpClientPool.class.getName () +
+                                                                                                                     "$clients.evicted");
+  private static final IMutableStatisticsHandlerCounter STATS_EXECUTIONS = StatisticsManager.getCounterHandler (HttpClientPool.class.getName () +
+                                                                                                                "$executions");
+  private static final IMutableStatisticsHandlerTimer STATS_EXECUTION_TIMER = StatisticsManager.getTimerHandler (HttpClientPool.class.getName () +
+                                                                                                                 "$executions");
+  private static final AtomicInteger ACTIVE_EXECUTIONS = new AtomicInteger (0);
+
+  /**
+   * The pooled clients of a single factory together with the number of
+   * requests currently executed with them. The synchronous and the
+   * asynchronous client are created on first use.
+   *
+   * @author Philip Helger
+   */
+  private static final class PooledClient
+  {
+    @GuardedBy ("RW_LOCK")
+    private HttpClientManager m_aClientMgr;
+    @GuardedBy ("RW_LOCK")
+    private CloseableHttpAsyncClient m_aAsyncClient;
+    @GuardedBy ("RW_LOCK")
+    private int m_nUsers = 0;
+    @GuardedBy ("RW_LOCK")
+    private boolean m_bRemoved = false;
+
+    PooledClient ()
+    {}
+
+    void close ()
+    {
+      // Called exactly once after the last user left
+      StreamHelper.close (m_aClientMgr);
+      StreamHelper.close (m_aAsyncClient);
+    }
+  }
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static int s_nMaxPooledClients = DEFAULT_MAX_POOLED_CLIENTS;
+  @GuardedBy ("RW_LOCK")
+  private static int s_nMaxAsyncConnectionsPerRoute = DEFAULT_MAX_ASYNC_CONNECTIONS_PER_ROUTE;
+  @GuardedBy ("RW_LOCK")
+  private static int s_nMaxAsyncConnectionsTotal = DEFAULT_MAX_ASYNC_CONNECTIONS_TOTAL;
+  // Strong keys in access order - the size is limited by s_nMaxPooledClients
+  @GuardedBy ("RW_LOCK")
+  private static final Map <HttpClientFactory, PooledClient> MAP = new LinkedHashMap <> (16, 0.75f, true);
+
+  private HttpClientPool ()
+  {}
+
+  @Nonnull
+  private static HttpClientManager _createClientManager (@Nonnull final HttpClientFactory aHttpClientFactory)
+  {
+    LOGGER.info ("Creating new pooled HTTP client for " + aHttpClientFactory);
+    STATS_CLIENTS_CREATED.increment ();
+    final TimeValue aIdleTimeout = TimeValue.ofMilliseconds (DEFAULT_IDLE_EVICTION.toMillis ());
+    // Build the client right now, so that the manager does not reference the
+    // factory
+    final CloseableHttpClient aHttpClient = aHttpClientFactory.createHttpClientBuilder ()
+                                                              .evictExpiredConnections ()
+                                                              .evictIdleConnections (aIdleTimeout)
+                                                              .build ();
+    return new HttpClientManager ( () -> aHttpClient);
+  }
+
+  @Nonnull
+  private static CloseableHttpAsyncClient _createAsyncClient (@Nonnull final HttpClientFactory aHttpClientFactory,
+                                                              @Nonnegative final int nMaxConnectionsPerRoute,
+                                                              @Nonnegative final int nMaxConnectionsTotal)
+  {
+    LOGGER.info ("Creating new pooled async HTTP client for " + aHttpClientFactory);
+    STATS_CLIENTS_CREATED.increment ();
+    final HttpClientSettings aSettings = aHttpClientFactory.httpClientSettings ();
+
+    // Use the same TLS configuration as the synchronous client
+    final ClientTlsStrategyBuilder aTlsBuilder = ClientTlsStrategyBuilder.create ();
+    if (aSettings.getSSLContext () != null)
+      aTlsBuilder.setSslContext (aSettings.getSSLContext ());
+    if (aSettings.getHostnameVerifier () != null)
+      aTlsBuilder.setHostnameVerifier (aSettings.getHostnameVerifier ());
+    // Each in-flight request needs its own connection
+    final PoolingAsyncClientConnectionManager aConnMgr = PoolingAsyncClientConnectionManagerBuilder.create ()
+                                                                                                     .setTlsStrategy (aTlsBuilder.build ())
+                                                                                                     .setMaxConnPerRoute (nMaxConnectionsPerRoute)
+                                                                                                     .setMaxConnTotal (nMaxConnectionsTotal)
+                                                                                                     .build ();
+
+    final TimeValue aIdleTimeout = TimeValue.ofMilliseconds (DEFAULT_IDLE_EVICTION.toMillis ());
+    final HttpAsyncClientBuilder aBuilder = HttpAsyncClients.custom ()
+                                                            .setConnectionManager (aConnMgr)
+                                                            .setDefaultRequestConfig (aHttpClientFactory.createRequestConfig ())
+                                                            .setUserAgent (aSettings.getUserAgent ())
+                                                            .evictExpiredConnections ()
+                                                            .evictIdleConnections (aIdleTimeout);
+
+    // Use the same proxy and retry handling as the synchronous client
+    final HttpRoutePlanner aRoutePlanner = aHttpClientFactory.createRoutePlanner ();
+    if (aRoutePlanner != null)
+      aBuilder.setRoutePlanner (aRoutePlanner);
+    else
+      aBuilder.setProxy (aSettings.getProxyHost ());
+    final CredentialsProvider aCredentialsProvider = aHttpClientFactory.createCredentialsProvider ();
+    if (aCredentialsProvider != null)
+      aBuilder.setDefaultCredentialsProvider (aCredentialsProvider);
+    final HttpRequestRetryStrategy aRetryStrategy = aHttpClientFactory.createRequestRetryStrategy (aSettings.getRetryCount (),
+                                                                                                  aSettings.getRetryInterval (),
+                                                                                                  aSettings.isRetryAlways ());
+    if (aRetryStrategy != null)
+      aBuilder.setRetryStrategy (aRetryStrategy);
+    else
+      aBuilder.disableAutomaticRetries ();
+
+    final CloseableHttpAsyncClient ret = aBuilder.build ();
+    // Start the I/O reactor
+    ret.start ();
+    return ret;
+  }
+
+  /**
+   * Mark the provided client as removed. It is closed now if it is not in use
+   * or after the last execution finished.
+   *
+   * @return The client to be closed outside of the lock or <code>null</code>.
+   */
+  @GuardedBy ("RW_LOCK")
+  private static PooledClient _markRemovedLocked (@Nonnull final PooledClient aClient)
+  {
+    aClient.m_bRemoved = true;
+    return aClient.m_nUsers == 0 ? aClient : null;
+  }
+
+  @GuardedBy ("RW_LOCK")
+  @Nonnull
+  private static ICommonsList <PooledClient> _evictLocked ()
+  {
+    final ICommonsList <PooledClient> ret = new CommonsArrayList <> ();
+    while (MAP.size () > s_nMaxPooledClients)
+    {
+      // The first entry is the least recently used one
+      final Map.Entry <HttpClientFactory, PooledClient> aEldest = MAP.entrySet ().iterator ().next ();
+      MAP.remove (aEldest.getKey ());
+      STATS_CLIENTS_EVICTED.increment ();
+      final PooledClient aToClose = _markRemovedLocked (aEldest.getValue ());
+      if (aToClose != null)
+        ret.add (aToClose);
+    }
+    return ret;
+  }
+
+  private static void _closeAll (@Nonnull final Iterable <PooledClient> aClients)
+  {
+    for (final PooledClient aClient : aClients)
+      aClient.close ();
+  }
+
+  /**
+   * Get or create the pooled client of the provided factory and increment its
+   * user count. The requested client is guaranteed to be present afterwards.
+   */
+  @Nonnull
+  private static PooledClient _acquire (@Nonnull final HttpClientFactory aHttpClientFactory, final boolean bAsync)
+  {
+    final ICommonsList <PooledClient> aToClose = new CommonsArrayList <> ();
+    final PooledClient ret = RW_LOCK.writeLockedGet ( () -> {
+      // The access order of the map must be updated so a write lock is needed
+      PooledClient aClient = MAP.get (aHttpClientFactory);
+      if (aClient == null)
+      {
+        aClient = new PooledClient ();
+        MAP.put (aHttpClientFactory, aClient);
+        aToClose.addAll (_evictLocked ());
+      }
+      if (bAsync)
+      {
+        if (aClient.m_aAsyncClient == null)
+          aClient.m_aAsyncClient = _createAsyncClient (aHttpClientFactory,
+                                                       s_nMaxAsyncConnectionsPerRoute,
+                                                       s_nMaxAsyncConnectionsTotal);
+      }
+      else
+        if (aClient.m_aClientMgr == null)
+          aClient.m_aClientMgr = _createClientManager (aHttpClientFactory);
+      aClient.m_nUsers++;
+      return aClient;
+    });
+    _closeAll (aToClose);
+    return ret;
+  }
+
+  private static void _release (@Nonnull final PooledClient aClient)
+  {
+    final boolean bClose = RW_LOCK.writeLockedBoolean ( () -> {
+      aClient.m_nUsers--;
+      return aClient.m_bRemoved && aClient.m_nUsers == 0;
+    });
+    if (bClose)
+      aClient.close ();
+  }
+
+  /**
+   * @return The maximum number of pooled HTTP clients. Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getMaxPooledClientCount ()
+  {
+    return RW_LOCK.readLockedInt ( () -> s_nMaxPooledClients);
+  }
+
+  /**
+   * Set the maximum number of pooled HTTP clients. If the limit is exceeded,
+   * the least recently used clients are closed.
+   *
+   * @param nMaxPooledClients
+   *        The maximum number of pooled clients. Must be &gt; 0.
+   */
+  public static void setMaxPooledClientCount (@Nonnegative final int nMaxPooledClients)
+  {
+    ValueEnforcer.isGT0 (nMaxPooledClients, "MaxPooledClients");
+    final ICommonsList <PooledClient> aToClose = RW_LOCK.writeLockedGet ( () -> {
+      s_nMaxPooledClients = nMaxPooledClients;
+      return _evictLocked ();
+    });
+    _closeAll (aToClose);
+  }
+
+  /**
+   * @return The maximum number of connections per route of newly created
+   *         asynchronous HTTP clients. Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getMaxAsyncConnectionsPerRoute ()
+  {
+    return RW_LOCK.readLockedInt ( () -> s_nMaxAsyncConnectionsPerRoute);
+  }
+
+  /**
+   * @return The maximum total number of connections of newly created
+   *         asynchronous HTTP clients. Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getMaxAsyncConnectionsTotal ()
+  {
+    return RW_LOCK.readLockedInt ( () -> s_nMaxAsyncConnectionsTotal);
+  }
+
+  /**
+   * Set the connection limits of the asynchronous HTTP clients. As each
+   * in-flight request needs its own connection, this limits the number of
+   * concurrent asynchronous transmissions. Only clients created afterwards are
+   * affected.
+   *
+   * @param nMaxConnectionsPerRoute
+   *        The maximum number of connections per route. Must be &gt; 0.
+   * @param nMaxConnectionsTotal
+   *        The maximum number of connections in total. Must be &gt; 0.
+   */
+  public static void setMaxAsyncConnections (@Nonnegative final int nMaxConnectionsPerRoute,
+                                             @Nonnegative final int nMaxConnectionsTotal)
+  {
+    ValueEnforcer.isGT0 (nMaxConnectionsPerRoute, "MaxConnectionsPerRoute");
+    ValueEnforcer.isGT0 (nMaxConnectionsTotal, "MaxConnectionsTotal");
+    RW_LOCK.writeLocked ( () -> {
+      s_nMaxAsyncConnectionsPerRoute = nMaxConnectionsPerRoute;
+      s_nMaxAsyncConnectionsTotal = nMaxConnectionsTotal;
+    });
+  }
+
+  /**
+   * Check if a shared HTTP client for the provided factory is present.
+   *
+   * @param aHttpClientFactory
+   *        The HTTP client factory to check. May be <code>null</code>.
+   * @return <code>true</code> if a pooled HTTP client is present.
+   */
+  public static boolean containsClient (@Nullable final HttpClientFactory aHttpClientFactory)
+  {
+    return aHttpClientFactory != null && RW_LOCK.readLockedBoolean ( () -> MAP.containsKey (aHttpClientFactory));
+  }
+
+  /**
+   * Execute the provided request with the shared HTTP client of the provided
+   * factory. If none is present yet, a new one is created.
+   *
+   * @param <T>
+   *        Response data type
+   * @param aHttpClientFactory
+   *        The HTTP client factory to use. May not be <code>null</code>.
+   * @param aRequest
+   *        The request to execute. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The response handler to use. May not be <code>null</code>.
+   * @return The result of the response handler.
+   * @throws IOException
+   *         In case of IO error
+   */
+  public static <T> T execute (@Nonnull final HttpClientFactory aHttpClientFactory,
+                               @Nonnull final HttpUriRequest aRequest,
+                               @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler) throws IOException
+  {
+    ValueEnforcer.notNull (aHttpClientFactory, "HttpClientFactory");
+
+    final PooledClient aClient = _acquire (aHttpClientFactory, false);
+    STATS_EXECUTIONS.increment ();
+    ACTIVE_EXECUTIONS.incrementAndGet ();
+    final StopWatch aSW = StopWatch.createdStarted ();
+    try
+    {
+      // The field was set in _acquire under the lock
+      final HttpClientManager aClientMgr = RW_LOCK.readLockedGet ( () -> aClient.m_aClientMgr);
+      return aClientMgr.execute (aRequest, aResponseHandler);
+    }
+    finally
+    {
+      STATS_EXECUTION_TIMER.addTime (aSW.stopAndGetMillis ());
+      ACTIVE_EXECUTIONS.decrementAndGet ();
+      _release (aClient);
+    }
+  }
+
+  /**
+   * Execute the provided request with the shared asynchronous HTTP client of
+   * the provided factory. If none is present yet, a new one is created. No
+   * thread is blocked while waiting for the response. The client is not
+   * closed before the returned future is completed.<br>
+   * Protocol errors are reported as {@link ClientProtocolException}, like in
+   * the synchronous version.
+   *
+   * @param <T>
+   *        Response data type
+   * @param aHttpClientFactory
+   *        The HTTP client factory to use. Its settings are used to configure
+   *        TLS, timeouts and the proxy. May not be <code>null</code>.
+   * @param aRequestProducer
+   *        The request producer to use. May not be <code>null</code>.
+   * @param aResponseConsumer
+   *        The response consumer to use. May not be <code>null</code>.
+   * @return The future with the result of the response consumer. Never
+   *         <code>null</code>. It is completed on an I/O reactor thread, so
+   *         expensive operations should be executed on a separate executor.
+   */
+  @Nonnull
+  public static <T> CompletableFuture <T> executeAsync (@Nonnull final HttpClientFactory aHttpClientFactory,
+                                                        @Nonnull final AsyncRequestProducer aRequestProducer,
+                                                        @Nonnull final AsyncResponseConsumer <T> aResponseConsumer)
+  {
+    ValueEnforcer.notNull (aHttpClientFactory, "HttpClientFactory");
+    ValueEnforcer.notNull (aRequestProducer, "RequestProducer");
+    ValueEnforcer.notNull (aResponseConsumer, "ResponseConsumer");
+
+    final PooledClient aClient = _acquire (aHttpClientFactory, true);
+    STATS_EXECUTIONS.increment ();
+    ACTIVE_EXECUTIONS.incrementAndGet ();
+    final StopWatch aSW = StopWatch.createdStarted ();
+
+    final CompletableFuture <T> ret = new CompletableFuture <> ();
+    try
+    {
+      // The field was set in _acquire under the lock
+      final CloseableHttpAsyncClient aAsyncClient = RW_LOCK.readLockedGet ( () -> aClient.m_aAsyncClient);
+      aAsyncClient.execute (aRequestProducer, aResponseConsumer, new FutureCallback <T> ()
+      {
+        public void completed (final T aResult)
+        {
+          ret.complete (aResult);
+        }
+
+        public void failed (final Exception ex)
+        {
+          ret.completeExceptionally (ex instanceof HttpException ? new ClientProtocolException (ex.getMessage (), ex)
+                                                                 : ex);
+        }
+
+        public void cancelled ()
+        {
+          ret.cancel (false);
+        }
+      });
+    }
+    catch (final RuntimeException ex)
+    {
+      ret.completeExceptionally (ex);
+    }
+
+    return ret.whenComplete ( (x, ex) -> {
+      STATS_EXECUTION_TIMER.addTime (aSW.stopAndGetMillis ());
+      ACTIVE_EXECUTIONS.decrementAndGet ();
+      _release (aClient);
+    });
+  }
+
+  /**
+   * @return The number of pooled HTTP clients that are currently alive.
+   */
+  @Nonnegative
+  public static int getPooledClientCount ()
+  {
+    return RW_LOCK.readLockedInt (MAP::size);
+  }
+
+  /**
+   * @return The number of HTTP requests that are currently executed with a
+   *         pooled HTTP client.
+   */
+  @Nonnegative
+  public static int getActiveExecutionCount ()
+  {
+    return ACTIVE_EXECUTIONS.get ();
+  }
+
+  /**
+   * @return The total number of HTTP requests that were executed with a pooled
+   *         HTTP client.
+   */
+  @Nonnegative
+  public static long getTotalExecutionCount ()
+  {
+    return STATS_EXECUTIONS.getCount ();
+  }
+
+  /**
+   * @return The total number of pooled HTTP clients that were created. If the
+   *         pooling works, this is usually a lot smaller than
+   *         {@link #getTotalExecutionCount()}.
+   */
+  @Nonnegative
+  public static long getTotalClientCreationCount ()
+  {
+    return STATS_CLIENTS_CREATED.getCount ();
+  }
+
+  /**
+   * @return The total number of pooled HTTP clients that were closed because
+   *         more than {@link #getMaxPooledClientCount()} factories were used.
+   *         If this value grows constantly, a new {@link HttpClientFactory} is
+   *         most likely created for every message.
+   */
+  @Nonnegative
+  public static long getTotalClientEvictionCount ()
+  {
+    return STATS_CLIENTS_EVICTED.getCount ();
+  }
+
+  /**
+   * Close the shared HTTP client of the provided factory, if present. This
+   * should be called, if the settings of the factory were changed. Requests
+   * that are currently executed with it are not interrupted.
+   *
+   * @param aHttpClientFactory
+   *        The HTTP client factory whose client should be closed. May not be
+   *        <code>null</code>.
+   */
+  public static void close (@Nonnull final HttpClientFactory aHttpClientFactory)
+  {
+    ValueEnforcer.notNull (aHttpClientFactory, "HttpClientFactory");
+
+    final PooledClient aToClose = RW_LOCK.writeLockedGet ( () -> {
+      final PooledClient aClient = MAP.remove (aHttpClientFactory);
+      return aClient == null ? null : _markRemovedLocked (aClient);
+    });
+    if (aToClose != null)
+      aToClose.close ();
+  }
+
+  /**
+   * Close all shared HTTP clients. Should be called upon application shutdown.
+   */
+  public static void closeAll ()
+  {
+    final ICommonsList <PooledClient> aToClose = new CommonsArrayList <> ();
+    RW_LOCK.writeLocked ( () -> {
+      if (!MAP.isEmpty ())
+      {
+        LOGGER.info ("Closing " + MAP.size () + " pooled HTTP client(s)");
+        for (final PooledClient aClient : MAP.values ())
+        {
+          final PooledClient aClientToClose = _markRemovedLocked (aClient);
+          if (aClientToClose != null)
+            aToClose.add (aClientToClose);
+        }
+        MAP.clear ();
+      }
+    });
+    _closeAll (aToClose);
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * Copyright (C) 2020-2023 Philip Helger (www.helger.com)
  * philip[at]helger[dot]com
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -16,27 +16,176 @@
  */
 package com.helger.phase4.http;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
 import org.w3c.dom.Node;
 
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.mime.IMimeType;
+import com.helger.commons.string.ToStringGenerator;
 import com.helger.phase4.util.AS4XMLHelper;
 
 /**
- * Special HttpClient HTTP POST entity that contains a DOM Node as a serialized
- * String. This entity is repeatable.
+ * Special HttpClient HTTP POST entity that contains a DOM Node. By default the
+ * node is serialized once into a cached byte array, so that the
+ * <code>Content-Length</code> is known and the message is not sent chunked
+ * (some AS4 implementations don't support chunked requests). Optionally the
+ * node can be serialized directly into the output stream when the entity is
+ * written, so no intermediate representation is created. In that case the
+ * length is unknown and the message is sent chunked, unless
+ * {@link #getContent()} was called before (e.g. for dumping or debugging).
+ * This entity is repeatable, because the DOM node can be serialized any number
+ * of times.
  *
  * @author Philip Helger
  */
-public class HttpXMLEntity extends StringEntity
+public class HttpXMLEntity extends AbstractHttpEntity
 {
+  public static final boolean DEFAULT_STREAMING = false;
+
+  private final Node m_aNode;
+  private final boolean m_bStreaming;
+  @GuardedBy ("this")
+  private byte [] m_aCachedBytes;
+
   public HttpXMLEntity (@Nonnull final Node aNode, @Nonnull final IMimeType aMimeType)
+  {
+    this (aNode, aMimeType, DEFAULT_STREAMING);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aNode
+   *        The node to be serialized. May not be <code>null</code>.
+   * @param aMimeType
+   *        The MIME type to be used. May not be <code>null</code>.
+   * @param bStreaming
+   *        <code>true</code> to serialize the node directly into the output
+   *        stream (sent chunked), <code>false</code> to serialize it once into
+   *        a byte array so that the content length is known.
+   * @since 2.1.3
+   */
+  public HttpXMLEntity (@Nonnull final Node aNode, @Nonnull final IMimeType aMimeType, final boolean bStreaming)
   {
     // ContentType Required for AS4.NET
-    super (AS4XMLHelper.serializeXML (aNode),
-           ContentType.parse (aMimeType.getAsString ()).withCharset (AS4XMLHelper.XWS.getCharset ()));
+    super (ContentType.parse (aMimeType.getAsString ()).withCharset (AS4XMLHelper.XWS.getCharset ()), null);
+    ValueEnforcer.notNull (aNode, "Node");
+    m_aNode = aNode;
+    m_bStreaming = bStreaming;
+  }
+
+  /**
+   * @return The DOM node passed in the constructor. Never <code>null</code>.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public final Node getNode ()
+  {
+    return m_aNode;
+  }
+
+  /**
+   * @return <code>true</code> if the node is serialized directly into the
+   *         output stream, <code>false</code> if it is serialized once into a
+   *         byte array.
+   * @since 2.1.3
+   */
+  public final boolean isStreamingSerialization ()
+  {
+    return m_bStreaming;
+  }
+
+  @Nullable
+  private synchronized byte [] _getCachedBytes ()
+  {
+    return m_aCachedBytes;
+  }
+
+  @Nonnull
+  private synchronized byte [] _getOrCreateCachedBytes () throws IOException
+  {
+    if (m_aCachedBytes == null)
+    {
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        AS4XMLHelper.serializeXML (m_aNode, aBAOS);
+        m_aCachedBytes = aBAOS.toByteArray ();
+      }
+    }
+    return m_aCachedBytes;
+  }
+
+  @Override
+  public final void close () throws IOException
+  {
+    // nothing to do
+  }
+
+  @Override
+  public boolean isRepeatable ()
+  {
+    return true;
+  }
+
+  public long getContentLength ()
+  {
+    if (m_bStreaming)
+    {
+      final byte [] aCachedBytes = _getCachedBytes ();
+      // Length unknown before serialization - negative number
+      return aCachedBytes != null ? aCachedBytes.length : -1;
+    }
+
+    try
+    {
+      return _getOrCreateCachedBytes ().length;
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException ("Failed to serialize XML node", ex);
+    }
+  }
+
+  public boolean isStreaming ()
+  {
+    return false;
+  }
+
+  @Nonnull
+  public InputStream getContent () throws IOException
+  {
+    return new NonBlockingByteArrayInputStream (_getOrCreateCachedBytes ());
+  }
+
+  @Override
+  public void writeTo (@Nonnull final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+
+    final byte [] aCachedBytes = m_bStreaming ? _getCachedBytes () : _getOrCreateCachedBytes ();
+    if (aCachedBytes != null)
+      aOS.write (aCachedBytes);
+    else
+      AS4XMLHelper.serializeXML (m_aNode, aOS);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return ToStringGenerator.getDerived (super.toString ()).append ("Node", m_aNode)
+                                                           .append ("Streaming", m_bStreaming)
+                                                           .getToString ();
   }
 }
@@ -17,6 +17,9 @@
 package com.helger.phase4.http;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
@@ -167,4 +170,69 @@ public interface IHttpPoster
                                        @Nonnull HttpClientResponseHandler <? extends T> aResponseHandler,
                                        @Nullable IAS4OutgoingDumper aOutgoingDumper,
                                        @Nullable IAS4RetryCallback aRetryCallback) throws IOException;
+
+  /**
+   * Asynchronous version of
+   * {@link #sendGenericMessageWithRetries(String, HttpHeaderMap, HttpEntity, String, HttpRetrySettings, HttpClientResponseHandler, IAS4OutgoingDumper, IAS4RetryCallback)}.
+   * The default implementation simply invokes the synchronous version on the
+   * provided executor.
+   *
+   * @param sURL
+   *        The URL to send to. May neither be <code>null</code> nor empty.
+   * @param aCustomHttpHeaders
+   *        An optional http header map that should be applied. May be
+   *        <code>null</code>.
+   * @param aHttpEntity
+   *        The HTTP entity to be send. May not be <code>null</code>.
+   * @param sMessageID
+   *        the AS4 message ID. May not be <code>null</code>.
+   * @param aRetrySettings
+   *        The retry settings to use. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The HTTP response handler that should be used to convert the HTTP
+   *        response to a domain object.
+   * @param aOutgoingDumper
+   *        An optional outgoing dumper for this message. May be
+   *        <code>null</code> to use the global one.
+   * @param aRetryCallback
+   *        An optional retry callback that is invoked, before a retry happens.
+   * @param aExecutor
+   *        The executor to perform the sending on. May not be
+   *        <code>null</code>.
+   * @param <T>
+   *        Response data type
+   * @return A future with the HTTP response data as indicated by the
+   *         ResponseHandler. Never <code>null</code>. In case of an IO error
+   *         the future completes exceptionally.
+   * @since 2.1.3
+   */
+  @Nonnull
+  default <T> CompletableFuture <T> sendGenericMessageWithRetriesAsync (@Nonnull final String sURL,
+                                                                        @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                                                        @Nonnull final HttpEntity aHttpEntity,
+                                                                        @Nonnull final String sMessageID,
+                                                                        @Nonnull final HttpRetrySettings aRetrySettings,
+                                                                        @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                        @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                        @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                        @Nonnull final Executor aExecutor)
+  {
+    return CompletableFuture.supplyAsync ( () -> {
+      try
+      {
+        return sendGenericMessageWithRetries (sURL,
+                                              aCustomHttpHeaders,
+                                              aHttpEntity,
+                                              sMessageID,
+                                              aRetrySettings,
+                                              aResponseHandler,
+                                              aOutgoingDumper,
+                                              aRetryCallback);
+      }
+      catch (final IOException ex)
+      {
+        throw new CompletionException (ex);
+      }
+    }, aExecutor);
+  }
 }
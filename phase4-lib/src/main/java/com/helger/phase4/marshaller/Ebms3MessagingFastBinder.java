@@ -0,0 +1,935 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.marshaller;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.datetime.XMLOffsetDateTime;
+import com.helger.commons.error.SingleError;
+import com.helger.commons.error.list.ErrorList;
+import com.helger.commons.string.StringHelper;
+import com.helger.jaxb.adapter.AdapterXMLOffsetDateTime;
+import com.helger.jaxb.builder.JAXBDocumentType;
+import com.helger.phase4.CAS4;
+import com.helger.phase4.ebms3header.Ebms3AgreementRef;
+import com.helger.phase4.ebms3header.Ebms3CollaborationInfo;
+import com.helger.phase4.ebms3header.Ebms3Description;
+import com.helger.phase4.ebms3header.Ebms3Error;
+import com.helger.phase4.ebms3header.Ebms3From;
+import com.helger.phase4.ebms3header.Ebms3MessageInfo;
+import com.helger.phase4.ebms3header.Ebms3MessageProperties;
+import com.helger.phase4.ebms3header.Ebms3Messaging;
+import com.helger.phase4.ebms3header.Ebms3PartInfo;
+import com.helger.phase4.ebms3header.Ebms3PartProperties;
+import com.helger.phase4.ebms3header.Ebms3PartyId;
+import com.helger.phase4.ebms3header.Ebms3PartyInfo;
+import com.helger.phase4.ebms3header.Ebms3PayloadInfo;
+import com.helger.phase4.ebms3header.Ebms3Property;
+import com.helger.phase4.ebms3header.Ebms3PullRequest;
+import com.helger.phase4.ebms3header.Ebms3Receipt;
+import com.helger.phase4.ebms3header.Ebms3Schema;
+import com.helger.phase4.ebms3header.Ebms3Service;
+import com.helger.phase4.ebms3header.Ebms3SignalMessage;
+import com.helger.phase4.ebms3header.Ebms3To;
+import com.helger.phase4.ebms3header.Ebms3UserMessage;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.xml.XMLFactory;
+
+import jakarta.xml.bind.annotation.adapters.CollapsedStringAdapter;
+
+/**
+ * A hand-written DOM binder for {@link Ebms3Messaging} objects that avoids the
+ * JAXB overhead for the ebMS3 Messaging header. The results are identical to
+ * the ones of {@link Ebms3MessagingMarshaller} but no XML Schema validation is
+ * performed while reading or writing. Use {@link #validate(Element)} to
+ * validate an element explicitly.<br>
+ * Only the constructs used by regular AS4 messages are supported. Reading
+ * returns <code>null</code> for any element that contains extension elements
+ * (e.g. Receipts) or is structurally invalid and writing returns
+ * <code>null</code> if extension content is not a DOM {@link Element}. In these
+ * cases the caller should use {@link Ebms3MessagingMarshaller} instead.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public final class Ebms3MessagingFastBinder
+{
+  private static final String NS = CAS4.EBMS_NS;
+  private static final String PREFIX = "eb";
+  private static final String SOAP11_NS = ESoapVersion.SOAP_11.getNamespaceURI ();
+  private static final String SOAP12_NS = ESoapVersion.SOAP_12.getNamespaceURI ();
+  private static final String ATTR_MUST_UNDERSTAND = "mustUnderstand";
+
+  // Both adapters are stateless and are the ones JAXB uses
+  private static final CollapsedStringAdapter TOKEN_ADAPTER = new CollapsedStringAdapter ();
+  private static final AdapterXMLOffsetDateTime DATETIME_ADAPTER = new AdapterXMLOffsetDateTime ();
+
+  private static final class SchemaHolder
+  {
+    // The compiled Schema is thread-safe and cached
+    static final Schema SCHEMA = new JAXBDocumentType (Ebms3Messaging.class,
+                                                       Ebms3MessagingMarshaller.XSDS,
+                                                       null).getSchema ();
+  }
+
+  /**
+   * Internal exception to indicate that the fast binder can't handle the
+   * object. It doesn't fill in the stack trace.
+   */
+  private static final class UnsupportedException extends Exception
+  {
+    UnsupportedException (@Nonnull final String sMsg)
+    {
+      super (sMsg, null, false, false);
+    }
+  }
+
+  /**
+   * Iterates the child elements of an element in document order, ignoring
+   * whitespace, comments and processing instructions.
+   */
+  private static final class ChildCursor
+  {
+    private Node m_aNext;
+
+    ChildCursor (@Nonnull final Element aParent) throws UnsupportedException
+    {
+      m_aNext = aParent.getFirstChild ();
+      _skipNonElements ();
+    }
+
+    private void _skipNonElements () throws UnsupportedException
+    {
+      while (m_aNext != null && m_aNext.getNodeType () != Node.ELEMENT_NODE)
+      {
+        switch (m_aNext.getNodeType ())
+        {
+          case Node.TEXT_NODE:
+          case Node.CDATA_SECTION_NODE:
+            if (!m_aNext.getNodeValue ().trim ().isEmpty ())
+              throw new UnsupportedException ("Unexpected text content");
+            break;
+          case Node.COMMENT_NODE:
+          case Node.PROCESSING_INSTRUCTION_NODE:
+            break;
+          default:
+            throw new UnsupportedException ("Unexpected node type " + m_aNext.getNodeType ());
+        }
+        m_aNext = m_aNext.getNextSibling ();
+      }
+    }
+
+    @Nullable
+    Element nextIf (@Nonnull final String sLocalName) throws UnsupportedException
+    {
+      if (m_aNext == null)
+        return null;
+      if (!NS.equals (m_aNext.getNamespaceURI ()) || !sLocalName.equals (m_aNext.getLocalName ()))
+        return null;
+      final Element ret = (Element) m_aNext;
+      m_aNext = m_aNext.getNextSibling ();
+      _skipNonElements ();
+      return ret;
+    }
+
+    @Nonnull
+    Element next (@Nonnull final String sLocalName) throws UnsupportedException
+    {
+      final Element ret = nextIf (sLocalName);
+      if (ret == null)
+        throw new UnsupportedException ("Expected element '" + sLocalName + "'");
+      return ret;
+    }
+
+    void end () throws UnsupportedException
+    {
+      if (m_aNext != null)
+        throw new UnsupportedException ("Unexpected element '" + m_aNext.getLocalName () + "'");
+    }
+  }
+
+  private Ebms3MessagingFastBinder ()
+  {}
+
+  @Nullable
+  private static String _token (@Nullable final String s)
+  {
+    return s == null ? null : TOKEN_ADAPTER.unmarshal (s);
+  }
+
+  @Nullable
+  private static String _getAttr (@Nonnull final Element aElement, @Nonnull final String sLocalName)
+  {
+    final Attr aAttr = aElement.getAttributeNodeNS (null, sLocalName);
+    return aAttr == null ? null : aAttr.getValue ();
+  }
+
+  @Nonnull
+  private static String _getText (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    Node aChild = aElement.getFirstChild ();
+    if (aChild == null)
+      return "";
+    if (aChild.getNextSibling () == null && aChild.getNodeType () == Node.TEXT_NODE)
+    {
+      // Fast path - only one text node
+      return aChild.getNodeValue ();
+    }
+
+    final StringBuilder aSB = new StringBuilder ();
+    while (aChild != null)
+    {
+      switch (aChild.getNodeType ())
+      {
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          aSB.append (aChild.getNodeValue ());
+          break;
+        case Node.COMMENT_NODE:
+        case Node.PROCESSING_INSTRUCTION_NODE:
+          break;
+        default:
+          throw new UnsupportedException ("Unexpected node in text-only element '" + aElement.getLocalName () + "'");
+      }
+      aChild = aChild.getNextSibling ();
+    }
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  private static Boolean _readBoolean (@Nonnull final String sValue) throws UnsupportedException
+  {
+    final String s = sValue.trim ();
+    if ("true".equals (s) || "1".equals (s))
+      return Boolean.TRUE;
+    if ("false".equals (s) || "0".equals (s))
+      return Boolean.FALSE;
+    throw new UnsupportedException ("Invalid boolean value '" + sValue + "'");
+  }
+
+  private static void _readOtherAttribute (@Nonnull final Attr aAttr, @Nonnull final Map <QName, String> aTarget)
+  {
+    final String sPrefix = aAttr.getPrefix ();
+    aTarget.put (new QName (aAttr.getNamespaceURI (), aAttr.getLocalName (), sPrefix == null ? "" : sPrefix),
+                 aAttr.getValue ());
+  }
+
+  @Nonnull
+  private static Ebms3MessageInfo _readMessageInfo (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final ChildCursor aCursor = new ChildCursor (aElement);
+    final Ebms3MessageInfo ret = new Ebms3MessageInfo ();
+    final String sTimestamp = _getText (aCursor.next ("Timestamp"));
+    XMLOffsetDateTime aTimestamp;
+    try
+    {
+      aTimestamp = DATETIME_ADAPTER.unmarshal (sTimestamp);
+    }
+    catch (final Exception ex)
+    {
+      aTimestamp = null;
+    }
+    if (aTimestamp == null)
+      throw new UnsupportedException ("Invalid timestamp '" + sTimestamp + "'");
+    ret.setTimestamp (aTimestamp);
+    ret.setMessageId (_getText (aCursor.next ("MessageId")));
+    final Element aRefToMessageId = aCursor.nextIf ("RefToMessageId");
+    if (aRefToMessageId != null)
+      ret.setRefToMessageId (_getText (aRefToMessageId));
+    aCursor.end ();
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3PartyId _readPartyId (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final Ebms3PartyId ret = new Ebms3PartyId ();
+    ret.setType (_getAttr (aElement, "type"));
+    ret.setValue (_getText (aElement));
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3PartyInfo _readPartyInfo (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final ChildCursor aCursor = new ChildCursor (aElement);
+    final Ebms3PartyInfo ret = new Ebms3PartyInfo ();
+    {
+      final Element aFromElement = aCursor.next ("From");
+      final ChildCursor aFromCursor = new ChildCursor (aFromElement);
+      final Ebms3From aFrom = new Ebms3From ();
+      aFrom.addPartyId (_readPartyId (aFromCursor.next ("PartyId")));
+      Element aPartyId;
+      while ((aPartyId = aFromCursor.nextIf ("PartyId")) != null)
+        aFrom.addPartyId (_readPartyId (aPartyId));
+      aFrom.setRole (_getText (aFromCursor.next ("Role")));
+      aFromCursor.end ();
+      ret.setFrom (aFrom);
+    }
+    {
+      final Element aToElement = aCursor.next ("To");
+      final ChildCursor aToCursor = new ChildCursor (aToElement);
+      final Ebms3To aTo = new Ebms3To ();
+      aTo.addPartyId (_readPartyId (aToCursor.next ("PartyId")));
+      Element aPartyId;
+      while ((aPartyId = aToCursor.nextIf ("PartyId")) != null)
+        aTo.addPartyId (_readPartyId (aPartyId));
+      aTo.setRole (_getText (aToCursor.next ("Role")));
+      aToCursor.end ();
+      ret.setTo (aTo);
+    }
+    aCursor.end ();
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3CollaborationInfo _readCollaborationInfo (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final ChildCursor aCursor = new ChildCursor (aElement);
+    final Ebms3CollaborationInfo ret = new Ebms3CollaborationInfo ();
+    final Element aAgreementRefElement = aCursor.nextIf ("AgreementRef");
+    if (aAgreementRefElement != null)
+    {
+      final Ebms3AgreementRef aAgreementRef = new Ebms3AgreementRef ();
+      aAgreementRef.setType (_getAttr (aAgreementRefElement, "type"));
+      aAgreementRef.setPmode (_getAttr (aAgreementRefElement, "pmode"));
+      aAgreementRef.setValue (_getText (aAgreementRefElement));
+      ret.setAgreementRef (aAgreementRef);
+    }
+    final Element aServiceElement = aCursor.next ("Service");
+    final Ebms3Service aService = new Ebms3Service ();
+    aService.setType (_getAttr (aServiceElement, "type"));
+    aService.setValue (_getText (aServiceElement));
+    ret.setService (aService);
+    ret.setAction (_token (_getText (aCursor.next ("Action"))));
+    ret.setConversationId (_token (_getText (aCursor.next ("ConversationId"))));
+    aCursor.end ();
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3Property _readProperty (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final Ebms3Property ret = new Ebms3Property ();
+    ret.setName (_getAttr (aElement, "name"));
+    ret.setType (_getAttr (aElement, "type"));
+    ret.setValue (_getText (aElement));
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3Description _readDescription (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final Ebms3Description ret = new Ebms3Description ();
+    final Attr aLang = aElement.getAttributeNodeNS (XMLConstants.XML_NS_URI, "lang");
+    ret.setLang (aLang == null ? null : aLang.getValue ());
+    ret.setValue (_getText (aElement));
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3PartInfo _readPartInfo (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final ChildCursor aCursor = new ChildCursor (aElement);
+    final Ebms3PartInfo ret = new Ebms3PartInfo ();
+    ret.setHref (_token (_getAttr (aElement, "href")));
+    final Element aSchemaElement = aCursor.nextIf ("Schema");
+    if (aSchemaElement != null)
+    {
+      new ChildCursor (aSchemaElement).end ();
+      final Ebms3Schema aSchema = new Ebms3Schema ();
+      aSchema.setLocation (_getAttr (aSchemaElement, "location"));
+      aSchema.setVersion (_getAttr (aSchemaElement, "version"));
+      aSchema.setNamespace (_getAttr (aSchemaElement, "namespace"));
+      ret.setSchema (aSchema);
+    }
+    final Element aDescriptionElement = aCursor.nextIf ("Description");
+    if (aDescriptionElement != null)
+      ret.setDescription (_readDescription (aDescriptionElement));
+    final Element aPartPropertiesElement = aCursor.nextIf ("PartProperties");
+    if (aPartPropertiesElement != null)
+    {
+      final ChildCursor aPropCursor = new ChildCursor (aPartPropertiesElement);
+      final Ebms3PartProperties aPartProperties = new Ebms3PartProperties ();
+      aPartProperties.addProperty (_readProperty (aPropCursor.next ("Property")));
+      Element aProperty;
+      while ((aProperty = aPropCursor.nextIf ("Property")) != null)
+        aPartProperties.addProperty (_readProperty (aProperty));
+      aPropCursor.end ();
+      ret.setPartProperties (aPartProperties);
+    }
+    aCursor.end ();
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3UserMessage _readUserMessage (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final ChildCursor aCursor = new ChildCursor (aElement);
+    final Ebms3UserMessage ret = new Ebms3UserMessage ();
+    ret.setMpc (_getAttr (aElement, "mpc"));
+    ret.setMessageInfo (_readMessageInfo (aCursor.next ("MessageInfo")));
+    ret.setPartyInfo (_readPartyInfo (aCursor.next ("PartyInfo")));
+    ret.setCollaborationInfo (_readCollaborationInfo (aCursor.next ("CollaborationInfo")));
+
+    final Element aMessagePropertiesElement = aCursor.nextIf ("MessageProperties");
+    if (aMessagePropertiesElement != null)
+    {
+      final ChildCursor aPropCursor = new ChildCursor (aMessagePropertiesElement);
+      final Ebms3MessageProperties aMessageProperties = new Ebms3MessageProperties ();
+      aMessageProperties.addProperty (_readProperty (aPropCursor.next ("Property")));
+      Element aProperty;
+      while ((aProperty = aPropCursor.nextIf ("Property")) != null)
+        aMessageProperties.addProperty (_readProperty (aProperty));
+      aPropCursor.end ();
+      ret.setMessageProperties (aMessageProperties);
+    }
+
+    final Element aPayloadInfoElement = aCursor.nextIf ("PayloadInfo");
+    if (aPayloadInfoElement != null)
+    {
+      final ChildCursor aPartCursor = new ChildCursor (aPayloadInfoElement);
+      final Ebms3PayloadInfo aPayloadInfo = new Ebms3PayloadInfo ();
+      aPayloadInfo.addPartInfo (_readPartInfo (aPartCursor.next ("PartInfo")));
+      Element aPartInfo;
+      while ((aPartInfo = aPartCursor.nextIf ("PartInfo")) != null)
+        aPayloadInfo.addPartInfo (_readPartInfo (aPartInfo));
+      aPartCursor.end ();
+      ret.setPayloadInfo (aPayloadInfo);
+    }
+    aCursor.end ();
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3Error _readError (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final ChildCursor aCursor = new ChildCursor (aElement);
+    final Ebms3Error ret = new Ebms3Error ();
+    ret.setCategory (_token (_getAttr (aElement, "category")));
+    ret.setRefToMessageInError (_token (_getAttr (aElement, "refToMessageInError")));
+    ret.setErrorCode (_token (_getAttr (aElement, "errorCode")));
+    ret.setOrigin (_token (_getAttr (aElement, "origin")));
+    ret.setSeverity (_token (_getAttr (aElement, "severity")));
+    ret.setShortDescription (_token (_getAttr (aElement, "shortDescription")));
+    final Element aDescriptionElement = aCursor.nextIf ("Description");
+    if (aDescriptionElement != null)
+      ret.setDescription (_readDescription (aDescriptionElement));
+    final Element aErrorDetailElement = aCursor.nextIf ("ErrorDetail");
+    if (aErrorDetailElement != null)
+      ret.setErrorDetail (_token (_getText (aErrorDetailElement)));
+    aCursor.end ();
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3SignalMessage _readSignalMessage (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    final ChildCursor aCursor = new ChildCursor (aElement);
+    final Ebms3SignalMessage ret = new Ebms3SignalMessage ();
+    ret.setMessageInfo (_readMessageInfo (aCursor.next ("MessageInfo")));
+
+    final Element aPullRequestElement = aCursor.nextIf ("PullRequest");
+    if (aPullRequestElement != null)
+    {
+      // Extension elements are not supported
+      new ChildCursor (aPullRequestElement).end ();
+      final Ebms3PullRequest aPullRequest = new Ebms3PullRequest ();
+      final NamedNodeMap aAttrs = aPullRequestElement.getAttributes ();
+      for (int i = 0; i < aAttrs.getLength (); ++i)
+      {
+        final Attr aAttr = (Attr) aAttrs.item (i);
+        final String sNamespaceURI = aAttr.getNamespaceURI ();
+        if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals (sNamespaceURI))
+          continue;
+        if (aAttr.getLocalName () == null)
+          throw new UnsupportedException ("DOM is not namespace aware");
+        if (sNamespaceURI == null && "mpc".equals (aAttr.getLocalName ()))
+          aPullRequest.setMpc (aAttr.getValue ());
+        else
+          _readOtherAttribute (aAttr, aPullRequest.getOtherAttributes ());
+      }
+      ret.setPullRequest (aPullRequest);
+    }
+
+    // Receipts always contain extension elements
+    if (aCursor.nextIf ("Receipt") != null)
+      throw new UnsupportedException ("Receipts are not supported");
+
+    Element aError;
+    while ((aError = aCursor.nextIf ("Error")) != null)
+      ret.addError (_readError (aError));
+    aCursor.end ();
+    return ret;
+  }
+
+  @Nonnull
+  private static Ebms3Messaging _readMessaging (@Nonnull final Element aElement) throws UnsupportedException
+  {
+    if (!NS.equals (aElement.getNamespaceURI ()) || !"Messaging".equals (aElement.getLocalName ()))
+      throw new UnsupportedException ("Not an ebMS3 Messaging element");
+
+    final Ebms3Messaging ret = new Ebms3Messaging ();
+    final NamedNodeMap aAttrs = aElement.getAttributes ();
+    for (int i = 0; i < aAttrs.getLength (); ++i)
+    {
+      final Attr aAttr = (Attr) aAttrs.item (i);
+      final String sNamespaceURI = aAttr.getNamespaceURI ();
+      final String sLocalName = aAttr.getLocalName ();
+      if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals (sNamespaceURI))
+        continue;
+      if (sLocalName == null)
+        throw new UnsupportedException ("DOM is not namespace aware");
+
+      if (sNamespaceURI == null && "id".equals (sLocalName))
+        ret.setId (_token (aAttr.getValue ()));
+      else
+        if (SOAP11_NS.equals (sNamespaceURI) && ATTR_MUST_UNDERSTAND.equals (sLocalName))
+          ret.setS11MustUnderstand (_readBoolean (aAttr.getValue ()));
+        else
+          if (SOAP12_NS.equals (sNamespaceURI) && ATTR_MUST_UNDERSTAND.equals (sLocalName))
+            ret.setS12MustUnderstand (_readBoolean (aAttr.getValue ()));
+          else
+            _readOtherAttribute (aAttr, ret.getOtherAttributes ());
+    }
+
+    final ChildCursor aCursor = new ChildCursor (aElement);
+    Element aChild;
+    while ((aChild = aCursor.nextIf ("SignalMessage")) != null)
+      ret.addSignalMessage (_readSignalMessage (aChild));
+    while ((aChild = aCursor.nextIf ("UserMessage")) != null)
+      ret.addUserMessage (_readUserMessage (aChild));
+    // Extension elements are not supported
+    aCursor.end ();
+    return ret;
+  }
+
+  /**
+   * Read the provided ebMS3 Messaging element. No XML Schema validation is
+   * performed.
+   *
+   * @param aElement
+   *        The <code>eb:Messaging</code> element to read. May not be
+   *        <code>null</code>. The underlying DOM must be namespace aware.
+   * @return <code>null</code> if the element is not supported by this binder.
+   *         In that case {@link Ebms3MessagingMarshaller} should be used.
+   */
+  @Nullable
+  public static Ebms3Messaging read (@Nonnull final Element aElement)
+  {
+    ValueEnforcer.notNull (aElement, "Element");
+    try
+    {
+      return _readMessaging (aElement);
+    }
+    catch (final UnsupportedException ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * @return The cached, compiled XML Schema for the ebMS3 Messaging header.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public static Schema getSchema ()
+  {
+    return SchemaHolder.SCHEMA;
+  }
+
+  /**
+   * Validate the provided ebMS3 Messaging element against the cached XML
+   * Schema.
+   *
+   * @param aElement
+   *        The <code>eb:Messaging</code> element to validate. May not be
+   *        <code>null</code>.
+   * @return The validation errors. Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  public static ErrorList validate (@Nonnull final Element aElement)
+  {
+    ValueEnforcer.notNull (aElement, "Element");
+
+    final ErrorList ret = new ErrorList ();
+    // Validators are not thread-safe
+    final Validator aValidator = getSchema ().newValidator ();
+    aValidator.setErrorHandler (new ErrorHandler ()
+    {
+      public void warning (final SAXParseException ex)
+      {
+        // ignore
+      }
+
+      public void error (final SAXParseException ex)
+      {
+        ret.add (SingleError.builderError ().errorText (ex.getMessage ()).linkedException (ex).build ());
+      }
+
+      public void fatalError (final SAXParseException ex) throws SAXException
+      {
+        // Stops validation and is handled below
+        throw ex;
+      }
+    });
+    try
+    {
+      aValidator.validate (new DOMSource (aElement));
+    }
+    catch (final SAXException | IOException ex)
+    {
+      ret.add (SingleError.builderError ().errorText (ex.getMessage ()).linkedException (ex).build ());
+    }
+    return ret;
+  }
+
+  private static final class DOMWriter
+  {
+    private final Document m_aDoc;
+    private final Element m_aRoot;
+
+    DOMWriter (@Nonnull final Document aDoc)
+    {
+      m_aDoc = aDoc;
+      m_aRoot = aDoc.createElementNS (NS, PREFIX + ":Messaging");
+      m_aRoot.setAttributeNS (XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE + ":" + PREFIX, NS);
+      aDoc.appendChild (m_aRoot);
+    }
+
+    @Nonnull
+    String declare (@Nonnull final String sNamespaceURI, @Nullable final String sPreferredPrefix)
+    {
+      // Reuse existing declarations
+      String sPrefix = m_aRoot.lookupPrefix (sNamespaceURI);
+      if (sPrefix != null)
+        return sPrefix;
+
+      sPrefix = sPreferredPrefix;
+      if (StringHelper.hasNoText (sPrefix))
+        sPrefix = Ebms3NamespaceHandler.getInstance ().getPrefix (sNamespaceURI);
+      if (StringHelper.hasNoText (sPrefix) || m_aRoot.lookupNamespaceURI (sPrefix) != null)
+      {
+        int nIndex = 0;
+        do
+        {
+          sPrefix = "ns" + nIndex++;
+        } while (m_aRoot.lookupNamespaceURI (sPrefix) != null);
+      }
+      m_aRoot.setAttributeNS (XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                              XMLConstants.XMLNS_ATTRIBUTE + ":" + sPrefix,
+                              sNamespaceURI);
+      return sPrefix;
+    }
+
+    @Nonnull
+    Element append (@Nonnull final Element aParent, @Nonnull final String sLocalName)
+    {
+      final Element ret = m_aDoc.createElementNS (NS, PREFIX + ":" + sLocalName);
+      aParent.appendChild (ret);
+      return ret;
+    }
+
+    void appendText (@Nonnull final Element aParent, @Nonnull final String sLocalName, @Nullable final String sValue)
+    {
+      if (sValue != null)
+        append (aParent, sLocalName).appendChild (m_aDoc.createTextNode (sValue));
+    }
+
+    static void setText (@Nonnull final Element aElement, @Nullable final String sValue)
+    {
+      if (sValue != null)
+        aElement.appendChild (aElement.getOwnerDocument ().createTextNode (sValue));
+    }
+
+    static void setAttr (@Nonnull final Element aElement, @Nonnull final String sName, @Nullable final String sValue)
+    {
+      if (sValue != null)
+        aElement.setAttributeNS (null, sName, sValue);
+    }
+
+    void setOtherAttributes (@Nonnull final Element aElement, @Nonnull final Map <QName, String> aAttrs)
+    {
+      for (final Map.Entry <QName, String> aEntry : aAttrs.entrySet ())
+      {
+        final QName aQName = aEntry.getKey ();
+        final String sNamespaceURI = aQName.getNamespaceURI ();
+        if (StringHelper.hasNoText (sNamespaceURI))
+          aElement.setAttributeNS (null, aQName.getLocalPart (), aEntry.getValue ());
+        else
+        {
+          final String sPrefix = declare (sNamespaceURI, aQName.getPrefix ());
+          aElement.setAttributeNS (sNamespaceURI, sPrefix + ":" + aQName.getLocalPart (), aEntry.getValue ());
+        }
+      }
+    }
+
+    void appendAny (@Nonnull final Element aParent, @Nonnull final List <Object> aAny) throws UnsupportedException
+    {
+      for (final Object aObj : aAny)
+      {
+        if (!(aObj instanceof Element))
+          throw new UnsupportedException ("Only DOM elements are supported as extension content");
+        aParent.appendChild (m_aDoc.importNode ((Element) aObj, true));
+      }
+    }
+
+    void appendMessageInfo (@Nonnull final Element aParent, @Nullable final Ebms3MessageInfo aMessageInfo)
+    {
+      if (aMessageInfo == null)
+        return;
+      final Element aElement = append (aParent, "MessageInfo");
+      final XMLOffsetDateTime aTimestamp = aMessageInfo.getTimestamp ();
+      if (aTimestamp != null)
+      {
+        String sTimestamp;
+        try
+        {
+          sTimestamp = DATETIME_ADAPTER.marshal (aTimestamp);
+        }
+        catch (final Exception ex)
+        {
+          throw new IllegalStateException ("Failed to convert timestamp " + aTimestamp, ex);
+        }
+        appendText (aElement, "Timestamp", sTimestamp);
+      }
+      appendText (aElement, "MessageId", aMessageInfo.getMessageId ());
+      appendText (aElement, "RefToMessageId", aMessageInfo.getRefToMessageId ());
+    }
+
+    void appendPartyIds (@Nonnull final Element aParent, @Nonnull final List <Ebms3PartyId> aPartyIds)
+    {
+      for (final Ebms3PartyId aPartyId : aPartyIds)
+      {
+        final Element aElement = append (aParent, "PartyId");
+        setAttr (aElement, "type", aPartyId.getType ());
+        setText (aElement, aPartyId.getValue ());
+      }
+    }
+
+    void appendProperties (@Nonnull final Element aParent, @Nonnull final List <Ebms3Property> aProperties)
+    {
+      for (final Ebms3Property aProperty : aProperties)
+      {
+        final Element aElement = append (aParent, "Property");
+        setAttr (aElement, "name", aProperty.getName ());
+        setAttr (aElement, "type", aProperty.getType ());
+        setText (aElement, aProperty.getValue ());
+      }
+    }
+
+    void appendDescription (@Nonnull final Element aParent, @Nullable final Ebms3Description aDescription)
+    {
+      if (aDescription == null)
+        return;
+      final Element aElement = append (aParent, "Description");
+      if (aDescription.getLang () != null)
+        aElement.setAttributeNS (XMLConstants.XML_NS_URI,
+                                 XMLConstants.XML_NS_PREFIX + ":lang",
+                                 aDescription.getLang ());
+      setText (aElement, aDescription.getValue ());
+    }
+
+    void appendUserMessage (@Nonnull final Ebms3UserMessage aUserMessage)
+    {
+      final Element aElement = append (m_aRoot, "UserMessage");
+      setAttr (aElement, "mpc", aUserMessage.getMpc ());
+      appendMessageInfo (aElement, aUserMessage.getMessageInfo ());
+
+      final Ebms3PartyInfo aPartyInfo = aUserMessage.getPartyInfo ();
+      if (aPartyInfo != null)
+      {
+        final Element aPartyInfoElement = append (aElement, "PartyInfo");
+        final Ebms3From aFrom = aPartyInfo.getFrom ();
+        if (aFrom != null)
+        {
+          final Element aFromElement = append (aPartyInfoElement, "From");
+          appendPartyIds (aFromElement, aFrom.getPartyId ());
+          appendText (aFromElement, "Role", aFrom.getRole ());
+        }
+        final Ebms3To aTo = aPartyInfo.getTo ();
+        if (aTo != null)
+        {
+          final Element aToElement = append (aPartyInfoElement, "To");
+          appendPartyIds (aToElement, aTo.getPartyId ());
+          appendText (aToElement, "Role", aTo.getRole ());
+        }
+      }
+
+      final Ebms3CollaborationInfo aCollaborationInfo = aUserMessage.getCollaborationInfo ();
+      if (aCollaborationInfo != null)
+      {
+        final Element aCIElement = append (aElement, "CollaborationInfo");
+        final Ebms3AgreementRef aAgreementRef = aCollaborationInfo.getAgreementRef ();
+        if (aAgreementRef != null)
+        {
+          final Element aAgreementRefElement = append (aCIElement, "AgreementRef");
+          setAttr (aAgreementRefElement, "type", aAgreementRef.getType ());
+          setAttr (aAgreementRefElement, "pmode", aAgreementRef.getPmode ());
+          setText (aAgreementRefElement, aAgreementRef.getValue ());
+        }
+        final Ebms3Service aService = aCollaborationInfo.getService ();
+        if (aService != null)
+        {
+          final Element aServiceElement = append (aCIElement, "Service");
+          setAttr (aServiceElement, "type", aService.getType ());
+          setText (aServiceElement, aService.getValue ());
+        }
+        appendText (aCIElement, "Action", aCollaborationInfo.getAction ());
+        appendText (aCIElement, "ConversationId", aCollaborationInfo.getConversationId ());
+      }
+
+      final Ebms3MessageProperties aMessageProperties = aUserMessage.getMessageProperties ();
+      if (aMessageProperties != null)
+        appendProperties (append (aElement, "MessageProperties"), aMessageProperties.getProperty ());
+
+      final Ebms3PayloadInfo aPayloadInfo = aUserMessage.getPayloadInfo ();
+      if (aPayloadInfo != null)
+      {
+        final Element aPayloadInfoElement = append (aElement, "PayloadInfo");
+        for (final Ebms3PartInfo aPartInfo : aPayloadInfo.getPartInfo ())
+        {
+          final Element aPartInfoElement = append (aPayloadInfoElement, "PartInfo");
+          setAttr (aPartInfoElement, "href", aPartInfo.getHref ());
+          final Ebms3Schema aSchema = aPartInfo.getSchema ();
+          if (aSchema != null)
+          {
+            final Element aSchemaElement = append (aPartInfoElement, "Schema");
+            setAttr (aSchemaElement, "location", aSchema.getLocation ());
+            setAttr (aSchemaElement, "version", aSchema.getVersion ());
+            setAttr (aSchemaElement, "namespace", aSchema.getNamespace ());
+          }
+          appendDescription (aPartInfoElement, aPartInfo.getDescription ());
+          final Ebms3PartProperties aPartProperties = aPartInfo.getPartProperties ();
+          if (aPartProperties != null)
+            appendProperties (append (aPartInfoElement, "PartProperties"), aPartProperties.getProperty ());
+        }
+      }
+    }
+
+    void appendSignalMessage (@Nonnull final Ebms3SignalMessage aSignalMessage) throws UnsupportedException
+    {
+      final Element aElement = append (m_aRoot, "SignalMessage");
+      appendMessageInfo (aElement, aSignalMessage.getMessageInfo ());
+
+      final Ebms3PullRequest aPullRequest = aSignalMessage.getPullRequest ();
+      if (aPullRequest != null)
+      {
+        final Element aPullRequestElement = append (aElement, "PullRequest");
+        setAttr (aPullRequestElement, "mpc", aPullRequest.getMpc ());
+        setOtherAttributes (aPullRequestElement, aPullRequest.getOtherAttributes ());
+        appendAny (aPullRequestElement, aPullRequest.getAny ());
+      }
+
+      final Ebms3Receipt aReceipt = aSignalMessage.getReceipt ();
+      if (aReceipt != null)
+        appendAny (append (aElement, "Receipt"), aReceipt.getAny ());
+
+      for (final Ebms3Error aError : aSignalMessage.getError ())
+      {
+        final Element aErrorElement = append (aElement, "Error");
+        setAttr (aErrorElement, "category", aError.getCategory ());
+        setAttr (aErrorElement, "refToMessageInError", aError.getRefToMessageInError ());
+        setAttr (aErrorElement, "errorCode", aError.getErrorCode ());
+        setAttr (aErrorElement, "origin", aError.getOrigin ());
+        setAttr (aErrorElement, "severity", aError.getSeverity ());
+        setAttr (aErrorElement, "shortDescription", aError.getShortDescription ());
+        appendDescription (aErrorElement, aError.getDescription ());
+        appendText (aErrorElement, "ErrorDetail", aError.getErrorDetail ());
+      }
+
+      appendAny (aElement, aSignalMessage.getAny ());
+    }
+
+    void writeMessaging (@Nonnull final Ebms3Messaging aMessaging) throws UnsupportedException
+    {
+      if (aMessaging.getId () != null)
+        m_aRoot.setAttributeNS (null, "id", aMessaging.getId ());
+      if (aMessaging.isS11MustUnderstand () != null)
+      {
+        final String sPrefix = declare (SOAP11_NS, ESoapVersion.SOAP_11.getNamespacePrefix ());
+        m_aRoot.setAttributeNS (SOAP11_NS,
+                                sPrefix + ":" + ATTR_MUST_UNDERSTAND,
+                                ESoapVersion.SOAP_11.getMustUnderstandValue (aMessaging.isS11MustUnderstand ()
+                                                                                       .booleanValue ()));
+      }
+      if (aMessaging.isS12MustUnderstand () != null)
+      {
+        final String sPrefix = declare (SOAP12_NS, ESoapVersion.SOAP_12.getNamespacePrefix ());
+        m_aRoot.setAttributeNS (SOAP12_NS,
+                                sPrefix + ":" + ATTR_MUST_UNDERSTAND,
+                                ESoapVersion.SOAP_12.getMustUnderstandValue (aMessaging.isS12MustUnderstand ()
+                                                                                       .booleanValue ()));
+      }
+      setOtherAttributes (m_aRoot, aMessaging.getOtherAttributes ());
+
+      for (final Ebms3SignalMessage aSignalMessage : aMessaging.getSignalMessage ())
+        appendSignalMessage (aSignalMessage);
+      for (final Ebms3UserMessage aUserMessage : aMessaging.getUserMessage ())
+        appendUserMessage (aUserMessage);
+      appendAny (m_aRoot, aMessaging.getAny ());
+    }
+  }
+
+  /**
+   * Write the provided ebMS3 Messaging object to a new DOM document. No XML
+   * Schema validation is performed.
+   *
+   * @param aMessaging
+   *        The object to be written. May not be <code>null</code>.
+   * @return <code>null</code> if the object contains extension content that is
+   *         not supported by this binder. In that case
+   *         {@link Ebms3MessagingMarshaller} should be used.
+   */
+  @Nullable
+  public static Document getAsDocument (@Nonnull final Ebms3Messaging aMessaging)
+  {
+    ValueEnforcer.notNull (aMessaging, "Messaging");
+    final Document aDoc = XMLFactory.newDocument ();
+    try
+    {
+      new DOMWriter (aDoc).writeMessaging (aMessaging);
+    }
+    catch (final UnsupportedException ex)
+    {
+      return null;
+    }
+    return aDoc;
+  }
+}
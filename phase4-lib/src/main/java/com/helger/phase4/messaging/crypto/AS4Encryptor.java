@@ -16,6 +16,8 @@
  */
 package com.helger.phase4.messaging.crypto;
 
+import java.io.IOException;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.WillNotClose;
@@ -38,8 +40,10 @@ import org.w3c.dom.Document;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.collection.CollectionHelper;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.IHasInputStream;
 import com.helger.commons.mime.CMimeType;
 import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase4.attachment.AS4SpoolingInputStreamProvider;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.attachment.WSS4JAttachmentCallbackHandler;
 import com.helger.phase4.config.AS4Configuration;
@@ -50,6 +54,7 @@ import com.helger.phase4.messaging.mime.AS4MimeMessage;
 import com.helger.phase4.messaging.mime.MimeMessageCreator;
 import com.helger.phase4.soap.ESoapVersion;
 import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.phase4.wss.WSSConcurrentExecutor;
 import com.helger.phase4.wss.WSSConfigManager;
 import com.helger.phase4.wss.WSSSynchronizer;
 
@@ -169,6 +174,16 @@ public final class AS4Encryptor
     ValueEnforcer.notNull (aDoc, "XMLDoc");
     ValueEnforcer.notNull (aCryptParams, "CryptParams");
 
+    if (AS4Configuration.isWSS4JConcurrentSecurity ())
+    {
+      // Initialize once, run in parallel
+      return WSSConcurrentExecutor.call ( () -> _encryptSoapBodyPayload (aCryptoFactory,
+                                                                         eSoapVersion,
+                                                                         aDoc,
+                                                                         bMustUnderstand,
+                                                                         aCryptParams));
+    }
+
     if (AS4Configuration.isWSS4JSynchronizedSecurity ())
     {
       // Synchronize
@@ -244,11 +259,31 @@ public final class AS4Encryptor
     if (aAttachmentCallbackHandler != null)
     {
       aEncryptedAttachments = aAttachmentCallbackHandler.getAllResponseAttachments ();
+      final boolean bPipelined = AS4Configuration.isOutgoingAttachmentPipelined ();
       // MIME Type and CTE must be set for encrypted attachments!
       for (final WSS4JAttachment aAttachment : aEncryptedAttachments)
       {
         aAttachment.overwriteMimeType (CMimeType.APPLICATION_OCTET_STREAM.getAsString ());
         aAttachment.setContentTransferEncoding (EContentTransferEncoding.BINARY);
+
+        final IHasInputStream aEncryptedISP = aAttachment.getInputStreamProvider ();
+        if (bPipelined && aEncryptedISP != null && !aEncryptedISP.isReadMultiple ())
+        {
+          // Spool the encrypted content while it is written for the first
+          // time, so that the MIME message is repeatable without an
+          // additional pass
+          try
+          {
+            final AS4SpoolingInputStreamProvider aSpoolingISP = new AS4SpoolingInputStreamProvider (aEncryptedISP::getInputStream,
+                                                                                                    aResHelper.createTempFile ());
+            aResHelper.addCloseable (aSpoolingISP);
+            aAttachment.setSourceStreamProvider (aSpoolingISP);
+          }
+          catch (final IOException ex)
+          {
+            throw new WSSecurityException (ErrorCode.FAILURE, ex, "Failed to create spool file for encrypted attachment");
+          }
+        }
       }
     }
 
@@ -278,6 +313,18 @@ public final class AS4Encryptor
     ValueEnforcer.notNull (aResHelper, "ResHelper");
     ValueEnforcer.notNull (aCryptParams, "CryptParams");
 
+    if (AS4Configuration.isWSS4JConcurrentSecurity ())
+    {
+      // Initialize once, run in parallel
+      return WSSConcurrentExecutor.call ( () -> _encryptMimeMessage (eSoapVersion,
+                                                                     aDoc,
+                                                                     aAttachments,
+                                                                     aCryptoFactory,
+                                                                     bMustUnderstand,
+                                                                     aResHelper,
+                                                                     aCryptParams));
+    }
+
     if (AS4Configuration.isWSS4JSynchronizedSecurity ())
     {
       // Synchronize
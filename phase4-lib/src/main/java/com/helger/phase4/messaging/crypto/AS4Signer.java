@@ -42,6 +42,7 @@ import com.helger.phase4.crypto.IAS4CryptoFactory;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.soap.ESoapVersion;
 import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.phase4.wss.WSSConcurrentExecutor;
 import com.helger.phase4.wss.WSSConfigManager;
 import com.helger.phase4.wss.WSSSynchronizer;
 
@@ -169,6 +170,19 @@ public final class AS4Signer
     ValueEnforcer.notNull (aResHelper, "ResHelper");
     ValueEnforcer.notNull (aSigningParams, "SigningParams");
 
+    if (AS4Configuration.isWSS4JConcurrentSecurity ())
+    {
+      // Initialize once, run in parallel
+      return WSSConcurrentExecutor.call ( () -> _createSignedMessage (aCryptoFactory,
+                                                                      aPreSigningMessage,
+                                                                      eSoapVersion,
+                                                                      sMessagingID,
+                                                                      aAttachments,
+                                                                      aResHelper,
+                                                                      bMustUnderstand,
+                                                                      aSigningParams));
+    }
+
     if (AS4Configuration.isWSS4JSynchronizedSecurity ())
     {
       // Synchronize
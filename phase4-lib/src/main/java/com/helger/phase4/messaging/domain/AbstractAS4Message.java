@@ -28,7 +28,9 @@ import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.commons.traits.IGenericImplTrait;
 import com.helger.phase4.CAS4;
+import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.ebms3header.Ebms3Messaging;
+import com.helger.phase4.marshaller.Ebms3MessagingFastBinder;
 import com.helger.phase4.marshaller.Ebms3MessagingMarshaller;
 import com.helger.phase4.marshaller.Soap11EnvelopeMarshaller;
 import com.helger.phase4.marshaller.Soap12EnvelopeMarshaller;
@@ -106,7 +108,10 @@ public abstract class AbstractAS4Message <IMPLTYPE extends AbstractAS4Message <I
   public final Document getAsSoapDocument (@Nullable final Node aPayload)
   {
     // Convert to DOM Node
-    final Document aEbms3Document = new Ebms3MessagingMarshaller ().getAsDocument (m_aMessaging);
+    Document aEbms3Document = AS4Configuration.isEbms3FastBinderEnabled () ? Ebms3MessagingFastBinder.getAsDocument (m_aMessaging)
+                                                                          : null;
+    if (aEbms3Document == null)
+      aEbms3Document = new Ebms3MessagingMarshaller ().getAsDocument (m_aMessaging);
     if (aEbms3Document == null)
       throw new IllegalStateException ("Failed to write EBMS3 Messaging to XML");
 
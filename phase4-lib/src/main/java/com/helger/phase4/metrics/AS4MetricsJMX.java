@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Simple {@link IAS4MetricsSPI} implementation that keeps all values in memory
+ * and exposes them via JMX. It is used as the fallback if no dedicated metrics
+ * system like Micrometer is available. It is registered by the
+ * {@link AS4MetricsManager} if the configuration property
+ * <code>phase4.metrics.jmx.enabled</code> is <code>true</code>.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4MetricsJMX implements IAS4MetricsSPI, IAS4MetricsMXBean
+{
+  /** The JMX object name used for registration */
+  public static final String OBJECT_NAME = "com.helger.phase4:type=Metrics";
+  /** The upper bounds of the histogram buckets in milliseconds */
+  private static final long [] BUCKET_BOUNDS_MS = { 1, 5, 10, 50, 100, 500, 1000, 5000 };
+  private static final String UNKNOWN = "unknown";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4MetricsJMX.class);
+
+  private static final class StageStats
+  {
+    private final LongAdder m_aCount = new LongAdder ();
+    private final LongAdder m_aTotalNanos = new LongAdder ();
+    private final AtomicLong m_aMaxNanos = new AtomicLong (0);
+    private final LongAdder [] m_aBuckets = new LongAdder [BUCKET_BOUNDS_MS.length + 1];
+
+    StageStats ()
+    {
+      for (int i = 0; i < m_aBuckets.length; ++i)
+        m_aBuckets[i] = new LongAdder ();
+    }
+
+    void add (final long nDurationNanos)
+    {
+      m_aCount.increment ();
+      m_aTotalNanos.add (nDurationNanos);
+      m_aMaxNanos.accumulateAndGet (nDurationNanos, Math::max);
+
+      final long nMillis = TimeUnit.NANOSECONDS.toMillis (nDurationNanos);
+      int nBucket = 0;
+      while (nBucket < BUCKET_BOUNDS_MS.length && nMillis > BUCKET_BOUNDS_MS[nBucket])
+        nBucket++;
+      m_aBuckets[nBucket].increment ();
+    }
+
+    void reset ()
+    {
+      m_aCount.reset ();
+      m_aTotalNanos.reset ();
+      m_aMaxNanos.set (0);
+      for (final LongAdder aBucket : m_aBuckets)
+        aBucket.reset ();
+    }
+  }
+
+  private final StageStats [] m_aStages = new StageStats [EAS4MetricsStage.values ().length];
+  private final Map <String, LongAdder> m_aMessagesPerProfile = new ConcurrentHashMap <> ();
+  private final Map <String, LongAdder> m_aMessagesPerPMode = new ConcurrentHashMap <> ();
+  private final Map <String, LongAdder> m_aEbmsErrors = new ConcurrentHashMap <> ();
+  private final LongAdder m_aBytesIn = new LongAdder ();
+  private final LongAdder m_aBytesOut = new LongAdder ();
+  private final LongAdder m_aTempFilesCreated = new LongAdder ();
+
+  public AS4MetricsJMX ()
+  {
+    for (int i = 0; i < m_aStages.length; ++i)
+      m_aStages[i] = new StageStats ();
+  }
+
+  /**
+   * Register this object in the platform MBean server using
+   * {@link #OBJECT_NAME}. An existing registration is replaced.
+   */
+  public void registerMBean ()
+  {
+    try
+    {
+      final MBeanServer aServer = ManagementFactory.getPlatformMBeanServer ();
+      final ObjectName aName = new ObjectName (OBJECT_NAME);
+      if (aServer.isRegistered (aName))
+        aServer.unregisterMBean (aName);
+      aServer.registerMBean (this, aName);
+    }
+    catch (final JMException ex)
+    {
+      LOGGER.error ("Failed to register AS4 metrics MBean '" + OBJECT_NAME + "'", ex);
+    }
+  }
+
+  /**
+   * Unregister the MBean registered via {@link #registerMBean()}.
+   */
+  public void unregisterMBean ()
+  {
+    try
+    {
+      final MBeanServer aServer = ManagementFactory.getPlatformMBeanServer ();
+      final ObjectName aName = new ObjectName (OBJECT_NAME);
+      if (aServer.isRegistered (aName))
+        aServer.unregisterMBean (aName);
+    }
+    catch (final JMException ex)
+    {
+      LOGGER.error ("Failed to unregister AS4 metrics MBean '" + OBJECT_NAME + "'", ex);
+    }
+  }
+
+  private static void _increment (@Nonnull final Map <String, LongAdder> aMap, @Nullable final String sKey)
+  {
+    aMap.computeIfAbsent (sKey != null ? sKey : UNKNOWN, k -> new LongAdder ()).increment ();
+  }
+
+  @Nonnull
+  private static Map <String, Long> _getSnapshot (@Nonnull final Map <String, LongAdder> aMap)
+  {
+    final Map <String, Long> ret = new TreeMap <> ();
+    aMap.forEach ( (k, v) -> ret.put (k, Long.valueOf (v.sum ())));
+    return ret;
+  }
+
+  public void onStageDuration (@Nonnull final EAS4MetricsStage eStage, @Nonnegative final long nDurationNanos)
+  {
+    m_aStages[eStage.ordinal ()].add (nDurationNanos);
+  }
+
+  @Override
+  public void onIncomingMessage (@Nullable final String sProfileID, @Nullable final String sPModeID)
+  {
+    _increment (m_aMessagesPerProfile, sProfileID);
+    _increment (m_aMessagesPerPMode, sPModeID);
+  }
+
+  @Override
+  public void onEbmsError (@Nonnull @Nonempty final String sErrorCode)
+  {
+    _increment (m_aEbmsErrors, sErrorCode);
+  }
+
+  @Override
+  public void onBytesIn (@Nonnegative final long nBytes)
+  {
+    m_aBytesIn.add (nBytes);
+  }
+
+  @Override
+  public void onBytesOut (@Nonnegative final long nBytes)
+  {
+    m_aBytesOut.add (nBytes);
+  }
+
+  @Override
+  public void onTempFileCreated ()
+  {
+    m_aTempFilesCreated.increment ();
+  }
+
+  public Map <String, Long> getStageCounts ()
+  {
+    final Map <String, Long> ret = new TreeMap <> ();
+    for (final EAS4MetricsStage e : EAS4MetricsStage.values ())
+      ret.put (e.getID (), Long.valueOf (m_aStages[e.ordinal ()].m_aCount.sum ()));
+    return ret;
+  }
+
+  public Map <String, Long> getStageAverageMillis ()
+  {
+    final Map <String, Long> ret = new TreeMap <> ();
+    for (final EAS4MetricsStage e : EAS4MetricsStage.values ())
+    {
+      final StageStats aStats = m_aStages[e.ordinal ()];
+      final long nCount = aStats.m_aCount.sum ();
+      ret.put (e.getID (),
+               Long.valueOf (nCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis (aStats.m_aTotalNanos.sum () / nCount)));
+    }
+    return ret;
+  }
+
+  public Map <String, Long> getStageMaxMillis ()
+  {
+    final Map <String, Long> ret = new TreeMap <> ();
+    for (final EAS4MetricsStage e : EAS4MetricsStage.values ())
+      ret.put (e.getID (), Long.valueOf (TimeUnit.NANOSECONDS.toMillis (m_aStages[e.ordinal ()].m_aMaxNanos.get ())));
+    return ret;
+  }
+
+  public Map <String, Long> getStageHistogram ()
+  {
+    final Map <String, Long> ret = new TreeMap <> ();
+    for (final EAS4MetricsStage e : EAS4MetricsStage.values ())
+    {
+      final LongAdder [] aBuckets = m_aStages[e.ordinal ()].m_aBuckets;
+      for (int i = 0; i < BUCKET_BOUNDS_MS.length; ++i)
+        ret.put (e.getID () + ".le_" + BUCKET_BOUNDS_MS[i] + "ms", Long.valueOf (aBuckets[i].sum ()));
+      ret.put (e.getID () + ".gt_" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1] + "ms",
+               Long.valueOf (aBuckets[BUCKET_BOUNDS_MS.length].sum ()));
+    }
+    return ret;
+  }
+
+  public Map <String, Long> getIncomingMessagesPerProfile ()
+  {
+    return _getSnapshot (m_aMessagesPerProfile);
+  }
+
+  public Map <String, Long> getIncomingMessagesPerPMode ()
+  {
+    return _getSnapshot (m_aMessagesPerPMode);
+  }
+
+  public Map <String, Long> getEbmsErrors ()
+  {
+    return _getSnapshot (m_aEbmsErrors);
+  }
+
+  public long getBytesIn ()
+  {
+    return m_aBytesIn.sum ();
+  }
+
+  public long getBytesOut ()
+  {
+    return m_aBytesOut.sum ();
+  }
+
+  public long getTempFilesCreated ()
+  {
+    return m_aTempFilesCreated.sum ();
+  }
+
+  public void reset ()
+  {
+    for (final StageStats aStats : m_aStages)
+      aStats.reset ();
+    m_aMessagesPerProfile.clear ();
+    m_aMessagesPerPMode.clear ();
+    m_aEbmsErrors.clear ();
+    m_aBytesIn.reset ();
+    m_aBytesOut.reset ();
+    m_aTempFilesCreated.reset ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("StageCounts", getStageCounts ())
+                                       .append ("BytesIn", getBytesIn ())
+                                       .append ("BytesOut", getBytesOut ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.lang.ServiceLoaderHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.phase4.config.AS4Configuration;
+
+/**
+ * This class manages all the {@link IAS4MetricsSPI} implementations and
+ * dispatches the metric events to them. If no implementation is registered,
+ * all methods are effectively no-ops.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public final class AS4MetricsManager
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4MetricsManager.class);
+  private static final IAS4MetricsSPI [] NONE = new IAS4MetricsSPI [0];
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static final ICommonsList <IAS4MetricsSPI> s_aMetrics = new CommonsArrayList <> ();
+  @GuardedBy ("RW_LOCK")
+  private static AS4MetricsJMX s_aJMXMetrics;
+  // Copy of s_aMetrics for lock-free access in the hot path
+  private static volatile IAS4MetricsSPI [] s_aMetricsArray = NONE;
+
+  private AS4MetricsManager ()
+  {}
+
+  /**
+   * Reload all SPI implementations of {@link IAS4MetricsSPI} and register the
+   * built-in JMX metrics if enabled via
+   * {@link AS4Configuration#isMetricsJMXEnabled()}. Manually registered
+   * implementations are removed.
+   */
+  public static void reinitMetrics ()
+  {
+    final ICommonsList <IAS4MetricsSPI> aMetricsSPIs = ServiceLoaderHelper.getAllSPIImplementations (IAS4MetricsSPI.class);
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Found " + aMetricsSPIs.size () + " AS4 metrics SPI implementations");
+
+    RW_LOCK.writeLocked ( () -> {
+      if (s_aJMXMetrics != null)
+      {
+        s_aJMXMetrics.unregisterMBean ();
+        s_aJMXMetrics = null;
+      }
+      if (AS4Configuration.isMetricsJMXEnabled ())
+      {
+        s_aJMXMetrics = new AS4MetricsJMX ();
+        s_aJMXMetrics.registerMBean ();
+        aMetricsSPIs.add (s_aJMXMetrics);
+      }
+      s_aMetrics.setAll (aMetricsSPIs);
+      s_aMetricsArray = s_aMetrics.toArray (NONE);
+    });
+  }
+
+  static
+  {
+    // Init once at the beginning
+    reinitMetrics ();
+  }
+
+  /**
+   * Register an additional metrics implementation.
+   *
+   * @param aMetrics
+   *        The implementation to register. May not be <code>null</code>.
+   */
+  public static void registerMetrics (@Nonnull final IAS4MetricsSPI aMetrics)
+  {
+    ValueEnforcer.notNull (aMetrics, "Metrics");
+    RW_LOCK.writeLocked ( () -> {
+      s_aMetrics.add (aMetrics);
+      s_aMetricsArray = s_aMetrics.toArray (NONE);
+    });
+  }
+
+  /**
+   * Unregister a metrics implementation.
+   *
+   * @param aMetrics
+   *        The implementation to unregister. May be <code>null</code>.
+   */
+  public static void unregisterMetrics (@Nullable final IAS4MetricsSPI aMetrics)
+  {
+    if (aMetrics != null)
+      RW_LOCK.writeLocked ( () -> {
+        if (s_aMetrics.removeObject (aMetrics).isChanged ())
+          s_aMetricsArray = s_aMetrics.toArray (NONE);
+      });
+  }
+
+  /**
+   * @return A list of all registered metrics implementations. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <IAS4MetricsSPI> getAllMetrics ()
+  {
+    return RW_LOCK.readLockedGet (s_aMetrics::getClone);
+  }
+
+  /**
+   * @return <code>true</code> if at least one metrics implementation is
+   *         registered.
+   */
+  public static boolean isEnabled ()
+  {
+    return s_aMetricsArray.length > 0;
+  }
+
+  /**
+   * @return The current time in nanoseconds, to be used as the start time for
+   *         {@link #onStageFinished(EAS4MetricsStage, long)}.
+   */
+  public static long getStartTime ()
+  {
+    return System.nanoTime ();
+  }
+
+  private static void _onException (@Nonnull final IAS4MetricsSPI aMetrics, @Nonnull final RuntimeException ex)
+  {
+    // Metrics must never break the message processing
+    LOGGER.warn ("Error in AS4 metrics implementation " + aMetrics, ex);
+  }
+
+  /**
+   * Record the duration of a stage that started at the provided time.
+   *
+   * @param eStage
+   *        The stage that finished. May not be <code>null</code>.
+   * @param nStartNanos
+   *        The start time as returned by {@link #getStartTime()}.
+   */
+  public static void onStageFinished (@Nonnull final EAS4MetricsStage eStage, final long nStartNanos)
+  {
+    final IAS4MetricsSPI [] aMetricsArray = s_aMetricsArray;
+    if (aMetricsArray.length > 0)
+    {
+      final long nDurationNanos = Math.max (System.nanoTime () - nStartNanos, 0);
+      for (final IAS4MetricsSPI aMetrics : aMetricsArray)
+        try
+        {
+          aMetrics.onStageDuration (eStage, nDurationNanos);
+        }
+        catch (final RuntimeException ex)
+        {
+          _onException (aMetrics, ex);
+        }
+    }
+  }
+
+  public static void onIncomingMessage (@Nullable final String sProfileID, @Nullable final String sPModeID)
+  {
+    for (final IAS4MetricsSPI aMetrics : s_aMetricsArray)
+      try
+      {
+        aMetrics.onIncomingMessage (sProfileID, sPModeID);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onException (aMetrics, ex);
+      }
+  }
+
+  public static void onEbmsError (@Nullable final String sErrorCode)
+  {
+    if (StringHelper.hasText (sErrorCode))
+      for (final IAS4MetricsSPI aMetrics : s_aMetricsArray)
+        try
+        {
+          aMetrics.onEbmsError (sErrorCode);
+        }
+        catch (final RuntimeException ex)
+        {
+          _onException (aMetrics, ex);
+        }
+  }
+
+  public static void onBytesIn (@Nonnegative final long nBytes)
+  {
+    for (final IAS4MetricsSPI aMetrics : s_aMetricsArray)
+      try
+      {
+        aMetrics.onBytesIn (nBytes);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onException (aMetrics, ex);
+      }
+  }
+
+  public static void onBytesOut (@Nonnegative final long nBytes)
+  {
+    for (final IAS4MetricsSPI aMetrics : s_aMetricsArray)
+      try
+      {
+        aMetrics.onBytesOut (nBytes);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onException (aMetrics, ex);
+      }
+  }
+
+  public static void onTempFileCreated ()
+  {
+    for (final IAS4MetricsSPI aMetrics : s_aMetricsArray)
+      try
+      {
+        aMetrics.onTempFileCreated ();
+      }
+      catch (final RuntimeException ex)
+      {
+        _onException (aMetrics, ex);
+      }
+  }
+}
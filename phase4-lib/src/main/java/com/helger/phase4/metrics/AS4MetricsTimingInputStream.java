@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.WrappedInputStream;
+
+/**
+ * An input stream that measures the time spent reading from the wrapped stream
+ * and reports it as a single stage duration to the {@link AS4MetricsManager}
+ * when it is closed. This is used for stages that are executed lazily while
+ * the stream is consumed, like the decompression of attachments.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public class AS4MetricsTimingInputStream extends WrappedInputStream
+{
+  private final EAS4MetricsStage m_eStage;
+  private long m_nNanos;
+  private boolean m_bReported = false;
+
+  public AS4MetricsTimingInputStream (@Nonnull final InputStream aSourceIS, @Nonnull final EAS4MetricsStage eStage)
+  {
+    super (aSourceIS);
+    ValueEnforcer.notNull (eStage, "Stage");
+    m_eStage = eStage;
+  }
+
+  @Override
+  public int read () throws IOException
+  {
+    final long nStart = System.nanoTime ();
+    try
+    {
+      return super.read ();
+    }
+    finally
+    {
+      m_nNanos += System.nanoTime () - nStart;
+    }
+  }
+
+  @Override
+  public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+  {
+    final long nStart = System.nanoTime ();
+    try
+    {
+      return super.read (aBuf, nOfs, nLen);
+    }
+    finally
+    {
+      m_nNanos += System.nanoTime () - nStart;
+    }
+  }
+
+  @Override
+  public long skip (final long n) throws IOException
+  {
+    final long nStart = System.nanoTime ();
+    try
+    {
+      return super.skip (n);
+    }
+    finally
+    {
+      m_nNanos += System.nanoTime () - nStart;
+    }
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    try
+    {
+      super.close ();
+    }
+    finally
+    {
+      if (!m_bReported)
+      {
+        m_bReported = true;
+        // Report the accumulated time as if it was a single block
+        AS4MetricsManager.onStageFinished (m_eStage, System.nanoTime () - m_nNanos);
+      }
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * Defines the processing stages of incoming and outgoing messages for which
+ * durations are recorded by the {@link IAS4MetricsSPI}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public enum EAS4MetricsStage implements IHasID <String>
+{
+  /** Reading a complete incoming MIME message including all attachments */
+  INCOMING_MIME_PARSE ("incoming.mime.parse"),
+  /** Reading the SOAP document of an incoming message into a DOM */
+  INCOMING_DOM_PARSE ("incoming.dom.parse"),
+  /** Signature verification and decryption of an incoming message */
+  INCOMING_WSS4J ("incoming.wss4j"),
+  /** Decompression of incoming attachments */
+  INCOMING_DECOMPRESS ("incoming.decompress"),
+  /** Duplicate check of an incoming message */
+  INCOMING_DUPLICATE_CHECK ("incoming.duplicatecheck"),
+  /** Invocation of the incoming message processor SPIs */
+  INCOMING_SPI_INVOCATION ("incoming.spi"),
+  /** Signing of a synchronous response message */
+  RESPONSE_SIGN ("response.sign"),
+  /** Signing of an outgoing message */
+  OUTGOING_SIGN ("outgoing.sign"),
+  /** Encryption of an outgoing message */
+  OUTGOING_ENCRYPT ("outgoing.encrypt"),
+  /** Sending an outgoing message via HTTP including reading the response */
+  OUTGOING_HTTP ("outgoing.http");
+
+  private final String m_sID;
+
+  EAS4MetricsStage (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static EAS4MetricsStage getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EAS4MetricsStage.class, sID);
+  }
+}
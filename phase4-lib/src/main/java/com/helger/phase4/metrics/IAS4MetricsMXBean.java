@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX management interface of {@link AS4MetricsJMX}. All durations are in
+ * milliseconds. The keys of the stage maps are the IDs of
+ * {@link EAS4MetricsStage}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public interface IAS4MetricsMXBean
+{
+  /**
+   * @return The number of executions per stage.
+   */
+  Map <String, Long> getStageCounts ();
+
+  /**
+   * @return The average duration per stage.
+   */
+  Map <String, Long> getStageAverageMillis ();
+
+  /**
+   * @return The maximum duration per stage.
+   */
+  Map <String, Long> getStageMaxMillis ();
+
+  /**
+   * @return The latency histogram of all stages. The key is the stage ID
+   *         followed by the upper bound of the bucket, e.g.
+   *         <code>incoming.wss4j.le_50ms</code> or
+   *         <code>incoming.wss4j.gt_5000ms</code>. Buckets are not cumulative.
+   */
+  Map <String, Long> getStageHistogram ();
+
+  /**
+   * @return The number of incoming messages per AS4 profile ID.
+   */
+  Map <String, Long> getIncomingMessagesPerProfile ();
+
+  /**
+   * @return The number of incoming messages per PMode ID.
+   */
+  Map <String, Long> getIncomingMessagesPerPMode ();
+
+  /**
+   * @return The number of ebMS errors per error code.
+   */
+  Map <String, Long> getEbmsErrors ();
+
+  long getBytesIn ();
+
+  long getBytesOut ();
+
+  long getTempFilesCreated ();
+
+  /**
+   * Reset all values to 0.
+   */
+  void reset ();
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.IsSPIInterface;
+import com.helger.commons.annotation.Nonempty;
+
+/**
+ * SPI interface to record metrics of the AS4 message processing. All
+ * implementations found via the service loader are used by the
+ * {@link AS4MetricsManager}. Implementations must be thread-safe and fast, as
+ * they are invoked inline in the message processing.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@IsSPIInterface
+public interface IAS4MetricsSPI
+{
+  /**
+   * Record the duration of a single processing stage.
+   *
+   * @param eStage
+   *        The stage that was executed. Never <code>null</code>.
+   * @param nDurationNanos
+   *        The duration in nanoseconds. Always &ge; 0.
+   */
+  void onStageDuration (@Nonnull EAS4MetricsStage eStage, @Nonnegative long nDurationNanos);
+
+  /**
+   * Count an incoming ebMS message.
+   *
+   * @param sProfileID
+   *        The ID of the AS4 profile used. May be <code>null</code> if no
+   *        profile is active.
+   * @param sPModeID
+   *        The ID of the PMode used. May be <code>null</code> if no PMode was
+   *        resolved.
+   */
+  default void onIncomingMessage (@Nullable final String sProfileID, @Nullable final String sPModeID)
+  {}
+
+  /**
+   * Count an ebMS error that is sent back to the sender.
+   *
+   * @param sErrorCode
+   *        The ebMS error code, like <code>EBMS:0004</code>. Never
+   *        <code>null</code>.
+   */
+  default void onEbmsError (@Nonnull @Nonempty final String sErrorCode)
+  {}
+
+  /**
+   * Count the bytes of an incoming HTTP message body.
+   *
+   * @param nBytes
+   *        The number of bytes read. Always &ge; 0.
+   */
+  default void onBytesIn (@Nonnegative final long nBytes)
+  {}
+
+  /**
+   * Count the bytes of an outgoing HTTP message body.
+   *
+   * @param nBytes
+   *        The number of bytes written. Always &ge; 0.
+   */
+  default void onBytesOut (@Nonnegative final long nBytes)
+  {}
+
+  /**
+   * Count the creation of a temporary file.
+   */
+  default void onTempFileCreated ()
+  {}
+}
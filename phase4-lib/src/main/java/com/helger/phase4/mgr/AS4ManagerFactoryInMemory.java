@@ -18,7 +18,7 @@ package com.helger.phase4.mgr;
 
 import javax.annotation.Nonnull;
 
-import com.helger.phase4.duplicate.AS4DuplicateManagerInMemory;
+import com.helger.phase4.duplicate.AS4DuplicateManagerInMemoryConcurrent;
 import com.helger.phase4.duplicate.IAS4DuplicateManager;
 import com.helger.phase4.model.mpc.IMPCManager;
 import com.helger.phase4.model.mpc.MPCManagerInMemory;
@@ -51,7 +51,7 @@ public class AS4ManagerFactoryInMemory implements IAS4ManagerFactory
   @Nonnull
   public IAS4DuplicateManager createDuplicateManager ()
   {
-    return new AS4DuplicateManagerInMemory ();
+    return new AS4DuplicateManagerInMemoryConcurrent ();
   }
 
   @Nonnull
@@ -16,10 +16,15 @@
  */
 package com.helger.phase4.mgr;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.annotation.Nonnull;
 
 import com.helger.dao.DAOException;
+import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.duplicate.AS4DuplicateManager;
+import com.helger.phase4.duplicate.AS4DuplicateManagerAppendOnly;
 import com.helger.phase4.duplicate.IAS4DuplicateManager;
 import com.helger.phase4.model.mpc.IMPCManager;
 import com.helger.phase4.model.mpc.MPCManager;
@@ -41,6 +46,7 @@ public class AS4ManagerFactoryPersistingFileSystem implements IAS4ManagerFactory
   private static final String MPC_XML = "as4-mpc.xml";
   private static final String PMODE_XML = "as4-pmode.xml";
   private static final String INCOMING_DUPLICATE_XML = "as4-duplicate-incoming.xml";
+  private static final String INCOMING_DUPLICATE_DIR = "as4-duplicate-incoming";
 
   @Nonnull
   public IMPCManager createMPCManager () throws Phase4Exception
@@ -68,9 +74,27 @@ public class AS4ManagerFactoryPersistingFileSystem implements IAS4ManagerFactory
     }
   }
 
+  /**
+   * {@inheritDoc}<br>
+   * By default the XML file based {@link AS4DuplicateManager} is used. If
+   * {@link AS4Configuration#isIncomingDuplicateAppendOnly()} is enabled, the
+   * {@link AS4DuplicateManagerAppendOnly} is used instead.
+   */
   @Nonnull
   public IAS4DuplicateManager createDuplicateManager () throws Phase4Exception
   {
+    if (AS4Configuration.isIncomingDuplicateAppendOnly ())
+    {
+      try
+      {
+        return new AS4DuplicateManagerAppendOnly (new File (AS4Configuration.getDataPath (), INCOMING_DUPLICATE_DIR));
+      }
+      catch (final IOException ex)
+      {
+        throw new Phase4Exception ("Error creating AS4DuplicateManagerAppendOnly", ex);
+      }
+    }
+
     try
     {
       return new AS4DuplicateManager (INCOMING_DUPLICATE_XML);
@@ -0,0 +1,586 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.mpc.store;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.state.EChange;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.ebms3header.Ebms3Messaging;
+import com.helger.phase4.ebms3header.Ebms3UserMessage;
+import com.helger.phase4.marshaller.Ebms3MessagingMarshaller;
+import com.helger.phase4.mgr.MetaAS4Manager;
+import com.helger.phase4.model.mpc.IMPC;
+import com.helger.phase4.model.mpc.MPCManager;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * A persistent store for user messages that are served to pulling parties on
+ * the responder side of a pull MEP. Every MPC (as managed by the
+ * {@link MPCManager}) has its own FIFO queue. Features:
+ * <ul>
+ * <li>Durability: every enqueued user message is first written to the
+ * {@link AS4MPCStoreJournal}, together with its payload attachments. Only the meta data of the queued items is kept in
+ * memory, so that a large number of queued messages is possible.</li>
+ * <li>Atomic dequeue-on-pull: {@link #dequeue(IMPC)} removes the head of the
+ * MPC queue in constant time, so that every user message is handed out to
+ * exactly one pull request.</li>
+ * <li>Visibility timeout: a pulled user message stays in the store until
+ * {@link #acknowledge(String)} is called upon the reception of the receipt. If
+ * the receipt does not arrive within the visibility timeout, the user message
+ * is put back at the head of its MPC queue and is served again.</li>
+ * </ul>
+ * User messages that were pulled but not acknowledged before {@link #close()}
+ * (or a crash) are queued again, when a new store is created on the same
+ * journal.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4MPCStore implements AutoCloseable
+{
+  /** The default visibility timeout of pulled user messages */
+  public static final Duration DEFAULT_VISIBILITY_TIMEOUT = Duration.ofMinutes (5);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4MPCStore.class);
+
+  /**
+   * A user message that was pulled, but not yet acknowledged.
+   *
+   * @author Philip Helger
+   */
+  private static final class InFlightItem
+  {
+    private final AS4MPCStoreItem m_aItem;
+    private final long m_nDeadlineNanos;
+
+    InFlightItem (@Nonnull final AS4MPCStoreItem aItem, final long nDeadlineNanos)
+    {
+      m_aItem = aItem;
+      m_nDeadlineNanos = nDeadlineNanos;
+    }
+  }
+
+  private final AS4MPCStoreJournal m_aJournal;
+  private final long m_nVisibilityTimeoutNanos;
+  private final AtomicLong m_aSequence;
+
+  private final ReentrantLock m_aLock = new ReentrantLock ();
+  // Queued items per MPC ID in FIFO order
+  @GuardedBy ("m_aLock")
+  private final ICommonsMap <String, Deque <AS4MPCStoreItem>> m_aQueues = new CommonsHashMap <> ();
+  // In flight items per message ID
+  @GuardedBy ("m_aLock")
+  private final ICommonsMap <String, InFlightItem> m_aInFlight = new CommonsHashMap <> ();
+  // In flight items ordered by deadline - as the visibility timeout is
+  // constant, the order of dequeuing is also the order of the deadlines.
+  // Acknowledged items are removed lazily.
+  @GuardedBy ("m_aLock")
+  private final Deque <InFlightItem> m_aInFlightDeadlines = new ArrayDeque <> ();
+  // The message IDs of all queued and in flight items
+  @GuardedBy ("m_aLock")
+  private final ICommonsSet <String> m_aAllIDs = new CommonsHashSet <> ();
+  @GuardedBy ("m_aLock")
+  private boolean m_bClosed = false;
+
+  /**
+   * Constructor. All items that are contained in the journal are queued again.
+   *
+   * @param aJournal
+   *        The journal to use. May not be <code>null</code>. See
+   *        {@link AS4MPCStoreJournal#createDefault()}.
+   * @param aVisibilityTimeout
+   *        The duration after which a pulled, but not acknowledged user
+   *        message is served again. May not be <code>null</code> and must be
+   *        positive. See {@link #DEFAULT_VISIBILITY_TIMEOUT}.
+   */
+  public AS4MPCStore (@Nonnull final AS4MPCStoreJournal aJournal, @Nonnull final Duration aVisibilityTimeout)
+  {
+    ValueEnforcer.notNull (aJournal, "Journal");
+    ValueEnforcer.notNull (aVisibilityTimeout, "VisibilityTimeout");
+    ValueEnforcer.isFalse (aVisibilityTimeout.isNegative () || aVisibilityTimeout.isZero (),
+                           "VisibilityTimeout must be positive");
+    m_aJournal = aJournal;
+    m_nVisibilityTimeoutNanos = aVisibilityTimeout.toNanos ();
+
+    // Restore all items from the journal
+    final ICommonsList <AS4MPCStoreItem> aRestored = aJournal.readAll ();
+    if (aRestored.isNotEmpty ())
+      LOGGER.info ("Restoring " + aRestored.size () + " item(s) from MPC store journal " + aJournal);
+    long nNextSequence = 0;
+    m_aLock.lock ();
+    try
+    {
+      for (final AS4MPCStoreItem aItem : aRestored)
+      {
+        m_aAllIDs.add (aItem.getID ());
+        _getQueueLocked (aItem.getMPCID ()).addLast (aItem);
+        nNextSequence = aItem.getSequence () + 1;
+      }
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+    m_aSequence = new AtomicLong (nNextSequence);
+  }
+
+  @GuardedBy ("m_aLock")
+  @Nonnull
+  private Deque <AS4MPCStoreItem> _getQueueLocked (@Nonnull final String sMPCID)
+  {
+    return m_aQueues.computeIfAbsent (sMPCID, k -> new ArrayDeque <> ());
+  }
+
+  /**
+   * Put all in flight items whose deadline has passed back to the head of
+   * their MPC queue, keeping their original order.
+   */
+  @GuardedBy ("m_aLock")
+  private void _requeueExpiredLocked (final long nNowNanos)
+  {
+    ICommonsList <AS4MPCStoreItem> aExpired = null;
+    InFlightItem aHead;
+    while ((aHead = m_aInFlightDeadlines.peekFirst ()) != null && aHead.m_nDeadlineNanos - nNowNanos <= 0)
+    {
+      m_aInFlightDeadlines.removeFirst ();
+      // Ignore items that were acknowledged in the meantime
+      if (m_aInFlight.get (aHead.m_aItem.getID ()) == aHead)
+      {
+        m_aInFlight.remove (aHead.m_aItem.getID ());
+        if (aExpired == null)
+          aExpired = new CommonsArrayList <> ();
+        aExpired.add (aHead.m_aItem);
+      }
+    }
+
+    if (aExpired != null)
+    {
+      // Add in reverse order, so that the first expired item is the new head
+      for (int i = aExpired.size () - 1; i >= 0; --i)
+      {
+        final AS4MPCStoreItem aItem = aExpired.get (i);
+        _getQueueLocked (aItem.getMPCID ()).addFirst (aItem);
+      }
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Re-queued " + aExpired.size () + " user message(s) after the visibility timeout");
+    }
+  }
+
+  @Nonnull
+  private static byte [] _serialize (@Nonnull final Ebms3UserMessage aUserMessage)
+  {
+    final Ebms3Messaging aMessaging = new Ebms3Messaging ();
+    aMessaging.addUserMessage (aUserMessage);
+    final String sXML = new Ebms3MessagingMarshaller ().getAsString (aMessaging);
+    if (sXML == null)
+      throw new IllegalArgumentException ("Failed to serialize user message '" +
+                                          aUserMessage.getMessageInfo ().getMessageId () +
+                                          "'");
+    return sXML.getBytes (StandardCharsets.UTF_8);
+  }
+
+  @Nonnull
+  private static Ebms3UserMessage _deserialize (@Nonnull final AS4MPCStoreItem aItem,
+                                                @Nonnull final byte [] aPayload) throws IOException
+  {
+    final Ebms3Messaging aMessaging = new Ebms3MessagingMarshaller ().read (new String (aPayload,
+                                                                                   StandardCharsets.UTF_8));
+    if (aMessaging == null || !aMessaging.hasUserMessageEntries ())
+      throw new IOException ("Failed to parse the stored user message of " + aItem);
+    return aMessaging.getUserMessageAtIndex (0);
+  }
+
+  /**
+   * Add a new user message at the end of the queue of the provided MPC. The
+   * user message is written to the journal before this method returns.
+   *
+   * @param aMPC
+   *        The MPC to queue the user message in. May not be <code>null</code>.
+   * @param aUserMessage
+   *        The user message to be served to the pulling party. May not be
+   *        <code>null</code> and must have a message ID. If it has an MPC, it
+   *        must match the provided MPC.
+   * @return {@link EChange#UNCHANGED} if a user message with the same message
+   *         ID is already contained, {@link EChange#CHANGED} if it was
+   *         enqueued.
+   * @throws IOException
+   *         If writing to the journal failed
+   * @throws IllegalStateException
+   *         If the store is already closed
+   */
+  @Nonnull
+  public EChange enqueue (@Nonnull final IMPC aMPC, @Nonnull final Ebms3UserMessage aUserMessage) throws IOException
+  {
+    return enqueue (aMPC, aUserMessage, null);
+  }
+
+  /**
+   * Add a new user message together with its payload attachments at the end of
+   * the queue of the provided MPC. The user message and the attachments are
+   * written to the journal before this method returns, so the attachments are
+   * not needed afterwards.
+   *
+   * @param aMPC
+   *        The MPC to queue the user message in. May not be <code>null</code>.
+   * @param aUserMessage
+   *        The user message to be served to the pulling party. May not be
+   *        <code>null</code> and must have a message ID. If it has an MPC, it
+   *        must match the provided MPC.
+   * @param aAttachments
+   *        The payload attachments referenced by the user message. May be
+   *        <code>null</code>.
+   * @return {@link EChange#UNCHANGED} if a user message with the same message
+   *         ID is already contained, {@link EChange#CHANGED} if it was
+   *         enqueued.
+   * @throws IOException
+   *         If writing to the journal failed
+   * @throws IllegalStateException
+   *         If the store is already closed
+   */
+  @Nonnull
+  public EChange enqueue (@Nonnull final IMPC aMPC,
+                          @Nonnull final Ebms3UserMessage aUserMessage,
+                          @Nullable final ICommonsList <WSS4JAttachment> aAttachments) throws IOException
+  {
+    ValueEnforcer.notNull (aMPC, "MPC");
+    ValueEnforcer.notNull (aUserMessage, "UserMessage");
+    ValueEnforcer.notNull (aUserMessage.getMessageInfo (), "UserMessage.MessageInfo");
+    final String sMessageID = aUserMessage.getMessageInfo ().getMessageId ();
+    ValueEnforcer.notEmpty (sMessageID, "UserMessage.MessageInfo.MessageId");
+    if (StringHelper.hasText (aUserMessage.getMpc ()) && !EqualsHelper.equals (aUserMessage.getMpc (), aMPC.getID ()))
+      throw new IllegalArgumentException ("The user message '" +
+                                          sMessageID +
+                                          "' is for MPC '" +
+                                          aUserMessage.getMpc () +
+                                          "' and not for MPC '" +
+                                          aMPC.getID () +
+                                          "'");
+
+    final byte [] aPayload = _serialize (aUserMessage);
+
+    // Reserve the message ID
+    m_aLock.lock ();
+    try
+    {
+      if (m_bClosed)
+        throw new IllegalStateException ("The MPC store is already closed");
+      if (!m_aAllIDs.add (sMessageID))
+        return EChange.UNCHANGED;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+
+    final AS4MPCStoreItem aItem = new AS4MPCStoreItem (sMessageID,
+                                                       aMPC.getID (),
+                                                       m_aSequence.getAndIncrement (),
+                                                       MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ());
+    boolean bWritten = false;
+    try
+    {
+      m_aJournal.write (aItem, aPayload, aAttachments);
+      bWritten = true;
+    }
+    finally
+    {
+      m_aLock.lock ();
+      try
+      {
+        if (bWritten)
+          _getQueueLocked (aItem.getMPCID ()).addLast (aItem);
+        else
+          m_aAllIDs.remove (sMessageID);
+      }
+      finally
+      {
+        m_aLock.unlock ();
+      }
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Enqueued user message '" + sMessageID + "' in MPC '" + aMPC.getID () + "'");
+    return EChange.CHANGED;
+  }
+
+  @Nullable
+  private AS4MPCStoreItem _pollNextItem (@Nonnull final String sMPCID)
+  {
+    m_aLock.lock ();
+    try
+    {
+      if (m_bClosed)
+        return null;
+
+      final long nNowNanos = System.nanoTime ();
+      _requeueExpiredLocked (nNowNanos);
+
+      final Deque <AS4MPCStoreItem> aQueue = m_aQueues.get (sMPCID);
+      final AS4MPCStoreItem ret = aQueue == null ? null : aQueue.pollFirst ();
+      if (ret != null)
+      {
+        final InFlightItem aInFlight = new InFlightItem (ret, nNowNanos + m_nVisibilityTimeoutNanos);
+        m_aInFlight.put (ret.getID (), aInFlight);
+        m_aInFlightDeadlines.addLast (aInFlight);
+      }
+      return ret;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Remove the first user message from the queue of the provided MPC, to
+   * serve it as the response to a pull request. The user message stays in the
+   * store until {@link #acknowledge(String)} is called. If this does not happen
+   * within the visibility timeout, it is served again.
+   *
+   * @param aMPC
+   *        The MPC to dequeue from. May not be <code>null</code>.
+   * @return <code>null</code> if no user message is queued for the provided
+   *         MPC or if the store is closed.
+   */
+  @Nullable
+  public Ebms3UserMessage dequeue (@Nonnull final IMPC aMPC)
+  {
+    return _dequeue (aMPC, null, null);
+  }
+
+  /**
+   * Remove the first user message from the queue of the provided MPC together
+   * with its payload attachments, to serve it as the response to a pull
+   * request. The user message stays in the store until
+   * {@link #acknowledge(String)} is called. If this does not happen within the
+   * visibility timeout, it is served again.
+   *
+   * @param aMPC
+   *        The MPC to dequeue from. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper of the current request, used to create the
+   *        attachments. May not be <code>null</code>.
+   * @param aAttachmentsTarget
+   *        The list the payload attachments of the returned user message are
+   *        added to. May not be <code>null</code>.
+   * @return <code>null</code> if no user message is queued for the provided
+   *         MPC or if the store is closed.
+   */
+  @Nullable
+  public Ebms3UserMessage dequeue (@Nonnull final IMPC aMPC,
+                                   @Nonnull final AS4ResourceHelper aResHelper,
+                                   @Nonnull final ICommonsList <WSS4JAttachment> aAttachmentsTarget)
+  {
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+    ValueEnforcer.notNull (aAttachmentsTarget, "AttachmentsTarget");
+    return _dequeue (aMPC, aResHelper, aAttachmentsTarget);
+  }
+
+  @Nullable
+  private Ebms3UserMessage _dequeue (@Nonnull final IMPC aMPC,
+                                     @Nullable final AS4ResourceHelper aResHelper,
+                                     @Nullable final ICommonsList <WSS4JAttachment> aAttachmentsTarget)
+  {
+    ValueEnforcer.notNull (aMPC, "MPC");
+
+    AS4MPCStoreItem aItem;
+    while ((aItem = _pollNextItem (aMPC.getID ())) != null)
+    {
+      try
+      {
+        // Only hand out the attachments of a completely read item
+        final ICommonsList <WSS4JAttachment> aAttachments = aAttachmentsTarget == null ? null
+                                                                                        : new CommonsArrayList <> ();
+        final Ebms3UserMessage ret = _deserialize (aItem, m_aJournal.readPayload (aItem, aResHelper, aAttachments));
+        if (aAttachments != null)
+          aAttachmentsTarget.addAll (aAttachments);
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Dequeued user message '" + aItem.getID () + "' from MPC '" + aMPC.getID () + "'");
+        return ret;
+      }
+      catch (final IOException | RuntimeException ex)
+      {
+        // Don't serve this item again - the journal file is kept for manual
+        // inspection
+        LOGGER.error ("Failed to read " + aItem + " from MPC store journal - skipping it", ex);
+        m_aLock.lock ();
+        try
+        {
+          m_aInFlight.remove (aItem.getID ());
+          m_aAllIDs.remove (aItem.getID ());
+        }
+        finally
+        {
+          m_aLock.unlock ();
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finally remove a pulled user message from the store. This should be
+   * called when the receipt for the user message was received.
+   *
+   * @param sMessageID
+   *        The message ID of the pulled user message, as referenced by the
+   *        receipt. May be <code>null</code>.
+   * @return {@link EChange#CHANGED} if the user message was pulled and is now
+   *         removed, {@link EChange#UNCHANGED} otherwise.
+   */
+  @Nonnull
+  public EChange acknowledge (@Nullable final String sMessageID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+      return EChange.UNCHANGED;
+
+    final InFlightItem aInFlight;
+    m_aLock.lock ();
+    try
+    {
+      // The entry in the deadline queue is removed lazily
+      aInFlight = m_aInFlight.remove (sMessageID);
+      if (aInFlight == null)
+        return EChange.UNCHANGED;
+      m_aAllIDs.remove (sMessageID);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+
+    m_aJournal.delete (aInFlight.m_aItem);
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Acknowledged user message '" + sMessageID + "'");
+    return EChange.CHANGED;
+  }
+
+  /**
+   * @param aMPC
+   *        The MPC to check. May not be <code>null</code>.
+   * @return The number of user messages that can currently be pulled from the
+   *         provided MPC. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getQueuedCount (@Nonnull final IMPC aMPC)
+  {
+    ValueEnforcer.notNull (aMPC, "MPC");
+
+    m_aLock.lock ();
+    try
+    {
+      _requeueExpiredLocked (System.nanoTime ());
+      final Deque <AS4MPCStoreItem> aQueue = m_aQueues.get (aMPC.getID ());
+      return aQueue == null ? 0 : aQueue.size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of user messages that were pulled but are not yet
+   *         acknowledged and whose visibility timeout has not yet passed.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public int getInFlightCount ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      _requeueExpiredLocked (System.nanoTime ());
+      return m_aInFlight.size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The total number of queued and in flight user messages over all
+   *         MPCs. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getPendingCount ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_aAllIDs.size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Close the store. Afterwards no user messages can be enqueued or dequeued
+   * any more. All queued and in flight user messages stay in the journal.
+   */
+  public void close ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      m_bClosed = true;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Journal", m_aJournal)
+                                       .append ("VisibilityTimeoutNanos", m_nVisibilityTimeoutNanos)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.mpc.store;
+
+import java.time.OffsetDateTime;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The in-memory representation of a single user message contained in the
+ * {@link AS4MPCStore}. Only the meta data is kept in memory - the user message
+ * itself is read from the {@link AS4MPCStoreJournal} when it is pulled.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public final class AS4MPCStoreItem implements IHasID <String>
+{
+  private final String m_sID;
+  private final String m_sMPCID;
+  private final long m_nSequence;
+  private final OffsetDateTime m_aCreationDT;
+
+  AS4MPCStoreItem (@Nonnull @Nonempty final String sID,
+                   @Nonnull @Nonempty final String sMPCID,
+                   @Nonnegative final long nSequence,
+                   @Nonnull final OffsetDateTime aCreationDT)
+  {
+    ValueEnforcer.notEmpty (sID, "ID");
+    ValueEnforcer.notEmpty (sMPCID, "MPCID");
+    ValueEnforcer.isGE0 (nSequence, "Sequence");
+    ValueEnforcer.notNull (aCreationDT, "CreationDT");
+    m_sID = sID;
+    m_sMPCID = sMPCID;
+    m_nSequence = nSequence;
+    m_aCreationDT = aCreationDT;
+  }
+
+  /**
+   * @return The AS4 message ID of the contained user message. Neither
+   *         <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return The ID of the MPC the user message is queued in. Neither
+   *         <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getMPCID ()
+  {
+    return m_sMPCID;
+  }
+
+  /**
+   * @return The sequence number that defines the order of the items. It is
+   *         also used as the filename in the journal. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getSequence ()
+  {
+    return m_nSequence;
+  }
+
+  /**
+   * @return The date and time when the item was enqueued. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public OffsetDateTime getCreationDateTime ()
+  {
+    return m_aCreationDT;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ID", m_sID)
+                                       .append ("MPCID", m_sMPCID)
+                                       .append ("Sequence", m_nSequence)
+                                       .append ("CreationDT", m_aCreationDT)
+                                       .getToString ();
+  }
+}
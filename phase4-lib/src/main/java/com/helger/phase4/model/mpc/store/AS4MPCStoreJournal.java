@@ -0,0 +1,483 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.mpc.store;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.HasInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.mail.cte.EContentTransferEncoding;
+import com.helger.phase4.attachment.EAS4CompressionMode;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.util.AS4IOHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * The file based journal of the {@link AS4MPCStore}. Every queued user message
+ * is stored in a separate binary file named after the sequence number of the
+ * item. The file starts with the item meta data, so that the store can be
+ * restored without reading the user messages themselves. The serialized user
+ * message is followed by the payload attachments.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public final class AS4MPCStoreJournal
+{
+  /** The default directory name relative to the data path */
+  public static final String DEFAULT_DIRECTORY_NAME = "mpc-store";
+  /** The file extension of the journal files */
+  public static final String FILE_EXTENSION = ".as4mpc";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4MPCStoreJournal.class);
+  private static final int MAGIC = 0x5034504d;
+  private static final int VERSION = 2;
+  // Version 1 files don't contain attachments
+  private static final int VERSION_WITHOUT_ATTACHMENTS = 1;
+  // The attachment content is written in chunks, as its size is not known in
+  // advance
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int SEQUENCE_DIGITS = 19;
+  private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+  private final File m_aDirectory;
+
+  /**
+   * Constructor
+   *
+   * @param aDirectory
+   *        The directory to store the journal files in. May not be
+   *        <code>null</code>. Is created if it does not exist.
+   */
+  public AS4MPCStoreJournal (@Nonnull final File aDirectory)
+  {
+    ValueEnforcer.notNull (aDirectory, "Directory");
+    m_aDirectory = aDirectory.getAbsoluteFile ();
+    FileOperationManager.INSTANCE.createDirRecursiveIfNotExisting (m_aDirectory);
+  }
+
+  /**
+   * @return The journal directory. Never <code>null</code>.
+   */
+  @Nonnull
+  public File getDirectory ()
+  {
+    return m_aDirectory;
+  }
+
+  @Nonnull
+  private File _getFile (@Nonnull final AS4MPCStoreItem aItem, @Nonnull final String sExtension)
+  {
+    return new File (m_aDirectory, StringHelper.getLeadingZero (aItem.getSequence (), SEQUENCE_DIGITS) + sExtension);
+  }
+
+  private static void _writeString (@Nonnull final DataOutputStream aDOS, @Nonnull final String s) throws IOException
+  {
+    final byte [] aBytes = s.getBytes (StandardCharsets.UTF_8);
+    aDOS.writeInt (aBytes.length);
+    aDOS.write (aBytes);
+  }
+
+  private static void _writeNullableString (@Nonnull final DataOutputStream aDOS,
+                                            @Nullable final String s) throws IOException
+  {
+    aDOS.writeBoolean (s != null);
+    if (s != null)
+      _writeString (aDOS, s);
+  }
+
+  @Nonnull
+  private static String _readString (@Nonnull final DataInputStream aDIS) throws IOException
+  {
+    final byte [] aBytes = new byte [aDIS.readInt ()];
+    aDIS.readFully (aBytes);
+    return new String (aBytes, StandardCharsets.UTF_8);
+  }
+
+  @Nullable
+  private static String _readNullableString (@Nonnull final DataInputStream aDIS) throws IOException
+  {
+    return aDIS.readBoolean () ? _readString (aDIS) : null;
+  }
+
+  private static void _writeAttachment (@Nonnull final DataOutputStream aDOS,
+                                        @Nonnull final WSS4JAttachment aAttachment) throws IOException
+  {
+    final EAS4CompressionMode eCompressionMode = aAttachment.getCompressionMode ();
+    _writeNullableString (aDOS, aAttachment.getId ());
+    _writeNullableString (aDOS, aAttachment.getUncompressedMimeType ());
+    _writeNullableString (aDOS, eCompressionMode == null ? null : eCompressionMode.getID ());
+    _writeNullableString (aDOS, aAttachment.hasCharset () ? aAttachment.getCharsetOrDefault (null).name () : null);
+    _writeString (aDOS, aAttachment.getContentTransferEncoding ().name ());
+
+    final Map <String, String> aHeaders = aAttachment.getHeaders ();
+    aDOS.writeInt (aHeaders.size ());
+    for (final Map.Entry <String, String> aEntry : aHeaders.entrySet ())
+    {
+      _writeString (aDOS, aEntry.getKey ());
+      _writeString (aDOS, aEntry.getValue ());
+    }
+
+    // The content as transmitted (maybe compressed), terminated by an empty
+    // chunk
+    final byte [] aBuffer = new byte [CHUNK_SIZE];
+    try (final InputStream aIS = aAttachment.getSourceStream ())
+    {
+      int nRead;
+      while ((nRead = aIS.read (aBuffer)) >= 0)
+        if (nRead > 0)
+        {
+          aDOS.writeInt (nRead);
+          aDOS.write (aBuffer, 0, nRead);
+        }
+    }
+    aDOS.writeInt (0);
+  }
+
+  @Nonnull
+  private static WSS4JAttachment _readAttachment (@Nonnull final File aFile,
+                                                  @Nonnull final DataInputStream aDIS,
+                                                  @Nonnull final AS4ResourceHelper aResHelper) throws IOException
+  {
+    final String sID = _readNullableString (aDIS);
+    final String sMimeType = _readNullableString (aDIS);
+    final String sCompressionModeID = _readNullableString (aDIS);
+    final String sCharset = _readNullableString (aDIS);
+    final String sCTE = _readString (aDIS);
+
+    final WSS4JAttachment ret = new WSS4JAttachment (aResHelper, sMimeType);
+    ret.setId (sID);
+    if (sCompressionModeID != null)
+    {
+      final EAS4CompressionMode eCompressionMode = EAS4CompressionMode.getFromIDOrNull (sCompressionModeID);
+      if (eCompressionMode == null)
+        throw new IOException ("'" +
+                               aFile.getAbsolutePath () +
+                               "' contains the unknown compression mode '" +
+                               sCompressionModeID +
+                               "'");
+      ret.setCompressionMode (eCompressionMode);
+    }
+    if (sCharset != null)
+      ret.setCharset (Charset.forName (sCharset));
+    ret.setContentTransferEncoding (EContentTransferEncoding.valueOf (sCTE));
+
+    final int nHeaderCount = aDIS.readInt ();
+    for (int i = 0; i < nHeaderCount; ++i)
+      ret.addHeader (_readString (aDIS), _readString (aDIS));
+
+    // Keep small attachments in memory, and use a temporary file of the
+    // request for the others
+    final byte [] aBuffer = new byte [CHUNK_SIZE];
+    final NonBlockingByteArrayOutputStream aBufferOS = new NonBlockingByteArrayOutputStream ();
+    File aTempFile = null;
+    OutputStream aTempOS = null;
+    try
+    {
+      int nChunkSize;
+      while ((nChunkSize = aDIS.readInt ()) > 0)
+      {
+        if (nChunkSize > CHUNK_SIZE)
+          throw new IOException ("'" + aFile.getAbsolutePath () + "' contains an invalid chunk size " + nChunkSize);
+        aDIS.readFully (aBuffer, 0, nChunkSize);
+
+        if (aTempOS == null && !WSS4JAttachment.canBeKeptInMemory (aBufferOS.size () + (long) nChunkSize))
+        {
+          aTempFile = aResHelper.createTempFile ();
+          aTempOS = FileHelper.getBufferedOutputStream (aTempFile);
+          if (aTempOS == null)
+            throw new IOException ("Failed to open '" + aTempFile.getAbsolutePath () + "' for writing");
+          aBufferOS.writeTo (aTempOS);
+          aBufferOS.reset ();
+        }
+        if (aTempOS != null)
+          aTempOS.write (aBuffer, 0, nChunkSize);
+        else
+          aBufferOS.write (aBuffer, 0, nChunkSize);
+      }
+    }
+    finally
+    {
+      if (aTempOS != null)
+        aTempOS.close ();
+    }
+
+    if (aTempFile != null)
+    {
+      final File aRealTempFile = aTempFile;
+      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aRealTempFile)));
+    }
+    else
+    {
+      final byte [] aData = aBufferOS.toByteArray ();
+      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (aData)));
+    }
+    return ret;
+  }
+
+  /**
+   * Write the provided item together with the serialized user message to the
+   * journal.
+   *
+   * @param aItem
+   *        The item to write. May not be <code>null</code>.
+   * @param aPayload
+   *        The serialized user message. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public void write (@Nonnull final AS4MPCStoreItem aItem, @Nonnull final byte [] aPayload) throws IOException
+  {
+    write (aItem, aPayload, null);
+  }
+
+  /**
+   * Write the provided item together with the serialized user message and the
+   * payload attachments to the journal. The attachments are read completely,
+   * so they are not needed after this method returns.
+   *
+   * @param aItem
+   *        The item to write. May not be <code>null</code>.
+   * @param aPayload
+   *        The serialized user message. May not be <code>null</code>.
+   * @param aAttachments
+   *        The payload attachments of the user message. May be
+   *        <code>null</code>.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public void write (@Nonnull final AS4MPCStoreItem aItem,
+                     @Nonnull final byte [] aPayload,
+                     @Nullable final ICommonsList <WSS4JAttachment> aAttachments) throws IOException
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+    ValueEnforcer.notNull (aPayload, "Payload");
+
+    final File aFile = _getFile (aItem, FILE_EXTENSION);
+    final File aTempFile = _getFile (aItem, TEMP_FILE_EXTENSION);
+    final OutputStream aOS = FileHelper.getBufferedOutputStream (aTempFile);
+    if (aOS == null)
+      throw new IOException ("Failed to open '" + aTempFile.getAbsolutePath () + "' for writing");
+
+    try
+    {
+      try (final DataOutputStream aDOS = new DataOutputStream (aOS))
+      {
+        aDOS.writeInt (MAGIC);
+        aDOS.writeInt (VERSION);
+        aDOS.writeLong (aItem.getSequence ());
+        _writeString (aDOS, aItem.getID ());
+        _writeString (aDOS, aItem.getMPCID ());
+        _writeString (aDOS, aItem.getCreationDateTime ().toString ());
+        aDOS.writeInt (aPayload.length);
+        aDOS.write (aPayload);
+
+        aDOS.writeInt (aAttachments == null ? 0 : aAttachments.size ());
+        if (aAttachments != null)
+          for (final WSS4JAttachment aAttachment : aAttachments)
+            _writeAttachment (aDOS, aAttachment);
+      }
+
+      // Make the new file visible at once
+      AS4IOHelper.atomicReplace (aTempFile, aFile);
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      FileOperationManager.INSTANCE.deleteFileIfExisting (aTempFile);
+      throw ex;
+    }
+  }
+
+  @Nonnull
+  private static DataInputStream _open (@Nonnull final File aFile) throws IOException
+  {
+    final InputStream aIS = FileHelper.getBufferedInputStream (aFile);
+    if (aIS == null)
+      throw new IOException ("Failed to open '" + aFile.getAbsolutePath () + "' for reading");
+    return new DataInputStream (aIS);
+  }
+
+  private static int _readVersion (@Nonnull final File aFile, @Nonnull final DataInputStream aDIS) throws IOException
+  {
+    if (aDIS.readInt () != MAGIC)
+      throw new IOException ("'" + aFile.getAbsolutePath () + "' is not an MPC store journal file");
+    final int nVersion = aDIS.readInt ();
+    if (nVersion != VERSION && nVersion != VERSION_WITHOUT_ATTACHMENTS)
+      throw new IOException ("'" + aFile.getAbsolutePath () + "' has the unsupported version " + nVersion);
+    return nVersion;
+  }
+
+  @Nonnull
+  private static AS4MPCStoreItem _readItem (@Nonnull final DataInputStream aDIS) throws IOException
+  {
+    final long nSequence = aDIS.readLong ();
+    final String sID = _readString (aDIS);
+    final String sMPCID = _readString (aDIS);
+    final OffsetDateTime aCreationDT = OffsetDateTime.parse (_readString (aDIS));
+    return new AS4MPCStoreItem (sID, sMPCID, nSequence, aCreationDT);
+  }
+
+  /**
+   * Read the meta data of all items from the journal, ordered by sequence
+   * number. The user messages themselves are not read. Files that cannot be
+   * read are logged and skipped.
+   *
+   * @return The list of all items. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <AS4MPCStoreItem> readAll ()
+  {
+    final ICommonsList <AS4MPCStoreItem> ret = new CommonsArrayList <> ();
+    final File [] aFiles = m_aDirectory.listFiles ( (d, sName) -> sName.endsWith (FILE_EXTENSION));
+    if (aFiles != null)
+      for (final File aFile : aFiles)
+        try (final DataInputStream aDIS = _open (aFile))
+        {
+          _readVersion (aFile, aDIS);
+          ret.add (_readItem (aDIS));
+        }
+        catch (final IOException | RuntimeException ex)
+        {
+          LOGGER.error ("Failed to read MPC store journal file '" + aFile.getAbsolutePath () + "'", ex);
+        }
+    ret.sort ( (a, b) -> Long.compare (a.getSequence (), b.getSequence ()));
+    return ret;
+  }
+
+  /**
+   * Read the serialized user message of the provided item.
+   *
+   * @param aItem
+   *        The item to read. May not be <code>null</code>.
+   * @return The serialized user message as provided to
+   *         {@link #write(AS4MPCStoreItem, byte[])}. Never <code>null</code>.
+   * @throws IOException
+   *         In case of a read error or if the file does not belong to the
+   *         provided item
+   */
+  @Nonnull
+  public byte [] readPayload (@Nonnull final AS4MPCStoreItem aItem) throws IOException
+  {
+    return readPayload (aItem, null, null);
+  }
+
+  /**
+   * Read the serialized user message and optionally the payload attachments
+   * of the provided item.
+   *
+   * @param aItem
+   *        The item to read. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to create the attachments with. Larger
+   *        attachments are copied to temporary files of it. May only be
+   *        <code>null</code> if the attachment target is <code>null</code>.
+   * @param aAttachmentsTarget
+   *        The list the restored attachments are added to. May be
+   *        <code>null</code> if the attachments are not needed.
+   * @return The serialized user message as provided to
+   *         {@link #write(AS4MPCStoreItem, byte[], ICommonsList)}. Never
+   *         <code>null</code>.
+   * @throws IOException
+   *         In case of a read error or if the file does not belong to the
+   *         provided item
+   */
+  @Nonnull
+  public byte [] readPayload (@Nonnull final AS4MPCStoreItem aItem,
+                              @Nullable final AS4ResourceHelper aResHelper,
+                              @Nullable final ICommonsList <WSS4JAttachment> aAttachmentsTarget) throws IOException
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+    if (aAttachmentsTarget != null)
+      ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    final File aFile = _getFile (aItem, FILE_EXTENSION);
+    try (final DataInputStream aDIS = _open (aFile))
+    {
+      final int nVersion = _readVersion (aFile, aDIS);
+      final AS4MPCStoreItem aReadItem = _readItem (aDIS);
+      if (!aReadItem.getID ().equals (aItem.getID ()))
+        throw new IOException ("'" + aFile.getAbsolutePath () + "' contains the unexpected item ID '" + aReadItem.getID () + "'");
+
+      final byte [] ret = new byte [aDIS.readInt ()];
+      aDIS.readFully (ret);
+
+      if (aAttachmentsTarget != null && nVersion != VERSION_WITHOUT_ATTACHMENTS)
+      {
+        final int nAttachmentCount = aDIS.readInt ();
+        for (int i = 0; i < nAttachmentCount; ++i)
+          aAttachmentsTarget.add (_readAttachment (aFile, aDIS, aResHelper));
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * Remove the item from the journal, after its receipt was received.
+   *
+   * @param aItem
+   *        The item to remove. May not be <code>null</code>.
+   */
+  public void delete (@Nonnull final AS4MPCStoreItem aItem)
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+    FileOperationManager.INSTANCE.deleteFileIfExisting (_getFile (aItem, FILE_EXTENSION));
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Directory", m_aDirectory).getToString ();
+  }
+
+  /**
+   * @return A new journal in the default directory below
+   *         {@link AS4Configuration#getDataPath()}. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4MPCStoreJournal createDefault ()
+  {
+    return new AS4MPCStoreJournal (new File (AS4Configuration.getDataPath (), DEFAULT_DIRECTORY_NAME));
+  }
+}
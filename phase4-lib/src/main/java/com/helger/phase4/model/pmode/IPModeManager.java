@@ -22,6 +22,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.equals.EqualsHelper;
@@ -120,6 +121,51 @@ public interface IPModeManager
     });
   }
 
+  /**
+   * Get all PModes that have the provided initiator ID.
+   *
+   * @param sInitiatorID
+   *        The initiator ID to be searched. May be <code>null</code>.
+   * @return A non-<code>null</code> but maybe empty list.
+   * @since 2.1.3
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsList <IPMode> getAllPModesOfInitiatorID (@Nullable final String sInitiatorID)
+  {
+    return getAll ().getAll (x -> x.hasInitiatorID (sInitiatorID));
+  }
+
+  /**
+   * Get all PModes that have the provided responder ID.
+   *
+   * @param sResponderID
+   *        The responder ID to be searched. May be <code>null</code>.
+   * @return A non-<code>null</code> but maybe empty list.
+   * @since 2.1.3
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsList <IPMode> getAllPModesOfResponderID (@Nullable final String sResponderID)
+  {
+    return getAll ().getAll (x -> x.hasResponderID (sResponderID));
+  }
+
+  /**
+   * Get a counter that is incremented on every modification done via this
+   * manager. It is used by callers to detect whether cached lookup results are
+   * still valid.
+   *
+   * @return The current change count or a negative value if the
+   *         implementation does not track changes. In the latter case callers
+   *         must not cache any lookup results.
+   * @since 2.1.3
+   */
+  default long getChangeCount ()
+  {
+    return -1;
+  }
+
   /**
    * Get a predicate that matches a PMode by ID, initiator ID and responder ID?
    *
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.pmode;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.model.pmode.leg.PModeLeg;
+import com.helger.phase4.model.pmode.leg.PModeLegBusinessInformation;
+
+/**
+ * An immutable snapshot of secondary indexes over a set of PModes. It is used
+ * by the PMode managers to avoid linear searches. The managers rebuild the
+ * index lazily after each modification, identified by the change count.<br>
+ * Note: PModes that are modified without using the PMode manager are not
+ * re-indexed.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public final class PModeIndex
+{
+  private final long m_nChangeCount;
+  private final int m_nCount;
+  private final ICommonsMap <String, ICommonsList <IPMode>> m_aByServiceAndAction = new CommonsHashMap <> ();
+  private final ICommonsMap <String, ICommonsList <IPMode>> m_aByInitiatorID = new CommonsHashMap <> ();
+  private final ICommonsMap <String, ICommonsList <IPMode>> m_aByResponderID = new CommonsHashMap <> ();
+
+  /**
+   * Constructor
+   *
+   * @param aPModes
+   *        All PModes to be indexed. May not be <code>null</code>.
+   * @param nChangeCount
+   *        The change count of the PMode manager at the time the PModes were
+   *        retrieved.
+   */
+  public PModeIndex (@Nonnull final Iterable <? extends IPMode> aPModes, final long nChangeCount)
+  {
+    ValueEnforcer.notNull (aPModes, "PModes");
+    m_nChangeCount = nChangeCount;
+    int nCount = 0;
+    for (final IPMode aPMode : aPModes)
+    {
+      final PModeLegBusinessInformation aBI = _getLeg1BusinessInfo (aPMode);
+      if (aBI != null)
+        m_aByServiceAndAction.computeIfAbsent (_getKey (aBI.getService (), aBI.getAction ()), k -> new CommonsArrayList <> ())
+                             .add (aPMode);
+      m_aByInitiatorID.computeIfAbsent (_getKey (aPMode.getInitiatorID ()), k -> new CommonsArrayList <> ()).add (aPMode);
+      m_aByResponderID.computeIfAbsent (_getKey (aPMode.getResponderID ()), k -> new CommonsArrayList <> ()).add (aPMode);
+      nCount++;
+    }
+    m_nCount = nCount;
+  }
+
+  @Nullable
+  private static PModeLegBusinessInformation _getLeg1BusinessInfo (@Nonnull final IPMode aPMode)
+  {
+    final PModeLeg aLeg = aPMode.getLeg1 ();
+    return aLeg == null ? null : aLeg.getBusinessInfo ();
+  }
+
+  @Nonnull
+  private static String _getKey (@Nullable final String... aParts)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (final String sPart : aParts)
+    {
+      // Distinguish null from the empty string
+      if (sPart == null)
+        aSB.append ('\u0001');
+      else
+        aSB.append (sPart);
+      aSB.append ('\u0000');
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * @return The change count of the PMode manager this index was built for.
+   */
+  public long getChangeCount ()
+  {
+    return m_nChangeCount;
+  }
+
+  /**
+   * @return The number of indexed PModes.
+   */
+  public int getCount ()
+  {
+    return m_nCount;
+  }
+
+  /**
+   * Find the first PMode that has the provided service and action in leg 1.
+   *
+   * @param sService
+   *        The service to be searched. May be <code>null</code>.
+   * @param sAction
+   *        The action to be searched. May be <code>null</code>.
+   * @return <code>null</code> if no such PMode exists.
+   * @see IPModeManager#getPModeOfServiceAndAction(String, String)
+   */
+  @Nullable
+  public IPMode getFirstOfServiceAndAction (@Nullable final String sService, @Nullable final String sAction)
+  {
+    final ICommonsList <IPMode> aCandidates = m_aByServiceAndAction.get (_getKey (sService, sAction));
+    if (aCandidates != null)
+      for (final IPMode aPMode : aCandidates)
+      {
+        // Double check in case the PMode was modified in between
+        final PModeLegBusinessInformation aBI = _getLeg1BusinessInfo (aPMode);
+        if (aBI != null && EqualsHelper.equals (aBI.getService (), sService) && EqualsHelper.equals (aBI.getAction (), sAction))
+          return aPMode;
+      }
+    return null;
+  }
+
+  /**
+   * @param sInitiatorID
+   *        The initiator party ID to search. May be <code>null</code>.
+   * @return All PModes with the provided initiator ID. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IPMode> getAllOfInitiatorID (@Nullable final String sInitiatorID)
+  {
+    final ICommonsList <IPMode> aCandidates = m_aByInitiatorID.get (_getKey (sInitiatorID));
+    return aCandidates == null ? new CommonsArrayList <> () : aCandidates.getAll (x -> x.hasInitiatorID (sInitiatorID));
+  }
+
+  /**
+   * @param sResponderID
+   *        The responder party ID to search. May be <code>null</code>.
+   * @return All PModes with the provided responder ID. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IPMode> getAllOfResponderID (@Nullable final String sResponderID)
+  {
+    final ICommonsList <IPMode> aCandidates = m_aByResponderID.get (_getKey (sResponderID));
+    return aCandidates == null ? new CommonsArrayList <> () : aCandidates.getAll (x -> x.hasResponderID (sResponderID));
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ChangeCount", m_nChangeCount)
+                                       .append ("Count", m_nCount)
+                                       .append ("ServiceAndActionKeys", m_aByServiceAndAction.size ())
+                                       .getToString ();
+  }
+}
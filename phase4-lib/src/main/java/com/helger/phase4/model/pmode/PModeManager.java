@@ -16,6 +16,7 @@
  */
 package com.helger.phase4.model.pmode;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
@@ -28,6 +29,8 @@ import org.slf4j.LoggerFactory;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ELockType;
 import com.helger.commons.annotation.MustBeLocked;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.state.EChange;
 import com.helger.dao.DAOException;
 import com.helger.photon.app.dao.AbstractPhotonMapBasedWALDAO;
@@ -44,6 +47,10 @@ public class PModeManager extends AbstractPhotonMapBasedWALDAO <IPMode, PMode> i
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (PModeManager.class);
 
+  private final AtomicLong m_aChangeCount = new AtomicLong (0);
+  // Lazily rebuilt after each modification
+  private volatile PModeIndex m_aIndex;
+
   public PModeManager (@Nullable final String sFilename) throws DAOException
   {
     super (PMode.class, sFilename);
@@ -65,6 +72,7 @@ public class PModeManager extends AbstractPhotonMapBasedWALDAO <IPMode, PMode> i
   private void _createPModeLocked (@Nonnull final PMode aPMode)
   {
     internalCreateItem (aPMode);
+    m_aChangeCount.incrementAndGet ();
     AuditHelper.onAuditCreateSuccess (PMode.OT, aPMode.getID ());
 
     if (LOGGER.isDebugEnabled ())
@@ -114,6 +122,7 @@ public class PModeManager extends AbstractPhotonMapBasedWALDAO <IPMode, PMode> i
         return EChange.UNCHANGED;
 
       BusinessObjectHelper.setLastModificationNow (aExistingPMode);
+      m_aChangeCount.incrementAndGet ();
       internalUpdateItem (aExistingPMode);
     }
     finally
@@ -128,6 +137,14 @@ public class PModeManager extends AbstractPhotonMapBasedWALDAO <IPMode, PMode> i
     return EChange.CHANGED;
   }
 
+  @Nullable
+  private IPMode _getExisting (@Nonnull final String sID, @Nonnull final Predicate <IPMode> aFilter)
+  {
+    // The filter requires a matching ID so no need to scan all PModes
+    final IPMode ret = getOfID (sID);
+    return ret != null && aFilter.test (ret) ? ret : null;
+  }
+
   @Nonnull
   public void createOrUpdatePMode (@Nonnull final PMode aPMode)
   {
@@ -136,14 +153,14 @@ public class PModeManager extends AbstractPhotonMapBasedWALDAO <IPMode, PMode> i
 
     // Try in read-lock
     final Predicate <IPMode> aFilter = IPModeManager.getPModeFilter (aPMode.getID (), aPMode.getInitiatorID (), aPMode.getResponderID ());
-    IPMode aExisting = findFirst (aFilter);
+    IPMode aExisting = _getExisting (aPMode.getID (), aFilter);
     if (aExisting == null)
     {
       m_aRWLock.writeLock ().lock ();
       try
       {
         // Try again in write lock
-        aExisting = findFirst (aFilter);
+        aExisting = _getExisting (aPMode.getID (), aFilter);
         if (aExisting == null)
         {
           // Create a new one
@@ -180,6 +197,7 @@ public class PModeManager extends AbstractPhotonMapBasedWALDAO <IPMode, PMode> i
         return EChange.UNCHANGED;
       }
       internalMarkItemDeleted (aDeletedPMode);
+      m_aChangeCount.incrementAndGet ();
     }
     finally
     {
@@ -207,6 +225,7 @@ public class PModeManager extends AbstractPhotonMapBasedWALDAO <IPMode, PMode> i
     try
     {
       internalDeleteItem (sPModeID);
+      m_aChangeCount.incrementAndGet ();
     }
     finally
     {
@@ -222,4 +241,46 @@ public class PModeManager extends AbstractPhotonMapBasedWALDAO <IPMode, PMode> i
   {
     return getOfID (sID);
   }
+
+  @Nonnull
+  private PModeIndex _getIndex ()
+  {
+    PModeIndex ret = m_aIndex;
+    if (ret == null || ret.getChangeCount () != m_aChangeCount.get ())
+    {
+      // Read the change count together with the PModes, so that concurrent
+      // modifications lead to another rebuild on the next access
+      ret = m_aRWLock.readLockedGet ( () -> new PModeIndex (getAll (), m_aChangeCount.get ()));
+      m_aIndex = ret;
+    }
+    return ret;
+  }
+
+  public long getChangeCount ()
+  {
+    return m_aChangeCount.get ();
+  }
+
+  @Override
+  @Nullable
+  public IPMode getPModeOfServiceAndAction (@Nullable final String sService, @Nullable final String sAction)
+  {
+    return _getIndex ().getFirstOfServiceAndAction (sService, sAction);
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IPMode> getAllPModesOfInitiatorID (@Nullable final String sInitiatorID)
+  {
+    return _getIndex ().getAllOfInitiatorID (sInitiatorID);
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IPMode> getAllPModesOfResponderID (@Nullable final String sResponderID)
+  {
+    return _getIndex ().getAllOfResponderID (sResponderID);
+  }
 }
@@ -16,6 +16,7 @@
  */
 package com.helger.phase4.model.pmode;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
@@ -54,6 +55,9 @@ public class PModeManagerInMemory implements IPModeManager
   private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
   @GuardedBy ("m_aRWLock")
   private final ICommonsMap <String, PMode> m_aMap = new CommonsHashMap <> ();
+  private final AtomicLong m_aChangeCount = new AtomicLong (0);
+  // Lazily rebuilt after each modification
+  private volatile PModeIndex m_aIndex;
 
   public PModeManagerInMemory ()
   {}
@@ -77,6 +81,7 @@ public class PModeManagerInMemory implements IPModeManager
     if (m_aMap.containsKey (sID))
       throw new IllegalArgumentException ("An object with ID '" + sID + "' is already contained!");
     m_aMap.put (sID, aPMode);
+    m_aChangeCount.incrementAndGet ();
 
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Created PMode with ID '" + aPMode.getID () + "'");
@@ -117,6 +122,7 @@ public class PModeManagerInMemory implements IPModeManager
         return EChange.UNCHANGED;
 
       BusinessObjectHelper.setLastModificationNow (aExistingPMode);
+      m_aChangeCount.incrementAndGet ();
     }
     finally
     {
@@ -129,6 +135,14 @@ public class PModeManagerInMemory implements IPModeManager
     return EChange.CHANGED;
   }
 
+  @Nullable
+  private IPMode _getExisting (@Nonnull final String sID, @Nonnull final Predicate <IPMode> aFilter)
+  {
+    // The filter requires a matching ID so no need to scan all PModes
+    final IPMode ret = getOfID (sID);
+    return ret != null && aFilter.test (ret) ? ret : null;
+  }
+
   @Nonnull
   public void createOrUpdatePMode (@Nonnull final PMode aPMode)
   {
@@ -137,14 +151,14 @@ public class PModeManagerInMemory implements IPModeManager
 
     // Try in read-lock
     final Predicate <IPMode> aFilter = IPModeManager.getPModeFilter (aPMode.getID (), aPMode.getInitiatorID (), aPMode.getResponderID ());
-    IPMode aExisting = findFirst (aFilter);
+    IPMode aExisting = _getExisting (aPMode.getID (), aFilter);
     if (aExisting == null)
     {
       m_aRWLock.writeLock ().lock ();
       try
       {
         // Try again in write lock
-        aExisting = findFirst (aFilter);
+        aExisting = _getExisting (aPMode.getID (), aFilter);
         if (aExisting == null)
         {
           // Create a new one
@@ -174,6 +188,7 @@ public class PModeManagerInMemory implements IPModeManager
     {
       if (BusinessObjectHelper.setDeletionNow (aDeletedPMode).isUnchanged ())
         return EChange.UNCHANGED;
+      m_aChangeCount.incrementAndGet ();
     }
     finally
     {
@@ -197,6 +212,7 @@ public class PModeManagerInMemory implements IPModeManager
     try
     {
       m_aMap.remove (sPModeID);
+      m_aChangeCount.incrementAndGet ();
     }
     finally
     {
@@ -220,6 +236,48 @@ public class PModeManagerInMemory implements IPModeManager
     return getOfID (sID);
   }
 
+  @Nonnull
+  private PModeIndex _getIndex ()
+  {
+    PModeIndex ret = m_aIndex;
+    if (ret == null || ret.getChangeCount () != m_aChangeCount.get ())
+    {
+      // Read the change count together with the PModes, so that concurrent
+      // modifications lead to another rebuild on the next access
+      ret = m_aRWLock.readLockedGet ( () -> new PModeIndex (m_aMap.values (), m_aChangeCount.get ()));
+      m_aIndex = ret;
+    }
+    return ret;
+  }
+
+  public long getChangeCount ()
+  {
+    return m_aChangeCount.get ();
+  }
+
+  @Override
+  @Nullable
+  public IPMode getPModeOfServiceAndAction (@Nullable final String sService, @Nullable final String sAction)
+  {
+    return _getIndex ().getFirstOfServiceAndAction (sService, sAction);
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IPMode> getAllPModesOfInitiatorID (@Nullable final String sInitiatorID)
+  {
+    return _getIndex ().getAllOfInitiatorID (sInitiatorID);
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IPMode> getAllPModesOfResponderID (@Nullable final String sResponderID)
+  {
+    return _getIndex ().getAllOfResponderID (sResponderID);
+  }
+
   @Nullable
   public IPMode findFirst (@Nonnull final Predicate <? super IPMode> aFilter)
   {
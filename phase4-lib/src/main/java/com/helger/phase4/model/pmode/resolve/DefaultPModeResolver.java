@@ -16,10 +16,21 @@
  */
 package com.helger.phase4.model.pmode.resolve;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
 import com.helger.commons.string.StringHelper;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.model.pmode.DefaultPMode;
@@ -29,20 +40,123 @@ import com.helger.phase4.profile.IAS4Profile;
 
 /**
  * Default implementation of {@link IPModeResolver} using the fixed ID only. If
- * no ID is provided the default pmode is used.
+ * no ID is provided the default pmode is used.<br>
+ * Since v2.1.3 the results of the lookups without an explicit PMode ID are
+ * cached in a bounded LRU cache. The cache is invalidated as soon as the PMode
+ * manager reports a change or the default profile changes. Note: cached PModes
+ * (including the ones created from the profile template) are shared between
+ * all callers and must not be modified.
  *
  * @author bayerlma
  * @author Philip Helger
  */
+@ThreadSafe
 public class DefaultPModeResolver implements IPModeResolver
 {
+  /**
+   * The default maximum number of cached resolution results.
+   *
+   * @since 2.1.3
+   */
+  public static final int DEFAULT_MAX_CACHE_SIZE = 1_000;
+
   public static final IPModeResolver DEFAULT_PMODE_RESOLVER = new DefaultPModeResolver (false);
 
+  @Immutable
+  private static final class CacheKey
+  {
+    private final String m_sService;
+    private final String m_sAction;
+    private final String m_sInitiatorID;
+    private final String m_sResponderID;
+    private final String m_sAddress;
+    private final int m_nHashCode;
+
+    CacheKey (@Nullable final String sService,
+              @Nullable final String sAction,
+              @Nullable final String sInitiatorID,
+              @Nullable final String sResponderID,
+              @Nullable final String sAddress)
+    {
+      m_sService = sService;
+      m_sAction = sAction;
+      m_sInitiatorID = sInitiatorID;
+      m_sResponderID = sResponderID;
+      m_sAddress = sAddress;
+      m_nHashCode = new HashCodeGenerator (this).append (sService)
+                                                .append (sAction)
+                                                .append (sInitiatorID)
+                                                .append (sResponderID)
+                                                .append (sAddress)
+                                                .getHashCode ();
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final CacheKey rhs = (CacheKey) o;
+      return EqualsHelper.equals (m_sService, rhs.m_sService) &&
+             EqualsHelper.equals (m_sAction, rhs.m_sAction) &&
+             EqualsHelper.equals (m_sInitiatorID, rhs.m_sInitiatorID) &&
+             EqualsHelper.equals (m_sResponderID, rhs.m_sResponderID) &&
+             EqualsHelper.equals (m_sAddress, rhs.m_sAddress);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_nHashCode;
+    }
+  }
+
   private final boolean m_bUseDefaultAsFallback;
+  private final int m_nMaxCacheSize;
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  @GuardedBy ("m_aRWLock")
+  private final Map <CacheKey, IPMode> m_aCache;
+  // The state for which the cache content is valid
+  @GuardedBy ("m_aRWLock")
+  private IPModeManager m_aCachePModeMgr;
+  @GuardedBy ("m_aRWLock")
+  private long m_nCacheChangeCount = -1;
+  @GuardedBy ("m_aRWLock")
+  private IAS4Profile m_aCacheProfile;
 
   public DefaultPModeResolver (final boolean bUseDefaultAsFallback)
   {
+    this (bUseDefaultAsFallback, DEFAULT_MAX_CACHE_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param bUseDefaultAsFallback
+   *        <code>true</code> to create the default PMode if nothing else
+   *        matches.
+   * @param nMaxCacheSize
+   *        The maximum number of cached resolution results. Use 0 to disable
+   *        caching.
+   * @since 2.1.3
+   */
+  public DefaultPModeResolver (final boolean bUseDefaultAsFallback, @Nonnegative final int nMaxCacheSize)
+  {
+    ValueEnforcer.isGE0 (nMaxCacheSize, "MaxCacheSize");
     m_bUseDefaultAsFallback = bUseDefaultAsFallback;
+    m_nMaxCacheSize = nMaxCacheSize;
+    // Access order for LRU eviction
+    m_aCache = new LinkedHashMap <CacheKey, IPMode> (16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry (final Map.Entry <CacheKey, IPMode> aEldest)
+      {
+        return size () > m_nMaxCacheSize;
+      }
+    };
   }
 
   public final boolean isUseDefaultAsFallback ()
@@ -50,6 +164,91 @@ public class DefaultPModeResolver implements IPModeResolver
     return m_bUseDefaultAsFallback;
   }
 
+  /**
+   * @return The maximum number of cached resolution results. 0 means caching
+   *         is disabled.
+   * @since 2.1.3
+   */
+  @Nonnegative
+  public final int getMaxCacheSize ()
+  {
+    return m_nMaxCacheSize;
+  }
+
+  /**
+   * Remove all cached resolution results. This is only needed if PModes are
+   * modified without using the PMode manager.
+   *
+   * @since 2.1.3
+   */
+  public void clearCache ()
+  {
+    m_aRWLock.writeLocked (m_aCache::clear);
+  }
+
+  @Nullable
+  private IPMode _getCached (@Nonnull final CacheKey aKey,
+                             @Nonnull final IPModeManager aPModeMgr,
+                             final long nChangeCount,
+                             @Nullable final IAS4Profile aProfile)
+  {
+    // Write lock, because the access order is modified
+    return m_aRWLock.writeLockedGet ( () -> {
+      if (m_aCachePModeMgr != aPModeMgr || m_nCacheChangeCount != nChangeCount || m_aCacheProfile != aProfile)
+      {
+        // Something changed - start over
+        m_aCache.clear ();
+        m_aCachePModeMgr = aPModeMgr;
+        m_nCacheChangeCount = nChangeCount;
+        m_aCacheProfile = aProfile;
+        return null;
+      }
+      return m_aCache.get (aKey);
+    });
+  }
+
+  private void _putCached (@Nonnull final CacheKey aKey,
+                           @Nonnull final IPMode aPMode,
+                           @Nonnull final IPModeManager aPModeMgr,
+                           final long nChangeCount,
+                           @Nullable final IAS4Profile aProfile)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      // Only cache if the state is still the same as on lookup
+      if (m_aCachePModeMgr == aPModeMgr && m_nCacheChangeCount == nChangeCount && m_aCacheProfile == aProfile)
+        m_aCache.put (aKey, aPMode);
+    });
+  }
+
+  @Nullable
+  private IPMode _resolve (@Nonnull final IPModeManager aPModeMgr,
+                           @Nullable final IAS4Profile aProfile,
+                           @Nonnull final String sService,
+                           @Nonnull final String sAction,
+                           @Nonnull @Nonempty final String sInitiatorID,
+                           @Nonnull @Nonempty final String sResponderID,
+                           @Nullable final String sAddress)
+  {
+    // the PMode id field is empty or null (or invalid)
+    // try a combination of service and action
+    final IPMode ret = aPModeMgr.getPModeOfServiceAndAction (sService, sAction);
+    if (ret != null)
+      return ret;
+
+    // Use default pmode based on profile
+    if (aProfile != null)
+      return aProfile.createPModeTemplate (sInitiatorID, sResponderID, sAddress);
+
+    if (!m_bUseDefaultAsFallback)
+    {
+      // Not found and no default -> null
+      return null;
+    }
+
+    // 2. Default default PMode
+    return DefaultPMode.getOrCreateDefaultPMode (sInitiatorID, sResponderID, sAddress, true);
+  }
+
   @Nullable
   public IPMode getPModeOfID (@Nullable final String sPModeID,
                               @Nonnull final String sService,
@@ -69,24 +268,22 @@ public class DefaultPModeResolver implements IPModeResolver
         return ret;
     }
 
-    // the PMode id field is empty or null (or invalid)
-    // try a combination of service and action
-    ret = aPModeMgr.getPModeOfServiceAndAction (sService, sAction);
-    if (ret != null)
-      return ret;
-
-    // Use default pmode based on profile
     final IAS4Profile aProfile = MetaAS4Manager.getProfileMgr ().getDefaultProfileOrNull ();
-    if (aProfile != null)
-      return aProfile.createPModeTemplate (sInitiatorID, sResponderID, sAddress);
 
-    if (!m_bUseDefaultAsFallback)
+    // Caching is only possible if the PMode manager tracks changes
+    final long nChangeCount = m_nMaxCacheSize > 0 ? aPModeMgr.getChangeCount () : -1;
+    if (nChangeCount < 0)
+      return _resolve (aPModeMgr, aProfile, sService, sAction, sInitiatorID, sResponderID, sAddress);
+
+    final CacheKey aKey = new CacheKey (sService, sAction, sInitiatorID, sResponderID, sAddress);
+    ret = _getCached (aKey, aPModeMgr, nChangeCount, aProfile);
+    if (ret == null)
     {
-      // Not found and no default -> null
-      return null;
+      ret = _resolve (aPModeMgr, aProfile, sService, sAction, sInitiatorID, sResponderID, sAddress);
+      // Don't cache if the resolution itself modified the PModes
+      if (ret != null && aPModeMgr.getChangeCount () == nChangeCount)
+        _putCached (aKey, ret, aPModeMgr, nChangeCount, aProfile);
     }
-
-    // 2. Default default PMode
-    return DefaultPMode.getOrCreateDefaultPMode (sInitiatorID, sResponderID, sAddress, true);
+    return ret;
   }
 }
@@ -18,6 +18,9 @@ package com.helger.phase4.sender;
 
 import java.io.IOException;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -53,6 +56,8 @@ import com.helger.phase4.model.pmode.resolve.IPModeResolver;
 import com.helger.phase4.servlet.AS4IncomingHandler;
 import com.helger.phase4.servlet.AS4IncomingMessageMetadata;
 import com.helger.phase4.servlet.IAS4IncomingProfileSelector;
+import com.helger.phase4.tracing.AS4TracingManager;
+import com.helger.phase4.tracing.IAS4Span;
 import com.helger.phase4.util.Phase4Exception;
 
 import jakarta.mail.MessagingException;
@@ -69,22 +74,7 @@ public final class AS4BidirectionalClientHelper
   private AS4BidirectionalClientHelper ()
   {}
 
-  public static void sendAS4UserMessageAndReceiveAS4SignalMessage (@Nonnull final IAS4CryptoFactory aCryptoFactory,
-                                                                   @Nonnull final IPModeResolver aPModeResolver,
-                                                                   @Nonnull final IAS4IncomingAttachmentFactory aIAF,
-                                                                   @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
-                                                                   @Nonnull final AS4ClientUserMessage aClientUserMsg,
-                                                                   @Nonnull final Locale aLocale,
-                                                                   @Nonnull final String sURL,
-                                                                   @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
-                                                                   @Nullable final IAS4OutgoingDumper aOutgoingDumper,
-                                                                   @Nullable final IAS4IncomingDumper aIncomingDumper,
-                                                                   @Nullable final IAS4RetryCallback aRetryCallback,
-                                                                   @Nullable final IAS4RawResponseConsumer aResponseConsumer,
-                                                                   @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer) throws IOException,
-                                                                                                                                 Phase4Exception,
-                                                                                                                                 WSSecurityException,
-                                                                                                                                 MessagingException
+  private static void _logUserMessage (@Nonnull final AS4ClientUserMessage aClientUserMsg, @Nonnull final String sURL)
   {
     LOGGER.info ("Sending AS4 UserMessage to '" +
                  sURL +
@@ -117,9 +107,12 @@ public final class AS4BidirectionalClientHelper
                       "]");
       }
     }
+  }
 
-    final Wrapper <HttpResponse> aWrappedResponse = new Wrapper <> ();
-    final HttpClientResponseHandler <byte []> aResponseHdl = aHttpResponse -> {
+  @Nonnull
+  private static HttpClientResponseHandler <byte []> _createResponseHandler (@Nonnull final Wrapper <HttpResponse> aWrappedResponse)
+  {
+    return aHttpResponse -> {
       // throws an ExtendedHttpResponseException on exception
       final HttpEntity aEntity = ResponseHandlerHttpEntity.INSTANCE.handleResponse (aHttpResponse);
       if (aEntity == null)
@@ -127,12 +120,21 @@ public final class AS4BidirectionalClientHelper
       aWrappedResponse.set (aHttpResponse);
       return EntityUtils.toByteArray (aEntity);
     };
+  }
 
-    final AS4ClientSentMessage <byte []> aResponseEntity = aClientUserMsg.sendMessageWithRetries (sURL,
-                                                                                                  aResponseHdl,
-                                                                                                  aBuildMessageCallback,
-                                                                                                  aOutgoingDumper,
-                                                                                                  aRetryCallback);
+  private static void _handleUserMessageResponse (@Nonnull final IAS4CryptoFactory aCryptoFactory,
+                                                  @Nonnull final IPModeResolver aPModeResolver,
+                                                  @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                  @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                  @Nonnull final AS4ClientUserMessage aClientUserMsg,
+                                                  @Nonnull final Locale aLocale,
+                                                  @Nonnull final String sURL,
+                                                  @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                  @Nullable final IAS4RawResponseConsumer aResponseConsumer,
+                                                  @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer,
+                                                  @Nonnull final AS4ClientSentMessage <byte []> aResponseEntity,
+                                                  @Nullable final HttpResponse aHttpResponse) throws Phase4Exception
+  {
     final String sRequestMessageID = aResponseEntity.getMessageID ();
     LOGGER.info ("Successfully transmitted AS4 UserMessage with message ID '" +
                  sRequestMessageID +
@@ -159,7 +161,7 @@ public final class AS4BidirectionalClientHelper
                                                                                        aClientUserMsg.getPMode (),
                                                                                        aLocale,
                                                                                        aMessageMetadata,
-                                                                                       aWrappedResponse.get (),
+                                                                                       aHttpResponse,
                                                                                        aResponseEntity.getResponse (),
                                                                                        aIncomingDumper);
       if (aSignalMessage != null && aSignalMsgConsumer != null)
@@ -169,6 +171,128 @@ public final class AS4BidirectionalClientHelper
       LOGGER.info ("AS4 ResponseEntity is empty");
   }
 
+  public static void sendAS4UserMessageAndReceiveAS4SignalMessage (@Nonnull final IAS4CryptoFactory aCryptoFactory,
+                                                                   @Nonnull final IPModeResolver aPModeResolver,
+                                                                   @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                                   @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                                   @Nonnull final AS4ClientUserMessage aClientUserMsg,
+                                                                   @Nonnull final Locale aLocale,
+                                                                   @Nonnull final String sURL,
+                                                                   @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
+                                                                   @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                   @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                                   @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                   @Nullable final IAS4RawResponseConsumer aResponseConsumer,
+                                                                   @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer) throws IOException,
+                                                                                                                                 Phase4Exception,
+                                                                                                                                 WSSecurityException,
+                                                                                                                                 MessagingException
+  {
+    _logUserMessage (aClientUserMsg, sURL);
+
+    final Wrapper <HttpResponse> aWrappedResponse = new Wrapper <> ();
+    final HttpClientResponseHandler <byte []> aResponseHdl = _createResponseHandler (aWrappedResponse);
+
+    try (final IAS4Span aSpan = AS4TracingManager.startSpan ("phase4.client.usermessage"))
+    {
+      aSpan.setAttribute (AS4TracingManager.ATTR_URL, sURL)
+           .setAttribute (AS4TracingManager.ATTR_REF_TO_MESSAGE_ID, aClientUserMsg.getRefToMessageID ());
+      try
+      {
+        final AS4ClientSentMessage <byte []> aResponseEntity = aClientUserMsg.sendMessageWithRetries (sURL,
+                                                                                                      aResponseHdl,
+                                                                                                      aBuildMessageCallback,
+                                                                                                      aOutgoingDumper,
+                                                                                                      aRetryCallback);
+        aSpan.setAttribute (AS4TracingManager.ATTR_MESSAGE_ID, aResponseEntity.getMessageID ());
+
+        // Parse and verify the receipt
+        try (final IAS4Span aResponseSpan = AS4TracingManager.startSpan ("phase4.client.response"))
+        {
+          aResponseSpan.setAttribute (AS4TracingManager.ATTR_MESSAGE_ID, aResponseEntity.getMessageID ());
+          _handleUserMessageResponse (aCryptoFactory,
+                                      aPModeResolver,
+                                      aIAF,
+                                      aIncomingProfileSelector,
+                                      aClientUserMsg,
+                                      aLocale,
+                                      sURL,
+                                      aIncomingDumper,
+                                      aResponseConsumer,
+                                      aSignalMsgConsumer,
+                                      aResponseEntity,
+                                      aWrappedResponse.get ());
+        }
+      }
+      catch (final IOException | Phase4Exception | WSSecurityException | MessagingException | RuntimeException ex)
+      {
+        aSpan.setError (ex);
+        throw ex;
+      }
+    }
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link #sendAS4UserMessageAndReceiveAS4SignalMessage(IAS4CryptoFactory, IPModeResolver, IAS4IncomingAttachmentFactory, IAS4IncomingProfileSelector, AS4ClientUserMessage, Locale, String, IAS4ClientBuildMessageCallback, IAS4OutgoingDumper, IAS4IncomingDumper, IAS4RetryCallback, IAS4RawResponseConsumer, IAS4SignalMessageConsumer)}.
+   * The response is evaluated on the thread that finished the HTTP
+   * transmission.
+   *
+   * @return The future that is completed with the sent message, after the
+   *         response was evaluated. Never <code>null</code>.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public static CompletableFuture <AS4ClientSentMessage <byte []>> sendAS4UserMessageAndReceiveAS4SignalMessageAsync (@Nonnull final IAS4CryptoFactory aCryptoFactory,
+                                                                                                                      @Nonnull final IPModeResolver aPModeResolver,
+                                                                                                                      @Nonnull final IAS4IncomingAttachmentFactory aIAF,
+                                                                                                                      @Nonnull final IAS4IncomingProfileSelector aIncomingProfileSelector,
+                                                                                                                      @Nonnull final AS4ClientUserMessage aClientUserMsg,
+                                                                                                                      @Nonnull final Locale aLocale,
+                                                                                                                      @Nonnull final String sURL,
+                                                                                                                      @Nullable final IAS4ClientBuildMessageCallback aBuildMessageCallback,
+                                                                                                                      @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                                                                      @Nullable final IAS4IncomingDumper aIncomingDumper,
+                                                                                                                      @Nullable final IAS4RetryCallback aRetryCallback,
+                                                                                                                      @Nullable final IAS4RawResponseConsumer aResponseConsumer,
+                                                                                                                      @Nullable final IAS4SignalMessageConsumer aSignalMsgConsumer,
+                                                                                                                      @Nonnull final Executor aExecutor)
+  {
+    _logUserMessage (aClientUserMsg, sURL);
+
+    final Wrapper <HttpResponse> aWrappedResponse = new Wrapper <> ();
+    final HttpClientResponseHandler <byte []> aResponseHdl = _createResponseHandler (aWrappedResponse);
+
+    return aClientUserMsg.<byte []> sendMessageWithRetriesAsync (sURL,
+                                                                 aResponseHdl,
+                                                                 aBuildMessageCallback,
+                                                                 aOutgoingDumper,
+                                                                 aRetryCallback,
+                                                                 aExecutor)
+                         .thenApply (aResponseEntity -> {
+                           try
+                           {
+                             _handleUserMessageResponse (aCryptoFactory,
+                                                         aPModeResolver,
+                                                         aIAF,
+                                                         aIncomingProfileSelector,
+                                                         aClientUserMsg,
+                                                         aLocale,
+                                                         sURL,
+                                                         aIncomingDumper,
+                                                         aResponseConsumer,
+                                                         aSignalMsgConsumer,
+                                                         aResponseEntity,
+                                                         aWrappedResponse.get ());
+                           }
+                           catch (final Phase4Exception ex)
+                           {
+                             throw new CompletionException (ex);
+                           }
+                           return aResponseEntity;
+                         });
+  }
+
   public static void sendAS4PullRequestAndReceiveAS4UserMessage (@Nonnull final IAS4CryptoFactory aCryptoFactory,
                                                                  @Nonnull final IPModeResolver aPModeResolver,
                                                                  @Nonnull final IAS4IncomingAttachmentFactory aIAF,
@@ -41,6 +41,7 @@ import com.helger.phase4.crypto.AS4CryptoFactoryProperties;
 import com.helger.phase4.crypto.IAS4CryptoFactory;
 import com.helger.phase4.dump.IAS4IncomingDumper;
 import com.helger.phase4.dump.IAS4OutgoingDumper;
+import com.helger.phase4.http.BasicHttpPoster;
 import com.helger.phase4.http.HttpRetrySettings;
 import com.helger.phase4.http.IHttpPoster;
 import com.helger.phase4.model.pmode.resolve.DefaultPModeResolver;
@@ -101,7 +102,7 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
     // Set default values
     try
     {
-      httpClientFactory (new HttpClientFactory ());
+      httpClientFactory (BasicHttpPoster.getDefaultHttpClientFactory ());
       cryptoFactory (AS4CryptoFactoryProperties.getDefaultInstance ());
       soapVersion (ESoapVersion.SOAP_12);
       pmodeResolver (DefaultPModeResolver.DEFAULT_PMODE_RESOLVER);
@@ -170,9 +171,10 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
   }
 
   /**
-   * Set the HTTP client factory to be used. By default a default instance of
-   * {@link HttpClientFactory} is used (set in the constructor) and there is no
-   * need to invoke this method.
+   * Set the HTTP client factory to be used. By default the factory of
+   * {@link BasicHttpPoster#getDefaultHttpClientFactory()} is used (set in the
+   * constructor) and there is no need to invoke this method. If pooled HTTP
+   * clients are used, the same instance should be passed for all messages.
    *
    * @param aHttpClientFactory
    *        The new HTTP client factory to be used. May be <code>null</code>.
@@ -601,6 +603,33 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("About to send the AS4 message");
 
+    if (prepareSending ().isFailure ())
+      return ESuccess.FAILURE;
+
+    // Main sending
+    mainSendMessage ();
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Finished main AS4 message sending without exception");
+
+    return ESuccess.SUCCESS;
+  }
+
+  /**
+   * Perform all the steps of {@link #sendMessage()} that happen before the
+   * main sending: "finishFields", {@link #isEveryRequiredFieldSet()},
+   * "customizeBeforeSending" and the sender interrupt.
+   *
+   * @return {@link ESuccess#FAILURE} if the message must not be sent,
+   *         {@link ESuccess#SUCCESS} if the main sending may start. Never
+   *         <code>null</code>.
+   * @throws Phase4Exception
+   *         In case of any error
+   * @since 2.1.3
+   */
+  @Nonnull
+  protected final ESuccess prepareSending () throws Phase4Exception
+  {
     // Pre required field check
     if (finishFields ().isFailure ())
     {
@@ -626,12 +655,6 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
         return ESuccess.FAILURE;
       }
 
-    // Main sending
-    mainSendMessage ();
-
-    if (LOGGER.isDebugEnabled ())
-      LOGGER.debug ("Finished main AS4 message sending without exception");
-
     return ESuccess.SUCCESS;
   }
 }
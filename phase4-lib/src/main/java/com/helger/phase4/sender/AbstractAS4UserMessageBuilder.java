@@ -17,6 +17,9 @@
 package com.helger.phase4.sender;
 
 import java.security.cert.X509Certificate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
@@ -27,6 +30,7 @@ import javax.annotation.concurrent.NotThreadSafe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
@@ -36,13 +40,17 @@ import com.helger.commons.state.ISuccessIndicator;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.wrapper.Wrapper;
 import com.helger.phase4.attachment.AS4OutgoingAttachment;
+import com.helger.phase4.client.AS4ClientSentMessage;
 import com.helger.phase4.client.AS4ClientUserMessage;
+import com.helger.phase4.client.IAS4RawResponseConsumer;
 import com.helger.phase4.client.IAS4SignalMessageConsumer;
 import com.helger.phase4.ebms3header.Ebms3Property;
 import com.helger.phase4.ebms3header.Ebms3SignalMessage;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.model.MessageProperty;
 import com.helger.phase4.model.pmode.IPMode;
+import com.helger.phase4.tracing.AS4TracingManager;
+import com.helger.phase4.tracing.IAS4Span;
 import com.helger.phase4.util.Phase4Exception;
 
 /**
@@ -712,6 +720,19 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
    */
   @Nonnull
   public final ESimpleUserMessageSendResult sendMessageAndCheckForReceipt (@Nullable final Consumer <? super Phase4Exception> aExceptionConsumer)
+  {
+    try (final IAS4Span aSpan = AS4TracingManager.startSpan ("phase4.send"))
+    {
+      // May be null if the message ID is created automatically
+      aSpan.setAttribute (AS4TracingManager.ATTR_MESSAGE_ID, m_sMessageID);
+      final ESimpleUserMessageSendResult eResult = _sendMessageAndCheckForReceipt (aExceptionConsumer);
+      aSpan.setAttribute (AS4TracingManager.ATTR_SEND_RESULT, eResult.getID ());
+      return eResult;
+    }
+  }
+
+  @Nonnull
+  private ESimpleUserMessageSendResult _sendMessageAndCheckForReceipt (@Nullable final Consumer <? super Phase4Exception> aExceptionConsumer)
   {
     final IAS4SignalMessageConsumer aOld = m_aSignalMsgConsumer;
     try
@@ -778,4 +799,80 @@ public abstract class AbstractAS4UserMessageBuilder <IMPLTYPE extends AbstractAS
       m_aSignalMsgConsumer = aOld;
     }
   }
+
+  /**
+   * Asynchronously send the AS4 message. This method may only be called by
+   * {@link #sendMessageAsync(Executor)}. The default implementation invokes the
+   * synchronous "mainSendMessage" on the provided executor. Override this
+   * method to provide a real asynchronous implementation.
+   *
+   * @param aExecutor
+   *        The executor to use. Never <code>null</code>.
+   * @return The future with the sent message. Never <code>null</code>.
+   * @since 2.1.3
+   */
+  @Nonnull
+  protected CompletableFuture <AS4ClientSentMessage <byte []>> mainSendMessageAsync (@Nonnull final Executor aExecutor)
+  {
+    return CompletableFuture.supplyAsync ( () -> {
+      // Remember the sent message
+      final Wrapper <AS4ClientSentMessage <byte []>> aSentMsgKeeper = new Wrapper <> ();
+      final IAS4RawResponseConsumer aOld = m_aResponseConsumer;
+      m_aResponseConsumer = aOld == null ? aSentMsgKeeper::set : x -> {
+        aSentMsgKeeper.set (x);
+        aOld.handleResponse (x);
+      };
+      try
+      {
+        mainSendMessage ();
+      }
+      catch (final Phase4Exception ex)
+      {
+        throw new CompletionException (ex);
+      }
+      finally
+      {
+        // Restore the original value
+        m_aResponseConsumer = aOld;
+      }
+      return aSentMsgKeeper.get ();
+    }, aExecutor);
+  }
+
+  /**
+   * Asynchronously send the AS4 message. All the checks of
+   * {@link #sendMessage()} are performed synchronously in the calling thread.
+   * Building, sending (including retries) and evaluating the response happens
+   * on the provided executor. Retries are scheduled and don't block a
+   * thread.<br>
+   * Note: the builder must not be modified until the returned future is
+   * completed.
+   *
+   * @param aExecutor
+   *        The executor to perform the sending on. May not be
+   *        <code>null</code>.
+   * @return The future with the sent message including the raw response. Never
+   *         <code>null</code>. If the checks fail, the future is completed
+   *         exceptionally with a {@link Phase4Exception}. Received signal
+   *         messages are passed to the {@link IAS4SignalMessageConsumer} as
+   *         usual.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public final CompletableFuture <AS4ClientSentMessage <byte []>> sendMessageAsync (@Nonnull final Executor aExecutor)
+  {
+    ValueEnforcer.notNull (aExecutor, "Executor");
+
+    try
+    {
+      if (prepareSending ().isFailure ())
+        return CompletableFuture.failedFuture (new Phase4Exception ("The AS4 message cannot be send, because the preconditions are not met"));
+    }
+    catch (final Phase4Exception ex)
+    {
+      return CompletableFuture.failedFuture (ex);
+    }
+
+    return mainSendMessageAsync (aExecutor);
+  }
 }
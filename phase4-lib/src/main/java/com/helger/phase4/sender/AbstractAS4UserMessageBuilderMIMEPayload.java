@@ -16,6 +16,11 @@
  */
 package com.helger.phase4.sender;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.OverridingMethodsMustInvokeSuper;
@@ -26,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import com.helger.phase4.attachment.AS4OutgoingAttachment;
 import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.client.AS4ClientSentMessage;
 import com.helger.phase4.client.AS4ClientUserMessage;
 import com.helger.phase4.util.AS4ResourceHelper;
 import com.helger.phase4.util.Phase4Exception;
@@ -98,25 +104,32 @@ public abstract class AbstractAS4UserMessageBuilderMIMEPayload <IMPLTYPE extends
     return true;
   }
 
+  @Nonnull
+  private AS4ClientUserMessage _createUserMessage (@Nonnull final AS4ResourceHelper aResHelper) throws IOException
+  {
+    // Start building AS4 User Message
+    final AS4ClientUserMessage aUserMsg = new AS4ClientUserMessage (aResHelper);
+    applyToUserMessage (aUserMsg);
+
+    // No payload - only one attachment
+    aUserMsg.setPayload (null);
+
+    // Add main attachment
+    aUserMsg.addAttachment (WSS4JAttachment.createOutgoingFileAttachment (m_aPayload, aResHelper));
+
+    // Add other attachments
+    for (final AS4OutgoingAttachment aAttachment : m_aAttachments)
+      aUserMsg.addAttachment (WSS4JAttachment.createOutgoingFileAttachment (aAttachment, aResHelper));
+    return aUserMsg;
+  }
+
   @Override
   protected final void mainSendMessage () throws Phase4Exception
   {
     // Temporary file manager
     try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
     {
-      // Start building AS4 User Message
-      final AS4ClientUserMessage aUserMsg = new AS4ClientUserMessage (aResHelper);
-      applyToUserMessage (aUserMsg);
-
-      // No payload - only one attachment
-      aUserMsg.setPayload (null);
-
-      // Add main attachment
-      aUserMsg.addAttachment (WSS4JAttachment.createOutgoingFileAttachment (m_aPayload, aResHelper));
-
-      // Add other attachments
-      for (final AS4OutgoingAttachment aAttachment : m_aAttachments)
-        aUserMsg.addAttachment (WSS4JAttachment.createOutgoingFileAttachment (aAttachment, aResHelper));
+      final AS4ClientUserMessage aUserMsg = _createUserMessage (aResHelper);
 
       // Main sending
       AS4BidirectionalClientHelper.sendAS4UserMessageAndReceiveAS4SignalMessage (m_aCryptoFactory,
@@ -146,4 +159,60 @@ public abstract class AbstractAS4UserMessageBuilderMIMEPayload <IMPLTYPE extends
       throw new Phase4Exception ("Wrapped Phase4Exception", ex);
     }
   }
+
+  @Nonnull
+  private CompletableFuture <AS4ClientSentMessage <byte []>> _sendUserMessageAsync (@Nonnull final AS4ClientUserMessage aUserMsg,
+                                                                                     @Nonnull final Executor aExecutor)
+  {
+    return AS4BidirectionalClientHelper.sendAS4UserMessageAndReceiveAS4SignalMessageAsync (m_aCryptoFactory,
+                                                                                          pmodeResolver (),
+                                                                                          incomingAttachmentFactory (),
+                                                                                          incomingProfileSelector (),
+                                                                                          aUserMsg,
+                                                                                          m_aLocale,
+                                                                                          m_sEndpointURL,
+                                                                                          m_aBuildMessageCallback,
+                                                                                          m_aOutgoingDumper,
+                                                                                          m_aIncomingDumper,
+                                                                                          m_aRetryCallback,
+                                                                                          m_aResponseConsumer,
+                                                                                          m_aSignalMsgConsumer,
+                                                                                          aExecutor);
+  }
+
+  @Override
+  @Nonnull
+  protected final CompletableFuture <AS4ClientSentMessage <byte []>> mainSendMessageAsync (@Nonnull final Executor aExecutor)
+  {
+    // Temporary file manager - closed after the sending finished
+    final AS4ResourceHelper aResHelper = new AS4ResourceHelper ();
+
+    // Creating the attachments (incl. compression) is done on the executor
+    final CompletableFuture <AS4ClientUserMessage> aUserMsgFuture = CompletableFuture.supplyAsync ( () -> {
+      try
+      {
+        return _createUserMessage (aResHelper);
+      }
+      catch (final IOException ex)
+      {
+        throw new CompletionException (ex);
+      }
+    }, aExecutor);
+
+    // Main sending
+    final CompletableFuture <AS4ClientSentMessage <byte []>> ret = aUserMsgFuture.thenCompose (aUserMsg -> _sendUserMessageAsync (aUserMsg,
+                                                                                                                             aExecutor));
+
+    return ret.handle ( (aSentMsg, ex) -> {
+      aResHelper.close ();
+      if (ex == null)
+        return aSentMsg;
+
+      final Throwable aCause = ex instanceof CompletionException && ex.getCause () != null ? ex.getCause () : ex;
+      if (aCause instanceof Phase4Exception)
+        throw new CompletionException (aCause);
+      // Wrap in phase4 Exception
+      throw new CompletionException (new Phase4Exception ("Wrapped Phase4Exception", aCause));
+    });
+  }
 }
@@ -0,0 +1,585 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender.queue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A bounded, durable queue for outbound AS4 messages. Every enqueued item is
+ * first written to the {@link AS4OutboundQueueJournal} and afterwards sent by
+ * one of the worker threads via the provided
+ * {@link IAS4OutboundQueueItemHandler}. Features:
+ * <ul>
+ * <li>Back-pressure: if the maximum number of pending items is reached,
+ * {@link #enqueue(AS4OutboundQueueItem)} blocks until space is available.</li>
+ * <li>Per destination concurrency limit: at most
+ * {@link AS4OutboundQueueSettings#getMaxConcurrentPerDestination()} items are
+ * sent concurrently to the same destination. Destinations are served round
+ * robin.</li>
+ * <li>Retries: failed items are re-scheduled after the retry delay, without
+ * blocking a worker thread, until the maximum number of attempts is reached.
+ * Permanently failed items are not retried.</li>
+ * <li>Durability: items that were not sent before {@link #close()} (or a
+ * crash) are resumed, when a new queue is created on the same journal.</li>
+ * </ul>
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4OutboundQueue implements AutoCloseable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4OutboundQueue.class);
+  private static final AtomicInteger QUEUE_COUNTER = new AtomicInteger (0);
+
+  private final AS4OutboundQueueJournal m_aJournal;
+  private final IAS4OutboundQueueItemHandler m_aHandler;
+  private final int m_nMaxPendingItems;
+  private final int m_nMaxConcurrentPerDestination;
+  private final int m_nMaxAttempts;
+  private final Duration m_aRetryDelay;
+
+  private final ReentrantLock m_aLock = new ReentrantLock ();
+  private final Condition m_aNotFull = m_aLock.newCondition ();
+  private final Condition m_aWorkAvailable = m_aLock.newCondition ();
+  private final Condition m_aEmpty = m_aLock.newCondition ();
+  // Ready items per destination - the order of the map defines the round robin
+  @GuardedBy ("m_aLock")
+  private final ICommonsOrderedMap <String, Deque <AS4OutboundQueueItem>> m_aReady = new CommonsLinkedHashMap <> ();
+  @GuardedBy ("m_aLock")
+  private final ICommonsMap <String, AtomicInteger> m_aActivePerDestination = new CommonsHashMap <> ();
+  // Ready + in progress + waiting for retry
+  @GuardedBy ("m_aLock")
+  private int m_nPending = 0;
+  @GuardedBy ("m_aLock")
+  private int m_nActive = 0;
+  @GuardedBy ("m_aLock")
+  private boolean m_bClosed = false;
+
+  private final ExecutorService m_aWorkers;
+  private final ScheduledExecutorService m_aRetryScheduler;
+
+  /**
+   * Constructor. All items that are contained in the journal are resumed and
+   * the worker threads are started.
+   *
+   * @param aJournal
+   *        The journal to use. May not be <code>null</code>. See
+   *        {@link AS4OutboundQueueJournal#createDefault()}.
+   * @param aHandler
+   *        The handler that performs the main sending. May not be
+   *        <code>null</code>.
+   * @param aSettings
+   *        The queue settings to use. May not be <code>null</code>. The values
+   *        are copied.
+   */
+  public AS4OutboundQueue (@Nonnull final AS4OutboundQueueJournal aJournal,
+                           @Nonnull final IAS4OutboundQueueItemHandler aHandler,
+                           @Nonnull final AS4OutboundQueueSettings aSettings)
+  {
+    ValueEnforcer.notNull (aJournal, "Journal");
+    ValueEnforcer.notNull (aHandler, "Handler");
+    ValueEnforcer.notNull (aSettings, "Settings");
+    m_aJournal = aJournal;
+    m_aHandler = aHandler;
+    m_nMaxPendingItems = aSettings.getMaxPendingItems ();
+    m_nMaxConcurrentPerDestination = aSettings.getMaxConcurrentPerDestination ();
+    m_nMaxAttempts = aSettings.getMaxAttempts ();
+    m_aRetryDelay = aSettings.getRetryDelay ();
+
+    // Resume all items from the journal - they may exceed the pending limit
+    final ICommonsList <AS4OutboundQueueItem> aResumed = aJournal.readAll ();
+    if (aResumed.isNotEmpty ())
+      LOGGER.info ("Resuming " + aResumed.size () + " item(s) from outbound queue journal " + aJournal);
+    m_aLock.lock ();
+    try
+    {
+      m_nPending = aResumed.size ();
+      for (final AS4OutboundQueueItem aItem : aResumed)
+        _addReadyLocked (aItem);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+
+    final int nQueueIndex = QUEUE_COUNTER.incrementAndGet ();
+    final int nWorkerCount = aSettings.getWorkerCount ();
+    m_aWorkers = Executors.newFixedThreadPool (nWorkerCount,
+                                               _createThreadFactory ("phase4-outbound-queue-" + nQueueIndex + "-worker-"));
+    for (int i = 0; i < nWorkerCount; ++i)
+      m_aWorkers.execute (this::_workerLoop);
+    m_aRetryScheduler = Executors.newSingleThreadScheduledExecutor (_createThreadFactory ("phase4-outbound-queue-" +
+                                                                                         nQueueIndex +
+                                                                                         "-retry-"));
+  }
+
+  @Nonnull
+  private static ThreadFactory _createThreadFactory (@Nonnull final String sPrefix)
+  {
+    final AtomicInteger aCounter = new AtomicInteger (0);
+    return r -> {
+      final Thread ret = new Thread (r, sPrefix + aCounter.incrementAndGet ());
+      ret.setDaemon (true);
+      return ret;
+    };
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _addReadyLocked (@Nonnull final AS4OutboundQueueItem aItem)
+  {
+    m_aReady.computeIfAbsent (aItem.getDestination (), k -> new ArrayDeque <> ()).add (aItem);
+    m_aWorkAvailable.signal ();
+  }
+
+  private void _addReady (@Nonnull final AS4OutboundQueueItem aItem)
+  {
+    m_aLock.lock ();
+    try
+    {
+      // If the queue is closed, the item is resumed from the journal later on
+      if (!m_bClosed)
+        _addReadyLocked (aItem);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The next item that may be sent without exceeding the per
+   *         destination limit or <code>null</code> if there is none.
+   */
+  @GuardedBy ("m_aLock")
+  private AS4OutboundQueueItem _pollNextReadyItemLocked ()
+  {
+    final Iterator <Map.Entry <String, Deque <AS4OutboundQueueItem>>> it = m_aReady.entrySet ().iterator ();
+    while (it.hasNext ())
+    {
+      final Map.Entry <String, Deque <AS4OutboundQueueItem>> aEntry = it.next ();
+      final String sDestination = aEntry.getKey ();
+      final AtomicInteger aActive = m_aActivePerDestination.computeIfAbsent (sDestination, k -> new AtomicInteger (0));
+      if (aActive.get () < m_nMaxConcurrentPerDestination)
+      {
+        final Deque <AS4OutboundQueueItem> aDeque = aEntry.getValue ();
+        final AS4OutboundQueueItem ret = aDeque.poll ();
+        // Move the destination to the end for round robin
+        it.remove ();
+        if (!aDeque.isEmpty ())
+          m_aReady.put (sDestination, aDeque);
+        aActive.incrementAndGet ();
+        m_nActive++;
+        return ret;
+      }
+    }
+    return null;
+  }
+
+  private void _workerLoop ()
+  {
+    while (true)
+    {
+      final AS4OutboundQueueItem aItem;
+      m_aLock.lock ();
+      try
+      {
+        AS4OutboundQueueItem aNext = null;
+        while (!m_bClosed && (aNext = _pollNextReadyItemLocked ()) == null)
+          m_aWorkAvailable.await ();
+        if (m_bClosed && aNext == null)
+          return;
+        aItem = aNext;
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        return;
+      }
+      finally
+      {
+        m_aLock.unlock ();
+      }
+
+      _sendItem (aItem);
+    }
+  }
+
+  private void _onItemFinished (@Nonnull final AS4OutboundQueueItem aItem, final boolean bRemoveFromPending)
+  {
+    m_aLock.lock ();
+    try
+    {
+      final AtomicInteger aActive = m_aActivePerDestination.get (aItem.getDestination ());
+      if (aActive.decrementAndGet () == 0)
+        m_aActivePerDestination.remove (aItem.getDestination ());
+      m_nActive--;
+      if (bRemoveFromPending)
+      {
+        m_nPending--;
+        m_aNotFull.signal ();
+        if (m_nPending == 0)
+          m_aEmpty.signalAll ();
+      }
+      // Another item of the same destination may be sent now
+      m_aWorkAvailable.signal ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  private void _sendItem (@Nonnull final AS4OutboundQueueItem aItem)
+  {
+    EAS4OutboundQueueSendResult eResult;
+    Exception aCause = null;
+    try
+    {
+      eResult = m_aHandler.sendItem (aItem);
+    }
+    catch (final Exception ex)
+    {
+      LOGGER.warn ("Error sending outbound queue item '" + aItem.getID () + "' to '" + aItem.getDestination () + "'",
+                   ex);
+      eResult = EAS4OutboundQueueSendResult.RETRY;
+      aCause = ex;
+    }
+
+    if (eResult.isSuccess ())
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Successfully sent outbound queue item '" + aItem.getID () + "'");
+      m_aJournal.delete (aItem);
+      _onItemFinished (aItem, true);
+      return;
+    }
+
+    final AS4OutboundQueueItem aNextItem = aItem.getWithNextAttempt ();
+    try
+    {
+      // Remember the number of attempts
+      m_aJournal.write (aNextItem);
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.error ("Failed to update outbound queue journal for item '" + aItem.getID () + "'", ex);
+    }
+
+    if (eResult.isPermanentFailure ())
+    {
+      LOGGER.error ("Sending outbound queue item '" +
+                    aItem.getID () +
+                    "' to '" +
+                    aItem.getDestination () +
+                    "' failed permanently - not retrying");
+      m_aJournal.moveToFailed (aNextItem);
+      _onItemFinished (aItem, true);
+      return;
+    }
+
+    boolean bGiveUp = aNextItem.getAttempts () >= m_nMaxAttempts;
+    if (!bGiveUp)
+    {
+      try
+      {
+        bGiveUp = m_aHandler.onBeforeRetry (aItem, m_nMaxAttempts, m_aRetryDelay, aCause).isBreak ();
+        if (bGiveUp)
+          LOGGER.warn ("Retrying outbound queue item '" + aItem.getID () + "' was explicitly stopped by the handler");
+      }
+      catch (final RuntimeException ex)
+      {
+        LOGGER.error ("Error in retry callback for outbound queue item '" + aItem.getID () + "'", ex);
+      }
+    }
+
+    if (bGiveUp)
+    {
+      LOGGER.error ("Giving up sending outbound queue item '" +
+                    aItem.getID () +
+                    "' to '" +
+                    aItem.getDestination () +
+                    "' after " +
+                    aNextItem.getAttempts () +
+                    " attempts");
+      m_aJournal.moveToFailed (aNextItem);
+      _onItemFinished (aItem, true);
+      return;
+    }
+
+    LOGGER.warn ("Failed to send outbound queue item '" +
+                 aItem.getID () +
+                 "' to '" +
+                 aItem.getDestination () +
+                 "' - retrying in " +
+                 m_aRetryDelay.toMillis () +
+                 " ms");
+    _onItemFinished (aItem, false);
+    try
+    {
+      m_aRetryScheduler.schedule ( () -> _addReady (aNextItem), m_aRetryDelay.toMillis (), TimeUnit.MILLISECONDS);
+    }
+    catch (final RuntimeException ex)
+    {
+      // Queue was closed in the meantime - item is resumed from the journal
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Failed to schedule retry for outbound queue item '" + aItem.getID () + "'", ex);
+    }
+  }
+
+  /**
+   * Add a new item to the queue. The item is persisted in the journal before
+   * this method returns. If the maximum number of pending items is reached,
+   * this method blocks until space is available.
+   *
+   * @param aItem
+   *        The item to enqueue. May not be <code>null</code>.
+   * @throws IOException
+   *         If the item could not be written to the journal
+   * @throws InterruptedException
+   *         If the calling thread was interrupted while waiting for space
+   * @throws IllegalStateException
+   *         If the queue is already closed
+   */
+  public void enqueue (@Nonnull final AS4OutboundQueueItem aItem) throws IOException, InterruptedException
+  {
+    if (tryEnqueue (aItem, null).isFailure ())
+      throw new IllegalStateException ("Failed to enqueue item");
+  }
+
+  /**
+   * Add a new item to the queue. The item is persisted in the journal before
+   * this method returns. If the maximum number of pending items is reached,
+   * this method blocks until space is available or the provided timeout
+   * elapsed.
+   *
+   * @param aItem
+   *        The item to enqueue. May not be <code>null</code>.
+   * @param aTimeout
+   *        The maximum duration to wait. May be <code>null</code> to wait
+   *        without a timeout.
+   * @return {@link ESuccess#FAILURE} if the timeout elapsed before space was
+   *         available, {@link ESuccess#SUCCESS} if the item was enqueued.
+   * @throws IOException
+   *         If the item could not be written to the journal
+   * @throws InterruptedException
+   *         If the calling thread was interrupted while waiting for space
+   * @throws IllegalStateException
+   *         If the queue is already closed
+   */
+  @Nonnull
+  public ESuccess tryEnqueue (@Nonnull final AS4OutboundQueueItem aItem,
+                              final Duration aTimeout) throws IOException, InterruptedException
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      long nNanos = aTimeout == null ? Long.MAX_VALUE : aTimeout.toNanos ();
+      while (!m_bClosed && m_nPending >= m_nMaxPendingItems)
+      {
+        if (aTimeout == null)
+          m_aNotFull.await ();
+        else
+        {
+          if (nNanos <= 0)
+            return ESuccess.FAILURE;
+          nNanos = m_aNotFull.awaitNanos (nNanos);
+        }
+      }
+      if (m_bClosed)
+        throw new IllegalStateException ("The outbound queue is already closed");
+      m_nPending++;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+
+    try
+    {
+      m_aJournal.write (aItem);
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      m_aLock.lock ();
+      try
+      {
+        m_nPending--;
+        m_aNotFull.signal ();
+        if (m_nPending == 0)
+          m_aEmpty.signalAll ();
+      }
+      finally
+      {
+        m_aLock.unlock ();
+      }
+      throw ex;
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Enqueued outbound queue item " + aItem);
+    _addReady (aItem);
+    return ESuccess.SUCCESS;
+  }
+
+  /**
+   * @return The number of items that are not yet finished. This includes the
+   *         items that are currently sent and the items that wait for a retry.
+   */
+  @Nonnegative
+  public int getPendingCount ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_nPending;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of items that are currently sent.
+   */
+  @Nonnegative
+  public int getActiveCount ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_nActive;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Wait until all pending items are finished (either sent or failed
+   * finally).
+   *
+   * @param aTimeout
+   *        The maximum duration to wait. May not be <code>null</code>.
+   * @return {@link ESuccess#SUCCESS} if the queue is empty,
+   *         {@link ESuccess#FAILURE} if the timeout elapsed.
+   * @throws InterruptedException
+   *         If the calling thread was interrupted
+   */
+  @Nonnull
+  public ESuccess waitUntilEmpty (@Nonnull final Duration aTimeout) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aTimeout, "Timeout");
+
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      long nNanos = aTimeout.toNanos ();
+      while (m_nPending > 0)
+      {
+        if (nNanos <= 0)
+          return ESuccess.FAILURE;
+        nNanos = m_aEmpty.awaitNanos (nNanos);
+      }
+      return ESuccess.SUCCESS;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Stop the queue. Items that are currently sent are finished, all other
+   * items stay in the journal and are resumed by the next queue on the same
+   * journal.
+   */
+  public void close ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      if (m_bClosed)
+        return;
+      m_bClosed = true;
+      m_aWorkAvailable.signalAll ();
+      m_aNotFull.signalAll ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+
+    m_aRetryScheduler.shutdownNow ();
+    m_aWorkers.shutdown ();
+    try
+    {
+      if (!m_aWorkers.awaitTermination (1, TimeUnit.MINUTES))
+        LOGGER.warn ("Outbound queue workers did not terminate in time");
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Journal", m_aJournal)
+                                       .append ("Handler", m_aHandler)
+                                       .append ("MaxPendingItems", m_nMaxPendingItems)
+                                       .append ("MaxConcurrentPerDestination", m_nMaxConcurrentPerDestination)
+                                       .append ("MaxAttempts", m_nMaxAttempts)
+                                       .append ("RetryDelay", m_aRetryDelay)
+                                       .getToString ();
+  }
+}
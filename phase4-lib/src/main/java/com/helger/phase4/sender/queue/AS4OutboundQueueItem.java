@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.mgr.MetaAS4Manager;
+
+/**
+ * A single item of the {@link AS4OutboundQueue}. It contains everything that
+ * is needed to (re-)create and send an AS4 message, after the application was
+ * restarted: the destination used for throttling, an arbitrary set of string
+ * properties and the binary payload. The payload is either kept in memory or,
+ * for large payloads, in a separate file of the
+ * {@link AS4OutboundQueueJournal} (see
+ * {@link AS4OutboundQueueJournal#createPayloadFile()}). How the item is
+ * converted into an AS4 message is defined by the
+ * {@link IAS4OutboundQueueItemHandler}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public final class AS4OutboundQueueItem implements IHasID <String>
+{
+  private final String m_sID;
+  private final String m_sDestination;
+  private final OffsetDateTime m_aCreationDT;
+  private final int m_nAttempts;
+  private final ICommonsOrderedMap <String, String> m_aProperties;
+  // Exactly one of the two is non-null
+  private final byte [] m_aPayload;
+  private final File m_aPayloadFile;
+
+  AS4OutboundQueueItem (@Nonnull @Nonempty final String sID,
+                        @Nonnull @Nonempty final String sDestination,
+                        @Nonnull final OffsetDateTime aCreationDT,
+                        @Nonnegative final int nAttempts,
+                        @Nonnull final ICommonsOrderedMap <String, String> aProperties,
+                        @Nullable final byte [] aPayload,
+                        @Nullable final File aPayloadFile)
+  {
+    ValueEnforcer.notEmpty (sID, "ID");
+    ValueEnforcer.notEmpty (sDestination, "Destination");
+    ValueEnforcer.notNull (aCreationDT, "CreationDT");
+    ValueEnforcer.isGE0 (nAttempts, "Attempts");
+    ValueEnforcer.notNull (aProperties, "Properties");
+    ValueEnforcer.isTrue ( (aPayload == null) != (aPayloadFile == null),
+                           "Exactly one of Payload and PayloadFile must be provided");
+    m_sID = sID;
+    m_sDestination = sDestination;
+    m_aCreationDT = aCreationDT;
+    m_nAttempts = nAttempts;
+    m_aProperties = aProperties;
+    m_aPayload = aPayload;
+    m_aPayloadFile = aPayloadFile;
+  }
+
+  /**
+   * @return The unique ID of the item. It is also used as the filename in the
+   *         journal. Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return The destination of the item. Usually this is the endpoint URL, but
+   *         it may be any other key (like the receiver ID) if the URL is
+   *         determined dynamically. The per destination concurrency limit is
+   *         applied based on this value. Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getDestination ()
+  {
+    return m_sDestination;
+  }
+
+  /**
+   * @return The date and time when the item was first enqueued. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public OffsetDateTime getCreationDateTime ()
+  {
+    return m_aCreationDT;
+  }
+
+  /**
+   * @return The number of failed attempts to send this item. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getAttempts ()
+  {
+    return m_nAttempts;
+  }
+
+  /**
+   * @return A copy of all custom properties. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <String, String> getAllProperties ()
+  {
+    return m_aProperties.getClone ();
+  }
+
+  /**
+   * @param sName
+   *        The property name to query. May be <code>null</code>.
+   * @return The value of the property or <code>null</code> if no such property
+   *         is present.
+   */
+  @Nullable
+  public String getProperty (@Nullable final String sName)
+  {
+    return m_aProperties.get (sName);
+  }
+
+  /**
+   * @return A copy of the payload. If the payload is stored in a file, the
+   *         whole file is read. Prefer {@link #getPayloadFile()} for large
+   *         payloads. Never <code>null</code>.
+   * @throws UncheckedIOException
+   *         If the payload file cannot be read
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public byte [] getPayload ()
+  {
+    if (m_aPayload != null)
+      return m_aPayload.clone ();
+
+    try
+    {
+      return Files.readAllBytes (m_aPayloadFile.toPath ());
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException ("Failed to read payload file '" + m_aPayloadFile.getAbsolutePath () + "'", ex);
+    }
+  }
+
+  /**
+   * @return The file containing the payload or <code>null</code> if the
+   *         payload is kept in memory.
+   */
+  @Nullable
+  public File getPayloadFile ()
+  {
+    return m_aPayloadFile;
+  }
+
+  /**
+   * @return <code>true</code> if the payload is stored in a separate file,
+   *         <code>false</code> if it is kept in memory.
+   */
+  public boolean isPayloadInFile ()
+  {
+    return m_aPayloadFile != null;
+  }
+
+  @Nullable
+  byte [] directGetPayload ()
+  {
+    return m_aPayload;
+  }
+
+  @Nonnull
+  ICommonsOrderedMap <String, String> directGetProperties ()
+  {
+    return m_aProperties;
+  }
+
+  /**
+   * @return A copy of this item with the number of attempts incremented by 1.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  AS4OutboundQueueItem getWithNextAttempt ()
+  {
+    return new AS4OutboundQueueItem (m_sID,
+                                     m_sDestination,
+                                     m_aCreationDT,
+                                     m_nAttempts + 1,
+                                     m_aProperties,
+                                     m_aPayload,
+                                     m_aPayloadFile);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ID", m_sID)
+                                       .append ("Destination", m_sDestination)
+                                       .append ("CreationDT", m_aCreationDT)
+                                       .append ("Attempts", m_nAttempts)
+                                       .append ("Properties", m_aProperties)
+                                       .append ("PayloadLength", m_aPayload == null ? -1 : m_aPayload.length)
+                                       .append ("PayloadFile", m_aPayloadFile)
+                                       .getToString ();
+  }
+
+  /**
+   * Create a new item that was not yet sent.
+   *
+   * @param sDestination
+   *        The destination used for throttling. Neither <code>null</code> nor
+   *        empty.
+   * @param aProperties
+   *        Custom properties that are needed by the handler. May be
+   *        <code>null</code>.
+   * @param aPayload
+   *        The payload to be send. May not be <code>null</code>. The array is
+   *        not copied.
+   * @return The new item and never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4OutboundQueueItem create (@Nonnull @Nonempty final String sDestination,
+                                             @Nullable final ICommonsOrderedMap <String, String> aProperties,
+                                             @Nonnull final byte [] aPayload)
+  {
+    ValueEnforcer.notNull (aPayload, "Payload");
+    return new AS4OutboundQueueItem (UUID.randomUUID ().toString (),
+                                     sDestination,
+                                     MetaAS4Manager.getTimestampMgr ().getCurrentDateTime (),
+                                     0,
+                                     aProperties == null ? new CommonsLinkedHashMap <> () : aProperties.getClone (),
+                                     aPayload,
+                                     null);
+  }
+
+  /**
+   * Create a new item that was not yet sent, with the payload being stored in
+   * a file. The file is owned by the queue afterwards and is deleted together
+   * with the item.
+   *
+   * @param sDestination
+   *        The destination used for throttling. Neither <code>null</code> nor
+   *        empty.
+   * @param aProperties
+   *        Custom properties that are needed by the handler. May be
+   *        <code>null</code>.
+   * @param aPayloadFile
+   *        The file containing the payload to be send. May not be
+   *        <code>null</code>. It must have been created via
+   *        {@link AS4OutboundQueueJournal#createPayloadFile()} of the journal
+   *        the item is written to, and it must already be synced to disk.
+   * @return The new item and never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4OutboundQueueItem createWithPayloadFile (@Nonnull @Nonempty final String sDestination,
+                                                            @Nullable final ICommonsOrderedMap <String, String> aProperties,
+                                                            @Nonnull final File aPayloadFile)
+  {
+    ValueEnforcer.notNull (aPayloadFile, "PayloadFile");
+    return new AS4OutboundQueueItem (UUID.randomUUID ().toString (),
+                                     sDestination,
+                                     MetaAS4Manager.getTimestampMgr ().getCurrentDateTime (),
+                                     0,
+                                     aProperties == null ? new CommonsLinkedHashMap <> () : aProperties.getClone (),
+                                     null,
+                                     aPayloadFile);
+  }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender.queue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.util.AS4IOHelper;
+
+/**
+ * The file based journal of the {@link AS4OutboundQueue}. Every pending item is
+ * stored in a separate binary file, that is written atomically and deleted
+ * after the item was sent. Items that finally failed are moved into the
+ * {@link #FAILED_DIRECTORY_NAME} sub directory. Large payloads can be stored in
+ * a separate payload file next to the item file (see
+ * {@link #createPayloadFile()}), so that they are never completely held in
+ * memory.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public final class AS4OutboundQueueJournal
+{
+  /** The default directory name relative to the data path */
+  public static final String DEFAULT_DIRECTORY_NAME = "outbound-queue";
+  /** The sub directory for items that could not be sent */
+  public static final String FAILED_DIRECTORY_NAME = "failed";
+  /** The file extension of the journal files */
+  public static final String FILE_EXTENSION = ".as4queue";
+  /** The file extension of the separate payload files */
+  public static final String PAYLOAD_FILE_EXTENSION = ".as4payload";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4OutboundQueueJournal.class);
+  private static final int MAGIC = 0x50344f51;
+  // Version 1: inline payload only; version 2: inline payload or payload file
+  private static final int VERSION_1 = 1;
+  private static final int VERSION = 2;
+  private static final byte PAYLOAD_INLINE = 0;
+  private static final byte PAYLOAD_FILE = 1;
+  private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+  private final File m_aDirectory;
+  private final File m_aFailedDirectory;
+
+  /**
+   * Constructor
+   *
+   * @param aDirectory
+   *        The directory to store the journal files in. May not be
+   *        <code>null</code>. Is created if it does not exist.
+   */
+  public AS4OutboundQueueJournal (@Nonnull final File aDirectory)
+  {
+    ValueEnforcer.notNull (aDirectory, "Directory");
+    m_aDirectory = aDirectory.getAbsoluteFile ();
+    m_aFailedDirectory = new File (m_aDirectory, FAILED_DIRECTORY_NAME);
+    FileOperationManager.INSTANCE.createDirRecursiveIfNotExisting (m_aFailedDirectory);
+  }
+
+  /**
+   * @return The journal directory. Never <code>null</code>.
+   */
+  @Nonnull
+  public File getDirectory ()
+  {
+    return m_aDirectory;
+  }
+
+  @Nonnull
+  private File _getFile (@Nonnull final File aDir, @Nonnull final AS4OutboundQueueItem aItem)
+  {
+    return new File (aDir, aItem.getID () + FILE_EXTENSION);
+  }
+
+  private static void _writeString (@Nonnull final DataOutputStream aDOS, @Nonnull final String s) throws IOException
+  {
+    final byte [] aBytes = s.getBytes (StandardCharsets.UTF_8);
+    aDOS.writeInt (aBytes.length);
+    aDOS.write (aBytes);
+  }
+
+  @Nonnull
+  private static String _readString (@Nonnull final DataInputStream aDIS) throws IOException
+  {
+    final byte [] aBytes = new byte [aDIS.readInt ()];
+    aDIS.readFully (aBytes);
+    return new String (aBytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create a new, not yet existing file in the journal directory to which a
+   * large payload can be written. The caller must write the payload, sync it
+   * to disk (see {@link #writePayloadFile(File, IPayloadWriter)}) and use
+   * {@link AS4OutboundQueueItem#createWithPayloadFile(String, ICommonsOrderedMap, File)}
+   * afterwards.
+   *
+   * @return The new payload file. Never <code>null</code>.
+   */
+  @Nonnull
+  public File createPayloadFile ()
+  {
+    return new File (m_aDirectory, UUID.randomUUID ().toString () + PAYLOAD_FILE_EXTENSION);
+  }
+
+  /**
+   * Callback interface to write a payload into a payload file.
+   *
+   * @author Philip Helger
+   */
+  @FunctionalInterface
+  public interface IPayloadWriter
+  {
+    /**
+     * @param aOS
+     *        The output stream to write to. Never <code>null</code>. Must not
+     *        be closed by the callee.
+     * @throws IOException
+     *         In case of a write error
+     */
+    void writePayload (@Nonnull OutputStream aOS) throws IOException;
+  }
+
+  /**
+   * Write a payload file created by {@link #createPayloadFile()} and sync it to
+   * disk. If writing fails, the file is deleted.
+   *
+   * @param aPayloadFile
+   *        The payload file to write. May not be <code>null</code>.
+   * @param aWriter
+   *        The writer providing the content. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public void writePayloadFile (@Nonnull final File aPayloadFile, @Nonnull final IPayloadWriter aWriter) throws IOException
+  {
+    ValueEnforcer.notNull (aPayloadFile, "PayloadFile");
+    ValueEnforcer.notNull (aWriter, "Writer");
+
+    boolean bSuccess = false;
+    try (final FileOutputStream aFOS = new FileOutputStream (aPayloadFile);
+         final BufferedOutputStream aBOS = new BufferedOutputStream (aFOS))
+    {
+      aWriter.writePayload (aBOS);
+      aBOS.flush ();
+      // The payload must be durable before the item file references it
+      aFOS.getChannel ().force (true);
+      bSuccess = true;
+    }
+    finally
+    {
+      if (!bSuccess)
+        FileOperationManager.INSTANCE.deleteFileIfExisting (aPayloadFile);
+    }
+  }
+
+  /**
+   * Write the provided item to the journal. An eventually existing file of the
+   * same item is replaced atomically. The method returns after the content was
+   * forced to disk.
+   *
+   * @param aItem
+   *        The item to write. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public void write (@Nonnull final AS4OutboundQueueItem aItem) throws IOException
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+
+    final File aFile = _getFile (m_aDirectory, aItem);
+    final File aTempFile = new File (m_aDirectory, aItem.getID () + TEMP_FILE_EXTENSION);
+    final OutputStream aOS = FileHelper.getBufferedOutputStream (aTempFile);
+    if (aOS == null)
+      throw new IOException ("Failed to open '" + aTempFile.getAbsolutePath () + "' for writing");
+
+    try (final DataOutputStream aDOS = new DataOutputStream (aOS))
+    {
+      aDOS.writeInt (MAGIC);
+      aDOS.writeInt (VERSION);
+      _writeString (aDOS, aItem.getID ());
+      _writeString (aDOS, aItem.getDestination ());
+      _writeString (aDOS, aItem.getCreationDateTime ().toString ());
+      aDOS.writeInt (aItem.getAttempts ());
+      final ICommonsOrderedMap <String, String> aProps = aItem.directGetProperties ();
+      aDOS.writeInt (aProps.size ());
+      for (final Map.Entry <String, String> aEntry : aProps.entrySet ())
+      {
+        _writeString (aDOS, aEntry.getKey ());
+        _writeString (aDOS, aEntry.getValue ());
+      }
+      final File aPayloadFile = aItem.getPayloadFile ();
+      if (aPayloadFile != null)
+      {
+        // Only the name is stored, as the file is moved with the item
+        aDOS.writeByte (PAYLOAD_FILE);
+        _writeString (aDOS, aPayloadFile.getName ());
+      }
+      else
+      {
+        final byte [] aPayload = aItem.directGetPayload ();
+        aDOS.writeByte (PAYLOAD_INLINE);
+        aDOS.writeInt (aPayload.length);
+        aDOS.write (aPayload);
+      }
+    }
+
+    // Make the new content visible at once and durable
+    AS4IOHelper.atomicReplace (aTempFile, aFile);
+  }
+
+  @Nonnull
+  private static AS4OutboundQueueItem _read (@Nonnull final File aFile) throws IOException
+  {
+    final InputStream aIS = FileHelper.getBufferedInputStream (aFile);
+    if (aIS == null)
+      throw new IOException ("Failed to open '" + aFile.getAbsolutePath () + "' for reading");
+
+    try (final DataInputStream aDIS = new DataInputStream (aIS))
+    {
+      if (aDIS.readInt () != MAGIC)
+        throw new IOException ("'" + aFile.getAbsolutePath () + "' is not an outbound queue journal file");
+      final int nVersion = aDIS.readInt ();
+      if (nVersion != VERSION_1 && nVersion != VERSION)
+        throw new IOException ("'" + aFile.getAbsolutePath () + "' has the unsupported version " + nVersion);
+
+      final String sID = _readString (aDIS);
+      final String sDestination = _readString (aDIS);
+      final OffsetDateTime aCreationDT = OffsetDateTime.parse (_readString (aDIS));
+      final int nAttempts = aDIS.readInt ();
+      final int nPropCount = aDIS.readInt ();
+      final ICommonsOrderedMap <String, String> aProps = new CommonsLinkedHashMap <> (nPropCount);
+      for (int i = 0; i < nPropCount; ++i)
+        aProps.put (_readString (aDIS), _readString (aDIS));
+      final byte nPayloadType = nVersion == VERSION_1 ? PAYLOAD_INLINE : aDIS.readByte ();
+      if (nPayloadType == PAYLOAD_FILE)
+      {
+        // The payload file is located next to the item file - the existence is
+        // checked by the caller
+        final File aPayloadFile = new File (aFile.getParentFile (), _readString (aDIS));
+        return new AS4OutboundQueueItem (sID, sDestination, aCreationDT, nAttempts, aProps, null, aPayloadFile);
+      }
+      if (nPayloadType != PAYLOAD_INLINE)
+        throw new IOException ("'" + aFile.getAbsolutePath () + "' has the unsupported payload type " + nPayloadType);
+
+      final byte [] aPayload = new byte [aDIS.readInt ()];
+      aDIS.readFully (aPayload);
+      return new AS4OutboundQueueItem (sID, sDestination, aCreationDT, nAttempts, aProps, aPayload, null);
+    }
+  }
+
+  /**
+   * Read all pending items from the journal, ordered by creation date time.
+   * Files that cannot be read are logged and skipped. Items whose payload file
+   * was already moved into the {@link #FAILED_DIRECTORY_NAME} sub directory
+   * (e.g. after a crash while moving) are moved there as well.
+   *
+   * @return The list of all pending items. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <AS4OutboundQueueItem> readAll ()
+  {
+    final ICommonsList <AS4OutboundQueueItem> ret = new CommonsArrayList <> ();
+    final File [] aFiles = m_aDirectory.listFiles ( (d, sName) -> sName.endsWith (FILE_EXTENSION));
+    if (aFiles != null)
+      for (final File aFile : aFiles)
+        try
+        {
+          final AS4OutboundQueueItem aItem = _read (aFile);
+          final File aPayloadFile = aItem.getPayloadFile ();
+          if (aPayloadFile != null && !aPayloadFile.isFile ())
+          {
+            if (new File (m_aFailedDirectory, aPayloadFile.getName ()).isFile ())
+            {
+              // Complete the interrupted move
+              LOGGER.warn ("Moving outbound queue item '" +
+                           aItem.getID () +
+                           "' into the failed directory, because its payload file is already there");
+              FileOperationManager.INSTANCE.renameFile (aFile, _getFile (m_aFailedDirectory, aItem));
+            }
+            else
+              LOGGER.error ("The payload file '" +
+                            aPayloadFile.getAbsolutePath () +
+                            "' of outbound queue journal file '" +
+                            aFile.getAbsolutePath () +
+                            "' does not exist");
+          }
+          else
+            ret.add (aItem);
+        }
+        catch (final IOException | RuntimeException ex)
+        {
+          LOGGER.error ("Failed to read outbound queue journal file '" + aFile.getAbsolutePath () + "'", ex);
+        }
+    ret.sort ( (a, b) -> a.getCreationDateTime ().compareTo (b.getCreationDateTime ()));
+    return ret;
+  }
+
+  /**
+   * Remove the item from the journal, after it was sent successfully.
+   *
+   * @param aItem
+   *        The item to remove. May not be <code>null</code>.
+   */
+  public void delete (@Nonnull final AS4OutboundQueueItem aItem)
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+    FileOperationManager.INSTANCE.deleteFileIfExisting (_getFile (m_aDirectory, aItem));
+    // Delete the payload file after the item file, so that no item file
+    // references a missing payload file
+    final File aPayloadFile = aItem.getPayloadFile ();
+    if (aPayloadFile != null)
+      FileOperationManager.INSTANCE.deleteFileIfExisting (new File (m_aDirectory, aPayloadFile.getName ()));
+  }
+
+  /**
+   * Move the item into the "failed" directory, after the maximum number of
+   * attempts was reached.
+   *
+   * @param aItem
+   *        The item to move. May not be <code>null</code>.
+   */
+  public void moveToFailed (@Nonnull final AS4OutboundQueueItem aItem)
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+    // Move the item file first, so that no pending item file references a
+    // missing payload file
+    FileOperationManager.INSTANCE.renameFile (_getFile (m_aDirectory, aItem), _getFile (m_aFailedDirectory, aItem));
+    final File aPayloadFile = aItem.getPayloadFile ();
+    if (aPayloadFile != null)
+      FileOperationManager.INSTANCE.renameFile (new File (m_aDirectory, aPayloadFile.getName ()),
+                                                new File (m_aFailedDirectory, aPayloadFile.getName ()));
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Directory", m_aDirectory).getToString ();
+  }
+
+  /**
+   * @return A new journal in the default directory below
+   *         {@link AS4Configuration#getDataPath()}. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4OutboundQueueJournal createDefault ()
+  {
+    return new AS4OutboundQueueJournal (new File (AS4Configuration.getDataPath (), DEFAULT_DIRECTORY_NAME));
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender.queue;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The settings of an {@link AS4OutboundQueue}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@NotThreadSafe
+public class AS4OutboundQueueSettings
+{
+  public static final int DEFAULT_WORKER_COUNT = 4;
+  public static final int DEFAULT_MAX_PENDING_ITEMS = 10_000;
+  public static final int DEFAULT_MAX_CONCURRENT_PER_DESTINATION = 2;
+  public static final int DEFAULT_MAX_ATTEMPTS = 5;
+  public static final Duration DEFAULT_RETRY_DELAY = Duration.ofMinutes (1);
+
+  private int m_nWorkerCount = DEFAULT_WORKER_COUNT;
+  private int m_nMaxPendingItems = DEFAULT_MAX_PENDING_ITEMS;
+  private int m_nMaxConcurrentPerDestination = DEFAULT_MAX_CONCURRENT_PER_DESTINATION;
+  private int m_nMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+  private Duration m_aRetryDelay = DEFAULT_RETRY_DELAY;
+
+  public AS4OutboundQueueSettings ()
+  {}
+
+  /**
+   * @return The number of worker threads that send the items. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getWorkerCount ()
+  {
+    return m_nWorkerCount;
+  }
+
+  @Nonnull
+  public final AS4OutboundQueueSettings setWorkerCount (@Nonnegative final int nWorkerCount)
+  {
+    ValueEnforcer.isGT0 (nWorkerCount, "WorkerCount");
+    m_nWorkerCount = nWorkerCount;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of items that may be pending in the queue.
+   *         Enqueuing more items blocks the caller (back-pressure). Always
+   *         &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxPendingItems ()
+  {
+    return m_nMaxPendingItems;
+  }
+
+  @Nonnull
+  public final AS4OutboundQueueSettings setMaxPendingItems (@Nonnegative final int nMaxPendingItems)
+  {
+    ValueEnforcer.isGT0 (nMaxPendingItems, "MaxPendingItems");
+    m_nMaxPendingItems = nMaxPendingItems;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of items that are sent concurrently to the same
+   *         destination. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxConcurrentPerDestination ()
+  {
+    return m_nMaxConcurrentPerDestination;
+  }
+
+  @Nonnull
+  public final AS4OutboundQueueSettings setMaxConcurrentPerDestination (@Nonnegative final int nMaxConcurrentPerDestination)
+  {
+    ValueEnforcer.isGT0 (nMaxConcurrentPerDestination, "MaxConcurrentPerDestination");
+    m_nMaxConcurrentPerDestination = nMaxConcurrentPerDestination;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of attempts to send an item, before it is moved
+   *         to the "failed" directory of the journal. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxAttempts ()
+  {
+    return m_nMaxAttempts;
+  }
+
+  @Nonnull
+  public final AS4OutboundQueueSettings setMaxAttempts (@Nonnegative final int nMaxAttempts)
+  {
+    ValueEnforcer.isGT0 (nMaxAttempts, "MaxAttempts");
+    m_nMaxAttempts = nMaxAttempts;
+    return this;
+  }
+
+  /**
+   * @return The duration to wait after a failed attempt, before the item is
+   *         sent again. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getRetryDelay ()
+  {
+    return m_aRetryDelay;
+  }
+
+  @Nonnull
+  public final AS4OutboundQueueSettings setRetryDelay (@Nonnull final Duration aRetryDelay)
+  {
+    ValueEnforcer.notNull (aRetryDelay, "RetryDelay");
+    ValueEnforcer.isFalse (aRetryDelay.isNegative (), "RetryDelay may not be negative");
+    m_aRetryDelay = aRetryDelay;
+    return this;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("WorkerCount", m_nWorkerCount)
+                                       .append ("MaxPendingItems", m_nMaxPendingItems)
+                                       .append ("MaxConcurrentPerDestination", m_nMaxConcurrentPerDestination)
+                                       .append ("MaxAttempts", m_nMaxAttempts)
+                                       .append ("RetryDelay", m_aRetryDelay)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender.queue;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.state.ISuccessIndicator;
+
+/**
+ * The result of {@link IAS4OutboundQueueItemHandler#sendItem(AS4OutboundQueueItem)}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public enum EAS4OutboundQueueSendResult implements ISuccessIndicator
+{
+  /** The item was sent and can be removed from the queue */
+  SUCCESS,
+  /** Sending failed temporarily - the item is retried later */
+  RETRY,
+  /**
+   * Sending failed permanently (e.g. invalid data or rejected by the receiver)
+   * - the item is moved to the failed items without further attempts
+   */
+  PERMANENT_FAILURE;
+
+  public boolean isSuccess ()
+  {
+    return this == SUCCESS;
+  }
+
+  /**
+   * @return <code>true</code> if this is {@link #PERMANENT_FAILURE}.
+   */
+  public boolean isPermanentFailure ()
+  {
+    return this == PERMANENT_FAILURE;
+  }
+
+  /**
+   * Convert a success indicator, treating every failure as retryable.
+   *
+   * @param aSuccessIndicator
+   *        The success indicator to convert. May not be <code>null</code>.
+   * @return {@link #SUCCESS} or {@link #RETRY}. Never <code>null</code>.
+   */
+  @Nonnull
+  public static EAS4OutboundQueueSendResult valueOf (@Nonnull final ISuccessIndicator aSuccessIndicator)
+  {
+    return aSuccessIndicator.isSuccess () ? SUCCESS : RETRY;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender.queue;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.state.EContinue;
+
+/**
+ * Callback interface for {@link AS4OutboundQueue} that performs the main
+ * sending of a single item. This is e.g. the place where a
+ * <code>Phase4PeppolSender</code> is created from the item properties and
+ * payload, and where the result of
+ * <code>sendMessageAndCheckForReceipt</code> is interpreted.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@FunctionalInterface
+public interface IAS4OutboundQueueItemHandler
+{
+  /**
+   * Send the provided item. This method is invoked from one of the worker
+   * threads of the queue and must be thread-safe.
+   *
+   * @param aItem
+   *        The item to be send. Never <code>null</code>.
+   * @return {@link EAS4OutboundQueueSendResult#SUCCESS} if the item was sent
+   *         successfully and can be removed from the queue,
+   *         {@link EAS4OutboundQueueSendResult#RETRY} if sending should be
+   *         retried later and {@link EAS4OutboundQueueSendResult#PERMANENT_FAILURE}
+   *         if the item should be moved to the failed items right away. May not
+   *         be <code>null</code>.
+   * @throws Exception
+   *         In case of error. This is handled like
+   *         {@link EAS4OutboundQueueSendResult#RETRY}.
+   */
+  @Nonnull
+  EAS4OutboundQueueSendResult sendItem (@Nonnull AS4OutboundQueueItem aItem) throws Exception;
+
+  /**
+   * Invoked after sending an item failed and before it is scheduled for a
+   * retry. It is not invoked if the maximum number of attempts is reached or
+   * if {@link EAS4OutboundQueueSendResult#PERMANENT_FAILURE} was returned.
+   *
+   * @param aItem
+   *        The item that failed. Never <code>null</code>.
+   *        {@link AS4OutboundQueueItem#getAttempts()} is the 0-based index of
+   *        the failed try.
+   * @param nMaxAttempts
+   *        The maximum number of attempts. Always &gt; 0.
+   * @param aRetryDelay
+   *        The delay before the retry. Never <code>null</code>.
+   * @param aCause
+   *        The exception thrown by {@link #sendItem(AS4OutboundQueueItem)}.
+   *        May be <code>null</code> if
+   *        {@link EAS4OutboundQueueSendResult#RETRY} was returned.
+   * @return {@link EContinue#CONTINUE} to retry the item as foreseen,
+   *         {@link EContinue#BREAK} to give up and move the item to the failed
+   *         items. May not be <code>null</code>.
+   */
+  @Nonnull
+  default EContinue onBeforeRetry (@Nonnull final AS4OutboundQueueItem aItem,
+                                   @Nonnegative final int nMaxAttempts,
+                                   @Nonnull final Duration aRetryDelay,
+                                   @Nullable final Exception aCause)
+  {
+    return EContinue.CONTINUE;
+  }
+}
@@ -0,0 +1,614 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.FileEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.callback.IThrowingRunnable;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.state.EContinue;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.httpclient.response.ResponseHandlerXml;
+import com.helger.phase4.client.IAS4RetryCallback;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.dump.IAS4OutgoingDumper;
+import com.helger.phase4.http.BasicHttpPoster;
+import com.helger.phase4.http.HttpRetrySettings;
+import com.helger.phase4.mgr.MetaAS4Manager;
+import com.helger.phase4.sender.queue.AS4OutboundQueue;
+import com.helger.phase4.sender.queue.AS4OutboundQueueItem;
+import com.helger.phase4.sender.queue.AS4OutboundQueueJournal;
+import com.helger.phase4.sender.queue.AS4OutboundQueueSettings;
+import com.helger.phase4.sender.queue.EAS4OutboundQueueSendResult;
+import com.helger.phase4.sender.queue.IAS4OutboundQueueItemHandler;
+
+/**
+ * Dedicated engine for the asynchronous responses of the
+ * {@link AS4RequestHandler}. It is used instead of the shared
+ * <code>PhotonWorkerPool</code>, if it is set via
+ * {@link AS4RequestHandler#setAsyncResponseEngine(AS4AsyncResponseEngine)} or
+ * globally via {@link #setDefaultInstance(AS4AsyncResponseEngine)}. The work
+ * is split in two stages:
+ * <ol>
+ * <li>Processing: SPI invocation and creation of the response message. This
+ * runs on a fixed number of threads with a bounded queue. If the queue is full,
+ * the submission is rejected and the {@link AS4RequestHandler} synchronously
+ * responds with an ebMS error instead.</li>
+ * <li>Sending: the serialized response is put into an {@link AS4OutboundQueue}.
+ * This provides the per destination concurrency limit, timer scheduled retries
+ * (no sleeping threads) and the persistence of pending responses, so that they
+ * are resumed after a restart. Small responses are kept in memory, larger ones
+ * are spooled to a payload file of the journal.</li>
+ * </ol>
+ * The outgoing dumper and the retry callback provided to
+ * {@link #enqueueResponse(String, HttpEntity, String, IAS4OutgoingDumper, IAS4RetryCallback)}
+ * are only kept in memory. Responses resumed from the journal after a restart
+ * use the global outgoing dumper and no retry callback.
+ * Metrics on queue depths, rejections and send latency are available via the
+ * respective getters.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4AsyncResponseEngine implements AutoCloseable
+{
+  public static final int DEFAULT_PROCESSING_THREAD_COUNT = 4;
+  public static final int DEFAULT_PROCESSING_QUEUE_CAPACITY = 1_000;
+  /** The default journal directory name below the data path */
+  public static final String DEFAULT_JOURNAL_DIRECTORY_NAME = "async-response-queue";
+  /** Responses up to this size are kept in memory, larger ones in a file */
+  public static final int MAX_IN_MEMORY_PAYLOAD_BYTES = CGlobal.BYTES_PER_MEGABYTE;
+
+  /** Queue item property containing the HTTP Content-Type */
+  public static final String ITEM_PROPERTY_CONTENT_TYPE = "phase4.contenttype";
+  /** Queue item property containing the ID of the message responded to */
+  public static final String ITEM_PROPERTY_MESSAGE_ID = "phase4.messageid";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4AsyncResponseEngine.class);
+  private static final AtomicInteger ENGINE_COUNTER = new AtomicInteger (0);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static AS4AsyncResponseEngine s_aDefaultInstance;
+
+  /**
+   * The non-persistent callbacks of a single response.
+   *
+   * @author Philip Helger
+   */
+  private static final class ResponseCallbacks
+  {
+    private final IAS4OutgoingDumper m_aOutgoingDumper;
+    private final IAS4RetryCallback m_aRetryCallback;
+
+    ResponseCallbacks (@Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                       @Nullable final IAS4RetryCallback aRetryCallback)
+    {
+      m_aOutgoingDumper = aOutgoingDumper;
+      m_aRetryCallback = aRetryCallback;
+    }
+  }
+
+  private final ThreadPoolExecutor m_aProcessingExecutor;
+  private final AS4OutboundQueueJournal m_aJournal;
+  private final int m_nMaxSendAttempts;
+  private final AS4OutboundQueue m_aSendQueue;
+  // Key is the queue item ID
+  private final Map <String, ResponseCallbacks> m_aCallbacks = new ConcurrentHashMap <> ();
+  private final BasicHttpPoster m_aHttpPoster = new BasicHttpPoster ();
+
+  private final LongAdder m_aSubmittedCount = new LongAdder ();
+  private final LongAdder m_aRejectedCount = new LongAdder ();
+  private final LongAdder m_aProcessingFailedCount = new LongAdder ();
+  private final LongAdder m_aSentCount = new LongAdder ();
+  private final LongAdder m_aTotalSendLatencyMS = new LongAdder ();
+  private final AtomicLong m_aMaxSendLatencyMS = new AtomicLong (0);
+
+  /**
+   * Constructor. Pending responses contained in the journal are resumed.
+   *
+   * @param nProcessingThreadCount
+   *        The number of threads for the SPI invocation and response creation.
+   *        Must be &gt; 0.
+   * @param nProcessingQueueCapacity
+   *        The maximum number of responses waiting for processing. Must be &gt;
+   *        0.
+   * @param aJournal
+   *        The journal for the pending responses. May not be
+   *        <code>null</code>.
+   * @param aSendSettings
+   *        The settings for sending the responses. May not be
+   *        <code>null</code>.
+   */
+  public AS4AsyncResponseEngine (@Nonnegative final int nProcessingThreadCount,
+                                 @Nonnegative final int nProcessingQueueCapacity,
+                                 @Nonnull final AS4OutboundQueueJournal aJournal,
+                                 @Nonnull final AS4OutboundQueueSettings aSendSettings)
+  {
+    ValueEnforcer.isGT0 (nProcessingThreadCount, "ProcessingThreadCount");
+    ValueEnforcer.isGT0 (nProcessingQueueCapacity, "ProcessingQueueCapacity");
+    ValueEnforcer.notNull (aJournal, "Journal");
+    ValueEnforcer.notNull (aSendSettings, "SendSettings");
+
+    final int nEngineIndex = ENGINE_COUNTER.incrementAndGet ();
+    final AtomicInteger aThreadCounter = new AtomicInteger (0);
+    m_aProcessingExecutor = new ThreadPoolExecutor (nProcessingThreadCount,
+                                                    nProcessingThreadCount,
+                                                    0L,
+                                                    TimeUnit.MILLISECONDS,
+                                                    new ArrayBlockingQueue <> (nProcessingQueueCapacity),
+                                                    r -> {
+                                                      final Thread ret = new Thread (r,
+                                                                                     "phase4-async-response-" +
+                                                                                        nEngineIndex +
+                                                                                        "-" +
+                                                                                        aThreadCounter.incrementAndGet ());
+                                                      ret.setDaemon (true);
+                                                      return ret;
+                                                    },
+                                                    new ThreadPoolExecutor.AbortPolicy ());
+    m_aJournal = aJournal;
+    m_nMaxSendAttempts = aSendSettings.getMaxAttempts ();
+    m_aSendQueue = new AS4OutboundQueue (aJournal, new IAS4OutboundQueueItemHandler ()
+    {
+      @Nonnull
+      public EAS4OutboundQueueSendResult sendItem (@Nonnull final AS4OutboundQueueItem aItem) throws IOException
+      {
+        return _sendItem (aItem);
+      }
+
+      @Override
+      @Nonnull
+      public EContinue onBeforeRetry (@Nonnull final AS4OutboundQueueItem aItem,
+                                      @Nonnegative final int nMaxAttempts,
+                                      @Nonnull final Duration aRetryDelay,
+                                      @Nullable final Exception aCause)
+      {
+        return _onBeforeRetry (aItem, nMaxAttempts, aRetryDelay, aCause);
+      }
+    }, aSendSettings);
+  }
+
+  /**
+   * @return A new engine with the default settings and the journal in the
+   *         default directory below {@link AS4Configuration#getDataPath()}.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4AsyncResponseEngine createDefault ()
+  {
+    return new AS4AsyncResponseEngine (DEFAULT_PROCESSING_THREAD_COUNT,
+                                       DEFAULT_PROCESSING_QUEUE_CAPACITY,
+                                       new AS4OutboundQueueJournal (new File (AS4Configuration.getDataPath (),
+                                                                              DEFAULT_JOURNAL_DIRECTORY_NAME)),
+                                       new AS4OutboundQueueSettings ());
+  }
+
+  /**
+   * @return The engine used by all {@link AS4RequestHandler} instances that
+   *         don't have an explicit engine. <code>null</code> by default, which
+   *         means the shared <code>PhotonWorkerPool</code> is used.
+   */
+  @Nullable
+  public static AS4AsyncResponseEngine getDefaultInstance ()
+  {
+    return RW_LOCK.readLockedGet ( () -> s_aDefaultInstance);
+  }
+
+  /**
+   * Set the engine used by all {@link AS4RequestHandler} instances that don't
+   * have an explicit engine. The previous engine is not closed.
+   *
+   * @param aEngine
+   *        The engine to use. May be <code>null</code>.
+   */
+  public static void setDefaultInstance (@Nullable final AS4AsyncResponseEngine aEngine)
+  {
+    RW_LOCK.writeLocked ( () -> s_aDefaultInstance = aEngine);
+  }
+
+  /**
+   * Submit the processing of an asynchronous response. The processing is
+   * expected to call
+   * {@link #enqueueResponse(String, HttpEntity, String, IAS4OutgoingDumper, IAS4RetryCallback)}
+   * at the end.
+   *
+   * @param aProcessing
+   *        The processing to be executed. May not be <code>null</code>.
+   * @return A future that is completed when the processing is done. Never
+   *         <code>null</code>.
+   * @throws RejectedExecutionException
+   *         If the processing queue is full or the engine was closed
+   */
+  @Nonnull
+  public CompletableFuture <Void> submit (@Nonnull final IThrowingRunnable <? extends Exception> aProcessing)
+  {
+    ValueEnforcer.notNull (aProcessing, "Processing");
+
+    final CompletableFuture <Void> ret = new CompletableFuture <> ();
+    try
+    {
+      m_aProcessingExecutor.execute ( () -> {
+        try
+        {
+          aProcessing.run ();
+          ret.complete (null);
+        }
+        catch (final Exception ex)
+        {
+          m_aProcessingFailedCount.increment ();
+          LOGGER.error ("Error processing asynchronous AS4 response", ex);
+          ret.completeExceptionally (ex);
+        }
+      });
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      m_aRejectedCount.increment ();
+      throw ex;
+    }
+    m_aSubmittedCount.increment ();
+    return ret;
+  }
+
+  /**
+   * Serialize the provided response and put it into the persistent send queue,
+   * using the global outgoing dumper and no retry callback. If the send queue
+   * is full, this method blocks until space is available.
+   *
+   * @param sURL
+   *        The URL to send the response to. May neither be <code>null</code>
+   *        nor empty.
+   * @param aHttpEntity
+   *        The response entity. May not be <code>null</code>.
+   * @param sMessageID
+   *        The ID of the message that is responded to. May neither be
+   *        <code>null</code> nor empty.
+   * @throws IOException
+   *         In case serialization or persisting failed
+   * @throws InterruptedException
+   *         If interrupted while waiting for space in the send queue
+   */
+  public void enqueueResponse (@Nonnull @Nonempty final String sURL,
+                               @Nonnull final HttpEntity aHttpEntity,
+                               @Nonnull @Nonempty final String sMessageID) throws IOException, InterruptedException
+  {
+    enqueueResponse (sURL, aHttpEntity, sMessageID, null, null);
+  }
+
+  /**
+   * Serialize the provided response and put it into the persistent send queue.
+   * Responses larger than {@link #MAX_IN_MEMORY_PAYLOAD_BYTES} or with an
+   * unknown length are spooled into a payload file of the journal. If the send
+   * queue is full, this method blocks until space is available.
+   *
+   * @param sURL
+   *        The URL to send the response to. May neither be <code>null</code>
+   *        nor empty.
+   * @param aHttpEntity
+   *        The response entity. May not be <code>null</code>.
+   * @param sMessageID
+   *        The ID of the message that is responded to. May neither be
+   *        <code>null</code> nor empty.
+   * @param aOutgoingDumper
+   *        The outgoing dumper to be used for every send attempt. May be
+   *        <code>null</code> to use the global one.
+   * @param aRetryCallback
+   *        The callback to be invoked before every retry. May be
+   *        <code>null</code>.
+   * @throws IOException
+   *         In case serialization or persisting failed
+   * @throws InterruptedException
+   *         If interrupted while waiting for space in the send queue
+   */
+  public void enqueueResponse (@Nonnull @Nonempty final String sURL,
+                               @Nonnull final HttpEntity aHttpEntity,
+                               @Nonnull @Nonempty final String sMessageID,
+                               @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                               @Nullable final IAS4RetryCallback aRetryCallback) throws IOException,
+                                                                                 InterruptedException
+  {
+    ValueEnforcer.notEmpty (sURL, "URL");
+    ValueEnforcer.notNull (aHttpEntity, "HttpEntity");
+    ValueEnforcer.notEmpty (sMessageID, "MessageID");
+
+    final ICommonsOrderedMap <String, String> aProps = new CommonsLinkedHashMap <> ();
+    if (aHttpEntity.getContentType () != null)
+      aProps.put (ITEM_PROPERTY_CONTENT_TYPE, aHttpEntity.getContentType ());
+    aProps.put (ITEM_PROPERTY_MESSAGE_ID, sMessageID);
+
+    final AS4OutboundQueueItem aItem;
+    final long nContentLength = aHttpEntity.getContentLength ();
+    if (nContentLength >= 0 && nContentLength <= MAX_IN_MEMORY_PAYLOAD_BYTES)
+    {
+      final byte [] aPayload;
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ((int) nContentLength))
+      {
+        aHttpEntity.writeTo (aBAOS);
+        aPayload = aBAOS.toByteArray ();
+      }
+      aItem = AS4OutboundQueueItem.create (sURL, aProps, aPayload);
+    }
+    else
+    {
+      // Large or unknown size - don't keep it in memory
+      final File aPayloadFile = m_aJournal.createPayloadFile ();
+      m_aJournal.writePayloadFile (aPayloadFile, aHttpEntity::writeTo);
+      aItem = AS4OutboundQueueItem.createWithPayloadFile (sURL, aProps, aPayloadFile);
+    }
+
+    if (aOutgoingDumper != null || aRetryCallback != null)
+      m_aCallbacks.put (aItem.getID (), new ResponseCallbacks (aOutgoingDumper, aRetryCallback));
+    try
+    {
+      m_aSendQueue.enqueue (aItem);
+    }
+    catch (final IOException | RuntimeException | InterruptedException ex)
+    {
+      m_aCallbacks.remove (aItem.getID ());
+      if (aItem.isPayloadInFile ())
+        FileOperationManager.INSTANCE.deleteFileIfExisting (aItem.getPayloadFile ());
+      throw ex;
+    }
+  }
+
+  @Nonnull
+  private static String _getMessageID (@Nonnull final AS4OutboundQueueItem aItem)
+  {
+    final String sMessageID = aItem.getProperty (ITEM_PROPERTY_MESSAGE_ID);
+    return sMessageID != null ? sMessageID : aItem.getID ();
+  }
+
+  @Nonnull
+  private EContinue _onBeforeRetry (@Nonnull final AS4OutboundQueueItem aItem,
+                                    @Nonnegative final int nMaxAttempts,
+                                    @Nonnull final Duration aRetryDelay,
+                                    @Nullable final Exception aCause)
+  {
+    final ResponseCallbacks aCallbacks = m_aCallbacks.get (aItem.getID ());
+    if (aCallbacks == null || aCallbacks.m_aRetryCallback == null)
+      return EContinue.CONTINUE;
+
+    final EContinue eContinue = aCallbacks.m_aRetryCallback.onBeforeRetry (_getMessageID (aItem),
+                                                                           aItem.getDestination (),
+                                                                           aItem.getAttempts (),
+                                                                           nMaxAttempts,
+                                                                           aRetryDelay.toMillis (),
+                                                                           aCause != null ? aCause
+                                                                                          : new IOException ("Sending failed"));
+    if (eContinue.isBreak ())
+    {
+      // No more attempts
+      m_aCallbacks.remove (aItem.getID ());
+    }
+    return eContinue;
+  }
+
+  @Nonnull
+  private EAS4OutboundQueueSendResult _sendItem (@Nonnull final AS4OutboundQueueItem aItem) throws IOException
+  {
+    final String sContentType = aItem.getProperty (ITEM_PROPERTY_CONTENT_TYPE);
+    final ContentType aContentType = sContentType == null ? null : ContentType.parse (sContentType);
+    final HttpEntity aEntity = aItem.isPayloadInFile () ? new FileEntity (aItem.getPayloadFile (), aContentType)
+                                                        : new ByteArrayEntity (aItem.getPayload (), aContentType);
+    final ResponseCallbacks aCallbacks = m_aCallbacks.get (aItem.getID ());
+
+    try
+    {
+      // Retries are scheduled by the queue
+      m_aHttpPoster.sendGenericMessageWithRetries (aItem.getDestination (),
+                                                   null,
+                                                   aEntity,
+                                                   _getMessageID (aItem),
+                                                   new HttpRetrySettings ().setMaxRetries (0),
+                                                   new ResponseHandlerXml (),
+                                                   aCallbacks == null ? null : aCallbacks.m_aOutgoingDumper,
+                                                   null);
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      // Last attempt - the callbacks are no longer needed
+      if (aItem.getAttempts () + 1 >= m_nMaxSendAttempts)
+        m_aCallbacks.remove (aItem.getID ());
+      throw ex;
+    }
+    m_aCallbacks.remove (aItem.getID ());
+
+    final long nLatencyMS = Math.max (Duration.between (aItem.getCreationDateTime (),
+                                                        MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ())
+                                              .toMillis (),
+                                      0);
+    m_aSentCount.increment ();
+    m_aTotalSendLatencyMS.add (nLatencyMS);
+    m_aMaxSendLatencyMS.accumulateAndGet (nLatencyMS, Math::max);
+    return EAS4OutboundQueueSendResult.SUCCESS;
+  }
+
+  /**
+   * @return The number of responses waiting for processing.
+   */
+  @Nonnegative
+  public int getProcessingQueueSize ()
+  {
+    return m_aProcessingExecutor.getQueue ().size ();
+  }
+
+  /**
+   * @return The number of responses currently processed.
+   */
+  @Nonnegative
+  public int getProcessingActiveCount ()
+  {
+    return m_aProcessingExecutor.getActiveCount ();
+  }
+
+  /**
+   * @return The number of responses in the send queue, including the ones
+   *         currently sent and the ones waiting for a retry.
+   */
+  @Nonnegative
+  public int getSendPendingCount ()
+  {
+    return m_aSendQueue.getPendingCount ();
+  }
+
+  /**
+   * @return The number of responses currently sent.
+   */
+  @Nonnegative
+  public int getSendActiveCount ()
+  {
+    return m_aSendQueue.getActiveCount ();
+  }
+
+  /**
+   * @return The number of accepted submissions.
+   */
+  @Nonnegative
+  public long getSubmittedCount ()
+  {
+    return m_aSubmittedCount.sum ();
+  }
+
+  /**
+   * @return The number of rejected submissions because the processing queue
+   *         was full.
+   */
+  @Nonnegative
+  public long getRejectedCount ()
+  {
+    return m_aRejectedCount.sum ();
+  }
+
+  /**
+   * @return The number of submissions whose processing failed with an
+   *         exception.
+   */
+  @Nonnegative
+  public long getProcessingFailedCount ()
+  {
+    return m_aProcessingFailedCount.sum ();
+  }
+
+  /**
+   * @return The number of successfully sent responses.
+   */
+  @Nonnegative
+  public long getSentCount ()
+  {
+    return m_aSentCount.sum ();
+  }
+
+  /**
+   * @return The average time in milliseconds from putting a response into the
+   *         send queue until it was successfully sent, including retries.
+   */
+  @Nonnegative
+  public long getAverageSendLatencyMS ()
+  {
+    final long nCount = m_aSentCount.sum ();
+    return nCount == 0 ? 0 : m_aTotalSendLatencyMS.sum () / nCount;
+  }
+
+  /**
+   * @return The maximum time in milliseconds from putting a response into the
+   *         send queue until it was successfully sent, including retries.
+   */
+  @Nonnegative
+  public long getMaxSendLatencyMS ()
+  {
+    return m_aMaxSendLatencyMS.get ();
+  }
+
+  /**
+   * Wait until all responses in the send queue were sent or finally failed.
+   *
+   * @param aTimeout
+   *        The maximum time to wait. May not be <code>null</code>.
+   * @return {@link ESuccess#SUCCESS} if the send queue is empty,
+   *         {@link ESuccess#FAILURE} if the timeout elapsed.
+   * @throws InterruptedException
+   *         If interrupted while waiting
+   */
+  @Nonnull
+  public ESuccess waitUntilSendQueueEmpty (@Nonnull final Duration aTimeout) throws InterruptedException
+  {
+    return m_aSendQueue.waitUntilEmpty (aTimeout);
+  }
+
+  /**
+   * Stop accepting new submissions, finish all submitted processings and stop
+   * the send queue. Responses that were not yet sent stay in the journal and
+   * are resumed by the next engine on the same journal.
+   */
+  public void close ()
+  {
+    m_aProcessingExecutor.shutdown ();
+    try
+    {
+      if (!m_aProcessingExecutor.awaitTermination (1, TimeUnit.MINUTES))
+        LOGGER.warn ("Asynchronous AS4 response processing did not terminate in time");
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    m_aSendQueue.close ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ProcessingExecutor", m_aProcessingExecutor)
+                                       .append ("SendQueue", m_aSendQueue)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.http.EHttpMethod;
+import com.helger.http.EHttpVersion;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.servlet.request.RequestHelper;
+import com.helger.web.scope.IRequestWebScope;
+import com.helger.web.scope.mgr.WebScopeManager;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Asynchronous AS4 receiving servlet. Other than {@link AS4Servlet} the
+ * container thread is released directly after the request was accepted. The
+ * complete processing (parsing, WSS4J verification and decryption, SPI
+ * invocation and response creation) is done by the same
+ * {@link AS4XServletHandler} but on a separate request executor. By default
+ * that executor uses virtual threads if the runtime supports them (Java 21+)
+ * and a bounded thread pool with a bounded queue otherwise, so that slow SPI
+ * implementations don't exhaust the thread pool of the servlet container. If
+ * the executor rejects a request, HTTP 503 is returned. If the processing
+ * exceeds the asynchronous timeout, HTTP 503 is returned as well and the
+ * result of the processing is discarded. Requests that timed out before their
+ * processing started are skipped, as the container may already have recycled
+ * them.<br>
+ * The CPU-heavy WSS4J actions can be bounded independently via
+ * {@link AS4Configuration#getWSS4JConcurrentSecurityMaxParallel()} if
+ * {@link AS4Configuration#isWSS4JConcurrentSecurity()} is enabled.<br>
+ * The servlet must be registered with asynchronous support in your
+ * <code>WEB-INF/web.xml</code> file:
+ *
+ * <pre>
+&lt;servlet&gt;
+  &lt;servlet-name&gt;AS4Servlet&lt;/servlet-name&gt;
+  &lt;servlet-class&gt;com.helger.phase4.servlet.AS4AsyncServlet&lt;/servlet-class&gt;
+  &lt;async-supported&gt;true&lt;/async-supported&gt;
+&lt;/servlet&gt;
+&lt;servlet-mapping&gt;
+  &lt;servlet-name&gt;AS4Servlet&lt;/servlet-name&gt;
+  &lt;url-pattern&gt;/as4&lt;/url-pattern&gt;
+&lt;/servlet-mapping&gt;
+ * </pre>
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public class AS4AsyncServlet extends HttpServlet
+{
+  /** The default asynchronous timeout: 5 minutes */
+  public static final long DEFAULT_ASYNC_TIMEOUT_MS = 5 * CGlobal.MILLISECONDS_PER_MINUTE;
+  /** The default maximum number of platform threads, if no virtual threads */
+  public static final int DEFAULT_MAX_THREADS = 200;
+  /** The default maximum number of queued requests, if no virtual threads */
+  public static final int DEFAULT_MAX_QUEUED_REQUESTS = 1000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4AsyncServlet.class);
+
+  private final AS4XServletHandler m_aHandler;
+  private final ExecutorService m_aRequestExecutor;
+  private long m_nAsyncTimeoutMS = DEFAULT_ASYNC_TIMEOUT_MS;
+
+  public AS4AsyncServlet ()
+  {
+    this (new AS4XServletHandler (), createDefaultRequestExecutor ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aHandler
+   *        The handler doing the main work. May not be <code>null</code>.
+   * @param aRequestExecutor
+   *        The executor to process the requests. It is shutdown when the
+   *        servlet is destroyed. May not be <code>null</code>.
+   */
+  public AS4AsyncServlet (@Nonnull final AS4XServletHandler aHandler, @Nonnull final ExecutorService aRequestExecutor)
+  {
+    ValueEnforcer.notNull (aHandler, "Handler");
+    ValueEnforcer.notNull (aRequestExecutor, "RequestExecutor");
+    m_aHandler = aHandler;
+    m_aRequestExecutor = aRequestExecutor;
+  }
+
+  /**
+   * @return A new executor using virtual threads if the runtime supports it,
+   *         or a bounded thread pool with {@link #DEFAULT_MAX_THREADS} daemon
+   *         threads and a queue of {@link #DEFAULT_MAX_QUEUED_REQUESTS}
+   *         otherwise. Never <code>null</code>.
+   */
+  @Nonnull
+  public static ExecutorService createDefaultRequestExecutor ()
+  {
+    return createDefaultRequestExecutor (DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED_REQUESTS);
+  }
+
+  /**
+   * @param nMaxThreads
+   *        The maximum number of platform threads to use if virtual threads are
+   *        not supported. Must be &gt; 0.
+   * @param nMaxQueuedRequests
+   *        The maximum number of requests waiting for a platform thread if
+   *        virtual threads are not supported. Must be &ge; 0. Additional
+   *        requests are rejected.
+   * @return A new executor using virtual threads if the runtime supports it,
+   *         or a bounded thread pool with daemon threads otherwise. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static ExecutorService createDefaultRequestExecutor (@Nonnegative final int nMaxThreads,
+                                                              @Nonnegative final int nMaxQueuedRequests)
+  {
+    ValueEnforcer.isGT0 (nMaxThreads, "MaxThreads");
+    ValueEnforcer.isGE0 (nMaxQueuedRequests, "MaxQueuedRequests");
+    try
+    {
+      // Java 21+ only - phase4 itself is compiled for Java 11
+      final Method aMethod = Executors.class.getMethod ("newVirtualThreadPerTaskExecutor");
+      final ExecutorService ret = (ExecutorService) aMethod.invoke (null);
+      LOGGER.info ("Using virtual threads for asynchronous AS4 request processing");
+      return ret;
+    }
+    catch (final ReflectiveOperationException ex)
+    {
+      // Fall through
+    }
+
+    final AtomicInteger aCounter = new AtomicInteger (0);
+    final BlockingQueue <Runnable> aQueue = nMaxQueuedRequests == 0 ? new SynchronousQueue <> ()
+                                                                    : new LinkedBlockingQueue <> (nMaxQueuedRequests);
+    final ThreadFactory aThreadFactory = r -> {
+      final Thread t = new Thread (r, "phase4-async-request-" + aCounter.incrementAndGet ());
+      t.setDaemon (true);
+      return t;
+    };
+    // Rejects requests if all threads are busy and the queue is full
+    final ThreadPoolExecutor ret = new ThreadPoolExecutor (nMaxThreads,
+                                                           nMaxThreads,
+                                                           60,
+                                                           TimeUnit.SECONDS,
+                                                           aQueue,
+                                                           aThreadFactory,
+                                                           new ThreadPoolExecutor.AbortPolicy ());
+    ret.allowCoreThreadTimeOut (true);
+    return ret;
+  }
+
+  /**
+   * @return The handler doing the main work. Use it to customize crypto
+   *         factory, PMode resolver etc. Never <code>null</code>.
+   */
+  @Nonnull
+  public final AS4XServletHandler getHandler ()
+  {
+    return m_aHandler;
+  }
+
+  /**
+   * @return The asynchronous timeout in milliseconds. Values &le; 0 mean no
+   *         timeout.
+   */
+  public final long getAsyncTimeoutMS ()
+  {
+    return m_nAsyncTimeoutMS;
+  }
+
+  /**
+   * @param nAsyncTimeoutMS
+   *        The asynchronous timeout in milliseconds. Values &le; 0 mean no
+   *        timeout.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4AsyncServlet setAsyncTimeoutMS (final long nAsyncTimeoutMS)
+  {
+    m_nAsyncTimeoutMS = nAsyncTimeoutMS;
+    return this;
+  }
+
+  @Nonnull
+  private static EHttpVersion _getHttpVersion (@Nonnull final HttpServletRequest aHttpRequest)
+  {
+    final EHttpVersion ret = RequestHelper.getHttpVersion (aHttpRequest);
+    return ret != null ? ret : EHttpVersion.HTTP_11;
+  }
+
+  private static void _sendError (@Nonnull final HttpServletResponse aHttpResponse, final int nStatusCode)
+  {
+    if (!aHttpResponse.isCommitted ())
+      try
+      {
+        aHttpResponse.sendError (nStatusCode);
+      }
+      catch (final IOException | IllegalStateException ex)
+      {
+        LOGGER.warn ("Failed to send HTTP error response " + nStatusCode, ex);
+      }
+  }
+
+  private static void _complete (@Nonnull final AsyncContext aAsyncContext)
+  {
+    try
+    {
+      aAsyncContext.complete ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // E.g. already completed by the container
+      LOGGER.warn ("Failed to complete asynchronous AS4 request: " + ex.getMessage ());
+    }
+  }
+
+  private void _handleAsync (@Nonnull final AsyncContext aAsyncContext,
+                             @Nonnull final AtomicBoolean aFinished,
+                             @Nonnull final HttpServletRequest aHttpRequest,
+                             @Nonnull final HttpServletResponse aHttpResponse)
+  {
+    // After a timeout or an error the container may already have recycled the
+    // request, so it must not be touched anymore
+    if (aFinished.get ())
+    {
+      LOGGER.warn ("Asynchronous AS4 request was already finished before processing started - skipping it");
+      return;
+    }
+
+    AS4UnifiedResponse aUnifiedResponse = null;
+    Exception aError = null;
+    try
+    {
+      final IRequestWebScope aRequestScope = WebScopeManager.onRequestBegin (aHttpRequest, aHttpResponse);
+      try
+      {
+        aUnifiedResponse = m_aHandler.createUnifiedResponse (_getHttpVersion (aHttpRequest),
+                                                             EHttpMethod.POST,
+                                                             aHttpRequest,
+                                                             aRequestScope);
+        if (aFinished.get ())
+        {
+          LOGGER.warn ("Asynchronous AS4 request was already finished before handling - skipping it");
+          return;
+        }
+        m_aHandler.handleRequest (aRequestScope, aUnifiedResponse);
+      }
+      finally
+      {
+        WebScopeManager.onRequestEnd ();
+      }
+    }
+    catch (final Exception ex)
+    {
+      LOGGER.error ("Error processing asynchronous AS4 request", ex);
+      aError = ex;
+    }
+
+    // Only touch the response, if it was not yet finished because of a timeout
+    // or an error
+    if (!aFinished.compareAndSet (false, true))
+    {
+      LOGGER.warn ("Asynchronous AS4 request was already finished (timeout or error) - discarding the response");
+      return;
+    }
+
+    try
+    {
+      if (aError == null)
+        aUnifiedResponse.applyToResponse (aHttpResponse);
+      else
+        _sendError (aHttpResponse, CHttp.HTTP_INTERNAL_SERVER_ERROR);
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error ("Error writing asynchronous AS4 response", ex);
+      _sendError (aHttpResponse, CHttp.HTTP_INTERNAL_SERVER_ERROR);
+    }
+    finally
+    {
+      _complete (aAsyncContext);
+    }
+  }
+
+  @Override
+  protected void doPost (@Nonnull final HttpServletRequest aHttpRequest,
+                         @Nonnull final HttpServletResponse aHttpResponse) throws IOException
+  {
+    final AsyncContext aAsyncContext = aHttpRequest.startAsync (aHttpRequest, aHttpResponse);
+    aAsyncContext.setTimeout (Math.max (m_nAsyncTimeoutMS, 0));
+
+    // Set to true by whoever writes the response first
+    final AtomicBoolean aFinished = new AtomicBoolean (false);
+    aAsyncContext.addListener (new AsyncListener ()
+    {
+      public void onStartAsync (@Nonnull final AsyncEvent aEvent)
+      {}
+
+      public void onComplete (@Nonnull final AsyncEvent aEvent)
+      {}
+
+      public void onTimeout (@Nonnull final AsyncEvent aEvent)
+      {
+        if (aFinished.compareAndSet (false, true))
+        {
+          LOGGER.error ("Asynchronous AS4 request timed out after " + aAsyncContext.getTimeout () + " ms");
+          _sendError (aHttpResponse, CHttp.HTTP_SERVICE_UNAVAILABLE);
+          _complete (aAsyncContext);
+        }
+      }
+
+      public void onError (@Nonnull final AsyncEvent aEvent)
+      {
+        if (aFinished.compareAndSet (false, true))
+        {
+          LOGGER.error ("Error in asynchronous AS4 request", aEvent.getThrowable ());
+          _complete (aAsyncContext);
+        }
+      }
+    });
+
+    try
+    {
+      m_aRequestExecutor.execute ( () -> _handleAsync (aAsyncContext, aFinished, aHttpRequest, aHttpResponse));
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      LOGGER.error ("Failed to schedule asynchronous AS4 request processing", ex);
+      if (aFinished.compareAndSet (false, true))
+      {
+        _sendError (aHttpResponse, CHttp.HTTP_SERVICE_UNAVAILABLE);
+        _complete (aAsyncContext);
+      }
+    }
+  }
+
+  @Override
+  public void destroy ()
+  {
+    m_aRequestExecutor.shutdown ();
+    try
+    {
+      if (!m_aRequestExecutor.awaitTermination (30, TimeUnit.SECONDS))
+        LOGGER.warn ("Not all asynchronous AS4 requests finished in time");
+    }
+    catch (final InterruptedException ex)
+    {
+      LOGGER.error ("Interrupted waiting for asynchronous AS4 requests", ex);
+      Thread.currentThread ().interrupt ();
+    }
+    super.destroy ();
+  }
+}
@@ -48,6 +48,7 @@ import com.helger.commons.error.list.ErrorList;
 import com.helger.commons.http.CHttpHeader;
 import com.helger.commons.http.HttpHeaderMap;
 import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.CountingInputStream;
 import com.helger.commons.io.stream.HasInputStream;
 import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
 import com.helger.commons.mime.IMimeType;
@@ -58,6 +59,7 @@ import com.helger.phase4.attachment.AS4DecompressException;
 import com.helger.phase4.attachment.EAS4CompressionMode;
 import com.helger.phase4.attachment.IAS4IncomingAttachmentFactory;
 import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.crypto.IAS4CryptoFactory;
 import com.helger.phase4.dump.AS4DumpManager;
 import com.helger.phase4.dump.IAS4IncomingDumper;
@@ -70,6 +72,9 @@ import com.helger.phase4.ebms3header.Ebms3SignalMessage;
 import com.helger.phase4.ebms3header.Ebms3UserMessage;
 import com.helger.phase4.error.EEbmsError;
 import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
+import com.helger.phase4.metrics.AS4MetricsManager;
+import com.helger.phase4.metrics.AS4MetricsTimingInputStream;
+import com.helger.phase4.metrics.EAS4MetricsStage;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.model.AS4Helper;
@@ -93,7 +98,8 @@ import com.helger.xml.XMLHelper;
 import com.helger.xml.serialize.read.DOMReader;
 
 import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.MimeUtility;
 
 /**
  * Utility methods for incoming AS4 messages.
@@ -144,7 +150,7 @@ public class AS4IncomingHandler
   public static void parseAS4Message (@Nonnull final IAS4IncomingAttachmentFactory aIAF,
                                       @Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
                                       @Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
-                                      @Nonnull @WillClose final InputStream aPayloadIS,
+                                      @Nonnull @WillClose final InputStream aRawPayloadIS,
                                       @Nonnull final HttpHeaderMap aHttpHeaders,
                                       @Nonnull final IAS4ParsedMessageCallback aCallback,
                                       @Nullable final IAS4IncomingDumper aIncomingDumper) throws Phase4Exception,
@@ -166,6 +172,11 @@ public class AS4IncomingHandler
       throw new Phase4Exception ("Failed to parse Content-Type '" + sContentType + "'");
     final IMimeType aPlainContentType = aContentType.getCopyWithoutParameters ();
 
+    // Count the incoming bytes only if someone is interested
+    final CountingInputStream aCountingIS = AS4MetricsManager.isEnabled () ? new CountingInputStream (aRawPayloadIS)
+                                                                           : null;
+    final InputStream aPayloadIS = aCountingIS != null ? aCountingIS : aRawPayloadIS;
+
     // Fallback to global dumper if none is provided
     final IAS4IncomingDumper aRealIncomingDumper = aIncomingDumper != null ? aIncomingDumper
                                                                            : AS4DumpManager.getIncomingDumper ();
@@ -188,6 +199,7 @@ public class AS4IncomingHandler
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("MIME Boundary: '" + sBoundary + "'");
 
+      final long nMimeStart = AS4MetricsManager.getStartTime ();
       // Ensure the stream gets closed correctly
       try (final InputStream aRequestIS = AS4DumpManager.getIncomingDumpAwareInputStream (aRealIncomingDumper,
                                                                                           aPayloadIS,
@@ -212,8 +224,9 @@ public class AS4IncomingHandler
 
           try (final MultipartItemInputStream aBodyPartIS = aMulti.createInputStream ())
           {
-            // Read headers AND content
-            final MimeBodyPart aBodyPart = new MimeBodyPart (aBodyPartIS);
+            // Read only the headers - the content is streamed afterwards so
+            // that a part is never completely buffered in memory
+            final InternetHeaders aPartHeaders = new InternetHeaders (aBodyPartIS);
 
             if (nIndex == 0)
             {
@@ -222,9 +235,15 @@ public class AS4IncomingHandler
                 LOGGER.debug ("Parsing first MIME part as SOAP document");
 
               // Read SOAP document
-              aSoapDocument = DOMReader.readXMLDOM (aBodyPart.getInputStream ());
-
-              IMimeType aPlainPartMT = MimeTypeParser.safeParseMimeType (aBodyPart.getContentType ());
+              final String sCTE = aPartHeaders.getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, null);
+              final long nDomStart = AS4MetricsManager.getStartTime ();
+              aSoapDocument = DOMReader.readXMLDOM (StringHelper.hasText (sCTE) ? MimeUtility.decode (aBodyPartIS,
+                                                                                                      sCTE.trim ())
+                                                                                : aBodyPartIS);
+              AS4MetricsManager.onStageFinished (EAS4MetricsStage.INCOMING_DOM_PARSE, nDomStart);
+
+              IMimeType aPlainPartMT = MimeTypeParser.safeParseMimeType (aPartHeaders.getHeader (CHttpHeader.CONTENT_TYPE,
+                                                                                                 null));
               if (aPlainPartMT != null)
                 aPlainPartMT = aPlainPartMT.getCopyWithoutParameters ();
 
@@ -247,13 +266,14 @@ public class AS4IncomingHandler
               if (LOGGER.isDebugEnabled ())
                 LOGGER.debug ("Parsing MIME part #" + nIndex + " as attachment");
 
-              final WSS4JAttachment aAttachment = aIAF.createAttachment (aBodyPart, aResHelper);
+              final WSS4JAttachment aAttachment = aIAF.createAttachment (aPartHeaders, aBodyPartIS, aResHelper);
               aIncomingAttachments.add (aAttachment);
             }
           }
           nIndex++;
         }
       }
+      AS4MetricsManager.onStageFinished (EAS4MetricsStage.INCOMING_MIME_PARSE, nMimeStart);
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("Read MIME message with " + aIncomingAttachments.size () + " attachment(s)");
     }
@@ -262,14 +282,26 @@ public class AS4IncomingHandler
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("Received plain message");
 
-      // Expect plain SOAP - read whole request to DOM
-      // Note: this may require a huge amount of memory for large requests
       // Note: This closes the outgoing dump stream, when InputStream is closed
-      aSoapDocument = DOMReader.readXMLDOM (AS4DumpManager.getIncomingDumpAwareInputStream (aRealIncomingDumper,
-                                                                                            aPayloadIS,
-                                                                                            aMessageMetadata,
-                                                                                            aHttpHeaders,
-                                                                                            aDumpOSHolder));
+      final InputStream aDumpAwareIS = AS4DumpManager.getIncomingDumpAwareInputStream (aRealIncomingDumper,
+                                                                                       aPayloadIS,
+                                                                                       aMessageMetadata,
+                                                                                       aHttpHeaders,
+                                                                                       aDumpOSHolder);
+      final long nDomStart = AS4MetricsManager.getStartTime ();
+      if (AS4Configuration.isIncomingSoapBodyStreaming ())
+      {
+        // Expect plain SOAP - read the SOAP Body content into a temporary file
+        // if possible
+        aSoapDocument = AS4SoapStreamingReader.readSoapDocument (aDumpAwareIS, aResHelper);
+      }
+      else
+      {
+        // Expect plain SOAP - read whole request to DOM
+        // Note: this may require a huge amount of memory for large requests
+        aSoapDocument = DOMReader.readXMLDOM (aDumpAwareIS);
+      }
+      AS4MetricsManager.onStageFinished (EAS4MetricsStage.INCOMING_DOM_PARSE, nDomStart);
 
       if (LOGGER.isDebugEnabled ())
       {
@@ -315,6 +347,9 @@ public class AS4IncomingHandler
       }
     }
 
+    if (aCountingIS != null)
+      AS4MetricsManager.onBytesIn (aCountingIS.getBytesRead ());
+
     try
     {
       if (aSoapDocument == null)
@@ -508,7 +543,11 @@ public class AS4IncomingHandler
                             aIncomingAttachment.getId () +
                             "' using " +
                             eCompressionMode);
-            return eCompressionMode.getDecompressStream (aSrcIS);
+            final InputStream aDecompressIS = eCompressionMode.getDecompressStream (aSrcIS);
+            // Decompression happens while the stream is read
+            return AS4MetricsManager.isEnabled () ? new AS4MetricsTimingInputStream (aDecompressIS,
+                                                                                     EAS4MetricsStage.INCOMING_DECOMPRESS)
+                                                  : aDecompressIS;
           }
           catch (final IOException ex)
           {
@@ -634,6 +673,7 @@ public class AS4IncomingHandler
 
       final IPMode aPMode = aState.getPMode ();
       final PModeLeg aEffectiveLeg = aState.getEffectivePModeLeg ();
+      AS4MetricsManager.onIncomingMessage (sProfileID, aPMode != null ? aPMode.getID () : null);
 
       if (aEbmsUserMessage != null)
       {
@@ -713,7 +753,14 @@ public class AS4IncomingHandler
         throw new Phase4Exception ((bUseDecryptedSoap ? "Decrypted" : "Original") +
                                    " SOAP document is missing a Body element");
 
-      aState.setSoapBodyPayloadNode (aBodyNode.getFirstChild ());
+      final AS4LazySoapBody aLazyBody = AS4LazySoapBody.getOfDocument (aRealSoapDoc);
+      if (aLazyBody != null)
+      {
+        // Parsed only when it is really needed
+        aState.setSoapBodyPayloadLazy (aLazyBody);
+      }
+      else
+        aState.setSoapBodyPayloadNode (aBodyNode.getFirstChild ());
 
       final boolean bIsPingMessage = AS4Helper.isPingMessage (aPMode);
       aState.setPingMessage (bIsPingMessage);
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * The SOAP Body content of an incoming message that was read with
+ * {@link AS4SoapStreamingReader}. The content is stored in a temporary file and
+ * only parsed into the owning document, when {@link #getPayloadNode()} is
+ * called for the first time.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@NotThreadSafe
+public final class AS4LazySoapBody
+{
+  /** The DOM user data key, under which the instance is stored */
+  public static final String USER_DATA_KEY = "phase4.lazy.soap.body";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4LazySoapBody.class);
+
+  private final Element m_aBodyElement;
+  private final File m_aSpoolFile;
+  private final boolean m_bHasContent;
+  private boolean m_bMaterialized = false;
+
+  AS4LazySoapBody (@Nonnull final Element aBodyElement, @Nonnull final File aSpoolFile, final boolean bHasContent)
+  {
+    ValueEnforcer.notNull (aBodyElement, "BodyElement");
+    ValueEnforcer.notNull (aSpoolFile, "SpoolFile");
+    m_aBodyElement = aBodyElement;
+    m_aSpoolFile = aSpoolFile;
+    m_bHasContent = bHasContent;
+  }
+
+  /**
+   * @return <code>true</code> if the SOAP Body has at least one child node,
+   *         independent of whether it was already materialized or not.
+   */
+  public boolean hasContent ()
+  {
+    return m_bHasContent;
+  }
+
+  /**
+   * @return <code>true</code> if the content was already parsed into the
+   *         owning document.
+   */
+  public boolean isMaterialized ()
+  {
+    return m_bMaterialized;
+  }
+
+  /**
+   * Parse the spooled SOAP Body content (if not done yet), append it to the
+   * SOAP Body element of the owning document and return the first child of the
+   * SOAP Body.
+   *
+   * @return The first child of the SOAP Body or <code>null</code> if the body
+   *         is empty.
+   * @throws UncheckedIOException
+   *         If the spooled content cannot be parsed
+   */
+  @Nullable
+  public Node getPayloadNode ()
+  {
+    if (!m_bMaterialized)
+    {
+      if (m_bHasContent)
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Materializing SOAP Body content from '" + m_aSpoolFile.getAbsolutePath () + "'");
+
+        // The spool file contains a synthetic root element holding all the
+        // in-scope namespace declarations
+        final Document aWrapperDoc = DOMReader.readXMLDOM (FileHelper.getBufferedInputStream (m_aSpoolFile));
+        if (aWrapperDoc == null)
+          throw new UncheckedIOException (new IOException ("Failed to parse spooled SOAP Body content from '" +
+                                                                   m_aSpoolFile.getAbsolutePath () +
+                                                                   "'"));
+
+        final Document aOwnerDoc = m_aBodyElement.getOwnerDocument ();
+        Node aChild = aWrapperDoc.getDocumentElement ().getFirstChild ();
+        while (aChild != null)
+        {
+          m_aBodyElement.appendChild (aOwnerDoc.importNode (aChild, true));
+          aChild = aChild.getNextSibling ();
+        }
+      }
+      m_bMaterialized = true;
+    }
+    return m_aBodyElement.getFirstChild ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("SpoolFile", m_aSpoolFile)
+                                       .append ("HasContent", m_bHasContent)
+                                       .append ("Materialized", m_bMaterialized)
+                                       .getToString ();
+  }
+
+  /**
+   * Get the lazy SOAP Body of the provided document, if it was read with
+   * {@link AS4SoapStreamingReader}.
+   *
+   * @param aDoc
+   *        The SOAP document to check. May be <code>null</code>.
+   * @return <code>null</code> if the document was not read in a streaming way.
+   */
+  @Nullable
+  public static AS4LazySoapBody getOfDocument (@Nullable final Document aDoc)
+  {
+    if (aDoc == null)
+      return null;
+    final Object aUserData = aDoc.getUserData (USER_DATA_KEY);
+    return aUserData instanceof AS4LazySoapBody ? (AS4LazySoapBody) aUserData : null;
+  }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.servlet.spi.EAS4MessageProcessorExecutionMode;
+import com.helger.phase4.servlet.spi.IAS4ServletMessageProcessorSPI;
+
+/**
+ * Bounded executor for the {@link IAS4ServletMessageProcessorSPI}
+ * implementations that are marked as
+ * {@link EAS4MessageProcessorExecutionMode#INDEPENDENT} or
+ * {@link EAS4MessageProcessorExecutionMode#POST_RECEIPT}. It is only used, if
+ * it is set via
+ * {@link AS4RequestHandler#setMessageProcessorExecutor(AS4MessageProcessorExecutor)}
+ * or globally via {@link #setDefaultInstance(AS4MessageProcessorExecutor)}.
+ * Otherwise all SPIs are invoked sequentially on the request thread.<br>
+ * Every invocation is subject to a timeout. If the queue is full, the
+ * invocation is executed on the calling thread, so that no message is lost.
+ * The timeout applies to such invocations as well - the calling thread is
+ * interrupted when it elapses.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4MessageProcessorExecutor implements AutoCloseable
+{
+  public static final int DEFAULT_THREAD_COUNT = 8;
+  public static final int DEFAULT_QUEUE_CAPACITY = 1_000;
+  public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds (30);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4MessageProcessorExecutor.class);
+  private static final AtomicInteger EXECUTOR_COUNTER = new AtomicInteger (0);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static AS4MessageProcessorExecutor s_aDefaultInstance;
+
+  /**
+   * A single invocation that remembers the thread it is running on, so that
+   * only the invocation itself is interrupted on timeout.
+   *
+   * @param <T>
+   *        The result type
+   */
+  private static final class Invocation <T> implements Runnable
+  {
+    private final Callable <T> m_aCallable;
+    private final CompletableFuture <T> m_aResult;
+    private final CompletableFuture <Void> m_aTerminated;
+    private final SimpleLock m_aLock = new SimpleLock ();
+    @GuardedBy ("m_aLock")
+    private Thread m_aRunner;
+    @GuardedBy ("m_aLock")
+    private boolean m_bInterrupted = false;
+
+    Invocation (@Nonnull final Callable <T> aCallable,
+                @Nonnull final CompletableFuture <T> aResult,
+                @Nullable final CompletableFuture <Void> aTerminated)
+    {
+      m_aCallable = aCallable;
+      m_aResult = aResult;
+      m_aTerminated = aTerminated;
+    }
+
+    public void run ()
+    {
+      try
+      {
+        final boolean bStarted = m_aLock.lockedGet ( () -> {
+          // Already timed out while waiting in the queue?
+          if (m_aResult.isDone ())
+            return Boolean.FALSE;
+          m_aRunner = Thread.currentThread ();
+          return Boolean.TRUE;
+        }).booleanValue ();
+
+        if (bStarted)
+          try
+          {
+            m_aResult.complete (m_aCallable.call ());
+          }
+          catch (final Exception ex)
+          {
+            m_aResult.completeExceptionally (ex);
+          }
+          finally
+          {
+            m_aLock.locked ( () -> {
+              m_aRunner = null;
+              // Don't pass the interruption on to the next task of this thread
+              if (m_bInterrupted)
+                Thread.interrupted ();
+            });
+          }
+      }
+      finally
+      {
+        if (m_aTerminated != null)
+          m_aTerminated.complete (null);
+      }
+    }
+
+    void interrupt ()
+    {
+      m_aLock.locked ( () -> {
+        if (m_aRunner != null)
+        {
+          m_bInterrupted = true;
+          m_aRunner.interrupt ();
+        }
+      });
+    }
+  }
+
+  private final ThreadPoolExecutor m_aExecutor;
+  private final Duration m_aDefaultTimeout;
+
+  private final LongAdder m_aSubmittedCount = new LongAdder ();
+  private final LongAdder m_aCallerRunsCount = new LongAdder ();
+  private final LongAdder m_aTimedOutCount = new LongAdder ();
+
+  /**
+   * Constructor
+   *
+   * @param nThreadCount
+   *        The number of threads for the SPI invocation. Must be &gt; 0.
+   * @param nQueueCapacity
+   *        The maximum number of SPI invocations waiting for execution. Must
+   *        be &gt; 0.
+   * @param aDefaultTimeout
+   *        The timeout to be used for SPIs that don't define their own timeout.
+   *        May not be <code>null</code>. A zero or negative duration means no
+   *        timeout.
+   */
+  public AS4MessageProcessorExecutor (@Nonnegative final int nThreadCount,
+                                      @Nonnegative final int nQueueCapacity,
+                                      @Nonnull final Duration aDefaultTimeout)
+  {
+    ValueEnforcer.isGT0 (nThreadCount, "ThreadCount");
+    ValueEnforcer.isGT0 (nQueueCapacity, "QueueCapacity");
+    ValueEnforcer.notNull (aDefaultTimeout, "DefaultTimeout");
+
+    final int nExecutorIndex = EXECUTOR_COUNTER.incrementAndGet ();
+    final AtomicInteger aThreadCounter = new AtomicInteger (0);
+    m_aExecutor = new ThreadPoolExecutor (nThreadCount,
+                                          nThreadCount,
+                                          0L,
+                                          TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue <> (nQueueCapacity),
+                                          r -> {
+                                            final Thread ret = new Thread (r,
+                                                                           "phase4-spi-" +
+                                                                              nExecutorIndex +
+                                                                              "-" +
+                                                                              aThreadCounter.incrementAndGet ());
+                                            ret.setDaemon (true);
+                                            return ret;
+                                          },
+                                          new ThreadPoolExecutor.AbortPolicy ());
+    m_aDefaultTimeout = aDefaultTimeout;
+  }
+
+  /**
+   * @return A new executor with the default settings. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static AS4MessageProcessorExecutor createDefault ()
+  {
+    return new AS4MessageProcessorExecutor (DEFAULT_THREAD_COUNT, DEFAULT_QUEUE_CAPACITY, DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * @return The executor used by all {@link AS4RequestHandler} instances that
+   *         don't have an explicit executor. <code>null</code> by default,
+   *         which means all SPIs are invoked sequentially.
+   */
+  @Nullable
+  public static AS4MessageProcessorExecutor getDefaultInstance ()
+  {
+    return RW_LOCK.readLockedGet ( () -> s_aDefaultInstance);
+  }
+
+  /**
+   * Set the executor used by all {@link AS4RequestHandler} instances that
+   * don't have an explicit executor. The previous executor is not closed.
+   *
+   * @param aExecutor
+   *        The executor to use. May be <code>null</code>.
+   */
+  public static void setDefaultInstance (@Nullable final AS4MessageProcessorExecutor aExecutor)
+  {
+    RW_LOCK.writeLocked ( () -> s_aDefaultInstance = aExecutor);
+  }
+
+  /**
+   * @return The timeout used for SPIs that don't define their own timeout.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getDefaultTimeout ()
+  {
+    return m_aDefaultTimeout;
+  }
+
+  /**
+   * Submit a single invocation. If the timeout elapses before the invocation
+   * finished, the returned future is completed with a {@link TimeoutException}
+   * and the running invocation is interrupted.
+   *
+   * @param <T>
+   *        The result type
+   * @param aCallable
+   *        The invocation to execute. May not be <code>null</code>.
+   * @param aTimeout
+   *        The specific timeout to use. May be <code>null</code> to use the
+   *        default timeout.
+   * @return A future that is completed when the invocation is done. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public <T> CompletableFuture <T> submit (@Nonnull final Callable <T> aCallable, @Nullable final Duration aTimeout)
+  {
+    return submit (aCallable, aTimeout, null);
+  }
+
+  /**
+   * Submit a single invocation. If the timeout elapses before the invocation
+   * finished, the returned future is completed with a {@link TimeoutException}
+   * and the running invocation is interrupted. An invocation that ignores the
+   * interruption keeps on running, so the termination future is only completed
+   * after the invocation really ended or when it was never started.
+   *
+   * @param <T>
+   *        The result type
+   * @param aCallable
+   *        The invocation to execute. May not be <code>null</code>.
+   * @param aTimeout
+   *        The specific timeout to use. May be <code>null</code> to use the
+   *        default timeout.
+   * @param aTerminated
+   *        The future to be completed after the invocation ended. May be
+   *        <code>null</code>.
+   * @return A future that is completed when the invocation is done. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  <T> CompletableFuture <T> submit (@Nonnull final Callable <T> aCallable,
+                                    @Nullable final Duration aTimeout,
+                                    @Nullable final CompletableFuture <Void> aTerminated)
+  {
+    ValueEnforcer.notNull (aCallable, "Callable");
+
+    final CompletableFuture <T> ret = new CompletableFuture <> ();
+    final Invocation <T> aTask = new Invocation <> (aCallable, ret, aTerminated);
+
+    // The timeout applies independent of the thread the invocation runs on
+    final Duration aRealTimeout = aTimeout != null ? aTimeout : m_aDefaultTimeout;
+    if (!aRealTimeout.isZero () && !aRealTimeout.isNegative ())
+    {
+      ret.orTimeout (aRealTimeout.toMillis (), TimeUnit.MILLISECONDS).whenComplete ( (x, ex) -> {
+        if (ex instanceof TimeoutException)
+        {
+          m_aTimedOutCount.increment ();
+          aTask.interrupt ();
+        }
+      });
+    }
+
+    try
+    {
+      m_aExecutor.execute (aTask);
+      m_aSubmittedCount.increment ();
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      m_aCallerRunsCount.increment ();
+      LOGGER.warn ("AS4 message processor executor is overloaded - invoking SPI on the calling thread");
+      aTask.run ();
+    }
+    return ret;
+  }
+
+  /**
+   * @return The number of invocations waiting for execution.
+   */
+  @Nonnegative
+  public int getQueueSize ()
+  {
+    return m_aExecutor.getQueue ().size ();
+  }
+
+  /**
+   * @return The number of invocations currently executed.
+   */
+  @Nonnegative
+  public int getActiveCount ()
+  {
+    return m_aExecutor.getActiveCount ();
+  }
+
+  /**
+   * @return The number of invocations that were submitted to the executor.
+   */
+  @Nonnegative
+  public long getSubmittedCount ()
+  {
+    return m_aSubmittedCount.sum ();
+  }
+
+  /**
+   * @return The number of invocations that were executed on the calling thread
+   *         because the queue was full.
+   */
+  @Nonnegative
+  public long getCallerRunsCount ()
+  {
+    return m_aCallerRunsCount.sum ();
+  }
+
+  /**
+   * @return The number of invocations that timed out.
+   */
+  @Nonnegative
+  public long getTimedOutCount ()
+  {
+    return m_aTimedOutCount.sum ();
+  }
+
+  /**
+   * Stop accepting new submissions and finish all submitted invocations.
+   */
+  public void close ()
+  {
+    m_aExecutor.shutdown ();
+    try
+    {
+      if (!m_aExecutor.awaitTermination (1, TimeUnit.MINUTES))
+        LOGGER.warn ("AS4 message processor invocations did not terminate in time");
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Executor", m_aExecutor)
+                                       .append ("DefaultTimeout", m_aDefaultTimeout)
+                                       .getToString ();
+  }
+}
@@ -83,6 +83,7 @@ public final class AS4MessageState extends AttributeContainerAny <String> implem
   private static final String KEY_AS4_MESSAGE_TIMESTAMP = "phase4.message.timestamp";
   private static final String KEY_IS_PING_MESSAGE = "phase4.is.ping.message";
   private static final String KEY_SOAP_BODY_PAYLOAD_NODE = "phase4.soap.body.first.child";
+  private static final String KEY_SOAP_BODY_PAYLOAD_LAZY = "phase4.soap.body.lazy";
   private static final String KEY_SOEAP_HEADER_ELEMENT_PROCESSING_SUCCESSFUL = "phase4.soap.header.element.processing.successful";
 
   private final OffsetDateTime m_aReceiptDT;
@@ -391,6 +392,10 @@ public final class AS4MessageState extends AttributeContainerAny <String> implem
   @Nullable
   public Node getSoapBodyPayloadNode ()
   {
+    // Materialize a streamed SOAP Body on first access
+    final AS4LazySoapBody aLazyBody = getCastedValue (KEY_SOAP_BODY_PAYLOAD_LAZY);
+    if (aLazyBody != null)
+      return aLazyBody.getPayloadNode ();
     return getCastedValue (KEY_SOAP_BODY_PAYLOAD_NODE);
   }
 
@@ -399,6 +404,19 @@ public final class AS4MessageState extends AttributeContainerAny <String> implem
     putIn (KEY_SOAP_BODY_PAYLOAD_NODE, aPayloadNode);
   }
 
+  /**
+   * Set the SOAP Body that was read in a streaming way. If set, it takes
+   * precedence over the node set via {@link #setSoapBodyPayloadNode(Node)}.
+   *
+   * @param aLazyBody
+   *        The lazy SOAP Body. May be <code>null</code>.
+   * @since 2.1.3
+   */
+  public void setSoapBodyPayloadLazy (@Nullable final AS4LazySoapBody aLazyBody)
+  {
+    putIn (KEY_SOAP_BODY_PAYLOAD_LAZY, aLazyBody);
+  }
+
   public boolean isSoapHeaderElementProcessingSuccessful ()
   {
     return getAsBoolean (KEY_SOEAP_HEADER_ELEMENT_PROCESSING_SUCCESSFUL, false);
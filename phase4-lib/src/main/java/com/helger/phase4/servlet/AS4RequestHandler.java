@@ -21,7 +21,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
@@ -33,6 +37,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import com.helger.commons.CGlobal;
@@ -40,7 +45,10 @@ import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.callback.IThrowingRunnable;
 import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsCopyOnWriteArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.http.CHttp;
 import com.helger.commons.http.HttpHeaderMap;
 import com.helger.commons.io.IHasInputStream;
@@ -49,6 +57,7 @@ import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.mime.EMimeContentType;
 import com.helger.commons.mime.IMimeType;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.state.ISuccessIndicator;
 import com.helger.commons.string.StringHelper;
 import com.helger.httpclient.response.ResponseHandlerXml;
@@ -89,6 +98,8 @@ import com.helger.phase4.messaging.domain.EAS4MessageType;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.messaging.mime.AS4MimeMessage;
 import com.helger.phase4.messaging.mime.MimeMessageCreator;
+import com.helger.phase4.metrics.AS4MetricsManager;
+import com.helger.phase4.metrics.EAS4MetricsStage;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.model.EMEPBinding;
 import com.helger.phase4.model.MEPHelper;
@@ -102,13 +113,18 @@ import com.helger.phase4.servlet.mgr.AS4ServletMessageProcessorManager;
 import com.helger.phase4.servlet.soap.SOAPHeaderElementProcessorRegistry;
 import com.helger.phase4.servlet.spi.AS4MessageProcessorResult;
 import com.helger.phase4.servlet.spi.AS4SignalMessageProcessorResult;
+import com.helger.phase4.servlet.spi.EAS4MessageProcessorExecutionMode;
 import com.helger.phase4.servlet.spi.IAS4ServletMessageProcessorSPI;
 import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.tracing.AS4SpanContext;
+import com.helger.phase4.tracing.AS4TracingManager;
+import com.helger.phase4.tracing.IAS4Span;
 import com.helger.phase4.util.AS4ResourceHelper;
 import com.helger.phase4.util.AS4XMLHelper;
 import com.helger.phase4.util.Phase4Exception;
 import com.helger.photon.app.PhotonWorkerPool;
 import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+import com.helger.xml.XMLFactory;
 import com.helger.xml.serialize.write.XMLWriter;
 
 import jakarta.mail.MessagingException;
@@ -168,9 +184,18 @@ public class AS4RequestHandler implements AutoCloseable
     public void applyToResponse (@Nonnull final IAS4ResponseAbstraction aHttpResponse,
                                  @Nullable final IAS4OutgoingDumper aOutgoingDumper)
     {
-      final String sXML = AS4XMLHelper.serializeXML (m_aDoc);
       final Charset aCharset = AS4XMLHelper.XWS.getCharset ();
-      final byte [] aXMLBytes = sXML.getBytes (aCharset);
+      final byte [] aXMLBytes;
+      // Serialize directly to bytes without an intermediate String
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        AS4XMLHelper.serializeXML (m_aDoc, aBAOS);
+        aXMLBytes = aBAOS.toByteArray ();
+      }
+      catch (final IOException ex)
+      {
+        throw new IllegalStateException ("Failed to serialize XML response", ex);
+      }
       aHttpResponse.setContent (aXMLBytes, aCharset);
       aHttpResponse.setMimeType (m_aMimeType);
 
@@ -306,7 +331,7 @@ public class AS4RequestHandler implements AutoCloseable
     void onProcessingFinalized (boolean bWasSync);
   }
 
-  private static final class SPIInvocationResult implements ISuccessIndicator
+  static final class SPIInvocationResult implements ISuccessIndicator
   {
     private boolean m_bSuccess = false;
     private Ebms3UserMessage m_aPullReturnUserMsg;
@@ -355,6 +380,56 @@ public class AS4RequestHandler implements AutoCloseable
     }
   }
 
+  private static final class SPICallResult
+  {
+    private final AS4MessageProcessorResult m_aResult;
+    private final ICommonsList <Ebms3Error> m_aProcessingErrorMessages;
+
+    /**
+     * Constructor for an SPI that was not invoked, because a dependency failed
+     */
+    SPICallResult ()
+    {
+      this (null, new CommonsArrayList <> ());
+    }
+
+    SPICallResult (@Nullable final AS4MessageProcessorResult aResult,
+                   @Nonnull final ICommonsList <Ebms3Error> aProcessingErrorMessages)
+    {
+      m_aResult = aResult;
+      m_aProcessingErrorMessages = aProcessingErrorMessages;
+    }
+
+    boolean isSkipped ()
+    {
+      return m_aResult == null;
+    }
+
+    boolean isSuccess ()
+    {
+      return m_aResult != null && m_aResult.isSuccess () && m_aProcessingErrorMessages.isEmpty ();
+    }
+  }
+
+  private static final class ScheduledSPI
+  {
+    private final IAS4ServletMessageProcessorSPI m_aProcessor;
+    private final EAS4MessageProcessorExecutionMode m_eMode;
+    private final ICommonsList <CompletableFuture <SPICallResult>> m_aDependencies;
+    private final CompletableFuture <SPICallResult> m_aFuture;
+
+    ScheduledSPI (@Nonnull final IAS4ServletMessageProcessorSPI aProcessor,
+                  @Nonnull final EAS4MessageProcessorExecutionMode eMode,
+                  @Nonnull final ICommonsList <CompletableFuture <SPICallResult>> aDependencies,
+                  @Nonnull final CompletableFuture <SPICallResult> aFuture)
+    {
+      m_aProcessor = aProcessor;
+      m_eMode = eMode;
+      m_aDependencies = aDependencies;
+      m_aFuture = aFuture;
+    }
+  }
+
   public static final IMimeType MT_MULTIPART_RELATED = EMimeContentType.MULTIPART.buildMimeType ("related");
   private static final Logger LOGGER = LoggerFactory.getLogger (AS4RequestHandler.class);
 
@@ -369,6 +444,13 @@ public class AS4RequestHandler implements AutoCloseable
   private IAS4OutgoingDumper m_aOutgoingDumper;
   private IAS4RetryCallback m_aRetryCallback;
   private ISoapProcessingFinalizedCallback m_aSoapProcessingFinalizedCB;
+  private AS4AsyncResponseEngine m_aAsyncResponseEngine = AS4AsyncResponseEngine.getDefaultInstance ();
+  private AS4MessageProcessorExecutor m_aMessageProcessorExecutor = AS4MessageProcessorExecutor.getDefaultInstance ();
+  // The post-receipt SPIs of the synchronous processing
+  private final ICommonsList <Supplier <CompletableFuture <?>>> m_aPostReceiptSPIs = new CommonsArrayList <> ();
+  // Completed when the SPI invocations on the executor really ended - timed
+  // out invocations may still access the attachments
+  private final ICommonsList <CompletableFuture <?>> m_aSPITerminationFutures = new CommonsCopyOnWriteArrayList <> ();
 
   /** By default get all message processors from the global SPI registry */
   private Supplier <? extends ICommonsList <IAS4ServletMessageProcessorSPI>> m_aProcessorSupplier = AS4ServletMessageProcessorManager::getAllProcessors;
@@ -393,8 +475,18 @@ public class AS4RequestHandler implements AutoCloseable
 
   public void close ()
   {
-    // Delete all the temporary files etc.
-    m_aResHelper.close ();
+    final ICommonsList <CompletableFuture <?>> aRunning = m_aSPITerminationFutures.getAll (x -> !x.isDone ());
+    if (aRunning.isEmpty ())
+    {
+      // Delete all the temporary files etc.
+      m_aResHelper.close ();
+    }
+    else
+    {
+      // The post-receipt and timed out SPIs may still access the attachments
+      CompletableFuture.allOf (aRunning.toArray (new CompletableFuture <?> [0]))
+                       .whenComplete ( (x, ex) -> m_aResHelper.close ());
+    }
   }
 
   /**
@@ -610,6 +702,72 @@ public class AS4RequestHandler implements AutoCloseable
     return this;
   }
 
+  /**
+   * @return The engine used for asynchronous responses. Defaults to
+   *         {@link AS4AsyncResponseEngine#getDefaultInstance()}.
+   *         <code>null</code> means the shared <code>PhotonWorkerPool</code> is
+   *         used.
+   * @since 2.1.3
+   */
+  @Nullable
+  public final AS4AsyncResponseEngine getAsyncResponseEngine ()
+  {
+    return m_aAsyncResponseEngine;
+  }
+
+  /**
+   * Set the engine used for asynchronous responses. If an engine is present,
+   * the processing is bounded, a full processing queue results in a
+   * synchronous ebMS error response and the responses are sent via a
+   * persistent queue.
+   *
+   * @param aAsyncResponseEngine
+   *        The engine to use. May be <code>null</code> to use the shared
+   *        <code>PhotonWorkerPool</code>.
+   * @return this for chaining
+   * @since 2.1.3
+   */
+  @Nonnull
+  public final AS4RequestHandler setAsyncResponseEngine (@Nullable final AS4AsyncResponseEngine aAsyncResponseEngine)
+  {
+    m_aAsyncResponseEngine = aAsyncResponseEngine;
+    return this;
+  }
+
+  /**
+   * @return The executor used for the concurrent invocation of the SPIs.
+   *         Defaults to {@link AS4MessageProcessorExecutor#getDefaultInstance()}.
+   *         <code>null</code> means all SPIs are invoked one after another on
+   *         the request thread.
+   * @since 2.1.3
+   */
+  @Nullable
+  public final AS4MessageProcessorExecutor getMessageProcessorExecutor ()
+  {
+    return m_aMessageProcessorExecutor;
+  }
+
+  /**
+   * Set the executor used for the concurrent invocation of the SPIs. If an
+   * executor is present, the execution mode of each SPI is considered:
+   * independent SPIs run concurrently with a timeout, ordered SPIs run on the
+   * request thread and post-receipt SPIs run after the response was created.
+   * The results are always merged in the order of registration.
+   *
+   * @param aMessageProcessorExecutor
+   *        The executor to use. May be <code>null</code> to invoke all SPIs
+   *        one after another.
+   * @return this for chaining
+   * @since 2.1.3
+   * @see IAS4ServletMessageProcessorSPI#getExecutionMode()
+   */
+  @Nonnull
+  public final AS4RequestHandler setMessageProcessorExecutor (@Nullable final AS4MessageProcessorExecutor aMessageProcessorExecutor)
+  {
+    m_aMessageProcessorExecutor = aMessageProcessorExecutor;
+    return this;
+  }
+
   /**
    * Invoke custom SPI message processors
    *
@@ -638,17 +796,23 @@ public class AS4RequestHandler implements AutoCloseable
    *        <code>null</code>.
    * @param aSPIResult
    *        The result object to be filled. May not be <code>null</code>.
+   * @param aPostReceiptTarget
+   *        The list of post-receipt SPI invocations to be started by the
+   *        caller after the response was created. Each invocation returns a
+   *        future that is completed after the SPI ended. Only filled on
+   *        success. May not be <code>null</code>.
    */
-  private void _invokeSPIsForIncoming (@Nonnull final HttpHeaderMap aHttpHeaders,
-                                       @Nullable final Ebms3UserMessage aEbmsUserMessage,
-                                       @Nullable final Ebms3SignalMessage aEbmsSignalMessage,
-                                       @Nullable final Node aPayloadNode,
-                                       @Nullable final ICommonsList <WSS4JAttachment> aDecryptedAttachments,
-                                       @Nullable final IPMode aPMode,
-                                       @Nonnull final IAS4MessageState aState,
-                                       @Nonnull final ICommonsList <Ebms3Error> aErrorMessagesTarget,
-                                       @Nonnull final ICommonsList <WSS4JAttachment> aResponseAttachmentsTarget,
-                                       @Nonnull final SPIInvocationResult aSPIResult)
+  void invokeSPIsForIncoming (@Nonnull final HttpHeaderMap aHttpHeaders,
+                              @Nullable final Ebms3UserMessage aEbmsUserMessage,
+                              @Nullable final Ebms3SignalMessage aEbmsSignalMessage,
+                              @Nullable final Node aPayloadNode,
+                              @Nullable final ICommonsList <WSS4JAttachment> aDecryptedAttachments,
+                              @Nullable final IPMode aPMode,
+                              @Nonnull final IAS4MessageState aState,
+                              @Nonnull final ICommonsList <Ebms3Error> aErrorMessagesTarget,
+                              @Nonnull final ICommonsList <WSS4JAttachment> aResponseAttachmentsTarget,
+                              @Nonnull final SPIInvocationResult aSPIResult,
+                              @Nonnull final ICommonsList <Supplier <CompletableFuture <?>>> aPostReceiptTarget)
   {
     ValueEnforcer.isTrue (aEbmsUserMessage != null || aEbmsSignalMessage != null,
                           "User OR Signal Message must be present");
@@ -673,198 +837,596 @@ public class AS4RequestHandler implements AutoCloseable
     if (aAllProcessors.isEmpty ())
       LOGGER.error ("No IAS4ServletMessageProcessorSPI is available to process an incoming message");
 
-    // Invoke ALL non-null SPIs
-    for (final IAS4ServletMessageProcessorSPI aProcessor : aAllProcessors)
-      if (aProcessor != null)
-        try
-        {
-          if (LOGGER.isDebugEnabled ())
-            LOGGER.debug ("Invoking AS4 message processor " + aProcessor + " for incoming message");
+    AS4MessageProcessorExecutor aExecutor = m_aMessageProcessorExecutor;
+    if (aExecutor != null &&
+        aDecryptedAttachments != null &&
+        !aDecryptedAttachments.containsOnly (WSS4JAttachment::isRepeatable))
+    {
+      // Concurrent SPIs would compete for the same stream
+      LOGGER.info ("Invoking all AS4 message processors sequentially, because the attachments of message ID '" +
+                   sMessageID +
+                   "' can only be read once");
+      aExecutor = null;
+    }
 
-          // Main processing
-          final AS4MessageProcessorResult aResult;
-          final ICommonsList <Ebms3Error> aProcessingErrorMessages = new CommonsArrayList <> ();
-          if (bIsUserMessage)
+    if (aExecutor == null)
+    {
+      // Invoke ALL non-null SPIs one after another
+      for (final IAS4ServletMessageProcessorSPI aProcessor : aAllProcessors)
+        if (aProcessor != null)
+          try
           {
-            aResult = aProcessor.processAS4UserMessage (m_aMessageMetadata,
+            if (LOGGER.isDebugEnabled ())
+              LOGGER.debug ("Invoking AS4 message processor " + aProcessor + " for incoming message");
+
+            final SPICallResult aCallResult = _callSPI (aProcessor,
                                                         aHttpHeaders,
                                                         aEbmsUserMessage,
-                                                        aPMode,
+                                                        aEbmsSignalMessage,
                                                         aPayloadNode,
                                                         aDecryptedAttachments,
+                                                        aPMode,
                                                         aState,
-                                                        aProcessingErrorMessages);
+                                                        sMessageID,
+                                                        AS4TracingManager.getCurrentSpanContext ());
+            if (_mergeSPIResult (aProcessor,
+                                 aCallResult,
+                                 aEbmsSignalMessage,
+                                 sMessageID,
+                                 aErrorMessagesTarget,
+                                 aResponseAttachmentsTarget,
+                                 aSPIResult).isFailure ())
+            {
+              // Stop processing
+              return;
+            }
           }
-          else
+          catch (final Exception ex)
           {
-            aResult = aProcessor.processAS4SignalMessage (m_aMessageMetadata,
-                                                          aHttpHeaders,
-                                                          aEbmsSignalMessage,
-                                                          aPMode,
-                                                          aState,
-                                                          aProcessingErrorMessages);
+            _handleSPIException (aProcessor, ex, sMessageID, aErrorMessagesTarget);
+            // Stop processing
+            return;
           }
+    }
+    else
+    {
+      if (_invokeSPIsWithExecutor (aExecutor,
+                                   aAllProcessors,
+                                   aHttpHeaders,
+                                   aEbmsUserMessage,
+                                   aEbmsSignalMessage,
+                                   aPayloadNode,
+                                   aDecryptedAttachments,
+                                   aPMode,
+                                   aState,
+                                   sMessageID,
+                                   aErrorMessagesTarget,
+                                   aResponseAttachmentsTarget,
+                                   aSPIResult,
+                                   aPostReceiptTarget).isFailure ())
+      {
+        // Stop processing
+        return;
+      }
+    }
 
-          // Result returned?
-          if (aResult == null)
-            throw new IllegalStateException ("No result object present from AS4 message processor " +
-                                             aProcessor +
-                                             " - this is a programming error");
+    // Remember success
+    aSPIResult.setSuccess (true);
+  }
 
-          if (aProcessingErrorMessages.isNotEmpty () || aResult.isFailure ())
-          {
-            if (aProcessingErrorMessages.isNotEmpty ())
-            {
-              if (LOGGER.isDebugEnabled ())
-                LOGGER.debug ("AS4 message processor " +
-                              aProcessor +
-                              " had processing errors - breaking. Details: " +
-                              aProcessingErrorMessages);
-
-              if (aResult.isSuccess ())
-                LOGGER.warn ("Processing errors are present but success was returned by a previous AS4 message processor " +
-                             aProcessor +
-                             " - considering the whole processing to be failed instead");
-
-              aErrorMessagesTarget.addAll (aProcessingErrorMessages);
-            }
+  /**
+   * Invoke the SPIs according to their execution mode. All independent SPIs
+   * are submitted to the executor as soon as their dependencies finished, while
+   * the ordered SPIs are invoked on the current thread. Afterwards all results
+   * are merged in the order of registration, so that the outcome does not
+   * depend on the timing of the SPIs. SPIs running on the executor get their
+   * own copy of the payload node and of the attachment list.
+   */
+  @Nonnull
+  private ESuccess _invokeSPIsWithExecutor (@Nonnull final AS4MessageProcessorExecutor aExecutor,
+                                            @Nonnull final ICommonsList <IAS4ServletMessageProcessorSPI> aAllProcessors,
+                                            @Nonnull final HttpHeaderMap aHttpHeaders,
+                                            @Nullable final Ebms3UserMessage aEbmsUserMessage,
+                                            @Nullable final Ebms3SignalMessage aEbmsSignalMessage,
+                                            @Nullable final Node aPayloadNode,
+                                            @Nullable final ICommonsList <WSS4JAttachment> aDecryptedAttachments,
+                                            @Nullable final IPMode aPMode,
+                                            @Nonnull final IAS4MessageState aState,
+                                            @Nonnull @Nonempty final String sMessageID,
+                                            @Nonnull final ICommonsList <Ebms3Error> aErrorMessagesTarget,
+                                            @Nonnull final ICommonsList <WSS4JAttachment> aResponseAttachmentsTarget,
+                                            @Nonnull final SPIInvocationResult aSPIResult,
+                                            @Nonnull final ICommonsList <Supplier <CompletableFuture <?>>> aPostReceiptTarget)
+  {
+    // The current span is thread bound, so pass it explicitly to the workers
+    final AS4SpanContext aParentSpanContext = AS4TracingManager.getCurrentSpanContext ();
+
+    // Schedule in the order of registration. Dependencies may only point to
+    // previously registered SPIs, so there can be no cycles.
+    final ICommonsList <ScheduledSPI> aScheduledSPIs = new CommonsArrayList <> ();
+    final ICommonsMap <String, CompletableFuture <SPICallResult>> aFuturesByID = new CommonsHashMap <> ();
+    final ICommonsList <IAS4ServletMessageProcessorSPI> aPostReceiptProcessors = new CommonsArrayList <> ();
+    for (final IAS4ServletMessageProcessorSPI aProcessor : aAllProcessors)
+      if (aProcessor != null)
+      {
+        final EAS4MessageProcessorExecutionMode eMode = aProcessor.getExecutionMode ();
+        if (eMode == EAS4MessageProcessorExecutionMode.POST_RECEIPT)
+        {
+          aPostReceiptProcessors.add (aProcessor);
+          continue;
+        }
 
-            if (aResult.isFailure () && aResult.hasErrorMessage ())
-            {
-              aErrorMessagesTarget.add (EEbmsError.EBMS_OTHER.getAsEbms3Error (m_aLocale,
-                                                                               sMessageID,
-                                                                               "Invoked AS4 message processor SPI " +
-                                                                                           aProcessor +
-                                                                                           " on '" +
-                                                                                           sMessageID +
-                                                                                           "' returned a failure: " +
-                                                                                           aResult.getErrorMessage ()));
-            }
+        final ICommonsList <CompletableFuture <SPICallResult>> aDependencies = new CommonsArrayList <> ();
+        for (final String sDependencyID : aProcessor.getAllDependencyProcessorIDs ())
+        {
+          final CompletableFuture <SPICallResult> aDependency = aFuturesByID.get (sDependencyID);
+          if (aDependency != null)
+            aDependencies.add (aDependency);
+          else
+            LOGGER.warn ("AS4 message processor " +
+                         aProcessor +
+                         " depends on '" +
+                         sDependencyID +
+                         "' which is not registered before it - ignoring this dependency");
+        }
 
-            // Stop processing
-            return;
-          }
+        final CompletableFuture <SPICallResult> aFuture;
+        if (eMode == EAS4MessageProcessorExecutionMode.INDEPENDENT)
+        {
+          // Each concurrent SPI gets its own copy, as DOM is not thread-safe
+          final Node aPayloadNodeCopy = _getPayloadNodeCopy (aPayloadNode);
+          final ICommonsList <WSS4JAttachment> aAttachmentsCopy = aDecryptedAttachments == null ? null
+                                                                                                 : aDecryptedAttachments.getClone ();
+          final Callable <SPICallResult> aCall = () -> _callSPI (aProcessor,
+                                                                 aHttpHeaders,
+                                                                 aEbmsUserMessage,
+                                                                 aEbmsSignalMessage,
+                                                                 aPayloadNodeCopy,
+                                                                 aAttachmentsCopy,
+                                                                 aPMode,
+                                                                 aState,
+                                                                 sMessageID,
+                                                                 aParentSpanContext);
+          final CompletableFuture <Void> aTerminated = new CompletableFuture <> ();
+          m_aSPITerminationFutures.add (aTerminated);
+          aFuture = CompletableFuture.allOf (aDependencies.toArray (new CompletableFuture <?> [0]))
+                                     .handle ( (x, ex) -> Boolean.valueOf (ex == null && _isAllSuccess (aDependencies)))
+                                     .thenCompose (aDependenciesOK -> {
+                                       if (aDependenciesOK.booleanValue ())
+                                         return aExecutor.submit (aCall, aProcessor.getTimeout (), aTerminated);
+
+                                       // Not invoked at all
+                                       aTerminated.complete (null);
+                                       return CompletableFuture.completedFuture (new SPICallResult ());
+                                     });
+        }
+        else
+        {
+          // Completed below on the current thread
+          aFuture = new CompletableFuture <> ();
+        }
+        aScheduledSPIs.add (new ScheduledSPI (aProcessor, eMode, aDependencies, aFuture));
+        aFuturesByID.put (aProcessor.getProcessorID (), aFuture);
+      }
 
-          // SPI invocation returned success and no errors
+    // Invoke all ordered SPIs on the current thread
+    boolean bOrderedFailed = false;
+    for (final ScheduledSPI aScheduled : aScheduledSPIs)
+      if (aScheduled.m_eMode == EAS4MessageProcessorExecutionMode.ORDERED)
+      {
+        if (bOrderedFailed || !_isAllSuccess (aScheduled.m_aDependencies))
+        {
+          // The failure is reported by the merging below
+          aScheduled.m_aFuture.complete (new SPICallResult ());
+          bOrderedFailed = true;
+          continue;
+        }
+
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Invoking AS4 message processor " + aScheduled.m_aProcessor + " for incoming message");
+
+        try
+        {
+          final SPICallResult aCallResult = _callSPI (aScheduled.m_aProcessor,
+                                                      aHttpHeaders,
+                                                      aEbmsUserMessage,
+                                                      aEbmsSignalMessage,
+                                                      aPayloadNode,
+                                                      aDecryptedAttachments,
+                                                      aPMode,
+                                                      aState,
+                                                      sMessageID,
+                                                      aParentSpanContext);
+          aScheduled.m_aFuture.complete (aCallResult);
+          bOrderedFailed = !aCallResult.isSuccess ();
+        }
+        catch (final RuntimeException ex)
+        {
+          aScheduled.m_aFuture.completeExceptionally (ex);
+          bOrderedFailed = true;
+        }
+      }
+
+    // Merge in the order of registration
+    for (final ScheduledSPI aScheduled : aScheduledSPIs)
+    {
+      final IAS4ServletMessageProcessorSPI aProcessor = aScheduled.m_aProcessor;
+      try
+      {
+        final SPICallResult aCallResult;
+        try
+        {
+          aCallResult = aScheduled.m_aFuture.get ();
+        }
+        catch (final ExecutionException ex)
+        {
+          final Throwable aCause = ex.getCause ();
+          if (aCause instanceof TimeoutException)
           {
-            final String sAsyncResultURL = aResult.getAsyncResponseURL ();
-            if (StringHelper.hasText (sAsyncResultURL))
-            {
-              // URL present
-              if (aSPIResult.hasAsyncResponseURL ())
-              {
-                // A second processor returned a response URL - not allowed
-                final String sErrorMsg = "Invoked AS4 message processor SPI " +
-                                         aProcessor +
-                                         " on '" +
-                                         sMessageID +
-                                         "' failed: the previous processor already returned an async response URL; it is not possible to handle two URLs. Please check your SPI implementations.";
-                LOGGER.error (sErrorMsg);
-                aErrorMessagesTarget.add (EEbmsError.EBMS_VALUE_INCONSISTENT.getAsEbms3Error (m_aLocale,
-                                                                                              sMessageID,
-                                                                                              sErrorMsg));
-                // Stop processing
-                return;
-              }
-              aSPIResult.setAsyncResponseURL (sAsyncResultURL);
-              LOGGER.info ("Using asynchronous response URL '" +
-                           sAsyncResultURL +
-                           "' for message ID '" +
-                           sMessageID +
-                           "'");
-            }
+            final String sErrorMsg = "Invoked AS4 message processor SPI " +
+                                     aProcessor +
+                                     " on '" +
+                                     sMessageID +
+                                     "' timed out";
+            LOGGER.error (sErrorMsg);
+            aErrorMessagesTarget.add (EEbmsError.EBMS_OTHER.getAsEbms3Error (m_aLocale, sMessageID, sErrorMsg));
+            return ESuccess.FAILURE;
           }
+          if (aCause instanceof Error)
+            throw (Error) aCause;
+          throw aCause instanceof Exception ? (Exception) aCause : ex;
+        }
 
-          if (bIsUserMessage)
-          {
-            // User message specific processing result handling
+        if (_mergeSPIResult (aProcessor,
+                             aCallResult,
+                             aEbmsSignalMessage,
+                             sMessageID,
+                             aErrorMessagesTarget,
+                             aResponseAttachmentsTarget,
+                             aSPIResult).isFailure ())
+          return ESuccess.FAILURE;
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        throw new IllegalStateException ("Interrupted while waiting for AS4 message processor " + aProcessor, ex);
+      }
+      catch (final Exception ex)
+      {
+        _handleSPIException (aProcessor, ex, sMessageID, aErrorMessagesTarget);
+        return ESuccess.FAILURE;
+      }
+    }
 
-            // empty
-          }
+    // The post-receipt SPIs are only started by the caller, if the processing
+    // succeeded
+    for (final IAS4ServletMessageProcessorSPI aProcessor : aPostReceiptProcessors)
+    {
+      // The post-receipt SPIs run concurrently with each other as well
+      final Node aPayloadNodeCopy = _getPayloadNodeCopy (aPayloadNode);
+      final ICommonsList <WSS4JAttachment> aAttachmentsCopy = aDecryptedAttachments == null ? null
+                                                                                             : aDecryptedAttachments.getClone ();
+      final Callable <SPICallResult> aCall = () -> _callSPI (aProcessor,
+                                                             aHttpHeaders,
+                                                             aEbmsUserMessage,
+                                                             aEbmsSignalMessage,
+                                                             aPayloadNodeCopy,
+                                                             aAttachmentsCopy,
+                                                             aPMode,
+                                                             aState,
+                                                             sMessageID,
+                                                             aParentSpanContext);
+      aPostReceiptTarget.add ( () -> {
+        final CompletableFuture <Void> aTerminated = new CompletableFuture <> ();
+        m_aSPITerminationFutures.add (aTerminated);
+        aExecutor.submit (aCall, aProcessor.getTimeout (), aTerminated).whenComplete ( (aCallResult, ex) -> {
+          if (ex != null)
+            LOGGER.error ("Error invoking post-receipt AS4 message processor " +
+                          aProcessor +
+                          " on '" +
+                          sMessageID +
+                          "'",
+                          ex);
           else
-          {
-            // Signal message specific processing result handling
-            assert aResult instanceof AS4SignalMessageProcessorResult;
+            if (!aCallResult.isSuccess ())
+              LOGGER.warn ("Post-receipt AS4 message processor " +
+                           aProcessor +
+                           " on '" +
+                           sMessageID +
+                           "' failed: " +
+                           aCallResult.m_aProcessingErrorMessages.getAllMapped (Ebms3Error::getDescriptionValue));
+        });
+        return aTerminated;
+      });
+    }
+    return ESuccess.SUCCESS;
+  }
 
-            if (aEbmsSignalMessage.getReceipt () == null)
-            {
-              final Ebms3UserMessage aPullReturnUserMsg = ((AS4SignalMessageProcessorResult) aResult).getPullReturnUserMessage ();
-              if (aSPIResult.hasPullReturnUserMsg ())
-              {
-                // A second processor has committed a response to the
-                // pullrequest
-                // Which is not allowed since only one response can be sent back
-                // to the pullrequest initiator
-                if (aPullReturnUserMsg != null)
-                {
-                  final String sErrorMsg = "Invoked AS4 message processor SPI " +
-                                           aProcessor +
-                                           " on '" +
-                                           sMessageID +
-                                           "' failed: the previous processor already returned a usermessage; it is not possible to return two usermessage. Please check your SPI implementations.";
-                  LOGGER.warn (sErrorMsg);
-                  aErrorMessagesTarget.add (EEbmsError.EBMS_VALUE_INCONSISTENT.getAsEbms3Error (m_aLocale,
-                                                                                                sMessageID,
-                                                                                                sErrorMsg));
-                  // Stop processing
-                  return;
-                }
-              }
-              else
-              {
-                // Initial return user msg
-                if (aPullReturnUserMsg == null)
-                {
-                  // No message contained in the MPC
-                  final String sErrorMsg = "Invoked AS4 message processor SPI " +
-                                           aProcessor +
-                                           " on '" +
-                                           sMessageID +
-                                           "' returned a failure: no UserMessage contained in the MPC";
-                  LOGGER.warn (sErrorMsg);
-                  aErrorMessagesTarget.add (EEbmsError.EBMS_EMPTY_MESSAGE_PARTITION_CHANNEL.getAsEbms3Error (m_aLocale,
-                                                                                                             sMessageID,
-                                                                                                             sErrorMsg));
-                  // Stop processing
-                  return;
-                }
+  /**
+   * Create a deep copy of the payload for an SPI that is invoked concurrently.
+   * An element is imported into a new document, so that the copies don't
+   * share the owner document.
+   */
+  @Nullable
+  private static Node _getPayloadNodeCopy (@Nullable final Node aPayloadNode)
+  {
+    if (aPayloadNode == null)
+      return null;
 
-                // We have something :)
-                aSPIResult.setPullReturnUserMsg (aPullReturnUserMsg);
-              }
-            }
-            else
-            {
-              if (LOGGER.isDebugEnabled ())
-                LOGGER.debug ("The AS4 EbmsSignalMessage already has a Receipt");
-            }
-          }
+    if (aPayloadNode instanceof Element)
+    {
+      final Document aDoc = XMLFactory.newDocument ();
+      final Node ret = aDoc.importNode (aPayloadNode, true);
+      aDoc.appendChild (ret);
+      return ret;
+    }
+    return aPayloadNode.cloneNode (true);
+  }
 
-          // Add response attachments, payloads
-          aResult.addAllAttachmentsTo (aResponseAttachmentsTarget);
+  private static boolean _isAllSuccess (@Nonnull final ICommonsList <CompletableFuture <SPICallResult>> aDependencies)
+  {
+    for (final CompletableFuture <SPICallResult> aDependency : aDependencies)
+      try
+      {
+        if (!aDependency.get ().isSuccess ())
+          return false;
+      }
+      catch (final ExecutionException ex)
+      {
+        return false;
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        return false;
+      }
+    return true;
+  }
 
-          if (LOGGER.isDebugEnabled ())
-            LOGGER.debug ("Successfully invoked AS4 message processor " + aProcessor);
+  /**
+   * Invoke a single SPI without interpreting the result.
+   */
+  @Nonnull
+  private SPICallResult _callSPI (@Nonnull final IAS4ServletMessageProcessorSPI aProcessor,
+                                  @Nonnull final HttpHeaderMap aHttpHeaders,
+                                  @Nullable final Ebms3UserMessage aEbmsUserMessage,
+                                  @Nullable final Ebms3SignalMessage aEbmsSignalMessage,
+                                  @Nullable final Node aPayloadNode,
+                                  @Nullable final ICommonsList <WSS4JAttachment> aDecryptedAttachments,
+                                  @Nullable final IPMode aPMode,
+                                  @Nonnull final IAS4MessageState aState,
+                                  @Nonnull @Nonempty final String sMessageID,
+                                  @Nullable final AS4SpanContext aParentSpanContext)
+  {
+    final AS4MessageProcessorResult aResult;
+    final ICommonsList <Ebms3Error> aProcessingErrorMessages = new CommonsArrayList <> ();
+    try (final IAS4Span aSpan = AS4TracingManager.startSpan ("phase4.spi", aParentSpanContext))
+    {
+      aSpan.setAttribute (AS4TracingManager.ATTR_SPI_CLASS, aProcessor.getClass ().getName ())
+           .setAttribute (AS4TracingManager.ATTR_MESSAGE_ID, sMessageID);
+      try
+      {
+        if (aEbmsUserMessage != null)
+        {
+          aResult = aProcessor.processAS4UserMessage (m_aMessageMetadata,
+                                                      aHttpHeaders,
+                                                      aEbmsUserMessage,
+                                                      aPMode,
+                                                      aPayloadNode,
+                                                      aDecryptedAttachments,
+                                                      aState,
+                                                      aProcessingErrorMessages);
         }
-        catch (final AS4DecompressException ex)
+        else
         {
-          LOGGER.error ("Failed to decompress AS4 payload", ex);
-          // Hack for invalid GZip content from WSS4JAttachment.getSourceStream
-          aErrorMessagesTarget.add (EEbmsError.EBMS_DECOMPRESSION_FAILURE.getAsEbms3Error (m_aLocale, sMessageID));
-          return;
+          aResult = aProcessor.processAS4SignalMessage (m_aMessageMetadata,
+                                                        aHttpHeaders,
+                                                        aEbmsSignalMessage,
+                                                        aPMode,
+                                                        aState,
+                                                        aProcessingErrorMessages);
         }
-        catch (final RuntimeException ex)
+      }
+      catch (final RuntimeException ex)
+      {
+        aSpan.setError (ex);
+        throw ex;
+      }
+    }
+
+    // Result returned?
+    if (aResult == null)
+      throw new IllegalStateException ("No result object present from AS4 message processor " +
+                                       aProcessor +
+                                       " - this is a programming error");
+    return new SPICallResult (aResult, aProcessingErrorMessages);
+  }
+
+  /**
+   * Merge the result of a single SPI into the overall result.
+   *
+   * @return {@link ESuccess#FAILURE} if processing should be stopped.
+   */
+  @Nonnull
+  private ESuccess _mergeSPIResult (@Nonnull final IAS4ServletMessageProcessorSPI aProcessor,
+                                    @Nonnull final SPICallResult aCallResult,
+                                    @Nullable final Ebms3SignalMessage aEbmsSignalMessage,
+                                    @Nonnull @Nonempty final String sMessageID,
+                                    @Nonnull final ICommonsList <Ebms3Error> aErrorMessagesTarget,
+                                    @Nonnull final ICommonsList <WSS4JAttachment> aResponseAttachmentsTarget,
+                                    @Nonnull final SPIInvocationResult aSPIResult)
+  {
+    if (aCallResult.isSkipped ())
+    {
+      // Should not happen, as the failed dependency was merged before
+      final String sErrorMsg = "AS4 message processor SPI " +
+                               aProcessor +
+                               " was not invoked on '" +
+                               sMessageID +
+                               "' because a previous processor failed";
+      LOGGER.error (sErrorMsg);
+      aErrorMessagesTarget.add (EEbmsError.EBMS_OTHER.getAsEbms3Error (m_aLocale, sMessageID, sErrorMsg));
+      return ESuccess.FAILURE;
+    }
+
+    final AS4MessageProcessorResult aResult = aCallResult.m_aResult;
+    final ICommonsList <Ebms3Error> aProcessingErrorMessages = aCallResult.m_aProcessingErrorMessages;
+
+    if (aProcessingErrorMessages.isNotEmpty () || aResult.isFailure ())
+    {
+      if (aProcessingErrorMessages.isNotEmpty ())
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("AS4 message processor " +
+                        aProcessor +
+                        " had processing errors - breaking. Details: " +
+                        aProcessingErrorMessages);
+
+        if (aResult.isSuccess ())
+          LOGGER.warn ("Processing errors are present but success was returned by a previous AS4 message processor " +
+                       aProcessor +
+                       " - considering the whole processing to be failed instead");
+
+        aErrorMessagesTarget.addAll (aProcessingErrorMessages);
+      }
+
+      if (aResult.isFailure () && aResult.hasErrorMessage ())
+      {
+        aErrorMessagesTarget.add (EEbmsError.EBMS_OTHER.getAsEbms3Error (m_aLocale,
+                                                                         sMessageID,
+                                                                         "Invoked AS4 message processor SPI " +
+                                                                                     aProcessor +
+                                                                                     " on '" +
+                                                                                     sMessageID +
+                                                                                     "' returned a failure: " +
+                                                                                     aResult.getErrorMessage ()));
+      }
+
+      // Stop processing
+      return ESuccess.FAILURE;
+    }
+
+    // SPI invocation returned success and no errors
+    {
+      final String sAsyncResultURL = aResult.getAsyncResponseURL ();
+      if (StringHelper.hasText (sAsyncResultURL))
+      {
+        // URL present
+        if (aSPIResult.hasAsyncResponseURL ())
         {
-          // Re-throw
-          throw ex;
+          // A second processor returned a response URL - not allowed
+          final String sErrorMsg = "Invoked AS4 message processor SPI " +
+                                   aProcessor +
+                                   " on '" +
+                                   sMessageID +
+                                   "' failed: the previous processor already returned an async response URL; it is not possible to handle two URLs. Please check your SPI implementations.";
+          LOGGER.error (sErrorMsg);
+          aErrorMessagesTarget.add (EEbmsError.EBMS_VALUE_INCONSISTENT.getAsEbms3Error (m_aLocale,
+                                                                                        sMessageID,
+                                                                                        sErrorMsg));
+          // Stop processing
+          return ESuccess.FAILURE;
         }
-        catch (final Exception ex)
+        aSPIResult.setAsyncResponseURL (sAsyncResultURL);
+        LOGGER.info ("Using asynchronous response URL '" +
+                     sAsyncResultURL +
+                     "' for message ID '" +
+                     sMessageID +
+                     "'");
+      }
+    }
+
+    if (aEbmsSignalMessage == null)
+    {
+      // User message specific processing result handling
+
+      // empty
+    }
+    else
+    {
+      // Signal message specific processing result handling
+      assert aResult instanceof AS4SignalMessageProcessorResult;
+
+      if (aEbmsSignalMessage.getReceipt () == null)
+      {
+        final Ebms3UserMessage aPullReturnUserMsg = ((AS4SignalMessageProcessorResult) aResult).getPullReturnUserMessage ();
+        if (aSPIResult.hasPullReturnUserMsg ())
+        {
+          // A second processor has committed a response to the
+          // pullrequest
+          // Which is not allowed since only one response can be sent back
+          // to the pullrequest initiator
+          if (aPullReturnUserMsg != null)
+          {
+            final String sErrorMsg = "Invoked AS4 message processor SPI " +
+                                     aProcessor +
+                                     " on '" +
+                                     sMessageID +
+                                     "' failed: the previous processor already returned a usermessage; it is not possible to return two usermessage. Please check your SPI implementations.";
+            LOGGER.warn (sErrorMsg);
+            aErrorMessagesTarget.add (EEbmsError.EBMS_VALUE_INCONSISTENT.getAsEbms3Error (m_aLocale,
+                                                                                          sMessageID,
+                                                                                          sErrorMsg));
+            // Stop processing
+            return ESuccess.FAILURE;
+          }
+        }
+        else
         {
-          throw new IllegalStateException ("Error processing incoming AS4 message with processor " + aProcessor, ex);
+          // Initial return user msg
+          if (aPullReturnUserMsg == null)
+          {
+            // No message contained in the MPC
+            final String sErrorMsg = "Invoked AS4 message processor SPI " +
+                                     aProcessor +
+                                     " on '" +
+                                     sMessageID +
+                                     "' returned a failure: no UserMessage contained in the MPC";
+            LOGGER.warn (sErrorMsg);
+            aErrorMessagesTarget.add (EEbmsError.EBMS_EMPTY_MESSAGE_PARTITION_CHANNEL.getAsEbms3Error (m_aLocale,
+                                                                                                       sMessageID,
+                                                                                                       sErrorMsg));
+            // Stop processing
+            return ESuccess.FAILURE;
+          }
+
+          // We have something :)
+          aSPIResult.setPullReturnUserMsg (aPullReturnUserMsg);
         }
+      }
+      else
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("The AS4 EbmsSignalMessage already has a Receipt");
+      }
+    }
 
-    // Remember success
-    aSPIResult.setSuccess (true);
+    // Add response attachments, payloads
+    aResult.addAllAttachmentsTo (aResponseAttachmentsTarget);
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Successfully invoked AS4 message processor " + aProcessor);
+    return ESuccess.SUCCESS;
+  }
+
+  private void _handleSPIException (@Nonnull final IAS4ServletMessageProcessorSPI aProcessor,
+                                    @Nonnull final Exception ex,
+                                    @Nonnull @Nonempty final String sMessageID,
+                                    @Nonnull final ICommonsList <Ebms3Error> aErrorMessagesTarget)
+  {
+    if (ex instanceof AS4DecompressException)
+    {
+      LOGGER.error ("Failed to decompress AS4 payload", ex);
+      // Hack for invalid GZip content from WSS4JAttachment.getSourceStream
+      aErrorMessagesTarget.add (EEbmsError.EBMS_DECOMPRESSION_FAILURE.getAsEbms3Error (m_aLocale, sMessageID));
+      return;
+    }
+    if (ex instanceof RuntimeException)
+    {
+      // Re-throw
+      throw (RuntimeException) ex;
+    }
+    throw new IllegalStateException ("Error processing incoming AS4 message with processor " + aProcessor, ex);
   }
 
   private void _invokeSPIsForResponse (@Nonnull final IAS4MessageState aState,
@@ -1089,6 +1651,7 @@ public class AS4RequestHandler implements AutoCloseable
     {
       // Sign
       final boolean bMustUnderstand = true;
+      final long nStart = AS4MetricsManager.getStartTime ();
       ret = AS4Signer.createSignedMessage (m_aCryptoFactory,
                                            aDocToBeSigned,
                                            eSoapVersion,
@@ -1097,6 +1660,7 @@ public class AS4RequestHandler implements AutoCloseable
                                            m_aResHelper,
                                            bMustUnderstand,
                                            aSigningParams.getClone ());
+      AS4MetricsManager.onStageFinished (EAS4MetricsStage.RESPONSE_SIGN, nStart);
     }
     else
     {
@@ -1285,9 +1849,9 @@ public class AS4RequestHandler implements AutoCloseable
                                                                                                                  MessagingException,
                                                                                                                  Phase4Exception
   {
-    final SOAPHeaderElementProcessorRegistry aRegistry = SOAPHeaderElementProcessorRegistry.createDefault (m_aPModeResolver,
-                                                                                                           m_aCryptoFactory,
-                                                                                                           (IPMode) null);
+    final SOAPHeaderElementProcessorRegistry aRegistry = SOAPHeaderElementProcessorRegistry.getOrCreateDefault (m_aPModeResolver,
+                                                                                                                m_aCryptoFactory,
+                                                                                                                (IPMode) null);
     final IAS4MessageState aState = AS4IncomingHandler.processEbmsMessage (m_aResHelper,
                                                                            m_aLocale,
                                                                            aRegistry,
@@ -1300,9 +1864,9 @@ public class AS4RequestHandler implements AutoCloseable
     final IPMode aPMode = aState.getPMode ();
     final PModeLeg aEffectiveLeg = aState.getEffectivePModeLeg ();
     final String sMessageID = aState.getMessageID ();
+    AS4TracingManager.getCurrentSpan ().setAttribute (AS4TracingManager.ATTR_MESSAGE_ID, sMessageID);
     final ICommonsList <WSS4JAttachment> aDecryptedAttachments = aState.hasDecryptedAttachments () ? aState.getDecryptedAttachments ()
                                                                                                    : aState.getOriginalAttachments ();
-    final Node aPayloadNode = aState.getSoapBodyPayloadNode ();
     final Ebms3UserMessage aEbmsUserMessage = aState.getEbmsUserMessage ();
     final Ebms3SignalMessage aEbmsSignalMessage = aState.getEbmsSignalMessage ();
 
@@ -1317,11 +1881,13 @@ public class AS4RequestHandler implements AutoCloseable
                       sProfileID +
                       "'");
 
+      final long nDuplicateStart = AS4MetricsManager.getStartTime ();
       final boolean bIsDuplicate = MetaAS4Manager.getIncomingDuplicateMgr ()
                                                  .registerAndCheck (sMessageID,
                                                                     sProfileID,
                                                                     aPMode == null ? null : aPMode.getID ())
                                                  .isBreak ();
+      AS4MetricsManager.onStageFinished (EAS4MetricsStage.INCOMING_DUPLICATE_CHECK, nDuplicateStart);
       if (bIsDuplicate)
       {
         LOGGER.error ("Not invoking SPIs, because message with Message ID '" +
@@ -1354,6 +1920,9 @@ public class AS4RequestHandler implements AutoCloseable
     final boolean bCanInvokeSPIs = aErrorMessagesTarget.isEmpty () && !aState.isPingMessage ();
     if (bCanInvokeSPIs)
     {
+      // Retrieve only here, because a streamed SOAP Body is parsed on access
+      final Node aPayloadNode = aState.getSoapBodyPayloadNode ();
+
       // PMode may be null for receipts
       if (aPMode == null ||
           aPMode.getMEPBinding ().isSynchronous () ||
@@ -1365,16 +1934,19 @@ public class AS4RequestHandler implements AutoCloseable
         // Might add to aErrorMessages
         // Might add to aResponseAttachments
         // Might add to m_aPullReturnUserMsg
-        _invokeSPIsForIncoming (aHttpHeaders,
-                                aEbmsUserMessage,
-                                aEbmsSignalMessage,
-                                aPayloadNode,
-                                aDecryptedAttachments,
-                                aPMode,
-                                aState,
-                                aErrorMessagesTarget,
-                                aResponseAttachments,
-                                aSPIResult);
+        final long nSPIStart = AS4MetricsManager.getStartTime ();
+        invokeSPIsForIncoming (aHttpHeaders,
+                               aEbmsUserMessage,
+                               aEbmsSignalMessage,
+                               aPayloadNode,
+                               aDecryptedAttachments,
+                               aPMode,
+                               aState,
+                               aErrorMessagesTarget,
+                               aResponseAttachments,
+                               aSPIResult,
+                               m_aPostReceiptSPIs);
+        AS4MetricsManager.onStageFinished (EAS4MetricsStage.INCOMING_SPI_INVOCATION, nSPIStart);
         if (aSPIResult.isFailure ())
           LOGGER.warn ("Error invoking synchronous SPIs");
         else
@@ -1388,22 +1960,31 @@ public class AS4RequestHandler implements AutoCloseable
       {
         // Call asynchronous
         // Only leg1 can be async!
-        final IThrowingRunnable <Exception> r = () -> {
+        final AS4AsyncResponseEngine aAsyncEngine = m_aAsyncResponseEngine;
+        final IThrowingRunnable <Exception> rProcessing = () -> {
           // Start async
           final ICommonsList <Ebms3Error> aLocalErrorMessages = new CommonsArrayList <> ();
           final ICommonsList <WSS4JAttachment> aLocalResponseAttachments = new CommonsArrayList <> ();
+          final ICommonsList <Supplier <CompletableFuture <?>>> aLocalPostReceiptSPIs = new CommonsArrayList <> ();
 
           final SPIInvocationResult aAsyncSPIResult = new SPIInvocationResult ();
-          _invokeSPIsForIncoming (aHttpHeaders,
-                                  aEbmsUserMessage,
-                                  aEbmsSignalMessage,
-                                  aPayloadNode,
-                                  aDecryptedAttachments,
-                                  aPMode,
-                                  aState,
-                                  aLocalErrorMessages,
-                                  aLocalResponseAttachments,
-                                  aAsyncSPIResult);
+          final long nSPIStart = AS4MetricsManager.getStartTime ();
+          invokeSPIsForIncoming (aHttpHeaders,
+                                 aEbmsUserMessage,
+                                 aEbmsSignalMessage,
+                                 aPayloadNode,
+                                 aDecryptedAttachments,
+                                 aPMode,
+                                 aState,
+                                 aLocalErrorMessages,
+                                 aLocalResponseAttachments,
+                                 aAsyncSPIResult,
+                                 aLocalPostReceiptSPIs);
+          AS4MetricsManager.onStageFinished (EAS4MetricsStage.INCOMING_SPI_INVOCATION, nSPIStart);
+
+          // There is no synchronous receipt to wait for
+          for (final Supplier <CompletableFuture <?>> aPostReceiptSPI : aLocalPostReceiptSPIs)
+            aPostReceiptSPI.get ();
 
           final IAS4ResponseFactory aAsyncResponseFactory;
           final String sResponseMessageID;
@@ -1446,6 +2027,9 @@ public class AS4RequestHandler implements AutoCloseable
                                                                               aLocalErrorMessages);
             sResponseMessageID = aResponseErrorMsg.getEbms3SignalMessage ().getMessageInfo ().getMessageId ();
 
+            for (final Ebms3Error aError : aLocalErrorMessages)
+              AS4MetricsManager.onEbmsError (aError.getErrorCode ());
+
             // Pass error messages to the outside
             if (m_aErrorConsumer != null && aLocalErrorMessages.isNotEmpty ())
               m_aErrorConsumer.onAS4ErrorMessage (aState, aLocalErrorMessages, aResponseErrorMsg);
@@ -1476,6 +2060,17 @@ public class AS4RequestHandler implements AutoCloseable
                                   eSoapVersion.getMimeType (),
                                   sResponseMessageID);
 
+          if (aAsyncEngine != null)
+          {
+            // Sending, retries and persistence are handled by the engine
+            aAsyncEngine.enqueueResponse (sAsyncResponseURL,
+                                          aHttpEntity,
+                                          sMessageID,
+                                          m_aOutgoingDumper,
+                                          m_aRetryCallback);
+            return;
+          }
+
           // invoke client with new document
           final BasicHttpPoster aSender = new BasicHttpPoster ();
           final Document aAsyncResponse;
@@ -1505,10 +2100,43 @@ public class AS4RequestHandler implements AutoCloseable
                                                                 AS4HttpDebug.getDebugXMLWriterSettings ()));
         };
 
-        final CompletableFuture <Void> aFuture = PhotonWorkerPool.getInstance ()
-                                                                 .runThrowing (CAS4.LIB_NAME + " async processing", r);
+        // The current span is thread bound, so pass it explicitly to the worker
+        final AS4SpanContext aParentSpanContext = AS4TracingManager.getCurrentSpanContext ();
+        final IThrowingRunnable <Exception> r = () -> {
+          try (final IAS4Span aSpan = AS4TracingManager.startSpan ("phase4.async.process", aParentSpanContext))
+          {
+            aSpan.setAttribute (AS4TracingManager.ATTR_MESSAGE_ID, sMessageID);
+            try
+            {
+              rProcessing.run ();
+            }
+            catch (final Exception ex)
+            {
+              aSpan.setError (ex);
+              throw ex;
+            }
+          }
+        };
+
+        CompletableFuture <Void> aFuture = null;
+        if (aAsyncEngine != null)
+        {
+          try
+          {
+            aFuture = aAsyncEngine.submit (r);
+          }
+          catch (final RejectedExecutionException ex)
+          {
+            LOGGER.warn ("Asynchronous response processing is overloaded - rejecting message '" + sMessageID + "'");
+            aErrorMessagesTarget.add (EEbmsError.EBMS_OTHER.getAsEbms3Error (m_aLocale,
+                                                                            sMessageID,
+                                                                            "Asynchronous response processing is overloaded - please retry later"));
+          }
+        }
+        else
+          aFuture = PhotonWorkerPool.getInstance ().runThrowing (CAS4.LIB_NAME + " async processing", r);
 
-        if (m_aSoapProcessingFinalizedCB != null)
+        if (aFuture != null && m_aSoapProcessingFinalizedCB != null)
         {
           // Give the outside world the possibility to get notified when the
           // processing is done
@@ -1535,6 +2163,8 @@ public class AS4RequestHandler implements AutoCloseable
         final AS4ErrorMessage aResponseErrorMsg = AS4ErrorMessage.create (eSoapVersion,
                                                                           aState.getMessageID (),
                                                                           aErrorMessagesTarget);
+        for (final Ebms3Error aError : aErrorMessagesTarget)
+          AS4MetricsManager.onEbmsError (aError.getErrorCode ());
 
         // Call optional consumer
         if (m_aErrorConsumer != null)
@@ -1579,16 +2209,18 @@ public class AS4RequestHandler implements AutoCloseable
                 (aPMode.getMEPBinding ().equals (EMEPBinding.PULL_PUSH) && aSPIResult.hasPullReturnUserMsg ()) ||
                 (aPMode.getMEPBinding ().equals (EMEPBinding.PUSH_PULL) && aSPIResult.hasPullReturnUserMsg ()))
             {
-              // TODO would be nice to have attachments here I guess
               final AS4UserMessage aResponseUserMsg = new AS4UserMessage (eSoapVersion,
                                                                           aSPIResult.getPullReturnUserMsg ());
 
               sResponseMessageID = aResponseUserMsg.getEbms3UserMessage ().getMessageInfo ().getMessageId ();
-              ret = new AS4ResponseFactoryXML (m_aMessageMetadata,
-                                               aState,
-                                               sResponseMessageID,
-                                               aResponseUserMsg.getAsSoapDocument (),
-                                               eSoapVersion.getMimeType ());
+              // The SPI attachments are the payloads of the pulled user message
+              // - the response is still neither signed nor encrypted
+              ret = _createResponseUserMessage (aState,
+                                                eSoapVersion,
+                                                aResponseUserMsg,
+                                                aResponseAttachments,
+                                                new AS4SigningParams (),
+                                                new AS4CryptParams ());
             }
             else
               if (aEbmsUserMessage != null)
@@ -1729,14 +2361,32 @@ public class AS4RequestHandler implements AutoCloseable
         aHttpResponse.setStatus (CHttp.HTTP_NO_CONTENT);
       }
       AS4HttpDebug.debug ( () -> "RECEIVE-END with " + (aResponder != null ? "EBMS message" : "no content"));
+
+      // The response is ready - now invoke the non-critical SPIs
+      for (final Supplier <CompletableFuture <?>> aPostReceiptSPI : m_aPostReceiptSPIs)
+        aPostReceiptSPI.get ();
+      m_aPostReceiptSPIs.clear ();
     };
-    AS4IncomingHandler.parseAS4Message (m_aIAF,
-                                        m_aResHelper,
-                                        m_aMessageMetadata,
-                                        aServletRequestIS,
-                                        aRequestHttpHeaders,
-                                        aCallback,
-                                        m_aIncomingDumper);
+    // Continue the trace of the sender, if present
+    try (final IAS4Span aSpan = AS4TracingManager.startSpan ("phase4.receive",
+                                                             AS4TracingManager.extractSpanContext (aRequestHttpHeaders)))
+    {
+      try
+      {
+        AS4IncomingHandler.parseAS4Message (m_aIAF,
+                                            m_aResHelper,
+                                            m_aMessageMetadata,
+                                            aServletRequestIS,
+                                            aRequestHttpHeaders,
+                                            aCallback,
+                                            m_aIncomingDumper);
+      }
+      catch (final Phase4Exception | IOException | MessagingException | WSSecurityException | RuntimeException ex)
+      {
+        aSpan.setError (ex);
+        throw ex;
+      }
+    }
   }
 
   /**
@@ -24,8 +24,10 @@ import org.slf4j.LoggerFactory;
 
 import com.helger.commons.concurrent.SimpleReadWriteLock;
 import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.http.HttpClientPool;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.servlet.mgr.AS4DuplicateCleanupJob;
+import com.helger.phase4.wss.WSSConcurrentExecutor;
 import com.helger.quartz.TriggerKey;
 
 /**
@@ -33,6 +35,7 @@ import com.helger.quartz.TriggerKey;
  * <ul>
  * <li>The {@link MetaAS4Manager} instance is ensured to be present</li>
  * <li>The duplicate cleanup job will also be started.</li>
+ * <li>WSS4J is initialized if concurrent security is enabled.</li>
  * </ul>
  *
  * @author bayerlma
@@ -59,6 +62,10 @@ public final class AS4ServerInitializer
     // Ensure all managers are initialized
     MetaAS4Manager.getInstance ();
 
+    // Initialize WSS4J once upon startup and not upon the first message
+    if (AS4Configuration.isWSS4JConcurrentSecurity ())
+      WSSConcurrentExecutor.init ();
+
     final long nDisposalMinutes = AS4Configuration.getIncomingDuplicateDisposalMinutes ();
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Scheduling AS4DuplicateCleanupJob to dispose incoming metadata that is older than " + nDisposalMinutes + " minutes");
@@ -77,7 +84,9 @@ public final class AS4ServerInitializer
   }
 
   /**
-   * Call this method to shutdown the AS4 server. This unschedules the jobs.
+   * Call this method to shutdown the AS4 server. This unschedules the jobs and
+   * cleans up WSS4J if it was initialized for concurrent usage. Pooled HTTP
+   * clients used for asynchronous responses are closed as well.
    *
    * @since 0.10.3
    */
@@ -87,5 +96,9 @@ public final class AS4ServerInitializer
       AS4DuplicateCleanupJob.unschedule (s_aTriggerKey);
       s_aTriggerKey = null;
     });
+
+    // Does nothing if it was not initialized
+    WSSConcurrentExecutor.cleanUp ();
+    HttpClientPool.closeAll ();
   }
 }
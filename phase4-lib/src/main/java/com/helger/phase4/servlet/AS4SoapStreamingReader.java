@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillClose;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.phase4.servlet.soap.SOAPHeaderElementProcessorWSS4J;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.xml.XMLFactory;
+
+/**
+ * A StAX based reader for incoming plain SOAP messages. Everything except the
+ * SOAP Body content is read into a DOM {@link Document}. If the SOAP Header
+ * contains no WS-Security header, the SOAP Body content is streamed into a
+ * temporary file and only parsed, when it is needed (see
+ * {@link AS4LazySoapBody}). If a WS-Security header is present, the SOAP Body
+ * is read into the DOM as well, because signature verification and decryption
+ * require it.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public final class AS4SoapStreamingReader
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4SoapStreamingReader.class);
+  private static final String WRAPPER_ELEMENT_NAME = "phase4SoapBody";
+
+  private static final XMLInputFactory XIF;
+  private static final XMLOutputFactory XOF = XMLOutputFactory.newFactory ();
+  static
+  {
+    XIF = XMLInputFactory.newFactory ();
+    XIF.setProperty (XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    XIF.setProperty (XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    // Avoid XXE attacks
+    XIF.setProperty (XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    XIF.setProperty (XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+
+  private AS4SoapStreamingReader ()
+  {}
+
+  @Nonnull
+  private static Element _createElement (@Nonnull final Document aDoc, @Nonnull final XMLStreamReader aReader)
+  {
+    final String sNamespaceURI = aReader.getNamespaceURI ();
+    final String sPrefix = aReader.getPrefix ();
+    final String sLocalName = aReader.getLocalName ();
+    final Element ret = aDoc.createElementNS (StringHelper.hasText (sNamespaceURI) ? sNamespaceURI : null,
+                                              StringHelper.hasText (sPrefix) ? sPrefix + ":" + sLocalName : sLocalName);
+
+    // Namespace declarations
+    for (int i = 0; i < aReader.getNamespaceCount (); ++i)
+    {
+      final String sNSPrefix = aReader.getNamespacePrefix (i);
+      final String sNSURI = StringHelper.getNotNull (aReader.getNamespaceURI (i));
+      if (StringHelper.hasText (sNSPrefix))
+        ret.setAttributeNS (XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE + ":" + sNSPrefix, sNSURI);
+      else
+        ret.setAttributeNS (XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE, sNSURI);
+    }
+
+    // Attributes
+    for (int i = 0; i < aReader.getAttributeCount (); ++i)
+    {
+      final String sAttrNamespaceURI = aReader.getAttributeNamespace (i);
+      final String sAttrPrefix = aReader.getAttributePrefix (i);
+      final String sAttrLocalName = aReader.getAttributeLocalName (i);
+      ret.setAttributeNS (StringHelper.hasText (sAttrNamespaceURI) ? sAttrNamespaceURI : null,
+                          StringHelper.hasText (sAttrPrefix) ? sAttrPrefix + ":" + sAttrLocalName : sAttrLocalName,
+                          aReader.getAttributeValue (i));
+    }
+    return ret;
+  }
+
+  /**
+   * Add the non-element node the reader is currently positioned on to the
+   * provided parent.
+   */
+  private static void _appendNonElement (@Nonnull final Document aDoc,
+                                         @Nonnull final Node aParent,
+                                         @Nonnull final XMLStreamReader aReader)
+  {
+    switch (aReader.getEventType ())
+    {
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.SPACE:
+        // Whitespaces outside of the root element are not allowed in DOM
+        if (aParent != aDoc)
+          aParent.appendChild (aDoc.createTextNode (aReader.getText ()));
+        break;
+      case XMLStreamConstants.CDATA:
+        aParent.appendChild (aDoc.createCDATASection (aReader.getText ()));
+        break;
+      case XMLStreamConstants.COMMENT:
+        aParent.appendChild (aDoc.createComment (aReader.getText ()));
+        break;
+      case XMLStreamConstants.PROCESSING_INSTRUCTION:
+        aParent.appendChild (aDoc.createProcessingInstruction (aReader.getPITarget (), aReader.getPIData ()));
+        break;
+      default:
+        // Ignore e.g. document start/end
+        break;
+    }
+  }
+
+  /**
+   * @return All namespace declarations in scope of the provided element, with
+   *         the inner declarations overriding the outer ones.
+   */
+  @Nonnull
+  private static ICommonsOrderedMap <String, String> _getInScopeNamespaces (@Nonnull final Element aElement)
+  {
+    final ICommonsOrderedMap <String, String> ret = new CommonsLinkedHashMap <> ();
+    Node aCur = aElement;
+    while (aCur instanceof Element)
+    {
+      final NamedNodeMap aAttrs = aCur.getAttributes ();
+      for (int i = 0; i < aAttrs.getLength (); ++i)
+      {
+        final Attr aAttr = (Attr) aAttrs.item (i);
+        if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals (aAttr.getNamespaceURI ()))
+        {
+          // Local name is the prefix or "xmlns" for the default namespace
+          final String sPrefix = XMLConstants.XMLNS_ATTRIBUTE.equals (aAttr.getLocalName ()) ? ""
+                                                                                             : aAttr.getLocalName ();
+          ret.putIfAbsent (sPrefix, aAttr.getValue ());
+        }
+      }
+      aCur = aCur.getParentNode ();
+    }
+    return ret;
+  }
+
+  /**
+   * Copy the content of the SOAP Body element into the writer. The reader is
+   * positioned on the start of the SOAP Body element and is positioned on the
+   * end of the SOAP Body element afterwards.
+   *
+   * @return <code>true</code> if at least one node was copied
+   */
+  private static boolean _copyBodyContent (@Nonnull final XMLStreamReader aReader,
+                                           @Nonnull final XMLStreamWriter aWriter) throws XMLStreamException
+  {
+    boolean bHasContent = false;
+    int nDepth = 0;
+    while (aReader.hasNext ())
+    {
+      final int nEventType = aReader.next ();
+      switch (nEventType)
+      {
+        case XMLStreamConstants.START_ELEMENT:
+        {
+          nDepth++;
+          bHasContent = true;
+          final String sPrefix = StringHelper.getNotNull (aReader.getPrefix ());
+          aWriter.writeStartElement (sPrefix, aReader.getLocalName (), StringHelper.getNotNull (aReader.getNamespaceURI ()));
+          for (int i = 0; i < aReader.getNamespaceCount (); ++i)
+          {
+            final String sNSPrefix = aReader.getNamespacePrefix (i);
+            final String sNSURI = StringHelper.getNotNull (aReader.getNamespaceURI (i));
+            if (StringHelper.hasText (sNSPrefix))
+              aWriter.writeNamespace (sNSPrefix, sNSURI);
+            else
+              aWriter.writeDefaultNamespace (sNSURI);
+          }
+          for (int i = 0; i < aReader.getAttributeCount (); ++i)
+          {
+            final String sAttrNamespaceURI = aReader.getAttributeNamespace (i);
+            if (StringHelper.hasText (sAttrNamespaceURI))
+              aWriter.writeAttribute (StringHelper.getNotNull (aReader.getAttributePrefix (i)),
+                                      sAttrNamespaceURI,
+                                      aReader.getAttributeLocalName (i),
+                                      aReader.getAttributeValue (i));
+            else
+              aWriter.writeAttribute (aReader.getAttributeLocalName (i), aReader.getAttributeValue (i));
+          }
+          break;
+        }
+        case XMLStreamConstants.END_ELEMENT:
+          if (nDepth == 0)
+          {
+            // End of SOAP Body
+            return bHasContent;
+          }
+          nDepth--;
+          aWriter.writeEndElement ();
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+          bHasContent = true;
+          aWriter.writeCharacters (aReader.getTextCharacters (), aReader.getTextStart (), aReader.getTextLength ());
+          break;
+        case XMLStreamConstants.CDATA:
+          bHasContent = true;
+          aWriter.writeCData (aReader.getText ());
+          break;
+        case XMLStreamConstants.COMMENT:
+          bHasContent = true;
+          aWriter.writeComment (aReader.getText ());
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          bHasContent = true;
+          aWriter.writeProcessingInstruction (aReader.getPITarget (), aReader.getPIData ());
+          break;
+        default:
+          break;
+      }
+    }
+    throw new XMLStreamException ("Unexpected end of document inside the SOAP Body");
+  }
+
+  private static void _spoolBody (@Nonnull final XMLStreamReader aReader,
+                                  @Nonnull final Element aBodyElement,
+                                  @Nonnull final AS4ResourceHelper aResHelper) throws IOException, XMLStreamException
+  {
+    final File aSpoolFile = aResHelper.createTempFile ();
+    final boolean bHasContent;
+    try (final OutputStream aOS = FileHelper.getBufferedOutputStream (aSpoolFile))
+    {
+      final XMLStreamWriter aWriter = XOF.createXMLStreamWriter (aOS, StandardCharsets.UTF_8.name ());
+      aWriter.writeStartDocument (StandardCharsets.UTF_8.name (), "1.0");
+      // Synthetic root element with all in-scope namespaces
+      aWriter.writeStartElement (WRAPPER_ELEMENT_NAME);
+      for (final Map.Entry <String, String> aEntry : _getInScopeNamespaces (aBodyElement).entrySet ())
+        if (aEntry.getKey ().isEmpty ())
+          aWriter.writeDefaultNamespace (aEntry.getValue ());
+        else
+          aWriter.writeNamespace (aEntry.getKey (), aEntry.getValue ());
+      bHasContent = _copyBodyContent (aReader, aWriter);
+      aWriter.writeEndElement ();
+      aWriter.writeEndDocument ();
+      aWriter.close ();
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Streamed SOAP Body content to '" + aSpoolFile.getAbsolutePath () + "'");
+
+    aBodyElement.getOwnerDocument ()
+                .setUserData (AS4LazySoapBody.USER_DATA_KEY,
+                              new AS4LazySoapBody (aBodyElement, aSpoolFile, bHasContent),
+                              null);
+  }
+
+  /**
+   * Read a SOAP document from the provided input stream.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. Is
+   *        closed afterwards.
+   * @param aResHelper
+   *        The resource helper to create the temporary file. May not be
+   *        <code>null</code>.
+   * @return <code>null</code> if the content could not be parsed. If the SOAP
+   *         Body was streamed, use {@link AS4LazySoapBody#getOfDocument(Document)}
+   *         on the returned document to access it.
+   * @throws IOException
+   *         In case of an IO error when writing the temporary file
+   */
+  @Nullable
+  public static Document readSoapDocument (@Nonnull @WillClose final InputStream aIS,
+                                           @Nonnull final AS4ResourceHelper aResHelper) throws IOException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    try (final InputStream aRealIS = aIS)
+    {
+      final XMLStreamReader aReader = XIF.createXMLStreamReader (aRealIS);
+      try
+      {
+        final Document aDoc = XMLFactory.newDocument ();
+        Node aParent = aDoc;
+        int nDepth = 0;
+        ESoapVersion eSoapVersion = null;
+        boolean bHasSecurityHeader = false;
+
+        while (aReader.hasNext ())
+        {
+          final int nEventType = aReader.next ();
+          if (nEventType == XMLStreamConstants.START_ELEMENT)
+          {
+            nDepth++;
+            final Element aElement = _createElement (aDoc, aReader);
+            aParent.appendChild (aElement);
+
+            final String sNamespaceURI = aReader.getNamespaceURI ();
+            final String sLocalName = aReader.getLocalName ();
+            if (nDepth == 1)
+              eSoapVersion = ESoapVersion.getFromNamespaceURIOrNull (sNamespaceURI);
+            else
+              if (nDepth == 3 &&
+                  SOAPHeaderElementProcessorWSS4J.QNAME_SECURITY.getNamespaceURI ().equals (sNamespaceURI) &&
+                  SOAPHeaderElementProcessorWSS4J.QNAME_SECURITY.getLocalPart ().equals (sLocalName))
+              {
+                bHasSecurityHeader = true;
+              }
+              else
+                if (nDepth == 2 &&
+                    !bHasSecurityHeader &&
+                    eSoapVersion != null &&
+                    eSoapVersion.getNamespaceURI ().equals (sNamespaceURI) &&
+                    eSoapVersion.getBodyElementName ().equals (sLocalName))
+                {
+                  // Stream the SOAP Body content and continue after the body
+                  _spoolBody (aReader, aElement, aResHelper);
+                  nDepth--;
+                  continue;
+                }
+            aParent = aElement;
+          }
+          else
+            if (nEventType == XMLStreamConstants.END_ELEMENT)
+            {
+              nDepth--;
+              aParent = aParent.getParentNode ();
+            }
+            else
+              _appendNonElement (aDoc, aParent, aReader);
+        }
+
+        if (aDoc.getDocumentElement () == null)
+          return null;
+        return aDoc;
+      }
+      finally
+      {
+        aReader.close ();
+      }
+    }
+    catch (final XMLStreamException ex)
+    {
+      LOGGER.error ("Failed to read SOAP document in a streaming way", ex);
+      return null;
+    }
+  }
+}
@@ -59,6 +59,7 @@ import com.helger.phase4.ebms3header.Ebms3Receipt;
 import com.helger.phase4.ebms3header.Ebms3SignalMessage;
 import com.helger.phase4.ebms3header.Ebms3UserMessage;
 import com.helger.phase4.error.EEbmsError;
+import com.helger.phase4.marshaller.Ebms3MessagingFastBinder;
 import com.helger.phase4.marshaller.Ebms3MessagingMarshaller;
 import com.helger.phase4.messaging.domain.MessageHelperMethods;
 import com.helger.phase4.mgr.MetaAS4Manager;
@@ -67,6 +68,7 @@ import com.helger.phase4.model.mpc.IMPCManager;
 import com.helger.phase4.model.pmode.IPMode;
 import com.helger.phase4.model.pmode.leg.PModeLeg;
 import com.helger.phase4.model.pmode.resolve.IPModeResolver;
+import com.helger.phase4.servlet.AS4LazySoapBody;
 import com.helger.phase4.servlet.AS4MessageState;
 import com.helger.phase4.servlet.mgr.AS4ServletPullRequestProcessorManager;
 import com.helger.phase4.servlet.spi.IAS4ServletPullRequestProcessorSPI;
@@ -196,6 +198,10 @@ public class SOAPHeaderElementProcessorExtractEbms3Messaging implements ISOAPHea
   private static boolean _checkSOAPBodyHasPayload (@Nonnull final PModeLeg aPModeLeg, @Nonnull final Document aSOAPDoc)
   {
     // Check if a SOAPBodyPayload exists
+    final AS4LazySoapBody aLazyBody = AS4LazySoapBody.getOfDocument (aSOAPDoc);
+    if (aLazyBody != null)
+      return aLazyBody.hasContent ();
+
     final Element aBody = XMLHelper.getFirstChildElementOfName (aSOAPDoc.getFirstChild (),
                                                                 aPModeLeg.getProtocol ()
                                                                          .getSoapVersion ()
@@ -209,6 +215,29 @@ public class SOAPHeaderElementProcessorExtractEbms3Messaging implements ISOAPHea
       m_aPModeConsumer.accept (aPMode);
   }
 
+  /**
+   * Read the Messaging header with the fast binder and validate it against the
+   * XML Schema. The validation is always performed, because the header is not
+   * yet authenticated at this point.
+   *
+   * @param aElement
+   *        The header element to read. May not be <code>null</code>.
+   * @return <code>null</code> if the element is not supported by the fast
+   *         binder or if it is invalid. In both cases the JAXB based reading
+   *         should be used, so that the usual error messages are created.
+   */
+  @Nullable
+  private static Ebms3Messaging _readFast (@Nonnull final Element aElement)
+  {
+    final Ebms3Messaging ret = Ebms3MessagingFastBinder.read (aElement);
+    if (ret == null)
+      return null;
+
+    if (Ebms3MessagingFastBinder.validate (aElement).containsAtLeastOneError ())
+      return null;
+    return ret;
+  }
+
   @Nonnull
   public ESuccess processHeaderElement (@Nonnull final Document aSOAPDoc,
                                         @Nonnull final Element aElement,
@@ -225,23 +254,27 @@ public class SOAPHeaderElementProcessorExtractEbms3Messaging implements ISOAPHea
     final Locale aLocale = aState.getLocale ();
 
     // Parse EBMS3 Messaging object
-    final CollectingValidationEventHandler aCVEH = new CollectingValidationEventHandler ();
-    final Ebms3Messaging aMessaging = new Ebms3MessagingMarshaller ().setValidationEventHandler (aCVEH).read (aElement);
-
-    // If the ebms3reader above fails aMessaging will be null => invalid/not
-    // wellformed
+    Ebms3Messaging aMessaging = AS4Configuration.isEbms3FastBinderEnabled () ? _readFast (aElement) : null;
     if (aMessaging == null)
     {
-      // Errorcode/Id would be null => not conform with Ebms3ErrorMessage since
-      // the message always needs a errorcode =>
-      // Invalid Header == not wellformed/invalid xml
-      for (final IError aError : aCVEH.getErrorList ())
+      final CollectingValidationEventHandler aCVEH = new CollectingValidationEventHandler ();
+      aMessaging = new Ebms3MessagingMarshaller ().setValidationEventHandler (aCVEH).read (aElement);
+
+      // If the ebms3reader above fails aMessaging will be null => invalid/not
+      // wellformed
+      if (aMessaging == null)
       {
-        LOGGER.error ("Header error: " + aError.getAsString (aLocale));
-        // Clone the error and add an error ID
-        aErrorList.add (SingleError.builder (aError).errorID (EEbmsError.EBMS_INVALID_HEADER.getErrorCode ()).build ());
+        // Errorcode/Id would be null => not conform with Ebms3ErrorMessage
+        // since the message always needs a errorcode =>
+        // Invalid Header == not wellformed/invalid xml
+        for (final IError aError : aCVEH.getErrorList ())
+        {
+          LOGGER.error ("Header error: " + aError.getAsString (aLocale));
+          // Clone the error and add an error ID
+          aErrorList.add (SingleError.builder (aError).errorID (EEbmsError.EBMS_INVALID_HEADER.getErrorCode ()).build ());
+        }
+        return ESuccess.FAILURE;
       }
-      return ESuccess.FAILURE;
     }
 
     // Remember in state
@@ -16,10 +16,14 @@
  */
 package com.helger.phase4.servlet.soap;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.xml.namespace.QName;
 
@@ -30,6 +34,10 @@ import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.config.IConfig;
+import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.crypto.IAS4CryptoFactory;
 import com.helger.phase4.crypto.IAS4PModeAwareCryptoFactory;
 import com.helger.phase4.model.pmode.IPMode;
@@ -47,6 +55,71 @@ import com.helger.phase4.model.pmode.resolve.IPModeResolver;
 public class SOAPHeaderElementProcessorRegistry
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (SOAPHeaderElementProcessorRegistry.class);
+
+  /**
+   * The maximum number of default registries kept by
+   * {@link #getOrCreateDefault(IPModeResolver, IAS4CryptoFactory, IPMode)}.
+   *
+   * @since 2.1.3
+   */
+  public static final int DEFAULT_CACHE_MAX_SIZE = 100;
+
+  /**
+   * Cache key based on the identity of the provided objects
+   */
+  private static final class CacheKey
+  {
+    private final IPModeResolver m_aPModeResolver;
+    private final IAS4CryptoFactory m_aCryptoFactory;
+    private final IPMode m_aFallbackPMode;
+
+    CacheKey (@Nonnull final IPModeResolver aPModeResolver,
+              @Nonnull final IAS4CryptoFactory aCryptoFactory,
+              @Nullable final IPMode aFallbackPMode)
+    {
+      m_aPModeResolver = aPModeResolver;
+      m_aCryptoFactory = aCryptoFactory;
+      m_aFallbackPMode = aFallbackPMode;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final CacheKey rhs = (CacheKey) o;
+      return EqualsHelper.identityEqual (m_aPModeResolver, rhs.m_aPModeResolver) &&
+             EqualsHelper.identityEqual (m_aCryptoFactory, rhs.m_aCryptoFactory) &&
+             EqualsHelper.identityEqual (m_aFallbackPMode, rhs.m_aFallbackPMode);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      int ret = System.identityHashCode (m_aPModeResolver);
+      ret = ret * 31 + System.identityHashCode (m_aCryptoFactory);
+      ret = ret * 31 + System.identityHashCode (m_aFallbackPMode);
+      return ret;
+    }
+  }
+
+  private static final SimpleReadWriteLock CACHE_RW_LOCK = new SimpleReadWriteLock ();
+  // Insertion order only, so that reading does not modify the map
+  @GuardedBy ("CACHE_RW_LOCK")
+  private static final Map <CacheKey, SOAPHeaderElementProcessorRegistry> CACHE = new LinkedHashMap <CacheKey, SOAPHeaderElementProcessorRegistry> ()
+  {
+    @Override
+    protected boolean removeEldestEntry (final Map.Entry <CacheKey, SOAPHeaderElementProcessorRegistry> aEldest)
+    {
+      return size () > DEFAULT_CACHE_MAX_SIZE;
+    }
+  };
+  // The configuration the cached registries were created with
+  @GuardedBy ("CACHE_RW_LOCK")
+  private static IConfig s_aCacheConfig;
+
   private final ICommonsOrderedMap <QName, ISOAPHeaderElementProcessor> m_aMap = new CommonsLinkedHashMap <> ();
 
   public SOAPHeaderElementProcessorRegistry ()
@@ -113,4 +186,80 @@ public class SOAPHeaderElementProcessorRegistry
                                         new SOAPHeaderElementProcessorWSS4J (aCryptoFactory, aFallbackPMode));
     return ret;
   }
+
+  /**
+   * Get a default registry for the provided parameters, that was previously
+   * created by {@link #createDefault(IPModeResolver, IAS4CryptoFactory, IPMode)}
+   * or create and remember a new one. The parameters are compared by identity.
+   * This avoids recreating the processors (and re-reading the configuration)
+   * for every incoming message. The returned registry is shared across threads
+   * and must therefore not be modified. The cache is automatically cleared if
+   * the global configuration object is changed via
+   * {@link AS4Configuration#setConfig(IConfig)}. If the content of the
+   * configuration is reloaded in place, {@link #clearDefaultCache()} must be
+   * called explicitly.
+   *
+   * @param aPModeResolver
+   *        PMode resolver to use. May not be <code>null</code>.
+   * @param aCryptoFactory
+   *        Crypto factory to use. May not be <code>null</code>.
+   * @param aFallbackPMode
+   *        Fallback PMode. May be <code>null</code>.
+   * @return The shared registry and never <code>null</code>.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public static SOAPHeaderElementProcessorRegistry getOrCreateDefault (@Nonnull final IPModeResolver aPModeResolver,
+                                                                       @Nonnull final IAS4CryptoFactory aCryptoFactory,
+                                                                       @Nullable final IPMode aFallbackPMode)
+  {
+    ValueEnforcer.notNull (aPModeResolver, "PModeResolver");
+    ValueEnforcer.notNull (aCryptoFactory, "CryptoFactory");
+
+    final IConfig aConfig = AS4Configuration.getConfig ();
+    final CacheKey aKey = new CacheKey (aPModeResolver, aCryptoFactory, aFallbackPMode);
+
+    SOAPHeaderElementProcessorRegistry ret = CACHE_RW_LOCK.readLockedGet ( () -> s_aCacheConfig == aConfig ? CACHE.get (aKey)
+                                                                                                           : null);
+    if (ret == null)
+    {
+      ret = CACHE_RW_LOCK.writeLockedGet ( () -> {
+        if (s_aCacheConfig != aConfig)
+        {
+          // Configuration changed - all cached registries are outdated
+          CACHE.clear ();
+          s_aCacheConfig = aConfig;
+        }
+        return CACHE.computeIfAbsent (aKey, k -> createDefault (aPModeResolver, aCryptoFactory, aFallbackPMode));
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * Remove all registries cached by
+   * {@link #getOrCreateDefault(IPModeResolver, IAS4CryptoFactory, IPMode)}.
+   * Call this after the configuration was reloaded, or after a crypto factory
+   * or PMode resolver was reconfigured.
+   *
+   * @since 2.1.3
+   */
+  public static void clearDefaultCache ()
+  {
+    CACHE_RW_LOCK.writeLocked ( () -> {
+      CACHE.clear ();
+      s_aCacheConfig = null;
+    });
+  }
+
+  /**
+   * @return The number of registries cached by
+   *         {@link #getOrCreateDefault(IPModeResolver, IAS4CryptoFactory, IPMode)}.
+   * @since 2.1.3
+   */
+  @Nonnegative
+  public static int getDefaultCacheSize ()
+  {
+    return CACHE_RW_LOCK.readLockedInt (CACHE::size);
+  }
 }
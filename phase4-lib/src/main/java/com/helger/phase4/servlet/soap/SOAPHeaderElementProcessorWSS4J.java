@@ -61,9 +61,12 @@ import com.helger.phase4.crypto.ECryptoAlgorithmSignDigest;
 import com.helger.phase4.crypto.IAS4CryptoFactory;
 import com.helger.phase4.ebms3header.Ebms3UserMessage;
 import com.helger.phase4.error.EEbmsError;
+import com.helger.phase4.metrics.AS4MetricsManager;
+import com.helger.phase4.metrics.EAS4MetricsStage;
 import com.helger.phase4.model.pmode.IPMode;
 import com.helger.phase4.model.pmode.leg.PModeLeg;
 import com.helger.phase4.servlet.AS4MessageState;
+import com.helger.phase4.wss.WSSConcurrentExecutor;
 import com.helger.phase4.wss.WSSConfigManager;
 import com.helger.phase4.wss.WSSSynchronizer;
 import com.helger.xml.XMLHelper;
@@ -83,6 +86,10 @@ public class SOAPHeaderElementProcessorWSS4J implements ISOAPHeaderElementProces
 
   private final IAS4CryptoFactory m_aCryptoFactory;
   private final IPMode m_aFallbackPMode;
+  // Stateless and therefore shared across all requests
+  private final AS4KeyStoreCallbackHandler m_aKeyStoreCallback;
+  // Read once from the configuration instead of once per message
+  private final boolean m_bAllowRSA15KeyTransportAlgorithm;
 
   public SOAPHeaderElementProcessorWSS4J (@Nonnull final IAS4CryptoFactory aCryptoFactory,
                                           @Nullable final IPMode aFallbackPMode)
@@ -90,6 +97,8 @@ public class SOAPHeaderElementProcessorWSS4J implements ISOAPHeaderElementProces
     ValueEnforcer.notNull (aCryptoFactory, "aCryptoFactory");
     m_aCryptoFactory = aCryptoFactory;
     m_aFallbackPMode = aFallbackPMode;
+    m_aKeyStoreCallback = new AS4KeyStoreCallbackHandler (aCryptoFactory);
+    m_bAllowRSA15KeyTransportAlgorithm = AS4CryptoProperties.createFromConfig ().isAllowRSA15KeyTransportAlgorithm ();
   }
 
   @Nonnull
@@ -107,7 +116,6 @@ public class SOAPHeaderElementProcessorWSS4J implements ISOAPHeaderElementProces
     try
     {
       // Convert to WSS4J attachments
-      final AS4KeyStoreCallbackHandler aKeyStoreCallback = new AS4KeyStoreCallbackHandler (m_aCryptoFactory);
       final WSS4JAttachmentCallbackHandler aAttachmentCallbackHandler = new WSS4JAttachmentCallbackHandler (aAttachments,
                                                                                                             aState.getResourceHelper ());
 
@@ -116,22 +124,25 @@ public class SOAPHeaderElementProcessorWSS4J implements ISOAPHeaderElementProces
 
       // Configure RequestData needed for the check / decrypt process!
       final RequestData aRequestData = new RequestData ();
-      aRequestData.setCallbackHandler (aKeyStoreCallback);
+      aRequestData.setCallbackHandler (m_aKeyStoreCallback);
       if (aAttachments.isNotEmpty ())
         aRequestData.setAttachmentCallbackHandler (aAttachmentCallbackHandler);
       aRequestData.setSigVerCrypto (m_aCryptoFactory.getCrypto ());
       aRequestData.setDecCrypto (m_aCryptoFactory.getCrypto ());
       aRequestData.setWssConfig (aWSSConfig);
-      aRequestData.setAllowRSA15KeyTransportAlgorithm (AS4CryptoProperties.createFromConfig ()
-                                                                          .isAllowRSA15KeyTransportAlgorithm ());
+      aRequestData.setAllowRSA15KeyTransportAlgorithm (m_bAllowRSA15KeyTransportAlgorithm);
 
       // Upon success, the SOAP document contains the decrypted content
       // afterwards!
+      // The engine is not shared, because it binds its callback lookup to
+      // the first processed document
       final WSSecurityEngine aSecurityEngine = new WSSecurityEngine ();
       aSecurityEngine.setWssConfig (aWSSConfig);
 
       // Main security action
+      final long nStart = AS4MetricsManager.getStartTime ();
       final WSHandlerResult aHdlRes = aSecurityEngine.processSecurityHeader (aSOAPDoc, aRequestData);
+      AS4MetricsManager.onStageFinished (EAS4MetricsStage.INCOMING_WSS4J, nStart);
       final List <WSSecurityEngineResult> aResults = aHdlRes.getResults ();
 
       // Collect all unique used certificates
@@ -415,24 +426,34 @@ public class SOAPHeaderElementProcessorWSS4J implements ISOAPHeaderElementProces
       }
 
       final ESuccess eSuccess;
-      if (AS4Configuration.isWSS4JSynchronizedSecurity ())
+      if (AS4Configuration.isWSS4JConcurrentSecurity ())
       {
-        // Use static WSSConfig creation
-        eSuccess = WSSSynchronizer.call ( () -> _verifyAndDecrypt (aSOAPDoc,
-                                                                   aAttachments,
-                                                                   aState,
-                                                                   aErrorList,
-                                                                   WSSConfigManager::createStaticWSSConfig));
+        // Use static WSSConfig creation without a lock
+        eSuccess = WSSConcurrentExecutor.call ( () -> _verifyAndDecrypt (aSOAPDoc,
+                                                                         aAttachments,
+                                                                         aState,
+                                                                         aErrorList,
+                                                                         WSSConfigManager::createStaticWSSConfig));
       }
       else
-      {
-        // Use instance WSSConfig creation
-        eSuccess = _verifyAndDecrypt (aSOAPDoc,
-                                      aAttachments,
-                                      aState,
-                                      aErrorList,
-                                      WSSConfigManager.getInstance ()::createWSSConfig);
-      }
+        if (AS4Configuration.isWSS4JSynchronizedSecurity ())
+        {
+          // Use static WSSConfig creation
+          eSuccess = WSSSynchronizer.call ( () -> _verifyAndDecrypt (aSOAPDoc,
+                                                                     aAttachments,
+                                                                     aState,
+                                                                     aErrorList,
+                                                                     WSSConfigManager::createStaticWSSConfig));
+        }
+        else
+        {
+          // Use instance WSSConfig creation
+          eSuccess = _verifyAndDecrypt (aSOAPDoc,
+                                        aAttachments,
+                                        aState,
+                                        aErrorList,
+                                        WSSConfigManager.getInstance ()::createWSSConfig);
+        }
       if (eSuccess.isFailure ())
         return ESuccess.FAILURE;
     }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet.spi;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.ebms3header.Ebms3PullRequest;
+import com.helger.phase4.ebms3header.Ebms3SignalMessage;
+import com.helger.phase4.ebms3header.Ebms3UserMessage;
+import com.helger.phase4.mgr.MetaAS4Manager;
+import com.helger.phase4.model.mpc.IMPC;
+import com.helger.phase4.model.mpc.store.AS4MPCStore;
+import com.helger.phase4.servlet.IAS4MessageState;
+
+/**
+ * Helper class to serve pull requests from an {@link AS4MPCStore}. Call
+ * {@link #processSignalMessage(Ebms3SignalMessage, IAS4MessageState)} from
+ * {@link IAS4ServletMessageProcessorSPI#processAS4SignalMessage}:
+ * <ul>
+ * <li>For pull requests the next user message of the requested MPC is
+ * returned together with its payload attachments. If the MPC is empty, the
+ * request handler answers with an EBMS:0006 error.</li>
+ * <li>For receipts the referenced user message is acknowledged and finally
+ * removed from the store.</li>
+ * </ul>
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4MPCStoreSignalMessageHandler
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4MPCStoreSignalMessageHandler.class);
+
+  private final AS4MPCStore m_aStore;
+
+  /**
+   * Constructor
+   *
+   * @param aStore
+   *        The MPC store to serve the pull requests from. May not be
+   *        <code>null</code>.
+   */
+  public AS4MPCStoreSignalMessageHandler (@Nonnull final AS4MPCStore aStore)
+  {
+    ValueEnforcer.notNull (aStore, "Store");
+    m_aStore = aStore;
+  }
+
+  /**
+   * @return The MPC store this handler operates on. Never <code>null</code>.
+   */
+  @Nonnull
+  public final AS4MPCStore getStore ()
+  {
+    return m_aStore;
+  }
+
+  /**
+   * Handle a single incoming signal message.
+   *
+   * @param aSignalMessage
+   *        The received signal message. May not be <code>null</code>.
+   * @param aState
+   *        The message state of the signal message. The attachments of the
+   *        returned user message are bound to its resource helper. May not be
+   *        <code>null</code>.
+   * @return The result to be returned by the SPI. Never <code>null</code>.
+   */
+  @Nonnull
+  public AS4SignalMessageProcessorResult processSignalMessage (@Nonnull final Ebms3SignalMessage aSignalMessage,
+                                                               @Nonnull final IAS4MessageState aState)
+  {
+    ValueEnforcer.notNull (aSignalMessage, "SignalMessage");
+    ValueEnforcer.notNull (aState, "State");
+
+    final Ebms3PullRequest aPullRequest = aSignalMessage.getPullRequest ();
+    if (aPullRequest != null)
+    {
+      // Empty MPC ID means default MPC
+      final IMPC aMPC = MetaAS4Manager.getMPCMgr ().getMPCOrDefaultOfID (aPullRequest.getMpc ());
+      if (aMPC == null)
+        return AS4SignalMessageProcessorResult.createFailure ("The MPC '" + aPullRequest.getMpc () + "' is unknown");
+
+      final ICommonsList <WSS4JAttachment> aAttachments = new CommonsArrayList <> ();
+      final Ebms3UserMessage aUserMessage = m_aStore.dequeue (aMPC, aState.getResourceHelper (), aAttachments);
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Pull request on MPC '" +
+                      aMPC.getID () +
+                      "' is served with " +
+                      (aUserMessage == null ? "no user message"
+                                            : "user message '" + aUserMessage.getMessageInfo ().getMessageId () + "'"));
+      return AS4SignalMessageProcessorResult.createSuccess (aAttachments, null, aUserMessage);
+    }
+
+    if (aSignalMessage.getReceipt () != null && aSignalMessage.getMessageInfo () != null)
+      m_aStore.acknowledge (aSignalMessage.getMessageInfo ().getRefToMessageId ());
+
+    return AS4SignalMessageProcessorResult.createSuccess ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Store", m_aStore).getToString ();
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet.spi;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+import com.helger.phase4.servlet.AS4MessageProcessorExecutor;
+
+/**
+ * Defines how an {@link IAS4ServletMessageProcessorSPI} is invoked for an
+ * incoming message. The execution mode is only considered if an
+ * {@link AS4MessageProcessorExecutor} is present. Otherwise all SPIs are
+ * invoked one after another in the order of registration.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public enum EAS4MessageProcessorExecutionMode implements IHasID <String>
+{
+  /**
+   * The SPI is invoked on the request thread, after all previously registered
+   * ordered SPIs and after all its dependencies. This is the default.
+   */
+  ORDERED ("ordered"),
+  /**
+   * The SPI does not depend on other SPIs except for the explicitly declared
+   * dependencies and is invoked concurrently on the executor. It gets its own
+   * copy of the payload node and the message state must only be read. If an
+   * attachment can be read only once, all SPIs are invoked sequentially.
+   */
+  INDEPENDENT ("independent"),
+  /**
+   * The SPI is not critical for the response and is invoked on the executor
+   * after the response was created. Errors of such SPIs are only logged and it
+   * cannot contribute to the response (attachments, async response URL or pull
+   * return message).
+   */
+  POST_RECEIPT ("post-receipt");
+
+  private final String m_sID;
+
+  EAS4MessageProcessorExecutionMode (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static EAS4MessageProcessorExecutionMode getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EAS4MessageProcessorExecutionMode.class, sID);
+  }
+}
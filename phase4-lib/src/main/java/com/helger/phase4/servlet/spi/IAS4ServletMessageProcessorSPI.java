@@ -17,6 +17,7 @@
 package com.helger.phase4.servlet.spi;
 
 import java.io.Serializable;
+import java.time.Duration;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -25,7 +26,10 @@ import org.w3c.dom.Node;
 
 import com.helger.commons.annotation.IsSPIInterface;
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsHashSet;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.http.HttpHeaderMap;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.ebms3header.Ebms3Error;
@@ -44,6 +48,64 @@ import com.helger.phase4.servlet.IAS4MessageState;
 @IsSPIInterface
 public interface IAS4ServletMessageProcessorSPI extends Serializable
 {
+  /**
+   * @return The ID of this processor, that can be referenced as a dependency
+   *         by other processors. Neither <code>null</code> nor empty. Defaults
+   *         to the fully qualified class name.
+   * @see #getAllDependencyProcessorIDs()
+   * @since 2.1.3
+   */
+  @Nonnull
+  @Nonempty
+  default String getProcessorID ()
+  {
+    return getClass ().getName ();
+  }
+
+  /**
+   * @return The execution mode of this processor for incoming messages. Never
+   *         <code>null</code>. Defaults to
+   *         {@link EAS4MessageProcessorExecutionMode#ORDERED} for backwards
+   *         compatibility.
+   * @since 2.1.3
+   */
+  @Nonnull
+  default EAS4MessageProcessorExecutionMode getExecutionMode ()
+  {
+    return EAS4MessageProcessorExecutionMode.ORDERED;
+  }
+
+  /**
+   * Get the IDs of all processors that must have finished successfully before
+   * this processor is invoked. Only processors that are registered before this
+   * processor can be referenced - other IDs are ignored.
+   *
+   * @return The processor IDs this processor depends on. Never
+   *         <code>null</code> but maybe empty.
+   * @see #getProcessorID()
+   * @since 2.1.3
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsSet <String> getAllDependencyProcessorIDs ()
+  {
+    return new CommonsHashSet <> ();
+  }
+
+  /**
+   * @return The maximum duration of the processing of a single incoming
+   *         message if this processor is invoked on the executor. May be
+   *         <code>null</code> to use the default timeout of the executor.
+   *         Ordered processors that are invoked on the request thread are not
+   *         subject to a timeout.
+   * @since 2.1.3
+   */
+  @Nullable
+  default Duration getTimeout ()
+  {
+    return null;
+  }
+
   /**
    * Process incoming AS4 user message
    *
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.tracing;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * An {@link IAS4Tracer} that keeps all finished spans in memory. It is meant
+ * for testing and debugging, as there is no upper limit for the number of
+ * recorded spans.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4InMemoryTracer implements IAS4Tracer
+{
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsList <AS4RecordedSpan> m_aFinishedSpans = new CommonsArrayList <> ();
+
+  private final class InMemorySpan implements IAS4Span
+  {
+    private final String m_sName;
+    private final AS4SpanContext m_aContext;
+    private final AS4SpanContext m_aParentContext;
+    private final long m_nStartNanos = System.nanoTime ();
+    private final AtomicBoolean m_aEnded = new AtomicBoolean (false);
+    @GuardedBy ("this")
+    private final ICommonsOrderedMap <String, String> m_aAttributes = new CommonsLinkedHashMap <> ();
+    @GuardedBy ("this")
+    private Throwable m_aError;
+
+    InMemorySpan (@Nonnull @Nonempty final String sName, @Nullable final AS4SpanContext aParentContext)
+    {
+      m_sName = sName;
+      m_aContext = AS4SpanContext.createChild (aParentContext);
+      m_aParentContext = aParentContext;
+    }
+
+    @Nonnull
+    public AS4SpanContext getSpanContext ()
+    {
+      return m_aContext;
+    }
+
+    @Nonnull
+    public synchronized IAS4Span setAttribute (@Nonnull @Nonempty final String sKey, @Nullable final String sValue)
+    {
+      ValueEnforcer.notEmpty (sKey, "Key");
+      if (sValue != null)
+        m_aAttributes.put (sKey, sValue);
+      return this;
+    }
+
+    @Nonnull
+    public synchronized IAS4Span setError (@Nonnull final Throwable t)
+    {
+      ValueEnforcer.notNull (t, "Throwable");
+      m_aError = t;
+      return this;
+    }
+
+    public void end ()
+    {
+      if (m_aEnded.compareAndSet (false, true))
+      {
+        final AS4RecordedSpan aRecorded;
+        synchronized (this)
+        {
+          aRecorded = new AS4RecordedSpan (m_sName,
+                                           m_aContext,
+                                           m_aParentContext,
+                                           m_aAttributes.getClone (),
+                                           m_aError,
+                                           Duration.ofNanos (System.nanoTime () - m_nStartNanos));
+        }
+        m_aRWLock.writeLocked ( () -> m_aFinishedSpans.add (aRecorded));
+      }
+    }
+  }
+
+  public AS4InMemoryTracer ()
+  {}
+
+  @Nonnull
+  public IAS4Span startSpan (@Nonnull @Nonempty final String sName, @Nullable final AS4SpanContext aParent)
+  {
+    ValueEnforcer.notEmpty (sName, "Name");
+    return new InMemorySpan (sName, aParent);
+  }
+
+  /**
+   * @return All finished spans in the order they were ended. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <AS4RecordedSpan> getAllFinishedSpans ()
+  {
+    return m_aRWLock.readLockedGet (m_aFinishedSpans::getClone);
+  }
+
+  /**
+   * @param sName
+   *        The span name to search. May be <code>null</code>.
+   * @return All finished spans with the provided name. Never <code>null</code>
+   *         but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <AS4RecordedSpan> getAllFinishedSpansWithName (@Nullable final String sName)
+  {
+    return m_aRWLock.readLockedGet ( () -> m_aFinishedSpans.getAll (x -> x.getName ().equals (sName)));
+  }
+
+  /**
+   * Remove all finished spans.
+   */
+  public void clear ()
+  {
+    m_aRWLock.writeLocked (m_aFinishedSpans::clear);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("FinishedSpans", getAllFinishedSpans ().size ()).getToString ();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.tracing;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+
+/**
+ * The default {@link IAS4Tracer} that records nothing and does not propagate
+ * any context.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public final class AS4NoOpTracer implements IAS4Tracer
+{
+  public static final AS4NoOpTracer INSTANCE = new AS4NoOpTracer ();
+
+  /** The span returned by this tracer */
+  public static final IAS4Span NO_OP_SPAN = new IAS4Span ()
+  {
+    @Nullable
+    public AS4SpanContext getSpanContext ()
+    {
+      return null;
+    }
+
+    @Nonnull
+    public IAS4Span setAttribute (@Nonnull @Nonempty final String sKey, @Nullable final String sValue)
+    {
+      return this;
+    }
+
+    @Nonnull
+    public IAS4Span setError (@Nonnull final Throwable t)
+    {
+      return this;
+    }
+
+    public void end ()
+    {}
+  };
+
+  private AS4NoOpTracer ()
+  {}
+
+  @Nonnull
+  public IAS4Span startSpan (@Nonnull @Nonempty final String sName, @Nullable final AS4SpanContext aParent)
+  {
+    return NO_OP_SPAN;
+  }
+}
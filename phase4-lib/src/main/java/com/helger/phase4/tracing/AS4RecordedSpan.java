@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.tracing;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A finished span as recorded by the {@link AS4InMemoryTracer}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public final class AS4RecordedSpan
+{
+  private final String m_sName;
+  private final AS4SpanContext m_aContext;
+  private final AS4SpanContext m_aParentContext;
+  private final ICommonsOrderedMap <String, String> m_aAttributes;
+  private final Throwable m_aError;
+  private final Duration m_aDuration;
+
+  AS4RecordedSpan (@Nonnull @Nonempty final String sName,
+                   @Nonnull final AS4SpanContext aContext,
+                   @Nullable final AS4SpanContext aParentContext,
+                   @Nonnull final ICommonsOrderedMap <String, String> aAttributes,
+                   @Nullable final Throwable aError,
+                   @Nonnull final Duration aDuration)
+  {
+    m_sName = sName;
+    m_aContext = aContext;
+    m_aParentContext = aParentContext;
+    m_aAttributes = aAttributes;
+    m_aError = aError;
+    m_aDuration = aDuration;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getName ()
+  {
+    return m_sName;
+  }
+
+  @Nonnull
+  public AS4SpanContext getSpanContext ()
+  {
+    return m_aContext;
+  }
+
+  /**
+   * @return The context of the parent span. <code>null</code> for root spans.
+   */
+  @Nullable
+  public AS4SpanContext getParentSpanContext ()
+  {
+    return m_aParentContext;
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <String, String> getAllAttributes ()
+  {
+    return new CommonsLinkedHashMap <> (m_aAttributes);
+  }
+
+  @Nullable
+  public String getAttribute (@Nullable final String sKey)
+  {
+    return m_aAttributes.get (sKey);
+  }
+
+  @Nullable
+  public Throwable getError ()
+  {
+    return m_aError;
+  }
+
+  public boolean hasError ()
+  {
+    return m_aError != null;
+  }
+
+  @Nonnull
+  public Duration getDuration ()
+  {
+    return m_aDuration;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Name", m_sName)
+                                       .append ("Context", m_aContext)
+                                       .append ("ParentContext", m_aParentContext)
+                                       .append ("Attributes", m_aAttributes)
+                                       .append ("Error", m_aError)
+                                       .append ("Duration", m_aDuration)
+                                       .getToString ();
+  }
+}
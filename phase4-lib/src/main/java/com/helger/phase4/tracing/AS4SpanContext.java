@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The identification of a single trace span that is propagated between
+ * processes. The HTTP representation follows the W3C Trace Context
+ * <code>traceparent</code> header, so that phase4 spans can be correlated with
+ * spans of OpenTelemetry instrumented components like gateways.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public final class AS4SpanContext
+{
+  /** The HTTP header used for propagation */
+  public static final String HTTP_HEADER_TRACEPARENT = "traceparent";
+
+  private static final String VERSION = "00";
+  private static final String FLAGS_SAMPLED = "01";
+  private static final Pattern TRACEPARENT = Pattern.compile ("[0-9a-f]{2}-[0-9a-f]{32}-[0-9a-f]{16}-[0-9a-f]{2}");
+  private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+  private static final String INVALID_SPAN_ID = "0000000000000000";
+
+  private final String m_sTraceID;
+  private final String m_sSpanID;
+
+  private AS4SpanContext (@Nonnull @Nonempty final String sTraceID, @Nonnull @Nonempty final String sSpanID)
+  {
+    m_sTraceID = sTraceID;
+    m_sSpanID = sSpanID;
+  }
+
+  /**
+   * @return The trace ID as 32 lower case hex characters. Shared by all spans
+   *         of one trace.
+   */
+  @Nonnull
+  @Nonempty
+  public String getTraceID ()
+  {
+    return m_sTraceID;
+  }
+
+  /**
+   * @return The span ID as 16 lower case hex characters.
+   */
+  @Nonnull
+  @Nonempty
+  public String getSpanID ()
+  {
+    return m_sSpanID;
+  }
+
+  /**
+   * @return The value of the <code>traceparent</code> HTTP header for this
+   *         context. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public String getAsTraceParent ()
+  {
+    return VERSION + '-' + m_sTraceID + '-' + m_sSpanID + '-' + FLAGS_SAMPLED;
+  }
+
+  @Nonnull
+  private static String _createRandomHex (final int nLongs)
+  {
+    final ThreadLocalRandom aRandom = ThreadLocalRandom.current ();
+    final StringBuilder aSB = new StringBuilder (nLongs * 16);
+    for (int i = 0; i < nLongs; ++i)
+    {
+      final String sHex = Long.toHexString (aRandom.nextLong ());
+      for (int j = sHex.length (); j < 16; ++j)
+        aSB.append ('0');
+      aSB.append (sHex);
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * Create a new context for a span.
+   *
+   * @param aParent
+   *        The parent context. If <code>null</code> a new trace is started.
+   * @return The new context and never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4SpanContext createChild (@Nullable final AS4SpanContext aParent)
+  {
+    String sTraceID = aParent != null ? aParent.getTraceID () : _createRandomHex (2);
+    if (sTraceID.equals (INVALID_TRACE_ID))
+      sTraceID = _createRandomHex (2);
+    String sSpanID = _createRandomHex (1);
+    if (sSpanID.equals (INVALID_SPAN_ID))
+      sSpanID = _createRandomHex (1);
+    return new AS4SpanContext (sTraceID, sSpanID);
+  }
+
+  /**
+   * Parse a <code>traceparent</code> HTTP header value.
+   *
+   * @param sTraceParent
+   *        The header value. May be <code>null</code>.
+   * @return <code>null</code> if the value is missing or invalid.
+   */
+  @Nullable
+  public static AS4SpanContext parseTraceParent (@Nullable final String sTraceParent)
+  {
+    if (sTraceParent == null)
+      return null;
+    final String sTrimmed = sTraceParent.trim ();
+    if (!TRACEPARENT.matcher (sTrimmed).matches ())
+      return null;
+
+    final String sTraceID = sTrimmed.substring (3, 35);
+    final String sSpanID = sTrimmed.substring (36, 52);
+    if (sTraceID.equals (INVALID_TRACE_ID) || sSpanID.equals (INVALID_SPAN_ID))
+      return null;
+    return new AS4SpanContext (sTraceID, sSpanID);
+  }
+
+  /**
+   * Create a context from explicit IDs.
+   *
+   * @param sTraceID
+   *        Trace ID with 32 hex characters. May neither be <code>null</code>
+   *        nor empty.
+   * @param sSpanID
+   *        Span ID with 16 hex characters. May neither be <code>null</code>
+   *        nor empty.
+   * @return The new context and never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4SpanContext create (@Nonnull @Nonempty final String sTraceID, @Nonnull @Nonempty final String sSpanID)
+  {
+    ValueEnforcer.isTrue (sTraceID.length () == 32, "TraceID must have 32 characters");
+    ValueEnforcer.isTrue (sSpanID.length () == 16, "SpanID must have 16 characters");
+    return new AS4SpanContext (sTraceID, sSpanID);
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final AS4SpanContext rhs = (AS4SpanContext) o;
+    return EqualsHelper.equals (m_sTraceID, rhs.m_sTraceID) && EqualsHelper.equals (m_sSpanID, rhs.m_sSpanID);
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_sTraceID).append (m_sSpanID).getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("TraceID", m_sTraceID).append ("SpanID", m_sSpanID).getToString ();
+  }
+}
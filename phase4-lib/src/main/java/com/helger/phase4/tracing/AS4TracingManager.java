@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.tracing;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.http.HttpHeaderMap;
+
+/**
+ * Global entry point for tracing. It holds the {@link IAS4Tracer} to use
+ * (defaults to {@link AS4NoOpTracer}) and the span that is current for the
+ * calling thread, so that nested spans are automatically linked to their
+ * parent.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public final class AS4TracingManager
+{
+  /** Span attribute containing the ebMS message ID */
+  public static final String ATTR_MESSAGE_ID = "ebms.message_id";
+  /** Span attribute containing the ebMS reference to message ID */
+  public static final String ATTR_REF_TO_MESSAGE_ID = "ebms.ref_to_message_id";
+  /** Span attribute containing the remote URL */
+  public static final String ATTR_URL = "http.url";
+  /** Span attribute containing the overall sending result */
+  public static final String ATTR_SEND_RESULT = "phase4.send_result";
+  /** Span attribute containing the class name of an invoked SPI */
+  public static final String ATTR_SPI_CLASS = "phase4.spi_class";
+
+  private static volatile IAS4Tracer s_aTracer = AS4NoOpTracer.INSTANCE;
+  private static final ThreadLocal <ScopedSpan> CURRENT = new ThreadLocal <> ();
+
+  /**
+   * Wrapper that makes a span the current span of the thread until it is
+   * ended.
+   */
+  private static final class ScopedSpan implements IAS4Span
+  {
+    private final IAS4Span m_aDelegate;
+    private final ScopedSpan m_aPrevious;
+    private final Thread m_aThread = Thread.currentThread ();
+    private boolean m_bEnded = false;
+
+    ScopedSpan (@Nonnull final IAS4Span aDelegate, @Nullable final ScopedSpan aPrevious)
+    {
+      m_aDelegate = aDelegate;
+      m_aPrevious = aPrevious;
+    }
+
+    @Nullable
+    public AS4SpanContext getSpanContext ()
+    {
+      return m_aDelegate.getSpanContext ();
+    }
+
+    @Nonnull
+    public IAS4Span setAttribute (@Nonnull @Nonempty final String sKey, @Nullable final String sValue)
+    {
+      m_aDelegate.setAttribute (sKey, sValue);
+      return this;
+    }
+
+    @Nonnull
+    public IAS4Span setError (@Nonnull final Throwable t)
+    {
+      m_aDelegate.setError (t);
+      return this;
+    }
+
+    public void end ()
+    {
+      if (!m_bEnded)
+      {
+        m_bEnded = true;
+        m_aDelegate.end ();
+        // Only restore on the creating thread and only if still current
+        if (Thread.currentThread () == m_aThread && CURRENT.get () == this)
+        {
+          if (m_aPrevious != null)
+            CURRENT.set (m_aPrevious);
+          else
+            CURRENT.remove ();
+        }
+      }
+    }
+  }
+
+  private AS4TracingManager ()
+  {}
+
+  /**
+   * @return The tracer in use. Never <code>null</code>.
+   */
+  @Nonnull
+  public static IAS4Tracer getTracer ()
+  {
+    return s_aTracer;
+  }
+
+  /**
+   * @param aTracer
+   *        The tracer to use. May not be <code>null</code>. Use
+   *        {@link AS4NoOpTracer#INSTANCE} to disable tracing.
+   */
+  public static void setTracer (@Nonnull final IAS4Tracer aTracer)
+  {
+    ValueEnforcer.notNull (aTracer, "Tracer");
+    s_aTracer = aTracer;
+  }
+
+  /**
+   * @return <code>true</code> if a tracer other than {@link AS4NoOpTracer} is
+   *         installed.
+   */
+  public static boolean isEnabled ()
+  {
+    return s_aTracer != AS4NoOpTracer.INSTANCE;
+  }
+
+  /**
+   * @return The span that is current for the calling thread. Never
+   *         <code>null</code> but maybe {@link AS4NoOpTracer#NO_OP_SPAN}.
+   */
+  @Nonnull
+  public static IAS4Span getCurrentSpan ()
+  {
+    final ScopedSpan ret = CURRENT.get ();
+    return ret != null ? ret : AS4NoOpTracer.NO_OP_SPAN;
+  }
+
+  /**
+   * @return The context of the span that is current for the calling thread.
+   *         May be <code>null</code>.
+   */
+  @Nullable
+  public static AS4SpanContext getCurrentSpanContext ()
+  {
+    final ScopedSpan ret = CURRENT.get ();
+    return ret != null ? ret.getSpanContext () : null;
+  }
+
+  /**
+   * Start a new span as a child of the current span of this thread. The new
+   * span becomes the current span until it is ended.
+   *
+   * @param sName
+   *        The span name. May neither be <code>null</code> nor empty.
+   * @return The new span. Never <code>null</code>.
+   */
+  @Nonnull
+  public static IAS4Span startSpan (@Nonnull @Nonempty final String sName)
+  {
+    return startSpan (sName, getCurrentSpanContext ());
+  }
+
+  /**
+   * Start a new span with an explicit parent. Use this if the parent was
+   * created on a different thread or in a different process. The new span
+   * becomes the current span until it is ended.
+   *
+   * @param sName
+   *        The span name. May neither be <code>null</code> nor empty.
+   * @param aParent
+   *        The parent context. May be <code>null</code> to start a new trace.
+   * @return The new span. Never <code>null</code>.
+   */
+  @Nonnull
+  public static IAS4Span startSpan (@Nonnull @Nonempty final String sName, @Nullable final AS4SpanContext aParent)
+  {
+    final IAS4Tracer aTracer = s_aTracer;
+    if (aTracer == AS4NoOpTracer.INSTANCE)
+    {
+      // Avoid all overhead
+      return AS4NoOpTracer.NO_OP_SPAN;
+    }
+
+    final ScopedSpan ret = new ScopedSpan (aTracer.startSpan (sName, aParent), CURRENT.get ());
+    CURRENT.set (ret);
+    return ret;
+  }
+
+  /**
+   * Start a new span as a child of the current span of this thread, without
+   * making it the current span. Use this for spans that are ended on a
+   * different thread, e.g. in the completion of a
+   * {@link java.util.concurrent.CompletableFuture}. The span context must be
+   * passed on explicitly.
+   *
+   * @param sName
+   *        The span name. May neither be <code>null</code> nor empty.
+   * @return The new span. Never <code>null</code>.
+   */
+  @Nonnull
+  public static IAS4Span startDetachedSpan (@Nonnull @Nonempty final String sName)
+  {
+    final IAS4Tracer aTracer = s_aTracer;
+    if (aTracer == AS4NoOpTracer.INSTANCE)
+    {
+      // Avoid all overhead
+      return AS4NoOpTracer.NO_OP_SPAN;
+    }
+    return aTracer.startSpan (sName, getCurrentSpanContext ());
+  }
+
+  /**
+   * Extract the span context propagated by the sender.
+   *
+   * @param aHeaders
+   *        The HTTP headers of the incoming message. May not be
+   *        <code>null</code>.
+   * @return <code>null</code> if no valid <code>traceparent</code> header is
+   *         present.
+   */
+  @Nullable
+  public static AS4SpanContext extractSpanContext (@Nonnull final HttpHeaderMap aHeaders)
+  {
+    return AS4SpanContext.parseTraceParent (aHeaders.getFirstHeaderValue (AS4SpanContext.HTTP_HEADER_TRACEPARENT));
+  }
+}
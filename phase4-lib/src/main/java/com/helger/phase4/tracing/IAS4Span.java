@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.tracing;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+
+/**
+ * A single trace span. Spans are created via
+ * {@link AS4TracingManager#startSpan(String)} and must be ended exactly once,
+ * preferably via try-with-resources.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+public interface IAS4Span extends AutoCloseable
+{
+  /**
+   * @return The context of this span to be propagated. May be
+   *         <code>null</code> for spans that are not recorded.
+   */
+  @Nullable
+  AS4SpanContext getSpanContext ();
+
+  /**
+   * Set an attribute on this span.
+   *
+   * @param sKey
+   *        The attribute key. May neither be <code>null</code> nor empty.
+   * @param sValue
+   *        The attribute value. May be <code>null</code> in which case the
+   *        call is ignored.
+   * @return this for chaining
+   */
+  @Nonnull
+  IAS4Span setAttribute (@Nonnull @Nonempty String sKey, @Nullable String sValue);
+
+  /**
+   * Mark this span as failed.
+   *
+   * @param t
+   *        The cause of the failure. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  IAS4Span setError (@Nonnull Throwable t);
+
+  /**
+   * End the span. Calling this method more than once has no effect.
+   */
+  void end ();
+
+  /**
+   * Same as {@link #end()} - for usage in try-with-resources.
+   */
+  @Override
+  default void close ()
+  {
+    end ();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.tracing;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+
+/**
+ * Abstraction of a tracing system. Implement this interface to bridge to a
+ * tracing system like OpenTelemetry and register it via
+ * {@link AS4TracingManager#setTracer(IAS4Tracer)}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ * @see AS4NoOpTracer
+ * @see AS4InMemoryTracer
+ */
+public interface IAS4Tracer
+{
+  /**
+   * Start a new span.
+   *
+   * @param sName
+   *        The name of the span. May neither be <code>null</code> nor empty.
+   * @param aParent
+   *        The parent span context. May be <code>null</code> to start a new
+   *        trace.
+   * @return The started span. Never <code>null</code>.
+   */
+  @Nonnull
+  IAS4Span startSpan (@Nonnull @Nonempty String sName, @Nullable AS4SpanContext aParent);
+}
@@ -16,9 +16,19 @@
  */
 package com.helger.phase4.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.helger.commons.error.SingleError;
 import com.helger.commons.io.file.FileOperationManager;
 import com.helger.commons.io.file.LoggingFileOperationCallback;
@@ -31,6 +41,7 @@ import com.helger.commons.io.file.LoggingFileOperationCallback;
 @Immutable
 public final class AS4IOHelper
 {
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4IOHelper.class);
   private static final FileOperationManager FOM = new FileOperationManager ();
   static
   {
@@ -51,4 +62,56 @@ public final class AS4IOHelper
   {
     return SingleError.builderError ().errorText (sErrorText).build ();
   }
+
+  /**
+   * Force the directory entries of the provided directory to disk, so that
+   * created, renamed or deleted files survive a crash. This is not supported on
+   * all platforms (e.g. Windows), so errors are only logged.
+   *
+   * @param aDirectory
+   *        The directory to sync. May not be <code>null</code>.
+   * @since 2.1.3
+   */
+  public static void forceDirectory (@Nonnull final File aDirectory)
+  {
+    try (final FileChannel aChannel = FileChannel.open (aDirectory.toPath (), StandardOpenOption.READ))
+    {
+      aChannel.force (true);
+    }
+    catch (final IOException ex)
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Failed to sync directory '" + aDirectory.getAbsolutePath () + "': " + ex.getMessage ());
+    }
+  }
+
+  /**
+   * Replace the target file with the completely written temporary file in an
+   * atomic and durable way: the content of the temporary file is forced to disk
+   * before it is moved, and the directory is forced to disk after the move.
+   *
+   * @param aTempFile
+   *        The closed temporary file. May not be <code>null</code>.
+   * @param aTargetFile
+   *        The target file. Must reside in the same directory as the temporary
+   *        file. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of an error
+   * @since 2.1.3
+   */
+  public static void atomicReplace (@Nonnull final File aTempFile, @Nonnull final File aTargetFile) throws IOException
+  {
+    try (final FileChannel aChannel = FileChannel.open (aTempFile.toPath (), StandardOpenOption.WRITE))
+    {
+      aChannel.force (true);
+    }
+
+    // Make the new content visible at once
+    Files.move (aTempFile.toPath (),
+                aTargetFile.toPath (),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+    forceDirectory (aTargetFile.getAbsoluteFile ().getParentFile ());
+  }
 }
@@ -41,6 +41,7 @@ import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.file.FileIOError;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.phase4.CAS4;
+import com.helger.phase4.metrics.AS4MetricsManager;
 
 /**
  * A resource manager that keeps track of temporary files and other closables
@@ -113,6 +114,7 @@ public class AS4ResourceHelper implements Closeable
     final File ret = File.createTempFile ("phase4-res-", ".tmp", s_aTempDir);
     // And remember
     m_aRWLock.writeLocked ( () -> m_aTempFiles.add (ret));
+    AS4MetricsManager.onTempFileCreated ();
 
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("AS4ResourceHelper.created temporary file '" + ret.getAbsolutePath () + "'");
@@ -16,8 +16,13 @@
  */
 package com.helger.phase4.util;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import javax.annotation.Nonnull;
+import javax.annotation.WillNotClose;
 import javax.xml.XMLConstants;
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -58,15 +63,21 @@ public final class AS4XMLHelper
     return XMLWriter.getNodeAsString (aNode, XWS);
   }
 
+  @Nonnull
+  private static Transformer _createTransformer () throws TransformerException
+  {
+    final TransformerFactory tf = TransformerFactory.newInstance ();
+    tf.setAttribute (XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    tf.setAttribute (XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+    return tf.newTransformer ();
+  }
+
   @Nonnull
   private static String _serializeRT (@Nonnull final Node aNode)
   {
     try
     {
-      final TransformerFactory tf = TransformerFactory.newInstance ();
-      tf.setAttribute (XMLConstants.ACCESS_EXTERNAL_DTD, "");
-      tf.setAttribute (XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-      final Transformer aTransformer = tf.newTransformer ();
+      final Transformer aTransformer = _createTransformer ();
 
       try (final NonBlockingStringWriter aSW = new NonBlockingStringWriter ())
       {
@@ -89,4 +100,36 @@ public final class AS4XMLHelper
       return _serializeRT (aNode);
     return _serializePh (aNode);
   }
+
+  /**
+   * Serialize the provided node directly to the provided output stream,
+   * without creating an intermediate String. The created bytes are identical
+   * to the bytes of {@link #serializeXML(Node)} encoded with the charset of
+   * {@link #XWS}.
+   *
+   * @param aNode
+   *        The node to serialize. May not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. Is
+   *        flushed but not closed.
+   * @throws IOException
+   *         In case serialization or writing fails
+   * @since 2.1.3
+   */
+  public static void serializeXML (@Nonnull final Node aNode, @Nonnull @WillNotClose final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aNode, "Node");
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    try
+    {
+      final Transformer aTransformer = _createTransformer ();
+      aTransformer.setOutputProperty (OutputKeys.ENCODING, XWS.getCharset ().name ());
+      aTransformer.transform (new DOMSource (aNode), new StreamResult (aOS));
+      aOS.flush ();
+    }
+    catch (final TransformerException ex)
+    {
+      throw new IOException ("Failed to serialize XML", ex);
+    }
+  }
 }
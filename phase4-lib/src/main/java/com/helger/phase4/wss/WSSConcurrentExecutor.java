@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.wss;
+
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.functional.IThrowingSupplier;
+import com.helger.phase4.config.AS4Configuration;
+
+/**
+ * A helper class to run all WSS stuff concurrently. In contrast to
+ * {@link WSSSynchronizer} {@link WSSConfig#init()} is only called once (upon
+ * the first invocation or explicitly via {@link #init()}) and no lock is held
+ * while signing, verifying, encrypting or decrypting. Other than
+ * {@link WSSConfigManager} this class does not depend on a global scope.<br>
+ * The number of parallel WSS actions can be limited via
+ * {@link AS4Configuration#getWSS4JConcurrentSecurityMaxParallel()}, so that
+ * the CPU-heavy crypto work stays bounded even if many requests are processed
+ * in parallel (e.g. by the {@link com.helger.phase4.servlet.AS4AsyncServlet}).
+ * <br>
+ * Note: this class may only be invoked if
+ * {@link AS4Configuration#isWSS4JConcurrentSecurity()} returns
+ * <code>true</code>.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public final class WSSConcurrentExecutor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (WSSConcurrentExecutor.class);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  // Volatile for the lock-free fast path in init()
+  private static volatile boolean s_bInitialized = false;
+  // null means unlimited
+  private static volatile Semaphore s_aPermits;
+
+  private WSSConcurrentExecutor ()
+  {}
+
+  /**
+   * @return <code>true</code> if {@link WSSConfig} was already initialized by
+   *         this class, <code>false</code> if not.
+   */
+  public static boolean isInitialized ()
+  {
+    return s_bInitialized;
+  }
+
+  /**
+   * Initialize {@link WSSConfig} once. Consecutive calls have no effect. This
+   * method should be called upon application startup, so that the first
+   * message does not need to pay the initialization overhead.
+   */
+  public static void init ()
+  {
+    // Fast path without locking
+    if (s_bInitialized)
+      return;
+
+    RW_LOCK.writeLocked ( () -> {
+      if (!s_bInitialized)
+      {
+        WSSConfigManager.initWSSConfig ();
+        final int nMaxParallel = AS4Configuration.getWSS4JConcurrentSecurityMaxParallel ();
+        s_aPermits = nMaxParallel > 0 ? new Semaphore (nMaxParallel, true) : null;
+        s_bInitialized = true;
+        LOGGER.info ("WSSConfig was initialized for concurrent usage" +
+                     (nMaxParallel > 0 ? " with at most " + nMaxParallel + " parallel actions" : ""));
+      }
+    });
+  }
+
+  /**
+   * Cleanup {@link WSSConfig} if it was initialized by {@link #init()}. This
+   * should only be called upon application shutdown, when no more WSS actions
+   * are running.
+   */
+  public static void cleanUp ()
+  {
+    RW_LOCK.writeLocked ( () -> {
+      if (s_bInitialized)
+      {
+        WSSConfigManager.cleanUpWSSConfig ();
+        s_aPermits = null;
+        s_bInitialized = false;
+      }
+    });
+  }
+
+  /**
+   * A wrapper around {@link #call(IThrowingSupplier)} swallowing the return
+   * value
+   *
+   * @param aRunnable
+   *        The runnable to be run. May not be <code>null</code>.
+   */
+  public static void run (@Nonnull final Runnable aRunnable)
+  {
+    ValueEnforcer.notNull (aRunnable, "Runnable");
+    call ( () -> {
+      aRunnable.run ();
+      return null;
+    });
+  }
+
+  @Nullable
+  public static <T, EX extends Exception> T call (@Nonnull final IThrowingSupplier <T, EX> aSupplier) throws EX
+  {
+    ValueEnforcer.notNull (aSupplier, "Supplier");
+
+    // Ensure WSSConfig is initialized - no lock afterwards
+    init ();
+
+    final Semaphore aPermits = s_aPermits;
+    if (aPermits == null)
+      return aSupplier.get ();
+
+    // Bound the number of parallel crypto actions
+    aPermits.acquireUninterruptibly ();
+    try
+    {
+      return aSupplier.get ();
+    }
+    finally
+    {
+      aPermits.release ();
+    }
+  }
+}
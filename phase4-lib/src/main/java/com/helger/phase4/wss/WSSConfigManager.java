@@ -49,8 +49,12 @@ public class WSSConfigManager extends AbstractGlobalSingleton
     return getGlobalSingleton (WSSConfigManager.class);
   }
 
-  @Override
-  protected void onAfterInstantiation (@Nonnull final IScope aScope)
+  /**
+   * Install the WSS4J security providers (if needed) and initialize
+   * {@link WSSConfig}. This is shared between the global singleton life cycle
+   * and {@link WSSConcurrentExecutor}.
+   */
+  static void initWSSConfig ()
   {
     // init WSSConfig
     final boolean bContainsSTRTransform = IPrivilegedAction.securityGetProvider ("STRTransform").invokeSafe () != null;
@@ -95,8 +99,11 @@ public class WSSConfigManager extends AbstractGlobalSingleton
       LOGGER.debug ("Finished initializing WSSConfig Security Providers");
   }
 
-  @Override
-  protected void onBeforeDestroy (final IScope aScopeToBeDestroyed) throws Exception
+  /**
+   * Cleanup {@link WSSConfig} and remove the security providers if they were
+   * installed by {@link #initWSSConfig()}.
+   */
+  static void cleanUpWSSConfig ()
   {
     // Cleanup WSSConfig
     LOGGER.info ("Cleaning up WSSConfig." +
@@ -108,6 +115,18 @@ public class WSSConfigManager extends AbstractGlobalSingleton
       LOGGER.debug ("Finished cleaning up WSSConfig");
   }
 
+  @Override
+  protected void onAfterInstantiation (@Nonnull final IScope aScope)
+  {
+    initWSSConfig ();
+  }
+
+  @Override
+  protected void onBeforeDestroy (final IScope aScopeToBeDestroyed) throws Exception
+  {
+    cleanUpWSSConfig ();
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public static WSSConfig createStaticWSSConfig ()
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link AS4SpoolingInputStreamProvider} and
+ * {@link AS4CompressingInputStream}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4SpoolingInputStreamProviderTest
+{
+  private static byte [] _createData (final int nBytes)
+  {
+    final byte [] ret = new byte [nBytes];
+    for (int i = 0; i < nBytes; ++i)
+      ret[i] = (byte) ('a' + i % 26);
+    return ret;
+  }
+
+  @Test
+  public void testReadTwice () throws Exception
+  {
+    final byte [] aData = _createData (100_000);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final File aSpoolFile = aResHelper.createTempFile ();
+      final AtomicInteger aOpenCount = new AtomicInteger (0);
+      try (final AS4SpoolingInputStreamProvider aISP = new AS4SpoolingInputStreamProvider ( () -> {
+        aOpenCount.incrementAndGet ();
+        return new NonBlockingByteArrayInputStream (aData);
+      }, aSpoolFile))
+      {
+        assertTrue (aISP.isReadMultiple ());
+        assertFalse (aISP.isSpoolComplete ());
+        assertArrayEquals (aData, StreamHelper.getAllBytes (aISP.getInputStream ()));
+        assertTrue (aISP.isSpoolComplete ());
+        assertEquals (aData.length, aSpoolFile.length ());
+        assertArrayEquals (aData, StreamHelper.getAllBytes (aISP.getInputStream ()));
+        assertEquals (1, aOpenCount.get ());
+      }
+    }
+  }
+
+  @Test
+  public void testPartialFirstRead () throws Exception
+  {
+    final byte [] aData = _createData (100_000);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      try (final AS4SpoolingInputStreamProvider aISP = new AS4SpoolingInputStreamProvider ( () -> new NonBlockingByteArrayInputStream (aData),
+                                                                                             aResHelper.createTempFile ()))
+      {
+        // Read only a part (e.g. a failed HTTP transmission)
+        try (final InputStream aIS = aISP.getInputStream ())
+        {
+          final byte [] aBuf = new byte [1000];
+          assertEquals (1000, aIS.read (aBuf));
+        }
+        assertFalse (aISP.isSpoolComplete ());
+
+        // The rest is spooled now
+        assertArrayEquals (aData, StreamHelper.getAllBytes (aISP.getInputStream ()));
+        assertTrue (aISP.isSpoolComplete ());
+      }
+    }
+  }
+
+  @Test
+  public void testCompressing () throws Exception
+  {
+    final byte [] aData = _createData (500_000);
+    for (final EAS4CompressionMode eMode : EAS4CompressionMode.values ())
+    {
+      final byte [] aCompressed = StreamHelper.getAllBytes (new AS4CompressingInputStream (new NonBlockingByteArrayInputStream (aData),
+                                                                                          eMode));
+      assertTrue (aCompressed.length < aData.length);
+      final byte [] aDecompressed = StreamHelper.getAllBytes (eMode.getDecompressStream (new NonBlockingByteArrayInputStream (aCompressed)));
+      assertArrayEquals (aData, aDecompressed);
+    }
+
+    // Empty input
+    final byte [] aCompressed = StreamHelper.getAllBytes (new AS4CompressingInputStream (new NonBlockingByteArrayInputStream (new byte [0]),
+                                                                                        EAS4CompressionMode.GZIP));
+    assertArrayEquals (new byte [0],
+                       StreamHelper.getAllBytes (EAS4CompressionMode.GZIP.getDecompressStream (new NonBlockingByteArrayInputStream (aCompressed))));
+  }
+}
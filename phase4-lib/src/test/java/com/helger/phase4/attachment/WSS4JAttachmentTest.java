@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.Test;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+import jakarta.mail.internet.InternetHeaders;
+
+/**
+ * Test class for class {@link WSS4JAttachment}.
+ *
+ * @author Philip Helger
+ */
+public final class WSS4JAttachmentTest
+{
+  private static byte [] _createData (final int nBytes)
+  {
+    final byte [] ret = new byte [nBytes];
+    for (int i = 0; i < nBytes; ++i)
+      ret[i] = (byte) ('a' + i % 26);
+    return ret;
+  }
+
+  private static InternetHeaders _createHeaders (final String sCTE)
+  {
+    final InternetHeaders ret = new InternetHeaders ();
+    ret.setHeader (CHttpHeader.CONTENT_TYPE, "application/octet-stream");
+    ret.setHeader (CHttpHeader.CONTENT_ID, "<attachment=abc>");
+    if (sCTE != null)
+      ret.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, sCTE);
+    return ret;
+  }
+
+  @Test
+  public void testIncomingStreamedInMemory () throws Exception
+  {
+    final byte [] aData = _createData (1000);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final WSS4JAttachment aAttachment = WSS4JAttachment.createIncomingFileAttachment (_createHeaders ("binary"),
+                                                                                        new NonBlockingByteArrayInputStream (aData),
+                                                                                        aResHelper);
+      assertEquals ("abc", aAttachment.getId ());
+      assertEquals ("application/octet-stream", aAttachment.getMimeType ());
+      assertTrue (aResHelper.getAllTempFiles ().isEmpty ());
+      assertTrue (aAttachment.isRepeatable ());
+      assertArrayEquals (aData, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+      assertArrayEquals (aData, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+    }
+  }
+
+  @Test
+  public void testIncomingStreamedToFile () throws Exception
+  {
+    final byte [] aData = _createData (200 * CGlobal.BYTES_PER_KILOBYTE);
+    assertFalse (WSS4JAttachment.canBeKeptInMemory (aData.length));
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final WSS4JAttachment aAttachment = WSS4JAttachment.createIncomingFileAttachment (_createHeaders (null),
+                                                                                        new NonBlockingByteArrayInputStream (aData),
+                                                                                        aResHelper);
+      assertEquals (1, aResHelper.getAllTempFiles ().size ());
+      assertEquals (aData.length, aResHelper.getAllTempFiles ().getFirst ().length ());
+      assertArrayEquals (aData, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+      assertArrayEquals (aData, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+    }
+  }
+
+  @Test
+  public void testIncomingStreamedToFileChannel () throws Exception
+  {
+    final byte [] aData = _createData (300 * CGlobal.BYTES_PER_KILOBYTE + 17);
+    for (final boolean bMemoryMapped : new boolean [] { false, true })
+      try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+      {
+        final WSS4JAttachment aAttachment = new AS4IncomingAttachmentFactoryFileChannel (bMemoryMapped).createAttachment (_createHeaders (null),
+                                                                                                                         new NonBlockingByteArrayInputStream (aData),
+                                                                                                                         aResHelper);
+        assertTrue (aAttachment.getInputStreamProvider () instanceof AS4FileChannelInputStreamProvider);
+        assertEquals (1, aResHelper.getAllTempFiles ().size ());
+        assertEquals (aData.length, aResHelper.getAllTempFiles ().getFirst ().length ());
+        assertTrue (aAttachment.isRepeatable ());
+        assertArrayEquals (aData, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+        assertArrayEquals (aData, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+      }
+  }
+
+  @Test
+  public void testIncomingStreamedBase64 () throws Exception
+  {
+    final byte [] aData = _createData (100 * CGlobal.BYTES_PER_KILOBYTE);
+    final byte [] aEncoded = Base64.getMimeEncoder ().encodeToString (aData).getBytes (StandardCharsets.ISO_8859_1);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final WSS4JAttachment aAttachment = WSS4JAttachment.createIncomingFileAttachment (_createHeaders ("base64"),
+                                                                                        new NonBlockingByteArrayInputStream (aEncoded),
+                                                                                        aResHelper);
+      // Decoded content must be stored
+      assertArrayEquals (aData, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package com.helger.phase4.config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -38,6 +39,14 @@ public final class AS4ConfigurationTest
   {
     assertTrue (AS4Configuration.isUseInMemoryManagers ());
     assertTrue (AS4Configuration.isWSS4JSynchronizedSecurity ());
+    assertFalse (AS4Configuration.isWSS4JConcurrentSecurity ());
+    assertEquals (0, AS4Configuration.getWSS4JConcurrentSecurityMaxParallel ());
+    assertFalse (AS4Configuration.isIncomingSoapBodyStreaming ());
+    assertFalse (AS4Configuration.isHttpClientPooled ());
+    assertFalse (AS4Configuration.isOutgoingAttachmentPipelined ());
+    assertFalse (AS4Configuration.isOutgoingAttachmentMemoryMapped ());
+    assertFalse (AS4Configuration.isMetricsJMXEnabled ());
+    assertFalse (AS4Configuration.isEbms3FastBinderEnabled ());
 
     final ConfiguredValue aCV = AS4Configuration.getConfig ().getConfiguredValue (AS4Configuration.PROPERTY_PHASE4_WSS4J_SYNCSECURITY);
     assertNotNull (aCV);
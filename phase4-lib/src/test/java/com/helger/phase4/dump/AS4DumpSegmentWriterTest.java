@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dump;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.phase4.AS4TestRule;
+
+/**
+ * Test class for class {@link AS4DumpSegmentWriter}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4DumpSegmentWriterTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  private static void _testWriteAndRead (final boolean bCompress) throws Exception
+  {
+    final File aDir = new File ("target/test-dump-segment-" + System.nanoTime ());
+    try
+    {
+      // Small buffers and segments to test splitting and rolling
+      final AS4DumpSegmentSettings aSettings = new AS4DumpSegmentSettings ().setBufferSize (16)
+                                                                            .setBufferCount (4)
+                                                                            .setMaxSegmentSize (100)
+                                                                            .setCompress (bCompress);
+      final byte [] aIncoming = "Content-Type: text/xml\r\n\r\n<incoming-message/>".getBytes (StandardCharsets.UTF_8);
+      final byte [] aOutgoing = "<outgoing-message/>".getBytes (StandardCharsets.UTF_8);
+      try (final AS4DumpSegmentWriter aWriter = new AS4DumpSegmentWriter (aDir, aSettings))
+      {
+        // Interleave two entries
+        final OutputStream aOS1 = aWriter.openEntry (true, "in-1", 0);
+        final OutputStream aOS2 = aWriter.openEntry (false, "msg-2", 1);
+        for (int i = 0; i < aIncoming.length; ++i)
+        {
+          aOS1.write (aIncoming[i]);
+          if (i < aOutgoing.length)
+            aOS2.write (aOutgoing, i, 1);
+        }
+        aOS2.close ();
+        aOS1.close ();
+
+        // Not yet closed
+        final OutputStream aOS3 = aWriter.openEntry (true, "in-3", 0);
+        aOS3.write (aOutgoing);
+        assertTrue (aWriter.flush (10_000));
+        assertEquals (3, aWriter.getEntryCount ());
+        assertEquals (0, aWriter.getDroppedEntryCount ());
+        aOS3.close ();
+      }
+
+      final ICommonsList <AS4DumpSegmentEntry> aEntries = new CommonsArrayList <> ();
+      AS4DumpReader.readSegmentDirectory (aDir, aEntries::add);
+      assertEquals (3, aEntries.size ());
+
+      // Ordered by end
+      final AS4DumpSegmentEntry aEntry2 = aEntries.get (0);
+      assertFalse (aEntry2.isIncoming ());
+      assertEquals ("msg-2", aEntry2.getID ());
+      assertEquals (1, aEntry2.getTry ());
+      assertTrue (aEntry2.isComplete ());
+      assertArrayEquals (aOutgoing, aEntry2.directGetData ());
+
+      final AS4DumpSegmentEntry aEntry1 = aEntries.get (1);
+      assertTrue (aEntry1.isIncoming ());
+      assertEquals ("in-1", aEntry1.getID ());
+      assertEquals (0, aEntry1.getTry ());
+      assertTrue (aEntry1.isComplete ());
+      assertArrayEquals (aIncoming, aEntry1.directGetData ());
+
+      assertEquals ("in-3", aEntries.get (2).getID ());
+      assertTrue (aEntries.get (2).isComplete ());
+
+      // Multiple segments with an index each
+      final File [] aIndexFiles = aDir.listFiles ( (d, sName) -> sName.endsWith (AS4DumpSegmentWriter.INDEX_FILE_EXTENSION));
+      assertTrue (aIndexFiles.length > 1);
+      int nIndexEntries = 0;
+      for (final File aIndexFile : aIndexFiles)
+        for (final AS4DumpSegmentEntry aEntry : AS4DumpReader.readSegmentIndex (aIndexFile))
+        {
+          assertNull (aEntry.directGetData ());
+          nIndexEntries++;
+        }
+      assertEquals (3, nIndexEntries);
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testWriteAndRead () throws Exception
+  {
+    _testWriteAndRead (false);
+  }
+
+  @Test
+  public void testWriteAndReadCompressed () throws Exception
+  {
+    _testWriteAndRead (true);
+  }
+
+  @Test
+  public void testDrop () throws Exception
+  {
+    final File aDir = new File ("target/test-dump-segment-" + System.nanoTime ());
+    try
+    {
+      final AS4DumpSegmentSettings aSettings = new AS4DumpSegmentSettings ().setBufferSize (4)
+                                                                            .setBufferCount (1)
+                                                                            .setOverflowMode (EAS4DumpOverflowMode.DROP);
+      try (final AS4DumpSegmentWriter aWriter = new AS4DumpSegmentWriter (aDir, aSettings))
+      {
+        // The only buffer is held by the first entry
+        final OutputStream aOS1 = aWriter.openEntry (true, "in-1", 0);
+        aOS1.write ('a');
+        final OutputStream aOS2 = aWriter.openEntry (true, "in-2", 0);
+        aOS2.write ("abc".getBytes (StandardCharsets.ISO_8859_1));
+        aOS2.close ();
+        aOS1.close ();
+
+        assertEquals (1, aWriter.getDroppedEntryCount ());
+        assertEquals (3, aWriter.getDroppedByteCount ());
+        assertEquals (0, aWriter.getBlockedCount ());
+      }
+
+      final ICommonsList <AS4DumpSegmentEntry> aEntries = new CommonsArrayList <> ();
+      AS4DumpReader.readSegmentDirectory (aDir, aEntries::add);
+      assertEquals (2, aEntries.size ());
+      assertEquals ("in-2", aEntries.get (0).getID ());
+      assertFalse (aEntries.get (0).isComplete ());
+      assertEquals (0, aEntries.get (0).directGetData ().length);
+      assertEquals ("in-1", aEntries.get (1).getID ());
+      assertTrue (aEntries.get (1).isComplete ());
+      assertArrayEquals (new byte [] { 'a' }, aEntries.get (1).directGetData ());
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.duplicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.state.EChange;
+import com.helger.commons.state.EContinue;
+import com.helger.phase4.mgr.MetaAS4Manager;
+
+/**
+ * Test class for class {@link AS4DuplicateManagerAppendOnly}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4DuplicateManagerAppendOnlyTest
+{
+  @Test
+  public void testPersistence () throws Exception
+  {
+    final File aDir = new File ("target/test-duplicate-log-" + System.nanoTime ());
+    try
+    {
+      AS4DuplicateManagerAppendOnly aMgr = new AS4DuplicateManagerAppendOnly (aDir);
+      assertTrue (aMgr.isEmpty ());
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck (null, null, null));
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("a", "profile", "pmode"));
+      assertEquals (EContinue.BREAK, aMgr.registerAndCheck ("a", "profile", "pmode"));
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("b", null, null));
+      assertEquals (1, aMgr.getSegmentCount ());
+      aMgr.close ();
+
+      // Re-read
+      aMgr = new AS4DuplicateManagerAppendOnly (aDir);
+      assertEquals (2, aMgr.size ());
+      final IAS4DuplicateItem aItem = aMgr.getItemOfMessageID ("a");
+      assertNotNull (aItem);
+      assertEquals ("profile", aItem.getProfileID ());
+      assertEquals ("pmode", aItem.getPModeID ());
+      assertNull (aMgr.getItemOfMessageID ("b").getProfileID ());
+      assertEquals (EContinue.BREAK, aMgr.registerAndCheck ("b", null, null));
+      aMgr.close ();
+
+      assertEquals (EChange.CHANGED, new AS4DuplicateManagerAppendOnly (aDir).clearCache ());
+      assertTrue (new AS4DuplicateManagerAppendOnly (aDir).isEmpty ());
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testEvict () throws Exception
+  {
+    final File aDir = new File ("target/test-duplicate-log-" + System.nanoTime ());
+    try
+    {
+      // One segment per record
+      AS4DuplicateManagerAppendOnly aMgr = new AS4DuplicateManagerAppendOnly (aDir, Duration.ofHours (1), 1);
+      for (int i = 0; i < 10; ++i)
+        aMgr.registerAndCheck ("id" + i, null, null);
+      assertEquals (10, aMgr.getSegmentCount ());
+
+      final OffsetDateTime aPast = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ().minusHours (1);
+      assertTrue (aMgr.evictAllItemsBefore (aPast).isEmpty ());
+      assertEquals (10, aMgr.size ());
+
+      final OffsetDateTime aFuture = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ().plusHours (1);
+      assertEquals (10, aMgr.evictAllItemsBefore (aFuture).size ());
+      assertTrue (aMgr.isEmpty ());
+      // The last item segment and the new one with the eviction marker are
+      // left
+      assertEquals (2, aMgr.getSegmentCount ());
+      aMgr.close ();
+
+      // Evicted items are not resurrected
+      aMgr = new AS4DuplicateManagerAppendOnly (aDir);
+      assertTrue (aMgr.isEmpty ());
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("id0", null, null));
+      aMgr.close ();
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testConcurrentRegistration () throws Exception
+  {
+    final File aDir = new File ("target/test-duplicate-log-" + System.nanoTime ());
+    try
+    {
+      // Small segments to roll over while syncing
+      AS4DuplicateManagerAppendOnly aMgr = new AS4DuplicateManagerAppendOnly (aDir, Duration.ofHours (1), 4096);
+      final AS4DuplicateManagerAppendOnly aFinalMgr = aMgr;
+      final ExecutorService aES = Executors.newFixedThreadPool (8);
+      try
+      {
+        for (int i = 0; i < 1000; ++i)
+        {
+          final String sID = "id" + i;
+          aES.submit ( () -> aFinalMgr.registerAndCheck (sID, null, null));
+        }
+      }
+      finally
+      {
+        aES.shutdown ();
+        assertTrue (aES.awaitTermination (1, TimeUnit.MINUTES));
+      }
+      assertEquals (1000, aMgr.size ());
+      assertTrue (aMgr.getSegmentCount () > 1);
+      aMgr.close ();
+
+      aMgr = new AS4DuplicateManagerAppendOnly (aDir);
+      assertEquals (1000, aMgr.size ());
+      aMgr.close ();
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testTruncateInvalidTail () throws Exception
+  {
+    final File aDir = new File ("target/test-duplicate-log-" + System.nanoTime ());
+    try
+    {
+      AS4DuplicateManagerAppendOnly aMgr = new AS4DuplicateManagerAppendOnly (aDir);
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("a", null, null));
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("b", null, null));
+      aMgr.close ();
+
+      final File [] aFiles = aDir.listFiles ();
+      assertNotNull (aFiles);
+      assertEquals (1, aFiles.length);
+      final long nValidLength = aFiles[0].length ();
+
+      // Append a record with a bogus string length
+      try (final DataOutputStream aDOS = new DataOutputStream (new FileOutputStream (aFiles[0], true)))
+      {
+        aDOS.writeByte (1);
+        aDOS.writeLong (0);
+        aDOS.writeInt (0);
+        aDOS.writeInt (Integer.MAX_VALUE);
+        aDOS.write (new byte [] { 'x', 'y' });
+      }
+
+      // Re-read - the valid records are kept and the tail is cut off
+      aMgr = new AS4DuplicateManagerAppendOnly (aDir);
+      assertEquals (2, aMgr.size ());
+      assertEquals (nValidLength, aFiles[0].length ());
+      assertEquals (EContinue.BREAK, aMgr.registerAndCheck ("b", null, null));
+      aMgr.close ();
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+}
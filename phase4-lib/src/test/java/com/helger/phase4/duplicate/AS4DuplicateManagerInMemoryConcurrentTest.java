@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.duplicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.EChange;
+import com.helger.commons.state.EContinue;
+import com.helger.phase4.mgr.MetaAS4Manager;
+
+/**
+ * Test class for class {@link AS4DuplicateManagerInMemoryConcurrent}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4DuplicateManagerInMemoryConcurrentTest
+{
+  @Test
+  public void testBasic ()
+  {
+    final AS4DuplicateManagerInMemoryConcurrent aMgr = new AS4DuplicateManagerInMemoryConcurrent ();
+    assertTrue (aMgr.isEmpty ());
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck (null, "profile", "pmode"));
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("", "profile", "pmode"));
+    assertTrue (aMgr.isEmpty ());
+
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("a", "profile", "pmode"));
+    assertEquals (EContinue.BREAK, aMgr.registerAndCheck ("a", "profile", "pmode"));
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("b", null, null));
+    assertEquals (2, aMgr.size ());
+    assertEquals (2, aMgr.getAll ().size ());
+
+    final IAS4DuplicateItem aItem = aMgr.getItemOfMessageID ("a");
+    assertNotNull (aItem);
+    assertEquals ("profile", aItem.getProfileID ());
+    assertNull (aMgr.getItemOfMessageID ("c"));
+
+    assertEquals (EChange.CHANGED, aMgr.clearCache ());
+    assertEquals (EChange.UNCHANGED, aMgr.clearCache ());
+    assertTrue (aMgr.isEmpty ());
+  }
+
+  @Test
+  public void testEvict ()
+  {
+    final AS4DuplicateManagerInMemoryConcurrent aMgr = new AS4DuplicateManagerInMemoryConcurrent (Duration.ofMillis (1));
+    for (int i = 0; i < 100; ++i)
+      aMgr.registerAndCheck ("id" + i, null, null);
+    assertEquals (100, aMgr.size ());
+
+    // Nothing is older
+    final OffsetDateTime aPast = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ().minusHours (1);
+    assertTrue (aMgr.evictAllItemsBefore (aPast).isEmpty ());
+    assertEquals (100, aMgr.size ());
+
+    // Everything is older
+    final OffsetDateTime aFuture = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ().plusHours (1);
+    final ICommonsList <String> aEvicted = aMgr.evictAllItemsBefore (aFuture);
+    assertEquals (100, aEvicted.size ());
+    assertTrue (aMgr.isEmpty ());
+
+    // Can be registered again
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("id0", null, null));
+    assertFalse (aMgr.isEmpty ());
+  }
+
+  @Test
+  public void testEvictPartialBucket ()
+  {
+    // A single huge bucket - everything must be checked item by item
+    final AS4DuplicateManagerInMemoryConcurrent aMgr = new AS4DuplicateManagerInMemoryConcurrent (Duration.ofDays (10000));
+    aMgr.registerAndCheck ("a", null, null);
+    final OffsetDateTime aRefDT = aMgr.getItemOfMessageID ("a").getDateTime ();
+    assertTrue (aMgr.evictAllItemsBefore (aRefDT).isEmpty ());
+    assertEquals (1, aMgr.evictAllItemsBefore (aRefDT.plusNanos (1)).size ());
+    assertTrue (aMgr.isEmpty ());
+  }
+
+  @Test
+  public void testConcurrentRegister () throws Exception
+  {
+    final AS4DuplicateManagerInMemoryConcurrent aMgr = new AS4DuplicateManagerInMemoryConcurrent ();
+    final AtomicInteger aContinue = new AtomicInteger (0);
+    final ExecutorService aES = Executors.newFixedThreadPool (8);
+    for (int i = 0; i < 10_000; ++i)
+    {
+      // Every ID is registered twice
+      final String sID = "id" + (i / 2);
+      aES.submit ( () -> {
+        if (aMgr.registerAndCheck (sID, null, null).isContinue ())
+          aContinue.incrementAndGet ();
+      });
+    }
+    aES.shutdown ();
+    assertTrue (aES.awaitTermination (1, TimeUnit.MINUTES));
+    assertEquals (5_000, aContinue.get ());
+    assertEquals (5_000, aMgr.size ());
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.duplicate;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.timing.StopWatch;
+import com.helger.phase4.mgr.MetaAS4Manager;
+
+/**
+ * Compare the throughput of {@link AS4DuplicateManagerInMemory} and
+ * {@link AS4DuplicateManagerInMemoryConcurrent} for concurrent registrations
+ * and eviction.
+ *
+ * @author Philip Helger
+ */
+public final class MainAS4DuplicateManagerComparison
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainAS4DuplicateManagerComparison.class);
+  private static final int ITEMS = 1_000_000;
+  // The old eviction is O(n*m), so a smaller number is used
+  private static final int EVICT_ITEMS = 20_000;
+  private static final int THREADS = 8;
+
+  private static void _measure (final String sName, final Supplier <? extends IAS4DuplicateManager> aFactory) throws Exception
+  {
+    final IAS4DuplicateManager aMgr = aFactory.get ();
+    final ExecutorService aES = Executors.newFixedThreadPool (THREADS);
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final int nPerThread = ITEMS / THREADS;
+    for (int t = 0; t < THREADS; ++t)
+    {
+      final int nThread = t;
+      aES.submit ( () -> {
+        for (int i = 0; i < nPerThread; ++i)
+        {
+          final String sID = "msg-" + nThread + "-" + i;
+          aMgr.registerAndCheck (sID, null, null);
+          // Duplicate check
+          aMgr.registerAndCheck (sID, null, null);
+        }
+      });
+    }
+    aES.shutdown ();
+    aES.awaitTermination (10, TimeUnit.MINUTES);
+    final long nRegisterMillis = aSW.stopAndGetMillis ();
+
+    // Evict all items
+    final IAS4DuplicateManager aEvictMgr = aFactory.get ();
+    for (int i = 0; i < EVICT_ITEMS; ++i)
+      aEvictMgr.registerAndCheck ("msg-" + i, null, null);
+    final StopWatch aEvictSW = StopWatch.createdStarted ();
+    aEvictMgr.evictAllItemsBefore (MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ().plusHours (1));
+    final long nEvictMillis = aEvictSW.stopAndGetMillis ();
+
+    LOGGER.info (sName +
+                 ": " +
+                 (ITEMS * 2 * 1000L / Math.max (nRegisterMillis, 1)) +
+                 " registerAndCheck/s; evicting " +
+                 EVICT_ITEMS +
+                 " items took " +
+                 nEvictMillis +
+                 " ms");
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    // Warm up the timestamp manager
+    final OffsetDateTime aNow = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ();
+    LOGGER.info ("Starting at " + aNow);
+
+    for (int nRun = 0; nRun < 3; ++nRun)
+    {
+      _measure ("InMemory", AS4DuplicateManagerInMemory::new);
+      _measure ("InMemoryConcurrent", AS4DuplicateManagerInMemoryConcurrent::new);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.junit.Test;
+
+import com.helger.commons.state.EContinue;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+import com.helger.phase4.client.IAS4RetryCallback;
+
+/**
+ * Test class for class {@link BasicHttpPoster}.
+ *
+ * @author Philip Helger
+ */
+public final class BasicHttpPosterTest
+{
+  @Test
+  public void testAsyncRetriesAreScheduled () throws Exception
+  {
+    final ExecutorService aES = Executors.newSingleThreadExecutor ();
+    try
+    {
+      final AtomicInteger aRetries = new AtomicInteger (0);
+      final HttpRetrySettings aRetrySettings = new HttpRetrySettings ().setMaxRetries (2)
+                                                                      .setDurationBeforeRetry (Duration.ofMillis (10));
+      final IAS4RetryCallback aRetryCallback = (sMessageID, sURL, nTry, nMaxTries, nRetryIntervalMS, ex) -> {
+        aRetries.incrementAndGet ();
+        return EContinue.CONTINUE;
+      };
+      // Nobody is listening on port 1
+      final CompletableFuture <byte []> aFuture = new BasicHttpPoster ().sendGenericMessageWithRetriesAsync ("http://localhost:1/as4",
+                                                                                                           null,
+                                                                                                           new ByteArrayEntity (new byte [] { 1, 2, 3 },
+                                                                                                                                ContentType.APPLICATION_OCTET_STREAM),
+                                                                                                           "msgid",
+                                                                                                           aRetrySettings,
+                                                                                                           new ResponseHandlerByteArray (),
+                                                                                                           null,
+                                                                                                           aRetryCallback,
+                                                                                                           aES);
+      try
+      {
+        aFuture.get (1, TimeUnit.MINUTES);
+        fail ();
+      }
+      catch (final ExecutionException ex)
+      {
+        assertTrue (ex.getCause () instanceof IOException);
+      }
+      assertEquals (2, aRetries.get ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+}
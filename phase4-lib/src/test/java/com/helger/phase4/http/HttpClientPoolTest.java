@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nonnull;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+import com.helger.phase4.config.AS4Configuration;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for class {@link HttpClientPool}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpClientPoolTest
+{
+  private static final byte [] PAYLOAD = { 'a', 's', '4' };
+
+  private static HttpServer s_aServer;
+  private static String s_sURL;
+
+  @BeforeClass
+  public static void beforeClass () throws Exception
+  {
+    // Simple echo receiver
+    s_aServer = HttpServer.create (new InetSocketAddress ("localhost", 0), 0);
+    s_aServer.createContext ("/", aExchange -> {
+      final byte [] aBytes;
+      try (final InputStream aIS = aExchange.getRequestBody ())
+      {
+        aBytes = StreamHelper.getAllBytes (aIS);
+      }
+      aExchange.sendResponseHeaders (200, aBytes.length);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (aBytes);
+      }
+    });
+    s_aServer.start ();
+    s_sURL = "http://localhost:" + s_aServer.getAddress ().getPort () + "/as4";
+  }
+
+  @AfterClass
+  public static void afterClass ()
+  {
+    s_aServer.stop (0);
+    HttpClientPool.closeAll ();
+  }
+
+  private static void _send (@Nonnull final BasicHttpPoster aPoster) throws Exception
+  {
+    final byte [] aResponse = aPoster.sendGenericMessage (s_sURL,
+                                                          null,
+                                                          new ByteArrayEntity (PAYLOAD, ContentType.APPLICATION_OCTET_STREAM),
+                                                          new ResponseHandlerByteArray ());
+    assertEquals (PAYLOAD.length, aResponse.length);
+  }
+
+  @Test
+  public void testSharedPerFactory () throws Exception
+  {
+    final HttpClientFactory aFactory1 = new HttpClientFactory ();
+    final HttpClientFactory aFactory2 = new HttpClientFactory ();
+    try
+    {
+      final int nCount = HttpClientPool.getPooledClientCount ();
+      _send (new BasicHttpPoster ().setHttpClientFactory (aFactory1).setUsePooledHttpClient (true));
+      _send (new BasicHttpPoster ().setHttpClientFactory (aFactory1).setUsePooledHttpClient (true));
+      assertTrue (HttpClientPool.containsClient (aFactory1));
+      assertFalse (HttpClientPool.containsClient (aFactory2));
+      _send (new BasicHttpPoster ().setHttpClientFactory (aFactory2).setUsePooledHttpClient (true));
+      assertEquals (nCount + 2, HttpClientPool.getPooledClientCount ());
+
+      HttpClientPool.close (aFactory1);
+      assertEquals (nCount + 1, HttpClientPool.getPooledClientCount ());
+      assertFalse (HttpClientPool.containsClient (aFactory1));
+    }
+    finally
+    {
+      HttpClientPool.close (aFactory1);
+      HttpClientPool.close (aFactory2);
+    }
+  }
+
+  @Test
+  public void testDefaultFactoryUsesOnePool () throws Exception
+  {
+    HttpClientPool.closeAll ();
+    final long nCreated = HttpClientPool.getTotalClientCreationCount ();
+    for (int i = 0; i < 20; ++i)
+    {
+      // A new poster per message, as done by the message builders
+      final BasicHttpPoster aPoster = new BasicHttpPoster ().setHttpClientFactory (BasicHttpPoster.getSharedDefaultHttpClientFactory ())
+                                                            .setUsePooledHttpClient (true);
+      _send (aPoster);
+      assertEquals (1, HttpClientPool.getPooledClientCount ());
+    }
+    assertEquals (nCreated + 1, HttpClientPool.getTotalClientCreationCount ());
+  }
+
+  @Test
+  public void testNoSharedFactoryIfNotPooled ()
+  {
+    // Pooling is disabled by default
+    assertFalse (AS4Configuration.isHttpClientPooled ());
+    final HttpClientFactory aFactory = new BasicHttpPoster ().getHttpClientFactory ();
+    assertNotSame (BasicHttpPoster.getSharedDefaultHttpClientFactory (), aFactory);
+    assertNotSame (aFactory, new BasicHttpPoster ().getHttpClientFactory ());
+  }
+
+  @Test
+  public void testMaxAsyncConnections ()
+  {
+    assertEquals (HttpClientPool.DEFAULT_MAX_ASYNC_CONNECTIONS_PER_ROUTE, HttpClientPool.getMaxAsyncConnectionsPerRoute ());
+    assertEquals (HttpClientPool.DEFAULT_MAX_ASYNC_CONNECTIONS_TOTAL, HttpClientPool.getMaxAsyncConnectionsTotal ());
+    HttpClientPool.setMaxAsyncConnections (10, 20);
+    try
+    {
+      assertEquals (10, HttpClientPool.getMaxAsyncConnectionsPerRoute ());
+      assertEquals (20, HttpClientPool.getMaxAsyncConnectionsTotal ());
+    }
+    finally
+    {
+      HttpClientPool.setMaxAsyncConnections (HttpClientPool.DEFAULT_MAX_ASYNC_CONNECTIONS_PER_ROUTE,
+                                             HttpClientPool.DEFAULT_MAX_ASYNC_CONNECTIONS_TOTAL);
+    }
+  }
+
+  @Test
+  public void testBoundedPoolCount () throws Exception
+  {
+    HttpClientPool.closeAll ();
+    final long nEvicted = HttpClientPool.getTotalClientEvictionCount ();
+    HttpClientPool.setMaxPooledClientCount (2);
+    try
+    {
+      // A new factory per message must not leak clients
+      for (int i = 0; i < 10; ++i)
+      {
+        _send (new BasicHttpPoster ().setHttpClientFactory (new HttpClientFactory ()).setUsePooledHttpClient (true));
+        assertTrue (HttpClientPool.getPooledClientCount () <= 2);
+      }
+      assertEquals (nEvicted + 8, HttpClientPool.getTotalClientEvictionCount ());
+      assertEquals (0, HttpClientPool.getActiveExecutionCount ());
+    }
+    finally
+    {
+      HttpClientPool.setMaxPooledClientCount (HttpClientPool.DEFAULT_MAX_POOLED_CLIENTS);
+      HttpClientPool.closeAll ();
+    }
+  }
+
+  @Test
+  public void testSendAsync () throws Exception
+  {
+    HttpClientPool.closeAll ();
+    final ExecutorService aExecutor = Executors.newFixedThreadPool (2);
+    try
+    {
+      // Large enough to be spooled to a temporary file
+      final byte [] aLargePayload = new byte [3 * CGlobal.BYTES_PER_MEGABYTE];
+      Arrays.fill (aLargePayload, (byte) 'x');
+
+      final ICommonsList <CompletableFuture <byte []>> aFutures = new CommonsArrayList <> ();
+      for (int i = 0; i < 10; ++i)
+      {
+        final byte [] aPayload = i % 5 == 0 ? aLargePayload : PAYLOAD;
+        aFutures.add (new BasicHttpPoster ().sendGenericMessageAsync (s_sURL,
+                                                                      null,
+                                                                      new ByteArrayEntity (aPayload,
+                                                                                           ContentType.APPLICATION_OCTET_STREAM),
+                                                                      new ResponseHandlerByteArray (),
+                                                                      aExecutor));
+      }
+      for (int i = 0; i < aFutures.size (); ++i)
+        assertArrayEquals (i % 5 == 0 ? aLargePayload : PAYLOAD, aFutures.get (i).get ());
+
+      // The asynchronous client is pooled as well
+      assertEquals (1, HttpClientPool.getPooledClientCount ());
+      assertEquals (0, HttpClientPool.getActiveExecutionCount ());
+    }
+    finally
+    {
+      aExecutor.shutdown ();
+      HttpClientPool.closeAll ();
+    }
+  }
+
+  @Test
+  public void testPosterDefault ()
+  {
+    final BasicHttpPoster aPoster = new BasicHttpPoster ();
+    assertFalse (aPoster.isUsePooledHttpClient ());
+  }
+}
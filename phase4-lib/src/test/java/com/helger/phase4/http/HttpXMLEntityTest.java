@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.util.AS4XMLHelper;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link HttpXMLEntity}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpXMLEntityTest
+{
+  private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                                    "<S12:Envelope xmlns:S12=\"http://www.w3.org/2003/05/soap-envelope\">" +
+                                    "<S12:Body><a>äöü</a></S12:Body>" +
+                                    "</S12:Envelope>";
+
+  @Test
+  public void testContentLengthByDefault () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM (XML);
+    final byte [] aExpected = AS4XMLHelper.serializeXML (aDoc).getBytes (AS4XMLHelper.XWS.getCharset ());
+
+    final HttpXMLEntity aEntity = new HttpXMLEntity (aDoc, CMimeType.APPLICATION_SOAP_XML);
+    assertTrue (aEntity.isRepeatable ());
+    assertFalse (aEntity.isStreamingSerialization ());
+    // Length is known, so no chunked transfer is needed
+    assertEquals (aExpected.length, aEntity.getContentLength ());
+
+    for (int i = 0; i < 2; ++i)
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        aEntity.writeTo (aBAOS);
+        assertArrayEquals (aExpected, aBAOS.toByteArray ());
+      }
+  }
+
+  @Test
+  public void testWriteToMatchesStringSerialization () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM (XML);
+    final byte [] aExpected = AS4XMLHelper.serializeXML (aDoc).getBytes (AS4XMLHelper.XWS.getCharset ());
+
+    final HttpXMLEntity aEntity = new HttpXMLEntity (aDoc, CMimeType.APPLICATION_SOAP_XML, true);
+    assertTrue (aEntity.isRepeatable ());
+    assertTrue (aEntity.isStreamingSerialization ());
+    // Not yet serialized
+    assertEquals (-1, aEntity.getContentLength ());
+
+    // Repeatable writes
+    for (int i = 0; i < 2; ++i)
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        aEntity.writeTo (aBAOS);
+        assertArrayEquals (aExpected, aBAOS.toByteArray ());
+      }
+
+    // Content is cached on first access
+    try (final InputStream aIS = aEntity.getContent ())
+    {
+      assertArrayEquals (aExpected, StreamHelper.getAllBytes (aIS));
+    }
+    assertEquals (aExpected.length, aEntity.getContentLength ());
+
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aEntity.writeTo (aBAOS);
+      assertArrayEquals (aExpected, aBAOS.toByteArray ());
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.http;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.timing.StopWatch;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compare the messages per second of {@link BasicHttpPoster} with and without
+ * the {@link HttpClientPool} against a local echo receiver.
+ *
+ * @author Philip Helger
+ */
+public final class MainHttpClientPoolThroughput
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainHttpClientPoolThroughput.class);
+  private static final int MESSAGES = 2000;
+  private static final int THREADS = 8;
+  private static final byte [] PAYLOAD = new byte [16 * 1024];
+
+  private static double _measure (final String sURL, final boolean bPooled) throws Exception
+  {
+    final HttpClientFactory aFactory = new HttpClientFactory ();
+    final BasicHttpPoster aPoster = new BasicHttpPoster ().setHttpClientFactory (aFactory)
+                                                          .setUsePooledHttpClient (bPooled);
+    final ExecutorService aES = Executors.newFixedThreadPool (THREADS);
+    try
+    {
+      final StopWatch aSW = StopWatch.createdStarted ();
+      for (int i = 0; i < MESSAGES; ++i)
+        aES.submit ( () -> aPoster.sendGenericMessage (sURL,
+                                                       null,
+                                                       new ByteArrayEntity (PAYLOAD, ContentType.APPLICATION_OCTET_STREAM),
+                                                       new ResponseHandlerByteArray ()));
+      aES.shutdown ();
+      aES.awaitTermination (10, TimeUnit.MINUTES);
+      final long nMillis = aSW.stopAndGetMillis ();
+      return MESSAGES * 1000d / Math.max (nMillis, 1);
+    }
+    finally
+    {
+      HttpClientPool.close (aFactory);
+    }
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    // Simple echo receiver
+    final HttpServer aServer = HttpServer.create (new InetSocketAddress ("localhost", 0), 0);
+    aServer.createContext ("/", aExchange -> {
+      final byte [] aBytes;
+      try (final InputStream aIS = aExchange.getRequestBody ())
+      {
+        aBytes = StreamHelper.getAllBytes (aIS);
+      }
+      aExchange.sendResponseHeaders (200, aBytes.length);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (aBytes);
+      }
+    });
+    final ExecutorService aServerES = Executors.newFixedThreadPool (THREADS);
+    aServer.setExecutor (aServerES);
+    aServer.start ();
+    try
+    {
+      final String sURL = "http://localhost:" + aServer.getAddress ().getPort () + "/as4";
+
+      // Warm up
+      _measure (sURL, false);
+      _measure (sURL, true);
+
+      final double dUnpooled = _measure (sURL, false);
+      final double dPooled = _measure (sURL, true);
+      LOGGER.info ("Unpooled: " + dUnpooled + " msg/s; pooled: " + dPooled + " msg/s");
+      LOGGER.info ("Pooled HTTP clients created: " +
+                   HttpClientPool.getTotalClientCreationCount () +
+                   " for " +
+                   HttpClientPool.getTotalExecutionCount () +
+                   " executions");
+    }
+    finally
+    {
+      aServer.stop (0);
+      aServerES.shutdown ();
+      HttpClientPool.closeAll ();
+    }
+  }
+}
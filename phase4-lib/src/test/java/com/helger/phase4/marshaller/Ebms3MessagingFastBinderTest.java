@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.marshaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.jaxb.validation.CollectingValidationEventHandler;
+import com.helger.phase4.CAS4;
+import com.helger.phase4.ebms3header.Ebms3Messaging;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link Ebms3MessagingFastBinder}.
+ *
+ * @author Philip Helger
+ */
+public final class Ebms3MessagingFastBinderTest
+{
+  private static final String [] FILES = { "external/soap11test/BundledMessage.xml",
+                                           "external/soap11test/EmptyMessaging.xml",
+                                           "external/soap11test/ErrorMessage.xml",
+                                           "external/soap11test/MessageInfoIDMissing.xml",
+                                           "external/soap11test/MessageInfoImaginaryTimestamp.xml",
+                                           "external/soap11test/MessageInfoMissing.xml",
+                                           "external/soap11test/PullRequest.xml",
+                                           "external/soap11test/ReceiptMessage.xml",
+                                           "external/soap11test/UserMessage-no-soap.xml",
+                                           "external/soap11test/UserMessage.xml",
+                                           "external/soap11test/UserMessageResponse.xml",
+                                           "external/soap12test/PullRequest12.xml",
+                                           "external/soap12test/UserMessage12.xml",
+                                           "external/soap12test/UserMessageWithCompressedPayload12.xml",
+                                           "external/soap12test/test-2023-03-15.xml" };
+
+  private static void _testElement (@Nonnull final String sFile, @Nonnull final Element aElement)
+  {
+    final CollectingValidationEventHandler aCVEH = new CollectingValidationEventHandler ();
+    final Ebms3Messaging aJAXB = new Ebms3MessagingMarshaller ().setValidationEventHandler (aCVEH).read (aElement);
+    final Ebms3Messaging aFast = Ebms3MessagingFastBinder.read (aElement);
+    if (aFast != null)
+    {
+      if (aJAXB != null)
+      {
+        // Must be identical to JAXB
+        assertEquals (sFile, aJAXB, aFast);
+        assertTrue (sFile, Ebms3MessagingFastBinder.validate (aElement).containsNoError ());
+      }
+      else
+      {
+        // Structurally fine but invalid
+        assertTrue (sFile, Ebms3MessagingFastBinder.validate (aElement).containsAtLeastOneError ());
+      }
+    }
+
+    if (aJAXB != null)
+    {
+      // Write with the fast binder and read again with JAXB
+      final Document aDoc = Ebms3MessagingFastBinder.getAsDocument (aJAXB);
+      if (aDoc != null)
+      {
+        final Ebms3Messaging aReRead = new Ebms3MessagingMarshaller ().read (aDoc);
+        assertNotNull (sFile, aReRead);
+        assertEquals (sFile, aJAXB, aReRead);
+        assertTrue (sFile, Ebms3MessagingFastBinder.validate (aDoc.getDocumentElement ()).containsNoError ());
+      }
+    }
+  }
+
+  @Test
+  public void testAllFiles ()
+  {
+    for (final String sFile : FILES)
+    {
+      final Document aDoc = DOMReader.readXMLDOM (new ClassPathResource (sFile));
+      assertNotNull (sFile, aDoc);
+
+      final NodeList aNL = aDoc.getElementsByTagNameNS (CAS4.EBMS_NS, "Messaging");
+      for (int i = 0; i < aNL.getLength (); ++i)
+        _testElement (sFile, (Element) aNL.item (i));
+    }
+  }
+
+  @Test
+  public void testUserMessage ()
+  {
+    final Document aDoc = DOMReader.readXMLDOM (new ClassPathResource ("external/soap12test/UserMessage12.xml"));
+    assertNotNull (aDoc);
+    final Element aElement = (Element) aDoc.getElementsByTagNameNS (CAS4.EBMS_NS, "Messaging").item (0);
+    final Ebms3Messaging aMessaging = Ebms3MessagingFastBinder.read (aElement);
+    assertNotNull (aMessaging);
+    assertEquals (1, aMessaging.getUserMessageCount ());
+    assertEquals (Boolean.TRUE, aMessaging.isS12MustUnderstand ());
+    assertNull (aMessaging.isS11MustUnderstand ());
+  }
+
+  @Test
+  public void testUnsupported ()
+  {
+    final Document aDoc = DOMReader.readXMLDOM ("<eb:Messaging xmlns:eb='" +
+                                                CAS4.EBMS_NS +
+                                                "'><other xmlns='urn:other'/></eb:Messaging>");
+    assertNotNull (aDoc);
+    // Extension elements are not supported
+    assertNull (Ebms3MessagingFastBinder.read (aDoc.getDocumentElement ()));
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link AS4MetricsManager}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4MetricsManagerTest
+{
+  @Test
+  public void testDispatchToJMX ()
+  {
+    // Nothing registered by default
+    assertFalse (AS4MetricsManager.isEnabled ());
+
+    final AS4MetricsJMX aJMX = new AS4MetricsJMX ();
+    AS4MetricsManager.registerMetrics (aJMX);
+    try
+    {
+      assertTrue (AS4MetricsManager.isEnabled ());
+
+      AS4MetricsManager.onStageFinished (EAS4MetricsStage.OUTGOING_HTTP,
+                                         AS4MetricsManager.getStartTime () - TimeUnit.MILLISECONDS.toNanos (20));
+      AS4MetricsManager.onIncomingMessage ("profile", null);
+      AS4MetricsManager.onEbmsError ("EBMS:0004");
+      AS4MetricsManager.onEbmsError (null);
+      AS4MetricsManager.onBytesIn (10);
+      AS4MetricsManager.onBytesOut (20);
+      AS4MetricsManager.onTempFileCreated ();
+
+      assertEquals (1L, aJMX.getStageCounts ().get (EAS4MetricsStage.OUTGOING_HTTP.getID ()).longValue ());
+      assertEquals (0L, aJMX.getStageCounts ().get (EAS4MetricsStage.INCOMING_WSS4J.getID ()).longValue ());
+      assertTrue (aJMX.getStageMaxMillis ().get (EAS4MetricsStage.OUTGOING_HTTP.getID ()).longValue () >= 20);
+      assertEquals (1L, aJMX.getStageHistogram ().get ("outgoing.http.le_50ms").longValue ());
+      assertEquals (1L, aJMX.getIncomingMessagesPerProfile ().get ("profile").longValue ());
+      assertEquals (1L, aJMX.getIncomingMessagesPerPMode ().get ("unknown").longValue ());
+      assertEquals (1, aJMX.getEbmsErrors ().size ());
+      assertEquals (10, aJMX.getBytesIn ());
+      assertEquals (20, aJMX.getBytesOut ());
+      assertEquals (1, aJMX.getTempFilesCreated ());
+
+      aJMX.reset ();
+      assertEquals (0, aJMX.getBytesIn ());
+      assertTrue (aJMX.getEbmsErrors ().isEmpty ());
+    }
+    finally
+    {
+      AS4MetricsManager.unregisterMetrics (aJMX);
+    }
+    assertFalse (AS4MetricsManager.isEnabled ());
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.mpc.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.AS4TestRule;
+import com.helger.phase4.CAS4;
+import com.helger.phase4.attachment.EAS4CompressionMode;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.ebms3header.Ebms3UserMessage;
+import com.helger.phase4.messaging.domain.MessageHelperMethods;
+import com.helger.phase4.model.mpc.IMPC;
+import com.helger.phase4.model.mpc.MPC;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link AS4MPCStore}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4MPCStoreTest
+{
+  private static final IMPC MPC_A = new MPC ("urn:test:mpc:a");
+  private static final IMPC MPC_B = new MPC ("urn:test:mpc:b");
+
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  @Nonnull
+  private static Ebms3UserMessage _createUserMessage ()
+  {
+    final Ebms3UserMessage ret = new Ebms3UserMessage ();
+    ret.setMessageInfo (MessageHelperMethods.createEbms3MessageInfo ());
+    ret.setPartyInfo (MessageHelperMethods.createEbms3PartyInfo (CAS4.DEFAULT_INITIATOR_URL,
+                                                                 "1234",
+                                                                 CAS4.DEFAULT_RESPONDER_URL,
+                                                                 "5678"));
+    ret.setCollaborationInfo (MessageHelperMethods.createEbms3CollaborationInfo (null,
+                                                                                 null,
+                                                                                 null,
+                                                                                 "MyService",
+                                                                                 "MyAction",
+                                                                                 MessageHelperMethods.createRandomConversationID ()));
+    return ret;
+  }
+
+  @Nonnull
+  private static String _getID (@Nonnull final Ebms3UserMessage aUserMessage)
+  {
+    return aUserMessage.getMessageInfo ().getMessageId ();
+  }
+
+  @Test
+  public void testFIFOAndAcknowledge () throws Exception
+  {
+    final File aDir = new File ("target/test-mpc-store-" + System.nanoTime ());
+    try (final AS4MPCStore aStore = new AS4MPCStore (new AS4MPCStoreJournal (aDir),
+                                                     AS4MPCStore.DEFAULT_VISIBILITY_TIMEOUT))
+    {
+      final Ebms3UserMessage aUM1 = _createUserMessage ();
+      final Ebms3UserMessage aUM2 = _createUserMessage ();
+      final Ebms3UserMessage aUM3 = _createUserMessage ();
+      assertTrue (aStore.enqueue (MPC_A, aUM1).isChanged ());
+      assertTrue (aStore.enqueue (MPC_B, aUM2).isChanged ());
+      assertTrue (aStore.enqueue (MPC_A, aUM3).isChanged ());
+      // Same message ID again
+      assertTrue (aStore.enqueue (MPC_A, aUM1).isUnchanged ());
+      assertEquals (2, aStore.getQueuedCount (MPC_A));
+      assertEquals (1, aStore.getQueuedCount (MPC_B));
+      assertEquals (3, aStore.getPendingCount ());
+
+      Ebms3UserMessage aPulled = aStore.dequeue (MPC_A);
+      assertNotNull (aPulled);
+      assertEquals (_getID (aUM1), _getID (aPulled));
+      aPulled = aStore.dequeue (MPC_A);
+      assertNotNull (aPulled);
+      assertEquals (_getID (aUM3), _getID (aPulled));
+      assertNull (aStore.dequeue (MPC_A));
+      assertEquals (2, aStore.getInFlightCount ());
+      assertEquals (3, aStore.getPendingCount ());
+
+      assertTrue (aStore.acknowledge (_getID (aUM1)).isChanged ());
+      assertTrue (aStore.acknowledge (_getID (aUM1)).isUnchanged ());
+      // Not yet pulled
+      assertTrue (aStore.acknowledge (_getID (aUM2)).isUnchanged ());
+      assertEquals (1, aStore.getInFlightCount ());
+      assertEquals (2, aStore.getPendingCount ());
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testVisibilityTimeout () throws Exception
+  {
+    final File aDir = new File ("target/test-mpc-store-" + System.nanoTime ());
+    try (final AS4MPCStore aStore = new AS4MPCStore (new AS4MPCStoreJournal (aDir), Duration.ofMillis (50)))
+    {
+      final Ebms3UserMessage aUM1 = _createUserMessage ();
+      final Ebms3UserMessage aUM2 = _createUserMessage ();
+      aStore.enqueue (MPC_A, aUM1);
+      aStore.enqueue (MPC_A, aUM2);
+
+      assertEquals (_getID (aUM1), _getID (aStore.dequeue (MPC_A)));
+      assertEquals (1, aStore.getQueuedCount (MPC_A));
+
+      // No receipt within the visibility timeout
+      Thread.sleep (200);
+      assertEquals (0, aStore.getInFlightCount ());
+      assertEquals (2, aStore.getQueuedCount (MPC_A));
+
+      // Served again before the second one
+      assertEquals (_getID (aUM1), _getID (aStore.dequeue (MPC_A)));
+      assertTrue (aStore.acknowledge (_getID (aUM1)).isChanged ());
+      assertEquals (_getID (aUM2), _getID (aStore.dequeue (MPC_A)));
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testRestoreFromJournal () throws Exception
+  {
+    final File aDir = new File ("target/test-mpc-store-" + System.nanoTime ());
+    try
+    {
+      final AS4MPCStoreJournal aJournal = new AS4MPCStoreJournal (aDir);
+      final Ebms3UserMessage aUM1 = _createUserMessage ();
+      final Ebms3UserMessage aUM2 = _createUserMessage ();
+      final Ebms3UserMessage aUM3 = _createUserMessage ();
+      try (final AS4MPCStore aStore = new AS4MPCStore (aJournal, AS4MPCStore.DEFAULT_VISIBILITY_TIMEOUT))
+      {
+        aStore.enqueue (MPC_A, aUM1);
+        aStore.enqueue (MPC_A, aUM2);
+        aStore.enqueue (MPC_B, aUM3);
+        // Pulled and acknowledged
+        assertEquals (_getID (aUM1), _getID (aStore.dequeue (MPC_A)));
+        aStore.acknowledge (_getID (aUM1));
+        // Pulled but not acknowledged
+        assertEquals (_getID (aUM2), _getID (aStore.dequeue (MPC_A)));
+      }
+
+      try (final AS4MPCStore aStore = new AS4MPCStore (aJournal, AS4MPCStore.DEFAULT_VISIBILITY_TIMEOUT))
+      {
+        assertEquals (2, aStore.getPendingCount ());
+        assertEquals (1, aStore.getQueuedCount (MPC_A));
+        assertEquals (_getID (aUM2), _getID (aStore.dequeue (MPC_A)));
+        assertEquals (_getID (aUM3), _getID (aStore.dequeue (MPC_B)));
+
+        // New items are queued after the restored ones
+        final Ebms3UserMessage aUM4 = _createUserMessage ();
+        aStore.enqueue (MPC_B, aUM4);
+        assertEquals (_getID (aUM4), _getID (aStore.dequeue (MPC_B)));
+      }
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testAttachmentRoundTrip () throws Exception
+  {
+    final File aDir = new File ("target/test-mpc-store-" + System.nanoTime ());
+    try
+    {
+      final AS4MPCStoreJournal aJournal = new AS4MPCStoreJournal (aDir);
+      final byte [] aSmallData = "Small attachment".getBytes (StandardCharsets.UTF_8);
+      // Random data stays larger than one journal chunk when compressed
+      final byte [] aLargeData = new byte [200 * 1024];
+      new Random (42).nextBytes (aLargeData);
+
+      final Ebms3UserMessage aUM1 = _createUserMessage ();
+      try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ();
+          final AS4MPCStore aStore = new AS4MPCStore (aJournal, AS4MPCStore.DEFAULT_VISIBILITY_TIMEOUT))
+      {
+        final ICommonsList <WSS4JAttachment> aAttachments = new CommonsArrayList <> ();
+        aAttachments.add (WSS4JAttachment.createOutgoingFileAttachment (aSmallData,
+                                                                        "small@phase4",
+                                                                        "small.txt",
+                                                                        CMimeType.TEXT_PLAIN,
+                                                                        null,
+                                                                        StandardCharsets.UTF_8,
+                                                                        aResHelper));
+        aAttachments.add (WSS4JAttachment.createOutgoingFileAttachment (aLargeData,
+                                                                        "large@phase4",
+                                                                        "large.bin",
+                                                                        CMimeType.APPLICATION_OCTET_STREAM,
+                                                                        EAS4CompressionMode.GZIP,
+                                                                        null,
+                                                                        aResHelper));
+        assertTrue (aStore.enqueue (MPC_A, aUM1, aAttachments).isChanged ());
+      }
+
+      // Restored from the journal after the original attachments are gone
+      try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ();
+          final AS4MPCStore aStore = new AS4MPCStore (aJournal, AS4MPCStore.DEFAULT_VISIBILITY_TIMEOUT))
+      {
+        final ICommonsList <WSS4JAttachment> aAttachments = new CommonsArrayList <> ();
+        final Ebms3UserMessage aPulled = aStore.dequeue (MPC_A, aResHelper, aAttachments);
+        assertNotNull (aPulled);
+        assertEquals (_getID (aUM1), _getID (aPulled));
+        assertEquals (2, aAttachments.size ());
+
+        final WSS4JAttachment aSmall = aAttachments.get (0);
+        assertEquals ("small@phase4", aSmall.getId ());
+        assertEquals (CMimeType.TEXT_PLAIN.getAsString (), aSmall.getMimeType ());
+        assertNull (aSmall.getCompressionMode ());
+        assertEquals (StandardCharsets.UTF_8, aSmall.getCharsetOrDefault (null));
+        assertArrayEquals (aSmallData, StreamHelper.getAllBytes (aSmall.getSourceStream ()));
+
+        final WSS4JAttachment aLarge = aAttachments.get (1);
+        assertEquals ("large@phase4", aLarge.getId ());
+        assertEquals (CMimeType.APPLICATION_OCTET_STREAM.getAsString (), aLarge.getUncompressedMimeType ());
+        assertEquals (EAS4CompressionMode.GZIP, aLarge.getCompressionMode ());
+        assertTrue (aLarge.isRepeatable ());
+        // The content is stored as transmitted
+        assertArrayEquals (aLargeData,
+                           StreamHelper.getAllBytes (EAS4CompressionMode.GZIP.getDecompressStream (aLarge.getSourceStream ())));
+
+        // Without attachments
+        final Ebms3UserMessage aUM2 = _createUserMessage ();
+        aStore.enqueue (MPC_A, aUM2);
+        aAttachments.clear ();
+        assertEquals (_getID (aUM2), _getID (aStore.dequeue (MPC_A, aResHelper, aAttachments)));
+        assertTrue (aAttachments.isEmpty ());
+      }
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+}
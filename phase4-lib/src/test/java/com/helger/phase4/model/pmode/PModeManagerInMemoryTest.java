@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.pmode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.phase4.AS4TestRule;
+import com.helger.phase4.model.EMEP;
+import com.helger.phase4.model.EMEPBinding;
+import com.helger.phase4.model.pmode.leg.PModeLeg;
+import com.helger.phase4.model.pmode.leg.PModeLegBusinessInformation;
+
+/**
+ * Test class for class {@link PModeManagerInMemory}.
+ *
+ * @author Philip Helger
+ */
+public final class PModeManagerInMemoryTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  @Nonnull
+  private static PMode _createPMode (@Nonnull final String sID,
+                                     @Nonnull final String sInitiatorID,
+                                     @Nonnull final String sResponderID,
+                                     @Nonnull final String sService,
+                                     @Nonnull final String sAction)
+  {
+    return new PMode (sID,
+                      PModeParty.createSimple (sInitiatorID, "role"),
+                      PModeParty.createSimple (sResponderID, "role"),
+                      "agreement",
+                      EMEP.ONE_WAY,
+                      EMEPBinding.PUSH,
+                      new PModeLeg (null, PModeLegBusinessInformation.create (sService, sAction, null, null), null, null, null),
+                      null,
+                      null,
+                      null);
+  }
+
+  @Test
+  public void testIndexedLookup ()
+  {
+    final PModeManagerInMemory aMgr = new PModeManagerInMemory ();
+    assertEquals (0, aMgr.getChangeCount ());
+    assertNull (aMgr.getPModeOfServiceAndAction ("s1", "a1"));
+
+    aMgr.createPMode (_createPMode ("pm1", "i1", "r1", "s1", "a1"));
+    aMgr.createPMode (_createPMode ("pm2", "i1", "r2", "s2", "a2"));
+    aMgr.createPMode (_createPMode ("pm3", "i2", "r2", "s2", "a3"));
+    assertEquals (3, aMgr.getChangeCount ());
+
+    assertEquals ("pm1", aMgr.getPModeOfServiceAndAction ("s1", "a1").getID ());
+    assertEquals ("pm2", aMgr.getPModeOfServiceAndAction ("s2", "a2").getID ());
+    assertEquals ("pm3", aMgr.getPModeOfServiceAndAction ("s2", "a3").getID ());
+    assertNull (aMgr.getPModeOfServiceAndAction ("s1", "a2"));
+    assertNull (aMgr.getPModeOfServiceAndAction (null, null));
+
+    assertEquals (2, aMgr.getAllPModesOfInitiatorID ("i1").size ());
+    assertEquals (1, aMgr.getAllPModesOfInitiatorID ("i2").size ());
+    assertTrue (aMgr.getAllPModesOfInitiatorID ("r1").isEmpty ());
+    assertEquals (1, aMgr.getAllPModesOfResponderID ("r1").size ());
+    assertEquals (2, aMgr.getAllPModesOfResponderID ("r2").size ());
+
+    // Same results as the linear search
+    assertSame (aMgr.findFirst (x -> x.getID ().equals ("pm2")), aMgr.getPModeOfServiceAndAction ("s2", "a2"));
+  }
+
+  @Test
+  public void testIndexInvalidation ()
+  {
+    final PModeManagerInMemory aMgr = new PModeManagerInMemory ();
+    aMgr.createPMode (_createPMode ("pm1", "i1", "r1", "s1", "a1"));
+    assertEquals ("pm1", aMgr.getPModeOfServiceAndAction ("s1", "a1").getID ());
+
+    // Update changes service and action
+    long nChangeCount = aMgr.getChangeCount ();
+    assertTrue (aMgr.updatePMode (_createPMode ("pm1", "i1", "r1", "s9", "a9")).isChanged ());
+    assertNotEquals (nChangeCount, aMgr.getChangeCount ());
+    assertNull (aMgr.getPModeOfServiceAndAction ("s1", "a1"));
+    assertEquals ("pm1", aMgr.getPModeOfServiceAndAction ("s9", "a9").getID ());
+
+    // Unchanged update does not modify the change count
+    nChangeCount = aMgr.getChangeCount ();
+    assertTrue (aMgr.updatePMode (_createPMode ("pm1", "i1", "r1", "s9", "a9")).isUnchanged ());
+    assertEquals (nChangeCount, aMgr.getChangeCount ());
+
+    // Delete
+    assertTrue (aMgr.deletePMode ("pm1").isChanged ());
+    assertNotEquals (nChangeCount, aMgr.getChangeCount ());
+    assertNull (aMgr.getPModeOfServiceAndAction ("s9", "a9"));
+    assertTrue (aMgr.getAllPModesOfInitiatorID ("i1").isEmpty ());
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.sender.queue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.state.EContinue;
+import com.helger.phase4.AS4TestRule;
+
+/**
+ * Test class for class {@link AS4OutboundQueue}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4OutboundQueueTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  @Test
+  public void testSendAndRetry () throws Exception
+  {
+    final File aDir = new File ("target/test-outbound-queue-" + System.nanoTime ());
+    try
+    {
+      final AS4OutboundQueueJournal aJournal = new AS4OutboundQueueJournal (aDir);
+      final AtomicInteger aSent = new AtomicInteger (0);
+      final AtomicInteger aFailed = new AtomicInteger (0);
+      final AS4OutboundQueueSettings aSettings = new AS4OutboundQueueSettings ().setWorkerCount (2)
+                                                                                .setMaxAttempts (2)
+                                                                                .setRetryDelay (Duration.ofMillis (10));
+      try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aJournal, aItem -> {
+        if ("bad".equals (aItem.getDestination ()))
+        {
+          aFailed.incrementAndGet ();
+          return EAS4OutboundQueueSendResult.RETRY;
+        }
+        aSent.incrementAndGet ();
+        return EAS4OutboundQueueSendResult.SUCCESS;
+      }, aSettings))
+      {
+        final ICommonsOrderedMap <String, String> aProps = new CommonsLinkedHashMap <> ();
+        aProps.put ("receiver", "9915:test");
+        for (int i = 0; i < 10; ++i)
+          aQueue.enqueue (AS4OutboundQueueItem.create ("good",
+                                                       aProps,
+                                                       ("Payload " + i).getBytes (StandardCharsets.UTF_8)));
+        aQueue.enqueue (AS4OutboundQueueItem.create ("bad", null, new byte [0]));
+
+        assertTrue (aQueue.waitUntilEmpty (Duration.ofSeconds (10)).isSuccess ());
+        assertEquals (0, aQueue.getPendingCount ());
+      }
+      assertEquals (10, aSent.get ());
+      // Tried twice, afterwards moved to failed
+      assertEquals (2, aFailed.get ());
+      assertTrue (aJournal.readAll ().isEmpty ());
+      assertEquals (1, new File (aDir, AS4OutboundQueueJournal.FAILED_DIRECTORY_NAME).listFiles ().length);
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testPermanentFailure () throws Exception
+  {
+    final File aDir = new File ("target/test-outbound-queue-" + System.nanoTime ());
+    try
+    {
+      final AS4OutboundQueueJournal aJournal = new AS4OutboundQueueJournal (aDir);
+      final AtomicInteger aAttempts = new AtomicInteger (0);
+      final AtomicInteger aRetryCallbacks = new AtomicInteger (0);
+      final AS4OutboundQueueSettings aSettings = new AS4OutboundQueueSettings ().setMaxAttempts (5)
+                                                                                .setRetryDelay (Duration.ofMillis (10));
+      try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aJournal, new IAS4OutboundQueueItemHandler ()
+      {
+        @Nonnull
+        public EAS4OutboundQueueSendResult sendItem (@Nonnull final AS4OutboundQueueItem aItem)
+        {
+          aAttempts.incrementAndGet ();
+          return EAS4OutboundQueueSendResult.PERMANENT_FAILURE;
+        }
+
+        @Override
+        @Nonnull
+        public EContinue onBeforeRetry (@Nonnull final AS4OutboundQueueItem aItem,
+                                        final int nMaxAttempts,
+                                        @Nonnull final Duration aRetryDelay,
+                                        @Nullable final Exception aCause)
+        {
+          aRetryCallbacks.incrementAndGet ();
+          return EContinue.CONTINUE;
+        }
+      }, aSettings))
+      {
+        aQueue.enqueue (AS4OutboundQueueItem.create ("dest", null, new byte [0]));
+        assertTrue (aQueue.waitUntilEmpty (Duration.ofSeconds (10)).isSuccess ());
+      }
+      // Not retried
+      assertEquals (1, aAttempts.get ());
+      assertEquals (0, aRetryCallbacks.get ());
+      assertTrue (aJournal.readAll ().isEmpty ());
+      assertEquals (1, new File (aDir, AS4OutboundQueueJournal.FAILED_DIRECTORY_NAME).listFiles ().length);
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testResumeFromJournal () throws Exception
+  {
+    final File aDir = new File ("target/test-outbound-queue-" + System.nanoTime ());
+    try
+    {
+      final AS4OutboundQueueJournal aJournal = new AS4OutboundQueueJournal (aDir);
+      final byte [] aPayload = "Resume me".getBytes (StandardCharsets.UTF_8);
+      final AS4OutboundQueueItem aItem = AS4OutboundQueueItem.create ("dest", null, aPayload);
+      // Simulate an item that was not sent before the last shutdown
+      aJournal.write (aItem);
+
+      final AtomicInteger aSent = new AtomicInteger (0);
+      try (final AS4OutboundQueue aQueue = new AS4OutboundQueue (aJournal, x -> {
+        assertEquals (aItem.getID (), x.getID ());
+        assertArrayEquals (aPayload, x.getPayload ());
+        aSent.incrementAndGet ();
+        return EAS4OutboundQueueSendResult.SUCCESS;
+      }, new AS4OutboundQueueSettings ()))
+      {
+        assertTrue (aQueue.waitUntilEmpty (Duration.ofSeconds (10)).isSuccess ());
+      }
+      assertEquals (1, aSent.get ());
+      assertTrue (aJournal.readAll ().isEmpty ());
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testPayloadFile () throws Exception
+  {
+    final File aDir = new File ("target/test-outbound-queue-" + System.nanoTime ());
+    try
+    {
+      final AS4OutboundQueueJournal aJournal = new AS4OutboundQueueJournal (aDir);
+      final byte [] aPayload = "Large payload".getBytes (StandardCharsets.UTF_8);
+      final File aPayloadFile = aJournal.createPayloadFile ();
+      aJournal.writePayloadFile (aPayloadFile, aOS -> aOS.write (aPayload));
+      final AS4OutboundQueueItem aItem = AS4OutboundQueueItem.createWithPayloadFile ("dest", null, aPayloadFile);
+      aJournal.write (aItem);
+
+      // Read back from the journal
+      final ICommonsList <AS4OutboundQueueItem> aRead = aJournal.readAll ();
+      assertEquals (1, aRead.size ());
+      assertTrue (aRead.getFirst ().isPayloadInFile ());
+      assertEquals (aPayloadFile.getName (), aRead.getFirst ().getPayloadFile ().getName ());
+      assertArrayEquals (aPayload, aRead.getFirst ().getPayload ());
+
+      // Deleting the item also deletes the payload file
+      aJournal.delete (aRead.getFirst ());
+      assertTrue (aJournal.readAll ().isEmpty ());
+      assertFalse (aPayloadFile.exists ());
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testPayloadFileAlreadyMovedToFailed () throws Exception
+  {
+    final File aDir = new File ("target/test-outbound-queue-" + System.nanoTime ());
+    try
+    {
+      final AS4OutboundQueueJournal aJournal = new AS4OutboundQueueJournal (aDir);
+      final File aPayloadFile = aJournal.createPayloadFile ();
+      aJournal.writePayloadFile (aPayloadFile, aOS -> aOS.write (1));
+      final AS4OutboundQueueItem aItem = AS4OutboundQueueItem.createWithPayloadFile ("dest", null, aPayloadFile);
+      aJournal.write (aItem);
+
+      // Simulate a crash after only the payload file was moved
+      final File aFailedDir = new File (aJournal.getDirectory (), AS4OutboundQueueJournal.FAILED_DIRECTORY_NAME);
+      assertTrue (aPayloadFile.renameTo (new File (aFailedDir, aPayloadFile.getName ())));
+
+      // The item is not lost but moved to the failed directory as well
+      assertTrue (aJournal.readAll ().isEmpty ());
+      assertTrue (new File (aFailedDir, aItem.getID () + AS4OutboundQueueJournal.FILE_EXTENSION).isFile ());
+
+      // The regular move keeps item and payload together
+      final File aPayloadFile2 = aJournal.createPayloadFile ();
+      aJournal.writePayloadFile (aPayloadFile2, aOS -> aOS.write (2));
+      final AS4OutboundQueueItem aItem2 = AS4OutboundQueueItem.createWithPayloadFile ("dest", null, aPayloadFile2);
+      aJournal.write (aItem2);
+      aJournal.moveToFailed (aItem2);
+      assertTrue (aJournal.readAll ().isEmpty ());
+      assertTrue (new File (aFailedDir, aItem2.getID () + AS4OutboundQueueJournal.FILE_EXTENSION).isFile ());
+      assertTrue (new File (aFailedDir, aPayloadFile2.getName ()).isFile ());
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.NonClosingOutputStream;
+import com.helger.commons.state.EContinue;
+import com.helger.phase4.AS4TestRule;
+import com.helger.phase4.client.IAS4RetryCallback;
+import com.helger.phase4.dump.IAS4OutgoingDumper;
+import com.helger.phase4.sender.queue.AS4OutboundQueueJournal;
+import com.helger.phase4.sender.queue.AS4OutboundQueueSettings;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for class {@link AS4AsyncResponseEngine}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4AsyncResponseEngineTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  @Test
+  public void testRejectWhenFull () throws Exception
+  {
+    final File aDir = new File ("target/test-async-response-" + System.nanoTime ());
+    try
+    {
+      final CountDownLatch aBlock = new CountDownLatch (1);
+      try (final AS4AsyncResponseEngine aEngine = new AS4AsyncResponseEngine (1,
+                                                                              1,
+                                                                              new AS4OutboundQueueJournal (aDir),
+                                                                              new AS4OutboundQueueSettings ()))
+      {
+        // One running, one queued
+        aEngine.submit ( () -> aBlock.await ());
+        aEngine.submit ( () -> {});
+        try
+        {
+          aEngine.submit ( () -> {});
+          fail ();
+        }
+        catch (final RejectedExecutionException ex)
+        {
+          // expected
+        }
+        assertEquals (2, aEngine.getSubmittedCount ());
+        assertEquals (1, aEngine.getRejectedCount ());
+        aBlock.countDown ();
+      }
+    }
+    finally
+    {
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testEnqueueAndSend () throws Exception
+  {
+    final File aDir = new File ("target/test-async-response-" + System.nanoTime ());
+    final HttpServer aServer = HttpServer.create (new InetSocketAddress ("localhost", 0), 0);
+    final CountDownLatch aReceived = new CountDownLatch (3);
+    aServer.createContext ("/as4", aExchange -> {
+      aExchange.getRequestBody ().readAllBytes ();
+      final byte [] aResponse = "<ok/>".getBytes (StandardCharsets.UTF_8);
+      aExchange.getResponseHeaders ().add ("Content-Type", "application/xml");
+      aExchange.sendResponseHeaders (200, aResponse.length);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (aResponse);
+      }
+      aReceived.countDown ();
+    });
+    aServer.start ();
+    try
+    {
+      final String sURL = "http://localhost:" + aServer.getAddress ().getPort () + "/as4";
+      try (final AS4AsyncResponseEngine aEngine = new AS4AsyncResponseEngine (2,
+                                                                              10,
+                                                                              new AS4OutboundQueueJournal (aDir),
+                                                                              new AS4OutboundQueueSettings ()))
+      {
+        for (int i = 0; i < 3; ++i)
+        {
+          final String sMessageID = "msg-" + i;
+          aEngine.submit ( () -> aEngine.enqueueResponse (sURL,
+                                                          new StringEntity ("<response/>",
+                                                                            ContentType.APPLICATION_XML),
+                                                          sMessageID));
+        }
+        assertTrue (aReceived.await (10, TimeUnit.SECONDS));
+        assertTrue (aEngine.waitUntilSendQueueEmpty (Duration.ofSeconds (10)).isSuccess ());
+        assertEquals (3, aEngine.getSentCount ());
+        assertEquals (0, aEngine.getSendPendingCount ());
+        assertEquals (0, aEngine.getProcessingFailedCount ());
+        assertTrue (aEngine.getMaxSendLatencyMS () >= aEngine.getAverageSendLatencyMS ());
+      }
+      // All sent responses were removed from the journal
+      assertTrue (new AS4OutboundQueueJournal (aDir).readAll ().isEmpty ());
+    }
+    finally
+    {
+      aServer.stop (0);
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+
+  @Test
+  public void testLargeResponseWithDumperAndRetry () throws Exception
+  {
+    final File aDir = new File ("target/test-async-response-" + System.nanoTime ());
+    final HttpServer aServer = HttpServer.create (new InetSocketAddress ("localhost", 0), 0);
+    final AtomicInteger aRequestCount = new AtomicInteger (0);
+    final AtomicInteger aReceivedBytes = new AtomicInteger (0);
+    aServer.createContext ("/as4", aExchange -> {
+      final byte [] aRequest = aExchange.getRequestBody ().readAllBytes ();
+      if (aRequestCount.incrementAndGet () == 1)
+      {
+        // First try fails
+        aExchange.sendResponseHeaders (500, -1);
+        aExchange.close ();
+        return;
+      }
+      aReceivedBytes.set (aRequest.length);
+      final byte [] aResponse = "<ok/>".getBytes (StandardCharsets.UTF_8);
+      aExchange.getResponseHeaders ().add ("Content-Type", "application/xml");
+      aExchange.sendResponseHeaders (200, aResponse.length);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (aResponse);
+      }
+    });
+    aServer.start ();
+    try
+    {
+      final String sURL = "http://localhost:" + aServer.getAddress ().getPort () + "/as4";
+      // Larger than the in-memory limit, so it is spooled to a file
+      final byte [] aPayload = new byte [AS4AsyncResponseEngine.MAX_IN_MEMORY_PAYLOAD_BYTES * 2];
+      Arrays.fill (aPayload, (byte) 'a');
+
+      final AtomicInteger aDumpCount = new AtomicInteger (0);
+      final NonBlockingByteArrayOutputStream aDumpOS = new NonBlockingByteArrayOutputStream ();
+      final IAS4OutgoingDumper aDumper = (eMsgMode, aMessageMetadata, aState, sMessageID, aCustomHeaders, nTry) -> {
+        aDumpCount.incrementAndGet ();
+        aDumpOS.reset ();
+        return new NonClosingOutputStream (aDumpOS);
+      };
+      final AtomicInteger aRetryCount = new AtomicInteger (0);
+      final IAS4RetryCallback aRetryCallback = (sMessageID, sRetryURL, nTry, nMaxTries, nRetryIntervalMS, ex) -> {
+        assertEquals ("msg-large", sMessageID);
+        assertEquals (0, nTry);
+        aRetryCount.incrementAndGet ();
+        return EContinue.CONTINUE;
+      };
+
+      try (final AS4AsyncResponseEngine aEngine = new AS4AsyncResponseEngine (1,
+                                                                              10,
+                                                                              new AS4OutboundQueueJournal (aDir),
+                                                                              new AS4OutboundQueueSettings ().setMaxAttempts (3)
+                                                                                                             .setRetryDelay (Duration.ofMillis (10))))
+      {
+        aEngine.submit ( () -> aEngine.enqueueResponse (sURL,
+                                                        new ByteArrayEntity (aPayload, ContentType.APPLICATION_XML),
+                                                        "msg-large",
+                                                        aDumper,
+                                                        aRetryCallback));
+        assertTrue (aEngine.waitUntilSendQueueEmpty (Duration.ofSeconds (10)).isSuccess ());
+        assertEquals (1, aEngine.getSentCount ());
+      }
+      assertEquals (2, aRequestCount.get ());
+      assertEquals (aPayload.length, aReceivedBytes.get ());
+      // Dumped for every try
+      assertEquals (2, aDumpCount.get ());
+      assertEquals (aPayload.length, aDumpOS.size ());
+      assertEquals (1, aRetryCount.get ());
+      // Item and payload file were removed
+      assertTrue (new AS4OutboundQueueJournal (aDir).readAll ().isEmpty ());
+      assertEquals (0, aDir.listFiles ( (d, sName) -> sName.endsWith (AS4OutboundQueueJournal.PAYLOAD_FILE_EXTENSION)).length);
+    }
+    finally
+    {
+      aServer.stop (0);
+      FileOperationManager.INSTANCE.deleteDirRecursiveIfExisting (aDir);
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import com.helger.commons.timing.StopWatch;
+
+/**
+ * Test class for class {@link AS4MessageProcessorExecutor}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4MessageProcessorExecutorTest
+{
+  @Test
+  public void testSubmit () throws Exception
+  {
+    try (final AS4MessageProcessorExecutor aExecutor = new AS4MessageProcessorExecutor (2,
+                                                                                        10,
+                                                                                        Duration.ofSeconds (10)))
+    {
+      final CompletableFuture <String> aFuture1 = aExecutor.submit ( () -> "a", null);
+      final CompletableFuture <String> aFuture2 = aExecutor.submit ( () -> {
+        throw new IllegalStateException ("b");
+      }, null);
+      assertEquals ("a", aFuture1.get ());
+      try
+      {
+        aFuture2.get ();
+        fail ();
+      }
+      catch (final ExecutionException ex)
+      {
+        assertTrue (ex.getCause () instanceof IllegalStateException);
+      }
+      assertEquals (2, aExecutor.getSubmittedCount ());
+    }
+  }
+
+  @Test
+  public void testTimeout () throws Exception
+  {
+    final CountDownLatch aInterrupted = new CountDownLatch (1);
+    try (final AS4MessageProcessorExecutor aExecutor = new AS4MessageProcessorExecutor (1,
+                                                                                        10,
+                                                                                        Duration.ofSeconds (10)))
+    {
+      final CompletableFuture <String> aFuture = aExecutor.submit ( () -> {
+        try
+        {
+          Thread.sleep (10_000);
+        }
+        catch (final InterruptedException ex)
+        {
+          aInterrupted.countDown ();
+        }
+        return "late";
+      }, Duration.ofMillis (50));
+      try
+      {
+        aFuture.get ();
+        fail ();
+      }
+      catch (final ExecutionException ex)
+      {
+        assertTrue (ex.getCause () instanceof TimeoutException);
+      }
+      // The running invocation is interrupted
+      assertTrue (aInterrupted.await (5, TimeUnit.SECONDS));
+      assertEquals (1, aExecutor.getTimedOutCount ());
+    }
+  }
+
+  @Test
+  public void testTerminatedAfterTimeout () throws Exception
+  {
+    final CountDownLatch aRelease = new CountDownLatch (1);
+    try (final AS4MessageProcessorExecutor aExecutor = new AS4MessageProcessorExecutor (1,
+                                                                                        10,
+                                                                                        Duration.ofSeconds (10)))
+    {
+      final CompletableFuture <Void> aTerminated = new CompletableFuture <> ();
+      final CompletableFuture <String> aFuture = aExecutor.submit ( () -> {
+        // Ignore the interruption
+        while (true)
+          try
+          {
+            aRelease.await ();
+            return "late";
+          }
+          catch (final InterruptedException ex)
+          {
+            // Continue waiting
+          }
+      }, Duration.ofMillis (50), aTerminated);
+      try
+      {
+        aFuture.get ();
+        fail ();
+      }
+      catch (final ExecutionException ex)
+      {
+        assertTrue (ex.getCause () instanceof TimeoutException);
+      }
+
+      // Still running
+      assertFalse (aTerminated.isDone ());
+      aRelease.countDown ();
+      aTerminated.get (5, TimeUnit.SECONDS);
+
+      // The interruption does not affect the next invocation
+      assertFalse (aExecutor.submit ( () -> Boolean.valueOf (Thread.currentThread ().isInterrupted ()), null)
+                            .get ()
+                            .booleanValue ());
+    }
+  }
+
+  @Test
+  public void testCallerRunsWhenFull () throws Exception
+  {
+    final CountDownLatch aBlock = new CountDownLatch (1);
+    try (final AS4MessageProcessorExecutor aExecutor = new AS4MessageProcessorExecutor (1,
+                                                                                        1,
+                                                                                        Duration.ZERO))
+    {
+      // One running, one queued
+      aExecutor.submit ( () -> aBlock.await (10, TimeUnit.SECONDS), null);
+      aExecutor.submit ( () -> "queued", null);
+
+      final Thread aCurrentThread = Thread.currentThread ();
+      final CompletableFuture <Thread> aFuture = aExecutor.submit (Thread::currentThread, null);
+      assertTrue (aFuture.isDone ());
+      assertEquals (aCurrentThread, aFuture.get ());
+      assertEquals (2, aExecutor.getSubmittedCount ());
+      assertEquals (1, aExecutor.getCallerRunsCount ());
+      aBlock.countDown ();
+    }
+  }
+
+  @Test
+  public void testCallerRunsWithTimeout () throws Exception
+  {
+    final CountDownLatch aBlock = new CountDownLatch (1);
+    try (final AS4MessageProcessorExecutor aExecutor = new AS4MessageProcessorExecutor (1,
+                                                                                        1,
+                                                                                        Duration.ofMillis (100)))
+    {
+      // One running, one queued - both without timeout
+      aExecutor.submit ( () -> aBlock.await (10, TimeUnit.SECONDS), Duration.ZERO);
+      aExecutor.submit ( () -> "queued", Duration.ZERO);
+
+      // Runs on the calling thread but is interrupted after the timeout
+      final StopWatch aSW = StopWatch.createdStarted ();
+      final CompletableFuture <String> aFuture = aExecutor.submit ( () -> {
+        Thread.sleep (10_000);
+        return "too late";
+      }, null);
+      assertTrue (aSW.stopAndGetMillis () < 5_000);
+      assertTrue (aFuture.isCompletedExceptionally ());
+      try
+      {
+        aFuture.get ();
+        fail ();
+      }
+      catch (final ExecutionException ex)
+      {
+        assertTrue (ex.getCause () instanceof TimeoutException);
+      }
+      assertEquals (1, aExecutor.getCallerRunsCount ());
+      assertEquals (1, aExecutor.getTimedOutCount ());
+      // The interruption is not passed on to the calling thread
+      assertFalse (Thread.currentThread ().isInterrupted ());
+      aBlock.countDown ();
+    }
+  }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.phase4.AS4TestRule;
+import com.helger.phase4.attachment.IAS4IncomingAttachmentFactory;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.crypto.AS4CryptoFactoryProperties;
+import com.helger.phase4.ebms3header.Ebms3Error;
+import com.helger.phase4.ebms3header.Ebms3MessageInfo;
+import com.helger.phase4.ebms3header.Ebms3SignalMessage;
+import com.helger.phase4.ebms3header.Ebms3UserMessage;
+import com.helger.phase4.error.EEbmsError;
+import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
+import com.helger.phase4.model.pmode.IPMode;
+import com.helger.phase4.model.pmode.resolve.DefaultPModeResolver;
+import com.helger.phase4.servlet.AS4RequestHandler.SPIInvocationResult;
+import com.helger.phase4.servlet.spi.AS4MessageProcessorResult;
+import com.helger.phase4.servlet.spi.AS4SignalMessageProcessorResult;
+import com.helger.phase4.servlet.spi.EAS4MessageProcessorExecutionMode;
+import com.helger.phase4.servlet.spi.IAS4ServletMessageProcessorSPI;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.xml.XMLFactory;
+
+/**
+ * Test class for the SPI invocation of class {@link AS4RequestHandler}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4RequestHandlerTest
+{
+  private static final String MESSAGE_ID = "test-message-id";
+
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  private static final class MockSPI implements IAS4ServletMessageProcessorSPI
+  {
+    private final String m_sID;
+    private final EAS4MessageProcessorExecutionMode m_eMode;
+    private final Duration m_aTimeout;
+    private final Function <ICommonsList <Ebms3Error>, AS4MessageProcessorResult> m_aAction;
+    private final ICommonsSet <String> m_aDependencyIDs;
+    private final AtomicInteger m_aInvocationCount = new AtomicInteger (0);
+    private volatile Node m_aPayload;
+
+    MockSPI (@Nonnull final String sID,
+             @Nonnull final EAS4MessageProcessorExecutionMode eMode,
+             @Nullable final Duration aTimeout,
+             @Nonnull final Function <ICommonsList <Ebms3Error>, AS4MessageProcessorResult> aAction,
+             @Nonnull final String... aDependencyIDs)
+    {
+      m_sID = sID;
+      m_eMode = eMode;
+      m_aTimeout = aTimeout;
+      m_aAction = aAction;
+      m_aDependencyIDs = new CommonsHashSet <> (aDependencyIDs);
+    }
+
+    @Override
+    public String getProcessorID ()
+    {
+      return m_sID;
+    }
+
+    @Override
+    public EAS4MessageProcessorExecutionMode getExecutionMode ()
+    {
+      return m_eMode;
+    }
+
+    @Override
+    public ICommonsSet <String> getAllDependencyProcessorIDs ()
+    {
+      return m_aDependencyIDs.getClone ();
+    }
+
+    @Override
+    public Duration getTimeout ()
+    {
+      return m_aTimeout;
+    }
+
+    @Override
+    public AS4MessageProcessorResult processAS4UserMessage (@Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                                            @Nonnull final HttpHeaderMap aHttpHeaders,
+                                                            @Nonnull final Ebms3UserMessage aUserMessage,
+                                                            @Nonnull final IPMode aPMode,
+                                                            @Nullable final Node aPayload,
+                                                            @Nullable final ICommonsList <WSS4JAttachment> aIncomingAttachments,
+                                                            @Nonnull final IAS4MessageState aState,
+                                                            @Nonnull final ICommonsList <Ebms3Error> aProcessingErrorMessages)
+    {
+      m_aInvocationCount.incrementAndGet ();
+      m_aPayload = aPayload;
+      return m_aAction.apply (aProcessingErrorMessages);
+    }
+
+    @Override
+    public AS4SignalMessageProcessorResult processAS4SignalMessage (@Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                                                    @Nonnull final HttpHeaderMap aHttpHeaders,
+                                                                    @Nonnull final Ebms3SignalMessage aSignalMessage,
+                                                                    @Nullable final IPMode aPMode,
+                                                                    @Nonnull final IAS4MessageState aState,
+                                                                    @Nonnull final ICommonsList <Ebms3Error> aProcessingErrorMessages)
+    {
+      throw new UnsupportedOperationException ();
+    }
+
+    @Override
+    public String toString ()
+    {
+      return m_sID;
+    }
+  }
+
+  @Nonnull
+  private static AS4MessageProcessorResult _sleepAndSucceed (final long nMillis)
+  {
+    try
+    {
+      Thread.sleep (nMillis);
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    return AS4MessageProcessorResult.createSuccess ();
+  }
+
+  @Nonnull
+  private static SPIInvocationResult _invoke (@Nonnull final AS4MessageProcessorExecutor aExecutor,
+                                              @Nonnull final ICommonsList <IAS4ServletMessageProcessorSPI> aSPIs,
+                                              @Nullable final Node aPayloadNode,
+                                              @Nonnull final ICommonsList <Ebms3Error> aErrors,
+                                              @Nonnull final ICommonsList <Supplier <CompletableFuture <?>>> aPostReceipt)
+  {
+    final Ebms3MessageInfo aMessageInfo = new Ebms3MessageInfo ();
+    aMessageInfo.setMessageId (MESSAGE_ID);
+    final Ebms3UserMessage aUserMsg = new Ebms3UserMessage ();
+    aUserMsg.setMessageInfo (aMessageInfo);
+
+    final SPIInvocationResult ret = new SPIInvocationResult ();
+    try (final AS4RequestHandler aHandler = new AS4RequestHandler (AS4CryptoFactoryProperties.getDefaultInstance (),
+                                                                   DefaultPModeResolver.DEFAULT_PMODE_RESOLVER,
+                                                                   IAS4IncomingAttachmentFactory.DEFAULT_INSTANCE,
+                                                                   AS4IncomingMessageMetadata.createForRequest ());
+        final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      aHandler.setProcessorSupplier ( () -> aSPIs);
+      aHandler.setMessageProcessorExecutor (aExecutor);
+      aHandler.invokeSPIsForIncoming (new HttpHeaderMap (),
+                                      aUserMsg,
+                                      null,
+                                      aPayloadNode,
+                                      null,
+                                      null,
+                                      new AS4MessageState (ESoapVersion.SOAP_12, aResHelper, Locale.US),
+                                      aErrors,
+                                      new CommonsArrayList <> (),
+                                      ret,
+                                      aPostReceipt);
+    }
+    return ret;
+  }
+
+  private static void _assertSingleOtherError (@Nonnull final ICommonsList <Ebms3Error> aErrors,
+                                               @Nonnull final String sExpectedText)
+  {
+    assertEquals (aErrors.toString (), 1, aErrors.size ());
+    final Ebms3Error aError = aErrors.getFirst ();
+    assertEquals (EEbmsError.EBMS_OTHER.getErrorCode (), aError.getErrorCode ());
+    assertTrue (aError.getDescriptionValue (), aError.getDescriptionValue ().contains (sExpectedText));
+  }
+
+  @Test
+  public void testDependencySkipped ()
+  {
+    final MockSPI aFailing = new MockSPI ("a",
+                                          EAS4MessageProcessorExecutionMode.INDEPENDENT,
+                                          null,
+                                          x -> AS4MessageProcessorResult.createFailure ("a failed"));
+    final MockSPI aDependent = new MockSPI ("b",
+                                            EAS4MessageProcessorExecutionMode.INDEPENDENT,
+                                            null,
+                                            x -> AS4MessageProcessorResult.createSuccess (),
+                                            "a");
+    final MockSPI aOrderedDependent = new MockSPI ("c",
+                                                   EAS4MessageProcessorExecutionMode.ORDERED,
+                                                   null,
+                                                   x -> AS4MessageProcessorResult.createSuccess (),
+                                                   "a");
+    try (final AS4MessageProcessorExecutor aExecutor = AS4MessageProcessorExecutor.createDefault ())
+    {
+      final ICommonsList <Ebms3Error> aErrors = new CommonsArrayList <> ();
+      final ICommonsList <Supplier <CompletableFuture <?>>> aPostReceipt = new CommonsArrayList <> ();
+      final SPIInvocationResult aResult = _invoke (aExecutor,
+                                                   new CommonsArrayList <> (aFailing, aDependent, aOrderedDependent),
+                                                   null,
+                                                   aErrors,
+                                                   aPostReceipt);
+      assertTrue (aResult.isFailure ());
+      assertEquals (1, aFailing.m_aInvocationCount.get ());
+      assertEquals (0, aDependent.m_aInvocationCount.get ());
+      assertEquals (0, aOrderedDependent.m_aInvocationCount.get ());
+      // Only the error of the failed dependency is reported
+      _assertSingleOtherError (aErrors, "a failed");
+    }
+  }
+
+  @Test
+  public void testMergeInRegistrationOrder ()
+  {
+    // The first SPI finishes last, but its error must be reported
+    final MockSPI aSlow = new MockSPI ("slow", EAS4MessageProcessorExecutionMode.INDEPENDENT, null, x -> {
+      _sleepAndSucceed (200);
+      x.add (EEbmsError.EBMS_OTHER.getAsEbms3Error (Locale.US, MESSAGE_ID, "slow error"));
+      return AS4MessageProcessorResult.createSuccess ();
+    });
+    final MockSPI aFast = new MockSPI ("fast", EAS4MessageProcessorExecutionMode.INDEPENDENT, null, x -> {
+      x.add (EEbmsError.EBMS_OTHER.getAsEbms3Error (Locale.US, MESSAGE_ID, "fast error"));
+      return AS4MessageProcessorResult.createSuccess ();
+    });
+    try (final AS4MessageProcessorExecutor aExecutor = AS4MessageProcessorExecutor.createDefault ())
+    {
+      final ICommonsList <Ebms3Error> aErrors = new CommonsArrayList <> ();
+      final SPIInvocationResult aResult = _invoke (aExecutor,
+                                                   new CommonsArrayList <> (aSlow, aFast),
+                                                   null,
+                                                   aErrors,
+                                                   new CommonsArrayList <> ());
+      assertTrue (aResult.isFailure ());
+      assertEquals (1, aSlow.m_aInvocationCount.get ());
+      assertEquals (1, aFast.m_aInvocationCount.get ());
+      _assertSingleOtherError (aErrors, "slow error");
+    }
+  }
+
+  @Test
+  public void testTimeout () throws Exception
+  {
+    final CountDownLatch aRelease = new CountDownLatch (1);
+    final MockSPI aBlocking = new MockSPI ("blocking",
+                                           EAS4MessageProcessorExecutionMode.INDEPENDENT,
+                                           Duration.ofMillis (100),
+                                           x -> {
+                                             // Ignore the interruption
+                                             while (true)
+                                               try
+                                               {
+                                                 aRelease.await ();
+                                                 return AS4MessageProcessorResult.createSuccess ();
+                                               }
+                                               catch (final InterruptedException ex)
+                                               {
+                                                 // Continue waiting
+                                               }
+                                           });
+    try (final AS4MessageProcessorExecutor aExecutor = AS4MessageProcessorExecutor.createDefault ())
+    {
+      try
+      {
+        final ICommonsList <Ebms3Error> aErrors = new CommonsArrayList <> ();
+        final SPIInvocationResult aResult = _invoke (aExecutor,
+                                                     new CommonsArrayList <> (aBlocking),
+                                                     null,
+                                                     aErrors,
+                                                     new CommonsArrayList <> ());
+        assertTrue (aResult.isFailure ());
+        _assertSingleOtherError (aErrors, "timed out");
+        assertEquals (1, aExecutor.getTimedOutCount ());
+      }
+      finally
+      {
+        aRelease.countDown ();
+      }
+    }
+  }
+
+  @Test
+  public void testPostReceiptOnlyAfterSuccess () throws Exception
+  {
+    try (final AS4MessageProcessorExecutor aExecutor = AS4MessageProcessorExecutor.createDefault ())
+    {
+      // Success
+      {
+        final MockSPI aOrdered = new MockSPI ("ordered",
+                                              EAS4MessageProcessorExecutionMode.ORDERED,
+                                              null,
+                                              x -> AS4MessageProcessorResult.createSuccess ());
+        final MockSPI aPostReceipt = new MockSPI ("post",
+                                                  EAS4MessageProcessorExecutionMode.POST_RECEIPT,
+                                                  null,
+                                                  x -> AS4MessageProcessorResult.createSuccess ());
+        final ICommonsList <Ebms3Error> aErrors = new CommonsArrayList <> ();
+        final ICommonsList <Supplier <CompletableFuture <?>>> aPostReceiptTarget = new CommonsArrayList <> ();
+        final SPIInvocationResult aResult = _invoke (aExecutor,
+                                                     new CommonsArrayList <> (aPostReceipt, aOrdered),
+                                                     null,
+                                                     aErrors,
+                                                     aPostReceiptTarget);
+        assertTrue (aResult.isSuccess ());
+        assertTrue (aErrors.isEmpty ());
+        assertEquals (1, aOrdered.m_aInvocationCount.get ());
+
+        // Only started by the caller
+        assertEquals (0, aPostReceipt.m_aInvocationCount.get ());
+        assertEquals (1, aPostReceiptTarget.size ());
+        aPostReceiptTarget.getFirst ().get ().get (10, TimeUnit.SECONDS);
+        assertEquals (1, aPostReceipt.m_aInvocationCount.get ());
+      }
+
+      // Failure
+      {
+        final MockSPI aOrdered = new MockSPI ("ordered",
+                                              EAS4MessageProcessorExecutionMode.ORDERED,
+                                              null,
+                                              x -> AS4MessageProcessorResult.createFailure ("ordered failed"));
+        final MockSPI aPostReceipt = new MockSPI ("post",
+                                                  EAS4MessageProcessorExecutionMode.POST_RECEIPT,
+                                                  null,
+                                                  x -> AS4MessageProcessorResult.createSuccess ());
+        final ICommonsList <Ebms3Error> aErrors = new CommonsArrayList <> ();
+        final ICommonsList <Supplier <CompletableFuture <?>>> aPostReceiptTarget = new CommonsArrayList <> ();
+        final SPIInvocationResult aResult = _invoke (aExecutor,
+                                                     new CommonsArrayList <> (aPostReceipt, aOrdered),
+                                                     null,
+                                                     aErrors,
+                                                     aPostReceiptTarget);
+        assertTrue (aResult.isFailure ());
+        _assertSingleOtherError (aErrors, "ordered failed");
+        assertTrue (aPostReceiptTarget.isEmpty ());
+        assertEquals (0, aPostReceipt.m_aInvocationCount.get ());
+      }
+    }
+  }
+
+  @Test
+  public void testIndependentSPIsGetPayloadCopy ()
+  {
+    final Document aDoc = XMLFactory.newDocument ();
+    final Element aPayload = (Element) aDoc.appendChild (aDoc.createElement ("payload"));
+    aPayload.appendChild (aDoc.createTextNode ("value"));
+
+    final MockSPI aSPI1 = new MockSPI ("spi1",
+                                       EAS4MessageProcessorExecutionMode.INDEPENDENT,
+                                       null,
+                                       x -> _sleepAndSucceed (50));
+    final MockSPI aSPI2 = new MockSPI ("spi2",
+                                       EAS4MessageProcessorExecutionMode.INDEPENDENT,
+                                       null,
+                                       x -> _sleepAndSucceed (50));
+    try (final AS4MessageProcessorExecutor aExecutor = AS4MessageProcessorExecutor.createDefault ())
+    {
+      final SPIInvocationResult aResult = _invoke (aExecutor,
+                                                   new CommonsArrayList <> (aSPI1, aSPI2),
+                                                   aPayload,
+                                                   new CommonsArrayList <> (),
+                                                   new CommonsArrayList <> ());
+      assertTrue (aResult.isSuccess ());
+
+      final Node aCopy1 = aSPI1.m_aPayload;
+      final Node aCopy2 = aSPI2.m_aPayload;
+      assertNotNull (aCopy1);
+      assertNotNull (aCopy2);
+      assertNotSame (aPayload, aCopy1);
+      assertNotSame (aPayload, aCopy2);
+      assertNotSame (aCopy1, aCopy2);
+      assertNotSame (aDoc, aCopy1.getOwnerDocument ());
+      assertNotSame (aCopy1.getOwnerDocument (), aCopy2.getOwnerDocument ());
+      assertTrue (aPayload.isEqualNode (aCopy1));
+      assertTrue (aPayload.isEqualNode (aCopy2));
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.xml.XMLHelper;
+
+/**
+ * Test class for class {@link AS4SoapStreamingReader}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4SoapStreamingReaderTest
+{
+  private static final String NS_SOAP12 = "http://www.w3.org/2003/05/soap-envelope";
+
+  private static Document _read (final String sXML, final AS4ResourceHelper aResHelper) throws Exception
+  {
+    return AS4SoapStreamingReader.readSoapDocument (new NonBlockingByteArrayInputStream (sXML.getBytes (StandardCharsets.UTF_8)),
+                                                    aResHelper);
+  }
+
+  @Test
+  public void testStreamedBody () throws Exception
+  {
+    final String sXML = "<?xml version='1.0' encoding='UTF-8'?>" +
+                        "<S12:Envelope xmlns:S12='" +
+                        NS_SOAP12 +
+                        "' xmlns:x='urn:x'>" +
+                        "<S12:Header><eb:Messaging xmlns:eb='urn:eb'><eb:a>b</eb:a></eb:Messaging></S12:Header>" +
+                        "<S12:Body><x:Payload attr='1'><y xmlns='urn:y'>text</y></x:Payload></S12:Body>" +
+                        "</S12:Envelope>";
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final Document aDoc = _read (sXML, aResHelper);
+      assertNotNull (aDoc);
+      assertEquals (1, aResHelper.getAllTempFiles ().size ());
+
+      final AS4LazySoapBody aLazyBody = AS4LazySoapBody.getOfDocument (aDoc);
+      assertNotNull (aLazyBody);
+      assertTrue (aLazyBody.hasContent ());
+      assertFalse (aLazyBody.isMaterialized ());
+
+      final Element aBody = XMLHelper.getFirstChildElementOfName (aDoc.getDocumentElement (), NS_SOAP12, "Body");
+      assertNotNull (aBody);
+      assertFalse (aBody.hasChildNodes ());
+
+      final Node aPayload = aLazyBody.getPayloadNode ();
+      assertTrue (aLazyBody.isMaterialized ());
+      assertTrue (aPayload instanceof Element);
+      assertEquals ("urn:x", aPayload.getNamespaceURI ());
+      assertEquals ("Payload", aPayload.getLocalName ());
+      assertEquals ("1", ((Element) aPayload).getAttribute ("attr"));
+      final Element aY = XMLHelper.getFirstChildElement (aPayload);
+      assertEquals ("urn:y", aY.getNamespaceURI ());
+      assertEquals ("text", aY.getTextContent ());
+      assertEquals (aPayload, aBody.getFirstChild ());
+    }
+  }
+
+  @Test
+  public void testEmptyBody () throws Exception
+  {
+    final String sXML = "<S12:Envelope xmlns:S12='" + NS_SOAP12 + "'><S12:Header/><S12:Body/></S12:Envelope>";
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final Document aDoc = _read (sXML, aResHelper);
+      assertNotNull (aDoc);
+      final AS4LazySoapBody aLazyBody = AS4LazySoapBody.getOfDocument (aDoc);
+      assertNotNull (aLazyBody);
+      assertFalse (aLazyBody.hasContent ());
+      assertNull (aLazyBody.getPayloadNode ());
+    }
+  }
+
+  @Test
+  public void testSecurityHeaderReadsFullBody () throws Exception
+  {
+    final String sXML = "<S12:Envelope xmlns:S12='" +
+                        NS_SOAP12 +
+                        "'><S12:Header>" +
+                        "<wsse:Security xmlns:wsse='http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd'/>" +
+                        "</S12:Header><S12:Body><a>b</a></S12:Body></S12:Envelope>";
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final Document aDoc = _read (sXML, aResHelper);
+      assertNotNull (aDoc);
+      assertNull (AS4LazySoapBody.getOfDocument (aDoc));
+      assertTrue (aResHelper.getAllTempFiles ().isEmpty ());
+      final Element aBody = XMLHelper.getFirstChildElementOfName (aDoc.getDocumentElement (), NS_SOAP12, "Body");
+      assertEquals ("b", aBody.getTextContent ());
+    }
+  }
+
+  @Test
+  public void testInvalidXML () throws Exception
+  {
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      assertNull (_read ("<S12:Envelope xmlns:S12='" + NS_SOAP12 + "'><S12:Body>", aResHelper));
+    }
+  }
+}
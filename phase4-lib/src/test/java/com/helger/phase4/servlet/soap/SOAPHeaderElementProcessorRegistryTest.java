@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.servlet.soap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.helger.phase4.crypto.AS4CryptoFactoryProperties;
+import com.helger.phase4.crypto.IAS4CryptoFactory;
+import com.helger.phase4.model.pmode.resolve.DefaultPModeResolver;
+import com.helger.phase4.model.pmode.resolve.IPModeResolver;
+
+/**
+ * Test class for class {@link SOAPHeaderElementProcessorRegistry}.
+ *
+ * @author Philip Helger
+ */
+public final class SOAPHeaderElementProcessorRegistryTest
+{
+  @Test
+  public void testCreateDefault ()
+  {
+    final SOAPHeaderElementProcessorRegistry aRegistry = SOAPHeaderElementProcessorRegistry.createDefault (DefaultPModeResolver.DEFAULT_PMODE_RESOLVER,
+                                                                                                           AS4CryptoFactoryProperties.getDefaultInstance (),
+                                                                                                           null);
+    assertEquals (2, aRegistry.getAllElementProcessors ().size ());
+    assertTrue (aRegistry.containsHeaderElementProcessor (SOAPHeaderElementProcessorExtractEbms3Messaging.QNAME_MESSAGING));
+    assertTrue (aRegistry.containsHeaderElementProcessor (SOAPHeaderElementProcessorWSS4J.QNAME_SECURITY));
+  }
+
+  @Test
+  public void testGetOrCreateDefault ()
+  {
+    final IPModeResolver aResolver = DefaultPModeResolver.DEFAULT_PMODE_RESOLVER;
+    final IAS4CryptoFactory aCF = AS4CryptoFactoryProperties.getDefaultInstance ();
+
+    SOAPHeaderElementProcessorRegistry.clearDefaultCache ();
+    assertEquals (0, SOAPHeaderElementProcessorRegistry.getDefaultCacheSize ());
+    try
+    {
+      final SOAPHeaderElementProcessorRegistry aRegistry = SOAPHeaderElementProcessorRegistry.getOrCreateDefault (aResolver,
+                                                                                                                  aCF,
+                                                                                                                  null);
+      assertNotNull (aRegistry);
+      assertEquals (1, SOAPHeaderElementProcessorRegistry.getDefaultCacheSize ());
+
+      // Same parameters - same object
+      assertSame (aRegistry, SOAPHeaderElementProcessorRegistry.getOrCreateDefault (aResolver, aCF, null));
+      assertEquals (1, SOAPHeaderElementProcessorRegistry.getDefaultCacheSize ());
+
+      // Different resolver - different object
+      final SOAPHeaderElementProcessorRegistry aRegistry2 = SOAPHeaderElementProcessorRegistry.getOrCreateDefault (new DefaultPModeResolver (true),
+                                                                                                                   aCF,
+                                                                                                                   null);
+      assertNotSame (aRegistry, aRegistry2);
+      assertEquals (2, SOAPHeaderElementProcessorRegistry.getDefaultCacheSize ());
+
+      // Explicit invalidation
+      SOAPHeaderElementProcessorRegistry.clearDefaultCache ();
+      assertEquals (0, SOAPHeaderElementProcessorRegistry.getDefaultCacheSize ());
+      assertNotSame (aRegistry, SOAPHeaderElementProcessorRegistry.getOrCreateDefault (aResolver, aCF, null));
+    }
+    finally
+    {
+      SOAPHeaderElementProcessorRegistry.clearDefaultCache ();
+    }
+  }
+}
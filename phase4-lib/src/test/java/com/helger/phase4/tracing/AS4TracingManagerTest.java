@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.tracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.http.HttpHeaderMap;
+
+/**
+ * Test class for class {@link AS4TracingManager}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4TracingManagerTest
+{
+  @Test
+  public void testNoOpByDefault ()
+  {
+    assertFalse (AS4TracingManager.isEnabled ());
+    try (final IAS4Span aSpan = AS4TracingManager.startSpan ("test"))
+    {
+      assertSame (AS4NoOpTracer.NO_OP_SPAN, aSpan);
+      assertNull (aSpan.getSpanContext ());
+      assertNull (AS4TracingManager.getCurrentSpanContext ());
+    }
+  }
+
+  @Test
+  public void testNesting ()
+  {
+    final AS4InMemoryTracer aTracer = new AS4InMemoryTracer ();
+    AS4TracingManager.setTracer (aTracer);
+    try
+    {
+      assertTrue (AS4TracingManager.isEnabled ());
+      try (final IAS4Span aOuter = AS4TracingManager.startSpan ("outer"))
+      {
+        aOuter.setAttribute (AS4TracingManager.ATTR_MESSAGE_ID, "msg-1");
+        try (final IAS4Span aInner = AS4TracingManager.startSpan ("inner"))
+        {
+          assertEquals (aInner.getSpanContext (), AS4TracingManager.getCurrentSpanContext ());
+          aInner.setError (new IllegalStateException ("test"));
+        }
+        assertEquals (aOuter.getSpanContext (), AS4TracingManager.getCurrentSpanContext ());
+      }
+      assertNull (AS4TracingManager.getCurrentSpanContext ());
+
+      final ICommonsList <AS4RecordedSpan> aSpans = aTracer.getAllFinishedSpans ();
+      assertEquals (2, aSpans.size ());
+      final AS4RecordedSpan aInner = aSpans.get (0);
+      final AS4RecordedSpan aOuter = aSpans.get (1);
+      assertEquals ("inner", aInner.getName ());
+      assertTrue (aInner.hasError ());
+      assertEquals ("outer", aOuter.getName ());
+      assertFalse (aOuter.hasError ());
+      assertNull (aOuter.getParentSpanContext ());
+      assertEquals ("msg-1", aOuter.getAttribute (AS4TracingManager.ATTR_MESSAGE_ID));
+
+      // Same trace, linked to the parent
+      assertEquals (aOuter.getSpanContext (), aInner.getParentSpanContext ());
+      assertEquals (aOuter.getSpanContext ().getTraceID (), aInner.getSpanContext ().getTraceID ());
+    }
+    finally
+    {
+      AS4TracingManager.setTracer (AS4NoOpTracer.INSTANCE);
+    }
+  }
+
+  @Test
+  public void testDetachedSpan () throws Exception
+  {
+    final AS4InMemoryTracer aTracer = new AS4InMemoryTracer ();
+    AS4TracingManager.setTracer (aTracer);
+    try
+    {
+      try (final IAS4Span aOuter = AS4TracingManager.startSpan ("outer"))
+      {
+        final IAS4Span aDetached = AS4TracingManager.startDetachedSpan ("detached");
+        // Does not become the current span
+        assertEquals (aOuter.getSpanContext (), AS4TracingManager.getCurrentSpanContext ());
+
+        // End it on a different thread
+        final Thread aThread = new Thread (aDetached::end);
+        aThread.start ();
+        aThread.join ();
+        assertEquals (aOuter.getSpanContext (), AS4TracingManager.getCurrentSpanContext ());
+      }
+      assertNull (AS4TracingManager.getCurrentSpanContext ());
+
+      final AS4RecordedSpan aDetached = aTracer.getAllFinishedSpansWithName ("detached").getFirst ();
+      final AS4RecordedSpan aOuter = aTracer.getAllFinishedSpansWithName ("outer").getFirst ();
+      assertEquals (aOuter.getSpanContext (), aDetached.getParentSpanContext ());
+    }
+    finally
+    {
+      AS4TracingManager.setTracer (AS4NoOpTracer.INSTANCE);
+    }
+  }
+
+  @Test
+  public void testTraceParentPropagation ()
+  {
+    final AS4InMemoryTracer aTracer = new AS4InMemoryTracer ();
+    AS4TracingManager.setTracer (aTracer);
+    try
+    {
+      final String sTraceParent;
+      try (final IAS4Span aSend = AS4TracingManager.startSpan ("send"))
+      {
+        sTraceParent = aSend.getSpanContext ().getAsTraceParent ();
+      }
+
+      final HttpHeaderMap aHeaders = new HttpHeaderMap ();
+      aHeaders.addHeader (AS4SpanContext.HTTP_HEADER_TRACEPARENT, sTraceParent);
+      final AS4SpanContext aExtracted = AS4TracingManager.extractSpanContext (aHeaders);
+      assertNotNull (aExtracted);
+      assertEquals (sTraceParent, aExtracted.getAsTraceParent ());
+
+      try (final IAS4Span aReceive = AS4TracingManager.startSpan ("receive", aExtracted))
+      {
+        assertEquals (aExtracted.getTraceID (), aReceive.getSpanContext ().getTraceID ());
+      }
+      assertEquals (aExtracted, aTracer.getAllFinishedSpansWithName ("receive").getFirst ().getParentSpanContext ());
+
+      // Invalid values
+      assertNull (AS4SpanContext.parseTraceParent (null));
+      assertNull (AS4SpanContext.parseTraceParent ("bla"));
+      assertNull (AS4SpanContext.parseTraceParent ("00-00000000000000000000000000000000-0000000000000000-01"));
+      assertNull (AS4TracingManager.extractSpanContext (new HttpHeaderMap ()));
+    }
+    finally
+    {
+      AS4TracingManager.setTracer (AS4NoOpTracer.INSTANCE);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics.micrometer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.metrics.EAS4MetricsStage;
+import com.helger.phase4.metrics.IAS4MetricsSPI;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link IAS4MetricsSPI} implementation that records all values in a
+ * Micrometer {@link MeterRegistry}. Use
+ * {@link com.helger.phase4.metrics.AS4MetricsManager#registerMetrics(IAS4MetricsSPI)}
+ * to use a specific registry.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class AS4MicrometerMetrics implements IAS4MetricsSPI
+{
+  public static final String METER_STAGE_DURATION = "phase4.stage.duration";
+  public static final String METER_INCOMING_MESSAGES = "phase4.incoming.messages";
+  public static final String METER_EBMS_ERRORS = "phase4.ebms.errors";
+  public static final String METER_BYTES_IN = "phase4.bytes.in";
+  public static final String METER_BYTES_OUT = "phase4.bytes.out";
+  public static final String METER_TEMPFILES_CREATED = "phase4.tempfiles.created";
+
+  public static final String TAG_STAGE = "stage";
+  public static final String TAG_PROFILE = "profile";
+  public static final String TAG_PMODE = "pmode";
+  public static final String TAG_ERROR_CODE = "code";
+
+  private static final String UNKNOWN = "unknown";
+
+  private final MeterRegistry m_aRegistry;
+  private final Map <EAS4MetricsStage, Timer> m_aStageTimers = new EnumMap <> (EAS4MetricsStage.class);
+  private final Counter m_aBytesIn;
+  private final Counter m_aBytesOut;
+  private final Counter m_aTempFilesCreated;
+
+  public AS4MicrometerMetrics (@Nonnull final MeterRegistry aRegistry)
+  {
+    ValueEnforcer.notNull (aRegistry, "Registry");
+    m_aRegistry = aRegistry;
+    // Create all meters with static tags upfront to avoid lookups per event
+    for (final EAS4MetricsStage e : EAS4MetricsStage.values ())
+      m_aStageTimers.put (e,
+                          Timer.builder (METER_STAGE_DURATION)
+                               .description ("Duration of the AS4 processing stages")
+                               .tag (TAG_STAGE, e.getID ())
+                               .publishPercentileHistogram ()
+                               .register (aRegistry));
+    m_aBytesIn = Counter.builder (METER_BYTES_IN)
+                        .description ("Bytes of incoming AS4 HTTP messages")
+                        .baseUnit ("bytes")
+                        .register (aRegistry);
+    m_aBytesOut = Counter.builder (METER_BYTES_OUT)
+                         .description ("Bytes of outgoing AS4 HTTP messages")
+                         .baseUnit ("bytes")
+                         .register (aRegistry);
+    m_aTempFilesCreated = Counter.builder (METER_TEMPFILES_CREATED)
+                                 .description ("Number of temporary files created")
+                                 .register (aRegistry);
+  }
+
+  /**
+   * @return The meter registry used. Never <code>null</code>.
+   */
+  @Nonnull
+  public final MeterRegistry getRegistry ()
+  {
+    return m_aRegistry;
+  }
+
+  public void onStageDuration (@Nonnull final EAS4MetricsStage eStage, @Nonnegative final long nDurationNanos)
+  {
+    m_aStageTimers.get (eStage).record (nDurationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void onIncomingMessage (@Nullable final String sProfileID, @Nullable final String sPModeID)
+  {
+    m_aRegistry.counter (METER_INCOMING_MESSAGES,
+                         TAG_PROFILE,
+                         sProfileID != null ? sProfileID : UNKNOWN,
+                         TAG_PMODE,
+                         sPModeID != null ? sPModeID : UNKNOWN)
+               .increment ();
+  }
+
+  @Override
+  public void onEbmsError (@Nonnull @Nonempty final String sErrorCode)
+  {
+    m_aRegistry.counter (METER_EBMS_ERRORS, TAG_ERROR_CODE, sErrorCode).increment ();
+  }
+
+  @Override
+  public void onBytesIn (@Nonnegative final long nBytes)
+  {
+    m_aBytesIn.increment (nBytes);
+  }
+
+  @Override
+  public void onBytesOut (@Nonnegative final long nBytes)
+  {
+    m_aBytesOut.increment (nBytes);
+  }
+
+  @Override
+  public void onTempFileCreated ()
+  {
+    m_aTempFilesCreated.increment ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Registry", m_aRegistry).getToString ();
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics.micrometer;
+
+import com.helger.commons.annotation.IsSPIImplementation;
+
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * SPI implementation of {@link AS4MicrometerMetrics} that records into the
+ * global Micrometer registry {@link Metrics#globalRegistry}. It is picked up
+ * automatically by the {@link com.helger.phase4.metrics.AS4MetricsManager} if
+ * this module is on the classpath.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@IsSPIImplementation
+public class AS4MicrometerMetricsSPI extends AS4MicrometerMetrics
+{
+  public AS4MicrometerMetricsSPI ()
+  {
+    super (Metrics.globalRegistry);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.metrics.micrometer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.helger.phase4.metrics.EAS4MetricsStage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test class for class {@link AS4MicrometerMetrics}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4MicrometerMetricsTest
+{
+  @Test
+  public void testBasic ()
+  {
+    final SimpleMeterRegistry aRegistry = new SimpleMeterRegistry ();
+    final AS4MicrometerMetrics aMetrics = new AS4MicrometerMetrics (aRegistry);
+
+    aMetrics.onStageDuration (EAS4MetricsStage.INCOMING_WSS4J, TimeUnit.MILLISECONDS.toNanos (20));
+    aMetrics.onStageDuration (EAS4MetricsStage.INCOMING_WSS4J, TimeUnit.MILLISECONDS.toNanos (40));
+    aMetrics.onIncomingMessage ("peppol", "pm1");
+    aMetrics.onIncomingMessage ("peppol", "pm1");
+    aMetrics.onIncomingMessage (null, null);
+    aMetrics.onEbmsError ("EBMS:0004");
+    aMetrics.onBytesIn (100);
+    aMetrics.onBytesOut (50);
+    aMetrics.onTempFileCreated ();
+
+    assertEquals (2,
+                  aRegistry.get (AS4MicrometerMetrics.METER_STAGE_DURATION)
+                           .tag (AS4MicrometerMetrics.TAG_STAGE, EAS4MetricsStage.INCOMING_WSS4J.getID ())
+                           .timer ()
+                           .count ());
+    assertEquals (60,
+                  aRegistry.get (AS4MicrometerMetrics.METER_STAGE_DURATION)
+                           .tag (AS4MicrometerMetrics.TAG_STAGE, EAS4MetricsStage.INCOMING_WSS4J.getID ())
+                           .timer ()
+                           .totalTime (TimeUnit.MILLISECONDS),
+                  0.001);
+    assertEquals (2,
+                  aRegistry.get (AS4MicrometerMetrics.METER_INCOMING_MESSAGES)
+                           .tag (AS4MicrometerMetrics.TAG_PROFILE, "peppol")
+                           .tag (AS4MicrometerMetrics.TAG_PMODE, "pm1")
+                           .counter ()
+                           .count (),
+                  0.001);
+    assertEquals (1,
+                  aRegistry.get (AS4MicrometerMetrics.METER_INCOMING_MESSAGES)
+                           .tag (AS4MicrometerMetrics.TAG_PROFILE, "unknown")
+                           .counter ()
+                           .count (),
+                  0.001);
+    assertEquals (1,
+                  aRegistry.get (AS4MicrometerMetrics.METER_EBMS_ERRORS)
+                           .tag (AS4MicrometerMetrics.TAG_ERROR_CODE, "EBMS:0004")
+                           .counter ()
+                           .count (),
+                  0.001);
+    assertEquals (100, aRegistry.get (AS4MicrometerMetrics.METER_BYTES_IN).counter ().count (), 0.001);
+    assertEquals (50, aRegistry.get (AS4MicrometerMetrics.METER_BYTES_OUT).counter ().count (), 0.001);
+    assertEquals (1, aRegistry.get (AS4MicrometerMetrics.METER_TEMPFILES_CREATED).counter ().count (), 0.001);
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.w3c.dom.Element;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+
+/**
+ * A single document to be sent via {@link Phase4PeppolBatchSender}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public class Phase4PeppolBatchItem
+{
+  private final String m_sItemID;
+  private final IParticipantIdentifier m_aReceiverID;
+  private final IDocumentTypeIdentifier m_aDocTypeID;
+  private final IProcessIdentifier m_aProcessID;
+  private final Element m_aPayloadElement;
+  private final byte [] m_aPayloadBytes;
+
+  private Phase4PeppolBatchItem (@Nonnull @Nonempty final String sItemID,
+                                 @Nonnull final IParticipantIdentifier aReceiverID,
+                                 @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                 @Nonnull final IProcessIdentifier aProcessID,
+                                 @Nullable final Element aPayloadElement,
+                                 @Nullable final byte [] aPayloadBytes)
+  {
+    ValueEnforcer.notEmpty (sItemID, "ItemID");
+    ValueEnforcer.notNull (aReceiverID, "ReceiverID");
+    ValueEnforcer.notNull (aDocTypeID, "DocTypeID");
+    ValueEnforcer.notNull (aProcessID, "ProcessID");
+    m_sItemID = sItemID;
+    m_aReceiverID = aReceiverID;
+    m_aDocTypeID = aDocTypeID;
+    m_aProcessID = aProcessID;
+    m_aPayloadElement = aPayloadElement;
+    m_aPayloadBytes = aPayloadBytes;
+  }
+
+  /**
+   * Constructor for a DOM payload.
+   *
+   * @param sItemID
+   *        The ID of the item, used to correlate the result. May neither be
+   *        <code>null</code> nor empty.
+   * @param aReceiverID
+   *        The receiver participant ID. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type ID. May not be <code>null</code>.
+   * @param aProcessID
+   *        The process ID. May not be <code>null</code>.
+   * @param aPayloadElement
+   *        The payload element to be wrapped in an SBDH. May not be
+   *        <code>null</code>. Note: DOM nodes are not thread-safe, so the
+   *        same element must not be used in multiple items.
+   */
+  public Phase4PeppolBatchItem (@Nonnull @Nonempty final String sItemID,
+                                @Nonnull final IParticipantIdentifier aReceiverID,
+                                @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                @Nonnull final IProcessIdentifier aProcessID,
+                                @Nonnull final Element aPayloadElement)
+  {
+    this (sItemID, aReceiverID, aDocTypeID, aProcessID, ValueEnforcer.notNull (aPayloadElement, "PayloadElement"), null);
+  }
+
+  /**
+   * Constructor for a serialized XML payload.
+   *
+   * @param sItemID
+   *        The ID of the item, used to correlate the result. May neither be
+   *        <code>null</code> nor empty.
+   * @param aReceiverID
+   *        The receiver participant ID. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type ID. May not be <code>null</code>.
+   * @param aProcessID
+   *        The process ID. May not be <code>null</code>.
+   * @param aPayloadBytes
+   *        The XML payload bytes to be wrapped in an SBDH. May not be
+   *        <code>null</code>.
+   */
+  public Phase4PeppolBatchItem (@Nonnull @Nonempty final String sItemID,
+                                @Nonnull final IParticipantIdentifier aReceiverID,
+                                @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                @Nonnull final IProcessIdentifier aProcessID,
+                                @Nonnull final byte [] aPayloadBytes)
+  {
+    this (sItemID, aReceiverID, aDocTypeID, aProcessID, null, ValueEnforcer.notNull (aPayloadBytes, "PayloadBytes"));
+  }
+
+  /**
+   * @return The ID of the item as provided in the constructor. Neither
+   *         <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getItemID ()
+  {
+    return m_sItemID;
+  }
+
+  @Nonnull
+  public final IParticipantIdentifier getReceiverID ()
+  {
+    return m_aReceiverID;
+  }
+
+  @Nonnull
+  public final IDocumentTypeIdentifier getDocTypeID ()
+  {
+    return m_aDocTypeID;
+  }
+
+  @Nonnull
+  public final IProcessIdentifier getProcessID ()
+  {
+    return m_aProcessID;
+  }
+
+  /**
+   * Set the payload of this item on the provided builder.
+   *
+   * @param aBuilder
+   *        The builder to modify. May not be <code>null</code>.
+   */
+  public void applyPayload (@Nonnull final Phase4PeppolSender.Builder aBuilder)
+  {
+    if (m_aPayloadElement != null)
+      aBuilder.payload (m_aPayloadElement);
+    else
+      aBuilder.payload (m_aPayloadBytes);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ItemID", m_sItemID)
+                                       .append ("ReceiverID", m_aReceiverID.getURIEncoded ())
+                                       .append ("DocTypeID", m_aDocTypeID.getURIEncoded ())
+                                       .append ("ProcessID", m_aProcessID.getURIEncoded ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.state.ISuccessIndicator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilder.ESimpleUserMessageSendResult;
+
+/**
+ * The result of sending a single {@link Phase4PeppolBatchItem} via
+ * {@link Phase4PeppolBatchSender}.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@Immutable
+public class Phase4PeppolBatchResult implements ISuccessIndicator
+{
+  private final Phase4PeppolBatchItem m_aItem;
+  private final String m_sMessageID;
+  private final ESimpleUserMessageSendResult m_eSendResult;
+  private final Exception m_aException;
+  private final Duration m_aDuration;
+
+  /**
+   * Constructor
+   *
+   * @param aItem
+   *        The item that was sent. May not be <code>null</code>.
+   * @param sMessageID
+   *        The AS4 message ID used. May neither be <code>null</code> nor
+   *        empty.
+   * @param eSendResult
+   *        The sending result. May be <code>null</code> if an unexpected
+   *        exception occurred.
+   * @param aException
+   *        The exception that occurred. May be <code>null</code>.
+   * @param aDuration
+   *        The time it took to process the item. May not be
+   *        <code>null</code>.
+   */
+  public Phase4PeppolBatchResult (@Nonnull final Phase4PeppolBatchItem aItem,
+                                  @Nonnull @Nonempty final String sMessageID,
+                                  @Nullable final ESimpleUserMessageSendResult eSendResult,
+                                  @Nullable final Exception aException,
+                                  @Nonnull final Duration aDuration)
+  {
+    ValueEnforcer.notNull (aItem, "Item");
+    ValueEnforcer.notEmpty (sMessageID, "MessageID");
+    ValueEnforcer.isTrue (eSendResult != null || aException != null, "Either SendResult or Exception must be present");
+    ValueEnforcer.notNull (aDuration, "Duration");
+    m_aItem = aItem;
+    m_sMessageID = sMessageID;
+    m_eSendResult = eSendResult;
+    m_aException = aException;
+    m_aDuration = aDuration;
+  }
+
+  /**
+   * @return The item that was sent. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Phase4PeppolBatchItem getItem ()
+  {
+    return m_aItem;
+  }
+
+  /**
+   * @return The AS4 message ID used for sending. Neither <code>null</code>
+   *         nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getMessageID ()
+  {
+    return m_sMessageID;
+  }
+
+  /**
+   * @return The sending result. May be <code>null</code> if an unexpected
+   *         exception occurred.
+   */
+  @Nullable
+  public final ESimpleUserMessageSendResult getSendResult ()
+  {
+    return m_eSendResult;
+  }
+
+  /**
+   * @return The exception that occurred during sending (e.g. the SMP lookup,
+   *         the validation or the transmission). May be <code>null</code>.
+   */
+  @Nullable
+  public final Exception getException ()
+  {
+    return m_aException;
+  }
+
+  public final boolean hasException ()
+  {
+    return m_aException != null;
+  }
+
+  /**
+   * @return The time it took to process this item. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getDuration ()
+  {
+    return m_aDuration;
+  }
+
+  public boolean isSuccess ()
+  {
+    return m_eSendResult != null && m_eSendResult.isSuccess ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Item", m_aItem)
+                                       .append ("MessageID", m_sMessageID)
+                                       .append ("SendResult", m_eSendResult)
+                                       .appendIfNotNull ("Exception", m_aException)
+                                       .append ("Duration", m_aDuration)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.wrapper.Wrapper;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderPeppol;
+import com.helger.phase4.dynamicdiscovery.AS4SMPEndpointCache;
+import com.helger.phase4.messaging.domain.MessageHelperMethods;
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilder.ESimpleUserMessageSendResult;
+import com.helger.phase4.util.Phase4Exception;
+import com.helger.smpclient.peppol.ISMPServiceMetadataProvider;
+
+/**
+ * Send many Peppol documents to many receivers in parallel. For each
+ * {@link Phase4PeppolBatchItem} a new {@link Phase4PeppolSender.Builder} is
+ * created via the provided factory, which should set all the fields that are
+ * identical for all items (sender participant ID, sender party ID, crypto
+ * factory, validation etc.). The receiver, document type, process, payload and
+ * the endpoint detail provider are set per item. The whole per item pipeline
+ * (SMP lookup, validation, SBDH creation, signing, encryption and sending)
+ * runs on a pool of worker threads.<br>
+ * Notes:
+ * <ul>
+ * <li>SMP lookups are shared via an {@link AS4SMPEndpointCache}, so that
+ * concurrent lookups for the same receiver only cause a single query.</li>
+ * <li>By default each builder uses its own {@link HttpClientFactory}, which is
+ * the shared {@link Phase4PeppolSender#getSharedHttpClientFactory()} unless the
+ * builder factory sets a different one. So HTTP connections can be reused if
+ * {@link AS4Configuration#isHttpClientPooled()} is enabled. A common factory
+ * for all items can be set via
+ * {@link #setHttpClientFactory(HttpClientFactory)}.</li>
+ * <li>The results are passed to the result consumer as soon as they are
+ * available, in completion order and from the worker threads. The consumer
+ * (as well as the validation result handler and other callbacks set in the
+ * builder factory) must therefore be thread-safe.</li>
+ * <li>At most "max concurrency" items are taken from the source at a time, so
+ * that lazily created items (e.g. from a {@link Stream}) don't need to be kept
+ * in memory all at once.</li>
+ * </ul>
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@NotThreadSafe
+public class Phase4PeppolBatchSender
+{
+  /** The default number of items processed in parallel */
+  public static final int DEFAULT_MAX_CONCURRENCY = Math.max (4, Runtime.getRuntime ().availableProcessors () * 2);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (Phase4PeppolBatchSender.class);
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger (0);
+
+  private final Supplier <? extends Phase4PeppolSender.Builder> m_aBuilderFactory;
+  private final ISMPServiceMetadataProvider m_aSMPClient;
+  private int m_nMaxConcurrency = DEFAULT_MAX_CONCURRENCY;
+  private AS4SMPEndpointCache m_aEndpointCache = AS4SMPEndpointCache.getDefaultInstance ();
+  private HttpClientFactory m_aHttpClientFactory;
+
+  /**
+   * Constructor
+   *
+   * @param aBuilderFactory
+   *        The factory for a pre-configured builder. It is invoked once per
+   *        item and must return a new builder every time. May not be
+   *        <code>null</code>.
+   * @param aSMPClient
+   *        The SMP client to use for the endpoint lookups. May not be
+   *        <code>null</code>.
+   */
+  public Phase4PeppolBatchSender (@Nonnull final Supplier <? extends Phase4PeppolSender.Builder> aBuilderFactory,
+                                  @Nonnull final ISMPServiceMetadataProvider aSMPClient)
+  {
+    ValueEnforcer.notNull (aBuilderFactory, "BuilderFactory");
+    ValueEnforcer.notNull (aSMPClient, "SMPClient");
+    m_aBuilderFactory = aBuilderFactory;
+    m_aSMPClient = aSMPClient;
+  }
+
+  /**
+   * @return The maximum number of items processed in parallel. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxConcurrency ()
+  {
+    return m_nMaxConcurrency;
+  }
+
+  /**
+   * @param nMaxConcurrency
+   *        The maximum number of items processed in parallel. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final Phase4PeppolBatchSender setMaxConcurrency (@Nonnegative final int nMaxConcurrency)
+  {
+    ValueEnforcer.isGT0 (nMaxConcurrency, "MaxConcurrency");
+    m_nMaxConcurrency = nMaxConcurrency;
+    return this;
+  }
+
+  /**
+   * @return The SMP endpoint cache to use. May be <code>null</code>.
+   */
+  @Nullable
+  public final AS4SMPEndpointCache getEndpointCache ()
+  {
+    return m_aEndpointCache;
+  }
+
+  /**
+   * @param aEndpointCache
+   *        The SMP endpoint cache to use. May be <code>null</code> to perform
+   *        one SMP lookup per item.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final Phase4PeppolBatchSender setEndpointCache (@Nullable final AS4SMPEndpointCache aEndpointCache)
+  {
+    m_aEndpointCache = aEndpointCache;
+    return this;
+  }
+
+  /**
+   * @return The HTTP client factory that is shared between all items. May be
+   *         <code>null</code>, which is the default and means that the HTTP
+   *         client factory of the builders created by the builder factory is
+   *         used.
+   */
+  @Nullable
+  public final HttpClientFactory getHttpClientFactory ()
+  {
+    return m_aHttpClientFactory;
+  }
+
+  /**
+   * @param aHttpClientFactory
+   *        The HTTP client factory that is shared between all items. May be
+   *        <code>null</code> to use the HTTP client factory of the builders
+   *        created by the builder factory.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final Phase4PeppolBatchSender setHttpClientFactory (@Nullable final HttpClientFactory aHttpClientFactory)
+  {
+    m_aHttpClientFactory = aHttpClientFactory;
+    return this;
+  }
+
+  @Nonnull
+  private Phase4PeppolBatchResult _send (@Nonnull final Phase4PeppolBatchItem aItem)
+  {
+    final long nStart = System.nanoTime ();
+    final String sMessageID = MessageHelperMethods.createRandomMessageID ();
+    final Wrapper <Phase4Exception> aCaughtException = new Wrapper <> ();
+    ESimpleUserMessageSendResult eResult = null;
+    Exception aException = null;
+    try
+    {
+      final AS4EndpointDetailProviderPeppol aEndpointDetailProvider = new AS4EndpointDetailProviderPeppol (m_aSMPClient).setEndpointCache (m_aEndpointCache);
+      final Phase4PeppolSender.Builder aBuilder = m_aBuilderFactory.get ();
+      aBuilder.messageID (sMessageID)
+              .receiverParticipantID (aItem.getReceiverID ())
+              .documentTypeID (aItem.getDocTypeID ())
+              .processID (aItem.getProcessID ())
+              .endpointDetailProvider (aEndpointDetailProvider);
+      if (m_aHttpClientFactory != null)
+        aBuilder.httpClientFactory (m_aHttpClientFactory);
+      aItem.applyPayload (aBuilder);
+
+      eResult = aBuilder.sendMessageAndCheckForReceipt (aCaughtException::set);
+      aException = aCaughtException.get ();
+    }
+    catch (final RuntimeException ex)
+    {
+      aException = ex;
+    }
+
+    if (aException != null)
+      LOGGER.warn ("Failed to send batch item '" +
+                   aItem.getItemID () +
+                   "' with message ID '" +
+                   sMessageID +
+                   "': " +
+                   aException.getMessage ());
+    return new Phase4PeppolBatchResult (aItem,
+                                        sMessageID,
+                                        eResult,
+                                        aException,
+                                        Duration.ofNanos (System.nanoTime () - nStart));
+  }
+
+  /**
+   * Send all provided items and wait until all of them were processed.
+   *
+   * @param aItems
+   *        The items to be sent. The iterator is only used on the calling
+   *        thread. May not be <code>null</code>.
+   * @param aResultConsumer
+   *        The thread-safe consumer that receives the result of each item, as
+   *        soon as it is available. May not be <code>null</code>.
+   * @return The number of items that were sent successfully. Always &ge; 0.
+   * @throws InterruptedException
+   *         If the calling thread was interrupted. Items that are already in
+   *         progress continue to be processed in the background.
+   */
+  @Nonnegative
+  public int sendAll (@Nonnull final Iterable <? extends Phase4PeppolBatchItem> aItems,
+                      @Nonnull final Consumer <? super Phase4PeppolBatchResult> aResultConsumer) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aItems, "Items");
+    return _sendAll (aItems.iterator (), aResultConsumer);
+  }
+
+  /**
+   * Send all provided items and wait until all of them were processed.
+   *
+   * @param aItems
+   *        The items to be sent. The stream is consumed on the calling thread.
+   *        May not be <code>null</code>.
+   * @param aResultConsumer
+   *        The thread-safe consumer that receives the result of each item, as
+   *        soon as it is available. May not be <code>null</code>.
+   * @return The number of items that were sent successfully. Always &ge; 0.
+   * @throws InterruptedException
+   *         If the calling thread was interrupted.
+   * @see #sendAll(Iterable, Consumer)
+   */
+  @Nonnegative
+  public int sendAll (@Nonnull final Stream <? extends Phase4PeppolBatchItem> aItems,
+                      @Nonnull final Consumer <? super Phase4PeppolBatchResult> aResultConsumer) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aItems, "Items");
+    return _sendAll (aItems.iterator (), aResultConsumer);
+  }
+
+  @Nonnegative
+  private int _sendAll (@Nonnull final Iterator <? extends Phase4PeppolBatchItem> it,
+                        @Nonnull final Consumer <? super Phase4PeppolBatchResult> aResultConsumer) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aResultConsumer, "ResultConsumer");
+
+    final int nMaxConcurrency = m_nMaxConcurrency;
+    final ExecutorService aExecutor = Executors.newFixedThreadPool (nMaxConcurrency, r -> {
+      final Thread ret = new Thread (r, "phase4-peppol-batch-" + THREAD_COUNTER.incrementAndGet ());
+      ret.setDaemon (true);
+      return ret;
+    });
+    // Limits the number of items taken from the source
+    final Semaphore aPermits = new Semaphore (nMaxConcurrency);
+    final AtomicInteger aSuccessCount = new AtomicInteger (0);
+    int nItemCount = 0;
+    try
+    {
+      while (it.hasNext ())
+      {
+        final Phase4PeppolBatchItem aItem = it.next ();
+        ValueEnforcer.notNull (aItem, "Item");
+
+        aPermits.acquire ();
+        try
+        {
+          aExecutor.execute ( () -> {
+            try
+            {
+              final Phase4PeppolBatchResult aResult = _send (aItem);
+              if (aResult.isSuccess ())
+                aSuccessCount.incrementAndGet ();
+              aResultConsumer.accept (aResult);
+            }
+            catch (final RuntimeException ex)
+            {
+              LOGGER.error ("Error handling the result of batch item '" + aItem.getItemID () + "'", ex);
+            }
+            finally
+            {
+              aPermits.release ();
+            }
+          });
+        }
+        catch (final RejectedExecutionException ex)
+        {
+          aPermits.release ();
+          throw ex;
+        }
+        nItemCount++;
+      }
+
+      // Wait until all items are done
+      aPermits.acquire (nMaxConcurrency);
+      aPermits.release (nMaxConcurrency);
+    }
+    finally
+    {
+      aExecutor.shutdown ();
+    }
+
+    LOGGER.info ("Finished sending " + nItemCount + " batch items - " + aSuccessCount.get () + " were successful");
+    return aSuccessCount.get ();
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.commons.wrapper.Wrapper;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phase4.messaging.domain.MessageHelperMethods;
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilder.ESimpleUserMessageSendResult;
+import com.helger.phase4.sender.queue.AS4OutboundQueue;
+import com.helger.phase4.sender.queue.AS4OutboundQueueItem;
+import com.helger.phase4.sender.queue.EAS4OutboundQueueSendResult;
+import com.helger.phase4.sender.queue.IAS4OutboundQueueItemHandler;
+import com.helger.phase4.util.Phase4Exception;
+
+/**
+ * An {@link IAS4OutboundQueueItemHandler} that sends the items of an
+ * {@link AS4OutboundQueue} with a {@link Phase4PeppolSender.Builder}. Usage:
+ * <ol>
+ * <li>Create the queue with an instance of this class. The provided builder
+ * factory must set all the fields that are identical for all items (sender
+ * participant ID, sender party ID, crypto factory, validation etc.).</li>
+ * <li>Create each item with
+ * {@link #createItem(IParticipantIdentifier, IDocumentTypeIdentifier, IProcessIdentifier, byte[])}
+ * and pass it to {@link AS4OutboundQueue#enqueue(AS4OutboundQueueItem)}.</li>
+ * </ol>
+ * The receiver, document type, process and payload are set per item. The AS4
+ * message ID is created once per item, so that all sending attempts of an item
+ * use the same message ID and the receiver can detect duplicates. Because
+ * the builder is re-created from the journal, items enqueued before a restart
+ * are sent with the builder factory of the new queue.
+ *
+ * @author Philip Helger
+ * @since 2.1.3
+ */
+@ThreadSafe
+public class Phase4PeppolOutboundQueueItemHandler implements IAS4OutboundQueueItemHandler
+{
+  /** The item property containing the AS4 message ID used for all attempts */
+  public static final String PROPERTY_MESSAGE_ID = "peppol.messageid";
+  /** The item property containing the URI encoded receiver ID */
+  public static final String PROPERTY_RECEIVER_ID = "peppol.receiver";
+  /** The item property containing the URI encoded document type ID */
+  public static final String PROPERTY_DOCTYPE_ID = "peppol.doctype";
+  /** The item property containing the URI encoded process ID */
+  public static final String PROPERTY_PROCESS_ID = "peppol.process";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (Phase4PeppolOutboundQueueItemHandler.class);
+
+  private final Supplier <? extends Phase4PeppolSender.Builder> m_aBuilderFactory;
+
+  /**
+   * Constructor
+   *
+   * @param aBuilderFactory
+   *        The factory for a pre-configured builder. It is invoked once per
+   *        sending attempt from the worker threads of the queue and must return
+   *        a new builder every time. May not be <code>null</code>.
+   */
+  public Phase4PeppolOutboundQueueItemHandler (@Nonnull final Supplier <? extends Phase4PeppolSender.Builder> aBuilderFactory)
+  {
+    ValueEnforcer.notNull (aBuilderFactory, "BuilderFactory");
+    m_aBuilderFactory = aBuilderFactory;
+  }
+
+  @Nonnull
+  private static String _getRequiredProperty (@Nonnull final AS4OutboundQueueItem aItem, @Nonnull final String sName)
+  {
+    final String ret = aItem.getProperty (sName);
+    if (ret == null)
+      throw new IllegalArgumentException ("The outbound queue item '" +
+                                          aItem.getID () +
+                                          "' has no property '" +
+                                          sName +
+                                          "'");
+    return ret;
+  }
+
+  /**
+   * Determine how the queue should continue after a sending attempt. Because
+   * every attempt uses the same AS4 message ID, the receiver can detect
+   * duplicates if an attempt without a valid receipt is retried. The default
+   * implementation retries only if
+   * {@link ESimpleUserMessageSendResult#isRetryFeasible()} is
+   * <code>true</code> and the payload validation did not fail. Override this
+   * method to customize this.
+   *
+   * @param eResult
+   *        The result of the sending attempt. Never <code>null</code>.
+   * @param aException
+   *        The exception that occurred while sending. May be
+   *        <code>null</code>.
+   * @return The queue result. May not be <code>null</code>.
+   */
+  @Nonnull
+  protected EAS4OutboundQueueSendResult getQueueSendResult (@Nonnull final ESimpleUserMessageSendResult eResult,
+                                                            @Nullable final Phase4Exception aException)
+  {
+    if (eResult.isSuccess ())
+      return EAS4OutboundQueueSendResult.SUCCESS;
+    if (aException instanceof Phase4PeppolValidationException)
+    {
+      // Sending the same payload again will not help
+      return EAS4OutboundQueueSendResult.PERMANENT_FAILURE;
+    }
+    return eResult.isRetryFeasible () ? EAS4OutboundQueueSendResult.RETRY
+                                      : EAS4OutboundQueueSendResult.PERMANENT_FAILURE;
+  }
+
+  @Nonnull
+  public EAS4OutboundQueueSendResult sendItem (@Nonnull final AS4OutboundQueueItem aItem)
+  {
+    final String sMessageID;
+    final IParticipantIdentifier aReceiverID;
+    final IDocumentTypeIdentifier aDocTypeID;
+    final IProcessIdentifier aProcessID;
+    try
+    {
+      sMessageID = _getRequiredProperty (aItem, PROPERTY_MESSAGE_ID);
+      aReceiverID = Phase4PeppolSender.IF.parseParticipantIdentifier (_getRequiredProperty (aItem,
+                                                                                           PROPERTY_RECEIVER_ID));
+      aDocTypeID = Phase4PeppolSender.IF.parseDocumentTypeIdentifier (_getRequiredProperty (aItem, PROPERTY_DOCTYPE_ID));
+      aProcessID = Phase4PeppolSender.IF.parseProcessIdentifier (_getRequiredProperty (aItem, PROPERTY_PROCESS_ID));
+      if (aReceiverID == null || aDocTypeID == null || aProcessID == null)
+        throw new IllegalArgumentException ("The outbound queue item '" +
+                                            aItem.getID () +
+                                            "' has invalid Peppol identifiers");
+    }
+    catch (final IllegalArgumentException ex)
+    {
+      // The item can never be sent
+      LOGGER.error (ex.getMessage ());
+      return EAS4OutboundQueueSendResult.PERMANENT_FAILURE;
+    }
+
+    final Wrapper <Phase4Exception> aCaughtException = new Wrapper <> ();
+    final ESimpleUserMessageSendResult eResult = m_aBuilderFactory.get ()
+                                                                  .messageID (sMessageID)
+                                                                  .receiverParticipantID (aReceiverID)
+                                                                  .documentTypeID (aDocTypeID)
+                                                                  .processID (aProcessID)
+                                                                  .payload (aItem.getPayload ())
+                                                                  .sendMessageAndCheckForReceipt (aCaughtException::set);
+    if (eResult.isFailure ())
+      LOGGER.warn ("Failed to send outbound queue item '" +
+                   aItem.getID () +
+                   "' with message ID '" +
+                   sMessageID +
+                   "': " +
+                   eResult.getID () +
+                   (aCaughtException.isSet () ? " - " + aCaughtException.get ().getMessage () : ""));
+    return getQueueSendResult (eResult, aCaughtException.get ());
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("BuilderFactory", m_aBuilderFactory).getToString ();
+  }
+
+  /**
+   * Create a new queue item for this handler. The receiver ID is used as the
+   * destination, so that the per destination concurrency limit of the queue
+   * applies per receiver. A new random AS4 message ID is assigned to the item.
+   *
+   * @param aReceiverID
+   *        The receiver participant ID. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type ID. May not be <code>null</code>.
+   * @param aProcessID
+   *        The process ID. May not be <code>null</code>.
+   * @param aPayloadBytes
+   *        The XML payload bytes to be wrapped in an SBDH. May not be
+   *        <code>null</code>. The array is not copied.
+   * @return The new item to be enqueued. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4OutboundQueueItem createItem (@Nonnull final IParticipantIdentifier aReceiverID,
+                                                 @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                                 @Nonnull final IProcessIdentifier aProcessID,
+                                                 @Nonnull final byte [] aPayloadBytes)
+  {
+    ValueEnforcer.notNull (aReceiverID, "ReceiverID");
+    ValueEnforcer.notNull (aDocTypeID, "DocTypeID");
+    ValueEnforcer.notNull (aProcessID, "ProcessID");
+    ValueEnforcer.notNull (aPayloadBytes, "PayloadBytes");
+
+    final ICommonsOrderedMap <String, String> aProps = new CommonsLinkedHashMap <> ();
+    aProps.put (PROPERTY_MESSAGE_ID, MessageHelperMethods.createRandomMessageID ());
+    aProps.put (PROPERTY_RECEIVER_ID, aReceiverID.getURIEncoded ());
+    aProps.put (PROPERTY_DOCTYPE_ID, aDocTypeID.getURIEncoded ());
+    aProps.put (PROPERTY_PROCESS_ID, aProcessID.getURIEncoded ());
+    return AS4OutboundQueueItem.create (aReceiverID.getURIEncoded (), aProps, aPayloadBytes);
+  }
+}
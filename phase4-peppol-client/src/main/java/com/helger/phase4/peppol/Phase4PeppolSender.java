@@ -18,6 +18,7 @@ package com.helger.phase4.peppol;
 
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
 import java.security.cert.X509Certificate;
 import java.time.OffsetDateTime;
 import java.util.UUID;
@@ -44,6 +45,7 @@ import com.helger.commons.mime.IMimeType;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.state.ETriState;
 import com.helger.commons.string.StringHelper;
+import com.helger.httpclient.HttpClientFactory;
 import com.helger.peppol.sbdh.PeppolSBDHDocument;
 import com.helger.peppol.sbdh.payload.PeppolSBDHPayloadBinaryMarshaller;
 import com.helger.peppol.sbdh.payload.PeppolSBDHPayloadTextMarshaller;
@@ -64,13 +66,18 @@ import com.helger.peppolid.peppol.doctype.PeppolDocumentTypeIdentifierParts;
 import com.helger.phase4.CAS4;
 import com.helger.phase4.attachment.AS4OutgoingAttachment;
 import com.helger.phase4.attachment.EAS4CompressionMode;
+import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderConstant;
 import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderPeppol;
+import com.helger.phase4.dynamicdiscovery.AS4SMPEndpointCache;
 import com.helger.phase4.dynamicdiscovery.IAS4EndpointDetailProvider;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.model.MessageProperty;
 import com.helger.phase4.profile.peppol.PeppolPMode;
 import com.helger.phase4.sender.AbstractAS4UserMessageBuilderMIMEPayload;
+import com.helger.phase4.sender.queue.AS4OutboundQueue;
+import com.helger.phase4.tracing.AS4TracingManager;
+import com.helger.phase4.tracing.IAS4Span;
 import com.helger.phase4.util.Phase4Exception;
 import com.helger.phive.api.executorset.IValidationExecutorSetRegistry;
 import com.helger.phive.api.executorset.VESID;
@@ -86,6 +93,8 @@ import com.helger.xml.serialize.read.DOMReader;
  * This class contains all the specifics to send AS4 messages to PEPPOL. See
  * <code>sendAS4Message</code> as the main method to trigger the sending, with
  * all potential customization.
+ * To send messages via a durable {@link AS4OutboundQueue}, use the
+ * {@link Phase4PeppolOutboundQueueItemHandler}.
  *
  * @author Philip Helger
  */
@@ -97,9 +106,40 @@ public final class Phase4PeppolSender
 
   private static final Logger LOGGER = LoggerFactory.getLogger (Phase4PeppolSender.class);
 
+  private static final class SharedHttpClientFactoryHolder
+  {
+    static final HttpClientFactory INSTANCE;
+    static
+    {
+      try
+      {
+        INSTANCE = new HttpClientFactory (new Phase4PeppolHttpClientSettings ());
+      }
+      catch (final GeneralSecurityException ex)
+      {
+        throw new IllegalStateException ("Failed to create Peppol HTTP client settings", ex);
+      }
+    }
+  }
+
   private Phase4PeppolSender ()
   {}
 
+  /**
+   * @return The {@link HttpClientFactory} with the
+   *         {@link Phase4PeppolHttpClientSettings} that is shared by all
+   *         builders that don't have a specific one, if
+   *         {@link AS4Configuration#isHttpClientPooled()} is enabled. Using the
+   *         same instance is required to reuse the connections of the pooled
+   *         HTTP clients. Never <code>null</code>. Must not be modified.
+   * @since 2.1.3
+   */
+  @Nonnull
+  public static HttpClientFactory getSharedHttpClientFactory ()
+  {
+    return SharedHttpClientFactoryHolder.INSTANCE;
+  }
+
   @Nullable
   private static StandardBusinessDocument _createSBD (@Nonnull final IParticipantIdentifier aSenderID,
                                                       @Nonnull final IParticipantIdentifier aReceiverID,
@@ -395,6 +435,7 @@ public final class Phase4PeppolSender
     protected String m_sPayloadContentID;
 
     protected IAS4EndpointDetailProvider m_aEndpointDetailProvider;
+    private AS4SMPEndpointCache m_aEndpointCache;
     private IPhase4PeppolCertificateCheckResultHandler m_aCertificateConsumer;
     private Consumer <String> m_aAPEndpointURLConsumer;
     private boolean m_bCheckReceiverAPCertificate;
@@ -409,7 +450,10 @@ public final class Phase4PeppolSender
       try
       {
         // Use the Peppol specific timeout settings
-        httpClientFactory (new Phase4PeppolHttpClientSettings ());
+        if (AS4Configuration.isHttpClientPooled ())
+          httpClientFactory (getSharedHttpClientFactory ());
+        else
+          httpClientFactory (new Phase4PeppolHttpClientSettings ());
         agreementRef (PeppolPMode.DEFAULT_AGREEMENT_ID);
         fromPartyIDType (PeppolPMode.DEFAULT_PARTY_TYPE_ID);
         fromRole (CAS4.DEFAULT_INITIATOR_URL);
@@ -616,6 +660,7 @@ public final class Phase4PeppolSender
      * @return this for chaining
      * @see #receiverEndpointDetails(X509Certificate, String)
      * @see #endpointDetailProvider(IAS4EndpointDetailProvider)
+     * @see #endpointCache(AS4SMPEndpointCache)
      */
     @Nonnull
     public final IMPLTYPE smpClient (@Nonnull final ISMPServiceMetadataProvider aSMPClient)
@@ -623,6 +668,28 @@ public final class Phase4PeppolSender
       return endpointDetailProvider (new AS4EndpointDetailProviderPeppol (aSMPClient));
     }
 
+    /**
+     * Set the shared SMP endpoint cache to be used for the SMP lookup. This is
+     * only used if the endpoint detail provider is an
+     * {@link AS4EndpointDetailProviderPeppol} that has no cache set yet (e.g.
+     * when using {@link #smpClient(ISMPServiceMetadataProvider)}). The order
+     * of the calls to this method and the endpoint detail provider does not
+     * matter.
+     *
+     * @param aEndpointCache
+     *        The endpoint cache to be used. May be <code>null</code> to perform
+     *        an SMP lookup for every message.
+     * @return this for chaining
+     * @see AS4SMPEndpointCache#getDefaultInstance()
+     * @since 2.1.3
+     */
+    @Nonnull
+    public final IMPLTYPE endpointCache (@Nullable final AS4SMPEndpointCache aEndpointCache)
+    {
+      m_aEndpointCache = aEndpointCache;
+      return thisAsT ();
+    }
+
     /**
      * Use this method to explicit set the AP certificate and AP endpoint URL
      * that was retrieved externally (e.g. via an SMP call or for a static test
@@ -727,8 +794,29 @@ public final class Phase4PeppolSender
         LOGGER.error ("At least one mandatory field for endpoint discovery is not set and therefore the AS4 message cannot be send.");
         return ESuccess.FAILURE;
       }
+
+      // Apply the shared endpoint cache, if none was set explicitly
+      if (m_aEndpointCache != null && m_aEndpointDetailProvider instanceof AS4EndpointDetailProviderPeppol)
+      {
+        final AS4EndpointDetailProviderPeppol aPeppolProvider = (AS4EndpointDetailProviderPeppol) m_aEndpointDetailProvider;
+        if (aPeppolProvider.getEndpointCache () == null)
+          aPeppolProvider.setEndpointCache (m_aEndpointCache);
+      }
+
       // e.g. SMP lookup (may throw an exception)
-      m_aEndpointDetailProvider.init (m_aDocTypeID, m_aProcessID, m_aReceiverID);
+      try (final IAS4Span aSpan = AS4TracingManager.startSpan ("phase4.peppol.smplookup"))
+      {
+        aSpan.setAttribute ("peppol.receiver_id", m_aReceiverID.getURIEncoded ());
+        try
+        {
+          m_aEndpointDetailProvider.init (m_aDocTypeID, m_aProcessID, m_aReceiverID);
+        }
+        catch (final Phase4Exception | RuntimeException ex)
+        {
+          aSpan.setError (ex);
+          throw ex;
+        }
+      }
 
       // Certificate from e.g. SMP lookup (may throw an exception)
       final X509Certificate aReceiverCert = m_aEndpointDetailProvider.getReceiverAPCertificate ();
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.peppol.sml.ESML;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.photon.app.io.WebFileIO;
+import com.helger.servlet.mock.MockServletContext;
+import com.helger.smpclient.peppol.SMPClientReadOnly;
+import com.helger.web.scope.mgr.WebScopeManager;
+
+/**
+ * Example for sending many documents via {@link Phase4PeppolBatchSender}. This
+ * is a dummy and needs to be adopted to your needs.
+ *
+ * @author Philip Helger
+ */
+public final class MainPhase4PeppolBatchSender
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainPhase4PeppolBatchSender.class);
+
+  public static void main (final String [] args)
+  {
+    // Provide context
+    WebScopeManager.onGlobalBegin (MockServletContext.create ());
+
+    final File aSCPath = AS4Configuration.getDumpBasePathFile ();
+    WebFileIO.initPaths (aSCPath, aSCPath.getAbsolutePath (), false);
+
+    try
+    {
+      // Bytes are parsed per item - a DOM node must not be shared between
+      // threads
+      final byte [] aPayloadBytes = Files.readAllBytes (new File ("src/test/resources/external/examples/base-example.xml").toPath ());
+
+      // Start configuring here
+      final IParticipantIdentifier aReceiverID = Phase4PeppolSender.IF.createParticipantIdentifierWithDefaultScheme ("9958:peppol-development-governikus-01");
+      final IDocumentTypeIdentifier aDocTypeID = Phase4PeppolSender.IF.createDocumentTypeIdentifierWithDefaultScheme ("urn:oasis:names:specification:ubl:schema:xsd:Invoice-2::Invoice##urn:cen.eu:en16931:2017#compliant#urn:fdc:peppol.eu:2017:poacc:billing:3.0::2.1");
+      final IProcessIdentifier aProcessID = Phase4PeppolSender.IF.createProcessIdentifierWithDefaultScheme ("urn:fdc:peppol.eu:2017:poacc:billing:01:1.0");
+
+      // Everything that is identical for all documents
+      final Phase4PeppolBatchSender aBatchSender = new Phase4PeppolBatchSender ( () -> Phase4PeppolSender.builder ()
+                                                                                                           .senderParticipantID (Phase4PeppolSender.IF.createParticipantIdentifierWithDefaultScheme ("9915:phase4-test-sender"))
+                                                                                                           .senderPartyID ("POP000306"),
+                                                                                  new SMPClientReadOnly (Phase4PeppolSender.URL_PROVIDER,
+                                                                                                         aReceiverID,
+                                                                                                         ESML.DIGIT_TEST)).setMaxConcurrency (16);
+
+      final int nSuccess = aBatchSender.sendAll (IntStream.range (0, 100)
+                                                          .mapToObj (i -> new Phase4PeppolBatchItem ("item-" + i,
+                                                                                                     aReceiverID,
+                                                                                                     aDocTypeID,
+                                                                                                     aProcessID,
+                                                                                                     aPayloadBytes)),
+                                                 aResult -> LOGGER.info ("Batch result: " + aResult));
+      LOGGER.info ("Successfully sent " + nSuccess + " documents");
+    }
+    catch (final Exception ex)
+    {
+      LOGGER.error ("Error sending Peppol messages via AS4", ex);
+    }
+    finally
+    {
+      WebScopeManager.onGlobalEnd ();
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.url.URLHelper;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilder.ESimpleUserMessageSendResult;
+import com.helger.phase4.util.Phase4Exception;
+import com.helger.smpclient.peppol.SMPClientReadOnly;
+
+/**
+ * Test class for class {@link Phase4PeppolBatchSender}.
+ *
+ * @author Philip Helger
+ */
+public final class Phase4PeppolBatchSenderTest
+{
+  private static final IDocumentTypeIdentifier DOCTYPE_ID = Phase4PeppolSender.IF.createDocumentTypeIdentifierWithDefaultScheme ("urn:oasis:names:specification:ubl:schema:xsd:Invoice-2::Invoice##urn:cen.eu:en16931:2017#compliant#urn:fdc:peppol.eu:2017:poacc:billing:3.0::2.1");
+  private static final IProcessIdentifier PROCESS_ID = Phase4PeppolSender.IF.createProcessIdentifierWithDefaultScheme ("urn:fdc:peppol.eu:2017:poacc:billing:01:1.0");
+  private static final int ITEM_COUNT = 20;
+  private static final int MAX_CONCURRENCY = 3;
+
+  /**
+   * A builder that never sends anything. Instead of the SMP lookup it tracks
+   * the concurrency and fails every 4th item with an exception.
+   */
+  private static final class MockBuilder extends Phase4PeppolSender.Builder
+  {
+    private final AtomicInteger m_aActive;
+    private final AtomicInteger m_aMaxActive;
+    private final ICommonsList <Object> m_aHttpClientFactories;
+
+    MockBuilder (final AtomicInteger aActive,
+                 final AtomicInteger aMaxActive,
+                 final ICommonsList <Object> aHttpClientFactories)
+    {
+      m_aActive = aActive;
+      m_aMaxActive = aMaxActive;
+      m_aHttpClientFactories = aHttpClientFactories;
+    }
+
+    @Override
+    protected ESuccess finishFields () throws Phase4Exception
+    {
+      final int nActive = m_aActive.incrementAndGet ();
+      m_aMaxActive.accumulateAndGet (nActive, Math::max);
+      try
+      {
+        synchronized (m_aHttpClientFactories)
+        {
+          m_aHttpClientFactories.add (httpClientFactory ());
+        }
+        Thread.sleep (20);
+        final int nIndex = Integer.parseInt (m_aReceiverID.getValue ().substring ("9915:".length ()));
+        if (nIndex % 4 == 0)
+          throw new Phase4Exception ("Failure for item " + nIndex);
+        // Don't send anything
+        return ESuccess.FAILURE;
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        throw new Phase4Exception ("Interrupted", ex);
+      }
+      finally
+      {
+        m_aActive.decrementAndGet ();
+      }
+    }
+  }
+
+  @Test
+  public void testSendAll () throws Exception
+  {
+    final AtomicInteger aActive = new AtomicInteger (0);
+    final AtomicInteger aMaxActive = new AtomicInteger (0);
+    final ICommonsList <Object> aHttpClientFactories = new CommonsArrayList <> ();
+    final Phase4PeppolBatchSender aSender = new Phase4PeppolBatchSender ( () -> new MockBuilder (aActive,
+                                                                                                  aMaxActive,
+                                                                                                  aHttpClientFactories),
+                                                                         new SMPClientReadOnly (URLHelper.getAsURI ("http://localhost:1")));
+    aSender.setMaxConcurrency (MAX_CONCURRENCY);
+
+    final AtomicInteger aResultCount = new AtomicInteger (0);
+    final AtomicInteger aResultCountWhenLastItemTaken = new AtomicInteger (-1);
+    final Iterator <Phase4PeppolBatchItem> aItems = new Iterator <Phase4PeppolBatchItem> ()
+    {
+      private int m_nIndex = 0;
+
+      public boolean hasNext ()
+      {
+        return m_nIndex < ITEM_COUNT;
+      }
+
+      public Phase4PeppolBatchItem next ()
+      {
+        final int nIndex = m_nIndex++;
+        if (nIndex == ITEM_COUNT - 1)
+          aResultCountWhenLastItemTaken.set (aResultCount.get ());
+        return new Phase4PeppolBatchItem ("item-" + nIndex,
+                                          Phase4PeppolSender.IF.createParticipantIdentifierWithDefaultScheme ("9915:" +
+                                                                                                              nIndex),
+                                          DOCTYPE_ID,
+                                          PROCESS_ID,
+                                          "<Invoice/>".getBytes (StandardCharsets.UTF_8));
+      }
+    };
+
+    final ICommonsList <Phase4PeppolBatchResult> aResults = new CommonsArrayList <> ();
+    final int nSuccess = aSender.sendAll ( () -> aItems, aResult -> {
+      aResultCount.incrementAndGet ();
+      synchronized (aResults)
+      {
+        aResults.add (aResult);
+      }
+    });
+
+    // Concurrency bound
+    assertTrue (aMaxActive.get () >= 1);
+    assertTrue (aMaxActive.get () <= MAX_CONCURRENCY);
+
+    // Results are streamed: the source is only read further after results
+    // were delivered
+    assertEquals (ITEM_COUNT, aResults.size ());
+    assertTrue (aResultCountWhenLastItemTaken.get () >= ITEM_COUNT - 1 - MAX_CONCURRENCY);
+
+    // Failure capture
+    assertEquals (0, nSuccess);
+    for (final Phase4PeppolBatchResult aResult : aResults)
+    {
+      assertFalse (aResult.isSuccess ());
+      final int nIndex = Integer.parseInt (aResult.getItem ().getItemID ().substring ("item-".length ()));
+      if (nIndex % 4 == 0)
+      {
+        assertEquals (ESimpleUserMessageSendResult.TRANSPORT_ERROR, aResult.getSendResult ());
+        assertTrue (aResult.getException () instanceof Phase4Exception);
+      }
+      else
+      {
+        assertEquals (ESimpleUserMessageSendResult.INVALID_PARAMETERS, aResult.getSendResult ());
+        assertFalse (aResult.hasException ());
+      }
+    }
+
+    // The HTTP client factory of the builders is not overridden
+    assertEquals (ITEM_COUNT, aHttpClientFactories.size ());
+    for (final Object aHttpClientFactory : aHttpClientFactories)
+      assertSame (Phase4PeppolSender.getSharedHttpClientFactory (), aHttpClientFactory);
+  }
+}
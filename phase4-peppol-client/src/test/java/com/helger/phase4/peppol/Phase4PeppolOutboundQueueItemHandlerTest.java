@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phase4.sender.AbstractAS4UserMessageBuilder.ESimpleUserMessageSendResult;
+import com.helger.phase4.sender.queue.AS4OutboundQueueItem;
+import com.helger.phase4.sender.queue.EAS4OutboundQueueSendResult;
+import com.helger.phase4.util.Phase4Exception;
+
+/**
+ * Test class for class {@link Phase4PeppolOutboundQueueItemHandler}
+ *
+ * @author Philip Helger
+ */
+public final class Phase4PeppolOutboundQueueItemHandlerTest
+{
+  @Test
+  public void testCreateItem ()
+  {
+    final IParticipantIdentifier aReceiverID = Phase4PeppolSender.IF.createParticipantIdentifierWithDefaultScheme ("9915:test");
+    final IDocumentTypeIdentifier aDocTypeID = Phase4PeppolSender.IF.createDocumentTypeIdentifierWithDefaultScheme ("urn:oasis:names:specification:ubl:schema:xsd:Invoice-2::Invoice##urn:cen.eu:en16931:2017#compliant#urn:fdc:peppol.eu:2017:poacc:billing:3.0::2.1");
+    final IProcessIdentifier aProcessID = Phase4PeppolSender.IF.createProcessIdentifierWithDefaultScheme ("urn:fdc:peppol.eu:2017:poacc:billing:01:1.0");
+    final byte [] aPayload = "<Invoice/>".getBytes (StandardCharsets.UTF_8);
+
+    final AS4OutboundQueueItem aItem = Phase4PeppolOutboundQueueItemHandler.createItem (aReceiverID,
+                                                                                        aDocTypeID,
+                                                                                        aProcessID,
+                                                                                        aPayload);
+    assertEquals (aReceiverID.getURIEncoded (), aItem.getDestination ());
+    assertEquals (aReceiverID.getURIEncoded (),
+                  aItem.getProperty (Phase4PeppolOutboundQueueItemHandler.PROPERTY_RECEIVER_ID));
+    assertEquals (aDocTypeID.getURIEncoded (),
+                  aItem.getProperty (Phase4PeppolOutboundQueueItemHandler.PROPERTY_DOCTYPE_ID));
+    assertEquals (aProcessID.getURIEncoded (),
+                  aItem.getProperty (Phase4PeppolOutboundQueueItemHandler.PROPERTY_PROCESS_ID));
+    assertArrayEquals (aPayload, aItem.getPayload ());
+
+    // Each item has its own message ID
+    final String sMessageID = aItem.getProperty (Phase4PeppolOutboundQueueItemHandler.PROPERTY_MESSAGE_ID);
+    assertNotNull (sMessageID);
+    assertNotEquals (sMessageID,
+                     Phase4PeppolOutboundQueueItemHandler.createItem (aReceiverID, aDocTypeID, aProcessID, aPayload)
+                                                         .getProperty (Phase4PeppolOutboundQueueItemHandler.PROPERTY_MESSAGE_ID));
+  }
+
+  @Test
+  public void testMissingProperties () throws Exception
+  {
+    final Phase4PeppolOutboundQueueItemHandler aHandler = new Phase4PeppolOutboundQueueItemHandler ( () -> {
+      fail ("No builder must be created");
+      return null;
+    });
+    final AS4OutboundQueueItem aItem = AS4OutboundQueueItem.create ("dest", null, new byte [0]);
+    // Never retried
+    assertEquals (EAS4OutboundQueueSendResult.PERMANENT_FAILURE, aHandler.sendItem (aItem));
+  }
+
+  @Test
+  public void testQueueSendResult ()
+  {
+    final Phase4PeppolOutboundQueueItemHandler aHandler = new Phase4PeppolOutboundQueueItemHandler ( () -> {
+      fail ("No builder must be created");
+      return null;
+    });
+    assertEquals (EAS4OutboundQueueSendResult.SUCCESS,
+                  aHandler.getQueueSendResult (ESimpleUserMessageSendResult.SUCCESS, null));
+    assertEquals (EAS4OutboundQueueSendResult.RETRY,
+                  aHandler.getQueueSendResult (ESimpleUserMessageSendResult.TRANSPORT_ERROR, new Phase4Exception ("x")));
+    assertEquals (EAS4OutboundQueueSendResult.RETRY,
+                  aHandler.getQueueSendResult (ESimpleUserMessageSendResult.NO_SIGNAL_MESSAGE_RECEIVED, null));
+    assertEquals (EAS4OutboundQueueSendResult.PERMANENT_FAILURE,
+                  aHandler.getQueueSendResult (ESimpleUserMessageSendResult.INVALID_PARAMETERS, null));
+    assertEquals (EAS4OutboundQueueSendResult.PERMANENT_FAILURE,
+                  aHandler.getQueueSendResult (ESimpleUserMessageSendResult.AS4_ERROR_MESSAGE_RECEIVED, null));
+  }
+}
@@ -61,6 +61,7 @@ import com.helger.phase4.attachment.AS4DecompressException;
 import com.helger.phase4.attachment.EAS4CompressionMode;
 import com.helger.phase4.attachment.IAS4Attachment;
 import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.dynamicdiscovery.AS4SMPEndpointCache;
 import com.helger.phase4.ebms3header.Ebms3Error;
 import com.helger.phase4.ebms3header.Ebms3Property;
 import com.helger.phase4.ebms3header.Ebms3SignalMessage;
@@ -154,6 +155,7 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4ServletMessag
   private ICommonsList <IPhase4PeppolIncomingSBDHandlerSPI> m_aHandlers;
   private ISMPTransportProfile m_aTransportProfile = DEFAULT_TRANSPORT_PROFILE;
   private Phase4PeppolReceiverCheckData m_aReceiverCheckData;
+  private AS4SMPEndpointCache m_aEndpointCache;
 
   /**
    * Constructor. Uses all SPI implementations of
@@ -247,6 +249,35 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4ServletMessag
     return this;
   }
 
+  /**
+   * @return The shared SMP endpoint cache used for the receiver checks.
+   *         <code>null</code> by default.
+   * @since 2.1.3
+   */
+  @Nullable
+  public final AS4SMPEndpointCache getEndpointCache ()
+  {
+    return m_aEndpointCache;
+  }
+
+  /**
+   * Set the shared SMP endpoint cache to be used for the receiver checks. If
+   * set, the SMP lookups of the receiver checks are cached instead of being
+   * performed for every incoming message.
+   *
+   * @param aEndpointCache
+   *        The endpoint cache to use. May be <code>null</code>.
+   * @return this for chaining
+   * @see AS4SMPEndpointCache#getDefaultInstance()
+   * @since 2.1.3
+   */
+  @Nonnull
+  public final Phase4PeppolServletMessageProcessorSPI setEndpointCache (@Nullable final AS4SMPEndpointCache aEndpointCache)
+  {
+    m_aEndpointCache = aEndpointCache;
+    return this;
+  }
+
   @Nullable
   private EndpointType _getReceiverEndpoint (@Nonnull final String sLogPrefix,
                                              @Nonnull final ISMPServiceMetadataProvider aSMPClient,
@@ -275,6 +306,8 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4ServletMessag
       }
 
       // Query the SMP
+      if (m_aEndpointCache != null)
+        return m_aEndpointCache.getEndpoint (aSMPClient, aRecipientID, aDocTypeID, aProcessID, m_aTransportProfile);
       return aSMPClient.getEndpoint (aRecipientID, aDocTypeID, aProcessID, m_aTransportProfile);
     }
     catch (final Exception ex)
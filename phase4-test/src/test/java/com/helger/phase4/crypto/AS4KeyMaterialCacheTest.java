@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.junit.After;
+import org.junit.Test;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.security.keystore.EKeyStoreType;
+
+/**
+ * Test class for class {@link AS4KeyMaterialCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4KeyMaterialCacheTest
+{
+  private static final String KEYSTORE_PATH = "keys/dummy-pw-test.jks";
+  private static final String PASSWORD = "test";
+  private static final String ALIAS = "ph-as4";
+
+  @After
+  public void after ()
+  {
+    AS4KeyMaterialCache.setFileCheckIntervalMillis (AS4KeyMaterialCache.DEFAULT_FILE_CHECK_INTERVAL_MILLIS);
+    AS4KeyMaterialCache.clearCache ();
+  }
+
+  private static AS4CryptoProperties _createProps (final String sKeyStorePath)
+  {
+    return new AS4CryptoProperties ().setKeyStoreType (EKeyStoreType.JKS)
+                                     .setKeyStorePath (sKeyStorePath)
+                                     .setKeyStorePassword (PASSWORD)
+                                     .setKeyAlias (ALIAS)
+                                     .setKeyPassword (PASSWORD);
+  }
+
+  @Test
+  public void testSharedBetweenFactories () throws Exception
+  {
+    final AS4CryptoFactoryProperties aCF1 = new AS4CryptoFactoryProperties (_createProps (KEYSTORE_PATH));
+    final AS4CryptoFactoryProperties aCF2 = new AS4CryptoFactoryProperties (_createProps (KEYSTORE_PATH));
+
+    final KeyStore aKS = aCF1.getKeyStore ();
+    assertNotNull (aKS);
+    assertSame (aKS, aCF2.getKeyStore ());
+    assertNotNull (aCF1.getPrivateKeyEntry ());
+    assertSame (aCF1.getPrivateKeyEntry (), aCF2.getPrivateKeyEntry ());
+    assertNull (aCF1.getTrustStore ());
+
+    final Crypto aCrypto = aCF1.getCrypto ();
+    assertTrue (aCrypto instanceof AS4CachingCrypto);
+    assertSame (aCrypto, aCF2.getCrypto ());
+    assertEquals (ALIAS, aCrypto.getDefaultX509Identifier ());
+
+    // Lookups are served from the cache
+    final AS4CachingCrypto aCachingCrypto = (AS4CachingCrypto) aCrypto;
+    final CryptoType aCryptoType = new CryptoType (CryptoType.TYPE.ALIAS);
+    aCryptoType.setAlias (ALIAS);
+    final X509Certificate [] aCerts = aCrypto.getX509Certificates (aCryptoType);
+    assertNotNull (aCerts);
+    assertEquals (1, aCachingCrypto.getCachedCertificateCount ());
+    assertEquals (aCerts[0], aCrypto.getX509Certificates (aCryptoType)[0]);
+    assertEquals (1, aCachingCrypto.getCachedCertificateCount ());
+
+    final CryptoType aIssuerSerial = new CryptoType (CryptoType.TYPE.ISSUER_SERIAL);
+    aIssuerSerial.setIssuerSerial (aCerts[0].getIssuerX500Principal ().getName (), aCerts[0].getSerialNumber ());
+    assertEquals (aCerts[0], aCrypto.getX509Certificates (aIssuerSerial)[0]);
+    assertEquals (2, aCachingCrypto.getCachedCertificateCount ());
+
+    assertNotNull (aCrypto.getPrivateKey (ALIAS, PASSWORD));
+    assertSame (aCrypto.getPrivateKey (ALIAS, PASSWORD), aCrypto.getPrivateKey (ALIAS, PASSWORD));
+    assertEquals (1, aCachingCrypto.getCachedPrivateKeyCount ());
+  }
+
+  @Test
+  public void testReloadOnFileChange () throws Exception
+  {
+    final File aFile = File.createTempFile ("phase4-keystore", ".jks");
+    try
+    {
+      try (final InputStream aIS = new ClassPathResource (KEYSTORE_PATH).getInputStream ())
+      {
+        Files.copy (aIS, aFile.toPath (), StandardCopyOption.REPLACE_EXISTING);
+      }
+      AS4KeyMaterialCache.setFileCheckIntervalMillis (0);
+
+      final AS4CryptoFactoryProperties aCF = new AS4CryptoFactoryProperties (_createProps (aFile.getAbsolutePath ()));
+      final KeyStore aKS1 = aCF.getKeyStore ();
+      final KeyStore.PrivateKeyEntry aPK1 = aCF.getPrivateKeyEntry ();
+      final Crypto aCrypto1 = aCF.getCrypto ();
+      assertNotNull (aKS1);
+      assertSame (aKS1, aCF.getKeyStore ());
+
+      // Simulate a modification
+      assertTrue (aFile.setLastModified (aFile.lastModified () - 60_000));
+
+      final KeyStore aKS2 = aCF.getKeyStore ();
+      assertNotNull (aKS2);
+      assertNotSame (aKS1, aKS2);
+      assertNotSame (aPK1, aCF.getPrivateKeyEntry ());
+      assertNotSame (aCrypto1, aCF.getCrypto ());
+      assertSame (aKS2, aCF.getKeyStore ());
+    }
+    finally
+    {
+      Files.delete (aFile.toPath ());
+    }
+  }
+}
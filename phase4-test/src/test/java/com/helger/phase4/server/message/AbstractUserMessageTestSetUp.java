@@ -107,8 +107,12 @@ public abstract class AbstractUserMessageTestSetUp extends AbstractAS4TestSetUp
   @Nonnull
   private HttpPost _createPost ()
   {
-    final String sURL = MockJettySetup.getServerAddressFromSettings ();
+    return _createPost (MockJettySetup.getServerAddressFromSettings ());
+  }
 
+  @Nonnull
+  private static HttpPost _createPost (@Nonnull final String sURL)
+  {
     LOGGER.info ("The following test case will only work if there is a local AS4 server running @ " + sURL);
     return new HttpPost (sURL);
   }
@@ -246,6 +250,34 @@ public abstract class AbstractUserMessageTestSetUp extends AbstractAS4TestSetUp
     return _sendPlainMessage (aPost, aHttpEntity, bExpectSuccess, sExpectedErrorCode);
   }
 
+  /**
+   * Like {@link #sendPlainMessage(HttpEntity, boolean, String)} but with a
+   * custom URL.
+   *
+   * @param sURL
+   *        The URL to send to. May not be <code>null</code>.
+   * @param aHttpEntity
+   *        the entity to send to the server
+   * @param bExpectSuccess
+   *        specifies if the test case expects a positive or negative response
+   *        from the server
+   * @param sExpectedErrorCode
+   *        if you expect a negative response, you must give the expected error
+   *        code as it will get searched for in the response.
+   * @return Response as String
+   * @throws IOException
+   *         In case HTTP sending fails
+   */
+  @Nonnull
+  protected final String sendPlainMessage (@Nonnull final String sURL,
+                                           @Nonnull final HttpEntity aHttpEntity,
+                                           final boolean bExpectSuccess,
+                                           @Nullable final String sExpectedErrorCode) throws IOException
+  {
+    final HttpPost aPost = _createPost (sURL);
+    return _sendPlainMessage (aPost, aHttpEntity, bExpectSuccess, sExpectedErrorCode);
+  }
+
   /**
    * @param aHttpEntity
    *        the entity to send to the server
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.server.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.timing.StopWatch;
+import com.helger.phase4.http.HttpXMLEntity;
+import com.helger.phase4.server.MockJettySetup;
+import com.helger.phase4.server.spi.MockBlockingMessageProcessorSPI;
+import com.helger.phase4.servlet.AS4AsyncServlet;
+import com.helger.phase4.soap.ESoapVersion;
+
+/**
+ * Load test for {@link AS4AsyncServlet}. Every request is blocked inside the
+ * SPI until all requests are in the SPI at the same time. This only succeeds if
+ * more requests can be processed in parallel than the container has threads
+ * (Jetty uses at most 200 threads by default).
+ *
+ * @author Philip Helger
+ */
+public final class AS4AsyncServletLoadTest extends AbstractUserMessageTestSetUpExt
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (AS4AsyncServletLoadTest.class);
+  private static final int PARALLEL_REQUESTS = 256;
+
+  @Test
+  public void testConcurrencyBeyondContainerThreads () throws Exception
+  {
+    final String sURL = StringHelper.trimEnd (MockJettySetup.getServerAddressFromSettings (), "/as4") + "/as4async";
+
+    // Create all messages upfront
+    final ICommonsList <Document> aDocs = new CommonsArrayList <> ();
+    for (int i = 0; i < PARALLEL_REQUESTS; ++i)
+      aDocs.add (modifyUserMessage (null, null, null, createDefaultProperties (), null, null, null));
+
+    final CountDownLatch aLatch = new CountDownLatch (PARALLEL_REQUESTS);
+    MockBlockingMessageProcessorSPI.setLatch (aLatch);
+    final ExecutorService aES = Executors.newFixedThreadPool (PARALLEL_REQUESTS);
+    try
+    {
+      final StopWatch aSW = StopWatch.createdStarted ();
+      final ICommonsList <Future <String>> aFutures = new CommonsArrayList <> ();
+      for (final Document aDoc : aDocs)
+        aFutures.add (aES.submit ( () -> sendPlainMessage (sURL,
+                                                           new HttpXMLEntity (aDoc, ESoapVersion.AS4_DEFAULT.getMimeType ()),
+                                                           true,
+                                                           null)));
+      for (final Future <String> aFuture : aFutures)
+        aFuture.get ();
+      LOGGER.info ("Processed " + PARALLEL_REQUESTS + " blocking requests in parallel in " + aSW.stopAndGetMillis () + " ms");
+
+      // All requests were blocked in the SPI at the same time
+      assertEquals (0, aLatch.getCount ());
+      assertTrue (MockBlockingMessageProcessorSPI.getMaxParallel () >= PARALLEL_REQUESTS);
+    }
+    finally
+    {
+      MockBlockingMessageProcessorSPI.setLatch (null);
+      aES.shutdownNow ();
+    }
+  }
+}
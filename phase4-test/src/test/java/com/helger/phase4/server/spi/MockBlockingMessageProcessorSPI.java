@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.server.spi;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.w3c.dom.Node;
+
+import com.helger.commons.annotation.IsSPIImplementation;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.ebms3header.Ebms3Error;
+import com.helger.phase4.ebms3header.Ebms3SignalMessage;
+import com.helger.phase4.ebms3header.Ebms3UserMessage;
+import com.helger.phase4.messaging.IAS4IncomingMessageMetadata;
+import com.helger.phase4.model.pmode.IPMode;
+import com.helger.phase4.servlet.IAS4MessageState;
+import com.helger.phase4.servlet.spi.AS4MessageProcessorResult;
+import com.helger.phase4.servlet.spi.AS4SignalMessageProcessorResult;
+import com.helger.phase4.servlet.spi.IAS4ServletMessageProcessorSPI;
+
+/**
+ * Test implementation of {@link IAS4ServletMessageProcessorSPI} that simulates
+ * a slow, blocking SPI. If a latch is installed, every user message waits until
+ * the expected number of user messages is processed in parallel. This proves
+ * how many requests can be in flight at the same time. Without a latch this
+ * SPI does nothing.
+ *
+ * @author Philip Helger
+ */
+@IsSPIImplementation
+public class MockBlockingMessageProcessorSPI implements IAS4ServletMessageProcessorSPI
+{
+  private static volatile CountDownLatch s_aLatch;
+  private static final AtomicInteger PARALLEL = new AtomicInteger (0);
+  private static final AtomicInteger MAX_PARALLEL = new AtomicInteger (0);
+
+  /**
+   * @param aLatch
+   *        The latch every user message counts down and waits for. May be
+   *        <code>null</code> to disable blocking.
+   */
+  public static void setLatch (@Nullable final CountDownLatch aLatch)
+  {
+    s_aLatch = aLatch;
+    MAX_PARALLEL.set (0);
+  }
+
+  /**
+   * @return The maximum number of user messages that were processed in
+   *         parallel since the last call to {@link #setLatch(CountDownLatch)}.
+   */
+  public static int getMaxParallel ()
+  {
+    return MAX_PARALLEL.get ();
+  }
+
+  @Nonnull
+  public AS4MessageProcessorResult processAS4UserMessage (@Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                                          @Nonnull final HttpHeaderMap aHttpHeaders,
+                                                          @Nonnull final Ebms3UserMessage aUserMessage,
+                                                          @Nonnull final IPMode aPMode,
+                                                          @Nullable final Node aPayload,
+                                                          @Nullable final ICommonsList <WSS4JAttachment> aIncomingAttachments,
+                                                          @Nonnull final IAS4MessageState aState,
+                                                          @Nonnull final ICommonsList <Ebms3Error> aProcessingErrorMessages)
+  {
+    final CountDownLatch aLatch = s_aLatch;
+    if (aLatch != null)
+    {
+      final int nParallel = PARALLEL.incrementAndGet ();
+      MAX_PARALLEL.accumulateAndGet (nParallel, Math::max);
+      try
+      {
+        aLatch.countDown ();
+        if (!aLatch.await (2, TimeUnit.MINUTES))
+          return AS4MessageProcessorResult.createFailure ("Not enough parallel requests");
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        return AS4MessageProcessorResult.createFailure ("Interrupted");
+      }
+      finally
+      {
+        PARALLEL.decrementAndGet ();
+      }
+    }
+    return AS4MessageProcessorResult.createSuccess ();
+  }
+
+  @Nonnull
+  public AS4SignalMessageProcessorResult processAS4SignalMessage (@Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                                                  @Nonnull final HttpHeaderMap aHttpHeaders,
+                                                                  @Nonnull final Ebms3SignalMessage aSignalMessage,
+                                                                  @Nullable final IPMode aPMode,
+                                                                  @Nonnull final IAS4MessageState aState,
+                                                                  @Nonnull final ICommonsList <Ebms3Error> aProcessingErrorMessages)
+  {
+    return AS4SignalMessageProcessorResult.createSuccess ();
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.server.supplementary.test;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.timing.StopWatch;
+import com.helger.phase4.ScopedConfig;
+import com.helger.phase4.wss.WSSConcurrentExecutor;
+
+/**
+ * Compare the sign/encrypt/decrypt/verify throughput of the synchronized WSS4J
+ * mode with the concurrent WSS4J mode for 1 to 64 threads.
+ *
+ * @author Philip Helger
+ */
+public final class MainWSSThroughputComparison
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainWSSThroughputComparison.class);
+  private static final int MESSAGES = 512;
+
+  private static double _measure (final boolean bConcurrent, final int nThreads) throws Exception
+  {
+    try (final ScopedConfig aSC = WSSConcurrentSecurityTest.createConfig (bConcurrent))
+    {
+      // Warm up
+      WSSConcurrentSecurityTest.runParallel (nThreads, nThreads);
+
+      final StopWatch aSW = StopWatch.createdStarted ();
+      WSSConcurrentSecurityTest.runParallel (nThreads, MESSAGES);
+      final long nMillis = aSW.stopAndGetMillis ();
+      return MESSAGES * 1000d / Math.max (nMillis, 1);
+    }
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    // No global scope is needed for both modes
+    try
+    {
+      final StringBuilder aSB = new StringBuilder ("Threads;Synchronized msg/s;Concurrent msg/s\n");
+      for (int nThreads = 1; nThreads <= 64; nThreads *= 2)
+      {
+        final double dSync = _measure (false, nThreads);
+        final double dConcurrent = _measure (true, nThreads);
+        aSB.append (nThreads).append (';').append (dSync).append (';').append (dConcurrent).append ('\n');
+        LOGGER.info (nThreads + " threads: synchronized " + dSync + " msg/s; concurrent " + dConcurrent + " msg/s");
+      }
+      LOGGER.info ("Results:\n" + aSB.toString ());
+    }
+    finally
+    {
+      WSSConcurrentExecutor.cleanUp ();
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015-2023 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.server.supplementary.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.commons.collection.attr.StringMap;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.functional.IThrowingSupplier;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.phase4.AS4TestConstants;
+import com.helger.phase4.ScopedConfig;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.crypto.AS4CryptParams;
+import com.helger.phase4.crypto.AS4CryptoFactoryProperties;
+import com.helger.phase4.crypto.AS4SigningParams;
+import com.helger.phase4.crypto.IAS4CryptoFactory;
+import com.helger.phase4.messaging.crypto.AS4Encryptor;
+import com.helger.phase4.messaging.crypto.AS4Signer;
+import com.helger.phase4.messaging.domain.AS4UserMessage;
+import com.helger.phase4.server.message.MockMessages;
+import com.helger.phase4.servlet.soap.AS4KeyStoreCallbackHandler;
+import com.helger.phase4.soap.ESoapVersion;
+import com.helger.phase4.util.AS4ResourceHelper;
+import com.helger.phase4.wss.WSSConcurrentExecutor;
+import com.helger.phase4.wss.WSSConfigManager;
+import com.helger.phase4.wss.WSSSynchronizer;
+import com.helger.scope.mock.ScopeTestRule;
+import com.helger.xml.XMLHelper;
+import com.helger.xml.serialize.read.DOMReader;
+import com.helger.xml.serialize.write.XMLWriter;
+
+/**
+ * Multi-threaded stress test that ensures that the concurrent WSS4J mode (see
+ * {@link WSSConcurrentExecutor}) produces the same message level results as the
+ * synchronized mode (see {@link WSSSynchronizer}).
+ *
+ * @author Philip Helger
+ */
+public final class WSSConcurrentSecurityTest
+{
+  private static final ESoapVersion SOAP_VERSION = ESoapVersion.SOAP_12;
+  private static final int THREADS = 16;
+  private static final int MESSAGES = 200;
+
+  @Rule
+  public final ScopeTestRule m_aRule = new ScopeTestRule ();
+
+  @After
+  public void after ()
+  {
+    WSSConcurrentExecutor.cleanUp ();
+  }
+
+  @Nonnull
+  static ScopedConfig createConfig (final boolean bConcurrent)
+  {
+    final StringMap aMap = new StringMap ();
+    aMap.putIn (AS4Configuration.PROPERTY_PHASE4_WSS4J_SYNCSECURITY, true);
+    aMap.putIn (AS4Configuration.PROPERTY_PHASE4_WSS4J_CONCURRENTSECURITY, bConcurrent);
+    return ScopedConfig.createTestConfig (aMap);
+  }
+
+  @Nonnull
+  private static <T> T _verify (@Nonnull final IThrowingSupplier <T, Exception> aSupplier) throws Exception
+  {
+    // Verification happens inside the same execution mode as signing and
+    // encryption
+    if (AS4Configuration.isWSS4JConcurrentSecurity ())
+      return WSSConcurrentExecutor.call (aSupplier);
+    return WSSSynchronizer.call (aSupplier);
+  }
+
+  /**
+   * Sign, encrypt, decrypt and verify a single message and return a string
+   * representation of all message level results.
+   *
+   * @param nIndex
+   *        The message index that is part of the payload.
+   * @return The message level result. Never <code>null</code>.
+   * @throws Exception
+   *         on error
+   */
+  @Nonnull
+  static String roundtrip (@Nonnegative final int nIndex) throws Exception
+  {
+    final IAS4CryptoFactory aCryptoFactory = AS4CryptoFactoryProperties.getDefaultInstance ();
+
+    final Document aPayloadDoc = DOMReader.readXMLDOM (new ClassPathResource (AS4TestConstants.TEST_SOAP_BODY_PAYLOAD_XML));
+    assertNotNull (aPayloadDoc);
+    aPayloadDoc.getDocumentElement ().setAttribute ("index", Integer.toString (nIndex));
+    final String sExpectedPayload = XMLWriter.getNodeAsString (aPayloadDoc.getDocumentElement ());
+
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final AS4UserMessage aMsg = MockMessages.createUserMessageNotSigned (SOAP_VERSION, aPayloadDoc, null);
+      final Document aSignedDoc = AS4Signer.createSignedMessage (aCryptoFactory,
+                                                                 aMsg.getAsSoapDocument (aPayloadDoc),
+                                                                 SOAP_VERSION,
+                                                                 aMsg.getMessagingID (),
+                                                                 null,
+                                                                 aResHelper,
+                                                                 false,
+                                                                 AS4SigningParams.createDefault ());
+      final Document aEncryptedDoc = AS4Encryptor.encryptSoapBodyPayload (aCryptoFactory,
+                                                                          SOAP_VERSION,
+                                                                          aSignedDoc,
+                                                                          false,
+                                                                          AS4CryptParams.createDefault ()
+                                                                                        .setAlias (aCryptoFactory.getKeyAlias ()));
+      assertFalse (XMLWriter.getNodeAsString (aEncryptedDoc).contains ("index=\"" + nIndex + "\""));
+
+      final WSHandlerResult aResult = _verify ( () -> {
+        final RequestData aRequestData = new RequestData ();
+        aRequestData.setCallbackHandler (new AS4KeyStoreCallbackHandler (aCryptoFactory));
+        aRequestData.setSigVerCrypto (aCryptoFactory.getCrypto ());
+        aRequestData.setDecCrypto (aCryptoFactory.getCrypto ());
+        aRequestData.setWssConfig (WSSConfigManager.createStaticWSSConfig ());
+
+        final WSSecurityEngine aSecurityEngine = new WSSecurityEngine ();
+        aSecurityEngine.setWssConfig (aRequestData.getWssConfig ());
+        return aSecurityEngine.processSecurityHeader (aEncryptedDoc, aRequestData);
+      });
+
+      int nActions = 0;
+      for (final WSSecurityEngineResult aItem : aResult.getResults ())
+      {
+        final Integer aAction = (Integer) aItem.get (WSSecurityEngineResult.TAG_ACTION);
+        if (aAction != null)
+          nActions |= aAction.intValue ();
+      }
+      assertTrue ((nActions & WSConstants.SIGN) == WSConstants.SIGN);
+      assertTrue ((nActions & WSConstants.ENCR) == WSConstants.ENCR);
+
+      // The decrypted payload must match the original payload
+      final Element aBody = XMLHelper.getFirstChildElementOfName (aEncryptedDoc.getDocumentElement (),
+                                                                  SOAP_VERSION.getNamespaceURI (),
+                                                                  SOAP_VERSION.getBodyElementName ());
+      assertNotNull (aBody);
+      final String sDecryptedPayload = XMLWriter.getNodeAsString (XMLHelper.getFirstChildElement (aBody));
+      assertEquals (sExpectedPayload, sDecryptedPayload);
+
+      return nActions + ":" + sDecryptedPayload;
+    }
+  }
+
+  @Nonnull
+  static ICommonsList <String> runParallel (@Nonnegative final int nThreads,
+                                            @Nonnegative final int nMessages) throws Exception
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    try
+    {
+      final ICommonsList <Future <String>> aFutures = new CommonsArrayList <> (nMessages);
+      for (int i = 0; i < nMessages; ++i)
+      {
+        final int nIndex = i;
+        aFutures.add (aES.submit ( () -> roundtrip (nIndex)));
+      }
+
+      final ICommonsList <String> ret = new CommonsArrayList <> (nMessages);
+      for (final Future <String> aFuture : aFutures)
+        ret.add (aFuture.get ());
+      return ret;
+    }
+    finally
+    {
+      aES.shutdown ();
+      ExecutorServiceHelper.waitUntilAllTasksAreFinished (aES);
+    }
+  }
+
+  @Test
+  public void testConcurrentResultsMatchSynchronized () throws Exception
+  {
+    final ICommonsList <String> aSyncResults;
+    try (final ScopedConfig aSC = createConfig (false))
+    {
+      assertTrue (AS4Configuration.isWSS4JSynchronizedSecurity ());
+      assertFalse (AS4Configuration.isWSS4JConcurrentSecurity ());
+      aSyncResults = runParallel (THREADS, MESSAGES);
+    }
+
+    final ICommonsList <String> aConcurrentResults;
+    try (final ScopedConfig aSC = createConfig (true))
+    {
+      assertTrue (AS4Configuration.isWSS4JConcurrentSecurity ());
+      aConcurrentResults = runParallel (THREADS, MESSAGES);
+      assertTrue (WSSConcurrentExecutor.isInitialized ());
+    }
+
+    assertEquals (MESSAGES, aSyncResults.size ());
+    assertEquals (aSyncResults, aConcurrentResults);
+  }
+}